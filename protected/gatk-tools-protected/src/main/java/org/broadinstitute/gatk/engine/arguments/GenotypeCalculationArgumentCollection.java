@@ -167,6 +167,23 @@ public class GenotypeCalculationArgumentCollection implements Cloneable{
     @Argument(shortName="ploidy", fullName="sample_ploidy", doc="Ploidy (number of chromosomes) per sample. For pooled data, set to (Number of samples in each pool * Sample Ploidy).", required=false)
     public int samplePloidy = HomoSapiensConstants.DEFAULT_PLOIDY;
 
+    /**
+     * Number of threads used to assign the genotypes of the samples of a single site.  Unlike -nt and -nct, which
+     * process several sites at once, this splits the samples of each site into chunks of at least
+     * --min_samples_per_thread samples, so it only helps when genotyping thousands of samples together, as is the case
+     * when joint genotyping large cohorts.  Results are the same regardless of the number of threads.
+     */
+    @Advanced
+    @Argument(fullName = "sample_threads", shortName = "sampleThreads", doc = "Number of threads used to genotype the samples of each site", required = false)
+    public int sampleThreads = 1;
+
+    /**
+     * Sites with fewer than twice this number of samples are always genotyped by a single thread.
+     */
+    @Advanced
+    @Argument(fullName = "min_samples_per_thread", shortName = "minSamplesPerThread", doc = "Minimum number of samples genotyped by each of the --sample_threads threads", required = false)
+    public int minSamplesPerThread = 1000;
+
     /**
      * Creates a copy of this configuration.
      * @return never {@code null}.
@@ -57,7 +57,7 @@ import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.*;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
-import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 
 import java.util.*;
@@ -99,12 +99,13 @@ public class AS_RMSMappingQuality extends AS_RMSAnnotation implements AS_Standar
        //over all the samples in the Map...
         for ( final PerReadAlleleLikelihoodMap perReadLikelihoods : perReadAlleleLikelihoodMap.values() ) {
             //for each read...
-            for ( final Map.Entry<GATKSAMRecord,Map<Allele,Double>> readLikelihoods : perReadLikelihoods.getLikelihoodReadMap().entrySet() ) {
-                final int mq = readLikelihoods.getKey().getMappingQuality();
+            final ReadAlleleAssignments assignments = perReadLikelihoods.getReadAlleleAssignments();
+            for ( int i = 0; i < assignments.size(); i++ ) {
+                final int mq = assignments.getMappingQuality(i);
                 if ( mq != QualityUtils.MAPPING_QUALITY_UNAVAILABLE ) {
-                    if (!PerReadAlleleLikelihoodMap.getMostLikelyAllele(readLikelihoods.getValue()).isInformative())
+                    if (!assignments.isInformative(i))
                         continue;
-                    final Allele bestAllele =PerReadAlleleLikelihoodMap.getMostLikelyAllele(readLikelihoods.getValue()).getMostLikelyAllele();
+                    final Allele bestAllele = assignments.getAlleleIfInformative(i);
                     double currSquareSum = 0;
                     if (myData.hasAttribute(bestAllele))
                         currSquareSum += (double)myData.getAttribute(bestAllele);
@@ -65,6 +65,7 @@ import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.exceptions.GATKException;
 import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
@@ -107,48 +108,41 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
             return new HashMap<>();
 
         final Map<String, Object> annotations = new HashMap<>();
-        final AlleleSpecificAnnotationData<CompressedDataList<Integer>> myData = initializeNewAnnotationData(vc.getAlleles());
+        final AlleleSpecificAnnotationData<CompressedIntList> myData = initializeNewAnnotationData(vc.getAlleles());
         calculateRawData(vc, perReadAlleleLikelihoodMap, myData);
         final String annotationString = makeRawAnnotationString(vc.getAlleles(), myData.getAttributeMap());
         annotations.put(getRawKeyName(), annotationString);
         return annotations;
     }
 
-    protected void parseRawDataString(final ReducibleAnnotationData<CompressedDataList<Integer>> myData) {
+    protected void parseRawDataString(final ReducibleAnnotationData<CompressedIntList> myData) {
         final String rawDataString = myData.getRawData();
-        String rawDataNoBrackets;
-        final Map<Allele, CompressedDataList<Integer>> perAlleleValues = new HashMap<>();
+        final Map<Allele, CompressedIntList> perAlleleValues = new HashMap<>();
         //Initialize maps
         for (final Allele current : myData.getAlleles()) {
-            perAlleleValues.put(current, new CompressedDataList<Integer>());
+            perAlleleValues.put(current, new CompressedIntList());
         }
         //Map gives back list with []
+        int start = 0;
+        int end = rawDataString.length();
         if (rawDataString.charAt(0) == '[') {
-            rawDataNoBrackets = rawDataString.substring(1, rawDataString.length() - 1);
+            start++;
+            end--;
         }
-        else {
-            rawDataNoBrackets = rawDataString;
-        }
-        //rawDataPerAllele is the list of values for each allele (each of variable length)
-        final String[] rawDataPerAllele = rawDataNoBrackets.split(splitDelim);
-        for (int i=0; i<rawDataPerAllele.length; i++) {
-            final String alleleData = rawDataPerAllele[i];
-            if (alleleData.isEmpty())
-                continue;
-            final CompressedDataList<Integer> alleleList = perAlleleValues.get(myData.getAlleles().get(i));
-            final String[] rawListEntriesAsStringVector = alleleData.split(",");
-            if (rawListEntriesAsStringVector.length %2 != 0)
-                throw new GATKException("ERROR: rank sum test raw annotation data must occur in <value,count> pairs");
-            for (int j=0; j<rawListEntriesAsStringVector.length; j+=2) {
-                int value, count;
-                if (!rawListEntriesAsStringVector[j].isEmpty()) {
-                    value = Integer.parseInt(rawListEntriesAsStringVector[j].trim());
-                    if (!rawListEntriesAsStringVector[j + 1].isEmpty()) {
-                        count = Integer.parseInt(rawListEntriesAsStringVector[j + 1].trim());
-                        alleleList.add(value,count);
-                    }
+        //the values for each allele (each of variable length) are separated by printDelim; parse them in place
+        //rather than splitting the string up
+        for (int i = 0; start <= end; i++) {
+            int alleleEnd = rawDataString.indexOf(printDelim, start);
+            if (alleleEnd < 0 || alleleEnd > end)
+                alleleEnd = end;
+            if (alleleEnd > start) {
+                try {
+                    perAlleleValues.get(myData.getAlleles().get(i)).addFromString(rawDataString, start, alleleEnd);
+                } catch (final IllegalArgumentException e) {
+                    throw new GATKException("ERROR: rank sum test raw annotation data must occur in <value,count> pairs", e);
                 }
             }
+            start = alleleEnd + 1;
         }
         myData.setAttributeMap(perAlleleValues);
 
@@ -182,34 +176,33 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
     }
 
     protected AlleleSpecificAnnotationData initializeNewAnnotationData(final List<Allele> vcAlleles) {
-        Map<Allele, CompressedDataList<Integer>> perAlleleValues = new HashMap<>();
+        Map<Allele, CompressedIntList> perAlleleValues = new HashMap<>();
         for (Allele a : vcAlleles) {
-            perAlleleValues.put(a, new CompressedDataList<Integer>());
+            perAlleleValues.put(a, new CompressedIntList());
         }
         AlleleSpecificAnnotationData ret = new AlleleSpecificAnnotationData(vcAlleles, perAlleleValues.toString());
         ret.setAttributeMap(perAlleleValues);
         return ret;
     }
 
-    protected void combineAttributeMap(final ReducibleAnnotationData<CompressedDataList<Integer>> toAdd, final ReducibleAnnotationData<CompressedDataList<Integer>> combined) {
+    protected void combineAttributeMap(final ReducibleAnnotationData<CompressedIntList> toAdd, final ReducibleAnnotationData<CompressedIntList> combined) {
         for (final Allele a : combined.getAlleles()) {
             if (toAdd.hasAttribute(a)) {
-                final CompressedDataList<Integer> alleleData = combined.getAttribute(a);
+                final CompressedIntList alleleData = combined.getAttribute(a);
                 alleleData.add(toAdd.getAttribute(a));
                 combined.putAttribute(a, alleleData);
             }
         }
     }
 
-    protected String makeRawAnnotationString(final List<Allele> vcAlleles, final Map<Allele, CompressedDataList<Integer>> perAlleleValues) {
-        String annotationString = "";
+    protected String makeRawAnnotationString(final List<Allele> vcAlleles, final Map<Allele, CompressedIntList> perAlleleValues) {
+        final StringBuilder annotationString = new StringBuilder();
         for (int i =0; i< vcAlleles.size(); i++) {
             if (i!=0)
-                    annotationString += printDelim;
-            CompressedDataList<Integer> alleleValues = perAlleleValues.get(vcAlleles.get(i));
-            annotationString += alleleValues.toString();
+                annotationString.append(printDelim);
+            perAlleleValues.get(vcAlleles.get(i)).appendTo(annotationString);
         }
-        return annotationString;
+        return annotationString.toString();
     }
 
     protected String makeReducedAnnotationString(VariantContext vc, Map<Allele,Double> perAltRankSumResults) {
@@ -240,7 +233,7 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
             return new HashMap<>();
 
         final Map<String,Object> annotations = new HashMap<>();
-        final AlleleSpecificAnnotationData<CompressedDataList<Integer>> myData = new AlleleSpecificAnnotationData(originalVC.getAlleles(), rawRankSumData);
+        final AlleleSpecificAnnotationData<CompressedIntList> myData = new AlleleSpecificAnnotationData(originalVC.getAlleles(), rawRankSumData);
         parseRawDataString(myData);
 
         final Map<Allele, Double> perAltRankSumResults = calculateReducedData(myData.getAttributeMap(), myData.getRefAllele());
@@ -256,7 +249,7 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
         if(pralm == null)
             return;
 
-        final Map<Allele, CompressedDataList<Integer>> perAlleleValues = myData.getAttributeMap();
+        final Map<Allele, CompressedIntList> perAlleleValues = myData.getAttributeMap();
         for ( final PerReadAlleleLikelihoodMap likelihoodMap : pralm.values() ) {
             if ( likelihoodMap != null && !likelihoodMap.isEmpty() ) {
                 fillQualsFromLikelihoodMap(vc.getAlleles(), vc.getStart(), likelihoodMap, perAlleleValues);
@@ -268,15 +261,16 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
     private void fillQualsFromLikelihoodMap(final List<Allele> alleles,
                                             final int refLoc,
                                             final PerReadAlleleLikelihoodMap likelihoodMap,
-                                            final Map<Allele, CompressedDataList<Integer>> perAlleleValues) {
-        for ( final Map.Entry<GATKSAMRecord, Map<Allele,Double>> el : likelihoodMap.getLikelihoodReadMap().entrySet() ) {
-            final MostLikelyAllele a = PerReadAlleleLikelihoodMap.getMostLikelyAllele(el.getValue());
-            if ( ! a.isInformative() )
+                                            final Map<Allele, CompressedIntList> perAlleleValues) {
+        final ReadAlleleAssignments assignments = likelihoodMap.getReadAlleleAssignments();
+        for ( int i = 0; i < assignments.size(); i++ ) {
+            if ( ! assignments.isInformative(i) )
                 continue; // read is non-informative
 
-            final GATKSAMRecord read = el.getKey();
+            final MostLikelyAllele a = assignments.getMostLikelyAllele(i);
+            final GATKSAMRecord read = assignments.getRead(i);
             if ( isUsableRead(read, refLoc) ) {
-                final Double value = getElementForRead(read, refLoc, a);
+                final Double value = getElementForRead(assignments, i, refLoc);
                 if ( value == null )
                     continue;
 
@@ -286,7 +280,7 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
         }
     }
 
-    public Map<Allele, Double> calculateReducedData(final Map<Allele, CompressedDataList<Integer>> perAlleleValues, final Allele ref) {
+    public Map<Allele, Double> calculateReducedData(final Map<Allele, CompressedIntList> perAlleleValues, final Allele ref) {
         final Map<Allele, Double> perAltRankSumResults = new HashMap<>();
         //shortcut to not try to calculate rank sum if there are no reads that unambiguously support the ref
         if (perAlleleValues.get(ref).isEmpty())
@@ -295,30 +289,14 @@ public abstract class AS_RankSumTest extends RankSumTest implements ReducibleAnn
             if (alt.equals(ref, false))
                 continue;
             final MannWhitneyU mannWhitneyU = new MannWhitneyU();
-            //load alts (series 1)
-            List<Double> alts = new ArrayList<>();
-            for (final Number qual : perAlleleValues.get(alt)) {
-                alts.add((double) qual.intValue());
-            }
-            //load refs (series 2)
-            List<Double> refs = new ArrayList<>();
-            for (final Number qual : perAlleleValues.get(ref)) {
-                refs.add((double) qual.intValue());
-            }
 
             if (DEBUG) {
-                System.out.format("%s, REF QUALS:", this.getClass().getName());
-                for (final Number qual : perAlleleValues.get(ref))
-                    System.out.format("%d ", qual);
-                System.out.println();
-                System.out.format("%s, ALT QUALS:", this.getClass().getName());
-                for (final Number qual : perAlleleValues.get(alt))
-                    System.out.format("%d ", qual);
-                System.out.println();
-
+                System.out.format("%s, REF QUALS: %s%n", this.getClass().getName(), perAlleleValues.get(ref));
+                System.out.format("%s, ALT QUALS: %s%n", this.getClass().getName(), perAlleleValues.get(alt));
             }
-            // we are testing that set1 (the alt bases) have lower quality scores than set2 (the ref bases)
-            final MannWhitneyU.Result result = mannWhitneyU.test(convertToArray(alts), convertToArray(refs), MannWhitneyU.TestType.FIRST_DOMINATES);
+            // we are testing that set1 (the alt bases) have lower quality scores than set2 (the ref bases),
+            // ranking the alt (series 1) and ref (series 2) histograms directly without expanding them
+            final MannWhitneyU.Result result = mannWhitneyU.test(perAlleleValues.get(alt), perAlleleValues.get(ref), MannWhitneyU.TestType.FIRST_DOMINATES);
             perAltRankSumResults.put(alt, result.getZ());
         }
         return perAltRankSumResults;
@@ -63,8 +63,8 @@ import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.ReducibleAnnot
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.exceptions.GATKException;
-import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
@@ -289,10 +289,9 @@ public abstract class AS_StrandBiasTest extends StrandBiasTest implements Reduci
 
         for (final PerReadAlleleLikelihoodMap maps : stratifiedPerReadAlleleLikelihoodMap.values() ) {
             final ReducibleAnnotationData<List<Integer>> sampleTable = new AlleleSpecificAnnotationData<>(vc.getAlleles(),null);
-            for (final Map.Entry<GATKSAMRecord,Map<Allele,Double>> el : maps.getLikelihoodReadMap().entrySet()) {
-                final MostLikelyAllele mostLikelyAllele = PerReadAlleleLikelihoodMap.getMostLikelyAllele(el.getValue());
-                final GATKSAMRecord read = el.getKey();
-                updateTable(mostLikelyAllele.getAlleleIfInformative(), read, ref, allAlts, sampleTable);
+            final ReadAlleleAssignments assignments = maps.getReadAlleleAssignments();
+            for (int i = 0; i < assignments.size(); i++) {
+                updateTable(assignments.getAlleleIfInformative(i), assignments.getRead(i), ref, allAlts, sampleTable);
             }
             //for each sample (value in stratified PRALM), only include it if there are >minCount informative reads
             if ( passesMinimumThreshold(sampleTable, minCount) )
@@ -60,10 +60,9 @@ import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.AnnotatorCompa
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.GenotypeAnnotation;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
-import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
-import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
 import org.broadinstitute.gatk.utils.BaseUtils;
@@ -138,10 +137,10 @@ public class BaseCountsBySample extends GenotypeAnnotation {
             throw new IllegalStateException("VC alleles " + alleles + " not a strict subset of per read allele map alleles " + perReadAlleleLikelihoodMap.getAllelesSet());
 
         final int[] counts = new int[4];
-        for ( final Map.Entry<GATKSAMRecord,Map<Allele,Double>> el : perReadAlleleLikelihoodMap.getLikelihoodReadMap().entrySet()) {
-            final MostLikelyAllele a = PerReadAlleleLikelihoodMap.getMostLikelyAllele(el.getValue(), alleles);
-            if (! a.isInformative() ) continue; // read is non-informative
-            for (final byte base : el.getKey().getReadBases() ){
+        final ReadAlleleAssignments assignments = perReadAlleleLikelihoodMap.getReadAlleleAssignments(alleles);
+        for ( int i = 0; i < assignments.size(); i++ ) {
+            if (! assignments.isInformative(i) ) continue; // read is non-informative
+            for (final byte base : assignments.getRead(i).getReadBases() ){
                 int index = BaseUtils.simpleBaseToBaseIndex(base);
                 if ( index != -1 )
                     counts[index]++;
@@ -53,6 +53,7 @@ package org.broadinstitute.gatk.tools.walkers.annotator;
 
 import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.StandardHCAnnotation;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
@@ -79,6 +80,11 @@ public class ClippingRankSumTest extends RankSumTest implements StandardHCAnnota
     @Override
     public List<VCFInfoHeaderLine> getDescriptions() { return Arrays.asList(GATKVCFHeaderLines.getInfoLine(getKeyNames().get(0))); }
 
+    @Override
+    protected Double getElementForRead(final ReadAlleleAssignments assignments, final int i, final int refLoc) {
+        return (double)assignments.getHardClippedBases(i);
+    }
+
     @Override
     protected Double getElementForRead(final GATKSAMRecord read, final int refLoc) {
         return (double)AlignmentUtils.getNumHardClippedBases(read);
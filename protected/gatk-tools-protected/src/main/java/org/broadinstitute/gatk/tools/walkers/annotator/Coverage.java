@@ -109,7 +109,7 @@ public class Coverage extends InfoFieldAnnotation implements StandardAnnotation,
                 return null;
 
             for (PerReadAlleleLikelihoodMap maps : perReadAlleleLikelihoodMap.values() ) {
-                depth += maps.getLikelihoodReadMap().size();
+                depth += maps.size();
             }
         }
         else
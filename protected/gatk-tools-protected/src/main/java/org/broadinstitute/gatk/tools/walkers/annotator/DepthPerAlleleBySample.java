@@ -57,14 +57,13 @@ import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.AnnotatorCompatible;
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.GenotypeAnnotation;
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.StandardAnnotation;
-import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFFormatHeaderLine;
 import htsjdk.variant.vcf.VCFStandardHeaderLines;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
-import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
@@ -145,11 +144,12 @@ public class DepthPerAlleleBySample extends GenotypeAnnotation implements Standa
         final HashMap<Allele, Integer> alleleCounts = new HashMap<>();
         for ( final Allele allele : vc.getAlleles() ) { alleleCounts.put(allele, 0); }
 
-        for ( final Map.Entry<GATKSAMRecord,Map<Allele,Double>> el : perReadAlleleLikelihoodMap.getLikelihoodReadMap().entrySet()) {
-            final MostLikelyAllele a = PerReadAlleleLikelihoodMap.getMostLikelyAllele(el.getValue(), alleles);
-            if (! a.isInformative() ) continue; // read is non-informative
-            final int prevCount = alleleCounts.get(a.getMostLikelyAllele());
-            alleleCounts.put(a.getMostLikelyAllele(), prevCount + 1);
+        final ReadAlleleAssignments assignments = perReadAlleleLikelihoodMap.getReadAlleleAssignments(alleles);
+        for ( int i = 0; i < assignments.size(); i++ ) {
+            if (! assignments.isInformative(i) ) continue; // read is non-informative
+            final Allele a = assignments.getAlleleIfInformative(i);
+            final int prevCount = alleleCounts.get(a);
+            alleleCounts.put(a, prevCount + 1);
         }
 
         final int[] counts = new int[alleleCounts.size()];
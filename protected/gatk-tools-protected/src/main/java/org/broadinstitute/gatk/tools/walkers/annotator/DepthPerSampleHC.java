@@ -59,10 +59,9 @@ import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.StandardAnnota
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.StandardHCAnnotation;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
-import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
-import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
@@ -131,9 +130,9 @@ public class DepthPerSampleHC extends GenotypeAnnotation implements StandardHCAn
                 return;
             }
 
-            for (Map.Entry<GATKSAMRecord,Map<Allele,Double>> el : alleleLikelihoodMap.getLikelihoodReadMap().entrySet()) {
-                final MostLikelyAllele a = PerReadAlleleLikelihoodMap.getMostLikelyAllele(el.getValue(), alleles);
-                if ( a.isInformative() ) {
+            final ReadAlleleAssignments assignments = alleleLikelihoodMap.getReadAlleleAssignments(alleles);
+            for (int i = 0; i < assignments.size(); i++) {
+                if ( assignments.isInformative(i) ) {
                     dp++;
                 }
             }
@@ -52,6 +52,7 @@
 package org.broadinstitute.gatk.tools.walkers.annotator;
 
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.StandardAnnotation;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
@@ -89,6 +90,11 @@ public class MappingQualityRankSumTest extends RankSumTest implements StandardAn
     @Override
     public List<VCFInfoHeaderLine> getDescriptions() { return Arrays.asList(GATKVCFHeaderLines.getInfoLine(getKeyNames().get(0))); }
 
+    @Override
+    protected Double getElementForRead(final ReadAlleleAssignments assignments, final int i, final int refLoc) {
+        return (double)assignments.getMappingQuality(i);
+    }
+
     @Override
     protected Double getElementForRead(final GATKSAMRecord read, final int refLoc) {
         return (double)read.getMappingQuality();
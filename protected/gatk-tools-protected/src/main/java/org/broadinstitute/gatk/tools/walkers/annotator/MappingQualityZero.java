@@ -59,12 +59,12 @@ import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.AnnotatorCompa
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.InfoFieldAnnotation;
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.StandardUGAnnotation;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import htsjdk.variant.vcf.VCFStandardHeaderLines;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
-import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import htsjdk.variant.variantcontext.VariantContext;
 
 import java.util.Arrays;
@@ -131,9 +131,9 @@ public class MappingQualityZero extends InfoFieldAnnotation implements StandardU
 
         int mq0 = 0;
         for ( PerReadAlleleLikelihoodMap likelihoodMap : stratifiedPerReadAlleleLikelihoodMap.values() ) {
-            for (GATKSAMRecord read : likelihoodMap.getLikelihoodReadMap().keySet()) {
-
-                 if (read.getMappingQuality() == 0 )
+            final ReadAlleleAssignments assignments = likelihoodMap.getReadAlleleAssignments();
+            for (int i = 0; i < assignments.size(); i++) {
+                 if (assignments.getMappingQuality(i) == 0 )
                     mq0++;
             }
         }
@@ -57,6 +57,7 @@ import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.MannWhitneyU;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
@@ -175,14 +176,15 @@ public abstract class RankSumTest extends InfoFieldAnnotation implements ActiveR
                                             final PerReadAlleleLikelihoodMap likelihoodMap,
                                             final List<Double> refQuals,
                                             final List<Double> altQuals) {
-        for ( final Map.Entry<GATKSAMRecord, Map<Allele,Double>> el : likelihoodMap.getLikelihoodReadMap().entrySet() ) {
-            final MostLikelyAllele a = PerReadAlleleLikelihoodMap.getMostLikelyAllele(el.getValue());
-            if ( ! a.isInformative() )
+        final ReadAlleleAssignments assignments = likelihoodMap.getReadAlleleAssignments();
+        for ( int i = 0; i < assignments.size(); i++ ) {
+            if ( ! assignments.isInformative(i) )
                 continue; // read is non-informative
 
-            final GATKSAMRecord read = el.getKey();
+            final MostLikelyAllele a = assignments.getMostLikelyAllele(i);
+            final GATKSAMRecord read = assignments.getRead(i);
             if ( isUsableRead(read, refLoc) ) {
-                final Double value = getElementForRead(read, refLoc, a);
+                final Double value = getElementForRead(assignments, i, refLoc);
                 if ( value == null )
                     continue;
 
@@ -194,6 +196,21 @@ public abstract class RankSumTest extends InfoFieldAnnotation implements ActiveR
         }
     }
 
+    /**
+     * Get the element for a read of the shared per-site read allele assignments
+     *
+     * By default this defers to getElementForRead(read, refLoc, mostLikelyAllele); tests whose element is one
+     * of the per-read values kept by ReadAlleleAssignments can read it from there directly.
+     *
+     * @param assignments the read allele assignments of the sample's likelihood map
+     * @param i           the index of the read in assignments
+     * @param refLoc      the reference position
+     * @return a Double representing the element to be used in the rank sum test, or null if it should not be used
+     */
+    protected Double getElementForRead(final ReadAlleleAssignments assignments, final int i, final int refLoc) {
+        return getElementForRead(assignments.getRead(i), refLoc, assignments.getMostLikelyAllele(i));
+    }
+
     /**
      * Get the element for the given read at the given reference position
      *
@@ -62,8 +62,8 @@ import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.AnnotatorCompa
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.GenotypeAnnotation;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
-import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
@@ -148,11 +148,10 @@ public class StrandAlleleCountsBySample extends GenotypeAnnotation {
             // make sure that there's a meaningful relationship between the alleles in the perReadAlleleLikelihoodMap and our VariantContext
             if ( ! maps.getAllelesSet().isEmpty() && ! maps.getAllelesSet().containsAll(alleles) )
                 throw new IllegalStateException("VC alleles " + alleles + " not a strict subset of per read allele map alleles " + maps.getAllelesSet());
-            for (final Map.Entry<GATKSAMRecord,Map<Allele,Double>> el : maps.getLikelihoodReadMap().entrySet()) {
-                final MostLikelyAllele mostLikelyAllele = PerReadAlleleLikelihoodMap.getMostLikelyAllele(el.getValue(), alleles);
-                final GATKSAMRecord read = el.getKey();
-                if (mostLikelyAllele.isInformative())
-                    updateTable(table, vc.getAlleleIndex(mostLikelyAllele.getAlleleIfInformative()), read);
+            final ReadAlleleAssignments assignments = maps.getReadAlleleAssignments(alleles);
+            for (int i = 0; i < assignments.size(); i++) {
+                if (assignments.isInformative(i))
+                    updateTable(table, vc.getAlleleIndex(assignments.getAlleleIfInformative(i)), assignments.getRead(i));
             }
         }
 
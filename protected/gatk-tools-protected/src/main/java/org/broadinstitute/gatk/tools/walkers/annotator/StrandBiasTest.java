@@ -67,8 +67,8 @@ import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.InfoFieldAnnot
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypesContext;
 import org.broadinstitute.gatk.utils.QualityUtils;
-import org.broadinstitute.gatk.utils.genotyper.MostLikelyAllele;
 import org.broadinstitute.gatk.utils.genotyper.PerReadAlleleLikelihoodMap;
+import org.broadinstitute.gatk.utils.genotyper.ReadAlleleAssignments;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
@@ -271,10 +271,9 @@ public abstract class StrandBiasTest extends InfoFieldAnnotation implements Acti
 
         for (final PerReadAlleleLikelihoodMap maps : stratifiedPerReadAlleleLikelihoodMap.values() ) {
             final int[] myTable = new int[ARRAY_SIZE];
-            for (final Map.Entry<GATKSAMRecord,Map<Allele,Double>> el : maps.getLikelihoodReadMap().entrySet()) {
-                final MostLikelyAllele mostLikelyAllele = PerReadAlleleLikelihoodMap.getMostLikelyAllele(el.getValue());
-                final GATKSAMRecord read = el.getKey();
-                updateTable(myTable, mostLikelyAllele.getAlleleIfInformative(), read, ref, allAlts);
+            final ReadAlleleAssignments assignments = maps.getReadAlleleAssignments();
+            for (int i = 0; i < assignments.size(); i++) {
+                updateTable(myTable, assignments.getAlleleIfInformative(i), assignments.getRead(i), ref, allAlts);
             }
             if ( passesMinimumThreshold(myTable, minCount) )
                 copyToMainTable(myTable, table);
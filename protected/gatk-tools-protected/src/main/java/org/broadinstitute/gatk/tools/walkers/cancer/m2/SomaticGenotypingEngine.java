@@ -534,13 +534,10 @@ public class SomaticGenotypingEngine extends HaplotypeCallerGenotypingEngine {
 
         }
 
-        // perhaps moved into PRALM
-        final Iterator<Map.Entry<GATKSAMRecord, Map<Allele, Double>>> it = m.entrySet().iterator();
-        while ( it.hasNext() ) {
-            final Map.Entry<GATKSAMRecord, Map<Allele, Double>> record = it.next();
-            if(!readsToKeep.contains(record.getKey())) {
-                it.remove();
-                logM2Debug("Dropping read " + record.getKey() + " due to overlapping read fragment rules");
+        for ( final GATKSAMRecord read : new ArrayList<>(m.keySet()) ) {
+            if(!readsToKeep.contains(read)) {
+                pralm.remove(read);
+                logM2Debug("Dropping read " + read + " due to overlapping read fragment rules");
             }
         }
     }
@@ -63,6 +63,7 @@ import org.broadinstitute.gatk.engine.walkers.PartitionBy;
 import org.broadinstitute.gatk.engine.walkers.PartitionType;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
+import org.broadinstitute.gatk.utils.activeregion.LocusSummaryBatch;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
 
@@ -136,6 +137,23 @@ public class FindCoveredIntervals extends ActiveRegionWalker<GenomeLoc, Long> {
 
     }
 
+    @Override
+    public LocusSummaryBatch makeLocusSummaryBatch() {
+        // mirror the pileup filtering of the per-locus isActive, which filters on base quality >= coverageThreshold when no quality thresholds are given
+        if(minBaseQuality == 0 && minMappingQuality == 0)
+            return new LocusSummaryBatch(LocusSummaryBatch.DEFAULT_CAPACITY, coverageThreshold, -1);
+        else
+            return new LocusSummaryBatch(LocusSummaryBatch.DEFAULT_CAPACITY, minBaseQuality, minMappingQuality);
+    }
+
+    @Override
+    // Look to see if each locus in the batch has sufficient coverage
+    public void isActive(final LocusSummaryBatch batch, final double[] isActiveProbs) {
+        final int[] depths = batch.getQualifyingDepths();
+        for ( int i = 0; i < batch.size(); i++ )
+            isActiveProbs[i] = Math.min(depths[i] / coverageThreshold, 1);
+    }
+
     @Override
     public GenomeLoc map(final org.broadinstitute.gatk.utils.activeregion.ActiveRegion activeRegion, final RefMetaDataTracker tracker) {
         if ((!outputUncovered && activeRegion.isActive()) || (outputUncovered && !activeRegion.isActive()))
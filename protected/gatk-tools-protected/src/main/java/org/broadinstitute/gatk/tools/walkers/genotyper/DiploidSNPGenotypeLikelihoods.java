@@ -63,6 +63,8 @@ import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.Math.log10;
 import static java.lang.Math.pow;
@@ -177,8 +179,21 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
         // for each fragment, add to the likelihoods
         FragmentCollection<PileupElement> fpile = pileup.toFragments();
 
-        for ( PileupElement p : fpile.getSingletonReads() )
-            n += add(p, ignoreBadBases, capBaseQualsAtMappingQual, minBaseQual);
+        // the singleton reads add their likelihoods straight from the lookup table, in pileup order so that the sums
+        // are the same as adding the cached likelihoods of each observation
+        final double[] table = getSingleBaseLikelihoodTable();
+        for ( PileupElement p : fpile.getSingletonReads() ) {
+            final byte qual = qualToUse(p, ignoreBadBases, capBaseQualsAtMappingQual, minBaseQual);
+            if ( qual == 0 )
+                continue;
+            final int baseIndex = BaseUtils.simpleBaseToBaseIndex(p.getBase());
+            if ( baseIndex == -1 ) // only possible when not ignoring bad bases, so let the cache deal with it as it always did
+                n += add(p.getBase(), qual, (byte)0, (byte)0);
+            else {
+                addFromTable(table, baseQualIndex(baseIndex, qual));
+                n++;
+            }
+        }
 
         for ( List<PileupElement> overlappingPair : fpile.getOverlappingPairs() )
             n += add(overlappingPair, ignoreBadBases, capBaseQualsAtMappingQual, minBaseQual);
@@ -186,6 +201,58 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
         return n;
     }
 
+    /**
+     * Updates likelihoods to reflect a histogram of single base observations
+     *
+     * Each observation adds the precomputed genotype likelihoods of its (base, qual) from the lookup table of this
+     * PCR error rate, one observation at a time and in histogram order, so the result is the same as adding the
+     * observations one by one in that order.
+     *
+     * @param baseQualCounts the number of observations of each base and qual, indexed by {@link #baseQualIndex(int, int)}
+     *                       and {@link #BASE_QUAL_COUNTS_LENGTH} long.  Counts of qual 0 are ignored.
+     * @return the number of good bases added
+     */
+    public int add(final int[] baseQualCounts) {
+        if ( baseQualCounts == null || baseQualCounts.length != BASE_QUAL_COUNTS_LENGTH )
+            throw new IllegalArgumentException("baseQualCounts must be " + BASE_QUAL_COUNTS_LENGTH + " long");
+
+        final double[] table = getSingleBaseLikelihoodTable();
+        int n = 0;
+        for ( int i = 0; i < BASE_QUAL_COUNTS_LENGTH; i++ ) {
+            final int count = baseQualCounts[i];
+            if ( count == 0 || i % N_QUALS == 0 )
+                continue;
+            for ( int k = 0; k < count; k++ )
+                addFromTable(table, i);
+            n += count;
+        }
+        return n;
+    }
+
+    /**
+     * Add the likelihoods of one observation from the single base lookup table
+     *
+     * @param table the lookup table of this PCR error rate
+     * @param baseQualIndex the {@link #baseQualIndex(int, int)} of the observation
+     */
+    private void addFromTable(final double[] table, final int baseQualIndex) {
+        final int nGenotypes = log10Likelihoods.length;
+        final int offset = baseQualIndex * nGenotypes;
+        for ( int g = 0; g < nGenotypes; g++ )
+            log10Likelihoods[g] += table[offset + g];
+    }
+
+    /**
+     * Get the position of a base and qual in a histogram of single base observations
+     *
+     * @param baseIndex the index of the base, as given by {@link BaseUtils#simpleBaseToBaseIndex(byte)}
+     * @param qual the base quality
+     * @return an index into an array {@link #BASE_QUAL_COUNTS_LENGTH} long
+     */
+    public static int baseQualIndex(final int baseIndex, final int qual) {
+        return baseIndex * N_QUALS + qual;
+    }
+
     public int add(PileupElement elt, boolean ignoreBadBases, boolean capBaseQualsAtMappingQual, int minBaseQual) {
         byte obsBase = elt.getBase();
         byte qual = qualToUse(elt, ignoreBadBases, capBaseQualsAtMappingQual, minBaseQual);
@@ -261,6 +328,36 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
     //
     // -------------------------------------------------------------------------------------
 
+    private final static int N_QUALS = QualityUtils.MAX_SAM_QUAL_SCORE + 1;
+
+    /**
+     * The length of a histogram of single base observations, see {@link #add(int[])}
+     */
+    public final static int BASE_QUAL_COUNTS_LENGTH = BaseUtils.BASES.length * N_QUALS;
+
+    /**
+     * The genotype likelihoods of every single base observation, laid out flat as the 10 genotype likelihoods of each
+     * {@link #baseQualIndex(int, int)} in turn, per PCR error rate
+     */
+    private final static Map<Double, double[]> SINGLE_BASE_LIKELIHOOD_TABLES = new ConcurrentHashMap<>();
+
+    private double[] getSingleBaseLikelihoodTable() {
+        final Double key = log10_PCR_error_3;
+        double[] table = SINGLE_BASE_LIKELIHOOD_TABLES.get(key);
+        if ( table == null ) {
+            // the values are computed exactly as for the per-observation cache, so both give the same likelihoods
+            final int nGenotypes = DiploidGenotype.values().length;
+            table = new double[BASE_QUAL_COUNTS_LENGTH * nGenotypes];
+            for ( int baseIndex = 0; baseIndex < BaseUtils.BASES.length; baseIndex++ )
+                for ( int qual = 1; qual < N_QUALS; qual++ ) {
+                    final double[] likelihoods = calculateGenotypeLikelihoods(BaseUtils.BASES[baseIndex], (byte)qual, (byte)0, (byte)0).getLikelihoods();
+                    System.arraycopy(likelihoods, 0, table, baseQualIndex(baseIndex, qual) * nGenotypes, nGenotypes);
+                }
+            SINGLE_BASE_LIKELIHOOD_TABLES.put(key, table);
+        }
+        return table;
+    }
+
     static DiploidSNPGenotypeLikelihoods[][][][][] CACHE = new DiploidSNPGenotypeLikelihoods[BaseUtils.BASES.length][QualityUtils.MAX_SAM_QUAL_SCORE +1][BaseUtils.BASES.length+1][QualityUtils.MAX_SAM_QUAL_SCORE +1][MAX_PLOIDY];
 
     protected boolean inCache(byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2, int ploidy) {
@@ -202,8 +202,7 @@ public class GenotypeAlleleCounts implements Comparable<GenotypeAlleleCounts>, C
      * Increases the allele counts a number of times.
      *
      * <p>
-     *     This method must not be invoked on cached genotype-allele-counts that are meant to remain constant,
-     *     such as the ones contained in {@link GenotypeLikelihoodCalculators#genotypeTableByPloidy}.
+     *     This method must not be invoked on genotype-allele-counts that are shared and meant to remain constant.
      * </p>
      *
      * @param times the number of times to increase.
@@ -219,8 +218,7 @@ public class GenotypeAlleleCounts implements Comparable<GenotypeAlleleCounts>, C
      * Updates the genotype counts to match the next genotype.
      *
      * <p>
-     *     This method must not be invoked on cached genotype-allele-counts that are meant to remain constant,
-     *     such as the ones contained in {@link GenotypeLikelihoodCalculators#genotypeTableByPloidy}
+     *     This method must not be invoked on genotype-allele-counts that are shared and meant to remain constant.
      * </p>
      */
     protected void increase() {
@@ -665,6 +663,22 @@ public class GenotypeAlleleCounts implements Comparable<GenotypeAlleleCounts>, C
             return new GenotypeAlleleCounts(ploidy, 0, 0, ploidy);
     }
 
+    /**
+     * Instantiates a genotype given its index and sorted allele counts.
+     *
+     * <p>As with {@link #GenotypeAlleleCounts(int, int, int...)} no checks are done, and {@code sortedAlleleCounts} is
+     * used as it is rather than copied.</p>
+     *
+     * @param ploidy the ploidy of the genotype.
+     * @param index the genotype index.
+     * @param sortedAlleleCounts sorted allele counts as described in {@link #GenotypeAlleleCounts(int, int, int...)}.
+     *
+     * @return never {@code null}.
+     */
+    protected static GenotypeAlleleCounts fromSortedAlleleCounts(final int ploidy, final int index, final int[] sortedAlleleCounts) {
+        return new GenotypeAlleleCounts(ploidy, index, sortedAlleleCounts);
+    }
+
     /**
      * Makes the next genotype in likelihood indexing order.
      *
@@ -57,6 +57,8 @@ import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.collections.IntMaxHeap;
 import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
 
+import java.util.Arrays;
+
 /**
  * Helper to calculate genotype likelihoods given a ploidy and an allele count (number of possible distinct alleles).
  *
@@ -77,7 +79,7 @@ public class GenotypeLikelihoodCalculator {
      * Offset table for this calculator.
      *
      * <p>
-     *     This is a shallow copy of {@link GenotypeLikelihoodCalculators#alleleFirstGenotypeOffsetByPloidy} when the calculator was created
+     *     This is a shallow copy of the shared offset table in {@link GenotypeLikelihoodCalculators} when the calculator was created
      *     thus it follows the same format as that array. Please refer to its documentation.
      * </p>
      *
@@ -87,14 +89,6 @@ public class GenotypeLikelihoodCalculator {
      */
     private final int[][] alleleFirstGenotypeOffsetByPloidy;
 
-    /**
-     * Genotype table for this calculator.
-     *
-     * <p>It is ensure that it contains all the genotypes for this calculator ploidy and allele count, maybe more. For
-     * that reason you must use {@link #genotypeCount} when iterating through this array and not relay on its length.</p>
-     */
-    private final GenotypeAlleleCounts[] genotypeAlleleCounts;
-
     /**
      * Number of genotypes given this calculator {@link #ploidy} and {@link #alleleCount}.
      */
@@ -116,10 +110,16 @@ public class GenotypeLikelihoodCalculator {
     private final IntMaxHeap alleleHeap;
 
     /**
-     * Cache of the last genotype-allele-count requested using {@link #genotypeAlleleCountsAt(int)}, when it
-     * goes beyond the maximum genotype-allele-count static capacity. Check on that method documentation for details.
+     * Largest number of genotypes {@link #genotypeAlleleCountsAt(int)} steps through from the last requested one before
+     * it rather builds the requested one from scratch.
+     */
+    private static final int MAXIMUM_GENOTYPE_STEPS = 16;
+
+    /**
+     * Cache of the last genotype-allele-count requested using {@link #genotypeAlleleCountsAt(int)}. Check on that
+     * method documentation for details.
      */
-    private transient GenotypeAlleleCounts lastOverheadCounts;
+    private transient GenotypeAlleleCounts lastGenotypeAlleleCounts;
 
     /**
      * Buffer used as a temporary container for likelihood components for genotypes stratified by alleles, allele frequency and reads.
@@ -160,7 +160,7 @@ public class GenotypeLikelihoodCalculator {
 
     /**
      * Caches the log10 of the first few integers up to the ploidy supported by the calculator.
-     * <p>This is in fact a shallow copy if {@link GenotypeLikelihoodCalculators#ploidyLog10}</p> and is not meant to be modified by
+     * <p>This is in fact a shallow copy of the shared log10 cache in {@link GenotypeLikelihoodCalculators} and is not meant to be modified by
      * this class. </p>
      */
     private final double[] log10;
@@ -203,10 +203,8 @@ public class GenotypeLikelihoodCalculator {
      */
     protected GenotypeLikelihoodCalculator(final int ploidy, final int alleleCount,
                                           final int[][] alleleFirstGenotypeOffsetByPloidy,
-                                          final GenotypeAlleleCounts[][] genotypeTableByPloidy,
                                           final double[] ploidyLog10) {
         this.alleleFirstGenotypeOffsetByPloidy = alleleFirstGenotypeOffsetByPloidy;
-        genotypeAlleleCounts = genotypeTableByPloidy[ploidy];
         this.alleleCount = alleleCount;
         this.ploidy = ploidy;
         genotypeCount = this.alleleFirstGenotypeOffsetByPloidy[ploidy][alleleCount];
@@ -277,13 +275,12 @@ public class GenotypeLikelihoodCalculator {
     /**
      * Returns the genotype associated to a particular likelihood index.
      *
-     * <p>If {@code index} is larger than {@link GenotypeLikelihoodCalculators#MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY},
-     *  this method will reconstruct that genotype-allele-count iteratively from the largest strongly referenced count available.
-     *  or the last requested index genotype.
+     * <p>If {@code index} is a few genotypes after the last requested one, this method reaches it by stepping through
+     *  the genotypes in between; otherwise it builds it straight from the offset table in O(ploidy + alleleCount), no
+     *  matter how large the index is.
      *  </p>
      *
-     * <p> Therefore if you are iterating through all genotype-allele-counts you should do sequentially and incrementally, to
-     * avoid a large efficiency drop </p>.
+     * <p>The result is a new independent instance that the caller is free to keep.</p>
      *
      * @param index query likelihood-index.
      * @return never {@code null}.
@@ -292,17 +289,53 @@ public class GenotypeLikelihoodCalculator {
         if (index < 0 || index >= genotypeCount)
             throw new IllegalArgumentException("invalid likelihood index: " + index + " >= " + genotypeCount
                     + " (genotype count for nalleles = " + alleleCount + " and ploidy " + ploidy );
-        if (index < GenotypeLikelihoodCalculators.MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY)
-            return genotypeAlleleCounts[index];
-        else if (lastOverheadCounts == null || lastOverheadCounts.index() > index) {
-            final GenotypeAlleleCounts result = genotypeAlleleCounts[GenotypeLikelihoodCalculators.MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY - 1].clone();
-            result.increase(index - GenotypeLikelihoodCalculators.MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY + 1);
-            lastOverheadCounts = result;
-            return result.clone();
+        final GenotypeAlleleCounts last = lastGenotypeAlleleCounts;
+        if (last != null && last.index() <= index && index - last.index() <= MAXIMUM_GENOTYPE_STEPS) {
+            last.increase(index - last.index());
+            return last.clone();
         } else {
-            lastOverheadCounts.increase(index - lastOverheadCounts.index());
-            return lastOverheadCounts.clone();
+            final GenotypeAlleleCounts result = unrankGenotypeAlleleCounts(index);
+            lastGenotypeAlleleCounts = result;
+            return result.clone();
+        }
+    }
+
+    /**
+     * Builds the genotype-allele-counts for a likelihood index, the inverse of {@link #alleleHeapToIndex()}.
+     *
+     * <p>
+     *     The index is the sum of the offsets of the genotype alleles taken from the largest to the smallest, with
+     *     the ploidy decreasing by one after each (see {@link GenotypeLikelihoodCalculators}). Thus the largest allele
+     *     is the largest one whose offset for the full ploidy does not exceed the index; the rest of the genotype is
+     *     the one of the remaining index with one less ploidy, and so forth.
+     * </p>
+     *
+     * @param index a valid likelihood index.
+     * @return never {@code null}.
+     */
+    private GenotypeAlleleCounts unrankGenotypeAlleleCounts(final int index) {
+        final int[] sortedAlleleCounts = new int[maximumDistinctAllelesInGenotype << 1];
+        int remaining = index;
+        int allele = alleleCount - 1;
+        int componentCount = 0;
+        // Alleles come out in decreasing order so we fill the sorted allele counts backwards and move them to the front at the end.
+        int next = sortedAlleleCounts.length;
+        for (int p = ploidy; p > 0; p--) {
+            final int[] offsets = alleleFirstGenotypeOffsetByPloidy[p];
+            while (offsets[allele] > remaining)
+                allele--;
+            remaining -= offsets[allele];
+            if (componentCount > 0 && sortedAlleleCounts[next] == allele)
+                sortedAlleleCounts[next + 1]++;
+            else {
+                next -= 2;
+                sortedAlleleCounts[next] = allele;
+                sortedAlleleCounts[next + 1] = 1;
+                componentCount++;
+            }
         }
+        final int[] result = next == 0 ? sortedAlleleCounts : Arrays.copyOfRange(sortedAlleleCounts, next, sortedAlleleCounts.length);
+        return GenotypeAlleleCounts.fromSortedAlleleCounts(ploidy, index, result);
     }
 
     /**
@@ -372,8 +405,8 @@ public class GenotypeLikelihoodCalculator {
     private double[][] genotypeLikelihoodByRead(final double[] readLikelihoodComponentsByAlleleCount, final int readCount) {
 
         // Here we don't use the convenience of {@link #genotypeAlleleCountsAt(int)} within the loop to spare instantiations of
-        // GenotypeAlleleCounts class when we are dealing with many genotypes.
-        GenotypeAlleleCounts alleleCounts = genotypeAlleleCounts[0];
+        // GenotypeAlleleCounts class when we are dealing with many genotypes; a single one is updated in place instead.
+        final GenotypeAlleleCounts alleleCounts = GenotypeAlleleCounts.first(ploidy);
 
         for (int genotypeIndex = 0; genotypeIndex < genotypeCount; genotypeIndex++) {
             final double[] readLikelihoods = this.readLikelihoodsByGenotypeIndex[genotypeIndex];
@@ -389,27 +422,11 @@ public class GenotypeLikelihoodCalculator {
                     manyComponentGenotypeLikelihoodByRead(alleleCounts,readLikelihoods,readLikelihoodComponentsByAlleleCount, readCount);
             }
             if (genotypeIndex < genotypeCount - 1)
-                alleleCounts = nextGenotypeAlleleCounts(alleleCounts);
+                alleleCounts.increase();
         }
         return readLikelihoodsByGenotypeIndex;
     }
 
-    private GenotypeAlleleCounts nextGenotypeAlleleCounts(final GenotypeAlleleCounts alleleCounts) {
-        final int index = alleleCounts.index();
-        final GenotypeAlleleCounts result;
-        final int cmp = index - GenotypeLikelihoodCalculators.MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY + 1;
-        if (cmp < 0)
-            result = genotypeAlleleCounts[index + 1];
-        else if (cmp == 0) {
-            result = genotypeAlleleCounts[index].clone();
-            result.increase();
-        } else {
-            alleleCounts.increase();
-            result = alleleCounts;
-        }
-        return result;
-    }
-
     /**
      * General genotype likelihood component by thread calculator. It does not make any assumption in the exact
      * number of alleles present in the genotype.
@@ -450,13 +467,10 @@ public class GenotypeLikelihoodCalculator {
         final int freq0 = genotypeAlleleCounts.alleleCountAt(0);
         final int allele1 = genotypeAlleleCounts.alleleIndexAt(1);
         final int freq1 = ploidy - freq0; // no need to get it from genotypeAlleleCounts.
-        int allele0LnLkOffset = readCount * ((ploidy + 1) * allele0 + freq0);
-        int allele1LnLkOffset = readCount * ((ploidy + 1) * allele1 + freq1);
-        for (int r = 0; r < readCount; r++) {
-            final double lnLk0 = readLikelihoodComponentsByAlleleCount[allele0LnLkOffset++];
-            final double lnLk1 = readLikelihoodComponentsByAlleleCount[allele1LnLkOffset++];
-            likelihoodByRead[r] = MathUtils.approximateLog10SumLog10(lnLk0,lnLk1);
-        }
+        final int allele0LnLkOffset = readCount * ((ploidy + 1) * allele0 + freq0);
+        final int allele1LnLkOffset = readCount * ((ploidy + 1) * allele1 + freq1);
+        MathUtils.approximateLog10SumLog10(readLikelihoodComponentsByAlleleCount, allele0LnLkOffset,
+                readLikelihoodComponentsByAlleleCount, allele1LnLkOffset, likelihoodByRead, 0, readCount);
     }
 
     /**
@@ -602,11 +616,11 @@ public class GenotypeLikelihoodCalculator {
         final int[] result = new int[resultLength];
         final int[] sortedAlleleCounts = new int[Math.max(ploidy,alleleCount) << 1];
         alleleHeap.clear();
-        GenotypeAlleleCounts alleleCounts = genotypeAlleleCounts[0];
+        final GenotypeAlleleCounts alleleCounts = GenotypeAlleleCounts.first(ploidy);
         for (int i = 0; i < resultLength; i++) {
             genotypeIndexMapPerGenotypeIndex(i,alleleCounts, oldToNewAlleleIndexMap, result, sortedAlleleCounts);
             if (i < resultLength - 1)
-                  alleleCounts = nextGenotypeAlleleCounts(alleleCounts);
+                  alleleCounts.increase();
         }
         return result;
     }
@@ -62,6 +62,13 @@ import java.util.Arrays;
  * </p>
  *
  * <p>
+ *     The only shared state is a small table of primitive genotype offsets (see {@link #extendAlleleFirstGenotypeOffsetTable})
+ *     that is enough to go from a genotype to its likelihood index and back, so that there is no need to keep the genotypes
+ *     themselves around. When larger ploidies or allele counts are requested the table is extended, reusing what was already
+ *     calculated, and swapped with a single volatile write.
+ * </p>
+ *
+ * <p>
  *     This class is thread-safe.
  * </p>
  *
@@ -69,58 +76,60 @@ import java.util.Arrays;
  */
 public class GenotypeLikelihoodCalculators {
 
-    /**
-     * Maximum possible number of genotypes that this calculator can handle.
-     */
-    public static final int MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY = 1000;
-
     /**
      * Mark to indicate genotype-count overflow due to a large number of allele and ploidy;
      */
     protected static final int GENOTYPE_COUNT_OVERFLOW = -1;
 
     /**
-     * The current maximum allele index supported by the tables.
-     * <p>
-     *     Its initial value indicates the initial capacity of the shared {@link #alleleFirstGenotypeOffsetByPloidy} table.
-     *     Feel free to change it to anything reasonable that is non-negative.
-     * </p>
-     */
-    private static int maximumAllele = 1; // its initial value is the initial capacity of the shared tables.
-
-    /**
-     * The current maximum ploidy supported by the tables.
+     * Shared tables supporting the largest ploidy and allele index requested so far.
+     *
      * <p>
-     *     Its initial value indicates the initial capacity of the shared {@link #genotypeTableByPloidy}. Feel free
-     *     to change it to anything reasonable that is non-negative.
+     *     Its initial capacity is ploidy 2 and maximum allele index 1. Feel free to change it to anything reasonable that is non-negative.
      * </p>
      */
-    private static int maximumPloidy = 2; // its initial value is the initial capacity of the shared tables.
+    private volatile static Tables tables = new Tables(null, 2, 1);
 
     /**
-     * Shared copy of the offset table as described in {@link #buildGenotypeAlleleCountsTable(int, int, int[][])}.
-     *
-     * This reference holds the largest requested so far in terms of maximum-allele and maximum-ploidy.
-     */
-    private volatile static int[][] alleleFirstGenotypeOffsetByPloidy =
-            buildAlleleFirstGenotypeOffsetTable(maximumPloidy, maximumAllele);
-
-
-    /**
-     * Shared table of genotypes give the ploidy sorted by their index in the likelihood array.
-     *
-     * <p>
-     *  Its format is described in {@link #buildGenotypeAlleleCountsTable(int, int, int[][])}.
-     * </p>
+     * Immutable snapshot of the shared tables.
      */
-    private volatile static GenotypeAlleleCounts[][] genotypeTableByPloidy =
-            buildGenotypeAlleleCountsTable(maximumPloidy,maximumAllele,alleleFirstGenotypeOffsetByPloidy);
-
-
+    private final static class Tables {
+
+        /**
+         * Offset table as described in {@link #extendAlleleFirstGenotypeOffsetTable(int[][], int, int)}.
+         */
+        private final int[][] alleleFirstGenotypeOffsetByPloidy;
+
+        /**
+         * Cached log10 values for the first integers up to the maximum ploidy.
+         */
+        private final double[] ploidyLog10;
+
+        /**
+         * Creates the tables for the requested capacity, extending a previous version of them if any.
+         */
+        private Tables(final Tables previous, final int maximumPloidy, final int maximumAllele) {
+            alleleFirstGenotypeOffsetByPloidy = extendAlleleFirstGenotypeOffsetTable(previous == null ? null : previous.alleleFirstGenotypeOffsetByPloidy,
+                    maximumPloidy, maximumAllele);
+            ploidyLog10 = extendPloidyLog10(previous == null ? new double[0] : previous.ploidyLog10, maximumPloidy);
+        }
+
+        private int maximumPloidy() {
+            return alleleFirstGenotypeOffsetByPloidy.length - 1;
+        }
+
+        private int maximumAllele() {
+            return alleleFirstGenotypeOffsetByPloidy[0].length - 1;
+        }
+
+        private boolean supports(final int ploidy, final int maximumAllele) {
+            return ploidy <= maximumPloidy() && maximumAllele <= maximumAllele();
+        }
+    }
 
     /**
      * Build the table with the genotype offsets based on ploidy and the maximum allele index with representation
-     * in the genotype.
+     * in the genotype, or extend a smaller one.
      * <p>
      * The result is a matrix containing the offset of the first genotype that contain a particular allele
      * stratified by ploidy.
@@ -185,6 +194,12 @@ public class GenotypeLikelihoodCalculators {
      *     Offsets in this row are 0 for the first column and 1 for any others.
      * </p>
      *
+     * <p>
+     *     The values of {@code table} are copied rather than recalculated, and its rows are reused as they are when
+     *     the number of columns does not change. Once an offset overflows every offset to its right and below does too.
+     * </p>
+     *
+     * @param table the table to extend, {@code null} to build one from scratch.
      * @param maximumPloidy maximum supported ploidy.
      * @param maximumAllele maximum supported allele index.
      *
@@ -193,116 +208,58 @@ public class GenotypeLikelihoodCalculators {
      * @return never {@code null}, the matrix described with enough information to address
      *       problems concerning up to the requested maximum allele index and ploidy.
      */
-    private static int[][] buildAlleleFirstGenotypeOffsetTable(final int maximumPloidy, final int maximumAllele) {
+    private static int[][] extendAlleleFirstGenotypeOffsetTable(final int[][] table, final int maximumPloidy, final int maximumAllele) {
         checkPloidyAndMaximumAllele(maximumPloidy, maximumAllele);
         final int rowCount = maximumPloidy + 1;
         final int colCount = maximumAllele + 1;
-        final int[][] result = new int[rowCount][colCount];
-
-        // Ploidy 0 array must be { 0, 1, 1, ...., 1}
-        Arrays.fill(result[0],1,colCount,1);
-        // Now we take care of the rest of ploidies.
-        // We leave the first allele offset to it correct value 0 by starting with allele := 1.
-        for (int ploidy = 1; ploidy < rowCount; ploidy++)
-            for (int allele = 1; allele < colCount; allele++) {
-                result[ploidy][allele] = result[ploidy][allele - 1] + result[ploidy - 1][allele];
-                if (result[ploidy][allele] < result[ploidy][allele - 1])
-                    result[ploidy][allele] = GENOTYPE_COUNT_OVERFLOW;
+        final int oldRowCount = table == null ? 0 : table.length;
+        final int oldColCount = table == null ? 0 : table[0].length;
+        final int[][] result = new int[rowCount][];
+
+        for (int ploidy = 0; ploidy < rowCount; ploidy++) {
+            final int firstNewAllele;
+            if (ploidy >= oldRowCount) {
+                result[ploidy] = new int[colCount];
+                firstNewAllele = 0;
+            } else if (colCount == oldColCount) {
+                result[ploidy] = table[ploidy];
+                continue;
+            } else {
+                result[ploidy] = Arrays.copyOf(table[ploidy], colCount);
+                firstNewAllele = oldColCount;
             }
+            // Ploidy 0 array must be { 0, 1, 1, ...., 1}, and the first allele offset is always 0.
+            for (int allele = Math.max(1, firstNewAllele); allele < colCount; allele++)
+                result[ploidy][allele] = ploidy == 0 ? 1 : addOffsets(result[ploidy][allele - 1], result[ploidy - 1][allele]);
+        }
         return result;
     }
 
-    /**
-     * Composes a table with the lists of all possible genotype allele counts given the the ploidy and maximum allele index.
-     * <p>
-     *     The resulting matrix has at least as many rows as {@code maximumPloidy } + 1 as the first row with index 0 correspond
-     *     to ploidy == 0. Each row array has as many positions as necessary to contain all possible genotype-allele-counts in increasing order.
-     *     This quantity varies with the ploidy.
-     * </p>
-     *
-     * <p>
-     *     Therefore <code>result[3][4]</code> would contain the 5th genotype with ploidy 3, and <code>result[4].length</code>
-     *     would be equal to the count of possible genotypes for ploidy 4.
-     * </p>
-     *
-     * @param maximumPloidy maximum ploidy to use in queries to the resulting table.
-     * @param maximumAllele maximum allele index to use in queries to the resulting table.
-     * @param offsetTable an allele first genotype offset table as constructed using {@link #buildAlleleFirstGenotypeOffsetTable(int, int)}
-     *                    that supports at least up to {@code maximumAllele} and {@code maximumPloidy}.
-     *
-     * @throws IllegalArgumentException if {@code maximumPloidy} or {@code maximumAllele} is negative, or {@code offsetTable} is {@code null},
-     *   or it does not have the capacity to handle the requested maximum ploidy or allele index.
-     *
-     * @return never {@code null}.
-     */
-    private static GenotypeAlleleCounts[][] buildGenotypeAlleleCountsTable(final int maximumPloidy, final int maximumAllele, final int[][] offsetTable) {
-        checkPloidyAndMaximumAllele(maximumPloidy, maximumAllele);
-        checkOffsetTableCapacity(offsetTable,maximumPloidy,maximumAllele);
-        final int rowCount = maximumPloidy + 1;
-        final GenotypeAlleleCounts[][] result = new GenotypeAlleleCounts[rowCount][]; // each row has a different number of columns.
-
-        for (int ploidy = 0; ploidy <= maximumPloidy; ploidy++)
-            result[ploidy] = buildGenotypeAlleleCountsArray(ploidy, maximumAllele, offsetTable);
-
-        return result;
+    private static int addOffsets(final int left, final int up) {
+        if (left == GENOTYPE_COUNT_OVERFLOW || up == GENOTYPE_COUNT_OVERFLOW)
+            return GENOTYPE_COUNT_OVERFLOW;
+        final long sum = (long) left + up;
+        return sum > Integer.MAX_VALUE ? GENOTYPE_COUNT_OVERFLOW : (int) sum;
     }
 
     /**
-     * Builds a genotype-allele-counts array given the genotype ploidy and how many genotype you need.
-     * <p>
-     *     The result is guarantee to have exactly {@code length} positions and the elements are sorted
-     *     in agreement with the standard way to display genotypes following the VCF standard.
-     * </p>
+     * Extends a log10 cache with the log10 of more integers as needed by maximum-ploidy expansion.
      *
-     * <p> Notice that is possible to request ploidy ==0. In that case the resulting array will have repetitions
-     * of the empty genotype allele count.
-     * </p>
-     *
-     * <p>
-     *     For example,
-     *
-     *     <pre>
-     *         ploidy = 1, length = 5 : [ {A}, {B}, {C}, {D}, {E} ]
-     *         ploidy = 2, length = 7 : [ {AA}, {AB}, {BB}, {AC}, {BC}, {CC}, {AD}
-     *         ploidy = 3, length = 10 : [ {AAA}, {AAB}, {ABB}, {BBB}, {AAC}, {ABC}, {BBC}, {BCC}, {CCC}, {AAD} ]
-     *     </pre>
-     * </p>
-     *
-     * @param ploidy requested ploidy.
-     * @param alleleCount number of different alleles that the genotype table must support.
-     * @param genotypeOffsetTable table with the offset of the first genotype that contain an allele given
-     *                            the ploidy and its index.
-     *
-     * @throws IllegalArgumentException if {@code ploidy} or {@code length} is negative.
+     * @param ploidyLog10 the cache to extend.
+     * @param newMaximumPloidy the new maximum ploidy.
      *
-     * @return never {@code null}, follows the specification above.
+     * @return never code {@code null}.
      */
-    private static GenotypeAlleleCounts[] buildGenotypeAlleleCountsArray(final int ploidy, final int alleleCount, final int[][] genotypeOffsetTable) {
-        if (ploidy < 0)
-            throw new IllegalArgumentException("the requested ploidy cannot be negative: " + ploidy);
-        if (alleleCount < 0)
-            throw new IllegalArgumentException("the requested maximum allele cannot be negative: " + alleleCount);
-        final int length = genotypeOffsetTable[ploidy][alleleCount];
-        final int strongRefLength = length == GENOTYPE_COUNT_OVERFLOW ? MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY : Math.min(length, MAXIMUM_STRONG_REF_GENOTYPE_PER_PLOIDY);
-        final GenotypeAlleleCounts[] result = new GenotypeAlleleCounts[strongRefLength];
-        result[0] = GenotypeAlleleCounts.first(ploidy);
-        for (int genotypeIndex = 1; genotypeIndex < strongRefLength; genotypeIndex++)
-            result[genotypeIndex] = result[genotypeIndex-1].next();
+    private static double[] extendPloidyLog10(final double[] ploidyLog10, final int newMaximumPloidy) {
+        final int start = ploidyLog10.length;
+        if (start > newMaximumPloidy)
+            return ploidyLog10;
+        final double[] result = Arrays.copyOf(ploidyLog10, newMaximumPloidy + 1);
+        for (int i = start; i < result.length; i++)
+            result[i] = Math.log10(i);
         return result;
     }
 
-    /**
-     * Cached log10 values for the first integer up to the maximum ploidy requested thus far.
-     */
-    private volatile static double[] ploidyLog10;
-
-    // Initialize {@link #ploidyLog10}.
-    static {
-        ploidyLog10 = new double[maximumPloidy + 1];
-        for (int i = 0; i <= maximumPloidy; i++)
-            ploidyLog10[i] = Math.log10(i);
-    }
-
     /**
      * Returns an instance given its ploidy and the number of alleles.
      *
@@ -316,66 +273,53 @@ public class GenotypeLikelihoodCalculators {
      */
     public static GenotypeLikelihoodCalculator getInstance(final int ploidy,
                                                    final int alleleCount) {
-        checkPloidyAndMaximumAllele(ploidy, alleleCount);
-
-        // Non-thread safe (fast) check on tables capacities,
-        // if not enough capacity we expand the tables in a thread-safe manner:
-        if (alleleCount > maximumAllele || ploidy > maximumPloidy)
-            ensureCapacity(alleleCount, ploidy);
+        final Tables tables = tablesFor(ploidy, alleleCount);
+        return new GenotypeLikelihoodCalculator(ploidy, alleleCount, tables.alleleFirstGenotypeOffsetByPloidy, tables.ploidyLog10);
+    }
 
-        // At this point the tables must have at least the requested capacity, likely to be much more.
-        return new GenotypeLikelihoodCalculator(ploidy,alleleCount,alleleFirstGenotypeOffsetByPloidy,genotypeTableByPloidy,ploidyLog10);
+    /**
+     * Returns shared tables with at least the requested capacity.
+     *
+     * @param ploidy the requested ploidy.
+     * @param maximumAllele the requested maximum allele.
+     *
+     * @throws IllegalArgumentException if {@code ploidy} or {@code maximumAllele} is negative.
+     *
+     * @return never {@code null}.
+     */
+    private static Tables tablesFor(final int ploidy, final int maximumAllele) {
+        checkPloidyAndMaximumAllele(ploidy, maximumAllele);
+        final Tables current = tables;
+        return current.supports(ploidy, maximumAllele) ? current : ensureCapacity(maximumAllele, ploidy);
     }
 
     /**
      * Thread safe update of shared tables
      *
+     * <p>
+     *     Capacity is at least doubled on each expansion so that a run with slowly increasing ploidies or allele counts
+     *     only extends the tables a few times.
+     * </p>
+     *
      * @param requestedMaximumAllele the new requested maximum allele maximum.
      * @param requestedMaximumPloidy the new requested ploidy maximum.
+     *
+     * @return never {@code null}.
      */
-    private synchronized static void ensureCapacity(final int requestedMaximumAllele, final int requestedMaximumPloidy) {
-
-        final boolean needsToExpandAlleleCapacity = requestedMaximumAllele > maximumAllele;
-        final boolean needsToExpandPloidyCapacity = requestedMaximumPloidy > maximumPloidy;
+    private synchronized static Tables ensureCapacity(final int requestedMaximumAllele, final int requestedMaximumPloidy) {
+        final Tables current = tables;
 
         // Double check with the lock on to avoid double work.
-        if (!needsToExpandAlleleCapacity && !needsToExpandPloidyCapacity)
-            return;
+        if (current.supports(requestedMaximumPloidy, requestedMaximumAllele))
+            return current;
 
-        final int newMaximumPloidy = Math.max(maximumPloidy,requestedMaximumPloidy);
-        final int newMaximumAllele = Math.max(maximumAllele,requestedMaximumAllele);
+        final int newMaximumPloidy = requestedMaximumPloidy > current.maximumPloidy()
+                ? Math.max(requestedMaximumPloidy, current.maximumPloidy() << 1) : current.maximumPloidy();
+        final int newMaximumAllele = requestedMaximumAllele > current.maximumAllele()
+                ? Math.max(requestedMaximumAllele, current.maximumAllele() << 1) : current.maximumAllele();
 
-        // Update tables first.
-        alleleFirstGenotypeOffsetByPloidy = buildAlleleFirstGenotypeOffsetTable(newMaximumPloidy,newMaximumAllele);
-        genotypeTableByPloidy = buildGenotypeAlleleCountsTable(newMaximumPloidy,newMaximumAllele,alleleFirstGenotypeOffsetByPloidy);
-
-        if (needsToExpandPloidyCapacity)
-            ploidyLog10 = ploidyLog10Extension(newMaximumPloidy);
-
-        // Since tables are volatile fields, it is guaranteed that tables changes will be seen before
-        // than any change on ploidyCapacity and alleleCapacity ensuring that the non-thread safe
-        // capacity verification test in {@link #getInstance} wont ever allow a thread
-        // to proceed to use a table without the required capacity.
-        // Just after updating tables update the capacity fields:
-
-        if (needsToExpandAlleleCapacity)
-            maximumAllele = requestedMaximumAllele;
-        if (needsToExpandPloidyCapacity)
-            maximumPloidy = requestedMaximumPloidy;
-    }
-
-    /**
-     * Extends the existing {@link #ploidyLog10} with more log10 as needed by maximum-ploidy expansion.
-     * @param newMaximumPloidy the new maximum ploidy.
-     *
-     * @return never code {@code null}.
-     */
-    private static double[] ploidyLog10Extension(final int newMaximumPloidy) {
-        final int start = ploidyLog10.length;
-        final double[] result = Arrays.copyOf(ploidyLog10,newMaximumPloidy + 1);
-        for (int i = start; i < result.length; i++)
-            result[i] = Math.log10(i);
-        return result;
+        // Calculators created from the previous tables keep using them, which is fine as they are never modified.
+        return tables = new Tables(current, newMaximumPloidy, newMaximumAllele);
     }
 
     /**
@@ -396,18 +340,6 @@ public class GenotypeLikelihoodCalculators {
             throw new IllegalArgumentException("the maximum allele index provided cannot be negative: " + maximumAllele);
     }
 
-    private static void checkOffsetTableCapacity(final int[][] offsetTable, final int maximumPloidy, final int maximumAllele) {
-        if (offsetTable == null)
-            throw new IllegalArgumentException("the allele first genotype offset table provided cannot be null");
-        if (offsetTable.length <= maximumPloidy )
-            throw new IllegalArgumentException("the allele first genotype offset table provided does not have enough " +
-                    "capacity for requested maximum ploidy: " + maximumPloidy);
-        if (offsetTable[0].length < maximumAllele)
-            throw new IllegalArgumentException("the allele first genotype offset table provided does not have enough " +
-                    "capacity for requested maximum allele index: " + maximumAllele);
-    }
-
-
     /**
      * Returns the number of possible genotypes given the ploidy and number of different alleles.
      * @param ploidy the requested ploidy.
@@ -418,9 +350,6 @@ public class GenotypeLikelihoodCalculators {
      * @return 0 or greater.
      */
     public final static int genotypeCount(final int ploidy, final int alleleCount) {
-        checkPloidyAndMaximumAllele(ploidy, alleleCount);
-        if (ploidy > maximumPloidy || alleleCount > maximumAllele)
-            ensureCapacity(alleleCount,ploidy);
-        return alleleFirstGenotypeOffsetByPloidy[ploidy][alleleCount];
+        return tablesFor(ploidy, alleleCount).alleleFirstGenotypeOffsetByPloidy[ploidy][alleleCount];
     }
-}
\ No newline at end of file
+}
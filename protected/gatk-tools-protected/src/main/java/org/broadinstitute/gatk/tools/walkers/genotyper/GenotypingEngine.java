@@ -72,6 +72,7 @@ import org.broadinstitute.gatk.utils.genotyper.SampleList;
 import org.broadinstitute.gatk.utils.gga.GenotypingGivenAllelesUtils;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.utils.threading.ChunkedForkJoinExecutor;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
@@ -104,6 +105,11 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
 
     protected final GenomeLocParser genomeLocParser;
 
+    /**
+     * Splits the genotype assignment of wide sites among several threads.
+     */
+    private final ChunkedForkJoinExecutor sampleChunkExecutor;
+
     protected static int maxNumPLValuesObserved = 0;
     protected static int numTimesMaxNumPLValuesExceeded = 0;
 
@@ -139,6 +145,12 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
         log10AlleleFrequencyPriorsIndels = composeAlleleFrequencyPriorProvider(numberOfGenomes,
                 configuration.genotypeArgs.indelHeterozygosity, configuration.genotypeArgs.inputPrior);
         this.genomeLocParser = genomeLocParser;
+        if (configuration.genotypeArgs.sampleThreads < 1)
+            throw new UserException.BadArgumentValue("sample_threads", "must be at least 1 but got " + configuration.genotypeArgs.sampleThreads);
+        if (configuration.genotypeArgs.minSamplesPerThread < 1)
+            throw new UserException.BadArgumentValue("min_samples_per_thread", "must be at least 1 but got " + configuration.genotypeArgs.minSamplesPerThread);
+        sampleChunkExecutor = configuration.genotypeArgs.sampleThreads == 1 ? ChunkedForkJoinExecutor.SERIAL
+                : new ChunkedForkJoinExecutor(configuration.genotypeArgs.sampleThreads);
     }
 
     protected GenotypingEngine(final Config configuration, final SampleList samples,
@@ -203,6 +215,56 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
         return calculateGenotypes(null,null,null,null,vc,model,false,null, false);
     }
 
+    /**
+     * Subsets the genotypes of a site to the output alleles and assigns them.
+     *
+     * <p>When the engine was configured with more than one sample thread, the samples of wide sites are split in
+     * chunks of consecutive sample names that are subset in parallel. The chunks are concatenated in sample name order,
+     * which is the order the diploid, independent alleles and general ploidy calculators return when there is at least
+     * one alternative allele to keep, so the result is the same as subsetting all samples at once.</p>
+     *
+     * @param afCalculator the calculator that did the AF calculation on {@code vc}.
+     * @param vc the input variant context.
+     * @param defaultPloidy ploidy to assume for samples that don't declare their own.
+     * @param outputAlleles the alleles to subset to.
+     * @return never {@code null}.
+     */
+    protected GenotypesContext subsetAlleles(final AFCalculator afCalculator, final VariantContext vc, final int defaultPloidy, final List<Allele> outputAlleles) {
+        final int sampleCount = vc.getNSamples();
+        final int chunkCount = sampleChunkCount(sampleCount);
+        if ( outputAlleles.size() == 1 || chunkCount == 1 )
+            return afCalculator.subsetAlleles(vc, defaultPloidy, outputAlleles, true);
+
+        // resolve (and decode, if lazy) the genotypes here as the input context isn't safe to query from several threads
+        final List<Genotype> genotypesByName = new ArrayList<>(sampleCount);
+        for ( final Genotype g : vc.getGenotypes().iterateInSampleNameOrder() )
+            genotypesByName.add(g);
+
+        final List<GenotypesContext> chunks = sampleChunkExecutor.map(sampleCount, chunkCount, new ChunkedForkJoinExecutor.ChunkFunction<GenotypesContext>() {
+            @Override
+            public GenotypesContext apply(final int chunk, final int from, final int to) {
+                final VariantContext chunkVC = new VariantContextBuilder(vc).genotypes(genotypesByName.subList(from, to)).make();
+                return afCalculator.subsetAlleles(chunkVC, defaultPloidy, outputAlleles, true);
+            }
+        });
+
+        final GenotypesContext result = GenotypesContext.create(sampleCount);
+        for ( final GenotypesContext chunk : chunks )
+            result.addAll(chunk);
+        return result;
+    }
+
+    /**
+     * Returns the number of chunks the samples of a site are split into: one per sample thread, as long as each
+     * chunk gets at least the minimum number of samples per thread.
+     *
+     * @param sampleCount number of samples in the site.
+     * @return 1 or more.
+     */
+    private int sampleChunkCount(final int sampleCount) {
+        return Math.max(1, Math.min(sampleChunkExecutor.getThreads(), sampleCount / configuration.genotypeArgs.minSamplesPerThread));
+    }
+
     /**
      * Main entry function to calculate genotypes of a given VC with corresponding GL's that is shared across genotypers (namely UG and HC).
      *
@@ -274,7 +336,7 @@ public abstract class GenotypingEngine<Config extends StandardCallerArgumentColl
 
         // create the genotypes
 
-        final GenotypesContext genotypes = afCalculator.subsetAlleles(vc, defaultPloidy, outputAlleles, true);
+        final GenotypesContext genotypes = subsetAlleles(afCalculator, vc, defaultPloidy, outputAlleles);
         builder.genotypes(genotypes);
 
         // *** note that calculating strand bias involves overwriting data structures, so we do that last
@@ -206,7 +206,8 @@ public abstract class AFCalculator implements Cloneable {
     /**
      * Subset VC to the just allelesToUse, updating genotype likelihoods
      *
-     * Must be overridden by concrete subclasses
+     * Must be overridden by concrete subclasses, returning the genotypes in sample name order when there is at least
+     * one alternative allele in {@code allelesToUse}.
      *
      * @param vc                                variant context with alleles and genotype likelihoods
      * @param defaultPloidy                     default ploidy to assume in case {@code vc} does not indicate it for a sample.
@@ -272,12 +273,15 @@ public abstract class AFCalculator implements Cloneable {
     protected void removePLsIfMaxNumPLValuesExceeded(final GenotypeBuilder gb, final VariantContext vc, final String sampleName, final double[] newLikelihoods) {
         final int numPLValuesFound = newLikelihoods.length;
         if (numPLValuesFound > maxNumPLValues) {
-            logMaxNumPLValuesWarning(vc, sampleName, numPLValuesFound);
-            numTimesMaxNumPLValuesExceeded++;
-            gb.noPL();
-            if (numPLValuesFound > maxNumPLValuesObserved) {
-                maxNumPLValuesObserved = numPLValuesFound;
+            // samples of a site may be subset by several threads at once
+            synchronized (AFCalculator.class) {
+                logMaxNumPLValuesWarning(vc, sampleName, numPLValuesFound);
+                numTimesMaxNumPLValuesExceeded++;
+                if (numPLValuesFound > maxNumPLValuesObserved) {
+                    maxNumPLValuesObserved = numPLValuesFound;
+                }
             }
+            gb.noPL();
         }
     }
 
@@ -242,9 +242,17 @@ public class AFCalculatorPerformanceTest {
     public enum Operation {
         ANALYZE,
         SINGLE,
-        EXACT_LOG
+        EXACT_LOG,
+        BENCHMARK
     }
 
+    private final static String BENCHMARK_TABLE_NAME = "Benchmark";
+    private final static List<Integer> BENCHMARK_N_SAMPLES = Arrays.asList(10, 100, 1000, 10000);
+    private final static List<Integer> BENCHMARK_ACS = Arrays.asList(0, 1, 10, 100);
+    private final static long BENCHMARK_WARMUP_NANO = 500000000L;
+    private final static int BENCHMARK_REPEATS = 21;
+    private final static double BENCHMARK_SLOWDOWN_TOLERANCE = 1.25;
+
     public static void main(final String[] args) throws Exception {
         final TTCCLayout layout = new TTCCLayout();
         layout.setThreadPrinting(false);
@@ -258,6 +266,7 @@ public class AFCalculatorPerformanceTest {
             case ANALYZE: analyze(args); break;
             case SINGLE: profileBig(args); break;
             case EXACT_LOG: exactLog(args); break;
+            case BENCHMARK: benchmark(args); break;
             default: throw new IllegalAccessException("unknown operation " + op);
         }
     }
@@ -317,6 +326,104 @@ public class AFCalculatorPerformanceTest {
         logger.info("runtime " + runtime);
     }
 
+    /**
+     * Regression benchmark: times a fixed set of sites with each exact model and writes a report with the median
+     * runtime and the result for each site.
+     *
+     * Arguments are the output report and, optionally, the report of a previous run to use as a baseline, in which
+     * case the sites whose results changed or that are more than BENCHMARK_SLOWDOWN_TOLERANCE times slower than in
+     * the baseline are reported as regressions.
+     */
+    private static void benchmark(final String[] args) throws Exception {
+        final PrintStream out = new PrintStream(new FileOutputStream(args[1]));
+        final GATKReportTable baseline = args.length > 2 ? new GATKReport(new File(args[2])).getTable(BENCHMARK_TABLE_NAME) : null;
+
+        final List<String> keyColumns = Arrays.asList("exact.model", "n.alt.alleles", "n.samples", "ac");
+        final List<String> resultColumns = Arrays.asList("n.evaluations", "mle.ac", "log10.posterior.af.gt.0");
+        final List<String> columns = new ArrayList<>(keyColumns);
+        columns.addAll(resultColumns);
+        columns.add("median.runtime");
+        final GATKReport report = GATKReport.newSimpleReport(BENCHMARK_TABLE_NAME, columns);
+        final GATKReportTable table = report.getTable(BENCHMARK_TABLE_NAME);
+
+        final Map<List<String>, Integer> baselineRowByKey = new HashMap<>();
+        if ( baseline != null )
+            for ( int row = 0; row < baseline.getNumRows(); row++ )
+                baselineRowByKey.put(benchmarkRowValues(baseline, row, keyColumns), row);
+
+        final List<ModelParams> modelParams = Arrays.asList(
+                new ModelParams(AFCalculatorImplementation.EXACT_INDEPENDENT, 10000, 10000),
+                new ModelParams(AFCalculatorImplementation.EXACT_REFERENCE, 10000, 10));
+
+        final SimpleTimer timer = new SimpleTimer();
+        int regressions = 0;
+        for ( final ModelParams modelToRun : modelParams ) {
+            for ( final int nAltAlleles : Arrays.asList(1, 2) ) {
+                for ( final int nSamples : BENCHMARK_N_SAMPLES ) {
+                    if ( ! modelToRun.meetsConstraints(nAltAlleles, nSamples) )
+                        continue;
+
+                    final AFCalculatorTestBuilder testBuilder = new AFCalculatorTestBuilder(nSamples, nAltAlleles, modelToRun.modelType, AFCalculatorTestBuilder.PriorType.human);
+                    final AFCalculator calc = testBuilder.makeModel();
+                    final double[] priors = testBuilder.makePriors();
+
+                    for ( final int ac : BENCHMARK_ACS ) {
+                        if ( ac * nAltAlleles >= 2 * nSamples )
+                            continue;
+                        final int[] ACs = new int[nAltAlleles];
+                        Arrays.fill(ACs, ac);
+                        final VariantContext vc = testBuilder.makeACTest(ACs, 0, 100);
+
+                        // let the JIT compiler catch up before timing anything
+                        timer.start();
+                        while ( timer.getElapsedTimeNano() < BENCHMARK_WARMUP_NANO )
+                            calc.getLog10PNonRef(vc, HomoSapiensConstants.DEFAULT_PLOIDY, nAltAlleles, priors);
+
+                        AFCalculationResult result = null;
+                        final long[] runtimes = new long[BENCHMARK_REPEATS];
+                        for ( int i = 0; i < BENCHMARK_REPEATS; i++ ) {
+                            timer.start();
+                            result = calc.getLog10PNonRef(vc, HomoSapiensConstants.DEFAULT_PLOIDY, nAltAlleles, priors);
+                            runtimes[i] = timer.getElapsedTimeNano();
+                        }
+                        Arrays.sort(runtimes);
+                        final long medianRuntime = runtimes[BENCHMARK_REPEATS / 2];
+
+                        report.addRow(modelToRun.modelType, nAltAlleles, nSamples, ac, result.getnEvaluations(),
+                                Utils.join(",", result.getAlleleCountsOfMLE()), String.format("%.6f", result.getLog10PosteriorOfAFGT0()), medianRuntime);
+                        final int row = table.getNumRows() - 1;
+                        logger.info(Utils.join("\t", benchmarkRowValues(table, row, columns)));
+
+                        final Integer baselineRow = baselineRowByKey.get(benchmarkRowValues(table, row, keyColumns));
+                        if ( baselineRow == null )
+                            continue;
+                        if ( ! benchmarkRowValues(baseline, baselineRow, resultColumns).equals(benchmarkRowValues(table, row, resultColumns)) ) {
+                            logger.warn("RESULT CHANGED: " + benchmarkRowValues(baseline, baselineRow, resultColumns) + " vs " + benchmarkRowValues(table, row, resultColumns));
+                            regressions++;
+                        }
+                        final long baselineRuntime = Long.valueOf(baseline.get(baselineRow, "median.runtime").toString());
+                        if ( medianRuntime > BENCHMARK_SLOWDOWN_TOLERANCE * baselineRuntime ) {
+                            logger.warn(String.format("SLOWER: %d vs %d ns, %.2fx", medianRuntime, baselineRuntime, medianRuntime / (1.0 * baselineRuntime)));
+                            regressions++;
+                        }
+                    }
+                }
+            }
+        }
+
+        report.print(out);
+        out.close();
+        if ( baseline != null )
+            logger.info(regressions + " regressions with respect to " + args[2]);
+    }
+
+    private static List<String> benchmarkRowValues(final GATKReportTable table, final int row, final List<String> columns) {
+        final List<String> values = new ArrayList<>(columns.size());
+        for ( final String column : columns )
+            values.add(table.get(row, column).toString());
+        return values;
+    }
+
     private static void analyze(final String[] args) throws Exception {
         final List<String> coreColumns = Arrays.asList("iteration", "n.alt.alleles", "n.samples",
                 "exact.model", "prior.type", "runtime", "n.evaluations");
@@ -54,7 +54,9 @@ package org.broadinstitute.gatk.tools.walkers.genotyper.afcalc;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
+import org.broadinstitute.gatk.utils.variant.RemappedPLGenotype;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeLikelihoods;
 import htsjdk.variant.variantcontext.GenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -65,6 +67,38 @@ public abstract class DiploidExactAFCalculator extends ExactAFCalculator {
 
     private static final double LOG10_OF_2 = MathUtils.Log10Cache.get(2);
 
+    /**
+     * PL indexes of the het and hom-var genotypes in the bi-allelic case.
+     */
+    private static final int BIALLELIC_HET_INDEX = 1;
+    private static final int BIALLELIC_HOM_VAR_INDEX = 2;
+
+    /**
+     * Columns of the exact AC matrix reused across bi-allelic calculations.
+     *
+     * <p>
+     *     The column for AC = k only depends on those of AC = k-1 and k-2, so we only ever need three of them alive;
+     *     the column for AC = k lives in {@code biallelicColumns[k % 3]}.
+     * </p>
+     */
+    private final double[][] biallelicColumns = new double[3][0];
+
+    /**
+     * log10(2j * (2j - 1)) for each sample j of the columns above; it doesn't depend on AC nor on the site.
+     */
+    private double[] biallelicLog10Denominators = new double[0];
+
+    /**
+     * Single element allele-count vector passed to the {@link StateTracker} in the bi-allelic case.
+     */
+    private final int[] biallelicACcounts = new int[1];
+
+    /**
+     * Genotype likelihoods of the bi-allelic case reused across calculations; those of the j-th sample are at
+     * [3j, 3j+3), with the same leading dummy sample as in {@link #getGLs}.
+     */
+    private double[] biallelicLikelihoods = new double[0];
+
     public DiploidExactAFCalculator() {
     }
 
@@ -73,6 +107,11 @@ public abstract class DiploidExactAFCalculator extends ExactAFCalculator {
                                                final double[] log10AlleleFrequencyPriors, final StateTracker stateTracker) {
         final int numAlternateAlleles = vc.getNAlleles() - 1;
 
+        if ( numAlternateAlleles == 1 ) {
+            computeBiallelicLog10PNonRef(vc, log10AlleleFrequencyPriors, stateTracker);
+            return getResultFromFinalState(vc, log10AlleleFrequencyPriors, stateTracker);
+        }
+
         final ArrayList<double[]> genotypeLikelihoods = getGLs(vc.getGenotypes(), true, vc.hasAllele(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE));
         final int numSamples = genotypeLikelihoods.size()-1;
         final int numChr = 2*numSamples;
@@ -108,6 +147,165 @@ public abstract class DiploidExactAFCalculator extends ExactAFCalculator {
     }
 
 
+    /**
+     * Bi-allelic specialization of the general queue based calculation.
+     *
+     * <p>
+     *     With a single alternative allele the AC conformations are just AC = 0, 1, ..., 2N and they are visited in
+     *     that order, so instead of a queue of {@link ExactACset} looked up by {@link ExactACcounts} we walk AC
+     *     upwards on a rolling window of three primitive columns.  Those columns, and the flat copy of the genotype
+     *     likelihoods they are computed from, are reused from one call to the next, so that no allocation is needed
+     *     once they are large enough for the number of samples.
+     * </p>
+     *
+     * <p>
+     *     The results, including the number of evaluations, are exactly the same as the general calculation's: the
+     *     same values are accumulated in the same order and the same early termination rule is applied.
+     * </p>
+     */
+    private void computeBiallelicLog10PNonRef(final VariantContext vc,
+                                              final double[] log10AlleleFrequencyPriors,
+                                              final StateTracker stateTracker) {
+        final int columnLength = fillBiallelicLikelihoods(vc.getGenotypes(), vc.hasAllele(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE));
+        final int numChr = 2 * (columnLength - 1);
+        if ( biallelicColumns[0].length < columnLength ) {
+            for ( int i = 0; i < biallelicColumns.length; i++ )
+                biallelicColumns[i] = new double[columnLength];
+            biallelicLog10Denominators = new double[columnLength];
+            for ( int j = 1; j < columnLength; j++ )
+                biallelicLog10Denominators[j] = MathUtils.Log10Cache.get(2*j) + MathUtils.Log10Cache.get(2*j-1);
+        }
+
+        Arrays.fill(biallelicColumns[0], 0, columnLength, Double.NEGATIVE_INFINITY);
+        // whether some conformation has been pushed into AC = k + 1 and AC = k + 2, respectively
+        boolean nextExists = false;
+        boolean afterNextExists = false;
+
+        for ( int k = 0; ; k++ ) {
+            stateTracker.incNEvaluations();
+            biallelicACcounts[0] = k;
+
+            final double[] column = biallelicColumns[k % 3];
+            final double log10LofK = computeBiallelicLofK(k, column, columnLength, log10AlleleFrequencyPriors, stateTracker);
+
+            if ( k < numChr && !stateTracker.abort(log10LofK, biallelicACcounts, true, false) ) {
+                final double[] next = biallelicColumns[(k + 1) % 3];
+                if ( !nextExists )
+                    Arrays.fill(next, 0, columnLength, Double.NEGATIVE_INFINITY);
+                nextExists = true;
+                pushBiallelicData(next, k + 1, column, BIALLELIC_HET_INDEX, columnLength);
+
+                if ( numChr - k > 1 ) {
+                    final double[] afterNext = biallelicColumns[(k + 2) % 3];
+                    if ( !afterNextExists )
+                        Arrays.fill(afterNext, 0, columnLength, Double.NEGATIVE_INFINITY);
+                    afterNextExists = true;
+                    pushBiallelicData(afterNext, k + 2, column, BIALLELIC_HOM_VAR_INDEX, columnLength);
+                }
+            }
+
+            if ( !nextExists )
+                return;
+            nextExists = afterNextExists;
+            afterNextExists = false;
+        }
+    }
+
+    /**
+     * Bi-allelic version of {@link #getGLs} that copies the likelihoods into {@link #biallelicLikelihoods}, straight
+     * from the PLs, instead of creating a new array for each sample.
+     *
+     * @return the number of samples copied, including the leading dummy one.
+     */
+    private int fillBiallelicLikelihoods(final GenotypesContext genotypes, final boolean keepUninformative) {
+        if ( biallelicLikelihoods.length < 3 * (genotypes.size() + 1) )
+            biallelicLikelihoods = new double[3 * (genotypes.size() + 1)];
+        final double[] genotypeLikelihoods = biallelicLikelihoods;
+
+        // the dummy sample
+        genotypeLikelihoods[0] = genotypeLikelihoods[1] = genotypeLikelihoods[2] = 0.0;
+        int numSamples = 1;
+        for ( final Genotype sample : genotypes.iterateInSampleNameOrder() ) {
+            if ( !sample.hasLikelihoods() )
+                continue;
+            final int[] pls = sample.getPL();
+            if ( pls.length != 3 )
+                throw new IllegalArgumentException("expected 3 likelihoods for a diploid bi-allelic genotype but found " + pls.length + " for " + sample);
+
+            // the same values, and the same sum, as those of getGLs
+            final double homRef = pls[0] / -10.0;
+            final double het = pls[1] / -10.0;
+            final double homVar = pls[2] / -10.0;
+            if ( keepUninformative || 0.0 + homRef + het + homVar < GATKVariantContextUtils.SUM_GL_THRESH_NOCALL ) {
+                final int offset = 3 * numSamples++;
+                genotypeLikelihoods[offset] = homRef;
+                genotypeLikelihoods[offset + 1] = het;
+                genotypeLikelihoods[offset + 2] = homVar;
+            }
+        }
+        return numSamples;
+    }
+
+    /**
+     * Bi-allelic version of {@link #computeLofK}.
+     *
+     * @return the log10 likelihood of AC = k, before applying the prior.
+     */
+    private double computeBiallelicLofK(final int k, final double[] column, final int columnLength,
+                                        final double[] log10AlleleFrequencyPriors, final StateTracker stateTracker) {
+        final double[] genotypeLikelihoods = biallelicLikelihoods;
+        final double[] log10Denominators = biallelicLog10Denominators;
+        column[0] = 0.0;
+
+        if ( k == 0 ) {
+            for ( int j = 1; j < columnLength; j++ )
+                column[j] = column[j-1] + genotypeLikelihoods[3*j + HOM_REF_INDEX];
+
+            final double log10Lof0 = column[columnLength-1];
+            stateTracker.setLog10LikelihoodOfAFzero(log10Lof0);
+            stateTracker.setLog10PosteriorOfAFzero(log10Lof0 + log10AlleleFrequencyPriors[0]);
+            return log10Lof0;
+        }
+
+        for ( int j = 1; j < columnLength; j++ ) {
+            if ( k < 2*j-1 ) {
+                final double conformationValue = MathUtils.Log10Cache.get(2*j-k) + MathUtils.Log10Cache.get(2*j-k-1) + column[j-1] + genotypeLikelihoods[3*j + HOM_REF_INDEX];
+                column[j] = MathUtils.approximateLog10SumLog10(column[j], conformationValue);
+            }
+
+            column[j] = column[j] - log10Denominators[j];
+        }
+
+        final double log10LofK = column[columnLength-1];
+        stateTracker.updateMLEifNeeded(log10LofK, biallelicACcounts);
+        stateTracker.updateMAPifNeeded(log10LofK + log10AlleleFrequencyPriors[k], biallelicACcounts);
+        return log10LofK;
+    }
+
+    /**
+     * Bi-allelic version of {@link #pushData}.
+     */
+    private void pushBiallelicData(final double[] target, final int targetK, final double[] dependent, final int PLindex,
+                                   final int columnLength) {
+        final double[] genotypeLikelihoods = biallelicLikelihoods;
+        final int firstIndex = Math.max(1, (targetK + 1) / 2);
+
+        if ( PLindex == BIALLELIC_HOM_VAR_INDEX ) {
+            final double coefficient = MathUtils.Log10Cache.get(targetK) + MathUtils.Log10Cache.get(targetK - 1);
+            for ( int j = firstIndex; j < columnLength; j++ ) {
+                final double conformationValue = coefficient + dependent[j-1] + genotypeLikelihoods[3*j + PLindex];
+                target[j] = MathUtils.approximateLog10SumLog10(target[j], conformationValue);
+            }
+        } else {
+            final double log10TwiceK = MathUtils.Log10Cache.get(2*targetK);
+            for ( int j = firstIndex; j < columnLength; j++ ) {
+                final double coefficient = log10TwiceK + MathUtils.Log10Cache.get(2*j-targetK);
+                final double conformationValue = coefficient + dependent[j-1] + genotypeLikelihoods[3*j + PLindex];
+                target[j] = MathUtils.approximateLog10SumLog10(target[j], conformationValue);
+            }
+        }
+    }
+
     @Override
     protected GenotypesContext reduceScopeGenotypes(final VariantContext vc, final int defaultPloidy, final List<Allele> allelesToUse) {
         return GATKVariantContextUtils.subsetDiploidAlleles(vc, allelesToUse, GATKVariantContextUtils.GenotypeAssignmentMethod.SET_TO_NO_CALL);
@@ -115,18 +313,36 @@ public abstract class DiploidExactAFCalculator extends ExactAFCalculator {
 
     @Override
     protected void reduceScopeCalculateLikelihoodSums(final VariantContext vc, final int defaultPloidy, final LikelihoodSum[] likelihoodSums) {
-        final ArrayList<double[]> GLs = getGLs(vc.getGenotypes(), true);
-        for ( final double[] likelihoods : GLs ) {
-            final int PLindexOfBestGL = MathUtils.maxElementIndex(likelihoods);
+        for ( final Genotype sample : vc.getGenotypes().iterateInSampleNameOrder() ) {
+            if ( ! sample.hasLikelihoods() )
+                continue;
+
+            // same as going through getGLs, but remapped PLs are looked at without building the likelihoods
+            final int PLindexOfBestGL;
+            final double bestToHomRefDiffGL;
+            if ( sample instanceof RemappedPLGenotype ) {
+                final RemappedPLGenotype remapped = (RemappedPLGenotype) sample;
+                if ( remapped.getGLSum() >= GATKVariantContextUtils.SUM_GL_THRESH_NOCALL )
+                    continue;
+                PLindexOfBestGL = remapped.getBestPLIndex();
+                bestToHomRefDiffGL = remapped.getPL(PLindexOfBestGL) / -10.0 - remapped.getPL(PL_INDEX_OF_HOM_REF) / -10.0;
+            } else {
+                final double[] likelihoods = sample.getLikelihoods().getAsVector();
+                if ( MathUtils.sum(likelihoods) >= GATKVariantContextUtils.SUM_GL_THRESH_NOCALL )
+                    continue;
+                PLindexOfBestGL = MathUtils.maxElementIndex(likelihoods);
+                bestToHomRefDiffGL = likelihoods[PLindexOfBestGL] - likelihoods[PL_INDEX_OF_HOM_REF];
+            }
+
             if ( PLindexOfBestGL != PL_INDEX_OF_HOM_REF ) {
                 final GenotypeLikelihoods.GenotypeLikelihoodsAllelePair alleles = GenotypeLikelihoods.getAllelePair(PLindexOfBestGL);
                 final int alleleLikelihoodIndex1 = alleles.alleleIndex1 - 1;
                 final int alleleLikelihoodIndex2 = alleles.alleleIndex2 - 1;
                 if ( alleles.alleleIndex1 != 0 )
-                    likelihoodSums[alleleLikelihoodIndex1].sum += likelihoods[PLindexOfBestGL] - likelihoods[PL_INDEX_OF_HOM_REF];
+                    likelihoodSums[alleleLikelihoodIndex1].sum += bestToHomRefDiffGL;
                 // don't double-count it
                 if ( alleles.alleleIndex2 != 0 && alleles.alleleIndex2 != alleles.alleleIndex1 )
-                    likelihoodSums[alleleLikelihoodIndex2].sum += likelihoods[PLindexOfBestGL] - likelihoods[PL_INDEX_OF_HOM_REF];
+                    likelihoodSums[alleleLikelihoodIndex2].sum += bestToHomRefDiffGL;
             }
         }
     }
@@ -423,7 +423,7 @@ public class GeneralPloidyExactAFCalculator extends ExactAFCalculator {
         final GenotypesContext result = GenotypesContext.create();
 
         // Subset genotypes for each sample
-        for (final Genotype g : vc.getGenotypes()) // If it really needs to process order by sample name do so.
+        for (final Genotype g : vc.getGenotypes().iterateInSampleNameOrder())
             result.add(subsetGenotypeAlleles(g, allelesToUse, vc, defaultPloidy, assignGenotypes));
         return GATKVariantContextUtils.fixADFromSubsettedAlleles(result, vc, allelesToUse);
     }
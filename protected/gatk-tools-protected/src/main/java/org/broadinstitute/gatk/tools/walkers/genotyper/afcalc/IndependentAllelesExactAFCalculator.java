@@ -61,6 +61,7 @@ import org.broadinstitute.gatk.tools.walkers.genotyper.GenotypeLikelihoodCalcula
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
+import org.broadinstitute.gatk.utils.variant.RemappedPLGenotype;
 
 import java.util.*;
 
@@ -115,6 +116,16 @@ public class IndependentAllelesExactAFCalculator extends ExactAFCalculator {
 
     private final ExactAFCalculator biallelicExactAFCalculator;
 
+    /**
+     * Bi-allelic PL index that each multi-allelic PL index collapses to in {@link #combineGLs}, reused for as long
+     * as the ploidy, number of alleles and allele kept stay the same; which is the case for all samples of a site
+     * unless their ploidies differ.
+     */
+    private int[] biallelicPLIndexByGenotype = new int[0];
+    private int biallelicPLIndexPloidy = -1;
+    private int biallelicPLIndexAlleleCount = -1;
+    private int biallelicPLIndexAllele = -1;
+
     protected IndependentAllelesExactAFCalculator(final ExactAFCalculator biallelicExactAFCalculator) {
         if (biallelicExactAFCalculator == null)
             throw new IllegalArgumentException("the biallelic exact AF calculator cannot be null");
@@ -142,13 +153,22 @@ public class IndependentAllelesExactAFCalculator extends ExactAFCalculator {
         for ( final Genotype genotype : genotypes.iterateInSampleNameOrder() ) {
             if (!genotype.hasPL())
                 continue;
-            final double[] gls = genotype.getLikelihoods().getAsVector();
-            if (MathUtils.sum(gls) >= GATKVariantContextUtils.SUM_GL_THRESH_NOCALL)
-                continue;
-
-            final int PLindexOfBestGL = MathUtils.maxElementIndex(gls);
-
-            final double bestToHomRefDiffGL = PLindexOfBestGL == PL_INDEX_OF_HOM_REF ? 0.0 : gls[PLindexOfBestGL] - gls[PL_INDEX_OF_HOM_REF];
+            final int PLindexOfBestGL;
+            final double bestToHomRefDiffGL;
+            if (genotype instanceof RemappedPLGenotype) {
+                // look at the remapped PLs without building the likelihoods
+                final RemappedPLGenotype remapped = (RemappedPLGenotype) genotype;
+                if (remapped.getGLSum() >= GATKVariantContextUtils.SUM_GL_THRESH_NOCALL)
+                    continue;
+                PLindexOfBestGL = remapped.getBestPLIndex();
+                bestToHomRefDiffGL = PLindexOfBestGL == PL_INDEX_OF_HOM_REF ? 0.0 : remapped.getPL(PLindexOfBestGL) / -10.0 - remapped.getPL(PL_INDEX_OF_HOM_REF) / -10.0;
+            } else {
+                final double[] gls = genotype.getLikelihoods().getAsVector();
+                if (MathUtils.sum(gls) >= GATKVariantContextUtils.SUM_GL_THRESH_NOCALL)
+                    continue;
+                PLindexOfBestGL = MathUtils.maxElementIndex(gls);
+                bestToHomRefDiffGL = PLindexOfBestGL == PL_INDEX_OF_HOM_REF ? 0.0 : gls[PLindexOfBestGL] - gls[PL_INDEX_OF_HOM_REF];
+            }
             final int declaredPloidy = genotype.getPloidy();
             final int ploidy = declaredPloidy <= 0 ? defaultPloidy : declaredPloidy;
 
@@ -364,19 +384,48 @@ public class IndependentAllelesExactAFCalculator extends ExactAFCalculator {
 
         final int[] pls = original.getPL();
 
-        final GenotypeLikelihoodCalculator calculator = GenotypeLikelihoodCalculators.getInstance(ploidy, numberOfAlleles);
+        final int[] newPLIndexes = biallelicPLIndexByGenotype(ploidy, numberOfAlleles, alleleIndex);
+        if (pls.length != newPLIndexes.length)
+            throw new IllegalArgumentException("invalid number of likelihoods: " + pls.length + " != " + newPLIndexes.length
+                    + " (genotype count for nalleles = " + numberOfAlleles + " and ploidy " + ploidy + ")");
         final double[] newPLs = new double[ploidy + 1];
         Arrays.fill(newPLs, Double.NEGATIVE_INFINITY);
         for (int i = 0; i < pls.length; i++) {
-            final GenotypeAlleleCounts alleleCounts = calculator.genotypeAlleleCountsAt(i);
-            final int alleleCount = alleleCounts.alleleCountFor(alleleIndex);
-            final int newPLIndex = alleleIndex == 0 ? ploidy - alleleCount : alleleCount;
+            final int newPLIndex = newPLIndexes[i];
             newPLs[newPLIndex] = MathUtils.approximateLog10SumLog10(newPLs[newPLIndex], -.1 * pls[i]);
         }
 
         return new GenotypeBuilder(original).PL(newPLs).alleles(biallelicNoCall(ploidy)).make();
     }
 
+    /**
+     * Returns the bi-allelic PL index of each genotype when all alleles but one are collapsed together.
+     *
+     * <p>The returned array is reused by subsequent calls and must not be modified.</p>
+     *
+     * @param ploidy the genotype ploidy.
+     * @param numberOfAlleles the total number of alleles (alternatives + the reference).
+     * @param alleleIndex the index of the allele kept -- with ref == 0.
+     * @return never {@code null}, with as many elements as there are genotypes.
+     */
+    private int[] biallelicPLIndexByGenotype(final int ploidy, final int numberOfAlleles, final int alleleIndex) {
+        if (ploidy == biallelicPLIndexPloidy && numberOfAlleles == biallelicPLIndexAlleleCount && alleleIndex == biallelicPLIndexAllele)
+            return biallelicPLIndexByGenotype;
+
+        final GenotypeLikelihoodCalculator calculator = GenotypeLikelihoodCalculators.getInstance(ploidy, numberOfAlleles);
+        final int genotypeCount = calculator.genotypeCount();
+        if (biallelicPLIndexByGenotype.length != genotypeCount)
+            biallelicPLIndexByGenotype = new int[genotypeCount];
+        for (int i = 0; i < genotypeCount; i++) {
+            final int alleleCount = calculator.genotypeAlleleCountsAt(i).alleleCountFor(alleleIndex);
+            biallelicPLIndexByGenotype[i] = alleleIndex == 0 ? ploidy - alleleCount : alleleCount;
+        }
+        biallelicPLIndexPloidy = ploidy;
+        biallelicPLIndexAlleleCount = numberOfAlleles;
+        biallelicPLIndexAllele = alleleIndex;
+        return biallelicPLIndexByGenotype;
+    }
+
     private static List<Allele>[] initialBiallelicNoCall(final int initialCapacity) {
         final List<Allele>[] result = new List[initialCapacity + 1];
         for (int i = 0; i < result.length; i++) {
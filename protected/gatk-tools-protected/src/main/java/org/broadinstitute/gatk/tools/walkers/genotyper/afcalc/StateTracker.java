@@ -125,6 +125,15 @@ final class StateTracker {
      */
     private List<Allele> allelesUsedInGenotyping = null;
 
+    /**
+     * The priors-by-AC of the last conversion to a result, and their log10 sum over AC > 0.
+     *
+     * <p>Priors vectors are shared and never modified (see {@link org.broadinstitute.gatk.tools.walkers.genotyper.AFPriorProvider}),
+     * so as long as we are given the same vector there's no need to sum its thousands of values again.</p>
+     */
+    private double[] lastLog10PriorsByAC = null;
+    private double lastLog10PriorOfACGt0;
+
     /**
      * Create a results object capability of storing results for calls with up to maxAltAlleles
      *
@@ -153,9 +162,7 @@ final class StateTracker {
     /**
      * @return true iff all ACs in this object are less than or equal to their corresponding ACs in the provided set
      */
-    private boolean isLowerAC(final ExactACcounts otherACs, final boolean otherACsContainsReference) {
-        final int[] otherACcounts = otherACs.getCounts();
-
+    private boolean isLowerAC(final int[] otherACcounts, final boolean otherACsContainsReference) {
         final int firstAltAlleleIndex = otherACsContainsReference ? 1 : 0;
 
         for ( int i = firstAltAlleleIndex; i < otherACcounts.length; i++ ) {
@@ -175,7 +182,19 @@ final class StateTracker {
      * @return return true if there's no reason to continue with subpaths of AC, or false otherwise
      */
     protected boolean abort(final double log10LofK, final ExactACcounts ACs, final boolean enforceLowerACs, final boolean exactACcountsContainReference) {
-        return tooLowLikelihood(log10LofK) && (!enforceLowerACs || isLowerAC(ACs,exactACcountsContainReference));
+        return abort(log10LofK, ACs.getCounts(), enforceLowerACs, exactACcountsContainReference);
+    }
+
+    /**
+     * Same as {@link #abort(double, ExactACcounts, boolean, boolean)} but taking the allele counts as a plain array
+     *
+     * @param log10LofK the log10LofK of these ACs
+     * @param ACcounts the allele counts of this state
+     * @param exactACcountsContainReference whether the {@code ACcounts} contains the reference allele count (index == 0) beside all other alternative alleles.
+     * @return return true if there's no reason to continue with subpaths of AC, or false otherwise
+     */
+    protected boolean abort(final double log10LofK, final int[] ACcounts, final boolean enforceLowerACs, final boolean exactACcountsContainReference) {
+        return tooLowLikelihood(log10LofK) && (!enforceLowerACs || isLowerAC(ACcounts,exactACcountsContainReference));
     }
 
     @Ensures("result != null")
@@ -224,7 +243,7 @@ final class StateTracker {
         final int [] subACOfMLE = Arrays.copyOf(alleleCountsOfMLE, allelesUsedInGenotyping.size() - 1);
         //TODO bad calculation of normalized log10 ACeq0 and ACgt0 likelihoods, priors and consequently posteriors calculated in AFCalculationResult constructor.
         final double[] log10Likelihoods = MathUtils.normalizeFromLog10(new double[]{getLog10LikelihoodOfAFzero(), getLog10LikelihoodOfAFNotZero()}, true);
-        final double[] log10Priors = MathUtils.normalizeFromLog10(new double[]{log10PriorsByAC[0], MathUtils.log10sumLog10(log10PriorsByAC, 1)}, true);
+        final double[] log10Priors = MathUtils.normalizeFromLog10(new double[]{log10PriorsByAC[0], getLog10PriorOfACGt0(log10PriorsByAC)}, true);
 
         final Map<Allele, Double> log10pRefByAllele = new HashMap<Allele, Double>(allelesUsedInGenotyping.size());
         for ( int i = 0; i < subACOfMLE.length; i++ ) {
@@ -236,6 +255,17 @@ final class StateTracker {
         return new AFCalculationResult(subACOfMLE, nEvaluations, allelesUsedInGenotyping, log10Likelihoods, log10Priors, log10pRefByAllele);
     }
 
+    /**
+     * @return the log10 sum of the priors for AC > 0
+     */
+    private double getLog10PriorOfACGt0(final double[] log10PriorsByAC) {
+        if ( log10PriorsByAC != lastLog10PriorsByAC ) {
+            lastLog10PriorOfACGt0 = MathUtils.log10sumLog10(log10PriorsByAC, 1);
+            lastLog10PriorsByAC = log10PriorsByAC;
+        }
+        return lastLog10PriorOfACGt0;
+    }
+
     // --------------------------------------------------------------------------------
     //
     // Protected mutational methods only for use within the calculation models themselves
@@ -0,0 +1,290 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.haplotypecaller;
+
+import htsjdk.variant.variantcontext.GenotypeLikelihoods;
+import htsjdk.variant.variantcontext.GenotypeType;
+import org.broadinstitute.gatk.engine.CommandLineGATK;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.engine.filters.ReadFilter;
+import org.broadinstitute.gatk.engine.walkers.*;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.activeregion.ActivityMap;
+import org.broadinstitute.gatk.utils.activeregion.ActivityMapBuilder;
+import org.broadinstitute.gatk.utils.commandline.Advanced;
+import org.broadinstitute.gatk.utils.commandline.Argument;
+import org.broadinstitute.gatk.utils.commandline.Output;
+import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
+import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
+import org.broadinstitute.gatk.utils.downsampling.DownsampleType;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.genotyper.IndexedSampleList;
+import org.broadinstitute.gatk.utils.genotyper.SampleList;
+import org.broadinstitute.gatk.utils.genotyper.SampleListUtils;
+import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
+import org.broadinstitute.gatk.utils.help.HelpConstants;
+import org.broadinstitute.gatk.utils.pileup.PileupElement;
+import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
+import org.broadinstitute.gatk.utils.pileup.ReadBackedPileupImpl;
+import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
+import org.broadinstitute.gatk.utils.sam.SAMReaderID;
+import org.broadinstitute.gatk.utils.variant.HomoSapiensConstants;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compute an activity map to speed up later HaplotypeCaller GVCF runs on the same sample
+ *
+ * <p>This is a cheap, single pass over the pileups of one sample that flags every locus showing any evidence of
+ * variation (a high quality mismatch, an indel, or a high quality soft clip) as a candidate, and summarizes all
+ * other loci with the same reference confidence model HaplotypeCaller uses in GVCF mode.  The summaries are
+ * merged into GQ bands, just like the hom-ref blocks of a GVCF, and written together with the settings of the
+ * pass (sample, ploidy, GQ bands, min base and mapping qualities, reference and reads), which HaplotypeCaller
+ * checks against its own.</p>
+ *
+ * <p>Given the map with -activityMap, HaplotypeCaller doesn't evaluate isActive at the loci the map knows to be
+ * reference-like, and emits the reference blocks of the map for inactive regions that lie entirely within them,
+ * rather than computing the reference model from the reads.  Regions touching a candidate are processed as
+ * usual.</p>
+ *
+ * <p>The reference blocks are computed from the raw pileups rather than from the reads HaplotypeCaller keeps after
+ * finalizing an active region (e.g. soft clip and adaptor trimming), so the GQ and DP values of the blocks can
+ * differ slightly from those of a run without the map, even with the same settings.</p>
+ *
+ * <h3>Input</h3>
+ * <p>
+ * A BAM file with the reads of a single sample
+ * </p>
+ *
+ * <h3>Output</h3>
+ * <p>
+ * A binary activity map
+ * </p>
+ *
+ * <h3>Usage example</h3>
+ * <pre>
+ * java -jar GenomeAnalysisTK.jar \
+ *   -T ComputeActivityMap \
+ *   -R reference.fasta \
+ *   -I sample1.bam \
+ *   -o sample1.activity.map
+ *
+ * java -jar GenomeAnalysisTK.jar \
+ *   -T HaplotypeCaller \
+ *   -R reference.fasta \
+ *   -I sample1.bam \
+ *   -ERC GVCF \
+ *   -activityMap sample1.activity.map \
+ *   -o sample1.g.vcf
+ * </pre>
+ */
+@DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARDISC, extraDocs = {CommandLineGATK.class} )
+@By(DataSource.REFERENCE)
+@Reference(window=@Window(start=0,stop=ComputeActivityMap.REFERENCE_WINDOW))
+@ReadFilters({HCMappingQualityFilter.class})
+@Downsample(by= DownsampleType.BY_SAMPLE, toCoverage=500)
+public class ComputeActivityMap extends LocusWalker<ComputeActivityMap.LocusActivity, ActivityMapBuilder> {
+    /**
+     * The number of reference bases after each locus used to decide whether reads are informative about indels
+     */
+    protected final static int REFERENCE_WINDOW = 100;
+
+    @Output(fullName="out", shortName="o", doc="File to which the activity map should be written", required=true)
+    protected File out;
+
+    /**
+     * Mismatching bases below this quality don't make a locus a candidate.  Must match the -mbq of the
+     * HaplotypeCaller runs using the map.
+     */
+    @Argument(fullName = "min_base_quality_score", shortName = "mbq", doc = "Minimum base quality of a mismatch flagging a candidate locus", required = false)
+    public byte minBaseQuality = 10;
+
+    /**
+     * Must match the -ploidy of the HaplotypeCaller runs using the map.
+     */
+    @Argument(fullName = "sample_ploidy", shortName = "ploidy", doc = "Ploidy (number of chromosomes) per sample", required = false)
+    public int samplePloidy = HomoSapiensConstants.DEFAULT_PLOIDY;
+
+    /**
+     * Must match the -GQB of the HaplotypeCaller runs using the map.
+     */
+    @Argument(fullName="GVCFGQBands", shortName="GQB", doc="GQ thresholds for reference confidence bands", required = false)
+    protected List<Integer> GVCFGQBands = new ArrayList<Integer>(70) {{
+        for (int i=1; i<=60; ++i) add(i);
+        add(70); add(80); add(90); add(99);
+    }};
+
+    @Advanced
+    @Argument(fullName="indelSizeToEliminateInRefModel", shortName="ERCIS", doc="The size of an indel to check for in the reference model", required = false)
+    protected int indelSizeToEliminateInRefModel = 10;
+
+    private ReferenceConfidenceModel referenceConfidenceModel;
+    private String sampleName;
+
+    /**
+     * The outcome of looking at a single locus: either a candidate, or the reference confidence of the locus
+     */
+    protected final static class LocusActivity {
+        final GenomeLoc loc;
+        final boolean isCandidate;
+        final int GQ, DP;
+        final int[] PLs;
+
+        private LocusActivity(final GenomeLoc loc, final boolean isCandidate, final int GQ, final int DP, final int[] PLs) {
+            this.loc = loc;
+            this.isCandidate = isCandidate;
+            this.GQ = GQ;
+            this.DP = DP;
+            this.PLs = PLs;
+        }
+    }
+
+    @Override
+    public void initialize() {
+        final SampleList samples = getToolkit().getReadSampleList();
+        if ( samples.sampleCount() != 1 )
+            throw new UserException.BadInput("ComputeActivityMap requires the reads of exactly one sample but saw " + SampleListUtils.asList(samples));
+        if ( samplePloidy < 1 )
+            throw new UserException.BadArgumentValue("sample_ploidy", "must be >= 1 but got " + samplePloidy);
+        sampleName = samples.sampleAt(0);
+        referenceConfidenceModel = new ReferenceConfidenceModel(getToolkit().getGenomeLocParser(), new IndexedSampleList(sampleName),
+                getToolkit().getSAMFileHeader(), indelSizeToEliminateInRefModel);
+    }
+
+    @Override
+    public boolean includeReadsWithDeletionAtLoci() { return true; }
+
+    @Override
+    public LocusActivity map(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
+        final GenomeLoc loc = ref.getLocus();
+        final ReadBackedPileup pileup = context == null ? new ReadBackedPileupImpl(loc) : context.getBasePileup();
+
+        if ( isCandidate(pileup, ref.getBase()) )
+            return new LocusActivity(loc, true, 0, 0, null);
+
+        final RefVsAnyResult homRefCalc = referenceConfidenceModel.calcGenotypeLikelihoodsOfRefVsAny(samplePloidy, pileup, ref.getBase(),
+                ReferenceConfidenceModel.BASE_QUAL_THRESHOLD, null);
+        homRefCalc.capByHomRefLikelihood();
+        final int refOffset = loc.getStart() - ref.getWindow().getStart();
+        final GenotypeLikelihoods GLs = referenceConfidenceModel.getLeastConfidentHomRefGLs(samplePloidy, pileup, homRefCalc, refOffset, ref.getBases());
+        return new LocusActivity(loc, false, (int) (-10 * GLs.getLog10GQ(GenotypeType.HOM_REF)), homRefCalc.getDP(), GLs.getAsPLs());
+    }
+
+    /**
+     * Does the pileup show any evidence of variation that could make HaplotypeCaller consider this locus active?
+     *
+     * @param pileup the pileup at the locus
+     * @param refBase the reference base at the locus
+     * @return true if any element is an indel, a mismatch of quality >= minBaseQuality, or next to a high quality soft clip
+     */
+    private boolean isCandidate(final ReadBackedPileup pileup, final byte refBase) {
+        for ( final PileupElement p : pileup ) {
+            if ( p.isDeletion() || p.isBeforeDeletionStart() || p.isAfterDeletionEnd() || p.isBeforeInsertion() || p.isAfterInsertion() )
+                return true;
+            if ( p.getBase() != refBase && p.getQual() >= minBaseQuality )
+                return true;
+            if ( p.isNextToSoftClip() && AlignmentUtils.calcNumHighQualitySoftClips(p.getRead(), ReferenceConfidenceModel.HQ_BASE_QUALITY_SOFTCLIP_THRESHOLD) > HaplotypeCaller.AVERAGE_HQ_SOFTCLIPS_HQ_BASES_THRESHOLD )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Describe the settings of a run on the reads of toolkit, for the header of an activity map
+     *
+     * @return a non-null header
+     */
+    protected static ActivityMap.Header makeActivityMapHeader(final GenomeAnalysisEngine toolkit, final String sampleName, final int ploidy,
+                                                              final List<Integer> GQBands, final int minBaseQuality) {
+        int minMappingQuality = 0;
+        for ( final ReadFilter filter : toolkit.getFilters() )
+            if ( filter instanceof HCMappingQualityFilter )
+                minMappingQuality = Math.max(minMappingQuality, ((HCMappingQualityFilter) filter).MIN_MAPPING_QUALTY_SCORE);
+
+        final List<String> reads = new ArrayList<>();
+        for ( final SAMReaderID id : toolkit.getReadsDataSource().getReaderIDs() )
+            reads.add(id.getSamFile().getAbsolutePath());
+        Collections.sort(reads);
+
+        return new ActivityMap.Header(sampleName, ploidy, GQBands, minBaseQuality, minMappingQuality,
+                toolkit.getArguments().referenceFile.getAbsolutePath(), reads);
+    }
+
+    @Override
+    public ActivityMapBuilder reduceInit() {
+        try {
+            return new ActivityMapBuilder(makeActivityMapHeader(getToolkit(), sampleName, samplePloidy, GVCFGQBands, minBaseQuality));
+        } catch ( IllegalArgumentException e ) {
+            throw new UserException.BadArgumentValue("GQBands", "are malformed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public ActivityMapBuilder reduce(final LocusActivity value, final ActivityMapBuilder builder) {
+        if ( value.isCandidate )
+            builder.addCandidate(value.loc);
+        else
+            builder.addReferenceSite(value.loc, value.GQ, value.DP, value.PLs);
+        return builder;
+    }
+
+    @Override
+    public void onTraversalDone(final ActivityMapBuilder builder) {
+        final ActivityMap map = builder.finish();
+        map.write(out);
+        logger.info("Wrote activity map for sample " + map.getSampleName() + " to " + out);
+    }
+}
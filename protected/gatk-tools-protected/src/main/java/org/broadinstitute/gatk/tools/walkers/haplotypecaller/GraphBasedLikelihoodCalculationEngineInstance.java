@@ -428,7 +428,7 @@ public class GraphBasedLikelihoodCalculationEngineInstance {
                     final double likelihood = relativeLikelihood - bestRelativeLikelihood + bestLikelihood;
                     if (likelihood > 0)
                         throw new IllegalStateException("Likelihood larger than 1 with read " + read.getReadName());
-                    existingLikelihoods.put(a, likelihood);
+                    result.add(read, a, likelihood);
                 }
             }
         }
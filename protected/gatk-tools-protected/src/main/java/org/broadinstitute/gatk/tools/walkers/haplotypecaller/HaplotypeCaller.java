@@ -82,7 +82,9 @@ import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegionReadState;
+import org.broadinstitute.gatk.utils.activeregion.ActivityMap;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
+import org.broadinstitute.gatk.utils.activeregion.LocusSummaryBatch;
 import org.broadinstitute.gatk.utils.clipping.ReadClipper;
 import org.broadinstitute.gatk.utils.commandline.*;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
@@ -98,11 +100,14 @@ import org.broadinstitute.gatk.utils.fragments.FragmentUtils;
 import org.broadinstitute.gatk.utils.genotyper.*;
 import org.broadinstitute.gatk.utils.gga.GenotypingGivenAllelesUtils;
 import org.broadinstitute.gatk.utils.gvcf.GVCFWriter;
+import org.broadinstitute.gatk.utils.gvcf.HomRefSites;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
 import org.broadinstitute.gatk.utils.haplotypeBAMWriter.DroppedReadsTracker;
 import org.broadinstitute.gatk.utils.haplotypeBAMWriter.HaplotypeBAMWriter;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
+import org.broadinstitute.gatk.utils.metrics.MetricsRegistry;
+import org.broadinstitute.gatk.utils.metrics.Timer;
 import org.broadinstitute.gatk.utils.pairhmm.PairHMM;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
@@ -419,6 +424,20 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
     @Argument(fullName="doNotRunPhysicalPhasing", shortName="doNotRunPhysicalPhasing", doc="Disable physical phasing", required = false)
     protected boolean doNotRunPhysicalPhasing = false;
 
+    /**
+     * An activity map computed from the same sample by ComputeActivityMap.  Loci the map knows to be reference-like
+     * are not evaluated by isActive, and inactive regions lying entirely within its reference blocks take their
+     * reference confidence from the map instead of from the reads.  Can only be used with -ERC GVCF, and the map
+     * must have been computed from the same reference and reads with the same -ploidy, -GQB, -mbq and -mmq.
+     *
+     * Note that the output is not identical to that of a run without the map: the map summarizes the raw pileups
+     * rather than the reads HaplotypeCaller keeps after finalizing an active region (e.g. after soft clip and
+     * adaptor trimming), so the GQ and DP of the reference blocks in those regions can differ slightly.
+     */
+    @Advanced
+    @Input(fullName="activityMap", shortName="activityMap", doc="Precomputed activity map used to skip reference-like regions", required=false)
+    protected File activityMapFile = null;
+
     // -----------------------------------------------------------------------------------------------
     // arguments for debugging / developing the haplotype caller
     // -----------------------------------------------------------------------------------------------
@@ -509,7 +528,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
      * Minimum (exclusive) average number of high quality bases per soft-clip to consider that a set of soft-clips is a
      * high quality set.
      */
-    private static final double AVERAGE_HQ_SOFTCLIPS_HQ_BASES_THRESHOLD = 6.0;
+    static final double AVERAGE_HQ_SOFTCLIPS_HQ_BASES_THRESHOLD = 6.0;
 
     /**
      * Maximum-mininum confidence on a variant to exist to consider the position as a potential variant harbouring locus
@@ -541,11 +560,22 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
 
     private SampleList samplesList;
 
+    // the precomputed activity map, or null if none was provided
+    private ActivityMap activityMap = null;
+
     private final static Allele FAKE_REF_ALLELE = Allele.create("N", true); // used in isActive function to call into UG Engine. Should never appear anywhere in a VCF file
     private final static Allele FAKE_ALT_ALLELE = Allele.create("<FAKE_ALT>", false); // used in isActive function to call into UG Engine. Should never appear anywhere in a VCF file
 
     ReferenceConfidenceModel referenceConfidenceModel = null;
 
+    // per-stage timers, only recorded when the engine is run with -metricsLog
+    private final static Timer ASSEMBLY_TIMER = MetricsRegistry.timer("HaplotypeCaller.assembly");
+    private final static Timer LIKELIHOODS_TIMER = MetricsRegistry.timer("HaplotypeCaller.readLikelihoods");
+    private final static Timer GENOTYPING_TIMER = MetricsRegistry.timer("HaplotypeCaller.genotyping");
+    private final static Timer REF_CONFIDENCE_TIMER = MetricsRegistry.timer("HaplotypeCaller.referenceConfidence");
+    private final static Timer REF_CONFIDENCE_FROM_MAP_TIMER = MetricsRegistry.timer("HaplotypeCaller.referenceConfidenceFromActivityMap");
+    private final static Timer WRITING_TIMER = MetricsRegistry.timer("HaplotypeCaller.writing");
+
 
     ////////////////////////////////////////////////////////////////////////
     //// Deprecated Arguments					                        ////
@@ -621,6 +651,9 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         }
 
 
+        if ( activityMapFile != null )
+            activityMap = loadActivityMap(activityMapFile, samplesList);
+
         // create a UAC but with the exactCallsLog = null, so we only output the log for the HC caller itself, if requested
         final UnifiedArgumentCollection simpleUAC = HCAC.cloneTo(UnifiedArgumentCollection.class);
         simpleUAC.outputMode = OutputMode.EMIT_VARIANTS_ONLY;
@@ -739,6 +772,36 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
                 HCAC.genotypingOutputMode == GenotypingOutputMode.GENOTYPE_GIVEN_ALLELES,emitReferenceConfidence());
     }
 
+    /**
+     * Read the activity map in file and make sure it can stand in for isActive and the reference model in this run
+     *
+     * @param file the activity map file
+     * @param samples the samples we are calling
+     * @return a non-null ActivityMap
+     */
+    private ActivityMap loadActivityMap(final File file, final SampleList samples) {
+        if ( HCAC.emitReferenceConfidence != ReferenceConfidenceMode.GVCF )
+            throw new UserException.BadArgumentValue("activityMap", "can only be used with -ERC GVCF");
+        if ( USE_ALLELES_TRIGGER )
+            throw new UserException.BadArgumentValue("activityMap", "cannot be used with -allelesTrigger");
+
+        final ActivityMap map = ActivityMap.read(file);
+        if ( samples.sampleCount() != 1 || ! samples.sampleAt(0).equals(map.getSampleName()) )
+            throw new UserException.BadArgumentValue("activityMap", "was computed for sample " + map.getSampleName() + " but we are calling " + SampleListUtils.asList(samples));
+        if ( map.getPloidy() != HCAC.genotypeArgs.samplePloidy )
+            throw new UserException.BadArgumentValue("activityMap", "was computed with ploidy " + map.getPloidy() + " but we are calling with ploidy " + HCAC.genotypeArgs.samplePloidy);
+        final ActivityMap.Header expected = ComputeActivityMap.makeActivityMapHeader(getToolkit(), map.getSampleName(), HCAC.genotypeArgs.samplePloidy, GVCFGQBands, MIN_BASE_QUALTY_SCORE);
+        if ( ! map.getHeader().equals(expected) )
+            throw new UserException.BadArgumentValue("activityMap", "was computed with settings " + map.getHeader() + " that don't match those of this run " + expected);
+        logger.info("Skipping isActive and the reference model at reference-like loci in activity map " + file);
+        return map;
+    }
+
+    @Override
+    public ActivityMap getActivityMap() {
+        return activityMap;
+    }
+
     private void initializeReferenceConfidenceModel(final SampleList samples, final Set<VCFHeaderLine> headerInfo) {
         referenceConfidenceModel = new ReferenceConfidenceModel(getToolkit().getGenomeLocParser(), samples, getToolkit().getSAMFileHeader(), indelSizeToEliminateInRefModel);
         if ( emitReferenceConfidence() ) {
@@ -836,18 +899,118 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
             genotypes.add( new GenotypeBuilder(sample.getKey()).alleles(noCall).PL(genotypeLikelihoods).make() );
         }
 
-        final List<Allele> alleles = Arrays.asList(FAKE_REF_ALLELE , FAKE_ALT_ALLELE);
-        final double isActiveProb;
+        final double isActiveProb = calculateActiveProb(genotypes, context.getContig(), context.getLocation().getStart());
+        return new ActivityProfileState( ref.getLocus(), isActiveProb, averageHQSoftClips.mean() > AVERAGE_HQ_SOFTCLIPS_HQ_BASES_THRESHOLD ? ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS : ActivityProfileState.Type.NONE, averageHQSoftClips.mean() );
+    }
+
+    /**
+     * Summarize pileups for the batched isActive, unless isActive needs the reference ordered data
+     */
+    @Override
+    public LocusSummaryBatch makeLocusSummaryBatch() {
+        if ( HCAC.genotypingOutputMode == GenotypingOutputMode.GENOTYPE_GIVEN_ALLELES || USE_ALLELES_TRIGGER )
+            return null;
+        return new LocusSummaryBatch(LocusSummaryBatch.DEFAULT_CAPACITY, 0, 0, true, ReferenceConfidenceModel.HQ_BASE_QUALITY_SOFTCLIP_THRESHOLD);
+    }
+
+    /**
+     * Batched version of isActive, giving exactly the same probabilities and high quality soft clip states
+     */
+    @Override
+    public void isActive(final LocusSummaryBatch batch, final double[] probs) {
+        final int ploidy = activeRegionEvaluationGenotyperEngine.getConfiguration().genotypeArgs.samplePloidy;
+        final List<Allele> noCall = GATKVariantContextUtils.noCallAlleles(ploidy); // used to noCall all genotypes until the exact model is applied
+        final int[] depths = batch.getDepths();
+        final byte[] refBases = batch.getRefBases();
+        final int[] locusGroupStarts = batch.getLocusGroupStarts();
+        final int[] groupSamples = batch.getGroupSamples();
+        final List<String> sampleNames = batch.getSampleNames();
+        final GenomeLoc firstLoc = batch.getFirstLoc();
+
+        // per-batch scratch space: the hash of each sample name, and the groups of the current locus in visiting order
+        final int[] sampleHashes = new int[sampleNames.size()];
+        for ( int sample = 0; sample < sampleHashes.length; sample++ )
+            sampleHashes[sample] = spreadHash(sampleNames.get(sample));
+        final int[] orderedGroups = new int[sampleNames.size()];
+
+        for ( int i = 0; i < batch.size(); i++ ) {
+            if ( depths[i] == 0 ) {
+                // if we don't have any data, just abort early
+                probs[i] = 0.0;
+                continue;
+            }
+
+            // visit the samples in the order of the per-sample split of the per-locus isActive
+            final int nGroups = locusGroupStarts[i + 1] - locusGroupStarts[i];
+            orderSplitGroups(locusGroupStarts[i], nGroups, groupSamples, sampleHashes, orderedGroups);
+
+            final GenotypesContext genotypes = GenotypesContext.create(nGroups);
+            final MathUtils.RunningAverage averageHQSoftClips = new MathUtils.RunningAverage();
+            for ( int k = 0; k < nGroups; k++ ) {
+                final int group = orderedGroups[k];
+                final double[] genotypeLikelihoods = referenceConfidenceModel.calcGenotypeLikelihoodsOfRefVsAny(ploidy, batch, group, refBases[i], MIN_BASE_QUALTY_SCORE, averageHQSoftClips).genotypeLikelihoods;
+                genotypes.add( new GenotypeBuilder(sampleNames.get(groupSamples[group])).alleles(noCall).PL(genotypeLikelihoods).make() );
+            }
+
+            probs[i] = calculateActiveProb(genotypes, firstLoc.getContig(), firstLoc.getStart() + i);
+            if ( averageHQSoftClips.mean() > AVERAGE_HQ_SOFTCLIPS_HQ_BASES_THRESHOLD )
+                batch.markHighQualitySoftClips(i, averageHQSoftClips.mean());
+        }
+    }
+
+    /**
+     * Put the groups of a locus in the iteration order of the sample name -> context HashMap built by
+     * AlignmentContextUtils.splitContextBySampleName for the per-locus isActive, without building the map.
+     *
+     * Such a map iterates over its buckets in index order, and over the entries of a bucket in insertion order, which
+     * is the order of the groups.  The bucket of a sample is its spread hash modulo the table size that map grows to.
+     *
+     * @param fromGroup first group of the locus
+     * @param nGroups number of groups of the locus
+     * @param groupSamples sample index of each group
+     * @param sampleHashes spread hash of each sample name
+     * @param orderedGroups where to put the groups, in visiting order
+     */
+    static void orderSplitGroups(final int fromGroup, final int nGroups, final int[] groupSamples, final int[] sampleHashes, final int[] orderedGroups) {
+        int tableSize = 16;
+        while ( nGroups > tableSize * 3 / 4 )
+            tableSize *= 2;
+        final int mask = tableSize - 1;
+
+        // stable insertion sort by bucket
+        for ( int k = 0; k < nGroups; k++ ) {
+            final int group = fromGroup + k;
+            final int bucket = sampleHashes[groupSamples[group]] & mask;
+            int j = k;
+            while ( j > 0 && (sampleHashes[groupSamples[orderedGroups[j - 1]]] & mask) > bucket ) {
+                orderedGroups[j] = orderedGroups[j - 1];
+                j--;
+            }
+            orderedGroups[j] = group;
+        }
+    }
+
+    /**
+     * @return the hash HashMap uses to pick the bucket of a key
+     */
+    static int spreadHash(final String key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
 
+    /**
+     * @return the probability that the locus contig:position with the ref vs. any genotypes is active
+     */
+    private double calculateActiveProb(final GenotypesContext genotypes, final String contig, final int position) {
         if (genotypes.size() == 1) {
             // Faster implementation avoiding the costly and over complicated Exact AFCalculator machinery:
             // This is the case when doing GVCF output.
-            isActiveProb = activeRegionEvaluationGenotyperEngine.calculateSingleSampleRefVsAnyActiveStateProfileValue(genotypes.get(0).getLikelihoods().getAsVector());
+            return activeRegionEvaluationGenotyperEngine.calculateSingleSampleRefVsAnyActiveStateProfileValue(genotypes.get(0).getLikelihoods().getAsVector());
         } else {
-            final VariantCallContext vcOut = activeRegionEvaluationGenotyperEngine.calculateGenotypes(new VariantContextBuilder("HCisActive!", context.getContig(), context.getLocation().getStart(), context.getLocation().getStop(), alleles).genotypes(genotypes).make(), GenotypeLikelihoodsCalculationModel.Model.SNP);
-            isActiveProb = vcOut == null ? 0.0 : QualityUtils.qualToProb(vcOut.getPhredScaledQual());
+            final List<Allele> alleles = Arrays.asList(FAKE_REF_ALLELE , FAKE_ALT_ALLELE);
+            final VariantCallContext vcOut = activeRegionEvaluationGenotyperEngine.calculateGenotypes(new VariantContextBuilder("HCisActive!", contig, position, position, alleles).genotypes(genotypes).make(), GenotypeLikelihoodsCalculationModel.Model.SNP);
+            return vcOut == null ? 0.0 : QualityUtils.qualToProb(vcOut.getPhredScaledQual());
         }
-        return new ActivityProfileState( ref.getLocus(), isActiveProb, averageHQSoftClips.mean() > AVERAGE_HQ_SOFTCLIPS_HQ_BASES_THRESHOLD ? ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS : ActivityProfileState.Type.NONE, averageHQSoftClips.mean() );
     }
 
     //---------------------------------------------------------------------------------------------------------------
@@ -866,9 +1029,12 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         if (sampleNameToUse != null)
             removeReadsFromAllSamplesExcept(sampleNameToUse, originalActiveRegion);
 
-        if( !originalActiveRegion.isActive() )
-            // Not active so nothing to do!
+        if( !originalActiveRegion.isActive() ) {
+            // Not active so nothing to do!  When the activity map already summarizes the region we don't need the reads either
+            if ( activityMap != null && activityMap.isReference(originalActiveRegion.getLocation()) )
+                return referenceModelFromActivityMap(originalActiveRegion.getLocation());
             return referenceModelForNoVariation(originalActiveRegion, true);
+        }
 
         final List<VariantContext> givenAlleles = new ArrayList<>();
         if( HCAC.genotypingOutputMode == GenotypingOutputMode.GENOTYPE_GIVEN_ALLELES ) {
@@ -885,7 +1051,9 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         }
 
         // run the local assembler, getting back a collection of information on how we should proceed
+        final long assemblyStart = ASSEMBLY_TIMER.start();
         final AssemblyResultSet untrimmedAssemblyResult = assembleReads(originalActiveRegion, givenAlleles);
+        ASSEMBLY_TIMER.stop(assemblyStart);
 
         final TreeSet<VariantContext> allVariationEvents = untrimmedAssemblyResult.getVariationEvents();
         // TODO - line bellow might be unnecessary : it might be that assemblyResult will always have those alleles anyway
@@ -940,8 +1108,10 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         final Map<String,List<GATKSAMRecord>> reads = splitReadsBySample( regionForGenotyping.getReads() );
 
         // Calculate the likelihoods: CPU intensive part.
+        final long likelihoodsStart = LIKELIHOODS_TIMER.start();
         final ReadLikelihoods<Haplotype> readLikelihoods =
                 likelihoodCalculationEngine.computeReadLikelihoods(assemblyResult,samplesList,reads);
+        LIKELIHOODS_TIMER.stop(likelihoodsStart);
 
         // Realign reads to their best haplotype.
         final Map<GATKSAMRecord,GATKSAMRecord> readRealignments = realignReadsToTheirBestHaplotype(readLikelihoods, assemblyResult.getReferenceHaplotype(), assemblyResult.getPaddedReferenceLoc());
@@ -961,6 +1131,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
         //  haplotype containing C as reference (and vice versa).  Now this is fine if all possible haplotypes are included
         //  in the genotyping, but we lose information if we select down to a few haplotypes.  [EB]
 
+        final long genotypingStart = GENOTYPING_TIMER.start();
         final HaplotypeCallerGenotypingEngine.CalledHaplotypes calledHaplotypes = genotypingEngine.assignGenotypeLikelihoods(
                 haplotypes,
                 readLikelihoods,
@@ -972,6 +1143,7 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
                 metaDataTracker,
                 (RTAC.consensusMode ? Collections.<VariantContext>emptyList() : givenAlleles),
                 emitReferenceConfidence());
+        GENOTYPING_TIMER.stop(genotypingStart);
 
         if ( HCAC.bamWriter != null ) {
             final Set<Haplotype> calledHaplotypeSet = new HashSet<>(calledHaplotypes.getCalledHaplotypes());
@@ -1002,9 +1174,12 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
                 if (trimmingResult.hasLeftFlankingRegion())
                     result.addAll(referenceModelForNoVariation(trimmingResult.nonVariantLeftFlankRegion(),false));
                 // output variant containing region.
+                final long refConfidenceStart = REF_CONFIDENCE_TIMER.start();
                 result.addAll(referenceConfidenceModel.calculateRefConfidence(assemblyResult.getReferenceHaplotype(),
                         calledHaplotypes.getCalledHaplotypes(), assemblyResult.getPaddedReferenceLoc(), regionForGenotyping,
-                        readLikelihoods, genotypingEngine.getPloidyModel(), genotypingEngine.getGenotypingModel(), calledHaplotypes.getCalls()));
+                        readLikelihoods, genotypingEngine.getPloidyModel(), genotypingEngine.getGenotypingModel(), calledHaplotypes.getCalls(),
+                        packHomRefSites()));
+                REF_CONFIDENCE_TIMER.stop(refConfidenceStart);
                 // output right-flanking non-variant section:
                 if (trimmingResult.hasRightFlankingRegion())
                     result.addAll(referenceModelForNoVariation(trimmingResult.nonVariantRightFlankRegion(),false));
@@ -1117,13 +1292,69 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
             final GenomeLoc paddedLoc = region.getExtendedLoc();
             final Haplotype refHaplotype = createReferenceHaplotype(region, paddedLoc);
             final List<Haplotype> haplotypes = Collections.singletonList(refHaplotype);
-            return referenceConfidenceModel.calculateRefConfidence(refHaplotype, haplotypes,
+            final long refConfidenceStart = REF_CONFIDENCE_TIMER.start();
+            final List<VariantContext> result = referenceConfidenceModel.calculateRefConfidence(refHaplotype, haplotypes,
                     paddedLoc, region, createDummyStratifiedReadMap(refHaplotype, samplesList, region),
-                    genotypingEngine.getPloidyModel(), genotypingEngine.getGenotypingModel(), Collections.<VariantContext>emptyList());
+                    genotypingEngine.getPloidyModel(), genotypingEngine.getGenotypingModel(), Collections.<VariantContext>emptyList(),
+                    packHomRefSites());
+            REF_CONFIDENCE_TIMER.stop(refConfidenceStart);
+            return result;
         } else
             return NO_CALLS;
     }
 
+    /**
+     * Create the ref model result for a region lying entirely within the reference blocks of the activity map
+     *
+     * Emits one hom-ref site per position carrying the summary of its block, so that the GVCF writer rebuilds
+     * the bands of the map (merging them as dictated by -GQB) and still skips positions spanned by upstream deletions
+     *
+     * @param region the span to emit, must be covered by the reference blocks of the activity map
+     * @return a list of variant contexts, one for each position of region, or a single packed run of sites in GVCF mode
+     */
+    private List<VariantContext> referenceModelFromActivityMap(final GenomeLoc region) {
+        final long start = REF_CONFIDENCE_FROM_MAP_TIMER.start();
+        final byte[] refBases = referenceReader.getSubsequenceAt(region.getContig(), region.getStart(), region.getStop()).getBases();
+        final String sampleName = activityMap.getSampleName();
+        final int ploidy = activityMap.getPloidy();
+
+        final List<VariantContext> result = new ArrayList<>(packHomRefSites() ? 1 : region.size());
+        HomRefSites run = null;
+        for ( final ActivityMap.ReferenceBlock block : activityMap.getReferenceBlocks(region) ) {
+            final int first = Math.max(block.getStart(), region.getStart());
+            final int last = Math.min(block.getStop(), region.getStop());
+            for ( int pos = first; pos <= last; pos++ ) {
+                if ( packHomRefSites() ) {
+                    if ( run != null && run.getStop() + 1 != pos ) {
+                        result.add(run.toVariantContext());
+                        run = null;
+                    }
+                    if ( run == null )
+                        run = new HomRefSites("HC", sampleName, region.getContig(), pos, ploidy, region.getStop() - pos + 1);
+                    run.add(refBases[pos - region.getStart()], block.getGQ(), block.getDP(), block.getMinDP(), block.getPLs());
+                    continue;
+                }
+                final Allele refAllele = Allele.create(refBases[pos - region.getStart()], true);
+                final GenotypeBuilder gb = new GenotypeBuilder(sampleName, GATKVariantContextUtils.homozygousAlleleList(refAllele, ploidy));
+                gb.GQ(block.getGQ()).DP(block.getDP()).PL(block.getPLs().clone());
+                gb.attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, block.getMinDP());
+                result.add(new VariantContextBuilder("HC", region.getContig(), pos, pos, Arrays.asList(refAllele, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                        .genotypes(gb.make()).make());
+            }
+        }
+        if ( run != null )
+            result.add(run.toVariantContext());
+        REF_CONFIDENCE_FROM_MAP_TIMER.stop(start);
+        return result;
+    }
+
+    /**
+     * Should runs of reference confidence sites be handed to the GVCF writer packed rather than as a VariantContext each?
+     */
+    private boolean packHomRefSites() {
+        return HCAC.emitReferenceConfidence == ReferenceConfidenceMode.GVCF;
+    }
+
     /**
      * Create a context that maps each read to the reference haplotype with log10 L of 0
      * @param refHaplotype a non-null reference haplotype
@@ -1152,9 +1383,11 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
 
     @Override
     public Integer reduce(List<VariantContext> callsInRegion, Integer numCalledRegions) {
+        final long writingStart = WRITING_TIMER.start();
         for( final VariantContext call : callsInRegion ) {
             vcfWriter.add( call );
         }
+        WRITING_TIMER.stop(writingStart);
         return (callsInRegion.isEmpty() ? 0 : 1) + numCalledRegions;
     }
 
@@ -62,8 +62,10 @@ import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
+import org.broadinstitute.gatk.utils.activeregion.LocusSummaryBatch;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.genotyper.*;
+import org.broadinstitute.gatk.utils.gvcf.HomRefSites;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
 import org.broadinstitute.gatk.utils.locusiterator.LocusIteratorByState;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
@@ -110,13 +112,13 @@ public class ReferenceConfidenceModel {
      * Base calls with quality threshold lower than this number won't be considered when assessing the
      * confidence on the hom-ref call.
      */
-    private final static byte BASE_QUAL_THRESHOLD = 6;
+    final static byte BASE_QUAL_THRESHOLD = 6;
 
     /**
      * Only base calls with quality strictly greater than this constant,
      * will be considered high quality if they are part of a soft-clip.
      */
-    private final static byte HQ_BASE_QUALITY_SOFTCLIP_THRESHOLD = 28;
+    public final static byte HQ_BASE_QUALITY_SOFTCLIP_THRESHOLD = 28;
 
     /**
      * Create a new ReferenceConfidenceModel
@@ -196,6 +198,30 @@ public class ReferenceConfidenceModel {
                                                        final PloidyModel ploidyModel,
                                                        final GenotypingModel model,
                                                        final List<VariantContext> variantCalls) {
+        return calculateRefConfidence(refHaplotype, calledHaplotypes, paddedReferenceLoc, activeRegion, readLikelihoods,
+                ploidyModel, model, variantCalls, false);
+    }
+
+    /**
+     * Calculate the reference confidence for a single sample given the its read data, optionally packing the reference
+     * confidence sites for the GVCF writer
+     *
+     * Same as {@link #calculateRefConfidence(Haplotype, Collection, GenomeLoc, ActiveRegion, ReadLikelihoods, PloidyModel, GenotypingModel, List)}
+     * except that, when {@code packHomRefSites} is true, each run of consecutive reference confidence sites is returned
+     * as a single VariantContext packing a {@link HomRefSites}, saving the creation of a VariantContext per site.
+     * Only a {@link org.broadinstitute.gatk.utils.gvcf.GVCFWriter} knows how to write those.
+     *
+     * @param packHomRefSites whether to pack the runs of reference confidence sites
+     */
+    public List<VariantContext> calculateRefConfidence(final Haplotype refHaplotype,
+                                                       final Collection<Haplotype> calledHaplotypes,
+                                                       final GenomeLoc paddedReferenceLoc,
+                                                       final ActiveRegion activeRegion,
+                                                       final ReadLikelihoods<Haplotype> readLikelihoods,
+                                                       final PloidyModel ploidyModel,
+                                                       final GenotypingModel model,
+                                                       final List<VariantContext> variantCalls,
+                                                       final boolean packHomRefSites) {
         if ( refHaplotype == null ) throw new IllegalArgumentException("refHaplotype cannot be null");
         if ( calledHaplotypes == null ) throw new IllegalArgumentException("calledHaplotypes cannot be null");
         if ( !calledHaplotypes.contains(refHaplotype)) throw new IllegalArgumentException("calledHaplotypes must contain the refHaplotype");
@@ -215,13 +241,29 @@ public class ReferenceConfidenceModel {
         final String sampleName = readLikelihoods.sampleAt(0);
 
         final int globalRefOffset = refSpan.getStart() - activeRegion.getExtendedLoc().getStart();
+        HomRefSites currentRun = null;
         for ( final ReadBackedPileup pileup : refPileups ) {
             final GenomeLoc curPos = pileup.getLocation();
             final int offset = curPos.getStart() - refSpan.getStart();
 
             final VariantContext overlappingSite = getOverlappingVariantContext(curPos, variantCalls);
             if ( overlappingSite != null && overlappingSite.getStart() == curPos.getStart() ) {
+                    if ( currentRun != null ) {
+                        results.add(currentRun.toVariantContext());
+                        currentRun = null;
+                    }
                     results.add(overlappingSite);
+            } else if ( packHomRefSites ) {
+                final int refOffset = offset + globalRefOffset;
+                final byte refBase = ref[refOffset];
+                final RefVsAnyResult homRefCalc = calcGenotypeLikelihoodsOfRefVsAny(ploidy, pileup, refBase, BASE_QUAL_THRESHOLD, null);
+                homRefCalc.capByHomRefLikelihood();
+                final GenotypeLikelihoods leastConfidenceGLs = getLeastConfidentHomRefGLs(ploidy, pileup, homRefCalc, refOffset, ref);
+
+                if ( currentRun == null )
+                    currentRun = new HomRefSites("HC", sampleName, curPos.getContig(), curPos.getStart(), ploidy, refSpan.getStop() - curPos.getStart() + 1);
+                final int DP = homRefCalc.getDP();
+                currentRun.add(refBase, (int) (-10 * leastConfidenceGLs.getLog10GQ(GenotypeType.HOM_REF)), DP, DP, leastConfidenceGLs.getAsPLs());
             } else {
                 // otherwise emit a reference confidence variant context
                 // Assume infinite population on a single sample.
@@ -238,17 +280,7 @@ public class ReferenceConfidenceModel {
                 gb.DP(homRefCalc.getDP());
 
                 // genotype likelihood calculation
-                final GenotypeLikelihoods snpGLs = GenotypeLikelihoods.fromLog10Likelihoods(homRefCalc.genotypeLikelihoods);
-                final int nIndelInformativeReads = calcNIndelInformativeReads(pileup, refOffset, ref, indelInformativeDepthIndelSize);
-                final GenotypeLikelihoods indelGLs = getIndelPLs(ploidy,nIndelInformativeReads);
-
-                // now that we have the SNP and indel GLs, we take the one with the least confidence,
-                // as this is the most conservative estimate of our certainty that we are hom-ref.
-                // For example, if the SNP PLs are 0,10,100 and the indel PLs are 0,100,1000
-                // we are very certain that there's no indel here, but the SNP confidence imply that we are
-                // far less confident that the ref base is actually the only thing here.  So we take 0,10,100
-                // as our GLs for the site.
-                final GenotypeLikelihoods leastConfidenceGLs = getGLwithWorstGQ(indelGLs, snpGLs);
+                final GenotypeLikelihoods leastConfidenceGLs = getLeastConfidentHomRefGLs(ploidy, pileup, homRefCalc, refOffset, ref);
 
                 gb.GQ((int) (-10 * leastConfidenceGLs.getLog10GQ(GenotypeType.HOM_REF)));
                 gb.PL(leastConfidenceGLs.getAsPLs());
@@ -259,10 +291,37 @@ public class ReferenceConfidenceModel {
 //                logger.info("  => VariantContext " + vcb.make());
             }
         }
+        if ( currentRun != null )
+            results.add(currentRun.toVariantContext());
 
         return results;
     }
 
+    /**
+     * Get the genotype likelihoods of the hom-ref call at a single site, combining the SNP and indel models
+     *
+     * @param ploidy the ploidy of the sample
+     * @param pileup the pileup at the site
+     * @param homRefCalc the capped result of calcGenotypeLikelihoodsOfRefVsAny for pileup
+     * @param refOffset the offset of the site in ref
+     * @param ref the reference bases around the site, extending past it at least as far as the reads do
+     * @return non-null GenotypeLikelihoods
+     */
+    protected final GenotypeLikelihoods getLeastConfidentHomRefGLs(final int ploidy, final ReadBackedPileup pileup, final RefVsAnyResult homRefCalc,
+                                                                   final int refOffset, final byte[] ref) {
+        final GenotypeLikelihoods snpGLs = GenotypeLikelihoods.fromLog10Likelihoods(homRefCalc.genotypeLikelihoods);
+        final int nIndelInformativeReads = calcNIndelInformativeReads(pileup, refOffset, ref, indelInformativeDepthIndelSize);
+        final GenotypeLikelihoods indelGLs = getIndelPLs(ploidy,nIndelInformativeReads);
+
+        // now that we have the SNP and indel GLs, we take the one with the least confidence,
+        // as this is the most conservative estimate of our certainty that we are hom-ref.
+        // For example, if the SNP PLs are 0,10,100 and the indel PLs are 0,100,1000
+        // we are very certain that there's no indel here, but the SNP confidence imply that we are
+        // far less confident that the ref base is actually the only thing here.  So we take 0,10,100
+        // as our GLs for the site.
+        return getGLwithWorstGQ(indelGLs, snpGLs);
+    }
+
     /**
      * Get the GenotypeLikelihoods with the least strong corresponding GQ value
      * @param gl1 first to consider (cannot be null)
@@ -371,9 +430,66 @@ public class ReferenceConfidenceModel {
         return result;
     }
 
+    /**
+     * Calculate the genotype likelihoods of being hom-ref contrasted with being ref vs. alt from the pileup elements
+     * of one sample recorded in a LocusSummaryBatch
+     *
+     * Gives exactly the same result as calcGenotypeLikelihoodsOfRefVsAny on the sample's pileup
+     *
+     * @param ploidy target sample ploidy.
+     * @param batch a batch recording pileup elements
+     * @param group the sample group of the batch holding the elements of the sample
+     * @param refBase the reference base at the locus of the group
+     * @param minBaseQual the min base quality for an element to be included in the calculation
+     * @param hqSoftClips running average data structure (can be null) to collect information about the number of high quality soft clips
+     * @return a RefVsAnyResult genotype call.
+     */
+    public RefVsAnyResult calcGenotypeLikelihoodsOfRefVsAny(final int ploidy,
+                                                            final LocusSummaryBatch batch,
+                                                            final int group,
+                                                            final byte refBase,
+                                                            final byte minBaseQual,
+                                                            final MathUtils.RunningAverage hqSoftClips) {
+        final int likelihoodCount = ploidy + 1;
+        final double log10Ploidy = MathUtils.Log10Cache.get(ploidy);
+
+        final byte[] bases = batch.getElementBases();
+        final byte[] quals = batch.getElementQuals();
+        final byte[] flags = batch.getElementFlags();
+        final int[] softClips = batch.getElementSoftClips();
+        final int from = batch.getGroupElementStarts()[group];
+        final int to = batch.getGroupElementStarts()[group + 1];
+
+        final RefVsAnyResult result = new RefVsAnyResult(likelihoodCount);
+        int readCount = 0;
+        for ( int e = from; e < to; e++ ) {
+            final boolean isDeletion = (flags[e] & LocusSummaryBatch.ELEMENT_DELETION) != 0;
+            final byte qual = isDeletion ? REF_MODEL_DELETION_QUAL : quals[e];
+            if (!isDeletion && qual <= minBaseQual)
+                continue;
+            readCount++;
+            final boolean isNextToSoftClip = (flags[e] & LocusSummaryBatch.ELEMENT_NEXT_TO_SOFT_CLIP) != 0;
+            final boolean isAlt = bases[e] != refBase || isDeletion || isNextToSoftClip
+                    || (flags[e] & LocusSummaryBatch.ELEMENT_NEXT_TO_INDEL) != 0;
+            calcRefVsNonRefLikelihoodAndCount(likelihoodCount, log10Ploidy, result, isAlt, qual);
+            if (isAlt && hqSoftClips != null && isNextToSoftClip)
+                hqSoftClips.add(softClips[e]);
+        }
+        final double denominator = readCount * log10Ploidy;
+        for (int i = 0; i < likelihoodCount; i++)
+            result.genotypeLikelihoods[i] -= denominator;
+        return result;
+    }
+
     private void calcPileupElementRefVsNonRefLikelihoodAndCount(final byte refBase, final int likelihoodCount, final double log10Ploidy, final RefVsAnyResult result, final PileupElement element, final byte qual, final MathUtils.RunningAverage hqSoftClips) {
         final boolean isAlt = element.getBase() != refBase || element.isDeletion() || element.isBeforeDeletionStart()
                 || element.isAfterDeletionEnd() || element.isBeforeInsertion() || element.isAfterInsertion() || element.isNextToSoftClip();
+        calcRefVsNonRefLikelihoodAndCount(likelihoodCount, log10Ploidy, result, isAlt, qual);
+        if (isAlt && hqSoftClips != null && element.isNextToSoftClip())
+            hqSoftClips.add(AlignmentUtils.calcNumHighQualitySoftClips(element.getRead(), HQ_BASE_QUALITY_SOFTCLIP_THRESHOLD));
+    }
+
+    private void calcRefVsNonRefLikelihoodAndCount(final int likelihoodCount, final double log10Ploidy, final RefVsAnyResult result, final boolean isAlt, final byte qual) {
         final double referenceLikelihood;
         final double nonRefLikelihood;
         if (isAlt) {
@@ -394,8 +510,6 @@ public class ReferenceConfidenceModel {
                     MathUtils.approximateLog10SumLog10(
                             referenceLikelihood + MathUtils.Log10Cache.get(j),
                             nonRefLikelihood + MathUtils.Log10Cache.get(i));
-        if (isAlt && hqSoftClips != null && element.isNextToSoftClip())
-            hqSoftClips.add(AlignmentUtils.calcNumHighQualitySoftClips(element.getRead(), HQ_BASE_QUALITY_SOFTCLIP_THRESHOLD));
     }
 
     /**
@@ -108,7 +108,9 @@ import java.util.regex.Pattern;
  * <h3>Input</h3>
  * <ul>
  * <li>The raw input variants to be filtered.</li>
- * <li>The recalibration table file that was generated by the VariantRecalibrator tool.</li>
+ * <li>The recalibration table file that was generated by the VariantRecalibrator tool, or the binary recal scores file
+ * written alongside it with -recalScores. The scores file is looked up directly by position rather than read as a second
+ * VCF track, and can be shared by the threads of a -nt run.</li>
  * <li>The tranches file that was generated by the VariantRecalibrator tool.</li>
  * </ul>
  *
@@ -179,8 +181,13 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
      */
     @Input(fullName="input", shortName = "input", doc="The raw input variants to be recalibrated", required=true)
     public List<RodBinding<VariantContext>> input;
-    @Input(fullName="recal_file", shortName="recalFile", doc="The input recal file used by ApplyRecalibration", required=true)
+    @Input(fullName="recal_file", shortName="recalFile", doc="The input recal file used by ApplyRecalibration", required=false)
     protected RodBinding<VariantContext> recal;
+    /**
+     * The binary scores file written by VariantRecalibrator with -recalScores, to use instead of the recal file.
+     */
+    @Input(fullName="recal_scores_file", shortName="recalScores", doc="The input binary recal scores file, used instead of the recal file", required=false)
+    protected File RECAL_SCORES_FILE = null;
     @Input(fullName="tranches_file", shortName="tranchesFile", doc="The input tranches file describing where to cut the data", required=false)
     protected File TRANCHES_FILE;
 
@@ -230,6 +237,7 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
     final static private String arrayParseRegex = "[\\[\\]\\s]";
     final static private String emptyStringValue = "NA";
     final static private String emptyFloatValue = "NaN";
+    private RecalibrationScoreFile recalScores = null;
 
 
     //---------------------------------------------------------------------------------------------------------------
@@ -249,6 +257,13 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
             Collections.reverse(tranches); // this algorithm wants the tranches ordered from best (lowest truth sensitivity) to worst (highest truth sensitivity)
         }
 
+        if( recal.isBound() == (RECAL_SCORES_FILE != null) ) {
+            throw new UserException.BadArgumentValue("recal_file", "Exactly one of --recal_file and --recal_scores_file must be provided");
+        }
+        if( RECAL_SCORES_FILE != null ) {
+            recalScores = new RecalibrationScoreFile(RECAL_SCORES_FILE);
+        }
+
         for( final RodBinding rod : input ) {
             inputNames.add( rod.getName() );
         }
@@ -372,7 +387,7 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
         }
 
         final List<VariantContext> VCs =  tracker.getValues(input, context.getLocation());
-        final List<VariantContext> recals =  tracker.getValues(recal, context.getLocation());
+        final List<VariantContext> recals = recalScores == null ? tracker.getValues(recal, context.getLocation()) : Collections.<VariantContext>emptyList();
 
         for( final VariantContext vc : VCs ) {
 
@@ -597,26 +612,32 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
 
             //if it's not a spanning deletion, replace those allele strings with the real values
             if (!allele.equals(Allele.SPAN_DEL)) {
-                VariantContext recalDatum = getMatchingRecalVC(vc, recals, allele);
-                if (recalDatum == null) {
-                    throw new UserException("Encountered input allele which isn't found in the input recal file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants with flag -AS. First seen at: " + vc);
+                final double lod;
+                if (recalScores != null) {
+                    final long record = recalScores.find(vc.getChr(), vc.getStart(), vc.getEnd(), allele);
+                    if (record == RecalibrationScoreFile.NOT_FOUND) {
+                        throw new UserException("Encountered input allele which isn't found in the input recal scores file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants with flag -AS. First seen at: " + vc);
+                    }
+                    lod = recalScores.getLod(record);
+                    alleleCulpritString = recalScores.getCulprit(record);
+                    addTrainingLabels(builder, recalScores.isPositiveTrainingSite(record), recalScores.isNegativeTrainingSite(record));
+                } else {
+                    VariantContext recalDatum = getMatchingRecalVC(vc, recals, allele);
+                    if (recalDatum == null) {
+                        throw new UserException("Encountered input allele which isn't found in the input recal file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants with flag -AS. First seen at: " + vc);
+                    }
+
+                    lod = recalDatum.getAttributeAsDouble(GATKVCFConstants.VQS_LOD_KEY, VariantRecalibratorEngine.MIN_ACCEPTABLE_LOD_SCORE);
+                    alleleCulpritString = recalDatum.getAttributeAsString(GATKVCFConstants.CULPRIT_KEY, ".");
+                    addTrainingLabels(builder, recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY), recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY));
                 }
 
                 //compare VQSLODs for all alleles in the current mode for filtering later
-                final double lod = recalDatum.getAttributeAsDouble(GATKVCFConstants.VQS_LOD_KEY, VariantRecalibratorEngine.MIN_ACCEPTABLE_LOD_SCORE);
                 if (lod > bestLod)
                     bestLod = lod;
 
                 alleleLodString = String.format("%.4f", lod);
                 alleleFilterString = generateFilterString(lod);
-                alleleCulpritString = recalDatum.getAttributeAsString(GATKVCFConstants.CULPRIT_KEY, ".");
-
-                if(recalDatum != null) {
-                    if (recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY))
-                        builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
-                    if (recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY))
-                        builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
-                }
             }
 
             //append per-allele VQSR annotations
@@ -644,6 +665,18 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
      * @return a String with the filter status for this site
      */
     private String doSiteSpecificFiltering(final VariantContext vc, final List<VariantContext> recals, final VariantContextBuilder builder) {
+        if( recalScores != null ) {
+            final long record = recalScores.find(vc.getChr(), vc.getStart(), vc.getEnd());
+            if( record == RecalibrationScoreFile.NOT_FOUND ) {
+                throw new UserException("Encountered input variant which isn't found in the input recal scores file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants. First seen at: " + vc );
+            }
+            final double lod = recalScores.getLod(record);
+            builder.attribute(GATKVCFConstants.VQS_LOD_KEY, lod);
+            builder.attribute(GATKVCFConstants.CULPRIT_KEY, recalScores.getCulprit(record));
+            addTrainingLabels(builder, recalScores.isPositiveTrainingSite(record), recalScores.isNegativeTrainingSite(record));
+            return generateFilterString(lod);
+        }
+
         VariantContext recalDatum = getMatchingRecalVC(vc, recals, null);
         if( recalDatum == null ) {
             throw new UserException("Encountered input variant which isn't found in the input recal file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants. First seen at: " + vc );
@@ -662,16 +695,18 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
 
         builder.attribute(GATKVCFConstants.VQS_LOD_KEY, lod);
         builder.attribute(GATKVCFConstants.CULPRIT_KEY, recalDatum.getAttribute(GATKVCFConstants.CULPRIT_KEY));
-        if(recalDatum != null) {
-            if (recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY))
-                builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
-            if (recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY))
-                builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
-        }
+        addTrainingLabels(builder, recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY), recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY));
 
         return generateFilterString(lod);
     }
 
+    private void addTrainingLabels(final VariantContextBuilder builder, final boolean positive, final boolean negative) {
+        if (positive)
+            builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
+        if (negative)
+            builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
+    }
+
     //---------------------------------------------------------------------------------------------------------------
     //
     // reduce
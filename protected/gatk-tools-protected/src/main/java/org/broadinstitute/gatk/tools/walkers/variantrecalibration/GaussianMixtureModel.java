@@ -55,11 +55,13 @@ import Jama.Matrix;
 import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.threading.ChunkedForkJoinExecutor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by IntelliJ IDEA.
@@ -71,17 +73,38 @@ public class GaussianMixtureModel {
 
     protected final static Logger logger = Logger.getLogger(GaussianMixtureModel.class);
 
+    /**
+     * Maximum number of data in each of the chunks that passes over the data are split into
+     */
+    protected final static int DATUM_CHUNK_SIZE = 10000;
+
     private final List<MultivariateGaussian> gaussians;
     private final double shrinkage;
     private final double dirichletParameter;
     private final double priorCounts;
     private final double[] empiricalMu;
     private final Matrix empiricalSigma;
+    private final ChunkedForkJoinExecutor executor;
     public boolean isModelReadyForEvaluation;
     public boolean failedToConverge = false;
 
     public GaussianMixtureModel( final int numGaussians, final int numAnnotations,
                                  final double shrinkage, final double dirichletParameter, final double priorCounts ) {
+        this( numGaussians, numAnnotations, shrinkage, dirichletParameter, priorCounts, ChunkedForkJoinExecutor.SERIAL );
+    }
+
+    /**
+     * Create a model whose training spreads the work over the data with the given executor.
+     *
+     * A serial executor goes over the data row by row, exactly like the original single threaded training. A parallel
+     * executor splits the data into chunks of at most DATUM_CHUNK_SIZE data whose sufficient statistics are summed in
+     * chunk order, so the trained model may differ slightly from the serial one but does not depend on the number of
+     * threads.
+     */
+    public GaussianMixtureModel( final int numGaussians, final int numAnnotations,
+                                 final double shrinkage, final double dirichletParameter, final double priorCounts,
+                                 final ChunkedForkJoinExecutor executor ) {
+        if( executor == null ) { throw new IllegalArgumentException("executor cannot be null"); }
 
         gaussians = new ArrayList<>( numGaussians );
         for( int iii = 0; iii < numGaussians; iii++ ) {
@@ -91,6 +114,7 @@ public class GaussianMixtureModel {
         this.shrinkage = shrinkage;
         this.dirichletParameter = dirichletParameter;
         this.priorCounts = priorCounts;
+        this.executor = executor;
         empiricalMu = new double[numAnnotations];
         empiricalSigma = new Matrix(numAnnotations, numAnnotations);
         isModelReadyForEvaluation = false;
@@ -105,6 +129,7 @@ public class GaussianMixtureModel {
         this.shrinkage = shrinkage;
         this.dirichletParameter = dirichletParameter;
         this.priorCounts = priorCounts;
+        this.executor = ChunkedForkJoinExecutor.SERIAL;
         empiricalMu = new double[numAnnotations];
         empiricalSigma = new Matrix(numAnnotations, numAnnotations);
         isModelReadyForEvaluation = false;
@@ -113,7 +138,7 @@ public class GaussianMixtureModel {
 
     }
 
-    public void initializeRandomModel( final List<VariantDatum> data, final int numKMeansIterations ) {
+    public void initializeRandomModel( final VariantDataTable data, final int[] rows, final int numKMeansIterations ) {
 
         // initialize random Gaussian means // BUGBUG: this is broken up this way to match the order of calls to rand.nextDouble() in the old code
         for( final MultivariateGaussian gaussian : gaussians ) {
@@ -122,7 +147,7 @@ public class GaussianMixtureModel {
 
         // initialize means using K-means algorithm
         logger.info( "Initializing model with " + numKMeansIterations + " k-means iterations..." );
-        initializeMeansUsingKMeans( data, numKMeansIterations );
+        initializeMeansUsingKMeans( data, rows, numKMeansIterations );
 
         // initialize uniform mixture coefficients, random covariance matrices, and initial hyperparameters
         for( final MultivariateGaussian gaussian : gaussians ) {
@@ -135,72 +160,127 @@ public class GaussianMixtureModel {
         }
     }
 
-    private void initializeMeansUsingKMeans( final List<VariantDatum> data, final int numIterations ) {
+    private void initializeMeansUsingKMeans( final VariantDataTable data, final int[] rows, final int numIterations ) {
 
+        // the index of the Gaussian each variant is assigned to, or -1 if it couldn't be assigned to any
+        final int[] assignment = new int[rows.length];
         int ttt = 0;
         while( ttt++ < numIterations ) {
             // E step: assign each variant to the nearest cluster
-            for( final VariantDatum datum : data ) {
-                double minDistance = Double.MAX_VALUE;
-                MultivariateGaussian minGaussian = null;
-                datum.assignment = minGaussian;
-                for( final MultivariateGaussian gaussian : gaussians ) {
-                    final double dist = gaussian.calculateDistanceFromMeanSquared( datum );
-                    if( dist < minDistance ) {
-                        minDistance = dist;
-                        minGaussian = gaussian;
+            forEachDatum( data, rows, new DatumFunction() {
+                @Override
+                public void apply( final int datumIndex, final double[] annotations, final int offset ) {
+                    double minDistance = Double.MAX_VALUE;
+                    int minGaussian = -1;
+                    for( int gaussianIndex = 0; gaussianIndex < gaussians.size(); gaussianIndex++ ) {
+                        final double dist = gaussians.get(gaussianIndex).calculateDistanceFromMeanSquared( annotations, offset );
+                        if( dist < minDistance ) {
+                            minDistance = dist;
+                            minGaussian = gaussianIndex;
+                        }
                     }
+                    assignment[datumIndex] = minGaussian;
                 }
-                datum.assignment = minGaussian;
-            }
+            } );
 
             // M step: update gaussian means based on assigned variants
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.zeroOutMu();
-                int numAssigned = 0;
-
-                for( final VariantDatum datum : data ) {
-                    if( datum.assignment.equals(gaussian) ) {
-                        numAssigned++;
-                        gaussian.incrementMu( datum );
+            final SufficientStatistics stats = accumulate( data, rows, 0.0, new DatumAccumulator() {
+                @Override
+                public void accumulate( final int datumIndex, final double[] annotations, final int offset, final SufficientStatistics stats ) {
+                    final int gaussianIndex = assignment[datumIndex];
+                    if( gaussianIndex == -1 ) {
+                        return;
+                    }
+                    stats.numAssigned[gaussianIndex]++;
+                    final double[] sum = stats.weightedSum[gaussianIndex];
+                    for( int jjj = 0; jjj < sum.length; jjj++ ) {
+                        sum[jjj] += 1.0 * annotations[offset + jjj];
                     }
                 }
+            } );
+            int gaussianIndex = 0;
+            for( final MultivariateGaussian gaussian : gaussians ) {
+                final int numAssigned = stats.numAssigned[gaussianIndex];
                 if( numAssigned != 0 ) {
+                    System.arraycopy( stats.weightedSum[gaussianIndex], 0, gaussian.mu, 0, gaussian.mu.length );
                     gaussian.divideEqualsMu( ((double) numAssigned) );
                 } else {
                     gaussian.initializeRandomMu( Utils.getRandomGenerator() );
                 }
+                gaussianIndex++;
             }
         }
     }
 
-    public void expectationStep( final List<VariantDatum> data ) {
+    public void expectationStep( final VariantDataTable data, final int[] rows ) {
 
         for( final MultivariateGaussian gaussian : gaussians ) {
             gaussian.precomputeDenominatorForVariationalBayes( getSumHyperParameterLambda() );
+            gaussian.initializePVarInGaussian( rows.length );
         }
 
-        for( final VariantDatum datum : data ) {
-            final double[] pVarInGaussianLog10 = new double[gaussians.size()];
-            int gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                final double pVarLog10 = gaussian.evaluateDatumLog10( datum );
-                pVarInGaussianLog10[gaussianIndex++] = pVarLog10;
-            }
-            final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
-            gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.assignPVarInGaussian( pVarInGaussianNormalized[gaussianIndex++] );
+        forEachDatum( data, rows, new DatumFunction() {
+            @Override
+            public void apply( final int datumIndex, final double[] annotations, final int offset ) {
+                final double[] pVarInGaussianLog10 = new double[gaussians.size()];
+                int gaussianIndex = 0;
+                for( final MultivariateGaussian gaussian : gaussians ) {
+                    final double pVarLog10 = gaussian.evaluateDatumLog10( annotations, offset );
+                    pVarInGaussianLog10[gaussianIndex++] = pVarLog10;
+                }
+                final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
+                gaussianIndex = 0;
+                for( final MultivariateGaussian gaussian : gaussians ) {
+                    gaussian.assignPVarInGaussian( datumIndex, pVarInGaussianNormalized[gaussianIndex++] );
+                }
             }
+        } );
+    }
+
+    public void maximizationStep( final VariantDataTable data, final int[] rows ) {
+        maximizeMu( data, rows, 1E-10 );
+        final double[][][] scatter = accumulateWeightedSigma( data, rows );
+        int gaussianIndex = 0;
+        for( final MultivariateGaussian gaussian : gaussians ) {
+            gaussian.finishMaximization( scatter[gaussianIndex++], empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts );
         }
     }
 
-    public void maximizationStep( final List<VariantDatum> data ) {
+    /**
+     * Set the mean of each Gaussian to the probability-weighted average of the data
+     *
+     * @param initialSumProb the value each Gaussian's sum of probabilities starts from
+     */
+    private void maximizeMu( final VariantDataTable data, final int[] rows, final double initialSumProb ) {
+        final SufficientStatistics stats = accumulate( data, rows, initialSumProb, new DatumAccumulator() {
+            @Override
+            public void accumulate( final int datumIndex, final double[] annotations, final int offset, final SufficientStatistics stats ) {
+                for( int gaussianIndex = 0; gaussianIndex < stats.sumProb.length; gaussianIndex++ ) {
+                    stats.sumProb[gaussianIndex] += gaussians.get(gaussianIndex).accumulateWeightedMu( annotations, offset, datumIndex, stats.weightedSum[gaussianIndex] );
+                }
+            }
+        } );
+        int gaussianIndex = 0;
         for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.maximizeGaussian( data, empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts);
+            gaussian.setMuFromWeightedSum( stats.sumProb[gaussianIndex], stats.weightedSum[gaussianIndex] );
+            gaussianIndex++;
         }
     }
 
+    /**
+     * @return for each Gaussian, the probability-weighted scatter matrix of the data around its current mean
+     */
+    private double[][][] accumulateWeightedSigma( final VariantDataTable data, final int[] rows ) {
+        return accumulate( data, rows, 0.0, new DatumAccumulator() {
+            @Override
+            public void accumulate( final int datumIndex, final double[] annotations, final int offset, final SufficientStatistics stats ) {
+                for( int gaussianIndex = 0; gaussianIndex < stats.scatter.length; gaussianIndex++ ) {
+                    gaussians.get(gaussianIndex).accumulateWeightedSigma( annotations, offset, datumIndex, stats.scatter[gaussianIndex] );
+                }
+            }
+        } ).scatter;
+    }
+
     private double getSumHyperParameterLambda() {
         double sum = 0.0;
         for( final MultivariateGaussian gaussian : gaussians ) {
@@ -209,9 +289,12 @@ public class GaussianMixtureModel {
         return sum;
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
+    public void evaluateFinalModelParameters( final VariantDataTable data, final int[] rows ) {
+        maximizeMu( data, rows, 0.0 );
+        final double[][][] scatter = accumulateWeightedSigma( data, rows );
+        int gaussianIndex = 0;
         for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.evaluateFinalModelParameters(data);
+            gaussian.finishFinalModelParameters( scatter[gaussianIndex++] );
         }
         normalizePMixtureLog10();
     }
@@ -260,47 +343,62 @@ public class GaussianMixtureModel {
         return MathUtils.log10sumLog10(values);
     }
 
-    public double evaluateDatum( final VariantDatum datum ) {
-        for( final boolean isNull : datum.isNull ) {
-            if( isNull ) { return evaluateDatumMarginalized( datum ); }
-        }
+    public double evaluateDatum( final VariantDataTable data, final int row ) {
+        return evaluateDatum( data, row, Utils.getRandomGenerator() );
+    }
+
+    /**
+     * Evaluate a row of the data, drawing the values of its missing annotations from the given generator
+     *
+     * Different threads can evaluate different rows at the same time as long as each uses its own generator.
+     */
+    public double evaluateDatum( final VariantDataTable data, final int row, final Random rand ) {
+        if( data.hasNull(row) ) { return evaluateDatumMarginalized( data, row, rand ); }
         // Fill an array with the log10 probability coming from each Gaussian and then use MathUtils to sum them up correctly
+        final double[] annotations = data.getAnnotations();
+        final int offset = data.getAnnotationOffset(row);
         final double[] pVarInGaussianLog10 = new double[gaussians.size()];
         int gaussianIndex = 0;
         for( final MultivariateGaussian gaussian : gaussians ) {
-            pVarInGaussianLog10[gaussianIndex++] = gaussian.pMixtureLog10 + gaussian.evaluateDatumLog10( datum );
+            pVarInGaussianLog10[gaussianIndex++] = gaussian.pMixtureLog10 + gaussian.evaluateDatumLog10( annotations, offset );
         }
         return nanTolerantLog10SumLog10(pVarInGaussianLog10); // Sum(pi_k * p(v|n,k))
     }
 
     // Used only to decide which covariate dimension is most divergent in order to report in the culprit info field annotation
-    public Double evaluateDatumInOneDimension( final VariantDatum datum, final int iii ) {
-        if(datum.isNull[iii]) { return null; }
+    public Double evaluateDatumInOneDimension( final VariantDataTable data, final int row, final int iii ) {
+        if(data.isNull(row, iii)) { return null; }
 
         final double[] pVarInGaussianLog10 = new double[gaussians.size()];
         int gaussianIndex = 0;
         for( final MultivariateGaussian gaussian : gaussians ) {
-            pVarInGaussianLog10[gaussianIndex++] = gaussian.pMixtureLog10 + MathUtils.normalDistributionLog10(gaussian.mu[iii], gaussian.sigma.get(iii, iii), datum.annotations[iii]);
+            pVarInGaussianLog10[gaussianIndex++] = gaussian.pMixtureLog10 + MathUtils.normalDistributionLog10(gaussian.mu[iii], gaussian.sigma.get(iii, iii), data.getAnnotation(row, iii));
         }
         return nanTolerantLog10SumLog10(pVarInGaussianLog10); // Sum(pi_k * p(v|n,k))
     }
 
-    public double evaluateDatumMarginalized( final VariantDatum datum ) {
+    public double evaluateDatumMarginalized( final VariantDataTable data, final int row ) {
+        return evaluateDatumMarginalized( data, row, Utils.getRandomGenerator() );
+    }
+
+    public double evaluateDatumMarginalized( final VariantDataTable data, final int row, final Random rand ) {
         int numRandomDraws = 0;
         double sumPVarInGaussian = 0.0;
         final int numIterPerMissingAnnotation = 20; // Trade off here between speed of computation and accuracy of the marginalization
+        final double[] annotations = data.getAnnotations();
+        final int offset = data.getAnnotationOffset(row);
         final double[] pVarInGaussianLog10 = new double[gaussians.size()];
         // for each dimension
-        for( int iii = 0; iii < datum.annotations.length; iii++ ) {
+        for( int iii = 0; iii < data.getNumAnnotations(); iii++ ) {
             // if it is missing marginalize over the missing dimension by drawing X random values for the missing annotation and averaging the lod
-            if( datum.isNull[iii] ) {
+            if( data.isNull(row, iii) ) {
                 for( int ttt = 0; ttt < numIterPerMissingAnnotation; ttt++ ) {
-                    datum.annotations[iii] = Utils.getRandomGenerator().nextGaussian(); // draw a random sample from the standard normal distribution
+                    annotations[offset + iii] = rand.nextGaussian(); // draw a random sample from the standard normal distribution
 
                     // evaluate this random data point
                     int gaussianIndex = 0;
                     for( final MultivariateGaussian gaussian : gaussians ) {
-                        pVarInGaussianLog10[gaussianIndex++] = gaussian.pMixtureLog10 + gaussian.evaluateDatumLog10( datum );
+                        pVarInGaussianLog10[gaussianIndex++] = gaussian.pMixtureLog10 + gaussian.evaluateDatumLog10( annotations, offset );
                     }
 
                     // add this sample's probability to the pile in order to take an average in the end
@@ -315,4 +413,89 @@ public class GaussianMixtureModel {
     protected List<MultivariateGaussian> getModelGaussians() {return Collections.unmodifiableList(gaussians);}
 
     protected int getNumAnnotations() {return empiricalMu.length;}
-}
\ No newline at end of file
+
+    /////////////////////////////
+    // Chunked passes over the data
+    /////////////////////////////
+
+    /**
+     * Per-Gaussian sufficient statistics of a range of data
+     */
+    private final class SufficientStatistics {
+        final double[] sumProb = new double[gaussians.size()];
+        final double[][] weightedSum = new double[gaussians.size()][empiricalMu.length];
+        final double[][][] scatter = new double[gaussians.size()][empiricalMu.length][empiricalMu.length];
+        final int[] numAssigned = new int[gaussians.size()];
+
+        SufficientStatistics( final double initialSumProb ) {
+            Arrays.fill( sumProb, initialSumProb );
+        }
+
+        void add( final SufficientStatistics other ) {
+            for( int kkk = 0; kkk < sumProb.length; kkk++ ) {
+                sumProb[kkk] += other.sumProb[kkk];
+                numAssigned[kkk] += other.numAssigned[kkk];
+                for( int iii = 0; iii < empiricalMu.length; iii++ ) {
+                    weightedSum[kkk][iii] += other.weightedSum[kkk][iii];
+                    for( int jjj = 0; jjj < empiricalMu.length; jjj++ ) {
+                        scatter[kkk][iii][jjj] += other.scatter[kkk][iii][jjj];
+                    }
+                }
+            }
+        }
+    }
+
+    private interface DatumAccumulator {
+        void accumulate( final int datumIndex, final double[] annotations, final int offset, final SufficientStatistics stats );
+    }
+
+    private interface DatumFunction {
+        void apply( final int datumIndex, final double[] annotations, final int offset );
+    }
+
+    /**
+     * Number of chunks a pass over the given number of data is split into: one with a single thread, otherwise as many
+     * as needed to keep them under DATUM_CHUNK_SIZE, whatever the number of threads
+     */
+    protected static int datumChunkCount( final ChunkedForkJoinExecutor executor, final int numData ) {
+        return executor.getThreads() == 1 ? 1 : ChunkedForkJoinExecutor.chunkCountForMaxChunkSize( numData, DATUM_CHUNK_SIZE );
+    }
+
+    /**
+     * Sum up statistics over the given rows of the data.
+     *
+     * The first chunk starts from initialSumProb and the others from zero, and the chunks are then added up in chunk
+     * order, so a single chunk (as with a serial executor) gives the plain row by row sum.
+     */
+    private SufficientStatistics accumulate( final VariantDataTable data, final int[] rows, final double initialSumProb, final DatumAccumulator accumulator ) {
+        final double[] annotations = data.getAnnotations();
+        final List<SufficientStatistics> chunks = executor.map( rows.length, datumChunkCount(executor, rows.length), new ChunkedForkJoinExecutor.ChunkFunction<SufficientStatistics>() {
+            @Override
+            public SufficientStatistics apply( final int chunk, final int from, final int to ) {
+                final SufficientStatistics stats = new SufficientStatistics( chunk == 0 ? initialSumProb : 0.0 );
+                for( int iii = from; iii < to; iii++ ) {
+                    accumulator.accumulate( iii, annotations, data.getAnnotationOffset(rows[iii]), stats );
+                }
+                return stats;
+            }
+        } );
+        final SufficientStatistics total = chunks.get(0);
+        for( int iii = 1; iii < chunks.size(); iii++ ) {
+            total.add( chunks.get(iii) );
+        }
+        return total;
+    }
+
+    private void forEachDatum( final VariantDataTable data, final int[] rows, final DatumFunction function ) {
+        final double[] annotations = data.getAnnotations();
+        executor.map( rows.length, datumChunkCount(executor, rows.length), new ChunkedForkJoinExecutor.ChunkFunction<Void>() {
+            @Override
+            public Void apply( final int chunk, final int from, final int to ) {
+                for( int iii = from; iii < to; iii++ ) {
+                    function.apply( iii, annotations, data.getAnnotationOffset(rows[iii]) );
+                }
+                return null;
+            }
+        } );
+    }
+}
@@ -53,12 +53,9 @@ package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
 
 import Jama.Matrix;
 import org.apache.commons.math.special.Gamma;
-import org.broadinstitute.gatk.utils.MathUtils;
-import org.broadinstitute.gatk.utils.collections.ExpandingArrayList;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -77,12 +74,13 @@ public class MultivariateGaussian {
     public double hyperParameter_lambda;
     private double cachedDenomLog10;
     private Matrix cachedSigmaInverse;
-    final private ExpandingArrayList<Double> pVarInGaussian;
+    private double[] pVarInGaussian;
+    private int numPVarInGaussian;
 
     public MultivariateGaussian( final int numAnnotations ) {
         mu = new double[numAnnotations];
         sigma = new Matrix(numAnnotations, numAnnotations);
-        pVarInGaussian = new ExpandingArrayList<>();
+        pVarInGaussian = new double[0];
     }
 
     public void zeroOutMu() {
@@ -120,8 +118,16 @@ public class MultivariateGaussian {
         sigma.setMatrix(0, mu.length - 1, 0, mu.length - 1, tmp);
     }
 
-    public double calculateDistanceFromMeanSquared( final VariantDatum datum ) {
-        return MathUtils.distanceSquared( datum.annotations, mu );
+    /**
+     * @param annotations a row-major annotation matrix, as in VariantDataTable
+     * @param offset the index in annotations of the first annotation of the variant
+     */
+    public double calculateDistanceFromMeanSquared( final double[] annotations, final int offset ) {
+        double dist = 0.0;
+        for( int jjj = 0; jjj < mu.length; jjj++ ) {
+            dist += (annotations[offset + jjj] - mu[jjj]) * (annotations[offset + jjj] - mu[jjj]);
+        }
+        return dist;
     }
 
     public void incrementMu( final VariantDatum datum ) {
@@ -171,64 +177,120 @@ public class MultivariateGaussian {
         cachedDenomLog10 = (pi / Math.log(10.0)) + (lambda / Math.log(10.0)) + (beta / Math.log(10.0));
     }
 
-    public double evaluateDatumLog10( final VariantDatum datum ) {
+    /**
+     * @param annotations a row-major annotation matrix, as in VariantDataTable
+     * @param offset the index in annotations of the first annotation of the variant
+     */
+    public double evaluateDatumLog10( final double[] annotations, final int offset ) {
         double sumKernel = 0.0;
         final double[] crossProdTmp = new double[mu.length];
         Arrays.fill(crossProdTmp, 0.0);
         for( int iii = 0; iii < mu.length; iii++ ) {
             for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                crossProdTmp[iii] += (datum.annotations[jjj] - mu[jjj]) * cachedSigmaInverse.get(jjj, iii);
+                crossProdTmp[iii] += (annotations[offset + jjj] - mu[jjj]) * cachedSigmaInverse.get(jjj, iii);
             }
         }
         for( int iii = 0; iii < mu.length; iii++ ) {
-            sumKernel += crossProdTmp[iii] * (datum.annotations[iii] - mu[iii]);
+            sumKernel += crossProdTmp[iii] * (annotations[offset + iii] - mu[iii]);
         }
         
         return (( -0.5 * sumKernel ) / Math.log(10.0)) + cachedDenomLog10; // This is the definition of a Gaussian PDF Log10
     }
 
     public void assignPVarInGaussian( final double pVar ) {
-        pVarInGaussian.add( pVar );
+        if( numPVarInGaussian == pVarInGaussian.length ) {
+            pVarInGaussian = Arrays.copyOf( pVarInGaussian, Math.max(16, 2 * pVarInGaussian.length) );
+        }
+        pVarInGaussian[numPVarInGaussian++] = pVar;
+    }
+
+    /**
+     * Make room for the probabilities of numData variants to be set by index, possibly from several threads at once
+     */
+    public void initializePVarInGaussian( final int numData ) {
+        if( pVarInGaussian.length < numData ) {
+            pVarInGaussian = new double[numData];
+        }
+        numPVarInGaussian = numData;
+    }
+
+    public void assignPVarInGaussian( final int datumIndex, final double pVar ) {
+        pVarInGaussian[datumIndex] = pVar;
     }
 
     public void resetPVarInGaussian() {
-        pVarInGaussian.clear();
+        pVarInGaussian = new double[0];
+        numPVarInGaussian = 0;
     }
 
-    public void maximizeGaussian( final List<VariantDatum> data, final double[] empiricalMu, final Matrix empiricalSigma,
-                                  final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
-        sumProb = 1E-10;
-        final Matrix wishart = new Matrix(mu.length, mu.length);
-        zeroOutMu();
-        zeroOutSigma();
-        
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            sumProb += prob;
-            incrementMu( datum, prob );
+    /**
+     * Add the contribution of one datum to the probability-weighted sum of annotations used to compute the mean
+     *
+     * @param annotations a row-major annotation matrix, as in VariantDataTable
+     * @param offset the index in annotations of the first annotation of the variant
+     * @param datumIndex the index of the variant in the training data, used to look up its probability of being in this Gaussian
+     * @param weightedSum the running weighted sum of annotations, updated in place
+     * @return the probability of the variant being in this Gaussian
+     */
+    public double accumulateWeightedMu( final double[] annotations, final int offset, final int datumIndex, final double[] weightedSum ) {
+        final double prob = pVarInGaussian[datumIndex];
+        for( int jjj = 0; jjj < mu.length; jjj++ ) {
+            weightedSum[jjj] += prob * annotations[offset + jjj];
         }
-        divideEqualsMu( sumProb );
+        return prob;
+    }
 
-        final double shrinkageFactor = (SHRINKAGE * sumProb) / (SHRINKAGE + sumProb);
+    /**
+     * Add the contribution of one datum to the probability-weighted scatter matrix around the current mean
+     *
+     * @param annotations a row-major annotation matrix, as in VariantDataTable
+     * @param offset the index in annotations of the first annotation of the variant
+     * @param datumIndex the index of the variant in the training data, used to look up its probability of being in this Gaussian
+     * @param scatter the running scatter matrix, updated in place
+     */
+    public void accumulateWeightedSigma( final double[] annotations, final int offset, final int datumIndex, final double[][] scatter ) {
+        final double prob = pVarInGaussian[datumIndex];
         for( int iii = 0; iii < mu.length; iii++ ) {
             for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                wishart.set(iii, jjj, shrinkageFactor * (mu[iii] - empiricalMu[iii]) * (mu[jjj] - empiricalMu[jjj]));
+                scatter[iii][jjj] += prob * (annotations[offset + iii]-mu[iii]) * (annotations[offset + jjj]-mu[jjj]);
             }
         }
+    }
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            for( int iii = 0; iii < mu.length; iii++ ) {
-                for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
-                }
+    /**
+     * Set the mean to the probability-weighted average of the training data
+     *
+     * @param sumProb the sum of the probabilities of the data being in this Gaussian
+     * @param weightedSum the probability-weighted sum of annotations, as filled in by accumulateWeightedMu
+     */
+    public void setMuFromWeightedSum( final double sumProb, final double[] weightedSum ) {
+        this.sumProb = sumProb;
+        System.arraycopy( weightedSum, 0, mu, 0, mu.length );
+        divideEqualsMu( sumProb );
+    }
+
+    public void maximizeGaussian( final VariantDataTable data, final int[] rows, final double[] empiricalMu, final Matrix empiricalSigma,
+                                  final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
+        maximizeMu( data, rows, 1E-10 );
+        finishMaximization( accumulateWeightedSigma( data, rows ), empiricalMu, empiricalSigma, SHRINKAGE, DIRICHLET_PARAMETER, DEGREES_OF_FREEDOM );
+    }
+
+    /**
+     * Finish the variational Bayes M step once the mean has been set by setMuFromWeightedSum
+     *
+     * @param scatter the probability-weighted scatter matrix of the data around the mean, as filled in by accumulateWeightedSigma
+     */
+    public void finishMaximization( final double[][] scatter, final double[] empiricalMu, final Matrix empiricalSigma,
+                                    final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
+        final Matrix wishart = new Matrix(mu.length, mu.length);
+        final double shrinkageFactor = (SHRINKAGE * sumProb) / (SHRINKAGE + sumProb);
+        for( int iii = 0; iii < mu.length; iii++ ) {
+            for( int jjj = 0; jjj < mu.length; jjj++ ) {
+                wishart.set(iii, jjj, shrinkageFactor * (mu[iii] - empiricalMu[iii]) * (mu[jjj] - empiricalMu[jjj]));
             }
-            sigma.plusEquals( pVarSigma );
         }
 
+        sigma.setMatrix(0, mu.length - 1, 0, mu.length - 1, new Matrix(scatter));
         sigma.plusEquals( empiricalSigma );
         sigma.plusEquals( wishart );
 
@@ -243,32 +305,39 @@ public class MultivariateGaussian {
         resetPVarInGaussian(); // clean up some memory
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
-        sumProb = 0.0;
-        zeroOutMu();
-        zeroOutSigma();
-
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            sumProb += prob;
-            incrementMu( datum, prob );
-        }
-        divideEqualsMu( sumProb );
+    public void evaluateFinalModelParameters( final VariantDataTable data, final int[] rows ) {
+        maximizeMu( data, rows, 0.0 );
+        finishFinalModelParameters( accumulateWeightedSigma( data, rows ) );
+    }
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            for( int iii = 0; iii < mu.length; iii++ ) {
-                for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
-                }
-            }
-            sigma.plusEquals( pVarSigma );
-        }
+    /**
+     * Finish the final parameter estimation once the mean has been set by setMuFromWeightedSum
+     *
+     * @param scatter the probability-weighted scatter matrix of the data around the mean, as filled in by accumulateWeightedSigma
+     */
+    public void finishFinalModelParameters( final double[][] scatter ) {
+        sigma.setMatrix(0, mu.length - 1, 0, mu.length - 1, new Matrix(scatter));
         sigma.timesEquals( 1.0 / sumProb );
 
         resetPVarInGaussian(); // clean up some memory
     }
-}
\ No newline at end of file
+
+    private void maximizeMu( final VariantDataTable data, final int[] rows, final double initialSumProb ) {
+        final double[] annotations = data.getAnnotations();
+        final double[] weightedSum = new double[mu.length];
+        double sumProbData = initialSumProb;
+        for( int datumIndex = 0; datumIndex < rows.length; datumIndex++ ) {
+            sumProbData += accumulateWeightedMu( annotations, data.getAnnotationOffset(rows[datumIndex]), datumIndex, weightedSum );
+        }
+        setMuFromWeightedSum( sumProbData, weightedSum );
+    }
+
+    private double[][] accumulateWeightedSigma( final VariantDataTable data, final int[] rows ) {
+        final double[] annotations = data.getAnnotations();
+        final double[][] scatter = new double[mu.length][mu.length];
+        for( int datumIndex = 0; datumIndex < rows.length; datumIndex++ ) {
+            accumulateWeightedSigma( annotations, data.getAnnotationOffset(rows[datumIndex]), datumIndex, scatter );
+        }
+        return scatter;
+    }
+}
@@ -0,0 +1,361 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+
+package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
+
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A compact binary form of the recalibration table written by VariantRecalibrator.
+ *
+ * <p>Where the recal VCF needs a full VCF decode of every record, this file holds only what ApplyRecalibration reads:
+ * for each variant its start, stop, a hash of its alternate allele, its VQSLOD (rounded to the four decimals written to
+ * the VCF), its culprit annotation and its training labels, all as fixed-size primitive records sorted by position.
+ * A header lists the culprit names and, for each contig, the range of records on it.</p>
+ *
+ * <p>The records are memory-mapped and looked up by position, so any number of threads can query the same file.
+ * Each thread remembers where its last lookup landed, so lookups that walk along the genome in order, as a traversal
+ * does, cost a constant number of record reads.</p>
+ */
+public final class RecalibrationScoreFile {
+
+    /**
+     * Returned by the find methods when no record matches
+     */
+    public static final long NOT_FOUND = -1;
+
+    /**
+     * Culprit reported for variants without one, as in the recal VCF
+     */
+    public static final String NULL_CULPRIT = "NULL";
+
+    private static final int MAGIC = 0x56515352; // "VQSR"
+    private static final int VERSION = 1;
+
+    // start (int), stop (int), allele hash (long), lod (double), culprit (short), labels (byte)
+    private static final int RECORD_SIZE = 4 + 4 + 8 + 8 + 2 + 1;
+    private static final int START_OFFSET = 0;
+    private static final int STOP_OFFSET = 4;
+    private static final int ALLELE_HASH_OFFSET = 8;
+    private static final int LOD_OFFSET = 16;
+    private static final int CULPRIT_OFFSET = 24;
+    private static final int LABELS_OFFSET = 26;
+    private static final byte POSITIVE_LABEL = 1;
+    private static final byte NEGATIVE_LABEL = 2;
+
+    // records are mapped in several buffers, as a single buffer can't be larger than 2GB
+    private static final int RECORDS_PER_BUFFER_SHIFT = 24;
+    private static final long RECORDS_PER_BUFFER_MASK = (1L << RECORDS_PER_BUFFER_SHIFT) - 1;
+
+    private final File file;
+    private final boolean alleleSpecific;
+    private final String[] culprits;
+    private final Map<String, long[]> contigRanges; // contig name -> { first record, number of records }
+    private final long numRecords;
+    private final ByteBuffer[] buffers;
+
+    // the first record of the group found by this thread's last lookup, from which the next lookup starts looking
+    private final ThreadLocal<long[]> cursor = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[]{0};
+        }
+    };
+
+    /**
+     * Open a file written by write
+     */
+    public RecalibrationScoreFile( final File file ) {
+        if( file == null ) { throw new IllegalArgumentException("file cannot be null"); }
+        this.file = file;
+        try ( final RandomAccessFile raf = new RandomAccessFile(file, "r") ) {
+            if( raf.length() < 12 || raf.readInt() != MAGIC ) {
+                throw new UserException.MalformedFile(file, "This is not a recalibration scores file written by VariantRecalibrator");
+            }
+            final int version = raf.readInt();
+            if( version != VERSION ) {
+                throw new UserException.MalformedFile(file, "Unsupported recalibration scores file version " + version + ", expected " + VERSION);
+            }
+            final byte[] headerBytes = new byte[raf.readInt()];
+            raf.readFully(headerBytes);
+            final DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+            alleleSpecific = header.readBoolean();
+            culprits = new String[header.readInt()];
+            for( int iii = 0; iii < culprits.length; iii++ ) {
+                culprits[iii] = header.readUTF();
+            }
+            final int numContigs = header.readInt();
+            contigRanges = new HashMap<>(numContigs * 2);
+            long total = 0;
+            for( int iii = 0; iii < numContigs; iii++ ) {
+                final String contig = header.readUTF();
+                final long first = header.readLong();
+                final long count = header.readLong();
+                if( first != total ) {
+                    throw new UserException.MalformedFile(file, "The records of contig " + contig + " are out of place");
+                }
+                contigRanges.put(contig, new long[]{first, count});
+                total += count;
+            }
+            numRecords = total;
+
+            final long recordsOffset = 12L + headerBytes.length;
+            if( raf.length() != recordsOffset + numRecords * RECORD_SIZE ) {
+                throw new UserException.MalformedFile(file, "Expected " + numRecords + " records but the file has " + (raf.length() - recordsOffset) + " bytes of records");
+            }
+            final FileChannel channel = raf.getChannel();
+            buffers = new ByteBuffer[(int) ((numRecords + RECORDS_PER_BUFFER_MASK) >>> RECORDS_PER_BUFFER_SHIFT)];
+            for( int iii = 0; iii < buffers.length; iii++ ) {
+                final long firstRecord = ((long) iii) << RECORDS_PER_BUFFER_SHIFT;
+                final long bufferRecords = Math.min(RECORDS_PER_BUFFER_MASK + 1, numRecords - firstRecord);
+                buffers[iii] = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset + firstRecord * RECORD_SIZE, bufferRecords * RECORD_SIZE);
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    /**
+     * Write the scores of the given rows of the data
+     *
+     * @param file the file to write
+     * @param data the recalibrated data
+     * @param rows the rows to write, which must all have a location and be in coordinate order
+     * @param annotationKeys the names of the annotations, indexed by the worst annotation of each row
+     * @param alleleSpecific were the data recalibrated per allele?  If so, records are matched by allele as well as position.
+     */
+    public static void write( final File file, final VariantDataTable data, final int[] rows, final List<String> annotationKeys, final boolean alleleSpecific ) {
+        final List<String> contigs = new ArrayList<>();
+        final List<Long> contigSizes = new ArrayList<>();
+        for( int iii = 0; iii < rows.length; iii++ ) {
+            final int row = rows[iii];
+            if( !data.hasLocation(row) ) { throw new IllegalArgumentException("Row " + row + " has no location"); }
+            final String contig = data.getContig(row);
+            if( iii == 0 || !contig.equals(data.getContig(rows[iii - 1])) ) {
+                if( contigs.contains(contig) ) { throw new IllegalArgumentException("The rows must be sorted by position but contig " + contig + " comes up twice"); }
+                contigs.add(contig);
+                contigSizes.add(0L);
+            } else if( data.getStart(row) < data.getStart(rows[iii - 1]) ) {
+                throw new IllegalArgumentException("The rows must be sorted by position but found " + contig + ":" + data.getStart(row) + " after " + contig + ":" + data.getStart(rows[iii - 1]));
+            }
+            contigSizes.set(contigSizes.size() - 1, contigSizes.get(contigSizes.size() - 1) + 1);
+        }
+
+        try ( final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))) ) {
+            final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            final DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeBoolean(alleleSpecific);
+            header.writeInt(annotationKeys.size());
+            for( final String key : annotationKeys ) {
+                header.writeUTF(key);
+            }
+            header.writeInt(contigs.size());
+            long first = 0;
+            for( int iii = 0; iii < contigs.size(); iii++ ) {
+                header.writeUTF(contigs.get(iii));
+                header.writeLong(first);
+                header.writeLong(contigSizes.get(iii));
+                first += contigSizes.get(iii);
+            }
+            header.flush();
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            for( final int row : rows ) {
+                out.writeInt(data.getStart(row));
+                out.writeInt(data.getStop(row));
+                out.writeLong(alleleSpecific ? alleleHash(data.getAlternateAllele(row)) : 0L);
+                out.writeDouble(Double.parseDouble(String.format(Locale.US, "%.4f", data.getLod(row)))); // the precision of the recal VCF
+                out.writeShort(data.getWorstAnnotation(row));
+                out.writeByte((data.atTrainingSite(row) ? POSITIVE_LABEL : 0) | (data.atAntiTrainingSite(row) ? NEGATIVE_LABEL : 0));
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /**
+     * @return a 64-bit hash of the bases of the allele, or 0 for a null allele
+     */
+    public static long alleleHash( final Allele allele ) {
+        if( allele == null ) {
+            return 0L;
+        }
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for( final byte base : allele.getDisplayBases() ) {
+            hash ^= base;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if the file was written by an allele-specific recalibration
+     */
+    public boolean isAlleleSpecific() {
+        return alleleSpecific;
+    }
+
+    public long size() {
+        return numRecords;
+    }
+
+    /**
+     * Find the first record with the given position
+     *
+     * @return the index of the record, or NOT_FOUND
+     */
+    public long find( final String contig, final int start, final int stop ) {
+        return find( contig, start, stop, false, 0L );
+    }
+
+    /**
+     * Find the record with the given position and alternate allele
+     *
+     * @return the index of the record, or NOT_FOUND
+     */
+    public long find( final String contig, final int start, final int stop, final Allele alternateAllele ) {
+        return find( contig, start, stop, true, alleleHash(alternateAllele) );
+    }
+
+    public double getLod( final long record ) {
+        return buffer(record).getDouble(offset(record) + LOD_OFFSET);
+    }
+
+    public String getCulprit( final long record ) {
+        final int culprit = buffer(record).getShort(offset(record) + CULPRIT_OFFSET);
+        return culprit == -1 ? NULL_CULPRIT : culprits[culprit];
+    }
+
+    public boolean isPositiveTrainingSite( final long record ) {
+        return (buffer(record).get(offset(record) + LABELS_OFFSET) & POSITIVE_LABEL) != 0;
+    }
+
+    public boolean isNegativeTrainingSite( final long record ) {
+        return (buffer(record).get(offset(record) + LABELS_OFFSET) & NEGATIVE_LABEL) != 0;
+    }
+
+    private long find( final String contig, final int start, final int stop, final boolean matchAllele, final long alleleHash ) {
+        final long[] range = contigRanges.get(contig);
+        if( range == null ) {
+            return NOT_FOUND;
+        }
+        final long end = range[0] + range[1];
+
+        // every record before the cursor starts before the position it last looked up, so the search can begin there
+        final long[] hint = cursor.get();
+        final long from = hint[0] >= range[0] && hint[0] < end && getStart(hint[0]) <= start ? hint[0] : range[0];
+        final long first = lowerBound(from, end, start);
+        hint[0] = first;
+
+        for( long record = first; record < end && getStart(record) == start; record++ ) {
+            if( getStop(record) == stop && (!matchAllele || getAlleleHash(record) == alleleHash) ) {
+                return record;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    // the first record in [from, end) starting at or after start, galloping forward from from before a binary search
+    private long lowerBound( final long from, final long end, final int start ) {
+        long lo = from;
+        long probe = from;
+        long step = 1;
+        while( probe < end && getStart(probe) < start ) {
+            lo = probe + 1;
+            probe = lo + step - 1;
+            step <<= 1;
+        }
+        long hi = Math.min(probe, end);
+        while( lo < hi ) {
+            final long mid = (lo + hi) >>> 1;
+            if( getStart(mid) < start ) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int getStart( final long record ) {
+        return buffer(record).getInt(offset(record) + START_OFFSET);
+    }
+
+    private int getStop( final long record ) {
+        return buffer(record).getInt(offset(record) + STOP_OFFSET);
+    }
+
+    private long getAlleleHash( final long record ) {
+        return buffer(record).getLong(offset(record) + ALLELE_HASH_OFFSET);
+    }
+
+    private ByteBuffer buffer( final long record ) {
+        return buffers[(int) (record >>> RECORDS_PER_BUFFER_SHIFT)];
+    }
+
+    private static int offset( final long record ) {
+        return (int) (record & RECORDS_PER_BUFFER_MASK) * RECORD_SIZE;
+    }
+}
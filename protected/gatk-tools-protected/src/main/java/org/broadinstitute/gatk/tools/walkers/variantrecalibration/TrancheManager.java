@@ -88,9 +88,9 @@ public class TrancheManager {
 
         public abstract double getThreshold(double tranche);
         public abstract double getTarget();
-        public abstract void calculateRunningMetric(List<VariantDatum> data);
+        public abstract void calculateRunningMetric(VariantDataTable data, int[] rows);
         public abstract double getRunningMetric(int i);
-        public abstract int datumValue(VariantDatum d);
+        public abstract int datumValue(VariantDataTable data, int row);
     }
 
     public static class NovelTiTvMetric extends SelectionMetric {
@@ -108,14 +108,14 @@ public class TrancheManager {
 
         public double getTarget() { return targetTiTv; }
 
-        public void calculateRunningMetric(List<VariantDatum> data) {
+        public void calculateRunningMetric(VariantDataTable data, int[] rows) {
             int ti = 0, tv = 0;
-            runningTiTv = new double[data.size()];
+            runningTiTv = new double[rows.length];
 
-            for ( int i = data.size() - 1; i >= 0; i-- ) {
-                VariantDatum datum = data.get(i);
-                if ( ! datum.isKnown ) {
-                    if ( datum.isTransition ) { ti++; } else { tv++; }
+            for ( int i = rows.length - 1; i >= 0; i-- ) {
+                final int row = rows[i];
+                if ( ! data.isKnown(row) ) {
+                    if ( data.isTransition(row) ) { ti++; } else { tv++; }
                     runningTiTv[i] = ti / Math.max(1.0 * tv, 1.0);
                 }
             }
@@ -125,8 +125,8 @@ public class TrancheManager {
             return runningTiTv[i];
         }
 
-        public int datumValue(VariantDatum d) {
-            return d.isTransition ? 1 : 0;
+        public int datumValue(VariantDataTable data, int row) {
+            return data.isTransition(row) ? 1 : 0;
         }
     }
 
@@ -145,13 +145,12 @@ public class TrancheManager {
 
         public double getTarget() { return 1.0; }
 
-        public void calculateRunningMetric(List<VariantDatum> data) {
+        public void calculateRunningMetric(VariantDataTable data, int[] rows) {
             int nCalledAtTruth = 0;
-            runningSensitivity = new double[data.size()];
+            runningSensitivity = new double[rows.length];
 
-            for ( int i = data.size() - 1; i >= 0; i-- ) {
-                VariantDatum datum = data.get(i);
-                nCalledAtTruth += datum.atTruthSite ? 1 : 0;
+            for ( int i = rows.length - 1; i >= 0; i-- ) {
+                nCalledAtTruth += data.atTruthSite(rows[i]) ? 1 : 0;
                 runningSensitivity[i] = 1 - nCalledAtTruth / (1.0 * nTrueSites);
             }
         }
@@ -160,26 +159,35 @@ public class TrancheManager {
             return runningSensitivity[i];
         }
 
-        public int datumValue(VariantDatum d) {
-            return d.atTruthSite ? 1 : 0;
+        public int datumValue(VariantDataTable data, int row) {
+            return data.atTruthSite(row) ? 1 : 0;
         }
     }
 
     public static List<Tranche> findTranches( final List<VariantDatum> data, final List<Double> tranches, final SelectionMetric metric, final VariantRecalibratorArgumentCollection.Mode model ) {
-        return findTranches( data, tranches, metric, model, null );
+        Collections.sort( data, new VariantDatum.VariantDatumLODComparator() );
+        final VariantDataTable table = VariantDataTable.fromData( data );
+        return findTranches( table, table.getAllRows(), tranches, metric, model );
+    }
+
+    /**
+     * Find the tranches over the given rows of the data, which are sorted in place by increasing lod
+     */
+    public static List<Tranche> findTranches( final VariantDataTable data, final int[] rows, final List<Double> tranches, final SelectionMetric metric, final VariantRecalibratorArgumentCollection.Mode model ) {
+        return findTranches( data, rows, tranches, metric, model, null );
     }
 
-    public static List<Tranche> findTranches( final List<VariantDatum> data, final List<Double> trancheThresholds, final SelectionMetric metric, final VariantRecalibratorArgumentCollection.Mode model, final File debugFile ) {
-        logger.info(String.format("Finding %d tranches for %d variants", trancheThresholds.size(), data.size()));
+    public static List<Tranche> findTranches( final VariantDataTable data, final int[] rows, final List<Double> trancheThresholds, final SelectionMetric metric, final VariantRecalibratorArgumentCollection.Mode model, final File debugFile ) {
+        logger.info(String.format("Finding %d tranches for %d variants", trancheThresholds.size(), rows.length));
 
-        Collections.sort( data, new VariantDatum.VariantDatumLODComparator() );
-        metric.calculateRunningMetric(data);
+        VariantDataTable.sortRows( rows, data.lodComparator() );
+        metric.calculateRunningMetric(data, rows);
 
-        if ( debugFile != null) { writeTranchesDebuggingInfo(debugFile, data, metric); }
+        if ( debugFile != null) { writeTranchesDebuggingInfo(debugFile, data, rows, metric); }
 
         List<Tranche> tranches = new ArrayList<>();
         for ( double trancheThreshold : trancheThresholds ) {
-            Tranche t = findTranche(data, metric, trancheThreshold, model);
+            Tranche t = findTranche(data, rows, metric, trancheThreshold, model);
 
             if ( t == null ) {
                 if ( tranches.size() == 0 )
@@ -193,15 +201,14 @@ public class TrancheManager {
         return tranches;
     }
 
-    private static void writeTranchesDebuggingInfo(File f, List<VariantDatum> tranchesData, SelectionMetric metric ) {
+    private static void writeTranchesDebuggingInfo(File f, VariantDataTable data, int[] rows, SelectionMetric metric ) {
         try {
             PrintStream out = new PrintStream(f);
             out.println("Qual metricValue runningValue");
-            for ( int i = 0; i < tranchesData.size(); i++ ) {
-                VariantDatum  d = tranchesData.get(i);
-                int score = metric.datumValue(d);
+            for ( int i = 0; i < rows.length; i++ ) {
+                int score = metric.datumValue(data, rows[i]);
                 double runningValue = metric.getRunningMetric(i);
-                out.printf("%.4f %d %.4f%n", d.lod, score, runningValue);
+                out.printf("%.4f %d %.4f%n", data.getLod(rows[i]), score, runningValue);
             }
             out.close();
         } catch (FileNotFoundException e) {
@@ -209,15 +216,15 @@ public class TrancheManager {
         }
     }
 
-    public static Tranche findTranche( final List<VariantDatum> data, final SelectionMetric metric, final double trancheThreshold, final VariantRecalibratorArgumentCollection.Mode model ) {
+    public static Tranche findTranche( final VariantDataTable data, final int[] rows, final SelectionMetric metric, final double trancheThreshold, final VariantRecalibratorArgumentCollection.Mode model ) {
         logger.info(String.format("  Tranche threshold %.2f => selection metric threshold %.3f", trancheThreshold, metric.getThreshold(trancheThreshold)));
 
         double metricThreshold = metric.getThreshold(trancheThreshold);
-        int n = data.size();
+        int n = rows.length;
         for ( int i = 0; i < n; i++ ) {
             if ( metric.getRunningMetric(i) >= metricThreshold ) {
                 // we've found the largest group of variants with sensitivity >= our target truth sensitivity
-                Tranche t = trancheOfVariants(data, i, trancheThreshold, model);
+                Tranche t = trancheOfVariants(data, rows, i, trancheThreshold, model);
                 logger.info(String.format("  Found tranche for %.3f: %.3f threshold starting with variant %d; running score is %.3f ",
                         trancheThreshold, metricThreshold, i, metric.getRunningMetric(i)));
                 logger.info(String.format("  Tranche is %s", t));
@@ -228,22 +235,21 @@ public class TrancheManager {
         return null;
     }
 
-    public static Tranche trancheOfVariants( final List<VariantDatum> data, int minI, double ts, final VariantRecalibratorArgumentCollection.Mode model ) {
+    public static Tranche trancheOfVariants( final VariantDataTable data, final int[] rows, int minI, double ts, final VariantRecalibratorArgumentCollection.Mode model ) {
         int numKnown = 0, numNovel = 0, knownTi = 0, knownTv = 0, novelTi = 0, novelTv = 0;
 
-        double minLod = data.get(minI).lod;
-        for ( final VariantDatum datum : data ) {
-            if ( datum.lod >= minLod ) {
-                //if( ! datum.isKnown ) System.out.println(datum.pos);
-                if ( datum.isKnown ) {
+        double minLod = data.getLod(rows[minI]);
+        for ( final int row : rows ) {
+            if ( data.getLod(row) >= minLod ) {
+                if ( data.isKnown(row) ) {
                     numKnown++;
-                    if( datum.isSNP ) {
-                        if ( datum.isTransition ) { knownTi++; } else { knownTv++; }
+                    if( data.isSNP(row) ) {
+                        if ( data.isTransition(row) ) { knownTi++; } else { knownTv++; }
                     }
                 } else {
                     numNovel++;
-                    if( datum.isSNP ) {
-                        if ( datum.isTransition ) { novelTi++; } else { novelTv++; }
+                    if( data.isSNP(row) ) {
+                        if ( data.isTransition(row) ) { novelTi++; } else { novelTv++; }
                     }
                 }
             }
@@ -252,8 +258,8 @@ public class TrancheManager {
         double knownTiTv = knownTi / Math.max(1.0 * knownTv, 1.0);
         double novelTiTv = novelTi / Math.max(1.0 * novelTv, 1.0);
 
-        int accessibleTruthSites = countCallsAtTruth(data, Double.NEGATIVE_INFINITY);
-        int nCallsAtTruth = countCallsAtTruth(data, minLod);
+        int accessibleTruthSites = countCallsAtTruth(data, rows, Double.NEGATIVE_INFINITY);
+        int nCallsAtTruth = countCallsAtTruth(data, rows, minLod);
 
         return new Tranche(ts, minLod, numKnown, knownTiTv, numNovel, novelTiTv, accessibleTruthSites, nCallsAtTruth, model);
     }
@@ -267,4 +273,10 @@ public class TrancheManager {
         for ( VariantDatum d : data ) { n += (d.atTruthSite && d.lod >= minLOD ? 1 : 0); }
         return n;
     }
+
+    public static int countCallsAtTruth(final VariantDataTable data, final int[] rows, double minLOD ) {
+        int n = 0;
+        for ( final int row : rows ) { n += (data.atTruthSite(row) && data.getLod(row) >= minLOD ? 1 : 0); }
+        return n;
+    }
 }
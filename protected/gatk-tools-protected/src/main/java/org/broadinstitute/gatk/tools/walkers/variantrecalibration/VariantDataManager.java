@@ -60,13 +60,13 @@ import org.broadinstitute.gatk.utils.MathUtils;
 import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
-import org.broadinstitute.gatk.utils.collections.ExpandingArrayList;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 
+import java.io.File;
 import java.util.*;
 
 /**
@@ -76,7 +76,8 @@ import java.util.*;
  */
 
 public class VariantDataManager {
-    private List<VariantDatum> data = Collections.emptyList();
+    private VariantDataTable data;
+    private int[] order = new int[0]; // the rows of data being recalibrated, in their current order
     private double[] meanVector;
     private double[] varianceVector; // this is really the standard deviation
     public List<String> annotationKeys;
@@ -87,22 +88,43 @@ public class VariantDataManager {
     private static final double PRECISION = 0.01;         //To use mainly with MathUtils.compareDoubles(a,b,PRECISION)
 
     public VariantDataManager( final List<String> annotationKeys, final VariantRecalibratorArgumentCollection VRAC ) {
-        this.data = Collections.emptyList();
         this.annotationKeys = new ArrayList<>( annotationKeys );
+        this.data = new VariantDataTable( this.annotationKeys.size() );
         this.VRAC = VRAC;
         meanVector = new double[this.annotationKeys.size()];
         varianceVector = new double[this.annotationKeys.size()];
         trainingSets = new ArrayList<>();
     }
 
-    public void setData( final List<VariantDatum> data ) {
+    public void setData( final VariantDataTable data ) {
         this.data = data;
+        this.order = data.getAllRows();
+    }
+
+    public void setData( final List<VariantDatum> data ) {
+        setData( VariantDataTable.fromData(data) );
     }
 
+    /**
+     * @return copies of the data being recalibrated, in their current order
+     */
     public List<VariantDatum> getData() {
+        return data.toData( order );
+    }
+
+    public VariantDataTable getDataTable() {
         return data;
     }
 
+    /**
+     * Get the rows of the data table being recalibrated, in their current order.
+     *
+     * This is the array held by the manager, so sorting it in place reorders the data.
+     */
+    public int[] getDataRows() {
+        return order;
+    }
+
     public void normalizeData() {
         boolean foundZeroVarianceAnnotation = false;
         for( int iii = 0; iii < meanVector.length; iii++ ) {
@@ -116,9 +138,9 @@ public class VariantDataManager {
             foundZeroVarianceAnnotation = foundZeroVarianceAnnotation || (theSTD < 1E-5);
             meanVector[iii] = theMean;
             varianceVector[iii] = theSTD;
-            for( final VariantDatum datum : data ) {
+            for( final int row : order ) {
                 // Transform each data point via: (x - mean) / standard deviation
-                datum.annotations[iii] = ( datum.isNull[iii] ? 0.1 * Utils.getRandomGenerator().nextGaussian() : ( datum.annotations[iii] - theMean ) / theSTD );
+                data.setAnnotation( row, iii, ( data.isNull(row, iii) ? 0.1 * Utils.getRandomGenerator().nextGaussian() : ( data.getAnnotation(row, iii) - theMean ) / theSTD ) );
             }
         }
         if( foundZeroVarianceAnnotation ) {
@@ -126,12 +148,12 @@ public class VariantDataManager {
         }
 
         // trim data by standard deviation threshold and mark failing data for exclusion later
-        for( final VariantDatum datum : data ) {
+        for( final int row : order ) {
             boolean remove = false;
-            for( final double val : datum.annotations ) {
-                remove = remove || (Math.abs(val) > VRAC.STD_THRESHOLD);
+            for( int iii = 0; iii < data.getNumAnnotations(); iii++ ) {
+                remove = remove || (Math.abs(data.getAnnotation(row, iii)) > VRAC.STD_THRESHOLD);
             }
-            datum.failingSTDThreshold = remove;
+            data.setFailingSTDThreshold( row, remove );
         }
 
         // re-order the data by increasing standard deviation so that the results don't depend on the order things were specified on the command line
@@ -140,10 +162,7 @@ public class VariantDataManager {
         annotationKeys = reorderList(annotationKeys, theOrder);
         varianceVector = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(varianceVector), theOrder));
         meanVector = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(meanVector), theOrder));
-        for( final VariantDatum datum : data ) {
-            datum.annotations = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(datum.annotations), theOrder));
-            datum.isNull = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(datum.isNull), theOrder));
-        }
+        data.permuteAnnotations(theOrder);
         logger.info("Annotations are now ordered by their information content: " + annotationKeys.toString());
     }
 
@@ -249,81 +268,113 @@ public class VariantDataManager {
         return false;
     }
 
-    public List<VariantDatum> getTrainingData() {
-        final List<VariantDatum> trainingData = new ExpandingArrayList<>();
-        for( final VariantDatum datum : data ) {
-            if( datum.atTrainingSite && !datum.failingSTDThreshold ) {
-                trainingData.add( datum );
+    /**
+     * @return the rows of the data to train the positive model on, downsampled if there are too many
+     */
+    public int[] getTrainingRows() {
+        int[] trainingRows = new int[order.length];
+        int numTrainingRows = 0;
+        for( final int row : order ) {
+            if( data.atTrainingSite(row) && !data.failingSTDThreshold(row) ) {
+                trainingRows[numTrainingRows++] = row;
             }
         }
-        logger.info( "Training with " + trainingData.size() + " variants after standard deviation thresholding." );
-        if( trainingData.size() < VRAC.MIN_NUM_BAD_VARIANTS ) {
+        trainingRows = Arrays.copyOf( trainingRows, numTrainingRows );
+        logger.info( "Training with " + trainingRows.length + " variants after standard deviation thresholding." );
+        if( trainingRows.length < VRAC.MIN_NUM_BAD_VARIANTS ) {
             logger.warn( "WARNING: Training with very few variant sites! Please check the model reporting PDF to ensure the quality of the model is reliable." );
-        } else if( trainingData.size() > VRAC.MAX_NUM_TRAINING_DATA ) {
+        } else if( trainingRows.length > VRAC.MAX_NUM_TRAINING_DATA ) {
             logger.warn( "WARNING: Very large training set detected. Downsampling to " + VRAC.MAX_NUM_TRAINING_DATA + " training variants." );
-            Collections.shuffle(trainingData, Utils.getRandomGenerator());
-            return trainingData.subList(0, VRAC.MAX_NUM_TRAINING_DATA);
+            shuffle(trainingRows, Utils.getRandomGenerator());
+            return Arrays.copyOf( trainingRows, VRAC.MAX_NUM_TRAINING_DATA );
         }
-        return trainingData;
+        return trainingRows;
     }
 
-    public List<VariantDatum> selectWorstVariants() {
-        final List<VariantDatum> trainingData = new ExpandingArrayList<>();
+    public List<VariantDatum> getTrainingData() {
+        return data.toData( getTrainingRows() );
+    }
 
-        for( final VariantDatum datum : data ) {
-            if( datum != null && !datum.failingSTDThreshold && !Double.isInfinite(datum.lod) && datum.lod < VRAC.BAD_LOD_CUTOFF ) {
-                datum.atAntiTrainingSite = true;
-                trainingData.add( datum );
+    /**
+     * Mark the worst scoring variants as anti-training sites
+     *
+     * @return the rows of the data to train the negative model on
+     */
+    public int[] selectWorstRows() {
+        int[] worstRows = new int[order.length];
+        int numWorstRows = 0;
+        for( final int row : order ) {
+            if( !data.failingSTDThreshold(row) && !Double.isInfinite(data.getLod(row)) && data.getLod(row) < VRAC.BAD_LOD_CUTOFF ) {
+                data.setAtAntiTrainingSite( row, true );
+                worstRows[numWorstRows++] = row;
             }
         }
+        worstRows = Arrays.copyOf( worstRows, numWorstRows );
 
-        logger.info( "Training with worst " + trainingData.size() + " scoring variants --> variants with LOD <= " + String.format("%.4f", VRAC.BAD_LOD_CUTOFF) + "." );
+        logger.info( "Training with worst " + worstRows.length + " scoring variants --> variants with LOD <= " + String.format("%.4f", VRAC.BAD_LOD_CUTOFF) + "." );
 
-        return trainingData;
+        return worstRows;
     }
 
-    public List<VariantDatum> getEvaluationData() {
-        final List<VariantDatum> evaluationData = new ExpandingArrayList<>();
-
-        for( final VariantDatum datum : data ) {
-            if( datum != null && !datum.failingSTDThreshold && !datum.atTrainingSite && !datum.atAntiTrainingSite ) {
-                evaluationData.add( datum );
+    public int[] getEvaluationRows() {
+        int[] evaluationRows = new int[order.length];
+        int numEvaluationRows = 0;
+        for( final int row : order ) {
+            if( !data.failingSTDThreshold(row) && !data.atTrainingSite(row) && !data.atAntiTrainingSite(row) ) {
+                evaluationRows[numEvaluationRows++] = row;
             }
         }
-
-        return evaluationData;
+        return Arrays.copyOf( evaluationRows, numEvaluationRows );
     }
 
     /**
-     * Remove all VariantDatum's from the data list which are marked as aggregate data
+     * Remove all the rows which are marked as aggregate data from the data being recalibrated
      */
     public void dropAggregateData() {
-        final Iterator<VariantDatum> iter = data.iterator();
-        while (iter.hasNext()) {
-            final VariantDatum datum = iter.next();
-            if( datum.isAggregate ) {
-                iter.remove();
+        int numKept = 0;
+        for( final int row : order ) {
+            if( !data.isAggregate(row) ) {
+                order[numKept++] = row;
             }
         }
+        order = Arrays.copyOf( order, numKept );
+    }
+
+    public List<VariantDatum> getRandomDataForPlotting( final int numToAdd, final int[] trainingRows, final int[] antiTrainingRows, final int[] evaluationRows ) {
+        final int[] training = trainingRows.clone();
+        final int[] antiTraining = antiTrainingRows.clone();
+        final int[] evaluation = evaluationRows.clone();
+        shuffle(training, Utils.getRandomGenerator());
+        shuffle(antiTraining, Utils.getRandomGenerator());
+        shuffle(evaluation, Utils.getRandomGenerator());
+        final int numTraining = Math.min(numToAdd, training.length);
+        final int numAntiTraining = Math.min(numToAdd, antiTraining.length);
+        final int numEvaluation = Math.min(numToAdd, evaluation.length);
+        final int[] returnRows = new int[numTraining + numAntiTraining + numEvaluation];
+        System.arraycopy(training, 0, returnRows, 0, numTraining);
+        System.arraycopy(antiTraining, 0, returnRows, numTraining, numAntiTraining);
+        System.arraycopy(evaluation, 0, returnRows, numTraining + numAntiTraining, numEvaluation);
+        shuffle(returnRows, Utils.getRandomGenerator());
+        return data.toData( returnRows );
     }
 
-    public List<VariantDatum> getRandomDataForPlotting( final int numToAdd, final List<VariantDatum> trainingData, final List<VariantDatum> antiTrainingData, final List<VariantDatum> evaluationData ) {
-        final List<VariantDatum> returnData = new ExpandingArrayList<>();
-        Collections.shuffle(trainingData, Utils.getRandomGenerator());
-        Collections.shuffle(antiTrainingData, Utils.getRandomGenerator());
-        Collections.shuffle(evaluationData, Utils.getRandomGenerator());
-        returnData.addAll(trainingData.subList(0, Math.min(numToAdd, trainingData.size())));
-        returnData.addAll(antiTrainingData.subList(0, Math.min(numToAdd, antiTrainingData.size())));
-        returnData.addAll(evaluationData.subList(0, Math.min(numToAdd, evaluationData.size())));
-        Collections.shuffle(returnData, Utils.getRandomGenerator());
-        return returnData;
+    /**
+     * Shuffle rows in place, drawing the same random numbers and making the same swaps as Collections.shuffle
+     */
+    private static void shuffle( final int[] rows, final Random rand ) {
+        for( int iii = rows.length; iii > 1; iii-- ) {
+            final int jjj = rand.nextInt(iii);
+            final int tmp = rows[iii - 1];
+            rows[iii - 1] = rows[jjj];
+            rows[jjj] = tmp;
+        }
     }
 
     protected double mean( final int index, final boolean trainingData ) {
         double sum = 0.0;
         int numNonNull = 0;
-        for( final VariantDatum datum : data ) {
-            if( (trainingData == datum.atTrainingSite) && !datum.isNull[index] ) { sum += datum.annotations[index]; numNonNull++; }
+        for( final int row : order ) {
+            if( (trainingData == data.atTrainingSite(row)) && !data.isNull(row, index) ) { sum += data.getAnnotation(row, index); numNonNull++; }
         }
         return sum / ((double) numNonNull);
     }
@@ -331,8 +382,8 @@ public class VariantDataManager {
     protected double standardDeviation( final double mean, final int index, final boolean trainingData ) {
         double sum = 0.0;
         int numNonNull = 0;
-        for( final VariantDatum datum : data ) {
-            if( (trainingData == datum.atTrainingSite) && !datum.isNull[index] ) { sum += ((datum.annotations[index] - mean)*(datum.annotations[index] - mean)); numNonNull++; }
+        for( final int row : order ) {
+            if( (trainingData == data.atTrainingSite(row)) && !data.isNull(row, index) ) { sum += ((data.getAnnotation(row, index) - mean)*(data.getAnnotation(row, index) - mean)); numNonNull++; }
         }
         return Math.sqrt( sum / ((double) numNonNull) );
     }
@@ -472,26 +523,31 @@ public class VariantDataManager {
         }
     }
 
+    /**
+     * Write the scores of the variants to a binary file that ApplyRecalibration can read instead of the recal VCF
+     */
+    public void writeOutRecalibrationScores( final File file ) {
+        VariantDataTable.sortRows( order, data.positionComparator() );
+        RecalibrationScoreFile.write( file, data, order, annotationKeys, VRAC.useASannotations );
+    }
+
     public void writeOutRecalibrationTable( final VariantContextWriter recalWriter ) {
         // we need to sort in coordinate order in order to produce a valid VCF
-        Collections.sort( data, new Comparator<VariantDatum>() {
-            public int compare(VariantDatum vd1, VariantDatum vd2) {
-                return vd1.loc.compareTo(vd2.loc);
-            }} );
+        VariantDataTable.sortRows( order, data.positionComparator() );
 
         // create dummy alleles to be used
         List<Allele> alleles = Arrays.asList(Allele.create("N", true), Allele.create("<VQSR>", false));
 
-        for( final VariantDatum datum : data ) {
+        for( final int row : order ) {
             if (VRAC.useASannotations)
-                alleles = Arrays.asList(datum.referenceAllele, datum.alternateAllele); //use the alleles to distinguish between multiallelics in AS mode
-            VariantContextBuilder builder = new VariantContextBuilder("VQSR", datum.loc.getContig(), datum.loc.getStart(), datum.loc.getStop(), alleles);
-            builder.attribute(VCFConstants.END_KEY, datum.loc.getStop());
-            builder.attribute(GATKVCFConstants.VQS_LOD_KEY, String.format("%.4f", datum.lod));
-            builder.attribute(GATKVCFConstants.CULPRIT_KEY, (datum.worstAnnotation != -1 ? annotationKeys.get(datum.worstAnnotation) : "NULL"));
-
-            if ( datum.atTrainingSite ) builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
-            if ( datum.atAntiTrainingSite ) builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
+                alleles = Arrays.asList(data.getReferenceAllele(row), data.getAlternateAllele(row)); //use the alleles to distinguish between multiallelics in AS mode
+            VariantContextBuilder builder = new VariantContextBuilder("VQSR", data.getContig(row), data.getStart(row), data.getStop(row), alleles);
+            builder.attribute(VCFConstants.END_KEY, data.getStop(row));
+            builder.attribute(GATKVCFConstants.VQS_LOD_KEY, String.format("%.4f", data.getLod(row)));
+            builder.attribute(GATKVCFConstants.CULPRIT_KEY, (data.getWorstAnnotation(row) != -1 ? annotationKeys.get(data.getWorstAnnotation(row)) : "NULL"));
+
+            if ( data.atTrainingSite(row) ) builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
+            if ( data.atAntiTrainingSite(row) ) builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
 
             recalWriter.add(builder.make());
         }
@@ -0,0 +1,555 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+
+package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
+
+import htsjdk.variant.variantcontext.Allele;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Column-oriented store for the variants being recalibrated.
+ *
+ * <p>Each row holds what a {@link VariantDatum} would: the annotations live in one flat row-major matrix of
+ * {@code size() * getNumAnnotations()} doubles, the per-site flags in bitsets and the position as three ints, so a
+ * callset costs a handful of primitive arrays instead of several objects per site. Rows are addressed by their
+ * index in insertion order; subsets and orderings of the data are passed around as arrays of row indices.</p>
+ *
+ * <p>Writes to the numeric columns of distinct rows may happen from different threads, but the flags are kept in
+ * bitsets and must only be changed from a single thread.</p>
+ */
+public final class VariantDataTable {
+
+    /**
+     * Orders two rows of a table
+     */
+    public interface RowComparator {
+        int compare(final int row1, final int row2);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NO_CONTIG = -1;
+
+    private final int numAnnotations;
+    private int size = 0;
+    private int capacity = 0;
+
+    private double[] annotations = new double[0];
+    private final BitSet isNull = new BitSet();
+    private double[] lod = new double[0];
+    private double[] prior = new double[0];
+    private double[] worstValue = new double[0];
+    private short[] worstAnnotation = new short[0];
+    private int[] contigIndex = new int[0];
+    private int[] start = new int[0];
+    private int[] stop = new int[0];
+    private final List<String> contigNames = new ArrayList<>();
+
+    private final BitSet isKnown = new BitSet();
+    private final BitSet atTruthSite = new BitSet();
+    private final BitSet atTrainingSite = new BitSet();
+    private final BitSet atAntiTrainingSite = new BitSet();
+    private final BitSet isTransition = new BitSet();
+    private final BitSet isSNP = new BitSet();
+    private final BitSet failingSTDThreshold = new BitSet();
+    private final BitSet isAggregate = new BitSet();
+
+    // only needed in allele-specific mode, so they're created when the first allele is added
+    private Allele[] referenceAllele = null;
+    private Allele[] alternateAllele = null;
+
+    public VariantDataTable( final int numAnnotations ) {
+        if( numAnnotations < 0 ) { throw new IllegalArgumentException("numAnnotations cannot be negative but found: " + numAnnotations); }
+        this.numAnnotations = numAnnotations;
+    }
+
+    /**
+     * Pack a list of data into a new table, whose rows are in the order of the list
+     *
+     * @param data the data to copy, whose annotation arrays must all have the same length
+     * @return a non-null table
+     */
+    public static VariantDataTable fromData( final List<VariantDatum> data ) {
+        if( data == null ) { throw new IllegalArgumentException("data cannot be null"); }
+        int numAnnotations = 0;
+        for( final VariantDatum datum : data ) {
+            if( datum.annotations != null ) {
+                numAnnotations = datum.annotations.length;
+                break;
+            }
+        }
+        final VariantDataTable table = new VariantDataTable( numAnnotations );
+        table.ensureCapacity( data.size() );
+        for( final VariantDatum datum : data ) {
+            table.add( datum );
+        }
+        return table;
+    }
+
+    /**
+     * @return the indices 0 to numRows - 1 in increasing order
+     */
+    public static int[] rowRange( final int numRows ) {
+        final int[] rows = new int[numRows];
+        for( int iii = 0; iii < numRows; iii++ ) {
+            rows[iii] = iii;
+        }
+        return rows;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getNumAnnotations() {
+        return numAnnotations;
+    }
+
+    /**
+     * @return the indices of all the rows, in insertion order
+     */
+    public int[] getAllRows() {
+        return rowRange( size );
+    }
+
+    /**
+     * Append a copy of the datum as a new row
+     *
+     * @return the index of the new row
+     */
+    public int add( final VariantDatum datum ) {
+        if( datum == null ) { throw new IllegalArgumentException("datum cannot be null"); }
+        final int numDatumAnnotations = datum.annotations == null ? 0 : datum.annotations.length;
+        if( numDatumAnnotations != numAnnotations ) {
+            throw new IllegalArgumentException("Expected " + numAnnotations + " annotations but the datum has " + numDatumAnnotations);
+        }
+
+        ensureCapacity( size + 1 );
+        final int row = size++;
+        final int offset = row * numAnnotations;
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            annotations[offset + iii] = datum.annotations[iii];
+            isNull.set( offset + iii, datum.isNull[iii] );
+        }
+        lod[row] = datum.lod;
+        prior[row] = datum.prior;
+        worstValue[row] = datum.worstValue;
+        worstAnnotation[row] = (short) datum.worstAnnotation;
+        if( datum.loc == null ) {
+            contigIndex[row] = NO_CONTIG;
+        } else {
+            contigIndex[row] = datum.loc.getContigIndex();
+            start[row] = datum.loc.getStart();
+            stop[row] = datum.loc.getStop();
+            setContigName( contigIndex[row], datum.loc.getContig() );
+        }
+        isKnown.set( row, datum.isKnown );
+        atTruthSite.set( row, datum.atTruthSite );
+        atTrainingSite.set( row, datum.atTrainingSite );
+        atAntiTrainingSite.set( row, datum.atAntiTrainingSite );
+        isTransition.set( row, datum.isTransition );
+        isSNP.set( row, datum.isSNP );
+        failingSTDThreshold.set( row, datum.failingSTDThreshold );
+        isAggregate.set( row, datum.isAggregate );
+        if( datum.referenceAllele != null || datum.alternateAllele != null ) {
+            createAlleleColumns();
+        }
+        if( referenceAllele != null ) {
+            referenceAllele[row] = datum.referenceAllele;
+            alternateAllele[row] = datum.alternateAllele;
+        }
+        return row;
+    }
+
+    /**
+     * Append all the rows of another table, in order, after the rows of this one
+     */
+    public void addAll( final VariantDataTable other ) {
+        if( other == null ) { throw new IllegalArgumentException("other cannot be null"); }
+        if( other.numAnnotations != numAnnotations ) {
+            throw new IllegalArgumentException("Expected " + numAnnotations + " annotations but the other table has " + other.numAnnotations);
+        }
+        if( other.size == 0 ) {
+            return;
+        }
+
+        ensureCapacity( size + other.size );
+        final int first = size;
+        System.arraycopy( other.annotations, 0, annotations, first * numAnnotations, other.size * numAnnotations );
+        appendBits( isNull, other.isNull, first * numAnnotations, other.size * numAnnotations );
+        System.arraycopy( other.lod, 0, lod, first, other.size );
+        System.arraycopy( other.prior, 0, prior, first, other.size );
+        System.arraycopy( other.worstValue, 0, worstValue, first, other.size );
+        System.arraycopy( other.worstAnnotation, 0, worstAnnotation, first, other.size );
+        System.arraycopy( other.contigIndex, 0, contigIndex, first, other.size );
+        System.arraycopy( other.start, 0, start, first, other.size );
+        System.arraycopy( other.stop, 0, stop, first, other.size );
+        for( int iii = 0; iii < other.contigNames.size(); iii++ ) {
+            if( other.contigNames.get(iii) != null ) {
+                setContigName( iii, other.contigNames.get(iii) );
+            }
+        }
+        appendBits( isKnown, other.isKnown, first, other.size );
+        appendBits( atTruthSite, other.atTruthSite, first, other.size );
+        appendBits( atTrainingSite, other.atTrainingSite, first, other.size );
+        appendBits( atAntiTrainingSite, other.atAntiTrainingSite, first, other.size );
+        appendBits( isTransition, other.isTransition, first, other.size );
+        appendBits( isSNP, other.isSNP, first, other.size );
+        appendBits( failingSTDThreshold, other.failingSTDThreshold, first, other.size );
+        appendBits( isAggregate, other.isAggregate, first, other.size );
+        if( other.referenceAllele != null ) {
+            createAlleleColumns();
+            System.arraycopy( other.referenceAllele, 0, referenceAllele, first, other.size );
+            System.arraycopy( other.alternateAllele, 0, alternateAllele, first, other.size );
+        }
+        size += other.size;
+    }
+
+    /**
+     * Copy a row out into a new datum.
+     *
+     * The datum gets no location, as building one needs a GenomeLocParser; use getContig, getStart and getStop instead.
+     */
+    public VariantDatum toDatum( final int row ) {
+        checkRow( row );
+        final VariantDatum datum = new VariantDatum();
+        final int offset = row * numAnnotations;
+        datum.annotations = Arrays.copyOfRange( annotations, offset, offset + numAnnotations );
+        datum.isNull = new boolean[numAnnotations];
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            datum.isNull[iii] = isNull.get( offset + iii );
+        }
+        datum.lod = lod[row];
+        datum.prior = prior[row];
+        datum.worstValue = worstValue[row];
+        datum.worstAnnotation = worstAnnotation[row];
+        datum.isKnown = isKnown.get(row);
+        datum.atTruthSite = atTruthSite.get(row);
+        datum.atTrainingSite = atTrainingSite.get(row);
+        datum.atAntiTrainingSite = atAntiTrainingSite.get(row);
+        datum.isTransition = isTransition.get(row);
+        datum.isSNP = isSNP.get(row);
+        datum.failingSTDThreshold = failingSTDThreshold.get(row);
+        datum.isAggregate = isAggregate.get(row);
+        datum.referenceAllele = getReferenceAllele(row);
+        datum.alternateAllele = getAlternateAllele(row);
+        return datum;
+    }
+
+    /**
+     * Copy the given rows out into new data
+     */
+    public List<VariantDatum> toData( final int[] rows ) {
+        final List<VariantDatum> data = new ArrayList<>( rows.length );
+        for( final int row : rows ) {
+            data.add( toDatum(row) );
+        }
+        return data;
+    }
+
+    /////////////////////////////
+    // Annotations
+    /////////////////////////////
+
+    /**
+     * Get the annotation matrix itself, in which the annotations of a row start at getAnnotationOffset(row).
+     *
+     * The array is replaced when the table grows, so it shouldn't be held on to across calls to add.
+     */
+    public double[] getAnnotations() {
+        return annotations;
+    }
+
+    public int getAnnotationOffset( final int row ) {
+        return row * numAnnotations;
+    }
+
+    public double getAnnotation( final int row, final int annotation ) {
+        return annotations[row * numAnnotations + annotation];
+    }
+
+    public void setAnnotation( final int row, final int annotation, final double value ) {
+        annotations[row * numAnnotations + annotation] = value;
+    }
+
+    public boolean isNull( final int row, final int annotation ) {
+        return isNull.get( row * numAnnotations + annotation );
+    }
+
+    /**
+     * @return true if any of the annotations of the row is missing
+     */
+    public boolean hasNull( final int row ) {
+        final int next = isNull.nextSetBit( row * numAnnotations );
+        return next != -1 && next < (row + 1) * numAnnotations;
+    }
+
+    public void setNull( final int row, final int annotation, final boolean value ) {
+        isNull.set( row * numAnnotations + annotation, value );
+    }
+
+    /**
+     * Reorder the annotations of every row, along with their missing flags
+     *
+     * @param order the new order, so that the new annotation iii is the old annotation order.get(iii)
+     */
+    public void permuteAnnotations( final List<Integer> order ) {
+        if( order.size() != numAnnotations ) { throw new IllegalArgumentException("The order must have " + numAnnotations + " entries but found " + order.size()); }
+        final double[] values = new double[numAnnotations];
+        final boolean[] nulls = new boolean[numAnnotations];
+        for( int row = 0; row < size; row++ ) {
+            final int offset = row * numAnnotations;
+            for( int iii = 0; iii < numAnnotations; iii++ ) {
+                values[iii] = annotations[offset + order.get(iii)];
+                nulls[iii] = isNull.get( offset + order.get(iii) );
+            }
+            for( int iii = 0; iii < numAnnotations; iii++ ) {
+                annotations[offset + iii] = values[iii];
+                isNull.set( offset + iii, nulls[iii] );
+            }
+        }
+    }
+
+    /////////////////////////////
+    // Scores
+    /////////////////////////////
+
+    public double getLod( final int row ) { return lod[row]; }
+
+    public void setLod( final int row, final double value ) { lod[row] = value; }
+
+    public double getPrior( final int row ) { return prior[row]; }
+
+    public int getWorstAnnotation( final int row ) { return worstAnnotation[row]; }
+
+    public double getWorstValue( final int row ) { return worstValue[row]; }
+
+    public void setWorstAnnotation( final int row, final int annotation, final double value ) {
+        worstAnnotation[row] = (short) annotation;
+        worstValue[row] = value;
+    }
+
+    /////////////////////////////
+    // Flags
+    /////////////////////////////
+
+    public boolean isKnown( final int row ) { return isKnown.get(row); }
+
+    public boolean atTruthSite( final int row ) { return atTruthSite.get(row); }
+
+    public boolean atTrainingSite( final int row ) { return atTrainingSite.get(row); }
+
+    public boolean atAntiTrainingSite( final int row ) { return atAntiTrainingSite.get(row); }
+
+    public void setAtAntiTrainingSite( final int row, final boolean value ) { atAntiTrainingSite.set(row, value); }
+
+    public boolean isTransition( final int row ) { return isTransition.get(row); }
+
+    public boolean isSNP( final int row ) { return isSNP.get(row); }
+
+    public boolean failingSTDThreshold( final int row ) { return failingSTDThreshold.get(row); }
+
+    public void setFailingSTDThreshold( final int row, final boolean value ) { failingSTDThreshold.set(row, value); }
+
+    public boolean isAggregate( final int row ) { return isAggregate.get(row); }
+
+    /////////////////////////////
+    // Positions and alleles
+    /////////////////////////////
+
+    /**
+     * @return false if the row has no location, as is the case for aggregate data
+     */
+    public boolean hasLocation( final int row ) { return contigIndex[row] != NO_CONTIG; }
+
+    public String getContig( final int row ) { return hasLocation(row) ? contigNames.get(contigIndex[row]) : null; }
+
+    public int getStart( final int row ) { return start[row]; }
+
+    public int getStop( final int row ) { return stop[row]; }
+
+    public Allele getReferenceAllele( final int row ) { return referenceAllele == null ? null : referenceAllele[row]; }
+
+    public Allele getAlternateAllele( final int row ) { return alternateAllele == null ? null : alternateAllele[row]; }
+
+    /////////////////////////////
+    // Sorting
+    /////////////////////////////
+
+    /**
+     * @return a comparator putting rows in increasing order of lod
+     */
+    public RowComparator lodComparator() {
+        return new RowComparator() {
+            @Override
+            public int compare( final int row1, final int row2 ) {
+                return Double.compare( lod[row1], lod[row2] );
+            }
+        };
+    }
+
+    /**
+     * @return a comparator putting rows in coordinate order, as GenomeLoc.compareTo would, with rows without a location last
+     */
+    public RowComparator positionComparator() {
+        return new RowComparator() {
+            @Override
+            public int compare( final int row1, final int row2 ) {
+                final boolean hasLocation1 = hasLocation(row1);
+                if( hasLocation1 != hasLocation(row2) ) {
+                    return hasLocation1 ? -1 : 1;
+                }
+                if( !hasLocation1 ) {
+                    return 0;
+                }
+                int result = Integer.compare( contigIndex[row1], contigIndex[row2] );
+                if( result == 0 ) { result = Integer.compare( start[row1], start[row2] ); }
+                if( result == 0 ) { result = Integer.compare( stop[row1], stop[row2] ); }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Sort an array of row indices in place.
+     *
+     * The sort is stable, so rows that compare equal keep their relative order, as with Collections.sort.
+     */
+    public static void sortRows( final int[] rows, final RowComparator comparator ) {
+        if( rows.length < 2 ) {
+            return;
+        }
+        mergeSort( rows.clone(), rows, 0, rows.length, comparator );
+    }
+
+    // sorts src[from, to) into dest[from, to); both arrays must hold the same values on entry
+    private static void mergeSort( final int[] src, final int[] dest, final int from, final int to, final RowComparator comparator ) {
+        if( to - from < 8 ) {
+            for( int iii = from + 1; iii < to; iii++ ) {
+                final int row = dest[iii];
+                int jjj = iii;
+                while( jjj > from && comparator.compare( dest[jjj - 1], row ) > 0 ) {
+                    dest[jjj] = dest[jjj - 1];
+                    jjj--;
+                }
+                dest[jjj] = row;
+            }
+            return;
+        }
+
+        final int mid = (from + to) >>> 1;
+        mergeSort( dest, src, from, mid, comparator );
+        mergeSort( dest, src, mid, to, comparator );
+        if( comparator.compare( src[mid - 1], src[mid] ) <= 0 ) {
+            System.arraycopy( src, from, dest, from, to - from );
+            return;
+        }
+        for( int iii = from, left = from, right = mid; iii < to; iii++ ) {
+            if( right >= to || (left < mid && comparator.compare( src[left], src[right] ) <= 0) ) {
+                dest[iii] = src[left++];
+            } else {
+                dest[iii] = src[right++];
+            }
+        }
+    }
+
+    /////////////////////////////
+    // Storage
+    /////////////////////////////
+
+    private void ensureCapacity( final int minCapacity ) {
+        if( minCapacity <= capacity ) {
+            return;
+        }
+        final int newCapacity = Math.max( minCapacity, Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1)) );
+        annotations = Arrays.copyOf( annotations, newCapacity * numAnnotations );
+        lod = Arrays.copyOf( lod, newCapacity );
+        prior = Arrays.copyOf( prior, newCapacity );
+        worstValue = Arrays.copyOf( worstValue, newCapacity );
+        worstAnnotation = Arrays.copyOf( worstAnnotation, newCapacity );
+        contigIndex = Arrays.copyOf( contigIndex, newCapacity );
+        start = Arrays.copyOf( start, newCapacity );
+        stop = Arrays.copyOf( stop, newCapacity );
+        if( referenceAllele != null ) {
+            referenceAllele = Arrays.copyOf( referenceAllele, newCapacity );
+            alternateAllele = Arrays.copyOf( alternateAllele, newCapacity );
+        }
+        capacity = newCapacity;
+    }
+
+    private void createAlleleColumns() {
+        if( referenceAllele == null ) {
+            referenceAllele = new Allele[capacity];
+            alternateAllele = new Allele[capacity];
+        }
+    }
+
+    private void setContigName( final int index, final String name ) {
+        while( contigNames.size() <= index ) {
+            contigNames.add( null );
+        }
+        contigNames.set( index, name );
+    }
+
+    private void checkRow( final int row ) {
+        if( row < 0 || row >= size ) { throw new IllegalArgumentException("Row " + row + " is out of bounds for a table of " + size + " rows"); }
+    }
+
+    private static void appendBits( final BitSet to, final BitSet from, final int offset, final int length ) {
+        for( int bit = from.nextSetBit(0); bit >= 0 && bit < length; bit = from.nextSetBit(bit + 1) ) {
+            to.set( offset + bit );
+        }
+    }
+}
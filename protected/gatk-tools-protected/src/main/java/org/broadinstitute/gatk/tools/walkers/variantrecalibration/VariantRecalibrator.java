@@ -184,7 +184,7 @@ import Jama.Matrix;
 
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARDISC, extraDocs = {CommandLineGATK.class} )
 @PartitionBy(PartitionType.NONE)
-public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDatum>, ExpandingArrayList<VariantDatum>> implements TreeReducible<ExpandingArrayList<VariantDatum>> {
+public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDatum>, VariantDataTable> implements TreeReducible<VariantDataTable> {
 
     private static final String PLOT_TRANCHES_RSCRIPT = "plot_Tranches.R";
 
@@ -229,6 +229,13 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     @Output(fullName="tranches_file", shortName="tranchesFile", doc="The output tranches file used by ApplyRecalibration", required=true)
     protected File TRANCHES_FILE;
 
+    /**
+     * A compact binary copy of the recal file, holding only the positions, VQSLODs, culprits and training labels of the
+     * variants. ApplyRecalibration can read it with -recalScores in place of -recalFile, which saves decoding the recal VCF.
+     */
+    @Output(fullName="recal_scores_file", shortName="recalScores", doc="The output binary recal scores file that ApplyRecalibration can use instead of the recal file", required=false, defaultToStdout=false)
+    protected File RECAL_SCORES_FILE = null;
+
     /////////////////////////////
     // Additional Command Line Arguments
     /////////////////////////////
@@ -322,6 +329,10 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     public void initialize() {
         dataManager = new VariantDataManager( new ArrayList<>(USE_ANNOTATIONS), VRAC );
 
+        if( VRAC.MODEL_THREADS < 1 ) {
+            throw new UserException.BadArgumentValue("modelThreads", "the number of model threads must be at least 1 but got " + VRAC.MODEL_THREADS);
+        }
+
         if (RSCRIPT_FILE != null && !RScriptExecutor.RSCRIPT_EXISTS)
             Utils.warnUser(logger, String.format(
                     "Rscript not found in environment path. %s will be generated but PDF plots will not.",
@@ -450,18 +461,20 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     //---------------------------------------------------------------------------------------------------------------
 
     @Override
-    public ExpandingArrayList<VariantDatum> reduceInit() {
-        return new ExpandingArrayList<>();
+    public VariantDataTable reduceInit() {
+        return new VariantDataTable( dataManager.getAnnotationKeys().size() );
     }
 
     @Override
-    public ExpandingArrayList<VariantDatum> reduce( final ExpandingArrayList<VariantDatum> mapValue, final ExpandingArrayList<VariantDatum> reduceSum ) {
-        reduceSum.addAll( mapValue );
+    public VariantDataTable reduce( final ExpandingArrayList<VariantDatum> mapValue, final VariantDataTable reduceSum ) {
+        for( final VariantDatum datum : mapValue ) {
+            reduceSum.add( datum );
+        }
         return reduceSum;
     }
 
     @Override
-    public ExpandingArrayList<VariantDatum> treeReduce( final ExpandingArrayList<VariantDatum> lhs, final ExpandingArrayList<VariantDatum> rhs ) {
+    public VariantDataTable treeReduce( final VariantDataTable lhs, final VariantDataTable rhs ) {
         rhs.addAll( lhs );
         return rhs;
     }
@@ -473,22 +486,23 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     //---------------------------------------------------------------------------------------------------------------
 
     @Override
-    public void onTraversalDone( final ExpandingArrayList<VariantDatum> reduceSum ) {
+    public void onTraversalDone( final VariantDataTable reduceSum ) {
         for (int i = 1; i <= max_attempts; i++) {
             try {
                 dataManager.setData(reduceSum);
                 dataManager.normalizeData(); // Each data point is now (x - mean) / standard deviation
 
                 // Generate the positive model using the training data and evaluate each variant
-                final List<VariantDatum> positiveTrainingData = dataManager.getTrainingData();
-                final GaussianMixtureModel goodModel = engine.generateModel(positiveTrainingData, VRAC.MAX_GAUSSIANS);
-                engine.evaluateData(dataManager.getData(), goodModel, false);
+                final VariantDataTable data = dataManager.getDataTable();
+                final int[] positiveTrainingRows = dataManager.getTrainingRows();
+                final GaussianMixtureModel goodModel = engine.generateModel(data, positiveTrainingRows, VRAC.MAX_GAUSSIANS);
+                engine.evaluateData(data, dataManager.getDataRows(), goodModel, false);
 
                 // Generate the negative model using the worst performing data and evaluate each variant contrastively
-                final List<VariantDatum> negativeTrainingData = dataManager.selectWorstVariants();
-                final GaussianMixtureModel badModel = engine.generateModel(negativeTrainingData, Math.min(VRAC.MAX_GAUSSIANS_FOR_NEGATIVE_MODEL, VRAC.MAX_GAUSSIANS));
-                dataManager.dropAggregateData(); // Don't need the aggregate data anymore so let's free up the memory
-                engine.evaluateData(dataManager.getData(), badModel, true);
+                final int[] negativeTrainingRows = dataManager.selectWorstRows();
+                final GaussianMixtureModel badModel = engine.generateModel(data, negativeTrainingRows, Math.min(VRAC.MAX_GAUSSIANS_FOR_NEGATIVE_MODEL, VRAC.MAX_GAUSSIANS));
+                dataManager.dropAggregateData(); // Don't need the aggregate data anymore so leave it out from here on
+                engine.evaluateData(data, dataManager.getDataRows(), badModel, true);
 
                 if (badModel.failedToConverge || goodModel.failedToConverge) {
                     throw new UserException("NaN LOD value assigned. Clustering with this few variants and these annotations is unsafe. Please consider " + (badModel.failedToConverge ? "raising the number of variants used to train the negative model (via --minNumBadVariants 5000, for example)." : "lowering the maximum number of Gaussians allowed for use in the model (via --maxGaussians 4, for example)."));
@@ -499,19 +513,23 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
                     report.print(modelReport);
                 }
 
-                engine.calculateWorstPerformingAnnotation(dataManager.getData(), goodModel, badModel);
+                engine.calculateWorstPerformingAnnotation(data, dataManager.getDataRows(), goodModel, badModel);
 
                 // Find the VQSLOD cutoff values which correspond to the various tranches of calls requested by the user
-                final int nCallsAtTruth = TrancheManager.countCallsAtTruth(dataManager.getData(), Double.NEGATIVE_INFINITY);
+                final int nCallsAtTruth = TrancheManager.countCallsAtTruth(data, dataManager.getDataRows(), Double.NEGATIVE_INFINITY);
                 final TrancheManager.SelectionMetric metric = new TrancheManager.TruthSensitivityMetric(nCallsAtTruth);
-                final List<Tranche> tranches = TrancheManager.findTranches(dataManager.getData(), TS_TRANCHES, metric, VRAC.MODE);
+                final List<Tranche> tranches = TrancheManager.findTranches(data, dataManager.getDataRows(), TS_TRANCHES, metric, VRAC.MODE);
                 tranchesStream.print(Tranche.tranchesString(tranches));
 
                 logger.info("Writing out recalibration table...");
                 dataManager.writeOutRecalibrationTable(recalWriter);
+                if (RECAL_SCORES_FILE != null) {
+                    logger.info("Writing out recalibration scores...");
+                    dataManager.writeOutRecalibrationScores(RECAL_SCORES_FILE);
+                }
                 if (RSCRIPT_FILE != null) {
                     logger.info("Writing out visualization Rscript file...");
-                    createVisualizationScript(dataManager.getRandomDataForPlotting(1000, positiveTrainingData, negativeTrainingData, dataManager.getEvaluationData()), goodModel, badModel, 0.0, dataManager.getAnnotationKeys().toArray(new String[USE_ANNOTATIONS.size()]));
+                    createVisualizationScript(dataManager.getRandomDataForPlotting(1000, positiveTrainingRows, negativeTrainingRows, dataManager.getEvaluationRows()), goodModel, badModel, 0.0, dataManager.getAnnotationKeys().toArray(new String[USE_ANNOTATIONS.size()]));
                 }
 
                 if (VRAC.MODE == VariantRecalibratorArgumentCollection.Mode.INDEL) {
@@ -144,6 +144,17 @@ public class VariantRecalibratorArgumentCollection {
     @Argument(fullName="priorCounts", shortName="priorCounts", doc="The number of prior counts to use in the variational Bayes algorithm.", required=false)
     public double PRIOR_COUNTS = 20.0;
 
+    /**
+     * Number of threads used to train the Gaussian mixture models (k-means initialization and variational Bayes EM)
+     * and to evaluate the variants against them. A single thread gives the same results as the serial implementation.
+     * With more threads the data are split into fixed-size chunks whose statistics are summed in a fixed order, so for a
+     * given random seed the models and scores may differ slightly from the single threaded ones on large callsets, but
+     * are the same whatever the number of threads above one.
+     */
+    @Advanced
+    @Argument(fullName="modelThreads", shortName="modelThreads", doc="Number of threads used to train and evaluate the Gaussian mixture models", required=false)
+    public int MODEL_THREADS = 1;
+
     /**
      * The number of variants to use in building the Gaussian mixture model. Training sets larger than this will be randomly downsampled.
      */
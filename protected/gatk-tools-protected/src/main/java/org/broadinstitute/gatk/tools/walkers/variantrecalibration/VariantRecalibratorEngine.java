@@ -53,8 +53,10 @@ package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
 
 import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.threading.ChunkedForkJoinExecutor;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by IntelliJ IDEA.
@@ -76,6 +78,9 @@ public class VariantRecalibratorEngine {
 
     private final static double MIN_PROB_CONVERGENCE = 2E-3;
 
+    // created on first use, as the argument collection is only filled in after the engine is constructed
+    private ChunkedForkJoinExecutor executor = null;
+
     /////////////////////////////
     // Public Methods to interface with the Engine
     /////////////////////////////
@@ -86,14 +91,52 @@ public class VariantRecalibratorEngine {
 
     public GaussianMixtureModel generateModel( final List<VariantDatum> data, final int maxGaussians ) {
         if( data == null || data.isEmpty() ) { throw new IllegalArgumentException("No data found."); }
+        final VariantDataTable table = VariantDataTable.fromData( data );
+        return generateModel( table, table.getAllRows(), maxGaussians );
+    }
+
+    /**
+     * Train a model on the given rows of the data
+     *
+     * @param data the data, whose annotations at missing values may be read during training
+     * @param rows the indices of the training rows in data
+     */
+    public GaussianMixtureModel generateModel( final VariantDataTable data, final int[] rows, final int maxGaussians ) {
+        if( data == null || rows == null || rows.length == 0 ) { throw new IllegalArgumentException("No data found."); }
         if( maxGaussians <= 0 ) { throw new IllegalArgumentException("maxGaussians must be a positive integer but found: " + maxGaussians); }
 
-        final GaussianMixtureModel model = new GaussianMixtureModel( maxGaussians, data.get(0).annotations.length, VRAC.SHRINKAGE, VRAC.DIRICHLET_PARAMETER, VRAC.PRIOR_COUNTS );
-        variationalBayesExpectationMaximization( model, data );
+        final GaussianMixtureModel model = new GaussianMixtureModel( maxGaussians, data.getNumAnnotations(), VRAC.SHRINKAGE, VRAC.DIRICHLET_PARAMETER, VRAC.PRIOR_COUNTS, getExecutor() );
+        variationalBayesExpectationMaximization( model, data, rows );
         return model;
     }
 
+    /**
+     * Evaluate a list of data, setting the lod of each datum.
+     *
+     * The data are copied into a table for the evaluation and the results copied back, so this is meant for small lists.
+     */
     public void evaluateData( final List<VariantDatum> data, final GaussianMixtureModel model, final boolean evaluateContrastively ) {
+        final VariantDataTable table = VariantDataTable.fromData( data );
+        evaluateData( table, table.getAllRows(), model, evaluateContrastively );
+        int row = 0;
+        for( final VariantDatum datum : data ) {
+            datum.lod = table.getLod(row);
+            for( int iii = 0; iii < table.getNumAnnotations(); iii++ ) {
+                datum.annotations[iii] = table.getAnnotation(row, iii); // marginalization leaves the last random draw in missing annotations
+            }
+            row++;
+        }
+    }
+
+    /**
+     * Evaluate the given rows of the data, setting their lod
+     *
+     * With a single thread the rows are evaluated in order drawing random numbers straight from the shared generator,
+     * exactly as the original serial evaluation. With more threads the rows are split into chunks of at most
+     * GaussianMixtureModel.DATUM_CHUNK_SIZE, each with its own generator seeded in chunk order, so that the results
+     * only depend on the random seed and not on the number of threads.
+     */
+    public void evaluateData( final VariantDataTable data, final int[] rows, final GaussianMixtureModel model, final boolean evaluateContrastively ) {
         if( !model.isModelReadyForEvaluation ) {
             try {
                 model.precomputeDenominatorForEvaluation();
@@ -103,38 +146,77 @@ public class VariantRecalibratorEngine {
             }
         }
         
-        logger.info("Evaluating full set of " + data.size() + " variants...");
-        for( final VariantDatum datum : data ) {
-            final double thisLod = evaluateDatum( datum, model );
+        logger.info("Evaluating full set of " + rows.length + " variants...");
+        final int chunkCount = GaussianMixtureModel.datumChunkCount(getExecutor(), rows.length);
+        final long[] seeds = new long[chunkCount == 1 ? 0 : chunkCount];
+        for( int iii = 0; iii < seeds.length; iii++ ) {
+            seeds[iii] = Utils.getRandomGenerator().nextLong();
+        }
+        final List<Boolean> converged = getExecutor().map( rows.length, chunkCount, new ChunkedForkJoinExecutor.ChunkFunction<Boolean>() {
+            @Override
+            public Boolean apply( final int chunk, final int from, final int to ) {
+                final Random rand = seeds.length == 0 ? Utils.getRandomGenerator() : new Random(seeds[chunk]);
+                return evaluateData( data, rows, from, to, model, evaluateContrastively, rand );
+            }
+        } );
+        if( converged.contains(false) ) {
+            model.failedToConverge = true;
+        }
+    }
+
+    /**
+     * Evaluate the rows in rows[from, to) with the given model
+     *
+     * @return false if the model gave a NaN for any of the rows, in which case the remaining rows are left alone
+     */
+    private boolean evaluateData( final VariantDataTable data, final int[] rows, final int from, final int to, final GaussianMixtureModel model,
+                                  final boolean evaluateContrastively, final Random rand ) {
+        for( int iii = from; iii < to; iii++ ) {
+            final int row = rows[iii];
+            final double thisLod = evaluateDatum( data, row, model, rand );
             if( Double.isNaN(thisLod) ) {
-                model.failedToConverge = true;
-                return;
+                return false;
             }
 
-            datum.lod = ( evaluateContrastively ?
-                            ( Double.isInfinite(datum.lod) ? // positive model said negative infinity
-                                    ( MIN_ACCEPTABLE_LOD_SCORE + Utils.getRandomGenerator().nextDouble() * MIN_ACCEPTABLE_LOD_SCORE ) // Negative infinity lod values are possible when covariates are extremely far away from their tight Gaussians
-                                    : datum.prior + datum.lod - thisLod) // contrastive evaluation: (prior + positive model - negative model)
-                            : thisLod ); // positive model only so set the lod and return
+            final double lod = data.getLod(row);
+            data.setLod( row, ( evaluateContrastively ?
+                            ( Double.isInfinite(lod) ? // positive model said negative infinity
+                                    ( MIN_ACCEPTABLE_LOD_SCORE + rand.nextDouble() * MIN_ACCEPTABLE_LOD_SCORE ) // Negative infinity lod values are possible when covariates are extremely far away from their tight Gaussians
+                                    : data.getPrior(row) + lod - thisLod) // contrastive evaluation: (prior + positive model - negative model)
+                            : thisLod ) ); // positive model only so set the lod and return
         }
+        return true;
     }
 
-    public void calculateWorstPerformingAnnotation( final List<VariantDatum> data, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
-        for( final VariantDatum datum : data ) {
-            int worstAnnotation = -1;
-            double minProb = Double.MAX_VALUE;
-            double worstValue = -1;
-            for( int iii = 0; iii < datum.annotations.length; iii++ ) {
-                final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
-                final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
-                if( goodProbLog10 != null && badProbLog10 != null ) {
-                    final double prob = goodProbLog10 - badProbLog10;
-                    if(prob < minProb) { minProb = prob; worstAnnotation = iii; worstValue = datum.annotations[iii];}
+    public void calculateWorstPerformingAnnotation( final VariantDataTable data, final int[] rows, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
+        getExecutor().map( rows.length, GaussianMixtureModel.datumChunkCount(getExecutor(), rows.length), new ChunkedForkJoinExecutor.ChunkFunction<Void>() {
+            @Override
+            public Void apply( final int chunk, final int from, final int to ) {
+                for( int kkk = from; kkk < to; kkk++ ) {
+                    final int row = rows[kkk];
+                    int worstAnnotation = -1;
+                    double minProb = Double.MAX_VALUE;
+                    double worstValue = -1;
+                    for( int iii = 0; iii < data.getNumAnnotations(); iii++ ) {
+                        final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(data, row, iii);
+                        final Double badProbLog10 = badModel.evaluateDatumInOneDimension(data, row, iii);
+                        if( goodProbLog10 != null && badProbLog10 != null ) {
+                            final double prob = goodProbLog10 - badProbLog10;
+                            if(prob < minProb) { minProb = prob; worstAnnotation = iii; worstValue = data.getAnnotation(row, iii);}
+                        }
+                    }
+                    data.setWorstAnnotation( row, worstAnnotation, worstValue );
                 }
+                return null;
             }
-            datum.worstAnnotation = worstAnnotation;
-            datum.worstValue = worstValue;
+        } );
+    }
+
+    private ChunkedForkJoinExecutor getExecutor() {
+        if( executor == null ) {
+            executor = VRAC.MODEL_THREADS == 1 ? ChunkedForkJoinExecutor.SERIAL : new ChunkedForkJoinExecutor( VRAC.MODEL_THREADS );
         }
+        return executor;
     }
 
 
@@ -142,21 +224,21 @@ public class VariantRecalibratorEngine {
     // Private Methods used for generating a GaussianMixtureModel
     /////////////////////////////
 
-    private void variationalBayesExpectationMaximization( final GaussianMixtureModel model, final List<VariantDatum> data ) {
+    private void variationalBayesExpectationMaximization( final GaussianMixtureModel model, final VariantDataTable data, final int[] rows ) {
 
-        model.initializeRandomModel( data, VRAC.NUM_KMEANS_ITERATIONS );
+        model.initializeRandomModel( data, rows, VRAC.NUM_KMEANS_ITERATIONS );
 
         // The VBEM loop
         model.normalizePMixtureLog10();
-        model.expectationStep( data );
+        model.expectationStep( data, rows );
         double currentChangeInMixtureCoefficients;
         int iteration = 0;
         logger.info("Finished iteration " + iteration + ".");
         while( iteration < VRAC.MAX_ITERATIONS ) {
             iteration++;
-            model.maximizationStep( data );
+            model.maximizationStep( data, rows );
             currentChangeInMixtureCoefficients = model.normalizePMixtureLog10();
-            model.expectationStep( data );
+            model.expectationStep( data, rows );
             if( iteration % 5 == 0 ) { // cut down on the number of output lines so that users can read the warning messages
                 logger.info("Finished iteration " + iteration + ". \tCurrent change in mixture coefficients = " + String.format("%.5f", currentChangeInMixtureCoefficients));
             }
@@ -166,14 +248,14 @@ public class VariantRecalibratorEngine {
             }
         }
 
-        model.evaluateFinalModelParameters( data );
+        model.evaluateFinalModelParameters( data, rows );
     }
 
     /////////////////////////////
     // Private Methods used for evaluating data given a GaussianMixtureModel
     /////////////////////////////
 
-    private double evaluateDatum( final VariantDatum datum, final GaussianMixtureModel model ) {
-        return model.evaluateDatum( datum );
+    private double evaluateDatum( final VariantDataTable data, final int row, final GaussianMixtureModel model, final Random rand ) {
+        return model.evaluateDatum( data, row, rand );
     }
 }
@@ -0,0 +1,536 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * An on-disk, columnar store of single-sample gVCF records for joint genotyping of large cohorts
+ *
+ * A store is a directory holding a manifest and one sub-directory per sample batch.  Batches are added
+ * incrementally (see ImportGVCFs) and are never modified once committed to the manifest, so growing a cohort only
+ * costs the import of the new samples.  Each batch directory contains the merged VCF header of its inputs and one
+ * file per contig, made of deflated CohortStoreChunks covering fixed-width windows of the contig, followed by an
+ * index of the chunks:
+ *
+ *     int MAGIC
+ *     chunk bytes ...
+ *     int nChunks, then per chunk: int chunkId, int maxEnd, long offset, int length
+ *     long indexOffset
+ *
+ * A query (see CohortStoreIterator) only opens the batches holding the requested samples, and only inflates the
+ * chunks that can overlap the requested interval.  The engine reads a store bound to --variant through
+ * CohortStoreCodec.
+ *
+ * Note that a store is bound to the sequence dictionary it was created with.
+ */
+public final class CohortStore implements Closeable {
+    /** Magic number at the start of every manifest and contig file ("GCOH") */
+    private final static int MAGIC = 0x47434F48;
+    public final static int FILE_VERSION = 1;
+    public final static int DEFAULT_CHUNK_SIZE = 16384;
+
+    private final static String MANIFEST_NAME = "manifest";
+    private final static String BATCH_PREFIX = "batch.";
+    private final static String HEADER_NAME = "header.vcf";
+    private final static String CONTIG_SUFFIX = ".chunks";
+
+    private final File directory;
+    private final SAMSequenceDictionary dictionary;
+    private final int chunkSize;
+    private final List<List<String>> batchSamples = new ArrayList<>();
+    private final Map<String, Integer> sampleIndices = new HashMap<>();
+
+    /** contig files opened by queries, only kept open for a single contig at a time */
+    private final Map<Integer, ContigFile> openContigFiles = new HashMap<>();
+    private int openContigIndex = -1;
+
+    private CohortStore(final File directory, final SAMSequenceDictionary dictionary, final int chunkSize) {
+        this.directory = directory;
+        this.dictionary = dictionary;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Create a new, empty store
+     *
+     * @param directory the directory of the store, must not exist or be empty
+     * @param dictionary the sequence dictionary of the reference the gVCFs were called against
+     * @param chunkSize the width in bp of the genomic window covered by each chunk
+     * @return a non-null store
+     */
+    public static CohortStore create(final File directory, final SAMSequenceDictionary dictionary, final int chunkSize) {
+        if ( directory == null ) throw new IllegalArgumentException("directory cannot be null");
+        if ( dictionary == null ) throw new IllegalArgumentException("dictionary cannot be null");
+        if ( chunkSize < 1 ) throw new IllegalArgumentException("chunkSize must be >= 1 but got " + chunkSize);
+
+        if ( directory.exists() && ( ! directory.isDirectory() || directory.list().length > 0 ) )
+            throw new UserException.CouldNotCreateOutputFile(directory, "a new cohort store must be created in an empty directory");
+        if ( ! directory.exists() && ! directory.mkdirs() )
+            throw new UserException.CouldNotCreateOutputFile(directory, "could not create the cohort store directory");
+
+        final CohortStore store = new CohortStore(directory, dictionary, chunkSize);
+        store.writeManifest();
+        return store;
+    }
+
+    /**
+     * Open an existing store
+     *
+     * @param directory the directory of the store
+     * @return a non-null store
+     */
+    public static CohortStore open(final File directory) {
+        if ( directory == null ) throw new IllegalArgumentException("directory cannot be null");
+
+        final File manifest = new File(directory, MANIFEST_NAME);
+        try ( final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest))) ) {
+            if ( in.readInt() != MAGIC )
+                throw new UserException.MalformedFile(manifest, "not a cohort store manifest");
+            final int version = in.readInt();
+            if ( version != FILE_VERSION )
+                throw new UserException.MalformedFile(manifest, "cohort store version " + version + " isn't supported, expected version " + FILE_VERSION);
+
+            final int chunkSize = in.readInt();
+            final int nContigs = in.readInt();
+            final List<SAMSequenceRecord> contigs = new ArrayList<>(nContigs);
+            for ( int i = 0; i < nContigs; i++ )
+                contigs.add(new SAMSequenceRecord(in.readUTF(), in.readInt()));
+
+            final CohortStore store = new CohortStore(directory, new SAMSequenceDictionary(contigs), chunkSize);
+            final int nBatches = in.readInt();
+            for ( int i = 0; i < nBatches; i++ ) {
+                final int nSamples = in.readInt();
+                final List<String> samples = new ArrayList<>(nSamples);
+                for ( int j = 0; j < nSamples; j++ )
+                    samples.add(in.readUTF());
+                store.addBatch(samples);
+            }
+            return store;
+        } catch ( FileNotFoundException e ) {
+            throw new UserException.CouldNotReadInputFile(manifest, "not a cohort store, or the store was never committed", e);
+        } catch ( EOFException e ) {
+            throw new UserException.MalformedFile(manifest, "truncated cohort store manifest", e);
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(manifest, "Failed to read cohort store manifest", e);
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return true if file is the manifest of a cohort store
+     */
+    public static boolean isManifest(final File file) {
+        if ( ! file.getName().equals(MANIFEST_NAME) || ! file.isFile() )
+            return false;
+        try ( final DataInputStream in = new DataInputStream(new FileInputStream(file)) ) {
+            return in.readInt() == MAGIC;
+        } catch ( IOException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Open the store in directory if it has a manifest, otherwise create a new one
+     *
+     * @see #create(File, SAMSequenceDictionary, int)
+     */
+    public static CohortStore openOrCreate(final File directory, final SAMSequenceDictionary dictionary, final int chunkSize) {
+        if ( new File(directory, MANIFEST_NAME).exists() ) {
+            final CohortStore store = open(directory);
+            store.validateSequenceDictionary(dictionary);
+            return store;
+        }
+        return create(directory, dictionary, chunkSize);
+    }
+
+    /**
+     * Make sure that this store was created against the same reference as dictionary
+     *
+     * @param other the sequence dictionary of the current reference
+     */
+    public void validateSequenceDictionary(final SAMSequenceDictionary other) {
+        boolean compatible = other.size() == dictionary.size();
+        for ( int i = 0; compatible && i < dictionary.size(); i++ ) {
+            final SAMSequenceRecord mine = dictionary.getSequence(i);
+            final SAMSequenceRecord theirs = other.getSequence(i);
+            compatible = mine.getSequenceName().equals(theirs.getSequenceName()) && mine.getSequenceLength() == theirs.getSequenceLength();
+        }
+        if ( ! compatible )
+            throw new UserException.IncompatibleSequenceDictionaries("The cohort store was created against a different reference",
+                    directory.getPath(), dictionary, "reference", other);
+    }
+
+    /**
+     * @return the sequence dictionary this store was created with
+     */
+    public SAMSequenceDictionary getSequenceDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the width in bp of the genomic window covered by each chunk
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the number of committed sample batches
+     */
+    public int getNumBatches() {
+        return batchSamples.size();
+    }
+
+    /**
+     * @param batch the index of a committed batch
+     * @return the samples of batch, in batch order
+     */
+    public List<String> getBatchSamples(final int batch) {
+        return Collections.unmodifiableList(batchSamples.get(batch));
+    }
+
+    /**
+     * @return all of the samples in this store, in the order in which they were imported
+     */
+    public List<String> getSampleNames() {
+        final List<String> samples = new ArrayList<>(sampleIndices.size());
+        for ( final List<String> batch : batchSamples )
+            samples.addAll(batch);
+        return samples;
+    }
+
+    /**
+     * @param sample the name of a sample
+     * @return true if sample was imported into this store
+     */
+    public boolean hasSample(final String sample) {
+        return sampleIndices.containsKey(sample);
+    }
+
+    /**
+     * @param batch the index of a committed batch
+     * @return the merged VCF header of the gVCFs imported in batch
+     */
+    public VCFHeader getBatchHeader(final int batch) {
+        final File headerFile = new File(getBatchDirectory(batch), HEADER_NAME);
+        final VCFCodec codec = new VCFCodec();
+        try ( final InputStream in = new FileInputStream(headerFile) ) {
+            final LineIterator lines = codec.makeSourceFromStream(new PositionalBufferedStream(in));
+            return (VCFHeader)codec.readActualHeader(lines);
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(headerFile, "Failed to read cohort store batch header", e);
+        }
+    }
+
+    /**
+     * Query the records of some samples over an interval
+     *
+     * @param contig the contig to query
+     * @param start the first position of the interval (1-based)
+     * @param stop the last position of the interval
+     * @param samples the samples to return, or null for all samples
+     * @return a non-null iterator over the records of samples overlapping the interval
+     */
+    public CohortStoreIterator query(final String contig, final int start, final int stop, final Collection<String> samples) {
+        if ( contig == null ) throw new IllegalArgumentException("contig cannot be null");
+        if ( start > stop ) throw new IllegalArgumentException("start must be <= stop but got " + start + " > " + stop);
+        if ( samples != null )
+            for ( final String sample : samples )
+                if ( ! hasSample(sample) )
+                    throw new UserException.BadInput("Sample " + sample + " isn't present in the cohort store " + directory);
+
+        final int contigIndex = dictionary.getSequenceIndex(contig);
+        if ( contigIndex < 0 )
+            throw new UserException.BadInput("Contig " + contig + " isn't in the sequence dictionary of the cohort store " + directory);
+        return new CohortStoreIterator(this, contigIndex, start, stop, samples == null ? null : new HashSet<>(samples));
+    }
+
+    /**
+     * Close the files left open by previous queries
+     */
+    @Override
+    public void close() {
+        for ( final ContigFile file : openContigFiles.values() )
+            if ( file != null )
+                file.close();
+        openContigFiles.clear();
+        openContigIndex = -1;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // batch import
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Start importing a new batch of samples
+     *
+     * The batch only becomes visible to readers once the returned writer is closed.
+     *
+     * @param samples the samples of the new batch, none of which can already be in this store
+     * @param header the merged VCF header of the gVCFs of the batch
+     * @return a writer accepting the records of the batch in coordinate order
+     */
+    public CohortStoreBatchWriter startBatch(final List<String> samples, final VCFHeader header) {
+        if ( samples == null || samples.isEmpty() ) throw new IllegalArgumentException("samples cannot be null or empty");
+        if ( header == null ) throw new IllegalArgumentException("header cannot be null");
+        for ( final String sample : samples )
+            if ( hasSample(sample) )
+                throw new UserException.BadInput("Sample " + sample + " is already present in the cohort store " + directory);
+        if ( new HashSet<>(samples).size() != samples.size() )
+            throw new UserException.BadInput("Each sample can only be imported once, but got " + samples);
+
+        // a batch directory left behind by an import that never committed is simply overwritten
+        final File batchDirectory = getBatchDirectory(getNumBatches());
+        if ( batchDirectory.exists() ) {
+            for ( final File stale : batchDirectory.listFiles() )
+                if ( ! stale.delete() )
+                    throw new UserException.CouldNotCreateOutputFile(stale, "could not remove a file left behind by an incomplete import");
+        } else if ( ! batchDirectory.mkdir() ) {
+            throw new UserException.CouldNotCreateOutputFile(batchDirectory, "could not create the cohort store batch directory");
+        }
+
+        final File headerFile = new File(batchDirectory, HEADER_NAME);
+        final VariantContextWriter headerWriter = new VariantContextWriterBuilder().setOutputFile(headerFile)
+                .unsetOption(Options.INDEX_ON_THE_FLY).build();
+        headerWriter.writeHeader(new VCFHeader(header.getMetaDataInInputOrder(), samples));
+        headerWriter.close();
+
+        return new CohortStoreBatchWriter(this, batchDirectory, samples, dictionary);
+    }
+
+    /**
+     * Add the batch written by writer to the manifest, making it visible to readers
+     */
+    void commitBatch(final List<String> samples) {
+        addBatch(samples);
+        writeManifest();
+    }
+
+    private void addBatch(final List<String> samples) {
+        for ( final String sample : samples )
+            sampleIndices.put(sample, sampleIndices.size());
+        batchSamples.add(new ArrayList<>(samples));
+    }
+
+    /**
+     * Rewrite the manifest, going through a temporary file so that readers never see a partial manifest
+     */
+    private void writeManifest() {
+        final File manifest = new File(directory, MANIFEST_NAME);
+        final File tmp = new File(directory, MANIFEST_NAME + ".tmp");
+        try ( final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))) ) {
+            out.writeInt(MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(chunkSize);
+            out.writeInt(dictionary.size());
+            for ( final SAMSequenceRecord contig : dictionary.getSequences() ) {
+                out.writeUTF(contig.getSequenceName());
+                out.writeInt(contig.getSequenceLength());
+            }
+            out.writeInt(batchSamples.size());
+            for ( final List<String> samples : batchSamples ) {
+                out.writeInt(samples.size());
+                for ( final String sample : samples )
+                    out.writeUTF(sample);
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(tmp, "Failed to write cohort store manifest", e);
+        }
+        if ( ! tmp.renameTo(manifest) )
+            throw new UserException.CouldNotCreateOutputFile(manifest, "Failed to replace the cohort store manifest");
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // contig files
+    //
+    // --------------------------------------------------------------------------------
+
+    File getBatchDirectory(final int batch) {
+        return new File(directory, BATCH_PREFIX + batch);
+    }
+
+    static File getContigFile(final File batchDirectory, final int contigIndex) {
+        return new File(batchDirectory, contigIndex + CONTIG_SUFFIX);
+    }
+
+    /**
+     * @return the index of the sample in the import order of this store
+     */
+    int getSampleIndex(final String sample) {
+        return sampleIndices.get(sample);
+    }
+
+    String getContigName(final int contigIndex) {
+        return dictionary.getSequence(contigIndex).getSequenceName();
+    }
+
+    /**
+     * Get the contig file of a batch, reusing the one opened by a previous query when possible
+     *
+     * @return the contig file, or null if the batch has no records on the contig
+     */
+    ContigFile getContigFile(final int batch, final int contigIndex) {
+        if ( contigIndex != openContigIndex ) {
+            close();
+            openContigIndex = contigIndex;
+        }
+        if ( ! openContigFiles.containsKey(batch) ) {
+            final File file = getContigFile(getBatchDirectory(batch), contigIndex);
+            openContigFiles.put(batch, file.exists() ? new ContigFile(file) : null);
+        }
+        return openContigFiles.get(batch);
+    }
+
+    static void writeContigFileHeader(final DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+    }
+
+    /**
+     * Read access to the chunks of one contig of one batch
+     */
+    static final class ContigFile {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final int[] chunkIds, maxEnds, lengths, prefixMaxEnds;
+        private final long[] offsets;
+
+        private ContigFile(final File file) {
+            this.file = file;
+            try {
+                raf = new RandomAccessFile(file, "r");
+                if ( raf.readInt() != MAGIC )
+                    throw new UserException.MalformedFile(file, "not a cohort store contig file");
+                raf.seek(raf.length() - 8);
+                raf.seek(raf.readLong());
+
+                final int nChunks = raf.readInt();
+                chunkIds = new int[nChunks];
+                maxEnds = new int[nChunks];
+                prefixMaxEnds = new int[nChunks];
+                lengths = new int[nChunks];
+                offsets = new long[nChunks];
+                for ( int i = 0; i < nChunks; i++ ) {
+                    chunkIds[i] = raf.readInt();
+                    maxEnds[i] = raf.readInt();
+                    offsets[i] = raf.readLong();
+                    lengths[i] = raf.readInt();
+                    prefixMaxEnds[i] = Math.max(maxEnds[i], i == 0 ? 0 : prefixMaxEnds[i - 1]);
+                }
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotReadInputFile(file, "Failed to read cohort store contig file", e);
+            }
+        }
+
+        /**
+         * @return the number of chunks in this file
+         */
+        int size() {
+            return chunkIds.length;
+        }
+
+        int getChunkId(final int i) {
+            return chunkIds[i];
+        }
+
+        /**
+         * @param position a 1-based position on the contig
+         * @return the index of the first chunk holding records that may end at or after position
+         */
+        int firstChunkReaching(final int position) {
+            // prefixMaxEnds is sorted, so find the first chunk whose records (or earlier ones) reach position
+            int lo = 0, hi = prefixMaxEnds.length;
+            while ( lo < hi ) {
+                final int mid = (lo + hi) >>> 1;
+                if ( prefixMaxEnds[mid] < position )
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        CohortStoreChunk readChunk(final int i) {
+            try {
+                final byte[] bytes = new byte[lengths[i]];
+                raf.seek(offsets[i]);
+                raf.readFully(bytes);
+                return CohortStoreChunk.decode(bytes);
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotReadInputFile(file, "Failed to read cohort store chunk " + chunkIds[i], e);
+            }
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotReadInputFile(file, "Failed to close cohort store contig file", e);
+            }
+        }
+    }
+}
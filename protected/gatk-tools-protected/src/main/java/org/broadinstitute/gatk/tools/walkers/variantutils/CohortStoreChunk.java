@@ -0,0 +1,504 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.vcf.VCFConstants;
+import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * One columnar chunk of a cohort store contig file
+ *
+ * A chunk holds every record of one sample batch whose start falls into a fixed-width window of a contig, sorted
+ * by start and then by sample.  Fields are laid out column by column (all samples, then all starts, ...) so that
+ * the deflated chunk compresses well, and so that a reader can pick out the rows of the samples it needs without
+ * building anything for the others.
+ *
+ * Records come in two flavors:
+ *
+ * - reference blocks, i.e. a hom-ref genotype against <NON_REF> carrying nothing but END, GQ, DP, MIN_DP and PL,
+ *   are stored entirely in the primitive columns
+ * - anything else is a variant record, whose alleles, genotype and remaining annotations are serialized into a
+ *   per-row payload that is only parsed when the row is turned back into a VariantContext
+ *
+ * Converting a row back gives a VariantContext equivalent to the one decoded from the original gVCF, including the
+ * String-typed END and MIN_DP attributes that downstream merging code expects.
+ */
+final class CohortStoreChunk {
+    /** The source name given to all VariantContexts created from a cohort store */
+    public final static String SOURCE_NAME = "cohortStore";
+
+    private final static byte REFERENCE_BLOCK = 0;
+    private final static byte REFERENCE_SITE = 1;
+    private final static byte VARIANT = 2;
+
+    private final static byte STRING_VALUE = 0;
+    private final static byte LIST_VALUE = 1;
+
+    private final static int MISSING = -1;
+
+    private final int[] samples, starts, ends;
+    private final byte[] kinds, refBases, ploidies;
+    private final int[] GQs, DPs, minDPs;
+    private final int[] plOffsets, PLs;
+    private final int[] payloadOffsets;
+    private final byte[] payloads;
+
+    private CohortStoreChunk(final int[] samples, final int[] starts, final int[] ends,
+                             final byte[] kinds, final byte[] refBases, final byte[] ploidies,
+                             final int[] GQs, final int[] DPs, final int[] minDPs,
+                             final int[] plOffsets, final int[] PLs, final int[] payloadOffsets, final byte[] payloads) {
+        this.samples = samples;
+        this.starts = starts;
+        this.ends = ends;
+        this.kinds = kinds;
+        this.refBases = refBases;
+        this.ploidies = ploidies;
+        this.GQs = GQs;
+        this.DPs = DPs;
+        this.minDPs = minDPs;
+        this.plOffsets = plOffsets;
+        this.PLs = PLs;
+        this.payloadOffsets = payloadOffsets;
+        this.payloads = payloads;
+    }
+
+    /**
+     * @return the number of records in this chunk
+     */
+    public int size() {
+        return samples.length;
+    }
+
+    /**
+     * @param row the row of interest
+     * @return the batch-local index of the sample of the record in row
+     */
+    public int getSample(final int row) {
+        return samples[row];
+    }
+
+    /**
+     * @param row the row of interest
+     * @return the 1-based start of the record in row
+     */
+    public int getStart(final int row) {
+        return starts[row];
+    }
+
+    /**
+     * @param row the row of interest
+     * @return the 1-based inclusive end of the record in row
+     */
+    public int getEnd(final int row) {
+        return ends[row];
+    }
+
+    /**
+     * @param row the row of interest
+     * @return true if the record in row is a reference block (or a single reference site), false if it's a variant record
+     */
+    public boolean isReferenceBlock(final int row) {
+        return kinds[row] != VARIANT;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // decoding
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Turn the record in row back into a single-sample VariantContext
+     *
+     * @param row the row to convert
+     * @param contig the contig of this chunk
+     * @param sampleName the name of the sample of this row
+     * @return a non-null VariantContext
+     */
+    public VariantContext toVariantContext(final int row, final String contig, final String sampleName) {
+        final int[] rowPLs = plOffsets[row] == plOffsets[row + 1] ? null : Arrays.copyOfRange(PLs, plOffsets[row], plOffsets[row + 1]);
+
+        if ( kinds[row] != VARIANT ) {
+            final Allele ref = Allele.create(refBases[row], true);
+            final GenotypeBuilder gb = new GenotypeBuilder(sampleName, Collections.nCopies(ploidies[row], ref));
+            addPrimitiveGenotypeFields(gb, row, rowPLs);
+            if ( minDPs[row] != MISSING )
+                gb.attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, String.valueOf(minDPs[row]));
+
+            final VariantContextBuilder vcb = new VariantContextBuilder(SOURCE_NAME, contig, starts[row], ends[row],
+                    Arrays.asList(ref, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE)).genotypes(gb.make());
+            if ( kinds[row] == REFERENCE_BLOCK )
+                vcb.attribute(VCFConstants.END_KEY, String.valueOf(ends[row]));
+            return vcb.make();
+        }
+
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payloads, payloadOffsets[row], payloads.length - payloadOffsets[row]));
+            final String id = readString(in);
+            final double log10PError = in.readDouble();
+            final int nFilters = in.readInt();
+            final Set<String> filters = nFilters == MISSING ? null : new LinkedHashSet<String>(nFilters);
+            for ( int i = 0; i < nFilters; i++ )
+                filters.add(readString(in));
+
+            final List<Allele> alleles = new ArrayList<>();
+            final int nAlleles = in.readInt();
+            for ( int i = 0; i < nAlleles; i++ )
+                alleles.add(Allele.create(readString(in), i == 0));
+
+            final List<Allele> gtAlleles = new ArrayList<>(ploidies[row]);
+            for ( int i = 0; i < ploidies[row]; i++ ) {
+                final int alleleIndex = in.readInt();
+                gtAlleles.add(alleleIndex == MISSING ? Allele.NO_CALL : alleles.get(alleleIndex));
+            }
+            final GenotypeBuilder gb = new GenotypeBuilder(sampleName, gtAlleles).phased(in.readBoolean());
+            addPrimitiveGenotypeFields(gb, row, rowPLs);
+            final int nAD = in.readInt();
+            if ( nAD != MISSING ) {
+                final int[] AD = new int[nAD];
+                for ( int i = 0; i < nAD; i++ )
+                    AD[i] = in.readInt();
+                gb.AD(AD);
+            }
+            gb.filter(readString(in));
+            gb.attributes(readAttributes(in));
+
+            final VariantContextBuilder vcb = new VariantContextBuilder(SOURCE_NAME, contig, starts[row], ends[row], alleles)
+                    .log10PError(log10PError).attributes(readAttributes(in)).genotypes(gb.make());
+            if ( id != null )
+                vcb.id(id);
+            if ( filters == null )
+                vcb.unfiltered();
+            else
+                vcb.filters(filters);
+            return vcb.make();
+        } catch ( IOException e ) {
+            throw new IllegalStateException("Corrupt variant payload in cohort store chunk at row " + row, e);
+        }
+    }
+
+    private void addPrimitiveGenotypeFields(final GenotypeBuilder gb, final int row, final int[] rowPLs) {
+        if ( GQs[row] != MISSING ) gb.GQ(GQs[row]);
+        if ( DPs[row] != MISSING ) gb.DP(DPs[row]);
+        if ( rowPLs != null ) gb.PL(rowPLs);
+    }
+
+    /**
+     * Inflate and decode a chunk written by encode()
+     *
+     * @param compressed the compressed bytes of the chunk
+     * @return a non-null chunk
+     * @throws IOException if the bytes can't be decoded
+     */
+    public static CohortStoreChunk decode(final byte[] compressed) throws IOException {
+        try ( final DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) ) {
+            final int nRows = in.readInt();
+            final int[] samples = readInts(in, nRows);
+            final int[] starts = readInts(in, nRows);
+            final int[] ends = readInts(in, nRows);
+            final byte[] kinds = readBytes(in, nRows);
+            final byte[] refBases = readBytes(in, nRows);
+            final byte[] ploidies = readBytes(in, nRows);
+            final int[] GQs = readInts(in, nRows);
+            final int[] DPs = readInts(in, nRows);
+            final int[] minDPs = readInts(in, nRows);
+
+            final int[] plOffsets = new int[nRows + 1];
+            for ( int i = 0; i < nRows; i++ )
+                plOffsets[i + 1] = plOffsets[i] + in.readInt();
+            final int[] PLs = readInts(in, plOffsets[nRows]);
+
+            final int[] payloadOffsets = new int[nRows];
+            int payloadSize = 0;
+            for ( int i = 0; i < nRows; i++ ) {
+                if ( kinds[i] == VARIANT ) {
+                    payloadOffsets[i] = payloadSize;
+                    payloadSize += in.readInt();
+                } else {
+                    payloadOffsets[i] = MISSING;
+                }
+            }
+            final byte[] payloads = readBytes(in, payloadSize);
+
+            return new CohortStoreChunk(samples, starts, ends, kinds, refBases, ploidies, GQs, DPs, minDPs, plOffsets, PLs, payloadOffsets, payloads);
+        }
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // encoding
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Encode single-sample records into a compressed chunk
+     *
+     * @param vcs the records, sorted by start and then by sample index
+     * @param sampleIndices the batch-local sample index of each record in vcs
+     * @return the compressed bytes of the chunk
+     * @throws IOException if the chunk can't be encoded
+     */
+    public static byte[] encode(final List<VariantContext> vcs, final int[] sampleIndices) throws IOException {
+        if ( vcs == null ) throw new IllegalArgumentException("vcs cannot be null");
+        if ( sampleIndices == null || sampleIndices.length != vcs.size() )
+            throw new IllegalArgumentException("There must be one sample index for each record");
+
+        final int nRows = vcs.size();
+        final int[] starts = new int[nRows], ends = new int[nRows];
+        final byte[] kinds = new byte[nRows], refBases = new byte[nRows], ploidies = new byte[nRows];
+        final int[] GQs = new int[nRows], DPs = new int[nRows], minDPs = new int[nRows];
+        final List<int[]> rowPLs = new ArrayList<>(nRows);
+        final List<Integer> payloadLengths = new ArrayList<>();
+        final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        final DataOutputStream payloadOut = new DataOutputStream(payloadBytes);
+
+        for ( int i = 0; i < nRows; i++ ) {
+            final VariantContext vc = vcs.get(i);
+            final Genotype g = vc.getGenotype(0);
+            starts[i] = vc.getStart();
+            ends[i] = vc.getEnd();
+            ploidies[i] = (byte)g.getPloidy();
+            GQs[i] = g.hasGQ() ? g.getGQ() : MISSING;
+            DPs[i] = g.hasDP() ? g.getDP() : MISSING;
+            minDPs[i] = MISSING;
+            rowPLs.add(g.hasPL() ? g.getPL() : new int[0]);
+
+            final int minDP = getReferenceBlockMinDP(vc);
+            if ( minDP != Integer.MIN_VALUE ) {
+                kinds[i] = vc.hasAttribute(VCFConstants.END_KEY) ? REFERENCE_BLOCK : REFERENCE_SITE;
+                refBases[i] = vc.getReference().getBases()[0];
+                minDPs[i] = minDP;
+            } else {
+                kinds[i] = VARIANT;
+                final int payloadStart = payloadOut.size();
+                writeVariantPayload(payloadOut, vc, g);
+                payloadLengths.add(payloadOut.size() - payloadStart);
+            }
+        }
+        payloadOut.flush();
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try ( final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(compressed))) ) {
+            out.writeInt(nRows);
+            writeInts(out, sampleIndices);
+            writeInts(out, starts);
+            writeInts(out, ends);
+            out.write(kinds);
+            out.write(refBases);
+            out.write(ploidies);
+            writeInts(out, GQs);
+            writeInts(out, DPs);
+            writeInts(out, minDPs);
+            for ( final int[] PLs : rowPLs )
+                out.writeInt(PLs.length);
+            for ( final int[] PLs : rowPLs )
+                writeInts(out, PLs);
+            for ( final int length : payloadLengths )
+                out.writeInt(length);
+            payloadBytes.writeTo(out);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Can vc be stored entirely in the primitive columns?
+     *
+     * @param vc a single-sample record
+     * @return the MIN_DP of vc (or MISSING if it has none) if vc is a plain reference block or reference site,
+     *         Integer.MIN_VALUE if it must be stored as a variant record
+     */
+    private static int getReferenceBlockMinDP(final VariantContext vc) {
+        if ( vc.getNAlleles() != 2 || vc.getReference().length() != 1 || ! vc.getAlternateAllele(0).equals(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE) )
+            return Integer.MIN_VALUE;
+        if ( vc.hasID() || vc.hasLog10PError() || vc.filtersWereApplied() )
+            return Integer.MIN_VALUE;
+        for ( final String key : vc.getAttributes().keySet() )
+            if ( ! key.equals(VCFConstants.END_KEY) )
+                return Integer.MIN_VALUE;
+
+        final Genotype g = vc.getGenotype(0);
+        if ( ! g.isHomRef() || g.isPhased() || g.hasAD() || g.isFiltered() )
+            return Integer.MIN_VALUE;
+        int minDP = MISSING;
+        for ( final Map.Entry<String, Object> attribute : g.getExtendedAttributes().entrySet() ) {
+            if ( ! attribute.getKey().equals(GATKVCFConstants.MIN_DP_FORMAT_KEY) )
+                return Integer.MIN_VALUE;
+            try {
+                minDP = Integer.parseInt(String.valueOf(attribute.getValue()));
+            } catch ( NumberFormatException e ) {
+                return Integer.MIN_VALUE;
+            }
+            if ( minDP < 0 )
+                return Integer.MIN_VALUE;
+        }
+        return minDP;
+    }
+
+    private static void writeVariantPayload(final DataOutputStream out, final VariantContext vc, final Genotype g) throws IOException {
+        writeString(out, vc.hasID() ? vc.getID() : null);
+        out.writeDouble(vc.getLog10PError());
+        if ( vc.filtersWereApplied() ) {
+            out.writeInt(vc.getFilters().size());
+            for ( final String filter : vc.getFilters() )
+                writeString(out, filter);
+        } else {
+            out.writeInt(MISSING);
+        }
+
+        final List<Allele> alleles = vc.getAlleles();
+        out.writeInt(alleles.size());
+        for ( final Allele allele : alleles )
+            writeString(out, allele.getDisplayString());
+
+        for ( final Allele allele : g.getAlleles() )
+            out.writeInt(allele.isNoCall() ? MISSING : vc.getAlleleIndex(allele));
+        out.writeBoolean(g.isPhased());
+        if ( g.hasAD() ) {
+            out.writeInt(g.getAD().length);
+            writeInts(out, g.getAD());
+        } else {
+            out.writeInt(MISSING);
+        }
+        writeString(out, g.getFilters());
+        writeAttributes(out, g.getExtendedAttributes());
+        writeAttributes(out, vc.getAttributes());
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // primitive helpers
+    //
+    // --------------------------------------------------------------------------------
+
+    private static void writeInts(final DataOutputStream out, final int[] values) throws IOException {
+        for ( final int value : values )
+            out.writeInt(value);
+    }
+
+    private static int[] readInts(final DataInputStream in, final int n) throws IOException {
+        final int[] values = new int[n];
+        for ( int i = 0; i < n; i++ )
+            values[i] = in.readInt();
+        return values;
+    }
+
+    private static byte[] readBytes(final DataInputStream in, final int n) throws IOException {
+        final byte[] values = new byte[n];
+        in.readFully(values);
+        return values;
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        if ( s == null ) {
+            out.writeInt(MISSING);
+        } else {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if ( length == MISSING )
+            return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write attributes as they come out of the VCF codec: every value is either a String or a List of Strings
+     */
+    private static void writeAttributes(final DataOutputStream out, final Map<String, Object> attributes) throws IOException {
+        out.writeInt(attributes.size());
+        for ( final Map.Entry<String, Object> attribute : attributes.entrySet() ) {
+            writeString(out, attribute.getKey());
+            final Object value = attribute.getValue();
+            if ( value instanceof List ) {
+                final List<?> values = (List<?>)value;
+                out.writeByte(LIST_VALUE);
+                out.writeInt(values.size());
+                for ( final Object o : values )
+                    writeString(out, String.valueOf(o));
+            } else {
+                out.writeByte(STRING_VALUE);
+                writeString(out, String.valueOf(value));
+            }
+        }
+    }
+
+    private static Map<String, Object> readAttributes(final DataInputStream in) throws IOException {
+        final int nAttributes = in.readInt();
+        final Map<String, Object> attributes = new LinkedHashMap<>(nAttributes);
+        for ( int i = 0; i < nAttributes; i++ ) {
+            final String key = readString(in);
+            if ( in.readByte() == LIST_VALUE ) {
+                final int nValues = in.readInt();
+                final List<String> values = new ArrayList<>(nValues);
+                for ( int j = 0; j < nValues; j++ )
+                    values.add(readString(in));
+                attributes.put(key, values);
+            } else {
+                attributes.put(key, readString(in));
+            }
+        }
+        return attributes;
+    }
+}
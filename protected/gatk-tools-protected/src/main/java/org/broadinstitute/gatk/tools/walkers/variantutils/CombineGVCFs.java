@@ -51,6 +51,10 @@
 
 package org.broadinstitute.gatk.tools.walkers.variantutils;
 
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import org.apache.commons.io.FileUtils;
 import org.broadinstitute.gatk.engine.arguments.DbsnpArgumentCollection;
 import org.broadinstitute.gatk.tools.walkers.annotator.VariantAnnotatorEngine;
 import org.broadinstitute.gatk.tools.walkers.annotator.interfaces.AnnotatorCompatible;
@@ -60,21 +64,30 @@ import org.broadinstitute.gatk.engine.CommandLineGATK;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.engine.walkers.NanoSchedulable;
 import org.broadinstitute.gatk.engine.walkers.Reference;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.Window;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.broadinstitute.gatk.utils.io.IOUtils;
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
+import org.broadinstitute.gatk.utils.threading.ChunkedForkJoinExecutor;
 import org.broadinstitute.gatk.engine.SampleUtils;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
 import org.broadinstitute.gatk.engine.GATKVCFUtils;
-import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
 import htsjdk.variant.variantcontext.*;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -106,6 +119,17 @@ import java.util.*;
  *   -o cohort.g.vcf
  * </pre>
  *
+ * <p>For hundreds of gVCFs, combine them in groups of 50 with 8 threads, then combine the intermediate results:</p>
+ * <pre>
+ * java -jar GenomeAnalysisTK.jar \
+ *   -T CombineGVCFs \
+ *   -R reference.fasta \
+ *   --variant gvcfs.list \
+ *   --mergeGroupSize 50 \
+ *   -nct 8 \
+ *   -o cohort.g.vcf
+ * </pre>
+ *
  * <h3>Caveat</h3>
  * <p>Only gVCF files produced by HaplotypeCaller (or CombineGVCFs) can be used as input for this tool. Some other
  * programs produce files that they call gVCFs but those lack some important information (accurate genotype likelihoods
@@ -114,7 +138,7 @@ import java.util.*;
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARMANIP, extraDocs = {CommandLineGATK.class} )
 @Reference(window=@Window(start=0,stop=1))
-public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, CombineGVCFs.OverallState> implements AnnotatorCompatible {
+public class CombineGVCFs extends RodWalker<GVCFBlockCombiner.PositionalState, GVCFBlockCombiner> implements AnnotatorCompatible, NanoSchedulable {
 
     /**
      * Which annotations to recompute for the combined output VCF file.
@@ -147,30 +171,6 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
     // the annotation engine
     private VariantAnnotatorEngine annotationEngine;
 
-    protected final class PositionalState {
-        final List<VariantContext> VCs;
-        final Set<String> samples = new HashSet<>();
-        final byte[] refBases;
-        final GenomeLoc loc;
-        public PositionalState(final List<VariantContext> VCs, final byte[] refBases, final GenomeLoc loc) {
-            this.VCs = VCs;
-            for(final VariantContext vc : VCs){
-                samples.addAll(vc.getSampleNames());
-            }
-            this.refBases = refBases;
-            this.loc = loc;
-        }
-    }
-
-    protected final class OverallState {
-        final LinkedList<VariantContext> VCs = new LinkedList<>();
-        final Set<String> samples = new HashSet<>();
-        GenomeLoc prevPos = null;
-        byte refAfterPrevPos;
-
-        public OverallState() {}
-    }
-
     /**
      * The gVCF files to merge together
      */
@@ -194,12 +194,51 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
     @Argument(fullName="breakBandsAtMultiplesOf", shortName="breakBandsAtMultiplesOf", doc = "If > 0, reference bands will be broken up at genomic positions that are multiples of this number", required=false)
     protected int multipleAtWhichToBreakBands = 0;
 
+    /**
+     * Instead of having the engine visit every position covered by an input, only visit the positions where a record
+     * starts, and break the reference blocks at the positions in between without asking the engine for them.  The
+     * output is the same.
+     */
+    @Advanced
+    @Argument(fullName="streamingMerge", shortName="streamingMerge", doc="Only visit the positions where an input record starts instead of every covered position", required=false)
+    protected boolean streamingMerge = false;
+
+    /**
+     * Merge the inputs hierarchically: consecutive groups of at most this many inputs are combined into intermediate
+     * gVCFs, which are then combined in turn until few enough are left to produce the output.  The groups of each level
+     * are combined in parallel with the threads given by -nct (the engine can't run this tool with -nt, as its records
+     * have to be combined in order).  As the intermediate gVCFs aren't inputs of the engine, this replaces the traversal
+     * of the engine by a k-way merge of the indexed files of each group.  Implies --streamingMerge.
+     *
+     * The output is the one of a single pass.  The intermediate gVCFs keep every value of the annotations that are
+     * combined by taking their median over the samples (such as the non allele-specific rank sum tests) so that the
+     * output gets the overall median.  As the blocks crossing the end of an -L interval would be cut differently in each
+     * group, the intervals must cover whole contigs.  The run fails at the first called spanning deletion (*) of an input,
+     * such as the outputs of CombineGVCFs have, as the intermediate gVCFs can't tell where a single pass would put *;
+     * combine these inputs in a single pass instead.
+     */
+    @Advanced
+    @Argument(fullName="mergeGroupSize", shortName="mergeGroupSize", doc="If > 1, combine the inputs hierarchically in groups of at most this many files", required=false)
+    protected int mergeGroupSize = 0;
+
     private GenomeLocParser genomeLocParser;
+    private Set<VCFHeaderLine> headerLines;
+
+    // with --streamingMerge, the intervals being traversed and where the last visited position left the combiner
+    private GenomeLocSortedSet intervals;
+    private String lastContig = null;
+    private int lastPosition = 0;
+    private int coveredUpTo = 0;
 
     public void initialize() {
+        if ( mergeGroupSize == 1 || mergeGroupSize < 0 )
+            throw new UserException.BadArgumentValue("mergeGroupSize", "must be 0 or > 1 but got " + mergeGroupSize);
+        genomeLocParser = getToolkit().getGenomeLocParser();
+        intervals = getToolkit().getRegionsOfGenomeBeingProcessed();
+
         // take care of the VCF headers
         final Map<String, VCFHeader> vcfRods = GATKVCFUtils.getVCFHeadersFromRods(getToolkit());
-        final Set<VCFHeaderLine> headerLines = VCFUtils.smartMergeHeaders(vcfRods.values(), true);
+        headerLines = VCFUtils.smartMergeHeaders(vcfRods.values(), true);
         headerLines.add(VCFStandardHeaderLines.getInfoLine(VCFConstants.DEPTH_KEY));   // needed for gVCFs without DP tags
 
         final Set<String> samples = SampleUtils.getSampleList(vcfRods, GATKVariantContextUtils.GenotypeMergeType.REQUIRE_UNIQUE);
@@ -210,227 +249,230 @@ public class CombineGVCFs extends RodWalker<CombineGVCFs.PositionalState, Combin
         for ( final RodBindingCollection<VariantContext> variantCollection : variantCollections )
             variants.addAll(variantCollection.getRodBindings());
 
-        genomeLocParser = getToolkit().getGenomeLocParser();
+        if ( mergeGroupSize > 1 ) {
+            streamingMerge = true;
+            if ( isHierarchicalMerge() )
+                for ( final GenomeLoc interval : intervals )
+                    if ( ! interval.equals(genomeLocParser.createOverEntireContig(interval.getContig())) )
+                        throw new UserException.BadArgumentValue("mergeGroupSize", "a hierarchical merge needs intervals covering whole contigs, but " + interval + " doesn't");
+        }
 
         // create the annotation engine
-        annotationEngine = new VariantAnnotatorEngine(Arrays.asList(annotationGroupsToUse), annotationsToUse, Collections.<String>emptyList(), this, getToolkit());
-
-        //now that we have all the VCF headers, initialize the annotations (this is particularly important to turn off RankSumTest dithering in integration tests)
-        annotationEngine.invokeAnnotationInitializationMethods(headerLines);
+        annotationEngine = createAnnotationEngine();
 
         // optimization to prevent mods when we always just want to break bands
         if ( multipleAtWhichToBreakBands == 1 )
             USE_BP_RESOLUTION = true;
     }
 
-    public PositionalState map(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
-        if ( tracker == null ) // RodWalkers can make funky map calls
-            return null;
+    private VariantAnnotatorEngine createAnnotationEngine() {
+        final VariantAnnotatorEngine engine = new VariantAnnotatorEngine(Arrays.asList(annotationGroupsToUse), annotationsToUse, Collections.<String>emptyList(), this, getToolkit());
 
-        final GenomeLoc loc = ref.getLocus();
-        return new PositionalState(tracker.getValues(variants, loc), ref.getBases(), loc);
+        //now that we have all the VCF headers, initialize the annotations (this is particularly important to turn off RankSumTest dithering in integration tests)
+        engine.invokeAnnotationInitializationMethods(headerLines);
+        return engine;
+    }
+
+    /**
+     * @return true if there are more inputs than --mergeGroupSize, so that they have to be combined in groups first
+     */
+    private boolean isHierarchicalMerge() {
+        return mergeGroupSize > 1 && variants.size() > mergeGroupSize;
     }
 
-    public OverallState reduceInit() {
-        return new OverallState();
+    /**
+     * A hierarchical merge reads the files of the inputs in onTraversalDone(), so there's no need for a traversal
+     */
+    @Override
+    public boolean isDone() {
+        return isHierarchicalMerge();
     }
 
-    public OverallState reduce(final PositionalState startingStates, final OverallState previousState) {
-        if ( startingStates == null )
-            return previousState;
+    /**
+     * Records only get combined where they start, elsewhere the combiner only has to break its active records, at
+     * positions that it can tell itself (see reduce()).  So with --streamingMerge only the starts of the input records
+     * are visited.
+     */
+    @Override
+    public SiteFilter getSiteFilter() {
+        if ( ! streamingMerge )
+            return null;
 
-        if ( !startingStates.VCs.isEmpty() ) {
-            if ( ! okayToSkipThisSite(startingStates, previousState) )
-                endPreviousStates(previousState, startingStates.loc.incPos(-1), startingStates, false);
-            previousState.VCs.addAll(startingStates.VCs);
-            for(final VariantContext vc : previousState.VCs){
-                previousState.samples.addAll(vc.getSampleNames());
+        final Set<String> variantNames = new HashSet<>(variants.size());
+        for ( final RodBinding<VariantContext> variant : variants )
+            variantNames.add(variant.getName());
+        return new SiteFilter() {
+            @Override
+            public boolean startsSite(final GATKFeature record) {
+                return variantNames.contains(record.getName());
             }
+        };
+    }
+
+    public GVCFBlockCombiner.PositionalState map(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
+        if ( tracker == null ) // RodWalkers can make funky map calls
+            return null;
 
+        final GenomeLoc loc = ref.getLocus();
+        return new GVCFBlockCombiner.PositionalState(tracker.getValues(variants, loc), ref.getBases(), loc);
+    }
+
+    public GVCFBlockCombiner reduceInit() {
+        return new GVCFBlockCombiner(vcfWriter, genomeLocParser, annotationEngine, USE_BP_RESOLUTION, multipleAtWhichToBreakBands);
+    }
+
+    public GVCFBlockCombiner reduce(final GVCFBlockCombiner.PositionalState startingStates, final GVCFBlockCombiner combiner) {
+        if ( ! streamingMerge || startingStates == null ) {
+            combiner.add(startingStates);
+            return combiner;
         }
 
-        if ( breakBand(startingStates.loc) || containsEndingContext(previousState.VCs, startingStates.loc.getStart()) ) {
-            endPreviousStates(previousState, startingStates.loc, startingStates, true);
+        final GenomeLoc loc = startingStates.loc;
+        if ( loc.getContig().equals(lastContig) ) {
+            breakActiveRecords(combiner, loc.getStart() - 1);
+        } else {
+            breakActiveRecords(combiner, Integer.MAX_VALUE);
+            lastContig = loc.getContig();
+            coveredUpTo = 0;
         }
 
-        return previousState;
+        combiner.add(startingStates);
+        lastPosition = loc.getStart();
+        for ( final VariantContext vc : startingStates.VCs )
+            coveredUpTo = Math.max(coveredUpTo, vc.getEnd());
+        return combiner;
     }
 
     /**
-     * Should we break bands at the given position?
-     *
-     * @param loc  the genomic location to evaluate against
+     * Feed the combiner with the positions after the last visited one where its active records have to be broken,
+     * as the engine would have visited them without --streamingMerge
      *
-     * @return true if we should ensure that bands should be broken at the given position, false otherwise
+     * @param combiner  the combiner
+     * @param stop      the last position of the contig of the last visited position to consider
      */
-    private boolean breakBand(final GenomeLoc loc) {
-        return USE_BP_RESOLUTION ||
-                (loc != null && multipleAtWhichToBreakBands > 0 && (loc.getStart()+1) % multipleAtWhichToBreakBands == 0);  // add +1 to the loc because we want to break BEFORE this base
+    private void breakActiveRecords(final GVCFBlockCombiner combiner, final int stop) {
+        if ( lastContig == null )
+            return;
+
+        // a locus traversal only visits the positions of the intervals that are covered by some record
+        final int lastCovered = Math.min(stop, coveredUpTo);
+        for ( int position = combiner.nextBreakPosition(lastPosition + 1); position <= lastCovered; position = combiner.nextBreakPosition(position + 1) ) {
+            final GenomeLoc loc = genomeLocParser.createGenomeLoc(lastContig, position);
+            if ( intervals.overlaps(loc) )
+                combiner.add(new GVCFBlockCombiner.PositionalState(Collections.<VariantContext>emptyList(),
+                        StreamingGVCFMerger.getReferenceBases(getToolkit().getReferenceDataSource().getReference(), lastContig, position), loc));
+        }
     }
 
-    /**
-     * Is it okay to skip the given position?
-     *
-     * @param startingStates  state information for this position
-     * @param previousState   state information for the last position for which we created a VariantContext
-     * @return true if it is okay to skip this position, false otherwise
-     */
-    private boolean okayToSkipThisSite(final PositionalState startingStates, final OverallState previousState) {
-        final int thisPos = startingStates.loc.getStart();
-        final GenomeLoc lastPosRun = previousState.prevPos;
-        Set<String> intersection = new HashSet<String>(startingStates.samples);
-        intersection.retainAll(previousState.samples);
-
-        //if there's a starting VC with a sample that's already in a current VC, don't skip this position
-        return lastPosRun != null && thisPos == lastPosRun.getStart() + 1 && intersection.isEmpty();
+    @Override
+    public void onTraversalDone(GVCFBlockCombiner combiner) {
+        if ( isHierarchicalMerge() )
+            combiner = mergeHierarchically();
+        else if ( streamingMerge )
+            breakActiveRecords(combiner, Integer.MAX_VALUE);
+
+        // there shouldn't be any state left unless the user cut in the middle of a gVCF block
+        if ( combiner.hasActiveRecords() )
+            logger.warn("You have asked for an interval that cuts in the middle of one or more gVCF blocks. Please note that this will cause you to lose records that don't end within your interval.");
     }
 
     /**
-     * Does the given list of VariantContexts contain any whose context ends at the given position?
+     * Combine the inputs in groups with StreamingGVCFMerger, and then the intermediate gVCFs in turn
      *
-     * @param VCs  list of VariantContexts
-     * @param pos  the position to check against
-     * @return true if there are one or more VCs that end at pos, false otherwise
+     * @return the combiner that produced the output
      */
-    private boolean containsEndingContext(final List<VariantContext> VCs, final int pos) {
-        if ( VCs == null ) throw new IllegalArgumentException("The list of VariantContexts cannot be null");
+    private GVCFBlockCombiner mergeHierarchically() {
+        List<File> inputs = StreamingGVCFMerger.getInputFiles(getToolkit(), variants);
+
+        final File tempDir = IOUtils.tempDir("CombineGVCFs.", "");
+        try {
+            for ( int level = 1; inputs.size() > mergeGroupSize; level++ ) {
+                final List<List<File>> groups = Utils.groupList(inputs, mergeGroupSize);
+                logger.info(String.format("Combining %d gVCFs into %d intermediate gVCFs with %d threads", inputs.size(), groups.size(), getMergeThreads()));
+                inputs = combineGroups(groups, new File(tempDir, "level" + level),
+                        level == 1 ? ReferenceConfidenceVariantContextMerger.HierarchicalLevel.FIRST : ReferenceConfidenceVariantContextMerger.HierarchicalLevel.INTERMEDIATE);
+            }
 
-        for ( final VariantContext vc : VCs ) {
-            if ( isEndingContext(vc, pos) )
-                return true;
+            final GVCFBlockCombiner combiner = new GVCFBlockCombiner(vcfWriter, genomeLocParser, annotationEngine, USE_BP_RESOLUTION, multipleAtWhichToBreakBands,
+                    ReferenceConfidenceVariantContextMerger.HierarchicalLevel.LAST);
+            final StreamingGVCFMerger merger = new StreamingGVCFMerger(inputs);
+            try {
+                for ( final GenomeLoc interval : intervals )
+                    merger.merge(interval, combiner, getToolkit().getReferenceDataSource().getReference(), genomeLocParser);
+            } finally {
+                merger.close();
+            }
+            return combiner;
+        } finally {
+            FileUtils.deleteQuietly(tempDir);
         }
-        return false;
     }
 
     /**
-     * Does the given variant context end (in terms of reference blocks, not necessarily formally) at the given position.
-     * Note that for the purposes of this method/tool, deletions are considered to be single base events (as opposed to
-     * reference blocks), hence the check for the number of alleles (because we know there will always be a <NON_REF> allele).
-     *
-     * @param vc   the variant context
-     * @param pos  the position to query against
-     * @return true if this variant context "ends" at this position, false otherwise
+     * @return the number of groups combined at the same time, the -nct of the engine
      */
-    private boolean isEndingContext(final VariantContext vc, final int pos) {
-        return vc.getNAlleles() > 2 || vc.getEnd() == pos;
+    private int getMergeThreads() {
+        return getToolkit().getArguments().numberOfCPUThreadsPerDataThread;
     }
 
     /**
-     * Disrupt the VariantContexts so that they all stop at the given pos, write them out, and put the remainder back in the list.
-     * @param state   the previous state with list of active VariantContexts
-     * @param pos   the position for the starting VCs
-     * @param startingStates the state for the starting VCs
-     * @param atCurrentPosition  indicates whether we output a variant at the current position, independent of VCF start/end, i.e. in BP resolution mode
-     */
-    private void endPreviousStates(final OverallState state, final GenomeLoc pos, final PositionalState startingStates, boolean atCurrentPosition) {
-
-        final byte refBase = startingStates.refBases[0];
-        //if we're in BP resolution mode or a VC ends at the current position then the reference for the next output VC (refNextBase)
-        // will be advanced one base
-        final byte refNextBase = (atCurrentPosition) ? (startingStates.refBases.length > 1 ? startingStates.refBases[1] : (byte)'N' ): refBase;
-
-        final List<VariantContext> stoppedVCs = new ArrayList<>(state.VCs.size());
-
-        for ( int i = state.VCs.size() - 1; i >= 0; i-- ) {
-            final VariantContext vc = state.VCs.get(i);
-            //the VC for the previous state will be stopped if its position is previous to the current position or it we've moved to a new contig
-            if ( vc.getStart() <= pos.getStart() || !vc.getChr().equals(pos.getContig())) {
-
-                stoppedVCs.add(vc);
-
-                // if it was ending anyways, then remove it from the future state
-                if ( vc.getEnd() == pos.getStart()) {
-                    state.samples.removeAll(vc.getSampleNames());
-                    state.VCs.remove(i);
-                    continue; //don't try to remove twice
-                }
-
-                //if ending vc is the same sample as a starting VC, then remove it from the future state
-                if(startingStates.VCs.size() > 0 && !atCurrentPosition && startingStates.samples.containsAll(vc.getSampleNames())) {
-                    state.samples.removeAll(vc.getSampleNames());
-                    state.VCs.remove(i);
-                }
-            }
-        }
-
-        //output the stopped VCs if there is no previous output (state.prevPos == null) or our current position is past
-        // the last write position (state.prevPos)
-        //NOTE: BP resolution with have current position == state.prevPos because it gets output via a different control flow
-        if ( !stoppedVCs.isEmpty() &&  (state.prevPos == null || pos.isPast(state.prevPos) )) {
-            final GenomeLoc gLoc = genomeLocParser.createGenomeLoc(stoppedVCs.get(0).getChr(), pos.getStart());
-
-            // we need the specialized merge if the site contains anything other than ref blocks
-            final VariantContext mergedVC;
-            if ( containsTrueAltAllele(stoppedVCs) )
-                mergedVC = ReferenceConfidenceVariantContextMerger.merge(stoppedVCs, gLoc, refBase, false, false, annotationEngine);
-            else
-                mergedVC = referenceBlockMerge(stoppedVCs, state, pos.getStart());
-
-            vcfWriter.add(mergedVC);
-            state.prevPos = gLoc;
-            state.refAfterPrevPos = refNextBase;
-        }
-    }
-
-    /**
-     * Combine a list of reference block VariantContexts.
-     * We can't use GATKVariantContextUtils.simpleMerge() because it is just too slow for this sort of thing.
+     * Combine each group of inputs into an intermediate gVCF, -nct groups at a time
      *
-     * @param VCs   the variant contexts to merge
-     * @param state the state object
-     * @param end   the end of this block (inclusive)
-     * @return a new merged VariantContext
+     * @param groups     the groups of inputs
+     * @param directory  the directory in which to write the intermediate gVCFs
+     * @param level      the level of the hierarchical merge that the groups belong to
+     * @return the intermediate gVCFs, in the order of their groups
      */
-    private VariantContext referenceBlockMerge(final List<VariantContext> VCs, final OverallState state, final int end) {
-
-        final VariantContext first = VCs.get(0);
-
-        // ref allele and start
-        final Allele refAllele;
-        final int start;
-        if ( state.prevPos == null || !state.prevPos.getContig().equals(first.getChr()) || first.getStart() >= state.prevPos.getStart() + 1) {
-            start = first.getStart();
-            refAllele = first.getReference();
-        } else {
-            start = state.prevPos.getStart() + 1;
-            refAllele = Allele.create(state.refAfterPrevPos, true);
+    private List<File> combineGroups(final List<List<File>> groups, final File directory, final ReferenceConfidenceVariantContextMerger.HierarchicalLevel level) {
+        if ( ! directory.mkdirs() )
+            throw new UserException.CouldNotCreateOutputFile(directory, "could not create the directory of the intermediate gVCFs");
+
+        final List<File> outputs = new ArrayList<>(groups.size());
+        final List<VariantAnnotatorEngine> groupAnnotationEngines = new ArrayList<>(groups.size());
+        for ( int i = 0; i < groups.size(); i++ ) {
+            outputs.add(new File(directory, "group" + i + ".g.vcf"));
+            // annotation engines hold state of their own, so each group gets one
+            groupAnnotationEngines.add(createAnnotationEngine());
         }
 
-        // attributes
-        final Map<String, Object> attrs = new HashMap<>(1);
-        if ( !USE_BP_RESOLUTION && end != start )
-            attrs.put(VCFConstants.END_KEY, Integer.toString(end));
-
-        // genotypes
-        final GenotypesContext genotypes = GenotypesContext.create();
-        for ( final VariantContext vc : VCs ) {
-            for ( final Genotype g : vc.getGenotypes() )
-                genotypes.add(new GenotypeBuilder(g).alleles(GATKVariantContextUtils.noCallAlleles(g.getPloidy())).make());
-        }
-
-        return new VariantContextBuilder("", first.getChr(), start, end, Arrays.asList(refAllele, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE)).attributes(attrs).genotypes(genotypes).make();
+        new ChunkedForkJoinExecutor(getMergeThreads()).map(groups.size(), groups.size(), new ChunkedForkJoinExecutor.ChunkFunction<Void>() {
+            @Override
+            public Void apply(final int chunk, final int from, final int to) {
+                for ( int i = from; i < to; i++ ) {
+                    try {
+                        combineGroup(groups.get(i), outputs.get(i), groupAnnotationEngines.get(i), level);
+                    } catch ( IOException e ) {
+                        throw new UserException.CouldNotCreateOutputFile(outputs.get(i), "could not write the intermediate gVCF", e);
+                    }
+                }
+                return null;
+            }
+        });
+        return outputs;
     }
 
     /**
-     * Does the given list of VariantContexts contain any with an alternate allele other than <NON_REF>?
-     *
-     * @param VCs  list of VariantContexts
-     * @return true if there are one or more VCs that contain a true alternate allele, false otherwise
+     * Combine one group of inputs into an indexed intermediate gVCF
      */
-    private boolean containsTrueAltAllele(final List<VariantContext> VCs) {
-        if ( VCs == null ) throw new IllegalArgumentException("The list of VariantContexts cannot be null");
-
-        for ( final VariantContext vc : VCs ) {
-            if ( vc.getNAlleles() > 2 )
-                return true;
+    private void combineGroup(final List<File> group, final File output, final VariantAnnotatorEngine groupAnnotationEngine,
+                              final ReferenceConfidenceVariantContextMerger.HierarchicalLevel level) throws IOException {
+        final IndexedFastaSequenceFile reference = CachingIndexedFastaSequenceFile.checkAndCreate(getToolkit().getArguments().referenceFile);
+        final StreamingGVCFMerger merger = new StreamingGVCFMerger(group);
+        final VariantContextWriter writer = new VariantContextWriterBuilder().setOutputFile(output)
+                .setReferenceDictionary(getToolkit().getMasterSequenceDictionary()).setOption(Options.INDEX_ON_THE_FLY).build();
+        try {
+            final Set<String> samples = new TreeSet<>();
+            for ( final VCFHeader header : merger.getHeaders() )
+                samples.addAll(header.getGenotypeSamples());
+            writer.writeHeader(new VCFHeader(headerLines, samples));
+
+            final GVCFBlockCombiner combiner = new GVCFBlockCombiner(writer, genomeLocParser, groupAnnotationEngine, USE_BP_RESOLUTION, multipleAtWhichToBreakBands, level);
+            for ( final GenomeLoc interval : getToolkit().getRegionsOfGenomeBeingProcessed() )
+                merger.merge(interval, combiner, reference, genomeLocParser);
+        } finally {
+            writer.close();
+            merger.close();
+            reference.close();
         }
-        return false;
-    }
-
-    @Override
-    public void onTraversalDone(final OverallState state) {
-        // there shouldn't be any state left unless the user cut in the middle of a gVCF block
-        if ( !state.VCs.isEmpty() )
-            logger.warn("You have asked for an interval that cuts in the middle of one or more gVCF blocks. Please note that this will cause you to lose records that don't end within your interval.");
     }
 }
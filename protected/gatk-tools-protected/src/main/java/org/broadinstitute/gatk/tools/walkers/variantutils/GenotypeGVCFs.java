@@ -60,6 +60,7 @@ import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
 import org.broadinstitute.gatk.engine.SampleUtils;
 import org.broadinstitute.gatk.engine.arguments.DbsnpArgumentCollection;
 import org.broadinstitute.gatk.engine.arguments.GenotypeCalculationArgumentCollection;
+import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
 import org.broadinstitute.gatk.engine.walkers.Reference;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.TreeReducible;
@@ -79,9 +80,14 @@ import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.genotyper.IndexedSampleList;
 import org.broadinstitute.gatk.utils.genotyper.SampleList;
 import org.broadinstitute.gatk.utils.genotyper.SampleListUtils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
+import org.broadinstitute.gatk.utils.metrics.Counter;
+import org.broadinstitute.gatk.utils.metrics.MetricsRegistry;
+import org.broadinstitute.gatk.utils.metrics.Timer;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
@@ -101,7 +107,7 @@ import java.util.*;
  *
  * <h3>Input</h3>
  * <p>
- * One or more HaplotypeCaller gVCFs to genotype.
+ * One or more HaplotypeCaller gVCFs to genotype, or cohort stores built with ImportGVCFs.
  * </p>
  *
  * <h3>Output</h3>
@@ -119,6 +125,16 @@ import java.util.*;
  *   -o output.vcf
  * </pre>
  *
+ * <p>or, to genotype the samples listed in samples.list of a cohort store over the given intervals</p>
+ * <pre>
+ * java -jar GenomeAnalysisTK.jar \
+ *   -T GenotypeGVCFs \
+ *   -R reference.fasta \
+ *   --variant:store,samples=samples.list cohort_store/manifest \
+ *   -L 20 \
+ *   -o output.vcf
+ * </pre>
+ *
  * <h3>Caveat</h3>
  * <p>Only gVCF files produced by HaplotypeCaller (or CombineGVCFs) can be used as input for this tool. Some other
  * programs produce files that they call gVCFs but those lack some important information (accurate genotype likelihoods
@@ -134,7 +150,8 @@ import java.util.*;
 @SuppressWarnings("unused")
 public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWriter> implements AnnotatorCompatible, TreeReducible<VariantContextWriter> {
     /**
-     * The gVCF files to merge together
+     * The gVCF files to merge together.  The manifest of a cohort store built with ImportGVCFs can be given as well,
+     * with an optional samples=FILE tag restricting the genotyping to the samples listed in FILE.
      */
     @Input(fullName="variant", shortName = "V", doc="One or more input gVCF files", required=true)
     public List<RodBindingCollection<VariantContext>> variantCollections;
@@ -146,6 +163,16 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
     @Argument(fullName="includeNonVariantSites", shortName="allSites", doc="Include loci found to be non-variant after genotyping", required=false)
     public boolean INCLUDE_NON_VARIANTS = false;
 
+    /**
+     * Instead of visiting every position covered by the input gVCFs, only visit the positions where a record with an
+     * alternate allele other than &lt;NON_REF&gt; starts.  The output is identical, since spans where every sample has a
+     * reference block can't produce a variant, but the time spent on them is saved: the engine seeks the inputs from
+     * one such record to the next.  This mode can't be combined with -allSites.
+     */
+    @Advanced
+    @Argument(fullName="skipReferenceBlocks", shortName="skipRefBlocks", doc="Only visit the loci where an input record isn't a plain reference block", required=false)
+    public boolean skipReferenceBlocks = false;
+
     /**
      * Uniquify all sample names (intended for use with multiple inputs for the same sample)
      */
@@ -181,10 +208,17 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
     protected DbsnpArgumentCollection dbsnp = new DbsnpArgumentCollection();
     public RodBinding<VariantContext> getDbsnpRodBinding() { return dbsnp.dbsnp; }
 
+    // per-stage timers, only recorded when the engine is run with -metricsLog
+    private final static Timer MERGE_TIMER = MetricsRegistry.timer("GenotypeGVCFs.merge");
+    private final static Timer REGENOTYPE_TIMER = MetricsRegistry.timer("GenotypeGVCFs.regenotype");
+    private final static Counter VISITED_SITES = MetricsRegistry.counter("GenotypeGVCFs.visitedSites");
+
     // the genotyping engine
     private UnifiedGenotypingEngine genotypingEngine;
     // the annotation engine
     private VariantAnnotatorEngine annotationEngine;
+    // the order of the samples of each cohort store binding, keyed by binding name
+    private final Map<String, Map<String, Integer>> cohortStoreSampleIndices = new HashMap<>();
 
     public List<RodBinding<VariantContext>> getCompRodBindings() { return Collections.emptyList(); }
     public RodBinding<VariantContext> getSnpEffRodBinding() { return null; }
@@ -210,11 +244,14 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
             logger.warn("Output uniquified VCF may not be suitable for input to CombineSampleData because input VCF(s) contain tags.");
 
         final GenomeAnalysisEngine toolkit = getToolkit();
-        final Map<String, VCFHeader> vcfRods = GATKVCFUtils.getVCFHeadersFromRods(toolkit, variants);
+        if ( skipReferenceBlocks )
+            validateSkipReferenceBlocksArguments();
 
+        final Map<String, VCFHeader> vcfRods = GATKVCFUtils.getVCFHeadersFromRods(toolkit, variants);
         final GATKVariantContextUtils.GenotypeMergeType mergeType = uniquifySamples ?
                 GATKVariantContextUtils.GenotypeMergeType.UNIQUIFY : GATKVariantContextUtils.GenotypeMergeType.REQUIRE_UNIQUE;
         final SampleList samples = new IndexedSampleList(SampleUtils.getSampleList(vcfRods, mergeType));
+        findCohortStores(toolkit);
 
         annotationEngine = new VariantAnnotatorEngine(annotationGroupsToUse, annotationsToUse, Collections.<String>emptyList(), this, toolkit);
 
@@ -250,18 +287,105 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
         logger.info("Notice that the -ploidy parameter is ignored in " + getClass().getSimpleName() + " tool as this is automatically determined by the input variant files");
     }
 
+    private void validateSkipReferenceBlocksArguments() {
+        if ( INCLUDE_NON_VARIANTS )
+            throw new UserException.BadArgumentValue("skipReferenceBlocks", "reference blocks can't be skipped when non-variant sites are included in the output");
+    }
+
+    /**
+     * Without -allSites a merged site can only be emitted where a record with a real alternate allele starts, since
+     * the merge only happens where a record starts and the merge of plain reference blocks is never polymorphic.
+     * With -skipRefBlocks only these sites are visited, the dbSNP records and the reference blocks of the other
+     * samples overlapping them being in the tracker as usual.
+     */
+    @Override
+    public SiteFilter getSiteFilter() {
+        if ( ! skipReferenceBlocks )
+            return null;
+
+        final Set<String> variantNames = new HashSet<>(variants.size());
+        for ( final RodBinding<VariantContext> variant : variants )
+            variantNames.add(variant.getName());
+        return new SiteFilter() {
+            @Override
+            public boolean startsSite(final GATKFeature record) {
+                return variantNames.contains(record.getName()) && isVariantRecord((VariantContext)record.getUnderlyingObject());
+            }
+        };
+    }
+
+    /**
+     * Record the order of the samples of every cohort store given with --variant
+     *
+     * A cohort store binding yields one record per sample rather than one per site, so map() picks the record of
+     * each of its samples just as the engine picks the record of each gVCF binding.
+     */
+    private void findCohortStores(final GenomeAnalysisEngine toolkit) {
+        final Set<String> variantNames = new HashSet<>(variants.size());
+        for ( final RodBinding<VariantContext> variant : variants )
+            variantNames.add(variant.getName());
+        for ( final ReferenceOrderedDataSource source : toolkit.getRodDataSources() ) {
+            if ( source.getType() != CohortStoreCodec.class || ! variantNames.contains(source.getName()) )
+                continue;
+            final Map<String, Integer> sampleIndices = new HashMap<>();
+            for ( final String sample : ((VCFHeader)source.getHeader()).getGenotypeSamples() )
+                sampleIndices.put(sample, sampleIndices.size());
+            cohortStoreSampleIndices.put(source.getName(), sampleIndices);
+        }
+    }
+
     // get VariantContexts from input gVCFs, merge, and regenotype
     public VariantContext map(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
         if ( tracker == null ) // RodWalkers can make funky map calls
             return null;
 
+        VISITED_SITES.increment();
         final GenomeLoc loc = ref.getLocus();
-        final List<VariantContext> vcsAtThisLocus = tracker.getPrioritizedValue(variants, loc);
+        final List<VariantContext> vcsAtThisLocus = cohortStoreSampleIndices.isEmpty() ?
+                tracker.getPrioritizedValue(variants, loc) : getPrioritizedValues(tracker, loc);
         final Byte refBase = INCLUDE_NON_VARIANTS ? ref.getBase() : null;
         final boolean removeNonRefSymbolicAllele = !INCLUDE_NON_VARIANTS;
+        final long mergeStart = MERGE_TIMER.start();
         final VariantContext combinedVC = ReferenceConfidenceVariantContextMerger.merge(vcsAtThisLocus, loc,
                refBase, removeNonRefSymbolicAllele, uniquifySamples, annotationEngine);
-        return combinedVC == null ? null : regenotypeVC(tracker, ref, combinedVC);
+        MERGE_TIMER.stop(mergeStart);
+        if ( combinedVC == null )
+            return null;
+
+        final long regenotypeStart = REGENOTYPE_TIMER.start();
+        final VariantContext result = regenotypeVC(tracker, ref, combinedVC);
+        REGENOTYPE_TIMER.stop(regenotypeStart);
+        return result;
+    }
+
+    /**
+     * Same as tracker.getPrioritizedValue(variants, loc), except that a cohort store binding contributes one record
+     * per sample, in the order of the samples of the store
+     *
+     * @param tracker the ref tracker
+     * @param loc     the site to genotype
+     * @return for each gVCF and each cohort store sample, the record starting at loc if any, or else any record overlapping it
+     */
+    private List<VariantContext> getPrioritizedValues(final RefMetaDataTracker tracker, final GenomeLoc loc) {
+        final List<VariantContext> values = new ArrayList<>();
+        for ( final RodBinding<VariantContext> variant : variants ) {
+            final Map<String, Integer> sampleIndices = cohortStoreSampleIndices.get(variant.getName());
+            if ( sampleIndices == null ) {
+                values.addAll(tracker.getPrioritizedValue(Collections.singletonList(variant), loc));
+                continue;
+            }
+
+            final VariantContext[] sampleValues = new VariantContext[sampleIndices.size()];
+            for ( final VariantContext vc : tracker.getValues(variant) ) {
+                final int index = sampleIndices.get(vc.getGenotype(0).getSampleName());
+                if ( sampleValues[index] == null || (sampleValues[index].getStart() != loc.getStart() && vc.getStart() == loc.getStart()) )
+                    sampleValues[index] = vc;
+            }
+            for ( final VariantContext vc : sampleValues )
+                if ( vc != null )
+                    values.add(vc);
+        }
+        return values;
     }
 
     /**
@@ -314,6 +438,16 @@ public class GenotypeGVCFs extends RodWalker<VariantContext, VariantContextWrite
         return result;
     }
 
+    /**
+     * @return true if vc is anything but a plain reference block, i.e. if it has an alternate allele other than <NON_REF>
+     */
+    private static boolean isVariantRecord(final VariantContext vc) {
+        for ( final Allele allele : vc.getAlternateAlleles() )
+            if ( ! allele.equals(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE) )
+                return true;
+        return false;
+    }
+
     /**
      * Determines whether the provided VariantContext has real alternate alleles.
      *
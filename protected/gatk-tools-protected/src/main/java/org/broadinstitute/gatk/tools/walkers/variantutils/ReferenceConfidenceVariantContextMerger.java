@@ -67,6 +67,7 @@ import org.broadinstitute.gatk.utils.exceptions.GATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
+import org.broadinstitute.gatk.utils.variant.RemappedPLGenotype;
 
 import java.util.*;
 
@@ -83,6 +84,33 @@ public class ReferenceConfidenceVariantContextMerger {
         return MathUtils.median(array); // right now we take the median but other options could be explored
     }
 
+    /**
+     * The place of a merge in a hierarchical merge of gVCFs, where groups of gVCFs are merged into intermediate gVCFs
+     * that are merged in turn (see CombineGVCFs --mergeGroupSize)
+     *
+     * For the result to be the one of a single merge, the intermediate gVCFs keep all of the values of the annotations
+     * that are combined by taking their median, rather than the median of their group, and the merges of intermediate
+     * gVCFs put * after all of the real alternate alleles, where a single merge of gVCFs without any called * puts it.
+     */
+    public enum HierarchicalLevel {
+        /** a plain merge of gVCFs */
+        NONE(false, false),
+        /** merges gVCFs into an intermediate gVCF */
+        FIRST(false, true),
+        /** merges intermediate gVCFs into another intermediate gVCF */
+        INTERMEDIATE(true, true),
+        /** merges intermediate gVCFs into the final result */
+        LAST(true, false);
+
+        private final boolean mergesIntermediates;
+        private final boolean makesIntermediate;
+
+        HierarchicalLevel(final boolean mergesIntermediates, final boolean makesIntermediate) {
+            this.mergesIntermediates = mergesIntermediates;
+            this.makesIntermediate = makesIntermediate;
+        }
+    }
+
     /**
      * Merges VariantContexts from gVCFs into a single hybrid.
      * Assumes that none of the input records are filtered.
@@ -96,6 +124,25 @@ public class ReferenceConfidenceVariantContextMerger {
      */
     public static VariantContext merge(final List<VariantContext> VCs, final GenomeLoc loc, final Byte refBase, final boolean removeNonRefSymbolicAllele,
                                        final boolean samplesAreUniquified, final VariantAnnotatorEngine annotatorEngine) {
+        return merge(VCs, loc, refBase, removeNonRefSymbolicAllele, samplesAreUniquified, annotatorEngine, HierarchicalLevel.NONE);
+    }
+
+    /**
+     * Merges VariantContexts from gVCFs into a single hybrid, as one level of a hierarchical merge.
+     * Assumes that none of the input records are filtered.
+     *
+     * @param VCs     collection of unsorted genomic VCs
+     * @param loc     the current location
+     * @param refBase the reference allele to use if all contexts in the VC are spanning (i.e. don't start at the location in loc); if null, we'll return null in this case
+     * @param removeNonRefSymbolicAllele if true, remove the <NON_REF> allele from the merged VC
+     * @param samplesAreUniquified  if true, sample names have been uniquified
+     * @param level   the level of the hierarchical merge that this merge belongs to
+     * @return new VariantContext representing the merge of all VCs or null if it not relevant
+     * @throws UserException.BadInput if this is the first level and a record starting here already has * next to a
+     *                                real alternate allele, as the intermediate levels can't tell where * goes then
+     */
+    public static VariantContext merge(final List<VariantContext> VCs, final GenomeLoc loc, final Byte refBase, final boolean removeNonRefSymbolicAllele,
+                                       final boolean samplesAreUniquified, final VariantAnnotatorEngine annotatorEngine, final HierarchicalLevel level) {
         // this can happen if e.g. you are using a dbSNP file that spans a region with no gVCFs
         if ( VCs == null || VCs.isEmpty() ) {
             return null; }
@@ -126,6 +173,8 @@ public class ReferenceConfidenceVariantContextMerger {
         // Keep track of whether we saw a spanning deletion and a non-spanning event
         boolean sawSpanningDeletion = false;
         boolean sawNonSpanningEvent = false;
+        // and whether an intermediate record starting here already has * next to a real alternate allele
+        boolean sawCalledSpanningDeletion = false;
 
         // cycle through and add info from the other VCs
         for ( final VariantContext vc : VCs ) {
@@ -137,21 +186,28 @@ public class ReferenceConfidenceVariantContextMerger {
             sawSpanningDeletion |= ( isSpanningEvent && vc.isMixed() ) || vc.getAlternateAlleles().contains(Allele.SPAN_DEL) ||
                     vc.getAlternateAlleles().contains(GATKVCFConstants.SPANNING_DELETION_SYMBOLIC_ALLELE_DEPRECATED );
             sawNonSpanningEvent |= ( !isSpanningEvent && vc.isMixed() );
+            if ( !isSpanningEvent && !vc.isBiallelic() && vc.getAlternateAlleles().contains(Allele.SPAN_DEL) ) {
+                if ( level == HierarchicalLevel.FIRST )
+                    throw new UserException.BadInput("the record of " + vc.getSource() + " at " + loc + " already has a called spanning deletion, so its gVCF can't be merged hierarchically; merge it in a single pass instead");
+                sawCalledSpanningDeletion |= level.mergesIntermediates;
+            }
 
-            vcAndNewAllelePairs.add(new Pair<>(vc, isSpanningEvent ? replaceWithNoCallsAndDels(vc) : remapAlleles(vc, refAllele, finalAlleleSet)));
+            vcAndNewAllelePairs.add(new Pair<>(vc, isSpanningEvent ? replaceWithNoCallsAndDels(vc) : remapAlleles(vc, refAllele, finalAlleleSet, !level.mergesIntermediates)));
         }
 
         // Add <DEL> and <NON_REF> to the end if at all required in the output.
-        if ( sawSpanningDeletion && (sawNonSpanningEvent || !removeNonRefSymbolicAllele) ) finalAlleleSet.add(Allele.SPAN_DEL);
+        // The * of intermediate records also goes after all of the real alternate alleles, where the single merge put it
+        if ( (sawSpanningDeletion && (sawNonSpanningEvent || !removeNonRefSymbolicAllele)) || sawCalledSpanningDeletion ) finalAlleleSet.add(Allele.SPAN_DEL);
         if (!removeNonRefSymbolicAllele) finalAlleleSet.add(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE);
 
         final List<Allele> allelesList = new ArrayList<>(finalAlleleSet);
+        final Map<GenotypeIndexMapKey, int[]> genotypeIndexMaps = new HashMap<>();
 
         for ( final Pair<VariantContext,List<Allele>> pair : vcAndNewAllelePairs ) {
             final VariantContext vc = pair.getFirst();
             final List<Allele> remappedAlleles = pair.getSecond();
 
-            mergeRefConfidenceGenotypes(genotypes, vc, remappedAlleles, allelesList, samplesAreUniquified);
+            mergeRefConfidenceGenotypes(genotypes, vc, remappedAlleles, allelesList, samplesAreUniquified, genotypeIndexMaps);
 
             // special case DP (add it up) for all events
             if ( vc.hasAttribute(VCFConstants.DEPTH_KEY) ) {
@@ -186,12 +242,16 @@ public class ReferenceConfidenceVariantContextMerger {
 
         //annotatorEngine.combineAnnotations removed the successfully combined annotations, so now parse those that are left
         //here we're assuming that things that are left are scalars per sample
-        Map<String, List<Comparable>> parsedAnnotationMap = parseRemainingAnnotations(annotationMap);
+        Map<String, List<Comparable>> parsedAnnotationMap = parseRemainingAnnotations(annotationMap, level.mergesIntermediates);
 
         // when combining remaining annotations use the median value from all input VCs which had annotations provided
+        // (intermediate records keep all of the values instead, as the median of medians isn't the overall median)
         for ( final Map.Entry<String, List<Comparable>> p : parsedAnnotationMap.entrySet() ) {
             if ( ! p.getValue().isEmpty() ) {
-                attributes.put(p.getKey(), combineAnnotationValues(p.getValue()));
+                if ( level.makesIntermediate && ! p.getKey().equals(VCFConstants.DEPTH_KEY) )
+                    attributes.put(p.getKey(), annotationValuesToStrings(p.getValue()));
+                else
+                    attributes.put(p.getKey(), combineAnnotationValues(p.getValue()));
             }
         }
 
@@ -212,15 +272,22 @@ public class ReferenceConfidenceVariantContextMerger {
     /**
      * parse the annotations that were not identified as reducible annotations and combined by the annotation engine
      * @param annotationMap the map of info field annotation names and the list of their data from the merged VCs
+     * @param splitValues   if true, the data are lists of values kept by intermediate records, otherwise single values
      * @return  info field data parsed as ints or doubles
      */
-    private static Map<String, List<Comparable>> parseRemainingAnnotations(final Map<String, List<ReducibleAnnotationData>> annotationMap) {
+    private static Map<String, List<Comparable>> parseRemainingAnnotations(final Map<String, List<ReducibleAnnotationData>> annotationMap, final boolean splitValues) {
         final Map<String, List<Comparable>> parsedAnnotations = new HashMap<>();
         for (Map.Entry<String, List<ReducibleAnnotationData>> currentData : annotationMap.entrySet()) {
             List<Comparable> annotationValues = new ArrayList<>();
+            final List<String> stringValues = new ArrayList<>();
             for (ReducibleAnnotationData value : currentData.getValue()) {
+                if ( splitValues )
+                    stringValues.addAll(Arrays.asList(value.getRawData().split(",")));
+                else
+                    stringValues.add(value.getRawData());
+            }
+            for (final String stringValue : stringValues) {
                 try {
-                    final String stringValue = value.getRawData();
                     if (stringValue.contains(".")) {
                         annotationValues.add(Double.parseDouble(stringValue));
                     } else if (Character.isDigit(stringValue.charAt(0))){
@@ -234,7 +301,7 @@ public class ReferenceConfidenceVariantContextMerger {
                     }
 
                 } catch (final NumberFormatException e) {
-                    logger.warn("WARNING: remaining (non-reducible) annotations are assumed to be ints or doubles or booleans, but " + value.getRawData() + " doesn't parse and will not be annotated in the final VC.");
+                    logger.warn("WARNING: remaining (non-reducible) annotations are assumed to be ints or doubles or booleans, but " + stringValue + " doesn't parse and will not be annotated in the final VC.");
                 }
             }
             parsedAnnotations.put(currentData.getKey(),annotationValues);
@@ -242,6 +309,19 @@ public class ReferenceConfidenceVariantContextMerger {
         return parsedAnnotations;
     }
 
+    /**
+     * Format parsed annotation values so that parsing them again gives back the same values
+     *
+     * @param values  the parsed values
+     * @return the values as strings, in the same order
+     */
+    private static List<String> annotationValuesToStrings(final List<Comparable> values) {
+        final List<String> strings = new ArrayList<>(values.size());
+        for ( final Comparable value : values )
+            strings.add(String.valueOf(value));
+        return strings;
+    }
+
     /**
      * @param list  the original alleles list
      * @return a non-null list of non-symbolic alleles
@@ -332,10 +412,12 @@ public class ReferenceConfidenceVariantContextMerger {
      * @param vc           the variant context.
      * @param refAllele    final reference allele.
      * @param finalAlleles where to add the final set of non-ref called alleles.
+     * @param addSpanningDeletion whether to add * to {@code finalAlleles} when vc has it next to a real alternate allele.
      * @return never {@code null}
      */
     //TODO as part of a larger refactoring effort {@link #remapAlleles} can be merged with {@link GATKVariantContextUtils#remapAlleles}.
-    private static List<Allele> remapAlleles(final VariantContext vc, final Allele refAllele, final LinkedHashSet<Allele> finalAlleles) {
+    private static List<Allele> remapAlleles(final VariantContext vc, final Allele refAllele, final LinkedHashSet<Allele> finalAlleles,
+                                             final boolean addSpanningDeletion) {
 
         final Allele vcRef = vc.getReference();
         final byte[] refBases = refAllele.getBases();
@@ -355,7 +437,7 @@ public class ReferenceConfidenceVariantContextMerger {
             } else if ( a == Allele.SPAN_DEL ) {
                 result.add(a);
                 // we skip * if there isn't a real alternate allele.
-                if ( !vc.isBiallelic() )
+                if ( addSpanningDeletion && !vc.isBiallelic() )
                     finalAlleles.add(a);
             } else if (a.isCalled()) {
                 final Allele newAllele;
@@ -413,16 +495,14 @@ public class ReferenceConfidenceVariantContextMerger {
      * @param remappedAlleles       the list of remapped alleles for the sample
      * @param targetAlleles         the list of target alleles
      * @param samplesAreUniquified  true if sample names have been uniquified
+     * @param genotypeIndexMaps     the genotype index maps already computed for this site, shared by all of its samples
      */
     private static void mergeRefConfidenceGenotypes(final GenotypesContext mergedGenotypes,
                                                     final VariantContext vc,
                                                     final List<Allele> remappedAlleles,
                                                     final List<Allele> targetAlleles,
-                                                    final boolean samplesAreUniquified) {
-        final int maximumPloidy = vc.getMaxPloidy(GATKVariantContextUtils.DEFAULT_PLOIDY);
-        // the map is different depending on the ploidy, so in order to keep this method flexible (mixed ploidies)
-        // we need to get a map done (lazily inside the loop) for each ploidy, up to the maximum possible.
-        final int[][] genotypeIndexMapsByPloidy = new int[maximumPloidy + 1][];
+                                                    final boolean samplesAreUniquified,
+                                                    final Map<GenotypeIndexMapKey, int[]> genotypeIndexMaps) {
         final int maximumAlleleCount = Math.max(remappedAlleles.size(),targetAlleles.size());
         int[] perSampleIndexesOfRelevantAlleles;
 
@@ -439,26 +519,66 @@ public class ReferenceConfidenceVariantContextMerger {
             final boolean hasSAC = g.hasExtendedAttribute(GATKVCFConstants.STRAND_COUNT_BY_SAMPLE_KEY);
             if (hasPL || hasSAC) {
                 perSampleIndexesOfRelevantAlleles = getIndexesOfRelevantAlleles(remappedAlleles, targetAlleles, vc.getStart(), g);
+                int[] genotypeIndexMap = null;
                 if (g.hasPL()) {
-                    // lazy initialization of the genotype index map by ploidy.
-
-                    final int[] genotypeIndexMapByPloidy = genotypeIndexMapsByPloidy[ploidy] == null
-                            ? GenotypeLikelihoodCalculators.getInstance(ploidy, maximumAlleleCount).genotypeIndexMap(perSampleIndexesOfRelevantAlleles)
-                            : genotypeIndexMapsByPloidy[ploidy];
-                    final int[] PLs = generatePL(g, genotypeIndexMapByPloidy);
+                    // samples with the same ploidy and allele mapping share the same (possibly huge) genotype index map
+                    final GenotypeIndexMapKey key = new GenotypeIndexMapKey(ploidy, perSampleIndexesOfRelevantAlleles);
+                    genotypeIndexMap = genotypeIndexMaps.get(key);
+                    if (genotypeIndexMap == null) {
+                        genotypeIndexMap = GenotypeLikelihoodCalculators.getInstance(ploidy, maximumAlleleCount).genotypeIndexMap(perSampleIndexesOfRelevantAlleles);
+                        genotypeIndexMaps.put(key, genotypeIndexMap);
+                    }
                     final int[] AD = g.hasAD() ? generateAD(g.getAD(), perSampleIndexesOfRelevantAlleles) : null;
-                    genotypeBuilder.PL(PLs).AD(AD);
+                    genotypeBuilder.AD(AD);
+                    // only build the PLs of the merged alleles here if there aren't more than the sample's own
+                    if (genotypeIndexMap.length <= g.getPL().length) {
+                        genotypeBuilder.PL(generatePL(g, genotypeIndexMap));
+                        genotypeIndexMap = null;
+                    } else
+                        genotypeBuilder.noPL();
                 }
                 if (g.hasExtendedAttribute(GATKVCFConstants.STRAND_COUNT_BY_SAMPLE_KEY)) {
                     final List<Integer> sacIndexesToUse = adaptToSACIndexes(perSampleIndexesOfRelevantAlleles);
                     final int[] SACs = GATKVariantContextUtils.makeNewSACs(g, sacIndexesToUse);
                     genotypeBuilder.attribute(GATKVCFConstants.STRAND_COUNT_BY_SAMPLE_KEY, SACs);
                 }
+                if (genotypeIndexMap != null) {
+                    mergedGenotypes.add(new RemappedPLGenotype(genotypeBuilder.make(), g.getPL(), genotypeIndexMap));
+                    continue;
+                }
             }
             mergedGenotypes.add(genotypeBuilder.make());
         }
     }
 
+    /**
+     * Identifies the genotype index map of a ploidy and a mapping of the merged alleles to the alleles of a sample
+     */
+    private static final class GenotypeIndexMapKey {
+        private final int ploidy;
+        private final int[] indexesOfRelevantAlleles;
+        private final int hashCode;
+
+        private GenotypeIndexMapKey(final int ploidy, final int[] indexesOfRelevantAlleles) {
+            this.ploidy = ploidy;
+            this.indexesOfRelevantAlleles = indexesOfRelevantAlleles;
+            this.hashCode = 31 * ploidy + Arrays.hashCode(indexesOfRelevantAlleles);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if ( this == o ) return true;
+            if ( ! (o instanceof GenotypeIndexMapKey) ) return false;
+            final GenotypeIndexMapKey other = (GenotypeIndexMapKey) o;
+            return ploidy == other.ploidy && Arrays.equals(indexesOfRelevantAlleles, other.indexesOfRelevantAlleles);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     /**
       * Adapt the relevant alleles to the SAC indexes
       *
@@ -0,0 +1,241 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.CloseableTribbleIterator;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.TribbleException;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.commandline.RodBinding;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Feeds a GVCFBlockCombiner with the records of several indexed gVCFs, using a k-way merge of their sorted records
+ *
+ * This produces the same output as a RodWalker handing every covered position to the combiner, but without the
+ * per-locus machinery: each input is queried once per interval, the next record of each is kept in a priority queue,
+ * and the combiner is only called at the positions where a record starts or where the active records have to be
+ * broken (see GVCFBlockCombiner.nextBreakPosition()).  Memory use is one pending record per input plus the active
+ * records of the combiner, whatever the length of the interval.
+ */
+public final class StreamingGVCFMerger implements Closeable {
+    private final List<File> inputs;
+    private final List<FeatureReader<VariantContext>> readers;
+
+    /**
+     * @param inputs the gVCFs to merge, each of which must be indexed
+     */
+    public StreamingGVCFMerger(final List<File> inputs) {
+        if ( inputs == null || inputs.isEmpty() ) throw new IllegalArgumentException("inputs cannot be null or empty");
+
+        this.inputs = new ArrayList<>(inputs);
+        this.readers = new ArrayList<>(inputs.size());
+        for ( final File input : inputs ) {
+            try {
+                readers.add(AbstractFeatureReader.getFeatureReader(input.getAbsolutePath(), new VCFCodec(), true));
+            } catch ( TribbleException e ) {
+                close();
+                throw new UserException.CouldNotReadInputFile(input, "the streaming merge needs an index for each input gVCF", e);
+            }
+        }
+    }
+
+    /**
+     * @param toolkit   the engine that opened the inputs
+     * @param variants  the bindings of the inputs
+     * @return the files of the inputs, as opened by the engine, in the order of their bindings
+     */
+    public static List<File> getInputFiles(final GenomeAnalysisEngine toolkit, final List<RodBinding<VariantContext>> variants) {
+        final Map<String, File> filesByName = new HashMap<>();
+        for ( final ReferenceOrderedDataSource source : toolkit.getRodDataSources() )
+            filesByName.put(source.getName(), source.getFile());
+
+        final List<File> inputs = new ArrayList<>(variants.size());
+        for ( final RodBinding<VariantContext> variant : variants ) {
+            final File input = filesByName.get(variant.getName());
+            if ( input == null )
+                throw new ReviewedGATKException("The engine has no data source for the input " + variant.getName());
+            inputs.add(input);
+        }
+        return inputs;
+    }
+
+    /**
+     * @return the headers of the inputs, in input order
+     */
+    public List<VCFHeader> getHeaders() {
+        final List<VCFHeader> headers = new ArrayList<>(readers.size());
+        for ( final FeatureReader<VariantContext> reader : readers )
+            headers.add((VCFHeader)reader.getHeader());
+        return headers;
+    }
+
+    /**
+     * Merge the records of one interval
+     *
+     * As with a RodWalker, records starting before the interval are not merged, and the combiner keeps its active
+     * records from one interval to the next.
+     *
+     * @param interval         the interval to merge, intervals must be merged in coordinate order
+     * @param combiner         the combiner to feed
+     * @param reference        the reference, used for the bases at and right after each position fed to the combiner
+     * @param genomeLocParser  the genome loc parser
+     */
+    public void merge(final GenomeLoc interval, final GVCFBlockCombiner combiner, final ReferenceSequenceFile reference, final GenomeLocParser genomeLocParser) {
+        final String contig = interval.getContig();
+        final PriorityQueue<Cursor> cursors = new PriorityQueue<>(readers.size());
+        final List<CloseableTribbleIterator<VariantContext>> iterators = new ArrayList<>(readers.size());
+
+        try {
+            // the last position covered by a record seen so far; the records starting before the interval count too
+            int coveredUpTo = 0;
+            for ( int i = 0; i < readers.size(); i++ ) {
+                final CloseableTribbleIterator<VariantContext> iterator = readers.get(i).query(contig, interval.getStart(), interval.getStop());
+                iterators.add(iterator);
+                final Cursor cursor = new Cursor(i, iterator);
+                while ( cursor.vc != null && cursor.vc.getStart() < interval.getStart() ) {
+                    coveredUpTo = Math.max(coveredUpTo, cursor.vc.getEnd());
+                    cursor.advance();
+                }
+                if ( cursor.vc != null )
+                    cursors.add(cursor);
+            }
+
+            int position = interval.getStart();
+            while ( true ) {
+                final int nextStart = cursors.isEmpty() ? Integer.MAX_VALUE : cursors.peek().vc.getStart();
+                int next = Math.min(nextStart, combiner.nextBreakPosition(position));
+                // a locus traversal only visits the positions covered by some record, so neither do we
+                if ( next > coveredUpTo )
+                    next = nextStart;
+                if ( next > interval.getStop() )
+                    break;
+
+                final List<VariantContext> startingVCs = new ArrayList<>();
+                while ( ! cursors.isEmpty() && cursors.peek().vc.getStart() == next ) {
+                    final Cursor cursor = cursors.poll();
+                    startingVCs.add(cursor.vc);
+                    coveredUpTo = Math.max(coveredUpTo, cursor.vc.getEnd());
+                    if ( cursor.advance() )
+                        cursors.add(cursor);
+                }
+
+                combiner.add(new GVCFBlockCombiner.PositionalState(startingVCs, getReferenceBases(reference, contig, next), genomeLocParser.createGenomeLoc(contig, next)));
+                position = next + 1;
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile("Failed to query the input gVCFs " + inputs + " over " + interval, e);
+        } finally {
+            for ( final CloseableTribbleIterator<VariantContext> iterator : iterators )
+                iterator.close();
+        }
+    }
+
+    /**
+     * @return the reference bases at position and right after it, like the ones of the reference window of CombineGVCFs
+     */
+    static byte[] getReferenceBases(final ReferenceSequenceFile reference, final String contig, final int position) {
+        final int contigLength = reference.getSequenceDictionary().getSequence(contig).getSequenceLength();
+        return reference.getSubsequenceAt(contig, position, Math.min(position + 1, contigLength)).getBases();
+    }
+
+    @Override
+    public void close() {
+        for ( final FeatureReader<VariantContext> reader : readers ) {
+            try {
+                reader.close();
+            } catch ( IOException e ) {
+                // nothing left to read from it anyway
+            }
+        }
+    }
+
+    /**
+     * The next record of one input; records starting at the same position are ordered by input, like the ROD tracker does
+     */
+    private final static class Cursor implements Comparable<Cursor> {
+        final int input;
+        final Iterator<VariantContext> iterator;
+        VariantContext vc;
+
+        Cursor(final int input, final Iterator<VariantContext> iterator) {
+            this.input = input;
+            this.iterator = iterator;
+            advance();
+        }
+
+        boolean advance() {
+            vc = iterator.hasNext() ? iterator.next() : null;
+            return vc != null;
+        }
+
+        @Override
+        public int compareTo(final Cursor other) {
+            final int byStart = Integer.compare(vc.getStart(), other.vc.getStart());
+            return byStart != 0 ? byStart : Integer.compare(input, other.input);
+        }
+    }
+}
@@ -61,6 +61,7 @@ import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -188,14 +189,8 @@ public class GVCFWriter implements VariantContextWriter {
      */
     protected VariantContext addHomRefSite(final VariantContext vc, final Genotype g) {
 
-        if ( nextAvailableStart != -1 ) {
-            // don't create blocks while the hom-ref site falls before nextAvailableStart (for deletions)
-            if ( vc.getStart() <= nextAvailableStart && vc.getChr().equals(contigOfNextAvailableStart) )
-                return null;
-            // otherwise, reset to non-relevant
-            nextAvailableStart = -1;
-            contigOfNextAvailableStart = null;
-        }
+        if ( isSpannedByPreviousVariant(vc.getChr(), vc.getStart()) )
+            return null;
 
         final VariantContext result;
         if (genotypeCanBeMergedInCurrentBlock(g)) {
@@ -208,6 +203,59 @@ public class GVCFWriter implements VariantContextWriter {
         return result;
     }
 
+    /**
+     * Add a run of hom-ref sites to this gVCF hom-ref state tracking, emitting any completed band
+     *
+     * This is equivalent to adding each of its sites as a single-position VariantContext, but never creates one.
+     *
+     * @param sites a non-null run of sites
+     */
+    public void add(final HomRefSites sites) {
+        if ( sites == null ) throw new IllegalArgumentException("sites cannot be null");
+
+        if ( sampleName == null )
+            sampleName = sites.getSampleName();
+
+        final String contig = sites.getContig();
+        final int ploidy = sites.getPloidy();
+        final int PLCount = sites.getPLCount();
+        final int[] PLs = sites.getPLs();
+        for ( int i = 0; i < sites.size(); i++ ) {
+            final int pos = sites.getStart() + i;
+            if ( currentBlock != null && ! currentBlock.isContiguous(contig, pos) )
+                emitCurrentBlock();
+            if ( isSpannedByPreviousVariant(contig, pos) )
+                continue;
+
+            final int GQ = sites.getGQ(i);
+            if ( currentBlock == null || ! currentBlock.withinBounds(GQ) || currentBlock.getPloidy() != ploidy
+                    || (currentBlock.getMinPLs() != null && currentBlock.getMinPLs().length != PLCount) ) {
+                emitCurrentBlock();
+                final HomRefBlock partition = findPartition(GQ);
+                if ( partition == null )
+                    throw new IllegalStateException("GQ " + GQ + " at " + contig + ":" + pos + " didn't fit into any partition");
+                currentBlock = new HomRefBlock(sites.getSource(), contig, pos, sites.getRefAllele(i), ploidy, partition.getGQLowerBound(), partition.getGQUpperBound());
+            }
+            final int DP = Math.max(sites.getDP(i), 0);
+            currentBlock.add(pos, GQ, DP, Math.min(DP, sites.getMinDP(i)), PLs, i * PLCount, PLCount);
+        }
+    }
+
+    /**
+     * Should a hom-ref site be dropped because a previously emitted variant (e.g. a deletion) spans it?
+     */
+    private boolean isSpannedByPreviousVariant(final String contig, final int start) {
+        if ( nextAvailableStart != -1 ) {
+            // don't create blocks while the hom-ref site falls before nextAvailableStart (for deletions)
+            if ( start <= nextAvailableStart && contig.equals(contigOfNextAvailableStart) )
+                return true;
+            // otherwise, reset to non-relevant
+            nextAvailableStart = -1;
+            contigOfNextAvailableStart = null;
+        }
+        return false;
+    }
+
     private boolean genotypeCanBeMergedInCurrentBlock(final Genotype g) {
         return currentBlock != null && currentBlock.withinBounds(g.getGQ()) && currentBlock.getPloidy() == g.getPloidy()
                 && (currentBlock.getMinPLs() == null || !g.hasPL() || (currentBlock.getMinPLs().length == g.getPL().length));
@@ -235,7 +283,9 @@ public class GVCFWriter implements VariantContextWriter {
     private VariantContext blockToVCF(final HomRefBlock block) {
         if ( block == null ) return null;
 
-        final VariantContextBuilder vcb = new VariantContextBuilder(block.getStartingVC());
+        final VariantContextBuilder vcb = block.getStartingVC() != null ? new VariantContextBuilder(block.getStartingVC())
+                : new VariantContextBuilder(block.getSource(), block.getContig(), block.getStart(), block.getStop(),
+                        Arrays.asList(block.getRef(), GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE));
         vcb.attributes(new HashMap<String, Object>(2)); // clear the attributes
         vcb.stop(block.getStop());
         vcb.attribute(VCFConstants.END_KEY, block.getStop());
@@ -286,14 +336,7 @@ public class GVCFWriter implements VariantContextWriter {
      */
     private HomRefBlock createNewBlock(final VariantContext vc, final Genotype g) {
         // figure out the GQ limits to use based on the GQ of g
-        HomRefBlock partition = null;
-        for ( final HomRefBlock maybePartition : GQPartitions ) {
-            if ( maybePartition.withinBounds(g.getGQ()) ) {
-                partition = maybePartition;
-                break;
-            }
-        }
-
+        final HomRefBlock partition = findPartition(g.getGQ());
         if ( partition == null )
             throw new IllegalStateException("GQ " + g + " from " + vc + " didn't fit into any partition");
 
@@ -303,10 +346,20 @@ public class GVCFWriter implements VariantContextWriter {
         return block;
     }
 
+    /**
+     * @return the GQ partition GQ falls into, or null if none
+     */
+    private HomRefBlock findPartition(final int GQ) {
+        for ( final HomRefBlock partition : GQPartitions )
+            if ( partition.withinBounds(GQ) )
+                return partition;
+        return null;
+    }
+
     /**
      * Add a VariantContext to this writer for emission
      *
-     * Requires that the VC have exactly one genotype
+     * Requires that the VC have exactly one genotype, unless it's a run of sites packed by {@link HomRefSites#toVariantContext()}
      *
      * @param vc a non-null VariantContext
      */
@@ -314,6 +367,12 @@ public class GVCFWriter implements VariantContextWriter {
     public void add(VariantContext vc) {
         if ( vc == null ) throw new IllegalArgumentException("vc cannot be null");
 
+        final HomRefSites packedSites = HomRefSites.fromVariantContext(vc);
+        if ( packedSites != null ) {
+            add(packedSites);
+            return;
+        }
+
         if ( sampleName == null )
             sampleName = vc.getGenotype(0).getSampleName();
 
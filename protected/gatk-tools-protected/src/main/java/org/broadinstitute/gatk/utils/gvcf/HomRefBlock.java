@@ -55,10 +55,9 @@ import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFHeaderLine;
-import org.broadinstitute.gatk.utils.MathUtils;
+import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Helper class for calculating a GQ band in the GVCF writer
@@ -74,11 +73,16 @@ import java.util.List;
  */
 final class HomRefBlock {
     private final VariantContext startingVC;
+    private final String source;
+    private final String contig;
+    private final int start;
     private int stop;
     private final int minGQ, maxGQ;
     private int[] minPLs = null;
-    final private List<Integer> GQs = new ArrayList<>(100);
-    final private List<Integer> DPs = new ArrayList<>(100);
+    private int minDP = Integer.MAX_VALUE;
+    private int size = 0;
+    private int[] GQs = new int[100];
+    private int[] DPs = new int[100];
     private final Allele ref;
     private final int ploidy;
 
@@ -94,13 +98,43 @@ final class HomRefBlock {
         if ( minGQ > maxGQ ) throw new IllegalArgumentException("bad minGQ " + minGQ + " as its > maxGQ " + maxGQ);
 
         this.startingVC = startingVC;
-        this.stop = getStart() - 1;
+        this.source = startingVC.getSource();
+        this.contig = startingVC.getChr();
+        this.start = startingVC.getStart();
+        this.stop = start - 1;
         this.ref = startingVC.getReference();
         this.minGQ = minGQ;
         this.maxGQ = maxGQ;
         this.ploidy = startingVC.getMaxPloidy(defaultPloidy);
     }
 
+    /**
+     * Create a new HomRefBlock starting at a site that has no VariantContext of its own
+     *
+     * @param source the source of the band's VariantContext
+     * @param contig the contig of the band
+     * @param start the first position of the band
+     * @param ref the reference allele at start
+     * @param ploidy the ploidy of the genotypes in the band
+     * @param minGQ the minGQ (inclusive) to use in this band
+     * @param maxGQ the maxGQ (exclusive) to use in this band
+     */
+    public HomRefBlock(final String source, final String contig, final int start, final Allele ref, final int ploidy, final int minGQ, final int maxGQ) {
+        if ( contig == null ) throw new IllegalArgumentException("contig cannot be null");
+        if ( ref == null || ! ref.isReference() ) throw new IllegalArgumentException("ref must be a reference allele");
+        if ( minGQ > maxGQ ) throw new IllegalArgumentException("bad minGQ " + minGQ + " as its > maxGQ " + maxGQ);
+
+        this.startingVC = null;
+        this.source = source;
+        this.contig = contig;
+        this.start = start;
+        this.stop = start - 1;
+        this.ref = ref;
+        this.minGQ = minGQ;
+        this.maxGQ = maxGQ;
+        this.ploidy = ploidy;
+    }
+
     /**
      * Create a new HomRefBlock only for doing bounds checking
      *
@@ -111,6 +145,9 @@ final class HomRefBlock {
         if ( minGQ > maxGQ ) throw new IllegalArgumentException("bad minGQ " + minGQ + " as its > maxGQ " + maxGQ);
 
         this.startingVC = null;
+        this.source = null;
+        this.contig = null;
+        this.start = 0;
         this.stop = -1;
         this.ref = null;
         this.minGQ = minGQ;
@@ -126,23 +163,48 @@ final class HomRefBlock {
         if ( g == null ) throw new IllegalArgumentException("g cannot be null");
         if ( ! g.hasGQ() ) throw new IllegalArgumentException("g must have GQ field");
         if ( ! g.hasPL() ) throw new IllegalArgumentException("g must have PL field");
-        if ( pos != stop + 1 ) throw new IllegalArgumentException("adding genotype at pos " + pos + " isn't contiguous with previous stop " + stop);
         if ( g.getPloidy() != ploidy)
             throw new IllegalArgumentException("cannot add a genotype with a different ploidy: " + g.getPloidy() + " != " + ploidy);
 
+        final int DP = Math.max(g.getDP(),0);
+        // a site summarizing several positions (e.g. from an activity map) carries its own MIN_DP
+        final Object siteMinDP = g.getExtendedAttribute(GATKVCFConstants.MIN_DP_FORMAT_KEY);
+        final int[] PLs = g.getPL();
+        add(pos, g.getGQ(), DP, siteMinDP == null ? DP : Math.min(DP, Integer.parseInt(siteMinDP.toString())), PLs, 0, PLs.length);
+    }
+
+    /**
+     * Add the values of a single hom-ref site to this band
+     *
+     * @param pos the position of the site, must be just after the current end of the band
+     * @param GQ the GQ of the site
+     * @param DP the (non-negative) depth of the site
+     * @param siteMinDP the minimum depth of the site, differs from DP when the site summarizes several positions
+     * @param PLs array holding the PLs of the site
+     * @param PLOffset position of the first PL of the site in {@code PLs}
+     * @param PLCount number of PLs of the site
+     */
+    public void add(final int pos, final int GQ, final int DP, final int siteMinDP, final int[] PLs, final int PLOffset, final int PLCount) {
+        if ( pos != stop + 1 ) throw new IllegalArgumentException("adding genotype at pos " + pos + " isn't contiguous with previous stop " + stop);
+
         if( minPLs == null )
-            minPLs = g.getPL();
+            minPLs = Arrays.copyOfRange(PLs, PLOffset, PLOffset + PLCount);
         else { // otherwise take the min with the provided genotype's PLs
-            final int[] PL = g.getPL();
-            if (PL.length != minPLs.length)
-                throw new IllegalStateException("trying to merge different PL array sizes: " + PL.length + " != " + minPLs.length);
-            for (int i = 0; i < PL.length; i++)
-                if (minPLs[i] > PL[i])
-                    minPLs[i] = PL[i];
+            if (PLCount != minPLs.length)
+                throw new IllegalStateException("trying to merge different PL array sizes: " + PLCount + " != " + minPLs.length);
+            for (int i = 0; i < PLCount; i++)
+                if (minPLs[i] > PLs[PLOffset + i])
+                    minPLs[i] = PLs[PLOffset + i];
         }
         stop = pos;
-        GQs.add(Math.min(g.getGQ(), 99)); // cap the GQs by the max. of 99 emission
-        DPs.add(Math.max(g.getDP(),0));
+        if ( size == GQs.length ) {
+            GQs = Arrays.copyOf(GQs, size << 1);
+            DPs = Arrays.copyOf(DPs, size << 1);
+        }
+        GQs[size] = Math.min(GQ, 99); // cap the GQs by the max. of 99 emission
+        DPs[size] = DP;
+        size++;
+        minDP = Math.min(minDP, siteMinDP);
     }
 
     /**
@@ -155,25 +217,52 @@ final class HomRefBlock {
     }
 
     /** Get the min GQ observed within this band */
-    public int getMinGQ() { return MathUtils.arrayMin(GQs); }
+    public int getMinGQ() {
+        if ( size == 0 ) throw new IllegalArgumentException("Array must be non-null and non-empty");
+        int min = GQs[0];
+        for ( int i = 1; i < size; i++ )
+            if ( GQs[i] < min ) min = GQs[i];
+        return min;
+    }
     /** Get the median GQ observed within this band */
-    public int getMedianGQ() { return MathUtils.median(GQs); }
+    public int getMedianGQ() { return median(GQs, size); }
     /** Get the min DP observed within this band */
-    public int getMinDP() { return MathUtils.arrayMin(DPs); }
+    public int getMinDP() { return minDP; }
     /** Get the median DP observed within this band */
-    public int getMedianDP() { return MathUtils.median(DPs); }
+    public int getMedianDP() { return median(DPs, size); }
     /** Get the min PLs observed within this band, can be null if no PLs have yet been observed */
     public int[] getMinPLs() { return minPLs; }
 
+    /**
+     * Same definition of median as {@link org.broadinstitute.gatk.utils.MathUtils#median}, that is, the element at
+     * position size / 2 once sorted.
+     */
+    private static int median(final int[] values, final int size) {
+        if ( size == 0 ) throw new IllegalArgumentException("Array cannot have size 0");
+        final int[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        return sorted[size / 2];
+    }
+
     protected int getGQUpperBound() { return maxGQ; }
     protected int getGQLowerBound() { return minGQ; }
 
     public boolean isContiguous(final VariantContext vc) {
-        return vc.getEnd() == getStop() + 1 && startingVC.getChr().equals(vc.getChr());
+        return isContiguous(vc.getChr(), vc.getEnd());
+    }
+
+    /**
+     * Would a site ending at end on contig extend this band?
+     */
+    public boolean isContiguous(final String contig, final int end) {
+        return end == getStop() + 1 && this.contig.equals(contig);
     }
 
+    /** The VariantContext that started this band, or null if it was started from a site without one */
     public VariantContext getStartingVC() { return startingVC; }
-    public int getStart() { return startingVC.getStart(); }
+    public String getSource() { return source; }
+    public String getContig() { return contig; }
+    public int getStart() { return start; }
     public int getStop() { return stop; }
     public Allele getRef() { return ref; }
     public int getSize() { return getStop() - getStart() + 1; }
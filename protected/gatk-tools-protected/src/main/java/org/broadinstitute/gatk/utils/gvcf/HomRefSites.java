@@ -0,0 +1,209 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+
+package org.broadinstitute.gatk.utils.gvcf;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
+import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
+
+import java.util.Arrays;
+
+/**
+ * A run of contiguous hom-ref sites of a single sample, with the values the GVCF writer needs of each site kept in
+ * primitive arrays
+ *
+ * Most of what the reference confidence model produces in GVCF mode ends up folded into GQ bands, so instead of
+ * building a VariantContext per site, producers append the sites to one of these and hand the run to the writer
+ * packed into a single VariantContext (see {@link #toVariantContext()}).  {@link GVCFWriter} feeds the sites
+ * straight into its band compressor, so only band boundaries ever become VariantContexts.
+ *
+ * The packed VariantContext is only meaningful to the GVCFWriter; it must not be written anywhere else.
+ */
+public final class HomRefSites {
+    /**
+     * In-memory attribute of the packed VariantContext holding the run
+     */
+    public static final String PACKED_SITES_KEY = "HOM_REF_SITES";
+
+    private final String source;
+    private final String sampleName;
+    private final String contig;
+    private final int start;
+    private final int ploidy;
+    private final int PLCount;
+
+    private int size = 0;
+    private byte[] refBases;
+    private int[] GQs;
+    private int[] DPs;
+    private int[] minDPs;
+    private int[] PLs;
+
+    /**
+     * Create a new empty run
+     *
+     * @param source the source of the VariantContexts the run stands for
+     * @param sampleName the sample the sites belong to
+     * @param contig the contig of the sites
+     * @param start the position of the first site of the run
+     * @param ploidy the ploidy of the sample
+     * @param expectedSize how many sites are expected to be added
+     */
+    public HomRefSites(final String source, final String sampleName, final String contig, final int start, final int ploidy, final int expectedSize) {
+        if ( sampleName == null ) throw new IllegalArgumentException("sampleName cannot be null");
+        if ( contig == null ) throw new IllegalArgumentException("contig cannot be null");
+        if ( start < 1 ) throw new IllegalArgumentException("start must be 1 or greater but got " + start);
+        if ( ploidy < 1 ) throw new IllegalArgumentException("ploidy must be 1 or greater but got " + ploidy);
+
+        this.source = source;
+        this.sampleName = sampleName;
+        this.contig = contig;
+        this.start = start;
+        this.ploidy = ploidy;
+        this.PLCount = ploidy + 1; // hom-ref vs. <NON_REF> genotypes
+        final int capacity = Math.max(1, expectedSize);
+        refBases = new byte[capacity];
+        GQs = new int[capacity];
+        DPs = new int[capacity];
+        minDPs = new int[capacity];
+        PLs = new int[capacity * PLCount];
+    }
+
+    /**
+     * Append the site following the current end of the run
+     *
+     * @param refBase the reference base at the site
+     * @param GQ the GQ of the site
+     * @param DP the depth of the site
+     * @param minDP the minimum depth of the site, which only differs from DP for sites summarizing several positions
+     * @param sitePLs the ploidy + 1 PLs of the site, copied
+     */
+    public void add(final byte refBase, final int GQ, final int DP, final int minDP, final int[] sitePLs) {
+        if ( sitePLs == null || sitePLs.length != PLCount )
+            throw new IllegalArgumentException("expected " + PLCount + " PLs for ploidy " + ploidy + " but got " + (sitePLs == null ? null : sitePLs.length));
+
+        if ( size == GQs.length ) {
+            final int capacity = size << 1;
+            refBases = Arrays.copyOf(refBases, capacity);
+            GQs = Arrays.copyOf(GQs, capacity);
+            DPs = Arrays.copyOf(DPs, capacity);
+            minDPs = Arrays.copyOf(minDPs, capacity);
+            PLs = Arrays.copyOf(PLs, capacity * PLCount);
+        }
+        refBases[size] = refBase;
+        GQs[size] = GQ;
+        DPs[size] = DP;
+        minDPs[size] = minDP;
+        System.arraycopy(sitePLs, 0, PLs, size * PLCount, PLCount);
+        size++;
+    }
+
+    /**
+     * Pack this run into a single VariantContext spanning all of its sites, to travel along regular VariantContexts
+     * to a {@link GVCFWriter}
+     *
+     * @return a non-null VariantContext
+     */
+    public VariantContext toVariantContext() {
+        if ( size == 0 ) throw new IllegalStateException("cannot pack an empty run of sites");
+        final Allele ref = getRefAllele(0);
+        return new VariantContextBuilder(source, contig, start, getStop(), Arrays.asList(ref, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .attribute(VCFConstants.END_KEY, getStop())
+                .attribute(PACKED_SITES_KEY, this)
+                .genotypes(new GenotypeBuilder(sampleName, GATKVariantContextUtils.homozygousAlleleList(ref, ploidy)).make())
+                .make();
+    }
+
+    /**
+     * Get the run packed into a VariantContext by {@link #toVariantContext()}
+     *
+     * @param vc a non-null VariantContext
+     * @return the run packed in vc, or null if vc is a regular VariantContext
+     */
+    public static HomRefSites fromVariantContext(final VariantContext vc) {
+        final Object sites = vc.getAttribute(PACKED_SITES_KEY);
+        return sites instanceof HomRefSites ? (HomRefSites) sites : null;
+    }
+
+    public String getSource() { return source; }
+    public String getSampleName() { return sampleName; }
+    public String getContig() { return contig; }
+    public int getPloidy() { return ploidy; }
+    public int getStart() { return start; }
+    public int getStop() { return start + size - 1; }
+    /** Get the number of sites in this run */
+    public int size() { return size; }
+    /** Get the number of PLs of each site */
+    public int getPLCount() { return PLCount; }
+
+    public Allele getRefAllele(final int i) { return Allele.create(refBases[i], true); }
+    public int getGQ(final int i) { return GQs[i]; }
+    public int getDP(final int i) { return DPs[i]; }
+    public int getMinDP(final int i) { return minDPs[i]; }
+
+    /**
+     * Get the PLs of all sites, back to back, the ones of site i starting at i * {@link #getPLCount()}
+     *
+     * @return the internal array, which is not to be modified and may be longer than needed
+     */
+    public int[] getPLs() { return PLs; }
+
+    @Override
+    public String toString() {
+        return "HomRefSites{" + sampleName + " at " + contig + ":" + start + "-" + getStop() + '}';
+    }
+}
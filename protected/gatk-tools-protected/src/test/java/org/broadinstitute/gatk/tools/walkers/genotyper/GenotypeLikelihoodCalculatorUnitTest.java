@@ -169,6 +169,41 @@ public class GenotypeLikelihoodCalculatorUnitTest {
         }
     }
 
+    @Test(dataProvider = "randomAccessPloidyAndMaximumAlleleData")
+    public void testGenotypeAlleleCountsAtRandomAccess(final int ploidy, final int alleleCount) {
+        final GenotypeLikelihoodCalculator calculator = GenotypeLikelihoodCalculators.getInstance(ploidy, alleleCount);
+        final GenotypeAlleleCounts[] sequential = new GenotypeAlleleCounts[calculator.genotypeCount()];
+        GenotypeAlleleCounts alleleCounts = GenotypeAlleleCounts.first(ploidy);
+        for (int i = 0; i < sequential.length; i++) {
+            sequential[i] = alleleCounts;
+            alleleCounts = alleleCounts.next();
+        }
+
+        final Random rnd = Utils.getRandomGenerator();
+        for (int i = 0; i < 1000; i++) {
+            final int index = rnd.nextInt(sequential.length);
+            final GenotypeAlleleCounts randomAccess = calculator.genotypeAlleleCountsAt(index);
+            Assert.assertEquals(randomAccess, sequential[index]);
+            Assert.assertEquals(randomAccess.index(), index);
+            // the result is the caller's own copy
+            randomAccess.increase();
+            Assert.assertEquals(calculator.genotypeAlleleCountsAt(index), sequential[index]);
+        }
+    }
+
+    @Test
+    public void testGenotypeCountOverflow() {
+        Assert.assertEquals(GenotypeLikelihoodCalculators.genotypeCount(200, 20), GenotypeLikelihoodCalculators.GENOTYPE_COUNT_OVERFLOW);
+        Assert.assertEquals(GenotypeLikelihoodCalculators.genotypeCount(400, 40), GenotypeLikelihoodCalculators.GENOTYPE_COUNT_OVERFLOW);
+        // the smaller counts are still there after the tables grew
+        Assert.assertEquals(GenotypeLikelihoodCalculators.genotypeCount(2, 3), 6);
+        Assert.assertEquals(GenotypeLikelihoodCalculators.genotypeCount(40, 6), 1221759);
+    }
+
+    @DataProvider(name="randomAccessPloidyAndMaximumAlleleData")
+    public Object[][] randomAccessPloidyAndMaximumAlleleData() {
+        return new Object[][] { { 0, 3 }, { 1, 50 }, { 2, 6 }, { 10, 6 }, { 40, 4 } };
+    }
 
     // Simple inefficient calculation of the genotype count given the ploidy.
     private int calculateGenotypeCount(final int ploidy, final int alleleCount) {
@@ -56,17 +56,24 @@ package org.broadinstitute.gatk.tools.walkers.genotyper;
 
 
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.GenotypeLikelihoods;
+import htsjdk.variant.variantcontext.GenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
 import org.broadinstitute.gatk.engine.arguments.GATKArgumentCollection;
+import org.broadinstitute.gatk.tools.walkers.genotyper.afcalc.AFCalculatorImplementation;
 import org.broadinstitute.gatk.tools.walkers.genotyper.afcalc.FixedAFCalculatorProvider;
 import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.genotyper.SampleList;
+import org.broadinstitute.gatk.utils.baq.BAQ;
+import org.broadinstitute.gatk.utils.genotyper.IndexedSampleList;
 import org.broadinstitute.gatk.utils.genotyper.SampleListUtils;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
@@ -137,4 +144,67 @@ public class UnifiedGenotyperEngineUnitTest extends BaseTest {
         }
     }
 
-}
\ No newline at end of file
+    @DataProvider(name = "SampleThreads")
+    public Object[][] makeSampleThreads() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final int altAlleleCount : Arrays.asList(1, 2, 3) )
+            for ( final int sampleCount : Arrays.asList(999, 1200, 3001) )
+                tests.add(new Object[]{AFCalculatorImplementation.EXACT_INDEPENDENT, 2, altAlleleCount, sampleCount, 500});
+        // non-diploid calls go through the general ploidy calculators, which subset the genotypes on their own;
+        // these are much slower so use fewer samples per thread
+        for ( final AFCalculatorImplementation afCalculator : Arrays.asList(AFCalculatorImplementation.EXACT_GENERAL_PLOIDY, AFCalculatorImplementation.EXACT_GENERAL_INDEPENDENT) )
+            for ( final int altAlleleCount : Arrays.asList(1, 2, 3) )
+                tests.add(new Object[]{afCalculator, 3, altAlleleCount, 47, 10});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "SampleThreads")
+    public void testSampleThreadsDoNotChangeCalls(final AFCalculatorImplementation afCalculator, final int ploidy, final int altAlleleCount, final int sampleCount,
+                                                  final int minSamplesPerThread) {
+        final Random random = new Random(sampleCount + altAlleleCount + 10 * ploidy);
+        final List<Allele> alleles = new ArrayList<>(Arrays.asList(Allele.create("A", true), Allele.create("C"), Allele.create("G"), Allele.create("T")).subList(0, altAlleleCount + 1));
+        final int plCount = GenotypeLikelihoods.numLikelihoods(alleles.size(), ploidy);
+
+        // samples are not in name order in the input, so that chunking by name is actually exercised
+        final List<String> sampleNames = new ArrayList<>(sampleCount);
+        for ( int i = 0; i < sampleCount; i++ )
+            sampleNames.add("sample" + i);
+        Collections.shuffle(sampleNames, random);
+
+        final GenotypesContext genotypes = GenotypesContext.create(sampleCount);
+        for ( final String sampleName : sampleNames ) {
+            final int[] pls = new int[plCount];
+            final int best = random.nextInt(5) == 0 ? random.nextInt(plCount) : 0;
+            for ( int i = 0; i < plCount; i++ )
+                pls[i] = i == best ? 0 : 1 + random.nextInt(60);
+            final GenotypeBuilder gb = new GenotypeBuilder(sampleName, Collections.nCopies(ploidy, Allele.NO_CALL));
+            genotypes.add(random.nextInt(50) == 0 ? gb.make() : gb.PL(pls).make());
+        }
+        final VariantContext vc = new VariantContextBuilder("test", "chr1", 1000, 1000, alleles).genotypes(genotypes).make();
+
+        final VariantContext serial = callWithSampleThreads(vc, sampleNames, afCalculator, ploidy, minSamplesPerThread, 1);
+        final VariantContext parallel = callWithSampleThreads(vc, sampleNames, afCalculator, ploidy, minSamplesPerThread, 4);
+        Assert.assertNotNull(serial);
+        Assert.assertNotNull(parallel);
+        Assert.assertEquals(parallel.getAlleles(), serial.getAlleles());
+        Assert.assertEquals(parallel.getLog10PError(), serial.getLog10PError());
+        Assert.assertEquals(parallel.getAttributes().toString(), serial.getAttributes().toString());
+        Assert.assertEquals(parallel.getNSamples(), serial.getNSamples());
+        for ( int i = 0; i < serial.getNSamples(); i++ )
+            Assert.assertEquals(parallel.getGenotype(i).toString(), serial.getGenotype(i).toString());
+    }
+
+    private VariantContext callWithSampleThreads(final VariantContext vc, final List<String> sampleNames, final AFCalculatorImplementation afCalculator,
+                                                 final int ploidy, final int minSamplesPerThread, final int sampleThreads) {
+        final UnifiedArgumentCollection args = new UnifiedArgumentCollection();
+        args.requestedAlleleFrequencyCalculationModel = afCalculator;
+        args.genotypeArgs.samplePloidy = ploidy;
+        args.genotypeArgs.sampleThreads = sampleThreads;
+        args.genotypeArgs.minSamplesPerThread = minSamplesPerThread;
+        args.genotypeArgs.STANDARD_CONFIDENCE_FOR_EMITTING = 0.0;
+        final GenomeLocParser genomeLocParser = new GenomeLocParser(ArtificialSAMUtils.createArtificialSamHeader(1, 1, 10000).getSequenceDictionary());
+        final UnifiedGenotypingEngine engine = new UnifiedGenotypingEngine(args, new IndexedSampleList(sampleNames), genomeLocParser,
+                new FixedAFCalculatorProvider(args, null, true), BAQ.CalculationMode.OFF);
+        return engine.calculateGenotypes(vc, GenotypeLikelihoodsCalculationModel.Model.SNP);
+    }
+}
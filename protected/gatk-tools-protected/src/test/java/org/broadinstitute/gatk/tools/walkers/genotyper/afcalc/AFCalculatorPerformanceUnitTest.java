@@ -136,4 +136,41 @@ public class AFCalculatorPerformanceUnitTest extends BaseTest {
         Assert.assertTrue(result.getnEvaluations() <= maxEvals,
                 "Actual number of evaluations " + result.getnEvaluations() + " > max number of evals " + minEvals);
     }
-}
\ No newline at end of file
+
+    @DataProvider(name = "ReuseTests")
+    public Object[][] makeReuseTests() {
+        List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final AFCalculatorImplementation model : Arrays.asList(AFCalculatorImplementation.EXACT_INDEPENDENT, AFCalculatorImplementation.EXACT_REFERENCE) )
+            for ( final int nAltAlleles : Arrays.asList(1, 2) )
+                tests.add(new Object[]{model, nAltAlleles});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "ReuseTests")
+    public void testCalculatorReuse(final AFCalculatorImplementation model, final int nAltAlleles) {
+        // calculators keep work space and cached values from one site to the next, which must not change any result
+        final AFCalculator reused = new AFCalculatorTestBuilder(1, nAltAlleles, model, AFCalculatorTestBuilder.PriorType.human).makeModel();
+        for ( final int nSamples : Arrays.asList(100, 5, 1, 30, 100) ) {
+            for ( final AFCalculatorTestBuilder.PriorType priorType : Arrays.asList(AFCalculatorTestBuilder.PriorType.human, AFCalculatorTestBuilder.PriorType.flat) ) {
+                final AFCalculatorTestBuilder testBuilder = new AFCalculatorTestBuilder(nSamples, nAltAlleles, model, priorType);
+                final double[] priors = testBuilder.makePriors();
+                for ( final int ac : Arrays.asList(0, 1, 3, 10) ) {
+                    final int[] ACs = new int[nAltAlleles];
+                    Arrays.fill(ACs, ac);
+                    if ( MathUtils.sum(ACs) >= nSamples * 2 )
+                        continue;
+                    final VariantContext vc = testBuilder.makeACTest(ACs, 0, 100);
+
+                    final AFCalculationResult expected = testBuilder.makeModel().getLog10PNonRef(vc, HomoSapiensConstants.DEFAULT_PLOIDY, nAltAlleles, priors);
+                    final AFCalculationResult actual = reused.getLog10PNonRef(vc, HomoSapiensConstants.DEFAULT_PLOIDY, nAltAlleles, priors);
+                    Assert.assertEquals(actual.getnEvaluations(), expected.getnEvaluations());
+                    Assert.assertEquals(actual.getAlleleCountsOfMLE(), expected.getAlleleCountsOfMLE());
+                    Assert.assertEquals(actual.getLog10LikelihoodOfAFGT0(), expected.getLog10LikelihoodOfAFGT0());
+                    Assert.assertEquals(actual.getLog10PosteriorOfAFGT0(), expected.getLog10PosteriorOfAFGT0());
+                    for ( final Allele alt : vc.getAlternateAlleles() )
+                        Assert.assertEquals(actual.getLog10PosteriorOfAFEq0ForAllele(alt), expected.getLog10PosteriorOfAFEq0ForAllele(alt));
+                }
+            }
+        }
+    }
+}
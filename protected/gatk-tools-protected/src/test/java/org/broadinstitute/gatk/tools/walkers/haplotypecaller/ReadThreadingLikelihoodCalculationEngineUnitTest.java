@@ -280,7 +280,10 @@ public class ReadThreadingLikelihoodCalculationEngineUnitTest extends ActiveRegi
 
                    // Change clipped by unclipped in the resulting likelihood map.
                    for (final GATKSAMRecord r : clippedReads.keySet()) {
-                       loglessLks.getLikelihoodReadMap().put(r,loglessLks.getLikelihoodReadMap().remove(clippedReads.get(r)));
+                       final Map<Allele,Double> clippedLikelihoods = loglessLks.remove(clippedReads.get(r));
+                       if (clippedLikelihoods != null)
+                           for (final Map.Entry<Allele,Double> entry : clippedLikelihoods.entrySet())
+                               loglessLks.add(r, entry.getKey(), entry.getValue());
                    }
                    final List<Haplotype> haplotypes = dataSet.haplotypeList();
                    final Map<Haplotype,Allele> alleleByHaplotype = new HashMap<>(haplotypes.size());
@@ -62,6 +62,7 @@ import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
 import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
 import org.broadinstitute.gatk.utils.genotyper.SampleList;
 import org.broadinstitute.gatk.utils.genotyper.SampleListUtils;
+import org.broadinstitute.gatk.utils.gvcf.HomRefSites;
 import org.broadinstitute.gatk.utils.haplotype.Haplotype;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileupImpl;
@@ -367,6 +368,44 @@ public class ReferenceConfidenceModelUnitTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testPackedRefConfidenceMatchesSites() {
+        final PloidyModel ploidyModel = new HomogeneousPloidyModel(samples,2);
+        final GenotypingModel genotypingModel = new InfiniteRandomMatingPopulationModel();
+        final RefConfData data = new RefConfData("ACGTAACCGGTT", 0);
+        final List<Haplotype> haplotypes = Arrays.asList(data.getRefHap());
+        data.getActiveRegion().add(data.makeRead(0, data.getRefLength()));
+        data.getActiveRegion().add(data.makeRead(2, 6));
+        final ReadLikelihoods<Haplotype> likelihoods = HaplotypeCaller.createDummyStratifiedReadMap(data.getRefHap(), samples, data.getActiveRegion());
+        final VariantContext vcMiddle = GATKVariantContextUtils.makeFromAlleles("test", "chr1", data.getStart() + 5, Arrays.asList("A", "C"));
+
+        for ( final List<VariantContext> calls : Arrays.asList(Collections.<VariantContext>emptyList(), Collections.singletonList(vcMiddle)) ) {
+            final List<VariantContext> sites = model.calculateRefConfidence(data.getRefHap(), haplotypes, data.getPaddedRefLoc(), data.getActiveRegion(), likelihoods, ploidyModel, genotypingModel, calls);
+            final List<VariantContext> packed = model.calculateRefConfidence(data.getRefHap(), haplotypes, data.getPaddedRefLoc(), data.getActiveRegion(), likelihoods, ploidyModel, genotypingModel, calls, true);
+            Assert.assertEquals(packed.size(), 2 * calls.size() + 1);
+
+            int site = 0;
+            for ( final VariantContext vc : packed ) {
+                final HomRefSites run = HomRefSites.fromVariantContext(vc);
+                if ( run == null ) {
+                    Assert.assertSame(vc, sites.get(site++));
+                    continue;
+                }
+                Assert.assertEquals(run.getSampleName(), sample);
+                for ( int i = 0; i < run.size(); i++ ) {
+                    final VariantContext expected = sites.get(site++);
+                    final Genotype g = expected.getGenotype(sample);
+                    Assert.assertEquals(run.getStart() + i, expected.getStart());
+                    Assert.assertEquals(run.getRefAllele(i), expected.getReference());
+                    Assert.assertEquals(run.getGQ(i), g.getGQ());
+                    Assert.assertEquals(run.getDP(i), g.getDP());
+                    Assert.assertEquals(Arrays.copyOfRange(run.getPLs(), i * run.getPLCount(), (i + 1) * run.getPLCount()), g.getPL());
+                }
+            }
+            Assert.assertEquals(site, sites.size());
+        }
+    }
+
     private void checkReferenceModelResult(final RefConfData data, final List<VariantContext> contexts, final List<Integer> expectedDPs, final List<VariantContext> calls) {
         Assert.assertNotNull(contexts);
 
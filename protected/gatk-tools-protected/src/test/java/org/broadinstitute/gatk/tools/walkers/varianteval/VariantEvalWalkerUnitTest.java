@@ -72,6 +72,9 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class VariantEvalWalkerUnitTest extends BaseTest {
@@ -176,7 +179,10 @@ public class VariantEvalWalkerUnitTest extends BaseTest {
 
     private void initialize(StratifiedEvalTestProvider cfg) {
         VEwalker.createStratificationStates(cfg.stratificationObjects, cfg.evaluationObjects);
+        applyEvals(cfg);
+    }
 
+    private void applyEvals(StratifiedEvalTestProvider cfg) {
         final RefMetaDataTracker tracker = new RefMetaDataTracker();
         final ReferenceContext ref = null;
         final VariantContext comp = null;
@@ -245,6 +251,47 @@ public class VariantEvalWalkerUnitTest extends BaseTest {
         checkStratificationCountsAreExpected(VEwalker.stratManager, cfg.expectedCounts);
     }
 
+    /**
+     * Checks that evaluating on several threads with per-thread evaluation contexts, and merging
+     * them at the end, gives the same counts as evaluating everything in the shared contexts
+     *
+     * @param cfg
+     */
+    @Test(dataProvider = "StratifiedEvalTestProvider")
+    public void testThreadLocalContexts(final StratifiedEvalTestProvider cfg) throws Exception {
+        final int nThreads = 3;
+        VEwalker.createStratificationStates(cfg.stratificationObjects, cfg.evaluationObjects);
+        VEwalker.enableThreadLocalContexts(cfg.evaluationObjects);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>(nThreads);
+            for ( int i = 0; i < nThreads; i++ ) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyEvals(cfg);
+                    }
+                }));
+            }
+            for ( final Future<?> future : futures )
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        // nothing reaches the shared contexts until the per-thread ones are merged
+        for ( final EvaluationContext nec : VEwalker.stratManager.values() )
+            for ( final VariantEvaluator ve : nec.getVariantEvaluators() )
+                Assert.assertEquals(((CounterEval)ve).count, 0);
+
+        VEwalker.mergeThreadLocalContexts();
+        final List<Integer> expectedCounts = new ArrayList<Integer>(cfg.expectedCounts.size());
+        for ( final int count : cfg.expectedCounts )
+            expectedCounts.add(count * nThreads);
+        checkStratificationCountsAreExpected(VEwalker.stratManager, expectedCounts);
+    }
+
     private final void checkStratificationCountsAreExpected(final StratificationManager<VariantStratifier, EvaluationContext> manager,
                                                             final List<Integer> expectedCounts) {
         for ( int key = 0; key < manager.size(); key++ ) {
@@ -0,0 +1,212 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+
+package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
+
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class VariantDataTableUnitTest extends BaseTest {
+    private static final GenomeLocParser genomeLocParser = new GenomeLocParser(ArtificialSAMUtils.createArtificialSamHeader(3, 1, 100000).getSequenceDictionary());
+
+    private static List<VariantDatum> makeData(final int n, final Random rand) {
+        final List<VariantDatum> data = new ArrayList<>(n);
+        for ( int i = 0; i < n; i++ ) {
+            final VariantDatum datum = new VariantDatum();
+            datum.annotations = new double[]{rand.nextGaussian(), rand.nextGaussian(), rand.nextGaussian()};
+            datum.isNull = new boolean[]{rand.nextBoolean(), false, rand.nextBoolean()};
+            datum.lod = rand.nextInt(5); // plenty of ties
+            datum.prior = rand.nextDouble();
+            datum.worstAnnotation = rand.nextInt(4) - 1;
+            datum.worstValue = rand.nextDouble();
+            datum.isKnown = rand.nextBoolean();
+            datum.atTruthSite = rand.nextBoolean();
+            datum.atTrainingSite = rand.nextBoolean();
+            datum.atAntiTrainingSite = rand.nextBoolean();
+            datum.isTransition = rand.nextBoolean();
+            datum.isSNP = rand.nextBoolean();
+            datum.failingSTDThreshold = rand.nextBoolean();
+            datum.isAggregate = rand.nextInt(4) == 0;
+            if ( !datum.isAggregate ) {
+                final int start = 1 + rand.nextInt(50);
+                datum.loc = genomeLocParser.createGenomeLoc("chr" + (1 + rand.nextInt(3)), start, start + rand.nextInt(3));
+            }
+            data.add(datum);
+        }
+        return data;
+    }
+
+    private static void assertRowEquals(final VariantDataTable table, final int row, final VariantDatum expected) {
+        final VariantDatum actual = table.toDatum(row);
+        Assert.assertEquals(actual.annotations, expected.annotations);
+        Assert.assertEquals(actual.isNull, expected.isNull);
+        Assert.assertEquals(actual.lod, expected.lod);
+        Assert.assertEquals(actual.prior, expected.prior);
+        Assert.assertEquals(actual.worstAnnotation, expected.worstAnnotation);
+        Assert.assertEquals(actual.worstValue, expected.worstValue);
+        Assert.assertEquals(actual.isKnown, expected.isKnown);
+        Assert.assertEquals(actual.atTruthSite, expected.atTruthSite);
+        Assert.assertEquals(actual.atTrainingSite, expected.atTrainingSite);
+        Assert.assertEquals(actual.atAntiTrainingSite, expected.atAntiTrainingSite);
+        Assert.assertEquals(actual.isTransition, expected.isTransition);
+        Assert.assertEquals(actual.isSNP, expected.isSNP);
+        Assert.assertEquals(actual.failingSTDThreshold, expected.failingSTDThreshold);
+        Assert.assertEquals(actual.isAggregate, expected.isAggregate);
+        Assert.assertEquals(actual.referenceAllele, expected.referenceAllele);
+        Assert.assertEquals(actual.alternateAllele, expected.alternateAllele);
+        Assert.assertEquals(table.hasLocation(row), expected.loc != null);
+        if ( expected.loc != null ) {
+            Assert.assertEquals(table.getContig(row), expected.loc.getContig());
+            Assert.assertEquals(table.getStart(row), expected.loc.getStart());
+            Assert.assertEquals(table.getStop(row), expected.loc.getStop());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final List<VariantDatum> data = makeData(100, new Random(1));
+        final VariantDataTable table = VariantDataTable.fromData(data);
+        Assert.assertEquals(table.size(), data.size());
+        Assert.assertEquals(table.getNumAnnotations(), 3);
+        for ( int row = 0; row < data.size(); row++ ) {
+            assertRowEquals(table, row, data.get(row));
+            Assert.assertEquals(table.hasNull(row), data.get(row).isNull[0] || data.get(row).isNull[2]);
+        }
+    }
+
+    @Test
+    public void testAddAll() {
+        final Random rand = new Random(2);
+        final List<VariantDatum> first = makeData(37, rand);
+        final List<VariantDatum> second = makeData(70, rand);
+        second.get(3).referenceAllele = Allele.create("A", true);
+        second.get(3).alternateAllele = Allele.create("C", false);
+
+        final VariantDataTable table = VariantDataTable.fromData(first);
+        table.addAll(VariantDataTable.fromData(second));
+        table.addAll(new VariantDataTable(3));
+
+        final List<VariantDatum> all = new ArrayList<>(first);
+        all.addAll(second);
+        Assert.assertEquals(table.size(), all.size());
+        for ( int row = 0; row < all.size(); row++ )
+            assertRowEquals(table, row, all.get(row));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAddWrongNumberOfAnnotations() {
+        new VariantDataTable(2).add(makeData(1, new Random(3)).get(0));
+    }
+
+    @Test
+    public void testPermuteAnnotations() {
+        final List<VariantDatum> data = makeData(10, new Random(4));
+        final VariantDataTable table = VariantDataTable.fromData(data);
+        table.permuteAnnotations(Arrays.asList(2, 0, 1));
+        for ( int row = 0; row < data.size(); row++ ) {
+            final VariantDatum datum = data.get(row);
+            Assert.assertEquals(table.getAnnotation(row, 0), datum.annotations[2]);
+            Assert.assertEquals(table.getAnnotation(row, 1), datum.annotations[0]);
+            Assert.assertEquals(table.getAnnotation(row, 2), datum.annotations[1]);
+            Assert.assertEquals(table.isNull(row, 0), datum.isNull[2]);
+            Assert.assertEquals(table.isNull(row, 1), datum.isNull[0]);
+            Assert.assertEquals(table.isNull(row, 2), datum.isNull[1]);
+        }
+    }
+
+    @Test
+    public void testSortByLodMatchesCollectionsSort() {
+        for ( final int n : new int[]{0, 1, 5, 8, 9, 100, 1000} ) {
+            final List<VariantDatum> data = makeData(n, new Random(n));
+            final VariantDataTable table = VariantDataTable.fromData(data);
+            final int[] rows = table.getAllRows();
+            VariantDataTable.sortRows(rows, table.lodComparator());
+
+            final List<VariantDatum> sorted = new ArrayList<>(data);
+            Collections.sort(sorted, new VariantDatum.VariantDatumLODComparator());
+            for ( int i = 0; i < n; i++ )
+                Assert.assertSame(data.get(rows[i]), sorted.get(i));
+        }
+    }
+
+    @Test
+    public void testSortByPositionMatchesGenomeLocOrder() {
+        final List<VariantDatum> data = new ArrayList<>();
+        for ( final VariantDatum datum : makeData(500, new Random(5)) )
+            if ( datum.loc != null )
+                data.add(datum);
+        final VariantDataTable table = VariantDataTable.fromData(data);
+        final int[] rows = table.getAllRows();
+        VariantDataTable.sortRows(rows, table.positionComparator());
+
+        final List<VariantDatum> sorted = new ArrayList<>(data);
+        Collections.sort(sorted, new Comparator<VariantDatum>() {
+            @Override
+            public int compare(final VariantDatum vd1, final VariantDatum vd2) {
+                return vd1.loc.compareTo(vd2.loc);
+            }
+        });
+        for ( int i = 0; i < data.size(); i++ )
+            Assert.assertSame(data.get(rows[i]), sorted.get(i));
+    }
+}
@@ -0,0 +1,260 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.CloseableTribbleIterator;
+import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.io.IOUtils;
+import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class CohortStoreUnitTest extends BaseTest {
+    private final static String CONTIG = "1";
+    private final static int CHUNK_SIZE = 10;
+
+    private final SAMSequenceDictionary dictionary = new SAMSequenceDictionary(Arrays.asList(
+            new SAMSequenceRecord(CONTIG, 1000), new SAMSequenceRecord("2", 1000)));
+    private File storeDirectory;
+
+    @BeforeMethod
+    public void setup() {
+        storeDirectory = new File(IOUtils.tempDir("cohortStore.", ""), "store");
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(storeDirectory.getParentFile());
+    }
+
+    private static VariantContext makeBlock(final String sample, final int start, final int end, final boolean withEnd) {
+        final Allele ref = Allele.create("A", true);
+        final Genotype g = new GenotypeBuilder(sample, Arrays.asList(ref, ref)).GQ(30).DP(12).PL(new int[]{0, 30, 60})
+                .attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, "9").make();
+        final VariantContextBuilder vcb = new VariantContextBuilder("test", CONTIG, start, end,
+                Arrays.asList(ref, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE)).genotypes(g);
+        if ( withEnd )
+            vcb.attribute(VCFConstants.END_KEY, String.valueOf(end));
+        return vcb.make();
+    }
+
+    private static VariantContext makeVariant(final String sample, final int start) {
+        final Allele ref = Allele.create("AC", true);
+        final Allele alt = Allele.create("A");
+        final Genotype g = new GenotypeBuilder(sample, Arrays.asList(ref, alt)).GQ(99).DP(20).AD(new int[]{11, 9, 0})
+                .PL(new int[]{200, 0, 250, 300, 280, 600}).attribute(GATKVCFConstants.STRAND_BIAS_BY_SAMPLE_KEY, "1,2,3,4").make();
+        return new VariantContextBuilder("test", CONTIG, start, start + 1, Arrays.asList(ref, alt, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .id("rs1").log10PError(-12.3).passFilters()
+                .attribute(VCFConstants.DEPTH_KEY, "20")
+                .attribute(GATKVCFConstants.MLE_ALLELE_COUNT_KEY, Arrays.asList("1", "0"))
+                .genotypes(g).make();
+    }
+
+    private static void assertSameRecord(final VariantContext actual, final VariantContext expected) {
+        Assert.assertEquals(actual.getChr(), expected.getChr());
+        Assert.assertEquals(actual.getStart(), expected.getStart());
+        Assert.assertEquals(actual.getEnd(), expected.getEnd());
+        Assert.assertEquals(actual.getAlleles(), expected.getAlleles());
+        Assert.assertEquals(actual.getID(), expected.getID());
+        Assert.assertEquals(actual.getLog10PError(), expected.getLog10PError());
+        Assert.assertEquals(actual.filtersWereApplied(), expected.filtersWereApplied());
+        Assert.assertEquals(actual.getFilters(), expected.getFilters());
+        Assert.assertEquals(actual.getAttributes(), expected.getAttributes());
+        Assert.assertEquals(actual.getGenotype(0).toString(), expected.getGenotype(0).toString());
+    }
+
+    @Test
+    public void testChunkRoundTrip() throws IOException {
+        final List<VariantContext> vcs = Arrays.asList(makeBlock("s1", 1, 10, true), makeVariant("s2", 1), makeBlock("s1", 11, 11, false));
+        final CohortStoreChunk chunk = CohortStoreChunk.decode(CohortStoreChunk.encode(vcs, new int[]{0, 1, 0}));
+
+        Assert.assertEquals(chunk.size(), vcs.size());
+        Assert.assertTrue(chunk.isReferenceBlock(0));
+        Assert.assertFalse(chunk.isReferenceBlock(1));
+        Assert.assertTrue(chunk.isReferenceBlock(2));
+        for ( int row = 0; row < vcs.size(); row++ ) {
+            Assert.assertEquals(chunk.getSample(row), row == 1 ? 1 : 0);
+            assertSameRecord(chunk.toVariantContext(row, CONTIG, row == 1 ? "s2" : "s1"), vcs.get(row));
+        }
+    }
+
+    private CohortStore makeStore() {
+        final CohortStore store = CohortStore.create(storeDirectory, dictionary, CHUNK_SIZE);
+        final VCFHeader header = new VCFHeader(new HashSet<VCFHeaderLine>(), Arrays.asList("A", "B"));
+
+        final CohortStoreBatchWriter first = store.startBatch(Arrays.asList("A", "B"), header);
+        first.add(makeBlock("A", 1, 25, true));
+        first.add(makeBlock("B", 1, 50, true));
+        first.add(makeVariant("A", 26));
+        first.add(makeBlock("A", 28, 100, true));
+        first.add(makeBlock("B", 51, 100, true));
+        first.close();
+
+        final CohortStoreBatchWriter second = store.startBatch(Collections.singletonList("C"), header);
+        second.add(makeBlock("C", 5, 60, true));
+        second.close();
+        return store;
+    }
+
+    private static List<VariantContext> collect(final CloseableTribbleIterator<VariantContext> it) {
+        final List<VariantContext> records = new ArrayList<>();
+        while ( it.hasNext() )
+            records.add(it.next());
+        it.close();
+        return records;
+    }
+
+    private static List<String> describe(final List<VariantContext> records) {
+        final List<String> descriptions = new ArrayList<>();
+        for ( final VariantContext vc : records )
+            descriptions.add(vc.getGenotype(0).getSampleName() + ":" + vc.getStart() + "-" + vc.getEnd());
+        return descriptions;
+    }
+
+    @Test
+    public void testQueryInterval() {
+        final CohortStore store = makeStore();
+        final List<VariantContext> records = collect(store.query(CONTIG, 20, 30, null));
+        store.close();
+
+        // the records overlapping the interval, in start order
+        Assert.assertEquals(describe(records), Arrays.asList("A:1-25", "B:1-50", "C:5-60", "A:26-27", "A:28-100"));
+        Assert.assertEquals(records.get(3).getNAlleles(), 3, "the variant of A should be returned at 26");
+    }
+
+    @Test
+    public void testQuerySamples() {
+        final CohortStore store = makeStore();
+        Assert.assertEquals(describe(collect(store.query(CONTIG, 1, 1000, Collections.singleton("C")))), Collections.singletonList("C:5-60"));
+        Assert.assertEquals(describe(collect(store.query(CONTIG, 60, 60, Arrays.asList("A", "C")))), Arrays.asList("C:5-60", "A:28-100"));
+        Assert.assertTrue(collect(store.query("2", 1, 1000, null)).isEmpty());
+        store.close();
+    }
+
+    @Test
+    public void testReopen() {
+        makeStore();
+        final CohortStore store = CohortStore.open(storeDirectory);
+        Assert.assertEquals(store.getNumBatches(), 2);
+        Assert.assertEquals(store.getSampleNames(), Arrays.asList("A", "B", "C"));
+        Assert.assertEquals(store.getChunkSize(), CHUNK_SIZE);
+        Assert.assertEquals(store.getBatchHeader(1).getGenotypeSamples(), Collections.singletonList("C"));
+        Assert.assertEquals(collect(store.query(CONTIG, 1, 1000, null)).size(), 6);
+        store.close();
+    }
+
+    /**
+     * @return the tags of a store binding restricted to samples, which are written to a samples file
+     */
+    private Tags makeSamplesTags(final String... samples) throws IOException {
+        final File samplesFile = new File(storeDirectory.getParentFile(), "samples.list");
+        FileUtils.writeLines(samplesFile, Arrays.asList(samples));
+        return new Tags() {
+            {
+                addKeyValueTag(CohortStoreCodec.SAMPLES_TAG, samplesFile.getPath());
+            }
+        };
+    }
+
+    @Test
+    public void testCodec() throws IOException {
+        makeStore().close();
+        final CohortStoreCodec codec = new CohortStoreCodec();
+        final File manifest = new File(storeDirectory, "manifest");
+        Assert.assertTrue(codec.canDecode(manifest.getPath()));
+        Assert.assertFalse(codec.canDecode(storeDirectory.getPath()));
+
+        final AbstractFeatureReader reader = codec.createFeatureSource(manifest, makeSamplesTags("C", "A")).first;
+
+        // the samples keep the order of the store, and the records of the other samples are left out
+        Assert.assertEquals(((VCFHeader)reader.getHeader()).getGenotypeSamples(), Arrays.asList("A", "C"));
+        @SuppressWarnings("unchecked")
+        final List<VariantContext> records = collect(reader.query(CONTIG, 1, 1000));
+        Assert.assertEquals(describe(records), Arrays.asList("A:1-25", "C:5-60", "A:26-27", "A:28-100"));
+        reader.close();
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testCodecUnknownSample() throws IOException {
+        makeStore().close();
+        new CohortStoreCodec().createFeatureSource(storeDirectory, makeSamplesTags("D"));
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testDuplicateSample() {
+        makeStore().startBatch(Collections.singletonList("B"), new VCFHeader(new HashSet<VCFHeaderLine>(), Collections.singletonList("B")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutOfOrderAdd() {
+        final CohortStore store = CohortStore.create(storeDirectory, dictionary, CHUNK_SIZE);
+        final CohortStoreBatchWriter writer = store.startBatch(Collections.singletonList("A"), new VCFHeader(new HashSet<VCFHeaderLine>(), Collections.singletonList("A")));
+        writer.add(makeBlock("A", 20, 30, true));
+        writer.add(makeBlock("A", 10, 15, true));
+    }
+}
@@ -53,6 +53,7 @@ package org.broadinstitute.gatk.tools.walkers.variantutils;
 
 import org.broadinstitute.gatk.engine.walkers.WalkerTest;
 import org.broadinstitute.gatk.engine.GATKVCFUtils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -255,6 +256,96 @@ public class CombineGVCFsIntegrationTest extends WalkerTest {
         executeTest("testMultipleSpanningDeletionsForOneSampleTetraploid", spec);
     }
 
+    @Test
+    public void testStreamingMergeMD5s() throws Exception {
+        final WalkerTestSpec spec = new WalkerTestSpec(baseTestString(" -L 1:69485-69791 -streamingMerge"), 1, Arrays.asList("021ec495e70044039d092ebd5ef4b82a"));
+        spec.disableShadowBCF();
+        executeTest("testStreamingMergeMD5s", spec);
+    }
+
+    @Test
+    public void testStreamingMergeBasepairResolutionOutput() throws Exception {
+        final WalkerTestSpec spec = new WalkerTestSpec(baseTestString(" -L 1:69485-69791 --convertToBasePairResolution -streamingMerge"), 1, Arrays.asList("d5bc938a26cd197d9b1c80cb8dfefbba"));
+        spec.disableShadowBCF();
+        executeTest("testStreamingMergeBasepairResolutionOutput", spec);
+    }
+
+    @Test
+    public void testStreamingMergeBreakBlocks() throws Exception {
+        final WalkerTestSpec spec = new WalkerTestSpec(baseTestString(" -L 1:69485-69791 --breakBandsAtMultiplesOf 5 -streamingMerge"), 1, Arrays.asList("31c2f26e6b172a957a3f504734df5eff"));
+        spec.disableShadowBCF();
+        executeTest("testStreamingMergeBreakBlocks", spec);
+    }
+
+    @Test
+    public void testStreamingMergeSpanningDeletions() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                "-T CombineGVCFs --no_cmdline_in_header -o %s -R " + b37KGReference +
+                        " -V " + privateTestDir + "spanningDel.1.g.vcf -V " + privateTestDir + "spanningDel.2.g.vcf -streamingMerge",
+                1,
+                Arrays.asList("097160606e65547722a1726e031529ec"));
+        spec.disableShadowBCF();
+        executeTest("testStreamingMergeSpanningDeletions", spec);
+    }
+
+    @Test
+    public void testStreamingMergeAlleleSpecificAnnotations() throws Exception {
+        final String cmd = "-T CombineGVCFs -R " + b37KGReference + " -o %s --no_cmdline_in_header -G Standard -G AS_Standard -V "
+                + privateTestDir + "NA12878.AS.chr20snippet.g.vcf -V " + privateTestDir + "NA12891.AS.chr20snippet.g.vcf -streamingMerge";
+        final WalkerTestSpec spec = new WalkerTestSpec(cmd, 1, Arrays.asList("f6a7fa62c33de963c55262820effe44a"));
+        spec.disableShadowBCF();
+        executeTest("testStreamingMergeAlleleSpecificAnnotations", spec);
+    }
+
+    /**
+     * Combine three gVCFs over whole contigs in a single pass, then hierarchically with each of the given arguments,
+     * and check that the outputs are the same
+     */
+    private void testHierarchicalMergeIsSinglePass(final String name, final String inputs, final String... hierarchicalArgs) {
+        final String cmd = "-T CombineGVCFs --no_cmdline_in_header -o %s -R " + b37KGReference + inputs;
+        final WalkerTestSpec singlePass = new WalkerTestSpec(cmd, 1, Arrays.asList(""));
+        singlePass.disableShadowBCF();
+        final String expectedMD5 = executeTest(name, singlePass).getSecond().get(0);
+
+        for ( final String args : hierarchicalArgs ) {
+            final WalkerTestSpec spec = new WalkerTestSpec(cmd + args, 1, Arrays.asList(expectedMD5));
+            spec.disableShadowBCF();
+            executeTest(name + args, spec);
+        }
+    }
+
+    @Test
+    public void testHierarchicalMergeTetraploid() {
+        testHierarchicalMergeIsSinglePass("testHierarchicalMergeTetraploid",
+                " -V:sample1 " + privateTestDir + "tetraploid-gvcf-1.vcf -V:sample2 " + privateTestDir + "tetraploid-gvcf-2.vcf -V:sample3 " + privateTestDir + "tetraploid-gvcf-3.vcf",
+                " -streamingMerge", " -mergeGroupSize 2", " -mergeGroupSize 2 -nct 2");
+    }
+
+    @Test
+    public void testHierarchicalMergeMixedPloidy() {
+        testHierarchicalMergeIsSinglePass("testHierarchicalMergeMixedPloidy",
+                " -V:sample1 " + privateTestDir + "haploid-gvcf-1.vcf -V:sample2 " + privateTestDir + "tetraploid-gvcf-2.vcf -V:sample3 " + privateTestDir + "diploid-gvcf-3.vcf",
+                " -streamingMerge", " -mergeGroupSize 2", " -mergeGroupSize 2 -nct 2");
+    }
+
+    @Test
+    public void testHierarchicalMergeSpanningDeletions() {
+        // two inputs fit in a single group, so this is a plain streaming merge
+        WalkerTestSpec spec = new WalkerTestSpec(
+                "-T CombineGVCFs --no_cmdline_in_header -o %s -R " + b37KGReference +
+                        " -V " + privateTestDir + "spanningDel.1.g.vcf -V " + privateTestDir + "spanningDel.2.g.vcf -mergeGroupSize 2 -nct 2",
+                1,
+                Arrays.asList("097160606e65547722a1726e031529ec"));
+        spec.disableShadowBCF();
+        executeTest("testHierarchicalMergeSpanningDeletions", spec);
+    }
+
+    @Test
+    public void testHierarchicalMergeRejectsPartialContigs() {
+        final WalkerTestSpec spec = new WalkerTestSpec(baseTestString(" -L 1:69485-69791 -mergeGroupSize 2"), 1, UserException.BadArgumentValue.class);
+        executeTest("testHierarchicalMergeRejectsPartialContigs", spec);
+    }
+
     @Test
     public void testWrongReferenceBaseBugFix() throws Exception {
         final String cmd = "-T CombineGVCFs -R " + b37KGReference + " -V " + (privateTestDir + "combine-gvcf-wrong-ref-input1.vcf"
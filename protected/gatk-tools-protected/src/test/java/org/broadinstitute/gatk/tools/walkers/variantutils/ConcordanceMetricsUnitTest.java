@@ -783,4 +783,57 @@ public class ConcordanceMetricsUnitTest extends BaseTest {
         Assert.assertEquals(metrics.getGenotypeConcordance("test2_sample1").getTable()[3][1],1);
         Assert.assertEquals(metrics.getGenotypeConcordance("test2_sample2").getTable()[0][1],1);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSiteAlleles() {
+        final Allele ref = Allele.create("A", true);
+        final Allele alt = Allele.create("C");
+        final VariantContext truth = new VariantContextBuilder("test", "chr1", 3, 3, Arrays.asList(ref, alt)).make();
+        final ConcordanceMetrics.SiteAlleles siteAlleles = new ConcordanceMetrics.SiteAlleles();
+
+        Assert.assertTrue(siteAlleles.reset(truth));
+        Assert.assertEquals(siteAlleles.getTruthSiteAlleles(), 3L);
+        Assert.assertEquals(siteAlleles.getBit(Allele.create("A", true)), ConcordanceMetrics.SiteAlleles.TRUTH_REFERENCE_BIT);
+        Assert.assertEquals(siteAlleles.getBit(Allele.create("C")), 2L);
+        Assert.assertEquals(siteAlleles.getBit(Allele.create("A", false)), 4L);
+        Assert.assertEquals(siteAlleles.getBit(Allele.NO_CALL), 8L);
+        String bases = "C";
+        for ( int i = 4; i < Long.SIZE; i++ ) {
+            bases += "C";
+            Assert.assertEquals(siteAlleles.getBit(Allele.create(bases)), 1L << i);
+        }
+        Assert.assertEquals(siteAlleles.getBit(Allele.create("G")), 0L);
+
+        // a new site starts over
+        Assert.assertTrue(siteAlleles.reset(truth));
+        Assert.assertEquals(siteAlleles.getBit(Allele.create("G")), 4L);
+    }
+
+    @Test
+    public void testSiteWithMoreAllelesThanBits() {
+        final Allele ref = Allele.create("A", true);
+        final List<Allele> alleles = new ArrayList<>();
+        alleles.add(ref);
+        String bases = "A";
+        for ( int i = 0; i < 70; i++ ) {
+            bases += "C";
+            alleles.add(Allele.create(bases));
+        }
+        final Allele lastAlt = alleles.get(alleles.size() - 1);
+        final VariantContextBuilder site = new VariantContextBuilder("test", "chr1", 3, 3, alleles);
+        final VariantContext truth = site.genotypes(GenotypeBuilder.create("test2_sample1", Arrays.asList(ref, alleles.get(1))),
+                GenotypeBuilder.create("test2_sample2", Arrays.asList(ref, ref))).make();
+        final VariantContext eval = site.genotypes(GenotypeBuilder.create("test2_sample1", Arrays.asList(ref, alleles.get(1))),
+                GenotypeBuilder.create("test2_sample2", Arrays.asList(lastAlt, lastAlt))).make();
+
+        final VCFCodec codec = new VCFCodec();
+        final VCFHeader evalHeader = (VCFHeader)codec.readActualHeader(codec.makeSourceFromStream(new PositionalBufferedStream(new StringBufferInputStream(TEST_2_HEADER))));
+        final VCFHeader compHeader = (VCFHeader)codec.readActualHeader(codec.makeSourceFromStream(new PositionalBufferedStream(new StringBufferInputStream(TEST_2_HEADER))));
+        final ConcordanceMetrics metrics = new ConcordanceMetrics(evalHeader,compHeader,null);
+        metrics.update(eval,truth);
+
+        Assert.assertEquals(metrics.getGenotypeConcordance("test2_sample1").getTable()[GenotypeType.HET.ordinal()][GenotypeType.HET.ordinal()],1);
+        Assert.assertEquals(metrics.getGenotypeConcordance("test2_sample2").getTable()[GenotypeType.HOM_VAR.ordinal()][GenotypeType.HOM_REF.ordinal()],1);
+        Assert.assertEquals(metrics.getOverallGenotypeConcordance().getnMismatchingAlt(),0);
+    }
+}
@@ -59,6 +59,7 @@ import htsjdk.variant.vcf.VCFCodec;
 import org.apache.commons.io.FileUtils;
 import org.broadinstitute.gatk.engine.walkers.WalkerTest;
 import org.broadinstitute.gatk.tools.walkers.annotator.AnnotationUtils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -174,6 +175,53 @@ public class GenotypeGVCFsIntegrationTest extends WalkerTest {
         executeTest("combineSingleSamplePipelineGVCF_addDbsnp", spec);
     }
 
+    @Test(enabled = true)
+    public void combineSingleSamplePipelineGVCF_skipRefBlocks() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                baseTestString(" -V:sample1 " + privateTestDir + "combine.single.sample.pipeline.1.vcf" +
+                        " -V:sample2 " + privateTestDir + "combine.single.sample.pipeline.2.vcf" +
+                        " -V:sample3 " + privateTestDir + "combine.single.sample.pipeline.3.vcf" +
+                        " -L 20:10,000,000-11,000,000 -skipRefBlocks", b37KGReference),
+                1,
+                Arrays.asList("c9edd4ca8c2801c4681322087d82e781"));
+        executeTest("combineSingleSamplePipelineGVCF_skipRefBlocks", spec);
+    }
+
+    @Test(enabled = true)
+    public void combineSingleSamplePipelineGVCF_addDbsnp_skipRefBlocks() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                baseTestString(" -V:sample1 " + privateTestDir + "combine.single.sample.pipeline.1.vcf" +
+                        " -V:sample2 " + privateTestDir + "combine.single.sample.pipeline.2.vcf" +
+                        " -V:sample3 " + privateTestDir + "combine.single.sample.pipeline.3.vcf" +
+                        " -L 20:10,000,000-11,000,000 --dbsnp " + b37dbSNP132 + " -skipRefBlocks", b37KGReference),
+                1,
+                Arrays.asList("f88841deb5c2ce4f3bbea1e914a13898"));
+        executeTest("combineSingleSamplePipelineGVCF_addDbsnp_skipRefBlocks", spec);
+    }
+
+    @Test(enabled = true)
+    public void combineSingleSamplePipelineGVCFHierarchical_skipRefBlocks() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                baseTestString(" -V " + privateTestDir + "combine.single.sample.pipeline.combined.vcf" +
+                        " -V:sample1 " + privateTestDir + "combine.single.sample.pipeline.1.vcf" +
+                        " -V:sample2 " + privateTestDir + "combine.single.sample.pipeline.2.vcf" +
+                        " -V:sample3 " + privateTestDir + "combine.single.sample.pipeline.3.vcf" +
+                        " -L 20:10,000,000-20,000,000 -skipRefBlocks", b37KGReference),
+                1,
+                Arrays.asList("f48114bc6348cdc9dc4f0960f5dcf5f8"));
+        executeTest("combineSingleSamplePipelineGVCFHierarchical_skipRefBlocks", spec);
+    }
+
+    @Test(enabled = true)
+    public void testSkipRefBlocksRejectsIncludeNonVariants() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                baseTestString(" -V:sample1 " + privateTestDir + "combine.single.sample.pipeline.1.vcf" +
+                        " --includeNonVariantSites -L 20:10,030,000-10,033,000 -skipRefBlocks", b37KGReference),
+                1,
+                UserException.BadArgumentValue.class);
+        executeTest("testSkipRefBlocksRejectsIncludeNonVariants", spec);
+    }
+
     @Test(enabled = true)
     public void combineBPresGVCFs() {
         WalkerTestSpec spec = new WalkerTestSpec(
@@ -483,6 +531,17 @@ public class GenotypeGVCFsIntegrationTest extends WalkerTest {
         executeTest("testSpanningDeletionsFromCombinedGVCFMD5", spec);
     }
 
+    @Test(enabled = true)
+    public void testSpanningDeletionsSkipRefBlocksMD5() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                "-T GenotypeGVCFs --no_cmdline_in_header -o %s -R " + b37KGReference +
+                        " -V " + privateTestDir + "spanningDel.1.g.vcf -V " + privateTestDir + "spanningDel.2.g.vcf -skipRefBlocks",
+                1,
+                Arrays.asList(simpleSpanningDeletionsMD5));
+        spec.disableShadowBCF();
+        executeTest("testSpanningDeletionsSkipRefBlocksMD5", spec);
+    }
+
     @Test(enabled = true)
     public void testMultipleSpanningDeletionsMD5() {
         WalkerTestSpec spec = new WalkerTestSpec(
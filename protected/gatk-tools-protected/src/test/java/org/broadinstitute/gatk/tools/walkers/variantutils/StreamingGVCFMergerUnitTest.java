@@ -0,0 +1,247 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.*;
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.broadinstitute.gatk.utils.io.IOUtils;
+import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
+import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class StreamingGVCFMergerUnitTest extends BaseTest {
+    private final static String CONTIG = "chr1";
+
+    private CachingIndexedFastaSequenceFile reference;
+    private GenomeLocParser genomeLocParser;
+    private File tempDir;
+    private List<File> gvcfs;
+
+    private final static class CollectingWriter implements VariantContextWriter {
+        final List<VariantContext> emitted = new ArrayList<>();
+
+        @Override
+        public void writeHeader(final VCFHeader header) {}
+
+        @Override
+        public void close() {}
+
+        @Override
+        public boolean checkError() {
+            return false;
+        }
+
+        @Override
+        public void add(final VariantContext vc) {
+            emitted.add(vc);
+        }
+    }
+
+    @BeforeClass
+    public void setup() throws IOException {
+        reference = new CachingIndexedFastaSequenceFile(new File(exampleFASTA));
+        genomeLocParser = new GenomeLocParser(reference);
+        tempDir = IOUtils.tempDir("StreamingGVCFMerger.", "");
+
+        gvcfs = Arrays.asList(
+                writeGVCF("S0", block("S0", 1, 40), snp("S0", 41, 0), block("S0", 42, 100), deletion("S0", 101, 2), block("S0", 104, 200)),
+                writeGVCF("S1", block("S1", 1, 60), snp("S1", 61, 1), block("S1", 62, 101), snp("S1", 102, 2), block("S1", 103, 200)),
+                // starts late, has a hole, and shares a site with S0
+                writeGVCF("S2", block("S2", 5, 40), snp("S2", 41, 1), block("S2", 42, 150), block("S2", 161, 199), deletion("S2", 200, 1), block("S2", 202, 210)));
+    }
+
+    @AfterClass
+    public void teardown() throws IOException {
+        reference.close();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    private Allele refAllele(final int start, final int length) {
+        return Allele.create(reference.getSubsequenceAt(CONTIG, start, start + length - 1).getBases(), true);
+    }
+
+    private VariantContext block(final String sample, final int start, final int end) {
+        final Allele ref = refAllele(start, 1);
+        final Genotype g = new GenotypeBuilder(sample, Arrays.asList(ref, ref)).GQ(30 + start % 7).DP(10 + end % 5).PL(new int[]{0, 30, 300})
+                .attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, 8).make();
+        return new VariantContextBuilder("test", CONTIG, start, end, Arrays.asList(ref, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .attribute(VCFConstants.END_KEY, end).genotypes(g).make();
+    }
+
+    private VariantContext variant(final String sample, final Allele ref, final Allele alt, final int start) {
+        final Genotype g = new GenotypeBuilder(sample, Arrays.asList(ref, alt)).GQ(99).DP(20).AD(new int[]{11, 9, 0})
+                .PL(new int[]{300, 0, 250, 400, 280, 600}).make();
+        return new VariantContextBuilder("test", CONTIG, start, start + ref.length() - 1, Arrays.asList(ref, alt, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .attribute(VCFConstants.DEPTH_KEY, 20).genotypes(g).make();
+    }
+
+    private VariantContext snp(final String sample, final int start, final int altOffset) {
+        final Allele ref = refAllele(start, 1);
+        final byte[] bases = {'A', 'C', 'G', 'T'};
+        int i = 0;
+        while ( bases[i] != ref.getBases()[0] ) i++;
+        return variant(sample, ref, Allele.create(bases[(i + 1 + altOffset) % 4]), start);
+    }
+
+    private VariantContext deletion(final String sample, final int start, final int deletedBases) {
+        return variant(sample, refAllele(start, deletedBases + 1), Allele.create(refAllele(start, 1).getBases()), start);
+    }
+
+    private File writeGVCF(final String sample, final VariantContext... vcs) {
+        final File file = new File(tempDir, sample + ".g.vcf");
+        final VariantContextWriter writer = new VariantContextWriterBuilder().setOutputFile(file)
+                .setReferenceDictionary(reference.getSequenceDictionary()).setOption(Options.INDEX_ON_THE_FLY).build();
+        final Set<VCFHeaderLine> lines = new HashSet<>();
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_KEY));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_QUALITY_KEY));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.DEPTH_KEY));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_ALLELE_DEPTHS));
+        lines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_PL_KEY));
+        lines.add(GATKVCFHeaderLines.getFormatLine(GATKVCFConstants.MIN_DP_FORMAT_KEY));
+        lines.add(VCFStandardHeaderLines.getInfoLine(VCFConstants.END_KEY));
+        lines.add(VCFStandardHeaderLines.getInfoLine(VCFConstants.DEPTH_KEY));
+        final VCFHeader header = new VCFHeader(lines, Collections.singleton(sample));
+        header.setSequenceDictionary(reference.getSequenceDictionary());
+        writer.writeHeader(header);
+        for ( final VariantContext vc : vcs )
+            writer.add(vc);
+        writer.close();
+        return file;
+    }
+
+    private static List<VariantContext> readAll(final File file) throws IOException {
+        final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), new VCFCodec(), false);
+        final List<VariantContext> vcs = new ArrayList<>();
+        for ( final VariantContext vc : reader.iterator() )
+            vcs.add(vc);
+        reader.close();
+        return vcs;
+    }
+
+    /**
+     * Feed the combiner like a locus traversal does: every position covered by a record, with the records starting there
+     */
+    private List<VariantContext> combineByLocus(final GenomeLoc interval, final int breakBandsAtMultiplesOf) throws IOException {
+        final List<List<VariantContext>> inputs = new ArrayList<>();
+        for ( final File gvcf : gvcfs )
+            inputs.add(readAll(gvcf));
+
+        final CollectingWriter writer = new CollectingWriter();
+        final GVCFBlockCombiner combiner = new GVCFBlockCombiner(writer, genomeLocParser, null, false, breakBandsAtMultiplesOf);
+        for ( int position = interval.getStart(); position <= interval.getStop(); position++ ) {
+            final List<VariantContext> starting = new ArrayList<>();
+            boolean covered = false;
+            for ( final List<VariantContext> input : inputs ) {
+                for ( final VariantContext vc : input ) {
+                    covered |= vc.getStart() <= position && vc.getEnd() >= position;
+                    if ( vc.getStart() == position )
+                        starting.add(vc);
+                }
+            }
+            if ( covered )
+                combiner.add(new GVCFBlockCombiner.PositionalState(starting, StreamingGVCFMerger.getReferenceBases(reference, CONTIG, position),
+                        genomeLocParser.createGenomeLoc(CONTIG, position)));
+        }
+        return writer.emitted;
+    }
+
+    private List<VariantContext> combineStreaming(final GenomeLoc interval, final int breakBandsAtMultiplesOf) {
+        final CollectingWriter writer = new CollectingWriter();
+        final GVCFBlockCombiner combiner = new GVCFBlockCombiner(writer, genomeLocParser, null, false, breakBandsAtMultiplesOf);
+        final StreamingGVCFMerger merger = new StreamingGVCFMerger(gvcfs);
+        merger.merge(interval, combiner, reference, genomeLocParser);
+        merger.close();
+        return writer.emitted;
+    }
+
+    @DataProvider(name = "MergeData")
+    public Object[][] makeMergeData() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final int breakBandsAtMultiplesOf : Arrays.asList(0, 1, 50) ) {
+            tests.add(new Object[]{1, 300, breakBandsAtMultiplesOf});
+            tests.add(new Object[]{30, 120, breakBandsAtMultiplesOf});
+            tests.add(new Object[]{41, 41, breakBandsAtMultiplesOf});
+            tests.add(new Object[]{151, 205, breakBandsAtMultiplesOf});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "MergeData")
+    public void testSameAsLocusTraversal(final int start, final int stop, final int breakBandsAtMultiplesOf) throws IOException {
+        final GenomeLoc interval = genomeLocParser.createGenomeLoc(CONTIG, start, stop);
+        final List<VariantContext> expected = combineByLocus(interval, breakBandsAtMultiplesOf);
+        final List<VariantContext> actual = combineStreaming(interval, breakBandsAtMultiplesOf);
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual.size(), expected.size());
+        for ( int i = 0; i < expected.size(); i++ )
+            Assert.assertEquals(actual.get(i).toStringDecodeGenotypes(), expected.get(i).toStringDecodeGenotypes());
+    }
+}
@@ -58,6 +58,7 @@ import org.broadinstitute.gatk.utils.*;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
+import org.broadinstitute.gatk.utils.variant.RemappedPLGenotype;
 import org.testng.Assert;
 import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.DataProvider;
@@ -120,6 +121,38 @@ public class VariantContextMergerUnitTest  extends BaseTest {
         }
     }
 
+    @Test
+    public void testHierarchicalLevels() {
+        final GenomeLoc loc = new UnvalidatingGenomeLoc("20", 0, 10, 10);
+        final List<Allele> noCalls = Arrays.asList(Allele.NO_CALL, Allele.NO_CALL);
+        final VariantContext intermediate = new VariantContextBuilder("test", "20", 10, 10, Arrays.asList(Aref, C, del, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .attribute("ReadPosRankSum", Arrays.asList("1.5", "-2.0", "0.25"))
+                .genotypes(new GenotypeBuilder("A_C_del").PL(new int[]{0, 10, 20, 30, 40, 50, 60, 70, 80, 90}).alleles(noCalls).make()).make();
+        final VariantContext other = new VariantContextBuilder("test2", "20", 10, 10, Arrays.asList(Aref, G, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .attribute("ReadPosRankSum", Arrays.asList("3.0", "-1.0"))
+                .genotypes(new GenotypeBuilder("A_G").PL(new int[]{30, 20, 10, 71, 72, 73}).alleles(noCalls).make()).make();
+        final List<VariantContext> VCs = Arrays.asList(intermediate, other);
+
+        // the merge of intermediate records puts * after the real alleles and takes the median of all of the values
+        final VariantContext last = ReferenceConfidenceVariantContextMerger.merge(VCs, loc, null, true, false, null, ReferenceConfidenceVariantContextMerger.HierarchicalLevel.LAST);
+        Assert.assertEquals(last.getAlleles(), Arrays.asList(Aref, C, G, del));
+        Assert.assertEquals(last.getGenotype("A_C_del").getPL(), new int[]{0, 10, 20, 60, 70, 90, 30, 40, 80, 50});
+        Assert.assertEquals(last.getAttribute("ReadPosRankSum"), 0.25);
+
+        // while intermediate levels keep all of them
+        final VariantContext middle = ReferenceConfidenceVariantContextMerger.merge(VCs, loc, null, false, false, null, ReferenceConfidenceVariantContextMerger.HierarchicalLevel.INTERMEDIATE);
+        Assert.assertEquals(middle.getAlleles(), Arrays.asList(Aref, C, G, del, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE));
+        Assert.assertEquals(middle.getAttribute("ReadPosRankSum"), Arrays.asList("1.5", "-2.0", "0.25", "3.0", "-1.0"));
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testFirstHierarchicalLevelRejectsCalledSpanningDeletions() {
+        final GenomeLoc loc = new UnvalidatingGenomeLoc("20", 0, 10, 10);
+        final VariantContext combined = new VariantContextBuilder("test", "20", 10, 10, Arrays.asList(Aref, C, del, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .genotypes(new GenotypeBuilder("A_C_del").PL(new int[]{0, 10, 20, 30, 40, 50, 60, 70, 80, 90}).alleles(Arrays.asList(Allele.NO_CALL, Allele.NO_CALL)).make()).make();
+        ReferenceConfidenceVariantContextMerger.merge(Collections.singletonList(combined), loc, null, false, false, null, ReferenceConfidenceVariantContextMerger.HierarchicalLevel.FIRST);
+    }
+
     @Test
     public void testGenerateADWithNewAlleles() {
 
@@ -131,6 +164,35 @@ public class VariantContextMergerUnitTest  extends BaseTest {
     }
 
 
+    @Test
+    public void testMergedPLsAreRemappedLazily() {
+        final GenomeLoc loc = new UnvalidatingGenomeLoc("20", 0, 10, 10);
+        final List<Allele> noCalls = Arrays.asList(Allele.NO_CALL, Allele.NO_CALL);
+        final List<Allele> variantAlleles = Arrays.asList(Aref, C, G, T, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+        final int[] variantPLs = new int[15];
+        for ( int i = 0; i < variantPLs.length; i++ )
+            variantPLs[i] = 10 * i;
+        final VariantContext variant = new VariantContextBuilder("test", "20", 10, 10, variantAlleles)
+                .genotypes(new GenotypeBuilder("variant").PL(variantPLs).alleles(noCalls).make()).make();
+        final VariantContext refBlock = new VariantContextBuilder("test", "20", 5, 20, Arrays.asList(Aref, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .genotypes(new GenotypeBuilder("refBlock").PL(new int[]{0, 30, 300}).alleles(noCalls).make()).make();
+
+        final VariantContext result = ReferenceConfidenceVariantContextMerger.merge(Arrays.asList(variant, refBlock), loc, null, false, false, null);
+        Assert.assertEquals(result.getAlleles(), variantAlleles);
+
+        // the variant already has all the alleles so keeps plain PLs, while the ref block gets them remapped on demand
+        Assert.assertFalse(result.getGenotype("variant") instanceof RemappedPLGenotype);
+        Assert.assertEquals(result.getGenotype("variant").getPL(), variantPLs);
+        final Genotype merged = result.getGenotype("refBlock");
+        Assert.assertTrue(merged instanceof RemappedPLGenotype);
+        final int[] expected = new int[15];
+        for ( int i = 0; i < expected.length; i++ ) {
+            final GenotypeLikelihoods.GenotypeLikelihoodsAllelePair pair = GenotypeLikelihoods.getAllelePair(i);
+            expected[i] = pair.alleleIndex1 == 0 && pair.alleleIndex2 == 0 ? 0 : (pair.alleleIndex1 == 0 ? 30 : 300);
+        }
+        Assert.assertEquals(merged.getPL(), expected);
+    }
+
     @Test(expectedExceptions = UserException.class)
     public void testGetIndexesOfRelevantAllelesWithNoALT() {
 
@@ -289,6 +351,14 @@ public class VariantContextMergerUnitTest  extends BaseTest {
                         new GenotypeBuilder("A_C_G.test2").PL(new int[]{40, 20, 30, 20, 10, 30}).alleles(noCalls).make(),
                         new GenotypeBuilder("A_C_G.test").PL(new int[]{40, 20, 30, 20, 10, 30}).alleles(noCalls).make()).make()});
 
+        // a record of a combined gVCF, where * is already a called allele, keeps it where it is
+        final VariantContext vcA_C_del_ALT = new VariantContextBuilder(VCbase).alleles(Arrays.asList(Aref, C, del, GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+                .genotypes(new GenotypeBuilder("A_C_del").PL(new int[]{0, 10, 20, 30, 40, 50, 60, 70, 80, 90}).alleles(noCalls).make()).make();
+        tests.add(new Object[]{"test12",Arrays.asList(vcA_C_del_ALT, vcA_G_ALT), loc, false, false,
+                new VariantContextBuilder(VCbase).alleles(Arrays.asList(Aref, C, del, G)).genotypes(
+                        new GenotypeBuilder("A_C_del").PL(new int[]{0, 10, 20, 30, 40, 50, 60, 70, 80, 90}).alleles(noCalls).make(),
+                        new GenotypeBuilder("A_G").PL(new int[]{30, 71, 73, 71, 73, 73, 20, 72, 72, 10}).alleles(noCalls).make()).make()});
+
         final Object[][] result = tests.toArray(new Object[][]{});
         return result;
     }
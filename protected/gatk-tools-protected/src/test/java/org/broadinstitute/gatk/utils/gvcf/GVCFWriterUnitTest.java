@@ -69,6 +69,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 public class GVCFWriterUnitTest extends BaseTest {
     private static class MockWriter implements VariantContextWriter {
@@ -355,6 +356,44 @@ public class GVCFWriterUnitTest extends BaseTest {
         assertGoodVC(mockWriter.emitted.get(2), "20", 6, 7, false);
     }
 
+    @Test
+    public void testPackedSitesMatchSingleSites() {
+        final MockWriter packedWriter = new MockWriter();
+        final GVCFWriter singleSites = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
+        final GVCFWriter packedSites = new GVCFWriter(packedWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
+        final Random random = new Random(13);
+
+        // runs of sites on two contigs, with a gap between runs and a deletion spanning the start of a run
+        final Object[][] runs = {{"20", 1, 60}, {"20", 61, 40}, {"20", 120, 80}, {"21", 5, 30}};
+        for ( final Object[] run : runs ) {
+            final String contig = (String) run[0];
+            final int start = (Integer) run[1];
+            final HomRefSites sites = new HomRefSites("test", SAMPLE_NAME, contig, start, 2, 1);
+            for ( int pos = start; pos < start + (Integer) run[2]; pos++ ) {
+                final int GQ = random.nextInt(40);
+                final int DP = random.nextInt(30);
+                final int[] PLs = {0, GQ, GQ + random.nextInt(50)};
+                sites.add((byte) 'N', GQ, DP, DP, PLs);
+                singleSites.add(new VariantContextBuilder("test", contig, pos, pos, ALLELES)
+                        .genotypes(new GenotypeBuilder(SAMPLE_NAME, Arrays.asList(REF, REF)).GQ(GQ).DP(DP).PL(PLs).make()).make());
+            }
+            Assert.assertEquals(sites.getStop(), start + (Integer) run[2] - 1);
+            Assert.assertSame(HomRefSites.fromVariantContext(sites.toVariantContext()), sites);
+            packedSites.add(sites.toVariantContext());
+            if ( start == 61 ) {
+                singleSites.add(makeDeletion("20", 100, 25));
+                packedSites.add(makeDeletion("20", 100, 25));
+            }
+        }
+        singleSites.close();
+        packedSites.close();
+
+        Assert.assertTrue(mockWriter.emitted.size() > runs.length + 1, "expected the runs to be split into bands");
+        Assert.assertEquals(packedWriter.emitted.size(), mockWriter.emitted.size());
+        for ( int i = 0; i < mockWriter.emitted.size(); i++ )
+            Assert.assertEquals(packedWriter.emitted.get(i).toStringDecodeGenotypes(), mockWriter.emitted.get(i).toStringDecodeGenotypes());
+    }
+
     @Test
     public void testHomRefAlt() {
         final GVCFWriter writer = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
@@ -56,6 +56,7 @@ import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.HomoSapiensConstants;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -131,6 +132,17 @@ public class HomRefBlockUnitTest extends BaseTest {
         assertValues(band, 1000, 1000, 99, 99);
     }
 
+    @Test
+    public void testMinDPAttribute() {
+        final HomRefBlock band = new HomRefBlock(vc, 10, 20, HomoSapiensConstants.DEFAULT_PLOIDY);
+        final GenotypeBuilder gb = new GenotypeBuilder("NA12878");
+        gb.alleles(vc.getAlleles());
+
+        band.add(vc.getStart(), gb.DP(20).GQ(15).PL(new int[]{0,15,100}).attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, 5).make());
+        band.add(vc.getStart() + 1, gb.DP(20).GQ(15).PL(new int[]{0,15,100}).attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, "7").make());
+        assertValues(band, 5, 20, 15, 15);
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void testBadAdd() {
         final HomRefBlock band = new HomRefBlock(vc, 10, 20, HomoSapiensConstants.DEFAULT_PLOIDY);
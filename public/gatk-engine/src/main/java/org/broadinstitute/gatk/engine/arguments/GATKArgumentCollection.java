@@ -281,6 +281,44 @@ public class GATKArgumentCollection {
     @Argument(fullName = "performanceLog", shortName="PF", doc="Write GATK runtime performance log to this file", required = false)
     public File performanceLog = null;
 
+    /**
+     * The file name for the GATK traversal metrics report, or null if metrics should not be collected.  When
+     * provided, the engine and instrumented walkers record per-stage counters, timers and histograms, which
+     * are periodically written as a GATKReport to this file (see -metricsLogInterval) and once more at the end
+     * of the run.  When not provided, the instrumentation is disabled and costs next to nothing.
+     */
+    @Argument(fullName = "metricsLog", shortName="metricsLog", doc="Write GATK traversal metrics report to this file", required = false)
+    public File metricsLog = null;
+
+    /**
+     * How often, in seconds, the metrics report given by -metricsLog is rewritten while the traversal runs.
+     */
+    @Advanced
+    @Argument(fullName = "metricsLogInterval", shortName="metricsLogInterval", doc="Seconds between updates of the metrics report", required = false, minValue = 1)
+    public int metricsLogInterval = 60;
+
+    /**
+     * Enables the built-in sampling profiler.  While the traversal runs, the stacks of the threads executing the
+     * walker are periodically sampled and attributed to the walker phase (isActive, map, reduce, ...) and genomic
+     * interval they are working on.  At the end of the run the samples are written to this file in the collapsed
+     * stack format understood by flamegraph.pl, with the walker phase as the root frame.
+     */
+    @Advanced
+    @Argument(fullName = "samplingProfileStacks", shortName="profileStacks", doc="Enable the sampling profiler and write collapsed stacks to this file", required = false)
+    public File samplingProfileStacks = null;
+
+    /**
+     * If provided along with -profileStacks, a GATKReport table listing the genomic intervals in which the
+     * profiler collected the most samples (i.e., the slowest intervals) is written to this file.
+     */
+    @Advanced
+    @Argument(fullName = "samplingProfileIntervals", shortName="profileIntervals", doc="Write the slowest genomic intervals found by the sampling profiler to this file", required = false)
+    public File samplingProfileIntervals = null;
+
+    @Advanced
+    @Argument(fullName = "samplingProfileInterval", shortName="profileInterval", doc="Milliseconds between sampling profiler samples", required = false, minValue = 1)
+    public int samplingProfileInterval = 20;
+
     // --------------------------------------------------------------------------------------------------------------
     //
     // BQSR arguments
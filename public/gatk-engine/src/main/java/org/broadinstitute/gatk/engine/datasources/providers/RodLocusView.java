@@ -27,7 +27,9 @@ package org.broadinstitute.gatk.engine.datasources.providers;
 
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
+import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
 import org.broadinstitute.gatk.utils.refdata.utils.LocationAwareSeekableRODIterator;
 import org.broadinstitute.gatk.utils.refdata.utils.RODRecordList;
 import org.broadinstitute.gatk.utils.GenomeLoc;
@@ -50,6 +52,22 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
     GenomeLoc lastLoc = null;
     RODRecordList interval = null;
 
+    /**
+     * When not null, only the starts of the records accepted by this filter are visited; see RodWalker.getSiteFilter()
+     */
+    private final RodWalker.SiteFilter siteFilter;
+
+    /**
+     * The iterators of the tracks other than the interval, used instead of rodQueue when there's a site filter
+     */
+    private final List<LocationAwareSeekableRODIterator> siteIterators = new ArrayList<LocationAwareSeekableRODIterator>();
+
+    /**
+     * The next site accepted by the site filter and the tracks overlapping it, or null if it hasn't been found yet
+     */
+    private GenomeLoc nextSite = null;
+    private Collection<RODRecordList> nextSiteTracks = null;
+
     /**
      * The data sources along with their current states.
      */
@@ -68,7 +86,18 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
      * @param provider
      */
     public RodLocusView( LocusShardDataProvider provider ) {
+        this(provider, null);
+    }
+
+    /**
+     * Create a new view of reference-ordered data, which only visits the sites accepted by siteFilter.
+     *
+     * @param provider
+     * @param siteFilter the filter on the records starting a site, or null to visit every covered position
+     */
+    public RodLocusView( LocusShardDataProvider provider, RodWalker.SiteFilter siteFilter ) {
         super(provider);
+        this.siteFilter = siteFilter;
 
         GenomeLoc loc = provider.getLocus();
 
@@ -91,6 +120,7 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
                 interval = it.next();
             } else {
                 iterators.add( it );
+                siteIterators.add( it );
             }
         }
 
@@ -105,6 +135,12 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
     }
 
     public boolean hasNext() {
+        if ( siteFilter != null ) {
+            if ( nextSite == null )
+                seekToNextSite();
+            return nextSite != null;
+        }
+
         if ( ! rodQueue.hasNext() )
             return false;
         else {
@@ -118,6 +154,9 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
      * @throw NoSuchElementException if no such element exists.
      */
     public AlignmentContext next() {
+        if ( siteFilter != null )
+            return nextFilteredSite();
+
         if ( DEBUG ) System.out.printf("In RodLocusView.next()...%n");
         RODRecordList datum = rodQueue.next();
         if ( DEBUG ) System.out.printf("In RodLocusView.next(); datum = %s...%n", datum.getLocation());
@@ -136,6 +175,62 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
         return new AlignmentContext(site, new ReadBackedPileupImpl(site), skippedBases);
     }
 
+    private AlignmentContext nextFilteredSite() {
+        if ( ! hasNext() )
+            throw new NoSuchElementException("No more sites in the shard " + locus);
+
+        GenomeLoc site = nextSite;
+        allTracksHere = nextSiteTracks;
+        nextSite = null;
+        nextSiteTracks = null;
+
+        long skippedBases = getSkippedBases( site );
+        lastLoc = site;
+        return new AlignmentContext(site, new ReadBackedPileupImpl(site), skippedBases);
+    }
+
+    /**
+     * Seeks the ROD iterators to the next start of a record accepted by the site filter within the shard, if any,
+     * setting nextSite and nextSiteTracks.  The iterators are only ever seeked to record starts, so the positions
+     * covered by the rejected records are passed over without being visited one at a time.
+     */
+    private void seekToNextSite() {
+        while ( true ) {
+            // the next record start of any track
+            GenomeLoc start = null;
+            for ( LocationAwareSeekableRODIterator it : siteIterators ) {
+                GATKFeature record = it.peekNextRecord();
+                if ( record == null )
+                    continue;
+                GenomeLoc recordStart = genomeLocParser.createGenomeLoc(record.getLocation().getContig(), record.getLocation().getStart());
+                if ( start == null || recordStart.isBefore(start) )
+                    start = recordStart;
+            }
+            if ( start == null || start.isPast(locus) )
+                return;
+
+            // load the records overlapping it in every track, and check the ones starting there
+            Collection<RODRecordList> tracks = new ArrayList<RODRecordList>(siteIterators.size());
+            boolean accepted = false;
+            for ( LocationAwareSeekableRODIterator it : siteIterators ) {
+                RODRecordList track = it.seekForward(start);
+                if ( track == null )
+                    continue;
+                tracks.add(track);
+                for ( GATKFeature record : track ) {
+                    if ( ! accepted && record.getLocation().getStart() == start.getStart() && siteFilter.startsSite(record) )
+                        accepted = true;
+                }
+            }
+
+            if ( accepted ) {
+                nextSite = start;
+                nextSiteTracks = tracks;
+                return;
+            }
+        }
+    }
+
     private Collection<RODRecordList> getSpanningTracks(RODRecordList marker) {
         return rodQueue.allElementsLTE(marker);
     }
@@ -192,5 +287,6 @@ public class RodLocusView extends LocusView implements ReferenceOrderedView {
 
         rodQueue = null;
         allTracksHere = null;
+        nextSiteTracks = null;
     }
 }
\ No newline at end of file
@@ -38,6 +38,7 @@ import org.broadinstitute.gatk.engine.io.OutputTracker;
 import org.broadinstitute.gatk.engine.resourcemanagement.ThreadAllocation;
 import org.broadinstitute.gatk.engine.traversals.TraversalEngine;
 import org.broadinstitute.gatk.engine.walkers.Walker;
+import org.broadinstitute.gatk.utils.metrics.SamplingProfiler;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 import org.broadinstitute.gatk.utils.threading.ThreadEfficiencyMonitor;
 
@@ -91,24 +92,36 @@ public class LinearMicroScheduler extends MicroScheduler {
             if ( abortExecution() || done || shard == null ) // we ran out of shards that aren't owned
                 break;
 
+            final long shardStart = SHARD_TIMER.start();
             if(shard.getShardType() == Shard.ShardType.LOCUS) {
                 WindowMaker windowMaker = new WindowMaker(shard, engine.getGenomeLocParser(),
                         getReadIterator(shard), shard.getGenomeLocs(), ReadUtils.getSAMFileSamples(engine.getSAMFileHeader()));
                 for(WindowMaker.WindowMakerIterator iterator: windowMaker) {
-                    ShardDataProvider dataProvider = new LocusShardDataProvider(shard,iterator.getSourceInfo(),engine.getGenomeLocParser(),iterator.getLocus(),iterator,reference,rods);
-                    Object result = traversalEngine.traverse(walker, dataProvider, accumulator.getReduceInit());
-                    accumulator.accumulate(dataProvider,result);
-                    dataProvider.close();
+                    SamplingProfiler.enterPhase(TraversalEngine.TRAVERSE_PHASE, iterator.getLocus());
+                    try {
+                        ShardDataProvider dataProvider = new LocusShardDataProvider(shard,iterator.getSourceInfo(),engine.getGenomeLocParser(),iterator.getLocus(),iterator,reference,rods);
+                        Object result = traversalEngine.traverse(walker, dataProvider, accumulator.getReduceInit());
+                        accumulator.accumulate(dataProvider,result);
+                        dataProvider.close();
+                    } finally {
+                        SamplingProfiler.exitPhase();
+                    }
                     if ( walker.isDone() ) break;
                 }
                 windowMaker.close();
             }
             else {
-                ShardDataProvider dataProvider = new ReadShardDataProvider(shard,engine.getGenomeLocParser(),getReadIterator(shard),reference,rods);
-                Object result = traversalEngine.traverse(walker, dataProvider, accumulator.getReduceInit());
-                accumulator.accumulate(dataProvider,result);
-                dataProvider.close();
+                SamplingProfiler.enterPhase(TraversalEngine.TRAVERSE_PHASE, SamplingProfiler.isProfiling() ? shard.getLocation() : null);
+                try {
+                    ShardDataProvider dataProvider = new ReadShardDataProvider(shard,engine.getGenomeLocParser(),getReadIterator(shard),reference,rods);
+                    Object result = traversalEngine.traverse(walker, dataProvider, accumulator.getReduceInit());
+                    accumulator.accumulate(dataProvider,result);
+                    dataProvider.close();
+                } finally {
+                    SamplingProfiler.exitPhase();
+                }
             }
+            SHARD_TIMER.stop(shardStart);
 
             done = walker.isDone();
         }
@@ -43,6 +43,10 @@ import org.broadinstitute.gatk.utils.AutoFormattingTime;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.metrics.MetricsDaemon;
+import org.broadinstitute.gatk.utils.metrics.MetricsRegistry;
+import org.broadinstitute.gatk.utils.metrics.SamplingProfiler;
+import org.broadinstitute.gatk.utils.metrics.Timer;
 import org.broadinstitute.gatk.utils.progressmeter.ProgressMeter;
 import org.broadinstitute.gatk.utils.threading.ThreadEfficiencyMonitor;
 
@@ -52,6 +56,7 @@ import javax.management.ObjectName;
 import java.io.File;
 import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -76,6 +81,11 @@ import java.util.*;
 public abstract class MicroScheduler implements MicroSchedulerMBean {
     protected static final Logger logger = Logger.getLogger(MicroScheduler.class);
 
+    /**
+     * Times the traversal of each shard, across all data threads
+     */
+    protected static final Timer SHARD_TIMER = MetricsRegistry.timer("MicroScheduler.shard");
+
     /**
      * The list of all Traversal engines we've created in this micro scheduler
      */
@@ -119,6 +129,18 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
      */
     ThreadEfficiencyMonitor threadEfficiencyMonitor = null;
 
+    /**
+     * Daemon periodically writing the traversal metrics to the -metricsLog file
+     *
+     * null if metrics are not being collected
+     */
+    private MetricsDaemon metricsDaemon = null;
+
+    /**
+     * Sampling profiler for the traversal threads, or null if we aren't profiling
+     */
+    private SamplingProfiler samplingProfiler = null;
+
     /**
      * MicroScheduler factory function.  Create a microscheduler appropriate for reducing the
      * selected walker.
@@ -192,6 +214,18 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
         this.rods = rods;
 
         final File progressLogFile = engine.getArguments() == null ? null : engine.getArguments().performanceLog;
+        final File metricsLogFile = engine.getArguments() == null ? null : engine.getArguments().metricsLog;
+        if ( metricsLogFile != null ) {
+            MetricsRegistry.reset();
+            MetricsRegistry.enable();
+            metricsDaemon = new MetricsDaemon(metricsLogFile, TimeUnit.SECONDS.toMillis(engine.getArguments().metricsLogInterval));
+        }
+        if ( engine.getArguments() != null && engine.getArguments().samplingProfileStacks != null ) {
+            samplingProfiler = new SamplingProfiler(engine.getArguments().samplingProfileStacks,
+                    engine.getArguments().samplingProfileIntervals,
+                    engine.getArguments().samplingProfileInterval,
+                    SamplingProfiler.DEFAULT_MAX_INTERVALS_TO_REPORT);
+        }
 
         // Creates uninitialized TraversalEngines appropriate for walker and threadAllocation,
         // and adds it to the list of created engines for later shutdown.
@@ -304,6 +338,10 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
      */
     protected void startingExecution() {
         engine.getProgressMeter().start();
+        if ( metricsDaemon != null )
+            metricsDaemon.start();
+        if ( samplingProfiler != null )
+            samplingProfiler.start();
     }
 
     /**
@@ -335,6 +373,16 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
             threadEfficiencyMonitor.threadIsDone(Thread.currentThread());
             threadEfficiencyMonitor.printUsageInformation(logger);
         }
+
+        // stop profiling and write out the collected samples
+        if ( samplingProfiler != null )
+            samplingProfiler.done();
+
+        // write out the final state of the traversal metrics, if we're collecting them
+        if ( metricsDaemon != null ) {
+            metricsDaemon.done();
+            MetricsRegistry.disable();
+        }
     }
 
     /**
@@ -34,8 +34,10 @@ import org.broadinstitute.gatk.engine.traversals.TraversalEngine;
 import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.metrics.SamplingProfiler;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 /**
  * User: hanna
  * Date: Apr 29, 2009
@@ -94,9 +96,14 @@ public class ShardTraverser implements Callable {
                     microScheduler.engine.getSampleDB().getSampleNames()); // todo: microScheduler.engine is protected - is it okay to user it here?
 
             for(WindowMaker.WindowMakerIterator iterator: windowMaker) {
-                final ShardDataProvider dataProvider = new LocusShardDataProvider(shard,iterator.getSourceInfo(),microScheduler.getEngine().getGenomeLocParser(),iterator.getLocus(),iterator,microScheduler.reference,microScheduler.rods);
-                accumulator = traversalEngine.traverse(walker, dataProvider, accumulator);
-                dataProvider.close();
+                SamplingProfiler.enterPhase(TraversalEngine.TRAVERSE_PHASE, iterator.getLocus());
+                try {
+                    final ShardDataProvider dataProvider = new LocusShardDataProvider(shard,iterator.getSourceInfo(),microScheduler.getEngine().getGenomeLocParser(),iterator.getLocus(),iterator,microScheduler.reference,microScheduler.rods);
+                    accumulator = traversalEngine.traverse(walker, dataProvider, accumulator);
+                    dataProvider.close();
+                } finally {
+                    SamplingProfiler.exitPhase();
+                }
             }
 
             windowMaker.close();
@@ -105,6 +112,7 @@ public class ShardTraverser implements Callable {
             final long endTime = System.currentTimeMillis();
 
             microScheduler.reportShardTraverseTime(endTime-startTime);
+            MicroScheduler.SHARD_TIMER.record(TimeUnit.MILLISECONDS.toNanos(endTime - startTime));
 
             return accumulator;
         } catch(Throwable t) {
@@ -25,60 +25,76 @@
 
 package org.broadinstitute.gatk.engine.traversals;
 
-import org.broadinstitute.gatk.utils.downsampling.Downsampler;
-import org.broadinstitute.gatk.utils.downsampling.ReservoirDownsampler;
-import org.broadinstitute.gatk.utils.sam.AlignmentStartComparator;
+import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 /**
  * Subsystem to track a list of all reads currently live in the TraverseActiveRegions system,
  * while limiting the total number of reads to a maximum capacity.
  *
+ * Reads are held in a ring of buckets, one per alignment start, in the order they were added.  This lets
+ * TraverseActiveRegions pull just the reads starting at or before the end of a region from the front of
+ * the ring (see popReadsStartingBy), instead of going through every read in the cache for each region.
+ *
+ * The cache never holds more than maxCapacity reads.  Once it's full, each new read either replaces a read
+ * in its own bucket, reservoir style, if that bucket would be the largest one, or evicts a random read from
+ * the largest bucket.  The deepest pileups are thinned first, and reads at sparsely covered starts are kept.
+ *
  * User: depristo
  * Date: 4/7/13
  * Time: 11:23 AM
  */
 public class TAROrderedReadCache {
     private final int maxCapacity;
-    private ArrayList<GATKSAMRecord> undownsampledCache;
-    private Downsampler<GATKSAMRecord> downsampler;
 
-    private static final int UNDOWNSAMPLED_CACHE_MAX_INITIAL_SIZE = 10000;
+    /** The buckets of reads, in increasing order of (contig, alignment start) */
+    private final ArrayDeque<Bucket> buckets = new ArrayDeque<>();
 
-    /**
-     * Create a new empty ReadCache
-     * @param maxCapacity the max capacity of the read cache.
-     */
-    public TAROrderedReadCache( final int maxCapacity ) {
-        if ( maxCapacity < 0 ) throw new IllegalArgumentException("maxCapacity must be >= 0 but got " + maxCapacity);
-        this.maxCapacity = maxCapacity;
+    /** The buckets ordered from largest to smallest, only maintained while the cache is at capacity */
+    private TreeSet<Bucket> bucketsBySize = null;
 
-        // The one we're not currently using will always be null:
-        initializeUndownsampledCache();
-        this.downsampler = null;
-    }
+    private int size = 0;
+    private int numDiscarded = 0;
+    private long nBucketsCreated = 0;
 
     /**
-     * Moves all reads over to the downsampler, causing it to be used from this point on. Should be called
-     * when the undownsampledCache fills up and we need to start discarding reads. Since the
-     * ReservoirDownsampler doesn't preserve relative ordering, pop operations become expensive
-     * after this point, as they require a O(n log n) sort.
+     * All of the reads in the cache that share a contig and alignment start
      */
-    private void activateDownsampler() {
-        downsampler = new ReservoirDownsampler<>(maxCapacity, false);
-        downsampler.submit(undownsampledCache);
-        undownsampledCache = null; // preferable to the O(n) clear() method
+    private static final class Bucket {
+        private final int contigIndex, start;
+        private final long id;
+        private final ArrayList<GATKSAMRecord> reads = new ArrayList<>(2);
+        /** the number of reads submitted to this bucket, including the ones discarded */
+        private int nSeen = 0;
+
+        private Bucket(final int contigIndex, final int start, final long id) {
+            this.contigIndex = contigIndex;
+            this.start = start;
+            this.id = id;
+        }
+
+        private boolean startsAfter(final int contigIndex, final int start) {
+            return this.contigIndex > contigIndex || ( this.contigIndex == contigIndex && this.start > start );
+        }
     }
 
+    private static final Comparator<Bucket> LARGEST_FIRST = new Comparator<Bucket>() {
+        @Override
+        public int compare(final Bucket b1, final Bucket b2) {
+            final int bySize = Integer.compare(b2.reads.size(), b1.reads.size());
+            return bySize != 0 ? bySize : Long.compare(b1.id, b2.id);
+        }
+    };
+
     /**
-     * Allocate the undownsampled cache used when we have fewer than maxCapacity items
+     * Create a new empty ReadCache
+     * @param maxCapacity the max capacity of the read cache.
      */
-    private void initializeUndownsampledCache() {
-        undownsampledCache = new ArrayList<>(Math.min(maxCapacity + 1, UNDOWNSAMPLED_CACHE_MAX_INITIAL_SIZE));
+    public TAROrderedReadCache( final int maxCapacity ) {
+        if ( maxCapacity < 0 ) throw new IllegalArgumentException("maxCapacity must be >= 0 but got " + maxCapacity);
+        this.maxCapacity = maxCapacity;
     }
 
     /**
@@ -90,27 +106,30 @@ public class TAROrderedReadCache {
     }
 
     /**
-     * Add a single read to this cache.  Assumed to be in sorted order w.r.t. the previously added reads
+     * Add a single read to this cache.  Must be in sorted order w.r.t. the previously added reads
      * @param read a read to add
      */
     public void add( final GATKSAMRecord read ) {
         if ( read == null ) throw new IllegalArgumentException("Read cannot be null");
 
-        if ( downsampler != null ) {
-            downsampler.submit(read);
+        Bucket bucket = buckets.peekLast();
+        if ( bucket == null || bucket.contigIndex != read.getReferenceIndex() || bucket.start != read.getAlignmentStart() ) {
+            if ( bucket != null && bucket.startsAfter(read.getReferenceIndex(), read.getAlignmentStart()) )
+                throw new IllegalArgumentException("Read " + read + " starts before the last read added to the cache at " + bucket.contigIndex + ":" + bucket.start);
+            bucket = new Bucket(read.getReferenceIndex(), read.getAlignmentStart(), nBucketsCreated++);
+            buckets.addLast(bucket);
+            if ( bucketsBySize != null ) bucketsBySize.add(bucket);
         }
-        else {
-            undownsampledCache.add(read);
+        bucket.nSeen++;
 
-            // No more room in the undownsampledCache? Time to start downsampling
-            if ( undownsampledCache.size() > maxCapacity ) {
-                activateDownsampler();
-            }
-        }
+        if ( size < maxCapacity )
+            addToBucket(bucket, read);
+        else
+            downsample(bucket, read);
     }
 
     /**
-     * Add a collection of reads to this cache.  Assumed to be in sorted order w.r.t. the previously added reads and each other
+     * Add a collection of reads to this cache.  Must be in sorted order w.r.t. the previously added reads and each other
      * @param reads a collection of reads to add
      */
     public void addAll( final List<GATKSAMRecord> reads ) {
@@ -125,44 +144,141 @@ public class TAROrderedReadCache {
      * @return a positive integer
      */
     public int size() {
-        return downsampler != null ? downsampler.size() : undownsampledCache.size();
+        return size;
     }
 
     /**
-     * How many reads were discarded since the last call to popCurrentReads
+     * How many reads were discarded since the last call to popCurrentReads or popReadsStartingBy
+     *
+     * returnReads doesn't affect the count
      *
      * @return number of items discarded during downsampling since last pop operation
      */
     public int getNumDiscarded() {
-        return downsampler != null ? downsampler.getNumberOfDiscardedItems() : 0;
+        return numDiscarded;
     }
 
     /**
      * Removes all reads currently in the cache, and returns them in sorted order (w.r.t. alignmentStart)
      *
-     * Flushes this cache, so after this call the cache will contain no reads, and we'll be in the same
-     * initial state as the constructor would put us in, with a non-null undownsampledCache and a null
-     * downsampler.
+     * Flushes this cache, so after this call the cache will contain no reads, and the count of discarded
+     * reads is reset to 0.
      *
      * @return a list of GATKSAMRecords in this cache
      */
     public List<GATKSAMRecord> popCurrentReads() {
-        final List<GATKSAMRecord> poppedReads;
+        final List<GATKSAMRecord> poppedReads = new ArrayList<>(size);
+        for ( final Bucket bucket : buckets )
+            poppedReads.addAll(bucket.reads);
 
-        if ( downsampler == null ) {
-            poppedReads = undownsampledCache;  // avoid making a copy here, since we're going to allocate a new cache
+        buckets.clear();
+        bucketsBySize = null;
+        size = 0;
+        numDiscarded = 0;
+        return poppedReads;
+    }
+
+    /**
+     * Removes and returns, in sorted order, all of the reads on contigs before contigIndex and all of the reads
+     * on contigIndex whose alignment start is <= stop
+     *
+     * Only the front of the cache is visited, so the cost is proportional to the number of reads returned.  Reads
+     * that are still needed can be put back with returnReads().  Like popCurrentReads, resets the count of
+     * discarded reads to 0.
+     *
+     * @param contigIndex the index of the contig of the span
+     * @param stop the last position of the span
+     * @return a non-null list of reads
+     */
+    public List<GATKSAMRecord> popReadsStartingBy(final int contigIndex, final int stop) {
+        final List<GATKSAMRecord> poppedReads = new ArrayList<>();
+        while ( ! buckets.isEmpty() && ! buckets.peekFirst().startsAfter(contigIndex, stop) ) {
+            final Bucket bucket = buckets.removeFirst();
+            if ( bucketsBySize != null ) bucketsBySize.remove(bucket);
+            poppedReads.addAll(bucket.reads);
+            size -= bucket.reads.size();
         }
-        else {
-            // If we triggered the downsampler, we need to sort the reads before returning them,
-            // since the ReservoirDownsampler is not guaranteed to preserve relative ordering of items.
-            // After consuming the downsampled items in this call to popCurrentReads(), we switch back
-            // to using the undownsampledCache until we fill up again.
-            poppedReads = downsampler.consumeFinalizedItems();  // avoid making a copy here
-            Collections.sort(poppedReads, new AlignmentStartComparator());
-            downsampler = null;
+        if ( size < maxCapacity )
+            bucketsBySize = null;
+        numDiscarded = 0;
+        return poppedReads;
+    }
+
+    /**
+     * Put reads previously obtained from popReadsStartingBy back at the front of the cache
+     *
+     * @param reads a sorted list of reads, all of which start before any read currently in the cache
+     */
+    public void returnReads(final List<GATKSAMRecord> reads) {
+        if ( reads == null ) throw new IllegalArgumentException("Reads cannot be null");
+        if ( size + reads.size() > maxCapacity ) throw new IllegalArgumentException("Returning " + reads.size() + " reads would put the cache over its capacity " + maxCapacity);
+
+        final ArrayDeque<Bucket> front = new ArrayDeque<>();
+        for ( final GATKSAMRecord read : reads ) {
+            Bucket bucket = front.peekLast();
+            if ( bucket == null || bucket.contigIndex != read.getReferenceIndex() || bucket.start != read.getAlignmentStart() ) {
+                if ( bucket != null && bucket.startsAfter(read.getReferenceIndex(), read.getAlignmentStart()) )
+                    throw new IllegalArgumentException("Returned reads aren't sorted at " + read);
+                bucket = new Bucket(read.getReferenceIndex(), read.getAlignmentStart(), nBucketsCreated++);
+                front.addLast(bucket);
+            }
+            bucket.reads.add(read);
+            bucket.nSeen++;
         }
 
-        initializeUndownsampledCache();
-        return poppedReads;
+        if ( ! front.isEmpty() && ! buckets.isEmpty() && ! buckets.peekFirst().startsAfter(front.peekLast().contigIndex, front.peekLast().start) )
+            throw new IllegalArgumentException("Returned reads must all start before the reads in the cache");
+
+        while ( ! front.isEmpty() ) {
+            final Bucket bucket = front.removeLast();
+            buckets.addFirst(bucket);
+            if ( bucketsBySize != null ) bucketsBySize.add(bucket);
+        }
+        size += reads.size();
+    }
+
+    private void addToBucket(final Bucket bucket, final GATKSAMRecord read) {
+        if ( bucketsBySize != null ) bucketsBySize.remove(bucket);
+        bucket.reads.add(read);
+        if ( bucketsBySize != null ) bucketsBySize.add(bucket);
+        size++;
+    }
+
+    /**
+     * Make room for read in the full cache, or discard it
+     *
+     * @param bucket the bucket of read, which must be the last bucket in the cache
+     * @param read the read to add
+     */
+    private void downsample(final Bucket bucket, final GATKSAMRecord read) {
+        numDiscarded++;
+
+        if ( maxCapacity == 0 ) {
+            if ( bucket.reads.isEmpty() ) buckets.removeLast();
+            return;
+        }
+
+        if ( bucketsBySize == null ) {
+            bucketsBySize = new TreeSet<>(LARGEST_FIRST);
+            bucketsBySize.addAll(buckets);
+        }
+
+        final Bucket largest = bucketsBySize.first();
+        if ( bucket.reads.size() >= largest.reads.size() ) {
+            // adding read would make its bucket the largest, so sample it into the bucket reservoir style
+            final int slot = Utils.getRandomGenerator().nextInt(bucket.nSeen);
+            if ( slot < bucket.reads.size() )
+                bucket.reads.set(slot, read);
+        } else {
+            // thin out the largest bucket to make room for read
+            bucketsBySize.remove(largest);
+            largest.reads.remove(Utils.getRandomGenerator().nextInt(largest.reads.size()));
+            if ( largest.reads.isEmpty() )
+                buckets.remove(largest);
+            else
+                bucketsBySize.add(largest);
+            size--;
+            addToBucket(bucket, read);
+        }
     }
 }
@@ -38,6 +38,14 @@ public abstract class TraversalEngine<M,T,WalkerType extends Walker<M,T>,Provide
     /** our log, which we want to capture anything from this class */
     protected static final Logger logger = Logger.getLogger(TraversalEngine.class);
 
+    /**
+     * Walker phases reported to the SamplingProfiler
+     */
+    public static final String TRAVERSE_PHASE = "traverse";
+    public static final String IS_ACTIVE_PHASE = "isActive";
+    public static final String MAP_PHASE = "map";
+    public static final String REDUCE_PHASE = "reduce";
+
     protected GenomeAnalysisEngine engine;
     private ProgressMeter progressMeter;
 
@@ -39,9 +39,17 @@ import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
+import org.broadinstitute.gatk.utils.activeregion.ActivityMap;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfile;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
 import org.broadinstitute.gatk.utils.activeregion.BandPassActivityProfile;
+import org.broadinstitute.gatk.utils.activeregion.LocusSummaryBatch;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.metrics.Counter;
+import org.broadinstitute.gatk.utils.metrics.Histogram;
+import org.broadinstitute.gatk.utils.metrics.MetricsRegistry;
+import org.broadinstitute.gatk.utils.metrics.SamplingProfiler;
+import org.broadinstitute.gatk.utils.metrics.Timer;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
@@ -51,6 +59,7 @@ import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -80,6 +89,18 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
     protected final static Logger logger = Logger.getLogger(TraversalEngine.class);
     protected final static boolean LOG_READ_CARRYING = false;
 
+    // traversal metrics, only recorded when the MetricsRegistry is enabled
+    private final static Timer IS_ACTIVE_TIMER = MetricsRegistry.timer("TraverseActiveRegions.isActive");
+    private final static Timer PREP_REGION_TIMER = MetricsRegistry.timer("TraverseActiveRegions.prepRegion");
+    private final static Timer MAP_TIMER = MetricsRegistry.timer("TraverseActiveRegions.map");
+    private final static Timer REDUCE_TIMER = MetricsRegistry.timer("TraverseActiveRegions.reduce");
+    private final static Counter ACTIVE_REGIONS = MetricsRegistry.counter("TraverseActiveRegions.activeRegions");
+    private final static Counter INACTIVE_REGIONS = MetricsRegistry.counter("TraverseActiveRegions.inactiveRegions");
+    private final static Counter SKIPPED_LOCI = MetricsRegistry.counter("TraverseActiveRegions.activityMapSkippedLoci");
+    private final static Histogram REGION_SIZE = MetricsRegistry.histogram("TraverseActiveRegions.regionSize");
+    private final static Histogram READS_PER_REGION = MetricsRegistry.histogram("TraverseActiveRegions.readsPerRegion");
+    private final static Histogram READS_IN_MEMORY = MetricsRegistry.histogram("TraverseActiveRegions.readsInMemory");
+
     // set by the traversal
     private boolean walkerHasPresetRegions = false;
     private int activeRegionExtension = -1;
@@ -93,10 +114,17 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
     private GenomeLoc lastRegionProcessed = null;
     private GenomeLoc spanOfLastReadSeen = null;
     private ActivityProfile activityProfile = null;
+
+    /**
+     * The pileup summaries of the loci waiting for a batched isActive call, or null if the walker uses the per-locus isActive
+     */
+    private LocusSummaryBatch activityBatch = null;
+    private double[] activityBatchProbs = null;
+
     int maxReadsInMemory = 0;
     ActiveRegionWalker<M, T> walker;
 
-    final NanoScheduler<MapData, M, T> nanoScheduler;
+    final NanoScheduler<MapData, MapResult<M>, T> nanoScheduler;
 
     /**
      * Data to use in the ActiveRegionWalker.map function produced by the NanoScheduler input iterator
@@ -111,6 +139,20 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         }
     }
 
+    /**
+     * The result of the ActiveRegionWalker.map function along with the region it was computed for, so
+     * that the reduce of that result can be attributed to the region as well
+     */
+    private static class MapResult<M> {
+        public final GenomeLoc location;
+        public final M value;
+
+        private MapResult(final GenomeLoc location, final M value) {
+            this.location = location;
+            this.value = value;
+        }
+    }
+
     /**
      * Create a single threaded active region traverser
      */
@@ -162,6 +204,13 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         activityProfile = new BandPassActivityProfile(engine.getGenomeLocParser(), engine.getIntervals(), this.walker.maxProbPropagationDistance, this.walker.activeProbThreshold,
                 BandPassActivityProfile.MAX_FILTER_SIZE, bandPassSigma);
 
+        activityBatch = this.walker.makeLocusSummaryBatch();
+        if ( activityBatch != null ) {
+            if ( ! overridesBatchedIsActive(this.walker) )
+                throw new ReviewedGATKException("Walker " + walker.getClass().getSimpleName() + " returns a LocusSummaryBatch but doesn't override the batched isActive function");
+            activityBatchProbs = new double[activityBatch.capacity()];
+        }
+
         final int maxReadsAcrossSamples = annotation.maxReadsToHoldInMemoryPerSample() * ReadUtils.getSAMFileSamples(engine.getSAMFileHeader()).size();
         final int maxReadsToHoldInMemory = Math.min(maxReadsAcrossSamples, annotation.maxReadsToHoldTotal());
         myReads = new TAROrderedReadCache(maxReadsToHoldInMemory);
@@ -286,9 +335,11 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         private final IntervalReferenceOrderedView referenceOrderedDataView;
         private final GenomeLoc currentWindow;
         private final boolean processRemainingActiveRegions;
+        private final ActivityMap activityMap;
 
         public ActiveRegionIterator( final LocusShardDataProvider dataProvider ) {
             this.dataProvider = dataProvider;
+            activityMap = walkerHasPresetRegions || walker.forceActive ? null : walker.getActivityMap();
             locusView = new AllLocusView(dataProvider);
             referenceView = new LocusReferenceView( walker, dataProvider );
 
@@ -321,6 +372,23 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
 
         @Override public void remove() { throw new UnsupportedOperationException("Cannot remove from ActiveRegionIterator"); }
 
+        private void evaluateActivityBatch() {
+            SamplingProfiler.enterPhase(IS_ACTIVE_PHASE, SamplingProfiler.isProfiling() ? getBatchSpan() : null);
+            try {
+                addBatchedIsActiveResult(walker);
+            } finally {
+                SamplingProfiler.exitPhase();
+            }
+        }
+
+        /**
+         * @return the loci of the (non-empty) activity batch, as a single interval
+         */
+        private GenomeLoc getBatchSpan() {
+            final GenomeLoc first = activityBatch.getFirstLoc();
+            return engine.getGenomeLocParser().createGenomeLoc(first.getContig(), first.getStart(), first.getStart() + activityBatch.size() - 1);
+        }
+
         @Override
         public MapData next() {
             return readyActiveRegions.pop();
@@ -360,23 +428,48 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
                     if ( outsideEngineIntervals(location) )
                         continue;
 
-                    // we've move across some interval boundary, restart profile
+                    // the pending batch must be evaluated before we can start a new, non-contiguous one
+                    if ( activityBatch != null && ! activityBatch.canAdd(location) )
+                        evaluateActivityBatch();
+
+                    // we've move across some interval boundary, restart profile.  Any loci waiting in the batch
+                    // are contiguous with both the profile and this location
                     final boolean flushProfile = ! activityProfile.isEmpty()
+                            && ( activityBatch == null || activityBatch.isEmpty() )
                             && ( activityProfile.getContigIndex() != location.getContigIndex()
                             || location.getStart() != activityProfile.getStop() + 1);
                     final List<MapData> newActiveRegions = prepActiveRegionsForProcessing(walker, flushProfile, false, referenceOrderedDataView);
 
                     dataProvider.getShard().getReadMetrics().incrementNumIterations();
 
-                    // create reference context. Note that if we have a pileup of "extended events", the context will
-                    // hold the (longest) stretch of deleted reference bases (if deletions are present in the pileup).
-                    final ReferenceContext refContext = referenceView.getReferenceContext(location);
-
-                    // Iterate forward to get all reference ordered data covering this location
-                    final RefMetaDataTracker tracker = referenceOrderedDataView.getReferenceOrderedDataAtLocus(locus.getLocation());
-
-                    // Call the walkers isActive function for this locus and add them to the list to be integrated later
-                    addIsActiveResult(walker, tracker, refContext, locus);
+                    if ( activityMap != null && activityMap.isReference(location) ) {
+                        // the precomputed activity map says this locus is reference-like, so don't bother the walker.
+                        // Loci waiting in the batch come first in the profile
+                        if ( activityBatch != null && ! activityBatch.isEmpty() )
+                            evaluateActivityBatch();
+                        activityProfile.add(new ActivityProfileState(location, 0.0));
+                        SKIPPED_LOCI.increment();
+                    } else if ( activityBatch != null ) {
+                        // Summarize the pileup for the walker's batched isActive function, calling it once the batch is full
+                        activityBatch.add(location, referenceView.getReferenceContext(location).getBase(), locus.getBasePileup());
+                        if ( activityBatch.isFull() )
+                            evaluateActivityBatch();
+                    } else {
+                        // create reference context. Note that if we have a pileup of "extended events", the context will
+                        // hold the (longest) stretch of deleted reference bases (if deletions are present in the pileup).
+                        final ReferenceContext refContext = referenceView.getReferenceContext(location);
+
+                        // Iterate forward to get all reference ordered data covering this location
+                        final RefMetaDataTracker tracker = referenceOrderedDataView.getReferenceOrderedDataAtLocus(locus.getLocation());
+
+                        // Call the walkers isActive function for this locus and add them to the list to be integrated later
+                        SamplingProfiler.enterPhase(IS_ACTIVE_PHASE, location);
+                        try {
+                            addIsActiveResult(walker, tracker, refContext, locus);
+                        } finally {
+                            SamplingProfiler.exitPhase();
+                        }
+                    }
 
                     maxReadsInMemory = Math.max(myReads.size(), maxReadsInMemory);
                     printProgress(location);
@@ -390,6 +483,10 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
                     }
                 }
 
+                // don't leave loci waiting in the batch beyond the end of this window
+                if ( activityBatch != null && ! activityBatch.isEmpty() )
+                    evaluateActivityBatch();
+
                 if ( processRemainingActiveRegions ) {
                     // we've run out of stuff to process, and since shards now span entire contig boundaries
                     // we should finalized our regions.  This allows us to continue to use our referenceOrderedDataView
@@ -616,13 +713,72 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
                                    final RefMetaDataTracker tracker, final ReferenceContext refContext,
                                    final AlignmentContext locus) {
         // must be called, even if we won't use the result, to satisfy walker contract
+        final long start = IS_ACTIVE_TIMER.start();
         final ActivityProfileState state = walker.isActive( tracker, refContext, locus );
+        IS_ACTIVE_TIMER.stop(start);
         if ( walker.forceActive) state.isActiveProb = 1.0;
         if ( ! walkerHasPresetRegions ) {
             activityProfile.add(state);
         }
     }
 
+    /**
+     * Invoke the walker batched isActive function on the loci in activityBatch, incorporate the results into
+     * the activity profile, and empty the batch
+     *
+     * @param walker the walker we're running
+     */
+    private void addBatchedIsActiveResult(final ActiveRegionWalker<M, T> walker) {
+        final int nLoci = activityBatch.size();
+
+        // must be called, even if we won't use the result, to satisfy walker contract
+        final long start = IS_ACTIVE_TIMER.start();
+        walker.isActive(activityBatch, activityBatchProbs);
+        IS_ACTIVE_TIMER.stop(start);
+        if ( walker.forceActive ) Arrays.fill(activityBatchProbs, 0, nLoci, 1.0);
+        if ( ! walkerHasPresetRegions ) {
+            // loci with high quality soft clips need states of their own, the runs of loci between them are added in blocks
+            final double[] softClips = activityBatch.getHighQualitySoftClips();
+            final GenomeLoc firstLoc = activityBatch.getFirstLoc();
+            int runStart = 0;
+            for ( int i = 0; i < nLoci; i++ ) {
+                if ( Double.isNaN(softClips[i]) )
+                    continue;
+                addActivityRun(firstLoc, runStart, i);
+                final GenomeLoc loc = engine.getGenomeLocParser().createGenomeLoc(firstLoc.getContig(), firstLoc.getStart() + i, firstLoc.getStart() + i);
+                activityProfile.add(new ActivityProfileState(loc, activityBatchProbs[i], ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS, softClips[i]));
+                runStart = i + 1;
+            }
+            addActivityRun(firstLoc, runStart, nLoci);
+        }
+        activityBatch.clear();
+    }
+
+    /**
+     * Add the probabilities of the batch loci [from, to) to the activity profile
+     */
+    private void addActivityRun(final GenomeLoc firstLoc, final int from, final int to) {
+        if ( from == to )
+            return;
+        if ( from == 0 ) {
+            activityProfile.addAll(firstLoc, activityBatchProbs, to);
+        } else {
+            final double[] run = Arrays.copyOfRange(activityBatchProbs, from, to);
+            activityProfile.addAll(engine.getGenomeLocParser().createGenomeLoc(firstLoc.getContig(), firstLoc.getStart() + from, firstLoc.getStart() + from), run, run.length);
+        }
+    }
+
+    /**
+     * @return true if walker's class overrides ActiveRegionWalker.isActive(LocusSummaryBatch, double[])
+     */
+    protected static boolean overridesBatchedIsActive(final ActiveRegionWalker<?, ?> walker) {
+        try {
+            return walker.getClass().getMethod("isActive", LocusSummaryBatch.class, double[].class).getDeclaringClass() != ActiveRegionWalker.class;
+        } catch ( NoSuchMethodException e ) {
+            throw new ReviewedGATKException("ActiveRegionWalker has no batched isActive function", e);
+        }
+    }
+
     /**
      * Take the individual isActive calls and integrate them into contiguous active regions and
      * add these blocks of work to the work queue
@@ -659,8 +815,12 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
     private MapData prepActiveRegionForProcessing(final ActiveRegion activeRegion,
                                                   final ActiveRegionWalker<M, T> walker,
                                                   final IntervalReferenceOrderedView referenceOrderedDataView) {
+        final long start = PREP_REGION_TIMER.start();
+        READS_IN_MEMORY.record(myReads.size());
+        // only reads starting by the end of the extended region can be in it, or be dead after it
+        final GenomeLoc extendedLoc = activeRegion.getExtendedLoc();
         final List<GATKSAMRecord> stillLive = new LinkedList<>();
-        for ( final GATKSAMRecord read : myReads.popCurrentReads() ) {
+        for ( final GATKSAMRecord read : myReads.popReadsStartingBy(extendedLoc.getContigIndex(), extendedLoc.getStop()) ) {
             boolean killed = false;
             final GenomeLoc readLoc = this.engine.getGenomeLocParser().createGenomeLoc( read );
 
@@ -682,7 +842,7 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
             // keep track of all of the still live active regions
             if ( ! killed ) stillLive.add(read);
         }
-        myReads.addAll(stillLive);
+        myReads.returnReads(stillLive);
 
         if ( logger.isDebugEnabled() ) {
             logger.debug(">> Map call with " + activeRegion.getReads().size() + " " + (activeRegion.isActive() ? "active" : "inactive") + " reads @ " + activeRegion.getLocation() + " with full extent: " + activeRegion.getReadSpanLoc());
@@ -699,21 +859,43 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         // trim away all of the features that occurred before this location, as we will not need them in the future
         referenceOrderedDataView.trimCurrentFeaturesToLoc(loc);
 
+        if ( activeRegion.isActive() ) ACTIVE_REGIONS.increment(); else INACTIVE_REGIONS.increment();
+        REGION_SIZE.record(loc.size());
+        READS_PER_REGION.record(activeRegion.size());
+        PREP_REGION_TIMER.stop(start);
+
         return new MapData(activeRegion, tracker);
     }
 
-    private class TraverseActiveRegionMap implements NSMapFunction<MapData, M> {
+    private class TraverseActiveRegionMap implements NSMapFunction<MapData, MapResult<M>> {
         @Override
-        public M apply(final MapData mapData) {
+        public MapResult<M> apply(final MapData mapData) {
             if ( DEBUG ) logger.info("Executing walker.map for " + mapData.activeRegion + " in thread " + Thread.currentThread().getName());
-            return walker.map(mapData.activeRegion, mapData.tracker);
+            final GenomeLoc location = mapData.activeRegion.getLocation();
+            SamplingProfiler.enterPhase(MAP_PHASE, location);
+            try {
+                final long start = MAP_TIMER.start();
+                final M result = walker.map(mapData.activeRegion, mapData.tracker);
+                MAP_TIMER.stop(start);
+                return new MapResult<>(location, result);
+            } finally {
+                SamplingProfiler.exitPhase();
+            }
         }
     }
 
-    private class TraverseActiveRegionReduce implements NSReduceFunction<M, T> {
+    private class TraverseActiveRegionReduce implements NSReduceFunction<MapResult<M>, T> {
         @Override
-        public T apply(M one, T sum) {
-            return walker.reduce(one, sum);
+        public T apply(MapResult<M> one, T sum) {
+            SamplingProfiler.enterPhase(REDUCE_PHASE, one.location);
+            try {
+                final long start = REDUCE_TIMER.start();
+                final T result = walker.reduce(one.value, sum);
+                REDUCE_TIMER.stop(start);
+                return result;
+            } finally {
+                SamplingProfiler.exitPhase();
+            }
         }
     }
 }
@@ -32,8 +32,12 @@ import org.broadinstitute.gatk.engine.datasources.providers.*;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.engine.walkers.DataSource;
 import org.broadinstitute.gatk.engine.walkers.LocusWalker;
+import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.metrics.MetricsRegistry;
+import org.broadinstitute.gatk.utils.metrics.SamplingProfiler;
+import org.broadinstitute.gatk.utils.metrics.Timer;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
@@ -48,9 +52,16 @@ import java.util.Iterator;
 public class TraverseLociNano<M,T> extends TraversalEngine<M,T,LocusWalker<M,T>,LocusShardDataProvider> {
     /** our log, which we want to capture anything from this class */
     private static final boolean DEBUG = false;
+    private static final Timer MAP_TIMER = MetricsRegistry.timer("TraverseLoci.map");
+    private static final Timer REDUCE_TIMER = MetricsRegistry.timer("TraverseLoci.reduce");
 
     final NanoScheduler<MapData, MapResult, T> nanoScheduler;
 
+    /**
+     * The window of the genome we're currently traversing, reported to the SamplingProfiler by the map threads
+     */
+    private volatile GenomeLoc currentWindow = null;
+
     public TraverseLociNano(int nThreads) {
         nanoScheduler = new NanoScheduler<MapData, MapResult, T>(nThreads);
         nanoScheduler.setProgressFunction(new TraverseLociProgress());
@@ -76,6 +87,7 @@ public class TraverseLociNano<M,T> extends TraversalEngine<M,T,LocusWalker<M,T>,
                        LocusShardDataProvider dataProvider,
                        T sum) {
         logger.debug(String.format("TraverseLoci.traverse: Shard is %s", dataProvider));
+        currentWindow = dataProvider.getLocus();
 
         final LocusView locusView = getLocusView( walker, dataProvider );
 
@@ -126,7 +138,7 @@ public class TraverseLociNano<M,T> extends TraversalEngine<M,T,LocusWalker<M,T>,
         else if( dataSource == DataSource.REFERENCE ) //|| ! GenomeAnalysisEngine.instance.getArguments().enableRodWalkers )
             return new AllLocusView(dataProvider);
         else if( dataSource == DataSource.REFERENCE_ORDERED_DATA )
-            return new RodLocusView(dataProvider);
+            return new RodLocusView(dataProvider, walker instanceof RodWalker ? ((RodWalker)walker).getSiteFilter() : null);
         else
             throw new UnsupportedOperationException("Unsupported traversal type: " + dataSource);
     }
@@ -264,8 +276,15 @@ public class TraverseLociNano<M,T> extends TraversalEngine<M,T,LocusWalker<M,T>,
             if ( ! walker.isDone() ) {
                 final boolean keepMeP = walker.filter(data.tracker, data.refContext, data.alignmentContext);
                 if (keepMeP) {
-                    final M x = walker.map(data.tracker, data.refContext, data.alignmentContext);
-                    return new MapResult(x);
+                    SamplingProfiler.enterPhase(MAP_PHASE, currentWindow);
+                    try {
+                        final long start = MAP_TIMER.start();
+                        final M x = walker.map(data.tracker, data.refContext, data.alignmentContext);
+                        MAP_TIMER.stop(start);
+                        return new MapResult(x);
+                    } finally {
+                        SamplingProfiler.exitPhase();
+                    }
                 }
             }
             return SKIP_REDUCE;
@@ -286,10 +305,18 @@ public class TraverseLociNano<M,T> extends TraversalEngine<M,T,LocusWalker<M,T>,
 
         @Override
         public T apply(MapResult one, T sum) {
-            if ( one.reduceMe )
+            if ( one.reduceMe ) {
                 // only run reduce on values that aren't DONE or FAILED
-                return walker.reduce(one.value, sum);
-            else
+                SamplingProfiler.enterPhase(REDUCE_PHASE, currentWindow);
+                try {
+                    final long start = REDUCE_TIMER.start();
+                    final T result = walker.reduce(one.value, sum);
+                    REDUCE_TIMER.stop(start);
+                    return result;
+                } finally {
+                    SamplingProfiler.exitPhase();
+                }
+            } else
                 return sum;
         }
     }
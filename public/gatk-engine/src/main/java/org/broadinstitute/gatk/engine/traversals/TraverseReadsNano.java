@@ -34,6 +34,10 @@ import org.broadinstitute.gatk.engine.datasources.providers.ReadShardDataProvide
 import org.broadinstitute.gatk.engine.datasources.providers.ReadView;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.engine.walkers.ReadWalker;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.metrics.MetricsRegistry;
+import org.broadinstitute.gatk.utils.metrics.SamplingProfiler;
+import org.broadinstitute.gatk.utils.metrics.Timer;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
@@ -58,8 +62,15 @@ public class TraverseReadsNano<M,T> extends TraversalEngine<M,T,ReadWalker<M,T>,
     private final static boolean PRE_READ_ALL_MAP_DATA = true;
     protected static final Logger logger = Logger.getLogger(TraverseReadsNano.class);
     private static final boolean DEBUG = false;
+    private static final Timer MAP_TIMER = MetricsRegistry.timer("TraverseReads.map");
+    private static final Timer REDUCE_TIMER = MetricsRegistry.timer("TraverseReads.reduce");
     final NanoScheduler<MapData, MapResult, T> nanoScheduler;
 
+    /**
+     * The window of the genome we're currently traversing, reported to the SamplingProfiler by the map threads
+     */
+    private volatile GenomeLoc currentWindow = null;
+
     public TraverseReadsNano(int nThreads) {
         nanoScheduler = new NanoScheduler<MapData, MapResult, T>(nThreads);
         nanoScheduler.setProgressFunction(new NSProgressFunction<MapData>() {
@@ -95,6 +106,7 @@ public class TraverseReadsNano<M,T> extends TraversalEngine<M,T,ReadWalker<M,T>,
             throw new IllegalArgumentException("Unable to traverse reads; no read data is available.");
 
         nanoScheduler.setDebug(DEBUG);
+        currentWindow = SamplingProfiler.isProfiling() ? dataProvider.getShard().getLocation() : null;
         final TraverseReadsMap myMap = new TraverseReadsMap(walker);
         final TraverseReadsReduce myReduce = new TraverseReadsReduce(walker);
 
@@ -224,8 +236,17 @@ public class TraverseReadsNano<M,T> extends TraversalEngine<M,T,ReadWalker<M,T>,
         public MapResult apply(final MapData data) {
             if ( ! walker.isDone() ) {
                 final boolean keepMeP = walker.filter(data.refContext, data.read);
-                if (keepMeP)
-                    return new MapResult(walker.map(data.refContext, data.read, data.tracker));
+                if (keepMeP) {
+                    SamplingProfiler.enterPhase(MAP_PHASE, currentWindow);
+                    try {
+                        final long start = MAP_TIMER.start();
+                        final M x = walker.map(data.refContext, data.read, data.tracker);
+                        MAP_TIMER.stop(start);
+                        return new MapResult(x);
+                    } finally {
+                        SamplingProfiler.exitPhase();
+                    }
+                }
             }
 
             return SKIP_REDUCE;
@@ -246,10 +267,18 @@ public class TraverseReadsNano<M,T> extends TraversalEngine<M,T,ReadWalker<M,T>,
 
         @Override
         public T apply(MapResult one, T sum) {
-            if ( one.reduceMe )
+            if ( one.reduceMe ) {
                 // only run reduce on values that aren't DONE or FAILED
-                return walker.reduce(one.value, sum);
-            else
+                SamplingProfiler.enterPhase(REDUCE_PHASE, currentWindow);
+                try {
+                    final long start = REDUCE_TIMER.start();
+                    final T result = walker.reduce(one.value, sum);
+                    REDUCE_TIMER.stop(start);
+                    return result;
+                } finally {
+                    SamplingProfiler.exitPhase();
+                }
+            } else
                 return sum;
         }
     }
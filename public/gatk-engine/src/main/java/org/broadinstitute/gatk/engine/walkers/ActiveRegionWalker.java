@@ -39,7 +39,9 @@ import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegionReadState;
+import org.broadinstitute.gatk.utils.activeregion.ActivityMap;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
+import org.broadinstitute.gatk.utils.activeregion.LocusSummaryBatch;
 import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
 import org.broadinstitute.gatk.utils.interval.IntervalSetRule;
 import org.broadinstitute.gatk.utils.interval.IntervalUtils;
@@ -178,6 +180,48 @@ public abstract class ActiveRegionWalker<MapType, ReduceType> extends Walker<Map
     @Ensures({"result.isActiveProb >= 0.0", "result.isActiveProb <= 1.0"})
     public abstract ActivityProfileState isActive(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context);
 
+    /**
+     * Create the batch the engine should fill with primitive pileup summaries for isActive(LocusSummaryBatch, double[])
+     *
+     * Walkers that can determine the activity of a locus from the counts in a LocusSummaryBatch alone should
+     * override this function along with the batched isActive.  The engine then summarizes each pileup into the
+     * batch and calls the batched isActive once per window of contiguous loci, instead of calling the per-locus
+     * isActive with a full AlignmentContext and RefMetaDataTracker.
+     *
+     * @return a new LocusSummaryBatch, or null (the default) if the walker needs the per-locus isActive
+     */
+    public LocusSummaryBatch makeLocusSummaryBatch() {
+        return null;
+    }
+
+    /**
+     * Determine the probability of being active for each locus in batch
+     *
+     * Only called if makeLocusSummaryBatch() returns a non-null batch, in which case the walker must override
+     * this function; the engine refuses to run a walker that returns a batch but doesn't.  Loci whose per-locus
+     * isActive would return a state with high quality soft clips should be marked with
+     * LocusSummaryBatch.markHighQualitySoftClips()
+     *
+     * @param batch the summaries of a window of contiguous loci
+     * @param isActiveProbs array to receive the probabilities of being active, between 0.0 and 1.0, where element i
+     *                      corresponds to the ith locus in batch.  Has at least batch.size() elements
+     */
+    public void isActive(final LocusSummaryBatch batch, final double[] isActiveProbs) {
+    }
+
+    /**
+     * Get the precomputed activity map the engine may use to skip isActive calls
+     *
+     * When this returns a non-null map, the engine doesn't call isActive at loci the map knows to be reference-like,
+     * and adds an activity probability of 0.0 for them instead.  All other loci, including those the map knows
+     * nothing about, are evaluated as usual.  Ignored if the walker has preset active regions or forceActive is set.
+     *
+     * @return an ActivityMap, or null (the default) to evaluate isActive at every locus
+     */
+    public ActivityMap getActivityMap() {
+        return null;
+    }
+
     // Map over the ActiveRegion
     public abstract MapType map(final ActiveRegion activeRegion, final RefMetaDataTracker metaDataTracker);
 
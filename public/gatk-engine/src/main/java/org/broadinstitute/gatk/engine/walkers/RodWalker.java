@@ -25,6 +25,8 @@
 
 package org.broadinstitute.gatk.engine.walkers;
 
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
+
 /**
  * Created by IntelliJ IDEA.
  * User: mdepristo
@@ -36,4 +38,26 @@ package org.broadinstitute.gatk.engine.walkers;
 @Requires({DataSource.REFERENCE, DataSource.REFERENCE_ORDERED_DATA})
 @Allows({DataSource.REFERENCE, DataSource.REFERENCE_ORDERED_DATA})
 public abstract class RodWalker<MapType, ReduceType> extends LocusWalker<MapType, ReduceType> {
+    /**
+     * Decides which reference-ordered records start a site worth visiting.
+     */
+    public interface SiteFilter {
+        /**
+         * @param record a record of any of the bound tracks, at its start position
+         * @return true if map() should be called at the start of record
+         */
+        public boolean startsSite(final GATKFeature record);
+    }
+
+    /**
+     * By default a RodWalker visits every position covered by at least one record.  A walker that only has work to
+     * do where some records start can return a filter here: the traversal then seeks the ROD iterators from one
+     * accepted record start to the next, and the positions in between are counted as skipped bases instead of
+     * being visited.  At the visited positions the tracker holds every record overlapping them, as usual.
+     *
+     * @return the filter on the records starting a site, or null to visit every covered position
+     */
+    public SiteFilter getSiteFilter() {
+        return null;
+    }
 }
\ No newline at end of file
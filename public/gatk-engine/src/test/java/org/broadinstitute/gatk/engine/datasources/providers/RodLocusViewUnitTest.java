@@ -0,0 +1,172 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.engine.datasources.providers;
+
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.gatk.engine.datasources.reads.MockLocusShard;
+import org.broadinstitute.gatk.engine.datasources.reads.Shard;
+import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
+import org.broadinstitute.gatk.engine.walkers.RodWalker;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.commandline.RodBinding;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.broadinstitute.gatk.utils.locusiterator.LocusIterator;
+import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.utils.refdata.tracks.RMDTrackBuilder;
+import org.broadinstitute.gatk.utils.refdata.utils.GATKFeature;
+import org.broadinstitute.gatk.utils.refdata.utils.RMDTriplet;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Test the sites visited by the ROD locus view, with and without a site filter.
+ */
+public class RodLocusViewUnitTest extends BaseTest {
+    private static final String CONTIG = "chr1";
+    private static final List<String> TRACKS = Arrays.asList("a", "b");
+
+    private IndexedFastaSequenceFile seq;
+    private GenomeLocParser genomeLocParser;
+    private RMDTrackBuilder builder;
+    private final Map<String, File> trackFiles = new HashMap<String, File>();
+
+    /**
+     * Only accepts the records with a "keep" ID
+     */
+    private static final RodWalker.SiteFilter KEEP_FILTER = new RodWalker.SiteFilter() {
+        @Override
+        public boolean startsSite(final GATKFeature record) {
+            return ((VariantContext)record.getUnderlyingObject()).getID().equals("keep");
+        }
+    };
+
+    @BeforeClass
+    public void init() throws FileNotFoundException {
+        seq = new CachingIndexedFastaSequenceFile(new File(exampleFASTA));
+        genomeLocParser = new GenomeLocParser(seq);
+        // disable auto-index creation/locking in the RMDTrackBuilder for tests
+        builder = new RMDTrackBuilder(seq.getSequenceDictionary(), genomeLocParser, null, true, null);
+
+        // blocks, some of them overlapping, with a few records to keep, including one spanning another track's record
+        trackFiles.put("a", writeVCF("a", new int[][]{{1, 10}, {11, 11}, {12, 30}, {31, 31}, {32, 50}, {61, 70}}, Arrays.asList(11, 31)));
+        trackFiles.put("b", writeVCF("b", new int[][]{{5, 20}, {21, 33}, {34, 50}, {51, 51}, {52, 55}}, Arrays.asList(21, 51)));
+    }
+
+    private File writeVCF(final String name, final int[][] records, final List<Integer> keptStarts) throws FileNotFoundException {
+        final File file = createTempFile("RodLocusViewUnitTest." + name, ".vcf");
+        final PrintWriter out = new PrintWriter(file);
+        out.println("##fileformat=VCFv4.1");
+        out.println("##INFO=<ID=END,Number=1,Type=Integer,Description=\"Stop position of the interval\">");
+        out.println("##contig=<ID=" + CONTIG + ",length=100000>");
+        out.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+        for ( final int[] record : records ) {
+            final String id = keptStarts.contains(record[0]) ? "keep" : ".";
+            out.println(CONTIG + "\t" + record[0] + "\t" + id + "\tA\t<NON_REF>\t.\t.\tEND=" + record[1]);
+        }
+        out.close();
+        return file;
+    }
+
+    private RodLocusView makeView(final GenomeLoc shardLoc, final RodWalker.SiteFilter siteFilter) {
+        final List<ReferenceOrderedDataSource> dataSources = new ArrayList<ReferenceOrderedDataSource>();
+        for ( final String track : TRACKS ) {
+            final RMDTriplet triplet = new RMDTriplet(track, "VCF", trackFiles.get(track).getAbsolutePath(), RMDTriplet.RMDStorageType.FILE, new Tags());
+            dataSources.add(new ReferenceOrderedDataSource(triplet, builder, seq.getSequenceDictionary(), genomeLocParser, false));
+        }
+        final Shard shard = new MockLocusShard(genomeLocParser, Collections.singletonList(shardLoc));
+        // a ROD traversal has no reads, so there are no loci to iterate over besides the RODs
+        final LocusIterator noReads = new LocusIterator() {
+            @Override public boolean hasNext() { return false; }
+            @Override public AlignmentContext next() { throw new NoSuchElementException(); }
+        };
+        final LocusShardDataProvider provider = new LocusShardDataProvider(shard, null, genomeLocParser, shardLoc, noReads, seq, dataSources);
+        return new RodLocusView(provider, siteFilter);
+    }
+
+    /**
+     * @return the sites visited by the view, with the starts of the records of each track overlapping them
+     */
+    private Map<GenomeLoc, List<Integer>> visit(final RodLocusView view, final long[] totalBases) throws IOException {
+        final Map<GenomeLoc, List<Integer>> sites = new LinkedHashMap<GenomeLoc, List<Integer>>();
+        while ( view.hasNext() ) {
+            final AlignmentContext context = view.next();
+            final RefMetaDataTracker tracker = view.getReferenceOrderedDataAtLocus(context.getLocation());
+            final List<Integer> starts = new ArrayList<Integer>();
+            for ( final String track : TRACKS ) {
+                for ( final VariantContext vc : tracker.getValues(new RodBinding<VariantContext>(VariantContext.class, track)) )
+                    starts.add(vc.getStart());
+                starts.add(-1); // separates the tracks
+            }
+            sites.put(context.getLocation(), starts);
+            totalBases[0] += context.getSkippedBases() + 1;
+        }
+        totalBases[0] += view.getLastSkippedBases();
+        view.close();
+        return sites;
+    }
+
+    @DataProvider(name = "ShardData")
+    public Object[][] makeShardData() {
+        return new Object[][]{{1, 100}, {1, 50}, {15, 45}, {21, 21}, {22, 60}, {56, 60}};
+    }
+
+    @Test(dataProvider = "ShardData")
+    public void testSiteFilter(final int start, final int stop) throws IOException {
+        final GenomeLoc shardLoc = genomeLocParser.createGenomeLoc(CONTIG, start, stop);
+
+        final long[] denseBases = new long[1];
+        final Map<GenomeLoc, List<Integer>> dense = visit(makeView(shardLoc, null), denseBases);
+        final long[] filteredBases = new long[1];
+        final Map<GenomeLoc, List<Integer>> filtered = visit(makeView(shardLoc, KEEP_FILTER), filteredBases);
+
+        // the filtered view only visits the kept record starts of the shard, with the same tracks as the dense one
+        final Map<GenomeLoc, List<Integer>> expected = new LinkedHashMap<GenomeLoc, List<Integer>>();
+        for ( final int keptStart : Arrays.asList(11, 21, 31, 51) ) {
+            final GenomeLoc site = genomeLocParser.createGenomeLoc(CONTIG, keptStart);
+            if ( shardLoc.containsP(site) )
+                expected.put(site, dense.get(site));
+        }
+        Assert.assertEquals(filtered, expected);
+
+        // every base of the shard is either visited or skipped
+        Assert.assertEquals(denseBases[0], shardLoc.size());
+        Assert.assertEquals(filteredBases[0], shardLoc.size());
+    }
+}
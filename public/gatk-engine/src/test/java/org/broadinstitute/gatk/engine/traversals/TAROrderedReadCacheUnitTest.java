@@ -25,10 +25,12 @@
 
 package org.broadinstitute.gatk.engine.traversals;
 
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.broadinstitute.gatk.utils.BaseTest;
 import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
 import org.broadinstitute.gatk.utils.sam.ArtificialBAMBuilder;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
@@ -101,6 +103,89 @@ public class TAROrderedReadCacheUnitTest extends BaseTest {
         verifySortednessOfReads(cacheReads);
     }
 
+    private List<GATKSAMRecord> makeReads(final SAMFileHeader header, final int contigIndex, final int start, final int n) {
+        final List<GATKSAMRecord> reads = new ArrayList<>(n);
+        for ( int i = 0; i < n; i++ )
+            reads.add(ArtificialSAMUtils.createArtificialRead(header, "read" + contigIndex + "_" + start + "_" + i, contigIndex, start, 10));
+        return reads;
+    }
+
+    @Test
+    public void testPopReadsStartingBy() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 1000);
+        final TAROrderedReadCache cache = new TAROrderedReadCache(100);
+        final List<GATKSAMRecord> reads = new ArrayList<>();
+        reads.addAll(makeReads(header, 0, 1, 2));
+        reads.addAll(makeReads(header, 0, 5, 1));
+        reads.addAll(makeReads(header, 0, 10, 1));
+        reads.addAll(makeReads(header, 1, 3, 1));
+        cache.addAll(reads);
+
+        final List<GATKSAMRecord> popped = cache.popReadsStartingBy(0, 5);
+        Assert.assertEquals(popped, reads.subList(0, 3));
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertTrue(cache.popReadsStartingBy(0, 9).isEmpty());
+
+        cache.returnReads(Arrays.asList(popped.get(0), popped.get(2)));
+        Assert.assertEquals(cache.size(), 4);
+
+        // reads on earlier contigs are always popped
+        Assert.assertEquals(cache.popReadsStartingBy(1, 1), Arrays.asList(reads.get(0), reads.get(2), reads.get(3)));
+        Assert.assertEquals(cache.popCurrentReads(), Arrays.asList(reads.get(4)));
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testDownsamplingThinsDeepestStart() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final TAROrderedReadCache cache = new TAROrderedReadCache(10);
+        cache.addAll(makeReads(header, 0, 1, 1));
+        cache.addAll(makeReads(header, 0, 2, 1));
+        cache.addAll(makeReads(header, 0, 3, 20));
+        cache.addAll(makeReads(header, 0, 4, 3));
+
+        Assert.assertEquals(cache.size(), 10);
+        Assert.assertEquals(cache.getNumDiscarded(), 15);
+
+        final int[] readsPerStart = new int[5];
+        final List<GATKSAMRecord> reads = cache.popCurrentReads();
+        for ( final GATKSAMRecord read : reads )
+            readsPerStart[read.getAlignmentStart()]++;
+        Assert.assertEquals(readsPerStart, new int[]{0, 1, 1, 5, 3});
+        verifySortednessOfReads(reads);
+    }
+
+    @Test
+    public void testPartialPopResetsNumDiscarded() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final TAROrderedReadCache cache = new TAROrderedReadCache(5);
+        cache.addAll(makeReads(header, 0, 1, 3));
+        cache.addAll(makeReads(header, 0, 2, 4));
+        Assert.assertEquals(cache.getNumDiscarded(), 2);
+
+        final List<GATKSAMRecord> popped = cache.popReadsStartingBy(0, 1);
+        Assert.assertEquals(cache.getNumDiscarded(), 0, "should have reset stats");
+        cache.returnReads(popped);
+        Assert.assertEquals(cache.getNumDiscarded(), 0, "returning reads doesn't discard any");
+        Assert.assertEquals(cache.size(), 5);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutOfOrderAdd() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final TAROrderedReadCache cache = new TAROrderedReadCache(10);
+        cache.addAll(makeReads(header, 0, 5, 1));
+        cache.addAll(makeReads(header, 0, 4, 1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testReturnReadsAfterCachedReads() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final TAROrderedReadCache cache = new TAROrderedReadCache(10);
+        cache.addAll(makeReads(header, 0, 5, 1));
+        cache.returnReads(makeReads(header, 0, 6, 1));
+    }
+
     private void verifySortednessOfReads( final List<GATKSAMRecord> reads) {
         int lastStart = -1;
         for ( GATKSAMRecord read : reads ) {
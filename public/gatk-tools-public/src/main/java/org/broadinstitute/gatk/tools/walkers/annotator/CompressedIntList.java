@@ -0,0 +1,243 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.annotator;
+
+import org.broadinstitute.gatk.utils.MannWhitneyU;
+
+import java.util.Arrays;
+
+/**
+ * A primitive-backed version of {@link CompressedDataList} for integer data: a histogram of <value,count> pairs
+ * kept sorted by value in parallel int arrays.
+ *
+ * Allele-specific rank sum raw data is parsed, merged and re-serialised at every CombineGVCFs/GenotypeGVCFs hop, so
+ * this class parses the raw text straight into the arrays, merges two histograms with a single linear pass and
+ * writes back the same "value,count,value,count" text that CompressedDataList produces, keeping the INFO encoding
+ * unchanged for existing gVCFs and downstream tools.  Histograms can be handed straight to {@link MannWhitneyU}.
+ */
+public class CompressedIntList implements MannWhitneyU.SortedHistogram {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] values;
+    private int[] counts;
+    private int nValues = 0;
+    private long totalCount = 0;
+
+    public CompressedIntList() {
+        values = new int[INITIAL_CAPACITY];
+        counts = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return true if no values have been added
+     */
+    public boolean isEmpty() {
+        return nValues == 0;
+    }
+
+    /**
+     * @return the number of distinct values in the histogram
+     */
+    @Override
+    public int getNumberOfValues() {
+        return nValues;
+    }
+
+    /**
+     * @return the total number of observations, i.e. the sum of all counts
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @param i the index of the distinct value, in ascending order of value
+     * @return the i-th smallest distinct value
+     */
+    @Override
+    public int getValue(final int i) {
+        if ( i < 0 || i >= nValues ) throw new IllegalArgumentException("value index " + i + " is out of range [0," + nValues + ")");
+        return values[i];
+    }
+
+    /**
+     * @param i the index of the distinct value, in ascending order of value
+     * @return the number of observations of the i-th smallest distinct value
+     */
+    @Override
+    public int getCount(final int i) {
+        if ( i < 0 || i >= nValues ) throw new IllegalArgumentException("value index " + i + " is out of range [0," + nValues + ")");
+        return counts[i];
+    }
+
+    public void add(final int val) {
+        add(val, 1);
+    }
+
+    public void add(final int val, final int count) {
+        final int index = Arrays.binarySearch(values, 0, nValues, val);
+        if ( index >= 0 ) {
+            counts[index] += count;
+        } else {
+            final int insertion = -(index + 1);
+            ensureCapacity(nValues + 1);
+            System.arraycopy(values, insertion, values, insertion + 1, nValues - insertion);
+            System.arraycopy(counts, insertion, counts, insertion + 1, nValues - insertion);
+            values[insertion] = val;
+            counts[insertion] = count;
+            nValues++;
+        }
+        totalCount += count;
+    }
+
+    /**
+     * Merge all the observations in other into this histogram
+     *
+     * @param other the histogram to add; it is not modified
+     */
+    public void add(final CompressedIntList other) {
+        if ( other.isEmpty() )
+            return;
+        if ( isEmpty() ) {
+            ensureCapacity(other.nValues);
+            System.arraycopy(other.values, 0, values, 0, other.nValues);
+            System.arraycopy(other.counts, 0, counts, 0, other.nValues);
+            nValues = other.nValues;
+            totalCount = other.totalCount;
+            return;
+        }
+
+        final int[] mergedValues = new int[nValues + other.nValues];
+        final int[] mergedCounts = new int[mergedValues.length];
+        int i = 0, j = 0, n = 0;
+        while ( i < nValues || j < other.nValues ) {
+            if ( j == other.nValues || (i < nValues && values[i] < other.values[j]) ) {
+                mergedValues[n] = values[i];
+                mergedCounts[n++] = counts[i++];
+            } else if ( i == nValues || other.values[j] < values[i] ) {
+                mergedValues[n] = other.values[j];
+                mergedCounts[n++] = other.counts[j++];
+            } else {
+                mergedValues[n] = values[i];
+                mergedCounts[n++] = counts[i++] + other.counts[j++];
+            }
+        }
+        values = mergedValues;
+        counts = mergedCounts;
+        nValues = n;
+        totalCount += other.totalCount;
+    }
+
+    /**
+     * Parse a "value,count,value,count" list, as written by {@link #toString()}, and add its observations to this
+     * histogram.  Pairs with an empty value or count are skipped, as are trailing empty entries.
+     *
+     * @param data the text containing the list
+     * @param start the index of the first character of the list in data
+     * @param end one past the index of the last character of the list in data
+     * @throws IllegalArgumentException if the list doesn't consist of <value,count> pairs or an entry isn't an integer
+     */
+    public void addFromString(final String data, final int start, final int end) {
+        if ( start < 0 || end > data.length() || start > end )
+            throw new IllegalArgumentException("invalid range [" + start + "," + end + ") for string of length " + data.length());
+
+        // trailing empty entries are dropped, as String.split does
+        int last = end;
+        while ( last > start && (data.charAt(last - 1) == ',' || Character.isWhitespace(data.charAt(last - 1))) )
+            last--;
+        if ( last == start )
+            return;
+
+        int pos = start;
+        while ( pos <= last ) {
+            int comma = data.indexOf(',', pos);
+            if ( comma < 0 || comma > last ) comma = last;
+            if ( comma == last )
+                throw new IllegalArgumentException("raw data must occur in <value,count> pairs: " + data.substring(start, end));
+            int next = data.indexOf(',', comma + 1);
+            if ( next < 0 || next > last ) next = last;
+
+            final boolean hasValue = !isBlank(data, pos, comma);
+            final boolean hasCount = !isBlank(data, comma + 1, next);
+            if ( hasValue && hasCount )
+                add(parseInt(data, pos, comma), parseInt(data, comma + 1, next));
+            pos = next + 1;
+        }
+    }
+
+    /**
+     * Expand the histogram into one entry per observation, in ascending order
+     *
+     * @return a newly allocated array of length {@link #getTotalCount()}
+     */
+    public double[] toDoubleArray() {
+        if ( totalCount > Integer.MAX_VALUE )
+            throw new IllegalStateException("too many observations to expand into an array: " + totalCount);
+        final double[] ret = new double[(int)totalCount];
+        int n = 0;
+        for ( int i = 0; i < nValues; i++ ) {
+            Arrays.fill(ret, n, n + counts[i], values[i]);
+            n += counts[i];
+        }
+        return ret;
+    }
+
+    /**
+     * Append the "value,count,value,count" representation of this histogram to sb
+     */
+    public StringBuilder appendTo(final StringBuilder sb) {
+        for ( int i = 0; i < nValues; i++ ) {
+            if ( i != 0 )
+                sb.append(',');
+            sb.append(values[i]).append(',').append(counts[i]);
+        }
+        return sb;
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if ( capacity > values.length ) {
+            final int newCapacity = Math.max(capacity, values.length * 2);
+            values = Arrays.copyOf(values, newCapacity);
+            counts = Arrays.copyOf(counts, newCapacity);
+        }
+    }
+
+    private static boolean isBlank(final String data, final int start, final int end) {
+        for ( int i = start; i < end; i++ )
+            if ( !Character.isWhitespace(data.charAt(i)) )
+                return false;
+        return true;
+    }
+
+    private static int parseInt(final String data, final int start, final int end) {
+        return Integer.parseInt(data.substring(start, end).trim());
+    }
+}
@@ -46,6 +46,7 @@ import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import htsjdk.variant.variantcontext.*;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
+import org.broadinstitute.gatk.utils.variant.CompiledJexlVCMatchExp;
 
 import java.util.*;
 
@@ -208,7 +209,7 @@ public class VariantFiltration extends RodWalker<Integer, Integer> {
     private boolean setFilteredGenotypesToNocall = false;
 
     // JEXL expressions for the filters
-    List<VariantContextUtils.JexlVCMatchExp> filterExps;
+    List<CompiledJexlVCMatchExp> filterExps;
     List<VariantContextUtils.JexlVCMatchExp> genotypeFilterExps;
 
     public static final String CLUSTERED_SNP_FILTER_NAME = "SnpCluster";
@@ -256,7 +257,7 @@ public class VariantFiltration extends RodWalker<Integer, Integer> {
             hInfo.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_FILTER_KEY));
 
         try {
-            for ( VariantContextUtils.JexlVCMatchExp exp : filterExps )
+            for ( CompiledJexlVCMatchExp exp : filterExps )
                 hInfo.add(new VCFFilterHeaderLine(exp.name, possiblyInvertFilterExpression(exp.exp.toString())));
             for ( VariantContextUtils.JexlVCMatchExp exp : genotypeFilterExps )
                 hInfo.add(new VCFFilterHeaderLine(exp.name, possiblyInvertFilterExpression(exp.exp.toString())));
@@ -282,7 +283,7 @@ public class VariantFiltration extends RodWalker<Integer, Integer> {
 
         if (filterRecordsNotInMask && !mask.isBound())
             throw new UserException.BadArgumentValue("filterNotInMask","argument not allowed if mask argument is not provided");
-        filterExps = VariantContextUtils.initializeMatchExps(filterNames, filterExpressions);
+        filterExps = CompiledJexlVCMatchExp.compile(VariantContextUtils.initializeMatchExps(filterNames, filterExpressions));
         genotypeFilterExps = VariantContextUtils.initializeMatchExps(genotypeFilterNames, genotypeFilterExpressions);
 
         VariantContextUtils.engine.get().setSilent(true);
@@ -461,9 +462,9 @@ public class VariantFiltration extends RodWalker<Integer, Integer> {
         if ( clusteredSNPs != null && clusteredSNPs.filter(variantContextWindow) )
             filters.add(CLUSTERED_SNP_FILTER_NAME);
 
-        for ( VariantContextUtils.JexlVCMatchExp exp : filterExps ) {
+        for ( CompiledJexlVCMatchExp exp : filterExps ) {
             try {
-                if ( Utils.invertLogic(VariantContextUtils.match(vc, exp), invertFilterExpression) )
+                if ( Utils.invertLogic(exp.match(vc), invertFilterExpression) )
                     filters.add(exp.name);
             } catch (Exception e) {
                 // do nothing unless specifically asked to; it just means that the expression isn't defined for this context
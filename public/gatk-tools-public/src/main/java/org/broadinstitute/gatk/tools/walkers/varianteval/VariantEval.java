@@ -65,6 +65,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * General-purpose tool for variant evaluation (% in dbSNP, genotype concordance, Ti/Tv ratios, and a lot more)
@@ -276,7 +277,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     final private static String ALL_FAMILY_NAME = "all";
 
     // the number of processed bp for this walker
-    long nProcessedLoci = 0;
+    final AtomicLong nProcessedLoci = new AtomicLong(0);
 
     // Utility class
     private final VariantEvalUtils variantEvalUtils = new VariantEvalUtils(this);
@@ -286,6 +287,21 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
 
     // The set of all possible evaluation contexts
     StratificationManager<VariantStratifier, EvaluationContext> stratManager;
+
+    // When running with multiple threads and every evaluator supports combine, each thread updates its own
+    // evaluation contexts, indexed by stratification key, and these are merged into stratManager at the end
+    private Set<Class<? extends VariantEvaluator>> threadLocalEvaluationClasses = null;
+    private final List<EvaluationContext[]> allThreadLocalContexts = new ArrayList<EvaluationContext[]>();
+    private final ThreadLocal<EvaluationContext[]> threadLocalContexts = new ThreadLocal<EvaluationContext[]>() {
+        @Override
+        protected EvaluationContext[] initialValue() {
+            final EvaluationContext[] contexts = new EvaluationContext[stratManager.size()];
+            synchronized (allThreadLocalContexts) {
+                allThreadLocalContexts.add(contexts);
+            }
+            return contexts;
+        }
+    };
     //Set<DynamicStratification> dynamicStratifications = Collections.emptySet();
 
     /**
@@ -377,6 +393,12 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
 
         // Initialize the evaluation contexts
         createStratificationStates(stratificationObjects, evaluationClasses);
+        if ( getToolkit().getArguments().numberOfDataThreads > 1 ) {
+            if ( stratManager.get(0).supportsCombine() )
+                enableThreadLocalContexts(evaluationClasses);
+            else
+                logger.info("Not all evaluators support combining results, so evaluation contexts will be shared between threads");
+        }
 
         // Load ancestral alignments
         if (ancestralAlignmentsFile != null) {
@@ -417,6 +439,50 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
         }
     }    
     
+    /**
+     * Have each thread update its own evaluation contexts rather than the shared ones in stratManager
+     *
+     * The per-thread contexts are created lazily for each key a thread actually touches, and are
+     * combined into stratManager by mergeThreadLocalContexts.  All of the evaluators in
+     * evaluationClasses must support combine.
+     *
+     * @param evaluationClasses the evaluators to instantiate in each per-thread context
+     */
+    final void enableThreadLocalContexts(final Set<Class<? extends VariantEvaluator>> evaluationClasses) {
+        threadLocalEvaluationClasses = evaluationClasses;
+    }
+
+    /**
+     * Combine the per-thread evaluation contexts, if any, into the shared ones in stratManager
+     */
+    final void mergeThreadLocalContexts() {
+        synchronized (allThreadLocalContexts) {
+            for ( final EvaluationContext[] contexts : allThreadLocalContexts ) {
+                for ( int key = 0; key < contexts.length; key++ ) {
+                    if ( contexts[key] != null )
+                        stratManager.get(key).combine(contexts[key]);
+                }
+            }
+            allThreadLocalContexts.clear();
+        }
+    }
+
+    /**
+     * Get the evaluation context that the current thread should update for key
+     *
+     * @param key a stratification key
+     * @return the shared context for key, or this thread's own context for key if thread-local contexts are enabled
+     */
+    private EvaluationContext getEvaluationContext(final int key) {
+        if ( threadLocalEvaluationClasses == null )
+            return stratManager.get(key);
+
+        final EvaluationContext[] contexts = threadLocalContexts.get();
+        if ( contexts[key] == null )
+            contexts[key] = new EvaluationContext(this, threadLocalEvaluationClasses);
+        return contexts[key];
+    }
+
     public final Map<String, IntervalTree<GenomeLoc>> createIntervalTreeByContig(final IntervalBinding<Feature> intervals) {
         final Map<String, IntervalTree<GenomeLoc>> byContig = new HashMap<String, IntervalTree<GenomeLoc>>();
 
@@ -440,9 +506,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         // we track the processed bp and expose this for modules instead of wasting CPU power on calculating
         // the same thing over and over in evals that want the processed bp
-        synchronized (this) {
-            nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
-        }
+        nProcessedLoci.addAndGet(context.getSkippedBases() + (ref == null ? 0 : 1));
 
         if (tracker != null) {
             String aastr = (ancestralAlignments == null) ? null : new String(ancestralAlignments.getSubsequenceAt(ref.getLocus().getContig(), ref.getLocus().getStart(), ref.getLocus().getStop()).getBases());
@@ -495,18 +559,19 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
                             // find the comp
                             final VariantContext comp = findMatchingComp(eval, compSet);
 
-                            Collection<EvaluationContext> contextsForStratification;
+                            final int[] keysForStratification;
                             if (perFamilyIsEnabled)
-                                contextsForStratification = getEvaluationContexts(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), null, stratLevelName);
+                                keysForStratification = getEvaluationContextKeys(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), null, stratLevelName);
                             else {
                                 String familyID;
                                 if (stratLevelName.equals("all"))
                                     familyID = "all";
                                 else
                                     familyID = getSampleDB().getSample(stratLevelName).getFamilyID();
-                                contextsForStratification = getEvaluationContexts(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), stratLevelName, familyID);
+                                keysForStratification = getEvaluationContextKeys(tracker, ref, eval, evalRod.getName(), comp, compRod.getName(), stratLevelName, familyID);
                             }
-                            for ( EvaluationContext nec : contextsForStratification ) {
+                            for ( final int key : keysForStratification ) {
+                                final EvaluationContext nec = getEvaluationContext(key);
 
                                 // eval against the comp
                                 synchronized (nec) {
@@ -534,32 +599,21 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     }
 
     /**
-     * Given specific eval and comp VCs and the sample name, return an iterable
-     * over all of the applicable state keys.
-     *
-     * this code isn't structured yet for efficiency.  Here we currently are
-     * doing the following inefficient algorithm:
-     *
-     * for each strat:
-     *   get list of relevant states that eval and comp according to strat
-     *   add this list of states to a list of list states
+     * Given specific eval and comp VCs and the sample name, return the keys of
+     * all of the applicable stratification states.
      *
-     * then
-     *
-     * ask the strat manager to look up all of the keys associated with the combinations
-     * of these states.  For example, suppose we have a single variant S.  We have active
-     * strats EvalRod, CompRod, and Novelty.  We produce a list that looks like:
+     * For each strat we get the list of relevant states for eval and comp, and then
+     * ask the strat manager for the keys of all combinations of these states.  For
+     * example, suppose we have a single variant S.  We have active strats EvalRod,
+     * CompRod, and Novelty.  We produce a list that looks like:
      *
      *   L = [[Eval], [Comp], [All, Novel]]
      *
-     * We then go through the strat manager tree to produce the keys associated with these states:
+     * The strat manager maps each state to its index within its strat through a
+     * precomputed table, and combines these indices into the keys directly:
      *
      *   K = [0, 1] where EVAL x COMP x ALL = 0 and EVAL x COMP x NOVEL = 1
      *
-     * It's clear that a better
-     *
-     * TODO -- create an inline version that doesn't create the intermediate list of list
-     *
      * @param tracker
      * @param ref
      * @param eval
@@ -567,7 +621,30 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      * @param comp
      * @param compName
      * @param sampleName
-     * @return
+     * @return the distinct keys of the applicable stratification states
+     */
+    protected int[] getEvaluationContextKeys(final RefMetaDataTracker tracker,
+                                             final ReferenceContext ref,
+                                             final VariantContext eval,
+                                             final String evalName,
+                                             final VariantContext comp,
+                                             final String compName,
+                                             final String sampleName,
+                                             final String familyName) {
+        final List<VariantStratifier> stratifiers = stratManager.getStratifiers();
+        final List<List<Object>> states = new ArrayList<List<Object>>(stratifiers.size());
+        for ( final VariantStratifier vs : stratifiers ) {
+            states.add(vs.getRelevantStates(ref, tracker, comp, compName, eval, evalName, sampleName, familyName));
+        }
+        return stratManager.getKeyArray(states);
+    }
+
+    /**
+     * Given specific eval and comp VCs and the sample name, return the evaluation
+     * contexts that the current thread should update for all of the applicable
+     * stratification states.
+     *
+     * @see #getEvaluationContextKeys
      */
     protected Collection<EvaluationContext> getEvaluationContexts(final RefMetaDataTracker tracker,
                                                                   final ReferenceContext ref,
@@ -577,11 +654,11 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
                                                                   final String compName,
                                                                   final String sampleName,
                                                                   final String familyName) {
-        final List<List<Object>> states = new LinkedList<List<Object>>();
-        for ( final VariantStratifier vs : stratManager.getStratifiers() ) {
-            states.add(vs.getRelevantStates(ref, tracker, comp, compName, eval, evalName, sampleName, familyName));
-        }
-        return stratManager.values(states);
+        final int[] keys = getEvaluationContextKeys(tracker, ref, eval, evalName, comp, compName, sampleName, familyName);
+        final List<EvaluationContext> contexts = new ArrayList<EvaluationContext>(keys.length);
+        for ( final int key : keys )
+            contexts.add(getEvaluationContext(key));
+        return contexts;
     }
 
 
@@ -659,7 +736,10 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      */
     public void onTraversalDone(Integer result) {
         logger.info("Finalizing variant report");
-        
+
+        // fold the per-thread results, if any, into the shared evaluation contexts
+        mergeThreadLocalContexts();
+
         // go through the evaluations and finalize them
         for ( final EvaluationContext nec : stratManager.values() )
             for ( final VariantEvaluator ve : nec.getVariantEvaluators() )
@@ -732,7 +812,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     public Set<SortableJexlVCMatchExp> getJexlExpressions() { return jexlExpressions; }
 
     public long getnProcessedLoci() {
-        return nProcessedLoci;
+        return nProcessedLoci.get();
     }
 
     public Set<String> getContigNames() {
@@ -66,6 +66,19 @@ public class CompOverlap extends VariantEvaluator implements StandardEval {
         return 2;   // we need to see each eval track and each comp track
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final CompOverlap o = (CompOverlap)other;
+        nEvalVariants += o.nEvalVariants;
+        nVariantsAtComp += o.nVariantsAtComp;
+        nConcordant += o.nConcordant;
+    }
+
     public long nNovelSites() { return nEvalVariants - nVariantsAtComp; }
     public double compRate() { return rate(nVariantsAtComp, nEvalVariants); }
     public double concordanceRate() { return rate(nConcordant, nVariantsAtComp); }
@@ -84,6 +84,19 @@ public class IndelLengthHistogram extends VariantEvaluator implements StandardEv
         return 1;
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final IndelLengthHistogram o = (IndelLengthHistogram)other;
+        nIndels += o.nIndels;
+        for ( final Map.Entry<Integer, Integer> count : o.counts.entrySet() )
+            counts.put(count.getKey(), counts.get(count.getKey()) + count.getValue());
+    }
+
     @Override
     public void update1(final VariantContext eval, final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
         if ( eval.isIndel() && ! eval.isComplexIndel() ) {
@@ -91,6 +91,26 @@ public class MultiallelicSummary extends VariantEvaluator implements StandardEva
 
     @Override public int getComparisonOrder() { return 2; }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final MultiallelicSummary o = (MultiallelicSummary)other;
+        nSNPs += o.nSNPs;
+        nMultiSNPs += o.nMultiSNPs;
+        nIndels += o.nIndels;
+        nMultiIndels += o.nMultiIndels;
+        nTi += o.nTi;
+        nTv += o.nTv;
+        knownSNPsPartial += o.knownSNPsPartial;
+        knownSNPsComplete += o.knownSNPsComplete;
+        knownIndelsPartial += o.knownIndelsPartial;
+        knownIndelsComplete += o.knownIndelsComplete;
+    }
+
     public void update2(VariantContext eval, VariantContext comp, RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if ( eval == null || (getWalker().ignoreAC0Sites() && eval.isMonomorphicInSamples()) )
             return;
@@ -59,6 +59,22 @@ public class TiTvVariantEvaluator extends VariantEvaluator implements StandardEv
         return 2;   // we only need to see each eval track
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final TiTvVariantEvaluator o = (TiTvVariantEvaluator)other;
+        nTi += o.nTi;
+        nTv += o.nTv;
+        nTiInComp += o.nTiInComp;
+        nTvInComp += o.nTvInComp;
+        nTiDerived += o.nTiDerived;
+        nTvDerived += o.nTvDerived;
+    }
+
     public void updateTiTv(VariantContext vc, boolean updateStandard) {
         if (vc != null && vc.isSNP() && vc.isBiallelic() && vc.isPolymorphicInSamples()) {
             if ( GATKVariantContextUtils.isTransition(vc)) {
@@ -118,6 +118,14 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
             get(type).put(sample, count + 1);
         }
 
+        public final void add(final TypeSampleMap other) {
+            for ( final Map.Entry<Type, Map<String, Integer>> byType : other.entrySet() ) {
+                final Map<String, Integer> bySample = get(byType.getKey());
+                for ( final Map.Entry<String, Integer> count : byType.getValue().entrySet() )
+                    bySample.put(count.getKey(), bySample.get(count.getKey()) + count.getValue());
+            }
+        }
+
         public final int all(Type type) {
             return get(type).get(ALL);
         }
@@ -174,6 +182,22 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
         return 2;   // we only need to see each eval track
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final VariantSummary o = (VariantSummary)other;
+        allVariantCounts.add(o.allVariantCounts);
+        knownVariantCounts.add(o.knownVariantCounts);
+        countsPerSample.add(o.countsPerSample);
+        transitionsPerSample.add(o.transitionsPerSample);
+        transversionsPerSample.add(o.transversionsPerSample);
+        depthPerSample.add(o.depthPerSample);
+    }
+
     private Type getType(VariantContext vc) {
         switch (vc.getType()) {
             case SNP:
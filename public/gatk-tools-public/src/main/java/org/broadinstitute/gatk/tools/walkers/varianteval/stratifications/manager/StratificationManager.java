@@ -45,6 +45,10 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
 
     private final ArrayList<K> stratifiers;
 
+    // for each stratifier, the index of each of its states, and the stride of that stratifier in the key space
+    private final ArrayList<Map<Object, Integer>> stateIndices;
+    private final int[] strides;
+
     // values associated with each key
     private final ArrayList<V> valuesByKey;
     private final ArrayList<List<Object>> stratifierValuesByKey;
@@ -71,6 +75,11 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
         // assign the linear key ordering to the leafs
         assignKeys(root);
 
+        // build the per-stratifier index tables that let us compute keys without walking the tree
+        this.stateIndices = new ArrayList<Map<Object, Integer>>(strats.size());
+        this.strides = new int[strats.size()];
+        buildStateIndices(root);
+
         // cache the size, and check for a bad state
         this.size = root.size();
         if ( this.size == 0 )
@@ -134,6 +143,34 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
         }
     }
 
+    /**
+     * Fills in stateIndices and strides so that the key of a leaf can be computed directly
+     * from the indices of its states as sum_i index_i * stride_i.
+     *
+     * Every node at a given depth of the tree has identically constructed subnodes, so they
+     * all iterate their states in the same order.  Taking the state order from the first
+     * node at each depth therefore reproduces exactly the keys assigned by assignKeys.
+     *
+     * @param root
+     */
+    @Requires("root == this.root")
+    private void buildStateIndices(final StratNode<K> root) {
+        StratNode<K> node = root;
+        while ( ! node.isLeaf() ) {
+            final Map<Object, Integer> indices = new HashMap<Object, Integer>(node.getSubnodes().size() * 2);
+            for ( final Object state : node.getSubnodes().keySet() )
+                indices.put(state, indices.size());
+            stateIndices.add(indices);
+            node = node.getSubnodes().values().iterator().next();
+        }
+
+        int stride = 1;
+        for ( int i = strides.length - 1; i >= 0; i-- ) {
+            strides[i] = stride;
+            stride *= stateIndices.get(i).size();
+        }
+    }
+
     /**
      * Entry point to recursive tool that fills in the list of state values corresponding
      * to each key.  After this function is called you can map from key -> List of StateValues
@@ -198,17 +235,85 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
     @Requires("states != null")
     @Ensures("result >= -1")
     public int getKey(final List<Object> states) {
-        return root.find(states, 0);
+        int key = 0;
+        for ( int i = 0; i < strides.length; i++ ) {
+            final Integer index = stateIndices.get(i).get(states.get(i));
+            if ( index == null )
+                return -1;
+            key += index * strides[i];
+        }
+        return key;
     }
 
     @Requires("allStates != null")
     @Ensures("result != null")
     public Set<Integer> getKeys(final List<List<Object>> allStates) {
-        final HashSet<Integer> keys = new HashSet<Integer>();
-        root.find(allStates, 0, keys);
+        final int[] keys = getKeyArray(allStates);
+        final HashSet<Integer> keySet = new HashSet<Integer>(keys.length * 2);
+        for ( final int key : keys )
+            keySet.add(key);
+        return keySet;
+    }
+
+    /**
+     * Get the distinct keys of all combinations of the states in allStates
+     *
+     * The keys are computed directly from the per-stratifier state index tables, without
+     * walking the stratification tree or building intermediate state lists.
+     *
+     * @param allStates for each stratifier, in order, the states to combine
+     * @return an array of the distinct keys, one for each combination of states
+     */
+    @Requires("allStates != null && allStates.size() == getStratifiers().size()")
+    @Ensures("result != null")
+    public int[] getKeyArray(final List<List<Object>> allStates) {
+        // the offsets of each state, after removing duplicates, so that all combinations are distinct keys
+        final int[][] offsets = new int[strides.length][];
+        int nKeys = 1;
+        for ( int i = 0; i < strides.length; i++ ) {
+            final List<Object> states = allStates.get(i);
+            final Map<Object, Integer> indices = stateIndices.get(i);
+            final int[] stratOffsets = new int[states.size()];
+            int n = 0;
+            for ( final Object state : states ) {
+                final Integer index = indices.get(state);
+                if ( index == null )
+                    throw new ReviewedGATKException("Couldn't find state for " + state + " in stratifier " + stratifiers.get(i));
+                final int offset = index * strides[i];
+                if ( ! contains(stratOffsets, n, offset) )
+                    stratOffsets[n++] = offset;
+            }
+            offsets[i] = n == stratOffsets.length ? stratOffsets : Arrays.copyOf(stratOffsets, n);
+            nKeys *= n;
+        }
+
+        // expand the cartesian product of the offsets, with the last stratifier varying fastest
+        final int[] keys = new int[nKeys];
+        if ( nKeys == 0 )
+            return keys;
+        final int[] positions = new int[strides.length];
+        for ( int k = 0; k < nKeys; k++ ) {
+            int key = 0;
+            for ( int i = 0; i < strides.length; i++ )
+                key += offsets[i][positions[i]];
+            keys[k] = key;
+
+            for ( int i = strides.length - 1; i >= 0; i-- ) {
+                if ( ++positions[i] < offsets[i].length )
+                    break;
+                positions[i] = 0;
+            }
+        }
         return keys;
     }
 
+    private static boolean contains(final int[] values, final int n, final int value) {
+        for ( int i = 0; i < n; i++ )
+            if ( values[i] == value )
+                return true;
+        return false;
+    }
+
     public List<Object> getStatesForKey(final int key) {
         final List<Object> states = new ArrayList<Object>(stratifiers.size());
         for ( int i = 0; i < stratifiers.size(); i++ ) {
@@ -255,9 +360,9 @@ public class StratificationManager<K extends Stratifier, V> implements Map<List<
     }
     
     public Collection<V> values(List<List<Object>> states) {
-        // TODO -- SHOULD BE INLINE TO AVOID CREATING LIST OF KEYS JUST TO ITERATE OVER IT
-        Collection<V> vals = new LinkedList<V>();
-        for ( int key : getKeys(states) ) 
+        final int[] keys = getKeyArray(states);
+        final List<V> vals = new ArrayList<V>(keys.length);
+        for ( final int key : keys )
             vals.add(get(key));
         return vals;
     }
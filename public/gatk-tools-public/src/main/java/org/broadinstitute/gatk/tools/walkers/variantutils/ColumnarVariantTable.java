@@ -0,0 +1,378 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.variant.vcf.VCFConstants;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A table of typed columns, as written by VariantsToTable with -outputFormat COLUMNAR
+ *
+ * <p>The file is a gzipped stream of big-endian values.  It starts with a magic number, the format version and
+ * the schema: the number of columns, then the name and type of each column.  The rows follow in blocks, each
+ * holding the number of rows in it and then, column after column, the values of those rows:</p>
+ * <ul>
+ *     <li>INT columns as 32-bit integers, with MISSING_INT for missing values</li>
+ *     <li>DOUBLE columns as 64-bit doubles, with NaN for missing values</li>
+ *     <li>STRING columns as a dictionary of the distinct values in the block, each a length followed by its
+ *     UTF-8 bytes, and then the 32-bit index of each row's value in the dictionary, with -1 for missing values</li>
+ * </ul>
+ * <p>A block of zero rows ends the table.  Values are missing where the text table has NA, and also where
+ * a numeric column has the VCF missing value.</p>
+ */
+public final class ColumnarVariantTable {
+
+    public enum ColumnType {
+        /** 32-bit integers */
+        INT,
+        /** 64-bit floating point numbers */
+        DOUBLE,
+        /** anything else, stored as text */
+        STRING
+    }
+
+    public static final int MISSING_INT = Integer.MIN_VALUE;
+    private static final int MISSING_STRING = -1;
+
+    private static final int MAGIC = 0x5654424C; // "VTBL"
+    private static final int VERSION = 1;
+
+    private final List<String> columnNames;
+    private final List<ColumnType> columnTypes;
+    private final Object[] columns; // an int[], double[] or String[] of the values of each column
+    private final int numRows;
+
+    private ColumnarVariantTable(final List<String> columnNames, final List<ColumnType> columnTypes, final Object[] columns, final int numRows) {
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.columnTypes = Collections.unmodifiableList(columnTypes);
+        this.columns = columns;
+        this.numRows = numRows;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public ColumnType getColumnType(final int column) {
+        return columnTypes.get(column);
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the values of an INT column, with MISSING_INT for missing values
+     */
+    public int[] getInts(final int column) {
+        checkType(column, ColumnType.INT);
+        return (int[])columns[column];
+    }
+
+    /**
+     * @return the values of a DOUBLE column, with NaN for missing values
+     */
+    public double[] getDoubles(final int column) {
+        checkType(column, ColumnType.DOUBLE);
+        return (double[])columns[column];
+    }
+
+    /**
+     * @return the values of a STRING column, with null for missing values
+     */
+    public String[] getStrings(final int column) {
+        checkType(column, ColumnType.STRING);
+        return (String[])columns[column];
+    }
+
+    private void checkType(final int column, final ColumnType type) {
+        if ( columnTypes.get(column) != type )
+            throw new IllegalArgumentException("column " + columnNames.get(column) + " is of type " + columnTypes.get(column) + ", not " + type);
+    }
+
+    /**
+     * Read a table written by a Writer
+     *
+     * @param file the file to read
+     * @return a non-null table
+     */
+    public static ColumnarVariantTable read(final File file) {
+        try ( final DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)))) ) {
+            if ( in.readInt() != MAGIC )
+                throw new UserException.MalformedFile(file, "not a columnar table written by VariantsToTable");
+            final int version = in.readInt();
+            if ( version != VERSION )
+                throw new UserException.MalformedFile(file, "columnar table version " + version + " isn't supported, expected version " + VERSION);
+
+            final int numColumns = in.readInt();
+            final List<String> names = new ArrayList<>(numColumns);
+            final List<ColumnType> types = new ArrayList<>(numColumns);
+            for ( int i = 0; i < numColumns; i++ ) {
+                names.add(readString(in));
+                types.add(ColumnType.values()[in.readByte()]);
+            }
+
+            final Object[] columns = new Object[numColumns];
+            for ( int i = 0; i < numColumns; i++ )
+                columns[i] = newColumn(types.get(i), 1024);
+
+            int numRows = 0;
+            for ( int blockRows = in.readInt(); blockRows > 0; blockRows = in.readInt() ) {
+                for ( int i = 0; i < numColumns; i++ ) {
+                    columns[i] = ensureCapacity(columns[i], numRows + blockRows);
+                    switch ( types.get(i) ) {
+                        case INT:
+                            final int[] ints = (int[])columns[i];
+                            for ( int row = numRows; row < numRows + blockRows; row++ )
+                                ints[row] = in.readInt();
+                            break;
+                        case DOUBLE:
+                            final double[] doubles = (double[])columns[i];
+                            for ( int row = numRows; row < numRows + blockRows; row++ )
+                                doubles[row] = in.readDouble();
+                            break;
+                        default:
+                            final String[] dictionary = new String[in.readInt()];
+                            for ( int j = 0; j < dictionary.length; j++ )
+                                dictionary[j] = readString(in);
+                            final String[] strings = (String[])columns[i];
+                            for ( int row = numRows; row < numRows + blockRows; row++ ) {
+                                final int index = in.readInt();
+                                strings[row] = index == MISSING_STRING ? null : dictionary[index];
+                            }
+                    }
+                }
+                numRows += blockRows;
+            }
+
+            for ( int i = 0; i < numColumns; i++ )
+                columns[i] = trim(columns[i], numRows);
+            return new ColumnarVariantTable(names, types, columns, numRows);
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    private static Object newColumn(final ColumnType type, final int size) {
+        switch ( type ) {
+            case INT: return new int[size];
+            case DOUBLE: return new double[size];
+            default: return new String[size];
+        }
+    }
+
+    private static Object ensureCapacity(final Object column, final int size) {
+        final int length = Array.getLength(column);
+        return length >= size ? column : trim(column, Math.max(size, 2 * length));
+    }
+
+    private static Object trim(final Object column, final int size) {
+        if ( column instanceof int[] ) return Arrays.copyOf((int[])column, size);
+        if ( column instanceof double[] ) return Arrays.copyOf((double[])column, size);
+        return Arrays.copyOf((String[])column, size);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes the rows of a table, as text values, in blocks of typed columns
+     */
+    public static final class Writer {
+        // about how many values to buffer before writing a block
+        private static final int VALUES_PER_BLOCK = 1 << 20;
+
+        private final GZIPOutputStream compressed;
+        private final DataOutputStream out;
+        private final List<String> columnNames;
+        private final List<ColumnType> columnTypes;
+        private final String missingValue;
+        private final int rowsPerBlock;
+
+        // the values of the current block
+        private final Object[] columns;
+        private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        private int blockRows = 0;
+
+        /**
+         * Start a table on out
+         *
+         * @param out          the stream to write to; it is flushed but not closed by close()
+         * @param columnNames  the name of each column
+         * @param columnTypes  the type of each column
+         * @param missingValue the text of a missing value in any column
+         */
+        public Writer(final OutputStream out, final List<String> columnNames, final List<ColumnType> columnTypes, final String missingValue) {
+            this(out, columnNames, columnTypes, missingValue, Math.max(1, VALUES_PER_BLOCK / Math.max(1, columnNames.size())));
+        }
+
+        protected Writer(final OutputStream out, final List<String> columnNames, final List<ColumnType> columnTypes, final String missingValue, final int rowsPerBlock) {
+            if ( out == null ) throw new IllegalArgumentException("out cannot be null");
+            if ( columnNames.size() != columnTypes.size() ) throw new IllegalArgumentException("there must be one type per column");
+
+            this.columnNames = new ArrayList<>(columnNames);
+            this.columnTypes = new ArrayList<>(columnTypes);
+            this.missingValue = missingValue;
+            this.rowsPerBlock = rowsPerBlock;
+
+            columns = new Object[columnNames.size()];
+            for ( int i = 0; i < columns.length; i++ ) {
+                columns[i] = columnTypes.get(i) == ColumnType.STRING ? new int[rowsPerBlock] : newColumn(columnTypes.get(i), rowsPerBlock);
+                dictionaries.add(columnTypes.get(i) == ColumnType.STRING ? new HashMap<String, Integer>() : null);
+            }
+
+            try {
+                compressed = new GZIPOutputStream(out);
+                this.out = new DataOutputStream(new BufferedOutputStream(compressed));
+                this.out.writeInt(MAGIC);
+                this.out.writeInt(VERSION);
+                this.out.writeInt(columnNames.size());
+                for ( int i = 0; i < columnNames.size(); i++ ) {
+                    writeString(this.out, columnNames.get(i));
+                    this.out.writeByte(columnTypes.get(i).ordinal());
+                }
+            } catch ( IOException e ) {
+                throw new ReviewedGATKException("Failed to write the columnar table header", e);
+            }
+        }
+
+        /**
+         * Add a row to the table
+         *
+         * @param row the text of the value in each column
+         * @throws UserException if a value can't be parsed as the type of its column
+         */
+        public void add(final List<String> row) {
+            if ( row.size() != columns.length )
+                throw new IllegalArgumentException("row has " + row.size() + " values but the table has " + columns.length + " columns");
+
+            for ( int i = 0; i < columns.length; i++ ) {
+                final String value = row.get(i);
+                final boolean missing = value.equals(missingValue);
+                try {
+                    switch ( columnTypes.get(i) ) {
+                        case INT:
+                            ((int[])columns[i])[blockRows] = missing || isMissingNumber(value) ? MISSING_INT : Integer.parseInt(value);
+                            break;
+                        case DOUBLE:
+                            ((double[])columns[i])[blockRows] = missing || isMissingNumber(value) ? Double.NaN : Double.parseDouble(value);
+                            break;
+                        default:
+                            ((int[])columns[i])[blockRows] = missing ? MISSING_STRING : dictionaryIndex(dictionaries.get(i), value);
+                    }
+                } catch ( NumberFormatException e ) {
+                    throw new UserException(String.format("Value %s of column %s isn't a valid %s as declared in the VCF header; use -outputFormat TABLE to extract this field as text",
+                            value, columnNames.get(i), columnTypes.get(i)));
+                }
+            }
+
+            if ( ++blockRows == rowsPerBlock )
+                writeBlock();
+        }
+
+        private static boolean isMissingNumber(final String value) {
+            return value.equals(VCFConstants.MISSING_VALUE_v4);
+        }
+
+        private static int dictionaryIndex(final Map<String, Integer> dictionary, final String value) {
+            final Integer index = dictionary.get(value);
+            if ( index != null )
+                return index;
+            dictionary.put(value, dictionary.size());
+            return dictionary.size() - 1;
+        }
+
+        private void writeBlock() {
+            if ( blockRows == 0 )
+                return;
+
+            try {
+                out.writeInt(blockRows);
+                for ( int i = 0; i < columns.length; i++ ) {
+                    switch ( columnTypes.get(i) ) {
+                        case INT:
+                            final int[] ints = (int[])columns[i];
+                            for ( int row = 0; row < blockRows; row++ )
+                                out.writeInt(ints[row]);
+                            break;
+                        case DOUBLE:
+                            final double[] doubles = (double[])columns[i];
+                            for ( int row = 0; row < blockRows; row++ )
+                                out.writeDouble(doubles[row]);
+                            break;
+                        default:
+                            final Map<String, Integer> dictionary = dictionaries.get(i);
+                            final String[] values = new String[dictionary.size()];
+                            for ( final Map.Entry<String, Integer> entry : dictionary.entrySet() )
+                                values[entry.getValue()] = entry.getKey();
+                            out.writeInt(values.length);
+                            for ( final String value : values )
+                                writeString(out, value);
+                            final int[] indices = (int[])columns[i];
+                            for ( int row = 0; row < blockRows; row++ )
+                                out.writeInt(indices[row]);
+                            dictionary.clear();
+                    }
+                }
+            } catch ( IOException e ) {
+                throw new ReviewedGATKException("Failed to write a block of the columnar table", e);
+            }
+            blockRows = 0;
+        }
+
+        /**
+         * Write the remaining rows and the end of the table
+         */
+        public void close() {
+            writeBlock();
+            try {
+                out.writeInt(0);
+                out.flush();
+                compressed.finish();
+                compressed.flush();
+            } catch ( IOException e ) {
+                throw new ReviewedGATKException("Failed to finish the columnar table", e);
+            }
+        }
+    }
+}
@@ -40,11 +40,23 @@ import java.util.*;
  * */
 public class ConcordanceMetrics {
 
+    private static final GenotypeType[] GENOTYPE_TYPES = GenotypeType.values();
+
     final private Map<String,GenotypeConcordanceTable> perSampleGenotypeConcordance;
     final private GenotypeConcordanceTable overallGenotypeConcordance;
     final private SiteConcordanceTable overallSiteConcordance;
     final PrintStream sitesFile;
 
+    /**
+     * The overlapping samples and their tables, indexed the same way as the packed genotypes of each callset
+     */
+    final private String[] samples;
+    final private GenotypeConcordanceTable[] sampleTables;
+
+    final private PackedGenotypes evalGenotypes;
+    final private PackedGenotypes truthGenotypes;
+    final private SiteAlleles siteAlleles = new SiteAlleles();
+
     public ConcordanceMetrics(VCFHeader evaluate, VCFHeader truth, PrintStream inputSitesFile) {
         HashSet<String> overlappingSamples = new HashSet<>(evaluate.getGenotypeSamples());
         overlappingSamples.retainAll(truth.getGenotypeSamples());
@@ -56,6 +68,17 @@ public class ConcordanceMetrics {
         overallSiteConcordance = new SiteConcordanceTable();
         sitesFile = inputSitesFile;
         if (sitesFile != null) printSitesFileHeader();
+
+        // visit the samples in the same order as the map, so that the sites file lists them as it always has
+        samples = new String[perSampleGenotypeConcordance.size()];
+        sampleTables = new GenotypeConcordanceTable[samples.length];
+        int i = 0;
+        for ( final Map.Entry<String,GenotypeConcordanceTable> entry : perSampleGenotypeConcordance.entrySet() ) {
+            samples[i] = entry.getKey();
+            sampleTables[i++] = entry.getValue();
+        }
+        evalGenotypes = new PackedGenotypes(samples, evaluate.getGenotypeSamples());
+        truthGenotypes = new PackedGenotypes(samples, truth.getGenotypeSamples());
     }
 
     private void printSitesFileHeader() {
@@ -123,20 +146,53 @@ public class ConcordanceMetrics {
     @Requires({"eval != null","truth != null"})
     public void update(final VariantContext eval, final VariantContext truth) {
         overallSiteConcordance.update(eval,truth);
+
+        if ( ! siteAlleles.reset(truth) || ! evalGenotypes.pack(eval, siteAlleles) || ! truthGenotypes.pack(truth, siteAlleles) ) {
+            // too many distinct alleles to give each one a bit
+            updateUnpacked(eval, truth);
+            return;
+        }
+
+        final long truthSiteAlleles = siteAlleles.getTruthSiteAlleles();
+        final boolean truthMonoallelic = Long.bitCount(truthSiteAlleles) == 1;
+        final byte[] evalTypes = evalGenotypes.types;
+        final byte[] truthTypes = truthGenotypes.types;
+        for ( int i = 0; i < samples.length; i++ ) {
+            // ensure genotypes are either no-call ("."), missing (empty alleles), or diploid
+            if ( evalGenotypes.ploidies[i] < 0 || truthGenotypes.ploidies[i] < 0 ) {
+                throw new UserException(String.format("Concordance Metrics is currently only implemented for DIPLOID genotypes, found eval ploidy: %d, comp ploidy: %d",
+                        Math.abs(evalGenotypes.ploidies[i]),Math.abs(truthGenotypes.ploidies[i])));
+            }
+
+            final int evalType = evalTypes[i];
+            final int truthType = truthTypes[i];
+            final boolean allelesMatch = doAllelesMatch(evalType, evalGenotypes.alleles[i], truthType, truthGenotypes.alleles[i], truthSiteAlleles, truthMonoallelic);
+            sampleTables[i].update(allelesMatch, evalType, truthType);
+            final boolean doPrint = overallGenotypeConcordance.update(allelesMatch, evalType, truthType);
+            if(sitesFile != null && doPrint)
+                sitesFile.println(eval.getChr() + ":" + eval.getStart() + "\t" + samples[i] + "\t" + GENOTYPE_TYPES[truthType] + "\t" + GENOTYPE_TYPES[evalType]);
+        }
+    }
+
+    /**
+     * Update the genotype tables by looking up and comparing the genotype objects of each sample, for the rare sites
+     * whose alleles don't fit in the packed representation
+     */
+    private void updateUnpacked(final VariantContext eval, final VariantContext truth) {
         final Set<Allele> truthAlleles = new HashSet<>(truth.getAlleles());
-        for ( final String sample : perSampleGenotypeConcordance.keySet() ) {
-            final Genotype evalGenotype = eval.getGenotype(sample);
-            final Genotype truthGenotype = truth.getGenotype(sample);
+        for ( int i = 0; i < samples.length; i++ ) {
+            final Genotype evalGenotype = eval.getGenotype(samples[i]);
+            final Genotype truthGenotype = truth.getGenotype(samples[i]);
             // ensure genotypes are either no-call ("."), missing (empty alleles), or diploid
             if ( ( ! evalGenotype.isNoCall() && evalGenotype.getPloidy() != 2 && evalGenotype.getPloidy() > 0) ||
                  ( ! truthGenotype.isNoCall() && truthGenotype.getPloidy() != 2 && truthGenotype.getPloidy() > 0) ) {
                 throw new UserException(String.format("Concordance Metrics is currently only implemented for DIPLOID genotypes, found eval ploidy: %d, comp ploidy: %d",evalGenotype.getPloidy(),truthGenotype.getPloidy()));
             }
             final boolean allelesMatch = doAllelesMatch(evalGenotype, truthGenotype, truth.getReference(), truthAlleles);
-            perSampleGenotypeConcordance.get(sample).update(allelesMatch, evalGenotype, truthGenotype);
+            sampleTables[i].update(allelesMatch, evalGenotype, truthGenotype);
             final boolean doPrint = overallGenotypeConcordance.update(allelesMatch, evalGenotype, truthGenotype);
             if(sitesFile != null && doPrint)
-                sitesFile.println(eval.getChr() + ":" + eval.getStart() + "\t" + sample + "\t" + truthGenotype.getType() + "\t" + evalGenotype.getType());
+                sitesFile.println(eval.getChr() + ":" + eval.getStart() + "\t" + samples[i] + "\t" + truthGenotype.getType() + "\t" + evalGenotype.getType());
         }
     }
 
@@ -229,6 +285,150 @@ public class ConcordanceMetrics {
         return matching;
     }
 
+    /**
+     * The same test as doAllelesMatch on genotypes, on packed genotype types and allele bit sets
+     *
+     * @param evalAlleles      the bits of the alleles of the eval genotype
+     * @param truthAlleles     the bits of the alleles of the truth genotype
+     * @param truthSiteAlleles the bits of all the alleles of the truth variant
+     * @param truthMonoallelic whether the truth variant has no alternate alleles
+     */
+    private static boolean doAllelesMatch(final int evalType, final long evalAlleles, final int truthType, final long truthAlleles,
+                                          final long truthSiteAlleles, final boolean truthMonoallelic) {
+        if ( ! isCalled(evalType) || ! isCalled(truthType) ) // Case 1
+            return true;
+        if ( truthType == GenotypeType.HOM_REF.ordinal() ) // Case 2
+            return truthMonoallelic || (evalAlleles & ~truthSiteAlleles) == 0;
+        return (evalAlleles & ~(truthAlleles | SiteAlleles.TRUTH_REFERENCE_BIT)) == 0; // Case 3
+    }
+
+    private static boolean isCalled(final int type) {
+        return type != GenotypeType.NO_CALL.ordinal() && type != GenotypeType.UNAVAILABLE.ordinal();
+    }
+
+    /**
+     * Assigns one bit to each distinct allele seen at a site, the alleles of the truth variant first
+     */
+    static class SiteAlleles {
+        /** The bit of the reference allele of the truth variant, which is always the first allele seen */
+        static final long TRUTH_REFERENCE_BIT = 1L;
+
+        private final Allele[] alleles = new Allele[Long.SIZE];
+        private int nAlleles;
+        private long truthSiteAlleles;
+
+        /**
+         * Start a new site
+         *
+         * @return false if the truth variant has too many distinct alleles to give each one a bit
+         */
+        boolean reset(final VariantContext truth) {
+            nAlleles = 0;
+            truthSiteAlleles = 0;
+            for ( final Allele allele : truth.getAlleles() ) {
+                final long bit = getBit(allele);
+                if ( bit == 0 )
+                    return false;
+                truthSiteAlleles |= bit;
+            }
+            return true;
+        }
+
+        /**
+         * @return the bits of the distinct alleles of the truth variant; the reference allele has the lowest bit
+         */
+        long getTruthSiteAlleles() {
+            return truthSiteAlleles;
+        }
+
+        /**
+         * @return the bit of allele, assigning it the next bit if it hasn't been seen at this site, or 0 if there are no bits left
+         */
+        long getBit(final Allele allele) {
+            // genotypes decoded from a VCF share the allele objects of their variant, so try identity first
+            for ( int i = 0; i < nAlleles; i++ ) {
+                if ( alleles[i] == allele )
+                    return 1L << i;
+            }
+            for ( int i = 0; i < nAlleles; i++ ) {
+                if ( alleles[i].equals(allele) )
+                    return 1L << i;
+            }
+            if ( nAlleles == alleles.length )
+                return 0;
+            alleles[nAlleles] = allele;
+            return 1L << nAlleles++;
+        }
+    }
+
+    /**
+     * The genotypes of one callset at a site, reduced to what the concordance tables need and laid out in flat
+     * arrays indexed by sample
+     */
+    static class PackedGenotypes {
+        private final String[] samples;
+
+        /**
+         * The position of each sample in the genotypes of the callset's records, as given by its header
+         */
+        private final int[] offsets;
+
+        /** The GenotypeType ordinal of each genotype */
+        final byte[] types;
+
+        /** The ploidy of each genotype, negated if the genotype is called but not diploid */
+        final int[] ploidies;
+
+        /** The bits of the alleles of each called genotype, 0 for the others */
+        final long[] alleles;
+
+        PackedGenotypes(final String[] samples, final List<String> headerSamples) {
+            this.samples = samples;
+            offsets = new int[samples.length];
+            final Map<String,Integer> headerOffsets = new HashMap<>(headerSamples.size());
+            for ( int i = 0; i < headerSamples.size(); i++ )
+                headerOffsets.put(headerSamples.get(i), i);
+            for ( int i = 0; i < samples.length; i++ )
+                offsets[i] = headerOffsets.get(samples[i]);
+            types = new byte[samples.length];
+            ploidies = new int[samples.length];
+            alleles = new long[samples.length];
+        }
+
+        /**
+         * Fill the arrays with the genotypes of vc
+         *
+         * @return false if the genotypes have too many distinct alleles to give each one a bit
+         */
+        boolean pack(final VariantContext vc, final SiteAlleles siteAlleles) {
+            final GenotypesContext genotypes = vc.getGenotypes();
+            for ( int i = 0; i < samples.length; i++ ) {
+                // records normally list their genotypes in header order, but fall back on the name lookup when they don't
+                Genotype genotype = offsets[i] < genotypes.size() ? genotypes.get(offsets[i]) : null;
+                if ( genotype == null || ! genotype.getSampleName().equals(samples[i]) )
+                    genotype = genotypes.get(samples[i]);
+
+                final GenotypeType type = genotype.getType();
+                types[i] = (byte)type.ordinal();
+                ploidies[i] = genotype.getPloidy();
+                if ( ! genotype.isNoCall() && ploidies[i] != 2 && ploidies[i] > 0 )
+                    ploidies[i] = -ploidies[i];
+
+                long bits = 0;
+                if ( isCalled(type.ordinal()) ) {
+                    for ( final Allele allele : genotype.getAlleles() ) {
+                        final long bit = siteAlleles.getBit(allele);
+                        if ( bit == 0 )
+                            return false;
+                        bits |= bit;
+                    }
+                }
+                alleles[i] = bits;
+            }
+            return true;
+        }
+    }
+
 
     class GenotypeConcordanceTable {
 
@@ -242,9 +442,16 @@ public class ConcordanceMetrics {
 
         @Requires({"eval!=null","truth != null","truthAlleles != null"})
         public Boolean update(final boolean matchingAlt, final Genotype eval, final Genotype truth) {
+            return update(matchingAlt, eval.getType().ordinal(), truth.getType().ordinal());
+        }
+
+        /**
+         * @param evalGT  the GenotypeType ordinal of the eval genotype
+         * @param truthGT the GenotypeType ordinal of the truth genotype
+         * @return true if the alleles match but the genotypes don't
+         */
+        public boolean update(final boolean matchingAlt, final int evalGT, final int truthGT) {
             if ( matchingAlt ) {
-                final int evalGT = eval.getType().ordinal();
-                final int truthGT = truth.getType().ordinal();
                 genotypeCounts[evalGT][truthGT]++;
                 if(evalGT != truthGT)  //report variants where genotypes don't match
                     return true;
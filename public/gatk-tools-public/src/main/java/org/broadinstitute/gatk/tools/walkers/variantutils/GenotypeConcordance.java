@@ -651,6 +651,10 @@ public class GenotypeConcordance extends RodWalker<List<Pair<VariantContext,Vari
 
     public VariantContext filterGenotypes(VariantContext context, boolean ignoreSiteFilter, List<VariantContextUtils.JexlVCMatchExp> exps) {
         if ( ! context.isFiltered() || ignoreSiteFilter ) {
+            // nothing to filter, so don't copy every genotype into a new context
+            if ( exps.isEmpty() )
+                return context;
+
             List<Genotype> filteredGenotypes = new ArrayList<Genotype>(context.getNSamples());
             for ( Genotype g : context.getGenotypes() ) {
                 Map<VariantContextUtils.JexlVCMatchExp, Boolean> matchMap = VariantContextUtils.match(context, g, exps);
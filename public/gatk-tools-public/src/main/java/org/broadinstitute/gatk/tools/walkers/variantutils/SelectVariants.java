@@ -28,12 +28,14 @@ package org.broadinstitute.gatk.tools.walkers.variantutils;
 import org.broadinstitute.gatk.utils.commandline.*;
 import org.broadinstitute.gatk.engine.CommandLineGATK;
 import org.broadinstitute.gatk.engine.arguments.StandardVariantContextInputArgumentCollection;
+import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.TreeReducible;
 import org.broadinstitute.gatk.utils.variant.ChromosomeCountConstants;
+import org.broadinstitute.gatk.utils.variant.CompiledJexlVCMatchExp;
 import org.broadinstitute.gatk.engine.samples.MendelianViolation;
 import org.broadinstitute.gatk.engine.SampleUtils;
 import org.broadinstitute.gatk.utils.Utils;
@@ -42,6 +44,7 @@ import org.broadinstitute.gatk.engine.GATKVCFUtils;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
+import org.broadinstitute.gatk.utils.variant.VCFGenotypeSubsetter;
 import htsjdk.variant.vcf.*;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
@@ -605,7 +608,7 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
 
     private ArrayList<VariantContext.Type> selectedTypes = new ArrayList<>();
     private ArrayList<String> selectNames = new ArrayList<>();
-    private List<VariantContextUtils.JexlVCMatchExp> jexls = null;
+    private List<CompiledJexlVCMatchExp> jexls = null;
 
     private TreeSet<String> samples = new TreeSet<>();
     private boolean noSamplesSpecified = false;
@@ -626,6 +629,9 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
     private Set<String> IDsToRemove = null;
     private Map<String, VCFHeader> vcfRods;
 
+    // decodes only the genotypes of the selected samples, or null if all of them have to be decoded
+    private VCFGenotypeSubsetter genotypeSubsetter = null;
+
     private final List<Allele> diploidNoCallAlleles = Arrays.asList(Allele.NO_CALL, Allele.NO_CALL);
 
     /**
@@ -690,6 +696,14 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
             for ( String sample : samples )
             logger.info("Including sample '" + sample + "'");
 
+        // when selecting a few samples out of a VCF, decode just their genotype columns
+        if ( ! noSamplesSpecified && samples.size() < vcfSamples.size() ) {
+            for ( final ReferenceOrderedDataSource source : getToolkit().getRodDataSources() ) {
+                if ( source.getName().equals(variantCollection.variants.getName()) && VCFCodec.class.equals(source.getType()) )
+                    genotypeSubsetter = new VCFGenotypeSubsetter(vcfRods.get(source.getName()), samples);
+            }
+        }
+
         // if user specified types to include, add these, otherwise, add all possible variant context types to list of vc types to include
         if (typesToInclude.isEmpty()) {
             for (VariantContext.Type t : VariantContext.Type.values())
@@ -731,7 +745,7 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
             selectNames.add(String.format("select-%d", i));
         }
 
-        jexls = VariantContextUtils.initializeMatchExps(selectNames, selectExpressions);
+        jexls = CompiledJexlVCMatchExp.compile(VariantContextUtils.initializeMatchExps(selectNames, selectExpressions));
 
         // Look at the parameters to decide which analysis to perform
         discordanceOnly = discordanceTrack.isBound();
@@ -862,8 +876,8 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
                 boolean failedJexlMatch = false;
 
                 try {
-                    for (VariantContextUtils.JexlVCMatchExp jexl : jexls) {
-                        if ( Utils.invertLogic(!VariantContextUtils.match(filteredGenotypeToNocall, jexl), invertSelect) ){
+                    for (CompiledJexlVCMatchExp jexl : jexls) {
+                        if ( Utils.invertLogic(!jexl.match(filteredGenotypeToNocall), invertSelect) ){
                             failedJexlMatch = true;
                             break;
                         }
@@ -1067,8 +1081,12 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
         if ( noSamplesSpecified && !removeUnusedAlternates && !forceValidOutput )
             return vc;
 
+        // decode only the genotypes of the selected samples if we can; the result carries no other genotypes,
+        // so it stands in for vc wherever genotypes of the selected samples are needed below
+        final VariantContext selected = genotypeSubsetter == null ? vc : genotypeSubsetter.subset(vc);
+
         // strip out the alternate alleles that aren't being used
-        final VariantContext sub = vc.subContextFromSamples(samples, removeUnusedAlternates);
+        final VariantContext sub = selected.subContextFromSamples(samples, removeUnusedAlternates);
 
         //If no subsetting happened, exit now
         if ( sub.getNSamples() == vc.getNSamples() && sub.getNAlleles() == vc.getNAlleles() )
@@ -1077,7 +1095,7 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
         final VariantContextBuilder builder = new VariantContextBuilder(sub);
 
         // if there are fewer alternate alleles now in the selected VC, we need to fix the PL and AD values
-        GenotypesContext newGC = GATKVariantContextUtils.updatePLsSACsAD(sub, vc);
+        GenotypesContext newGC = GATKVariantContextUtils.updatePLsSACsAD(sub, selected);
 
         // since the VC has been subset (either by sample or allele), we need to strip out the MLE tags
         builder.rmAttribute(GATKVCFConstants.MLE_ALLELE_COUNT_KEY);
@@ -1100,7 +1118,7 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
 
         builder.genotypes(newGC);
 
-        addAnnotations(builder, vc, sub.getSampleNames());
+        addAnnotations(builder, vc, sub);
 
         final VariantContext subset = builder.make();
 
@@ -1159,9 +1177,9 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
      *
      * @param builder     the new VC to annotate
      * @param originalVC  the original VC
-     * @param selectedSampleNames the post-selection list of sample names
+     * @param selectedVC  the original VC restricted to the selected samples
      */
-    private void addAnnotations(final VariantContextBuilder builder, final VariantContext originalVC, final Set<String> selectedSampleNames) {
+    private void addAnnotations(final VariantContextBuilder builder, final VariantContext originalVC, final VariantContext selectedVC) {
         if ( fullyDecode ) return; // TODO -- annotations are broken with fully decoded data
 
         if ( keepOriginalChrCounts ) {
@@ -1205,9 +1223,7 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
 
         boolean sawDP = false;
         int depth = 0;
-        for ( final String sample : selectedSampleNames ) {
-            Genotype g = originalVC.getGenotype(sample);
-
+        for ( final Genotype g : selectedVC.getGenotypes() ) {
             if ( ! g.isFiltered() ) {
                 if ( g.hasDP() ) {
                     depth += g.getDP();
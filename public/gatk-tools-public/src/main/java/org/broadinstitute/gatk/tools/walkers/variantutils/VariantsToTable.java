@@ -28,11 +28,13 @@ package org.broadinstitute.gatk.tools.walkers.variantutils;
 import org.broadinstitute.gatk.utils.commandline.*;
 import org.broadinstitute.gatk.engine.CommandLineGATK;
 import org.broadinstitute.gatk.engine.SampleUtils;
+import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
+import org.broadinstitute.gatk.engine.walkers.NanoSchedulable;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
 import org.broadinstitute.gatk.engine.GATKVCFUtils;
 import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
-import htsjdk.variant.vcf.VCFConstants;
-import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.variant.VCFGenotypeSubsetter;
+import htsjdk.variant.vcf.*;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -78,7 +80,10 @@ import java.util.*;
  *
  * <h3>Output</h3>
  * <p>
- * A tab-delimited file containing the values of the requested fields in the VCF file
+ * A tab-delimited file containing the values of the requested fields in the VCF file, or with
+ * -outputFormat COLUMNAR, the same table in the compressed binary format described in ColumnarVariantTable.
+ * There, each column is stored as integers, floating point numbers or text according to the type and number
+ * of values of its field in the VCF header.
  * </p>
  *
  * <h3>Usage example</h3>
@@ -102,11 +107,16 @@ import java.util.*;
  * <p>If a VCF record is missing a value, then the tool by default throws an error, but the special value NA can
  * be emitted instead if requested at the command line using --allowMissingData.</p>
  *
+ * <h3>Performance</h3>
+ * <p>Fields are extracted in parallel with -nct, while the table is written in the order of the input.  Only the
+ * FORMAT fields requested with -GF (and GT, if genotype counts such as HET are requested) are decoded from the
+ * genotypes of a VCF.</p>
+ *
  * @author Mark DePristo
  * @since 2010
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARMANIP, extraDocs = {CommandLineGATK.class} )
-public class VariantsToTable extends RodWalker<Integer, Integer> {
+public class VariantsToTable extends RodWalker<List<List<List<String>>>, Integer> implements NanoSchedulable {
     /**
      * Variants from this VCF file are used by this tool as input.
      * The file must at least contain the standard VCF header lines, but
@@ -146,7 +156,7 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
      */
     @Argument(fullName="maxRecords", shortName="M", doc="If provided, we will emit at most maxRecord records to the table", required=false)
     public int MAX_RECORDS = -1;
-    long nRecords = 0L;
+    volatile long nRecords = 0L;
 
     /**
      * By default, records with multiple ALT alleles will comprise just one line of output; note that in general this can make your resulting file
@@ -178,12 +188,36 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
     public boolean ALLOW_MISSING_DATA = false;
     private final static String MISSING_DATA = "NA";
 
+    /**
+     * By default, this tool writes a tab-delimited text table.  With COLUMNAR, it writes the same table as
+     * compressed blocks of typed binary columns instead (see ColumnarVariantTable), which is much smaller and
+     * faster to load for numeric fields.  Molten output can only be written as text.
+     */
+    @Advanced
+    @Argument(fullName="outputFormat", shortName="outputFormat", doc="The format of the output table, TABLE or COLUMNAR", required=false)
+    public OutputFormat outputFormat = OutputFormat.TABLE;
+
+    public enum OutputFormat {
+        TABLE,
+        COLUMNAR
+    }
+
+    // the -F fields that are computed from the genotype calls
+    private static final Set<String> GENOTYPE_COUNT_FIELDS = new HashSet<>(Arrays.asList("HET", "HOM-REF", "HOM-VAR", "NO-CALL", "VAR", "NCALLED"));
+    // the built-in -F fields with integer values
+    private static final Set<String> INTEGER_FIELDS = new HashSet<>(Arrays.asList("POS", "EVENTLENGTH", "TRANSITION", "HET", "HOM-REF", "HOM-VAR", "NO-CALL", "VAR", "NSAMPLES", "NCALLED"));
+
     private final List<String> samples = new ArrayList<String>();
 
+    // for each VCF input read with the VCF codec, decodes only the FORMAT fields we need
+    private final Map<String, VCFGenotypeSubsetter> genotypeSubsetters = new HashMap<>();
+
+    private ColumnarVariantTable.Writer columnarWriter = null;
+
     public void initialize() {
+        final Map<String, VCFHeader> vcfRods = GATKVCFUtils.getVCFHeadersFromRods(getToolkit(), variants);
 
         if ( !genotypeFieldsToTake.isEmpty() ) {
-            Map<String, VCFHeader> vcfRods = GATKVCFUtils.getVCFHeadersFromRods(getToolkit(), variants);
             TreeSet<String> vcfSamples = new TreeSet<String>(SampleUtils.getSampleList(vcfRods, GATKVariantContextUtils.GenotypeMergeType.REQUIRE_UNIQUE));
             samples.addAll(vcfSamples);
 
@@ -192,8 +226,27 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
                 genotypeFieldsToTake.clear();
         }
 
+        // genotypes are decoded all at once on first access, so restrict them to the FORMAT fields we output
+        final Set<String> formatKeys = new HashSet<>(genotypeFieldsToTake);
+        for ( final String field : fieldsToTake )
+            if ( GENOTYPE_COUNT_FIELDS.contains(field) )
+                formatKeys.add(VCFConstants.GENOTYPE_KEY);
+        if ( !formatKeys.isEmpty() ) {
+            for ( final ReferenceOrderedDataSource source : getToolkit().getRodDataSources() ) {
+                final VCFHeader header = vcfRods.get(source.getName());
+                if ( header != null && VCFCodec.class.equals(source.getType()) )
+                    genotypeSubsetters.put(source.getName(), new VCFGenotypeSubsetter(header, header.getGenotypeSamples(), formatKeys));
+            }
+        }
+
         // print out the header
-        if ( moltenizeOutput ) {
+        if ( outputFormat == OutputFormat.COLUMNAR ) {
+            if ( moltenizeOutput )
+                throw new UserException.BadArgumentValue("outputFormat", "molten output can only be written as a TABLE");
+            final List<String> columnNames = new ArrayList<>(fieldsToTake);
+            columnNames.addAll(createGenotypeColumnNames(genotypeFieldsToTake, samples));
+            columnarWriter = new ColumnarVariantTable.Writer(out, columnNames, getColumnTypes(vcfRods.values()), MISSING_DATA);
+        } else if ( moltenizeOutput ) {
             out.println("RecordID\tSample\tVariable\tValue");
         } else {
             final String baseHeader = Utils.join("\t", fieldsToTake);
@@ -203,23 +256,26 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
         }
     }
 
-    public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+    /**
+     * Extract the table records of the variants at this locus
+     *
+     * @return for each variant to output, the list of its records
+     */
+    public List<List<List<String>>> map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if ( tracker == null ) // RodWalkers can make funky map calls
-            return 0;
+            return Collections.emptyList();
 
+        final List<List<List<String>>> records = new ArrayList<>(1);
         for ( VariantContext vc : tracker.getValues(variants, context.getLocation())) {
             if ( showFiltered || vc.isNotFiltered() ) {
-                nRecords++;
-                for ( final List<String> record : extractFields(vc, fieldsToTake, genotypeFieldsToTake, samples, ALLOW_MISSING_DATA, splitMultiAllelic) ) {
-                    if ( moltenizeOutput )
-                        emitMoltenizedOutput(record);
-                    else
-                        out.println(Utils.join("\t", record));
-                }
+                final VCFGenotypeSubsetter genotypeSubsetter = genotypeSubsetters.get(vc.getSource());
+                if ( genotypeSubsetter != null )
+                    vc = genotypeSubsetter.subset(vc);
+                records.add(extractFields(vc, fieldsToTake, genotypeFieldsToTake, samples, ALLOW_MISSING_DATA, splitMultiAllelic));
             }
         }
-        
-        return 1;
+
+        return records;
     }
 
     @Override
@@ -231,23 +287,84 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
         return s.endsWith("*");
     }
 
-    private static String createGenotypeHeader(final List<String> genotypeFieldsToTake, final List<String> samples) {
-        boolean firstEntry = true;
+    /**
+     * Determine the type of each column of the table for columnar output
+     *
+     * A column is numeric if its field is a numeric built-in field, or an INFO or FORMAT field declared in every
+     * header as a single Integer or Float (or, with -SMA, a Float or Integer with one value per alternate allele).
+     * All other columns are text.
+     *
+     * @param headers the headers of the input VCFs
+     * @return the type of each column, in the order of the records
+     */
+    private List<ColumnarVariantTable.ColumnType> getColumnTypes(final Collection<VCFHeader> headers) {
+        final List<ColumnarVariantTable.ColumnType> types = new ArrayList<>();
+
+        for ( final String field : fieldsToTake ) {
+            if ( field.equals("QUAL") )
+                types.add(ColumnarVariantTable.ColumnType.DOUBLE);
+            else if ( INTEGER_FIELDS.contains(field) )
+                types.add(ColumnarVariantTable.ColumnType.INT);
+            else if ( getters.containsKey(field) || isWildCard(field) )
+                types.add(ColumnarVariantTable.ColumnType.STRING);
+            else {
+                final List<VCFCompoundHeaderLine> lines = new ArrayList<>();
+                for ( final VCFHeader header : headers )
+                    lines.add(header.getInfoHeaderLine(field));
+                types.add(getColumnType(lines));
+            }
+        }
 
-        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < samples.size(); i++ ) {
+            for ( final String gf : genotypeFieldsToTake ) {
+                if ( gf.equals(VCFConstants.GENOTYPE_KEY) || gf.equals(VCFConstants.GENOTYPE_FILTER_KEY) )
+                    types.add(ColumnarVariantTable.ColumnType.STRING);
+                else {
+                    final List<VCFCompoundHeaderLine> lines = new ArrayList<>();
+                    for ( final VCFHeader header : headers )
+                        lines.add(header.getFormatHeaderLine(gf));
+                    types.add(getColumnType(lines));
+                }
+            }
+        }
+
+        return types;
+    }
+
+    private ColumnarVariantTable.ColumnType getColumnType(final List<VCFCompoundHeaderLine> lines) {
+        ColumnarVariantTable.ColumnType type = null;
+        for ( final VCFCompoundHeaderLine line : lines ) {
+            final boolean singleValue = (line != null) &&
+                    ((line.getCountType() == VCFHeaderLineCount.INTEGER && line.getCount() == 1) ||
+                     (line.getCountType() == VCFHeaderLineCount.A && splitMultiAllelic));
+            final ColumnarVariantTable.ColumnType lineType;
+            if ( singleValue && line.getType() == VCFHeaderLineType.Integer )
+                lineType = ColumnarVariantTable.ColumnType.INT;
+            else if ( singleValue && line.getType() == VCFHeaderLineType.Float )
+                lineType = ColumnarVariantTable.ColumnType.DOUBLE;
+            else
+                lineType = ColumnarVariantTable.ColumnType.STRING;
+
+            if ( type != null && type != lineType )
+                return ColumnarVariantTable.ColumnType.STRING;
+            type = lineType;
+        }
+        return type == null ? ColumnarVariantTable.ColumnType.STRING : type;
+    }
+
+    private static List<String> createGenotypeColumnNames(final List<String> genotypeFieldsToTake, final List<String> samples) {
+        final List<String> names = new ArrayList<>(genotypeFieldsToTake.size() * samples.size());
         for ( final String sample : samples ) {
             for ( final String gf : genotypeFieldsToTake ) {
-                if ( firstEntry )
-                    firstEntry = false;
-                else
-                    sb.append("\t");
                 // spaces in sample names are legal but wreak havoc in R data frames
-                sb.append(sample.replace(" ","_"));
-                sb.append(".");
-                sb.append(gf);
+                names.add(sample.replace(" ","_") + "." + gf);
             }
         }
-        return sb.toString();
+        return names;
+    }
+
+    private static String createGenotypeHeader(final List<String> genotypeFieldsToTake, final List<String> samples) {
+        return Utils.join("\t", createGenotypeColumnNames(genotypeFieldsToTake, samples));
     }
 
     private void emitMoltenizedOutput(final List<String> record) {
@@ -386,12 +503,37 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
     public static List<List<String>> extractFields(VariantContext vc, List<String> fields, boolean allowMissingData) {
         return extractFields(vc, fields, null, null, allowMissingData, false);
     }
-    //
-    // default reduce -- doesn't do anything at all
-    //
     public Integer reduceInit() { return 0; }
-    public Integer reduce(Integer counter, Integer sum) { return counter + sum; }
-    public void onTraversalDone(Integer sum) {}
+
+    /**
+     * Write the records of the variants at one locus
+     *
+     * Reduce sees the loci in order, so this is where records are numbered and the record limit is applied;
+     * with -nct, map can run ahead on loci past the limit, whose records are dropped here.
+     */
+    public Integer reduce(final List<List<List<String>>> records, final Integer sum) {
+        if ( isDone() )
+            return sum;
+
+        for ( final List<List<String>> variantRecords : records ) {
+            nRecords++;
+            for ( final List<String> record : variantRecords ) {
+                if ( moltenizeOutput )
+                    emitMoltenizedOutput(record);
+                else if ( columnarWriter != null )
+                    columnarWriter.add(record);
+                else
+                    out.println(Utils.join("\t", record));
+            }
+        }
+
+        return sum + 1;
+    }
+
+    public void onTraversalDone(Integer sum) {
+        if ( columnarWriter != null )
+            columnarWriter.close();
+    }
 
     // ----------------------------------------------------------------------------------------------------
     //
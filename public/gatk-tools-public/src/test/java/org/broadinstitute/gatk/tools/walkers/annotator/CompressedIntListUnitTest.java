@@ -0,0 +1,154 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.annotator;
+
+import org.broadinstitute.gatk.utils.MannWhitneyU;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class CompressedIntListUnitTest {
+
+    @Test
+    public void testAddSingly(){
+        CompressedIntList intList = new CompressedIntList();
+        for (final int i : new int[]{2, 5, 5, 2, 2, 3, 2, 2, 4, 4, 4, 2})
+            intList.add(i);
+
+        Assert.assertEquals(intList.isEmpty(), false);
+        Assert.assertEquals(intList.getTotalCount(), 12);
+        Assert.assertEquals(intList.getNumberOfValues(), 4);
+        Assert.assertEquals(intList.toString(), "2,6,3,1,4,3,5,2");
+    }
+
+    @Test
+    public void testCombineLists(){
+        CompressedIntList intList1 = new CompressedIntList();
+        intList1.add(5,2);
+        intList1.add(2,6);
+        intList1.add(3,1);
+        intList1.add(4,3);
+
+        CompressedIntList intList2 = new CompressedIntList();
+        intList2.add(2,5);
+        intList2.add(6,2);
+        intList2.add(1,3);
+        intList2.add(3,4);
+
+        intList1.add(intList2);
+
+        Assert.assertEquals(intList1.toString(), "1,3,2,11,3,5,4,3,5,2,6,2");
+        Assert.assertEquals(intList1.getTotalCount(), 26);
+        Assert.assertEquals(intList2.toString(), "1,3,2,5,3,4,6,2");
+
+        final CompressedIntList empty = new CompressedIntList();
+        empty.add(intList2);
+        Assert.assertEquals(empty.toString(), intList2.toString());
+    }
+
+    @Test
+    public void testToDoubleArray(){
+        CompressedIntList intList = new CompressedIntList();
+        intList.add(-3,2);
+        intList.add(7,1);
+        intList.add(0,3);
+        Assert.assertEquals(intList.toDoubleArray(), new double[]{-3, -3, 0, 0, 0, 7});
+        Assert.assertEquals(new CompressedIntList().toDoubleArray().length, 0);
+    }
+
+    @DataProvider(name = "parseData")
+    public Object[][] makeParseData() {
+        return new Object[][] {
+                {"2,6,3,1,4,3,5,2", "2,6,3,1,4,3,5,2"},
+                {"5,2, 2,6 ,3,1", "2,6,3,1,5,2"},
+                {"-1,2,1,1,", "-1,2,1,1"},
+                {",,4,1", "4,1"},
+                {"", ""},
+        };
+    }
+
+    @Test(dataProvider = "parseData")
+    public void testParse(final String input, final String expected){
+        final String padded = "x|" + input + "|y";
+        CompressedIntList intList = new CompressedIntList();
+        intList.addFromString(padded, 2, 2 + input.length());
+        Assert.assertEquals(intList.toString(), expected);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testParseOddEntries(){
+        new CompressedIntList().addFromString("1,2,3", 0, 5);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testParseNotAnInteger(){
+        new CompressedIntList().addFromString("1,a", 0, 3);
+    }
+
+    @Test
+    public void testMatchesCompressedDataList(){
+        final Random random = new Random(7);
+        final CompressedDataList<Integer> expected = new CompressedDataList<>();
+        final CompressedIntList merged = new CompressedIntList();
+        for (int i = 0; i < 20; i++) {
+            final CompressedDataList<Integer> oneSample = new CompressedDataList<>();
+            for (int j = random.nextInt(30); j > 0; j--)
+                oneSample.add(random.nextInt(60) - 10, 1 + random.nextInt(3));
+            expected.add(oneSample);
+
+            final String raw = oneSample.toString();
+            final CompressedIntList parsed = new CompressedIntList();
+            parsed.addFromString(raw, 0, raw.length());
+            Assert.assertEquals(parsed.toString(), raw);
+            merged.add(parsed);
+        }
+        Assert.assertEquals(merged.toString(), expected.toString());
+    }
+
+    @Test
+    public void testRankSumMatchesExpandedData() {
+        final Random random = new Random(17);
+        for ( int iter = 0; iter < 200; iter++ ) {
+            final int range = 1 + random.nextInt(iter % 4 == 0 ? 3 : 60);
+            final CompressedIntList alts = new CompressedIntList();
+            final CompressedIntList refs = new CompressedIntList();
+            final int maxSize = iter % 2 == 0 ? 9 : 500;
+            for ( int i = random.nextInt(maxSize); i >= 0; i-- )
+                alts.add(random.nextInt(range));
+            for ( int i = random.nextInt(maxSize); i >= 0; i-- )
+                refs.add(random.nextInt(range));
+
+            final MannWhitneyU.Result fromHistograms = new MannWhitneyU().test(alts, refs, MannWhitneyU.TestType.FIRST_DOMINATES);
+            final MannWhitneyU.Result fromArrays = new MannWhitneyU().test(alts.toDoubleArray(), refs.toDoubleArray(), MannWhitneyU.TestType.FIRST_DOMINATES);
+            Assert.assertEquals(fromHistograms.getU(), fromArrays.getU());
+            Assert.assertEquals(fromHistograms.getZ(), fromArrays.getZ());
+            Assert.assertEquals(fromHistograms.getP(), fromArrays.getP());
+            Assert.assertEquals(fromHistograms.getMedianShift(), fromArrays.getMedianShift());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+public class ColumnarVariantTableUnitTest extends BaseTest {
+
+    private static final List<String> NAMES = Arrays.asList("CHROM", "POS", "QUAL", "AF", "S1.GT", "S1.GQ");
+    private static final List<ColumnarVariantTable.ColumnType> TYPES = Arrays.asList(
+            ColumnarVariantTable.ColumnType.STRING, ColumnarVariantTable.ColumnType.INT, ColumnarVariantTable.ColumnType.DOUBLE,
+            ColumnarVariantTable.ColumnType.DOUBLE, ColumnarVariantTable.ColumnType.STRING, ColumnarVariantTable.ColumnType.INT);
+
+    private static List<List<String>> makeRows(final int numRows) {
+        final Random random = new Random(numRows);
+        final String[] genotypes = {"A/A", "A/C", "C/C", "A|C", "./.", "NA"};
+        final List<List<String>> rows = new ArrayList<>(numRows);
+        for ( int i = 0; i < numRows; i++ ) {
+            rows.add(Arrays.asList(
+                    "chr" + (1 + i / 50),
+                    Integer.toString(i * 17 + 1),
+                    random.nextInt(10) == 0 ? "NA" : Double.toString(random.nextDouble() * 1000),
+                    random.nextInt(10) == 0 ? "." : Double.toString(random.nextDouble()),
+                    genotypes[random.nextInt(genotypes.length)],
+                    random.nextInt(10) == 0 ? "NA" : Integer.toString(random.nextInt(100) - 1)));
+        }
+        return rows;
+    }
+
+    private static File write(final List<List<String>> rows, final int rowsPerBlock) throws IOException {
+        final File file = createTempFile("ColumnarVariantTableUnitTest", ".table.gz");
+        try ( final FileOutputStream out = new FileOutputStream(file) ) {
+            final ColumnarVariantTable.Writer writer = new ColumnarVariantTable.Writer(out, NAMES, TYPES, "NA", rowsPerBlock);
+            for ( final List<String> row : rows )
+                writer.add(row);
+            writer.close();
+        }
+        return file;
+    }
+
+    @DataProvider(name = "Tables")
+    public Object[][] makeTables() {
+        return new Object[][]{
+                {0, 10},
+                {1, 10},
+                {10, 10},
+                {25, 10},
+                {1000, 64},
+                {1000, 1000000},
+        };
+    }
+
+    @Test(dataProvider = "Tables")
+    public void testRoundTrip(final int numRows, final int rowsPerBlock) throws IOException {
+        final List<List<String>> rows = makeRows(numRows);
+        final ColumnarVariantTable table = ColumnarVariantTable.read(write(rows, rowsPerBlock));
+
+        Assert.assertEquals(table.getColumnNames(), NAMES);
+        Assert.assertEquals(table.getNumRows(), numRows);
+        for ( int column = 0; column < NAMES.size(); column++ ) {
+            Assert.assertEquals(table.getColumnType(column), TYPES.get(column));
+            for ( int row = 0; row < numRows; row++ ) {
+                final String value = rows.get(row).get(column);
+                final boolean missing = value.equals("NA") || (value.equals(".") && TYPES.get(column) != ColumnarVariantTable.ColumnType.STRING);
+                switch ( TYPES.get(column) ) {
+                    case INT:
+                        Assert.assertEquals(table.getInts(column)[row], missing ? ColumnarVariantTable.MISSING_INT : Integer.parseInt(value));
+                        break;
+                    case DOUBLE:
+                        Assert.assertEquals(table.getDoubles(column)[row], missing ? Double.NaN : Double.parseDouble(value));
+                        break;
+                    default:
+                        Assert.assertEquals(table.getStrings(column)[row], missing ? null : value);
+                }
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testWrongColumnType() throws IOException {
+        ColumnarVariantTable.read(write(makeRows(5), 10)).getInts(2);
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testValueNotOfColumnType() throws IOException {
+        final List<List<String>> rows = makeRows(5);
+        rows.set(3, Arrays.asList("chr1", "10", "2.5", "0,1", "A/C", "30"));
+        write(rows, 10);
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testNotATable() throws IOException {
+        final File file = createTempFile("ColumnarVariantTableUnitTest", ".table.gz");
+        try ( final java.util.zip.GZIPOutputStream out = new java.util.zip.GZIPOutputStream(new FileOutputStream(file)) ) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+        ColumnarVariantTable.read(file);
+    }
+}
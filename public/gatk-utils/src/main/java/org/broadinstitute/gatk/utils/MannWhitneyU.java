@@ -22,10 +22,8 @@
 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
 * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 */
-
 package org.broadinstitute.gatk.utils;
 
-import htsjdk.samtools.util.Histogram;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.log4j.Logger;
 
@@ -36,36 +34,38 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Imported with changes from Picard private.
  *
+ * Both series are sorted once and merged into tie bands held in primitive arrays; U, the tie correction and, for
+ * small samples, the exact permutation distribution of U are all computed from the bands.  Data that is already
+ * summarized as sorted value/count histograms (see {@link SortedHistogram}) can be tested directly, so per-sample
+ * histograms can be merged and tested without expanding them back into raw values.
+ *
  * @author Tim Fennell
  */
 public class MannWhitneyU {
 
     protected static Logger logger = Logger.getLogger(MannWhitneyU.class);
 
-    private static final class Rank implements Comparable<Rank> {
-        final double value;
-        float rank;
-        final int series;
-
-        private Rank(double value, float rank, int series) {
-            this.value = value;
-            this.rank = rank;
-            this.series = series;
-        }
+    /**
+     * A histogram of integer values, as <value,count> pairs sorted by ascending value, that can be used as one of
+     * the series of a test without expanding it into an array of observations.
+     */
+    public interface SortedHistogram {
+        /**
+         * @return the number of distinct values
+         */
+        int getNumberOfValues();
 
-        @Override
-        public int compareTo(Rank that) {
-            return (int) (this.value - that.value);
-        }
+        /**
+         * @param i the index of the distinct value, in ascending order of value
+         * @return the i-th smallest distinct value
+         */
+        int getValue(int i);
 
-        @Override
-        public String toString() {
-            return "Rank{" +
-                    "value=" + value +
-                    ", rank=" + rank +
-                    ", series=" + series +
-                    '}';
-        }
+        /**
+         * @param i the index of the distinct value, in ascending order of value
+         * @return the number of observations of the i-th smallest distinct value
+         */
+        int getCount(int i);
     }
 
     /**
@@ -143,63 +143,103 @@ public class MannWhitneyU {
     }
 
     /**
-     * The ranked data in one list and a list of the number of ties.
+     * The merged data of both series as tie bands: the distinct values in ascending order, the number of
+     * observations of each value from each series, and the (mid)rank shared by all the observations of the band.
      */
     public static class RankedData {
-        private final Rank[] rank;
-        private final ArrayList numOfTies;
-
-        public RankedData(Rank[] rank, ArrayList numOfTies) {
-            this.rank = rank;
-            this.numOfTies = numOfTies;
+        private final double[] values;
+        private final int[] series1Counts;
+        private final int[] series2Counts;
+        private final float[] ranks;
+        private final int nBands;
+        private final int n1;
+        private final int n2;
+
+        private RankedData(final double[] values, final int[] series1Counts, final int[] series2Counts, final int nBands) {
+            this.values = values;
+            this.series1Counts = series1Counts;
+            this.series2Counts = series2Counts;
+            this.nBands = nBands;
+            this.ranks = new float[nBands];
+
+            int n1 = 0, n2 = 0;
+            for ( int b = 0; b < nBands; b++ ) {
+                final int count = series1Counts[b] + series2Counts[b];
+                ranks[b] = bandRank(n1 + n2 + 1, count);
+                n1 += series1Counts[b];
+                n2 += series2Counts[b];
+            }
+            this.n1 = n1;
+            this.n2 = n2;
         }
 
-        public Rank[] getRank() {
-            return rank;
+        /**
+         * @return the number of tie bands, i.e. of distinct values across both series
+         */
+        public int getNumberOfBands() {
+            return nBands;
         }
 
-        public ArrayList getNumOfTies() {
-            return numOfTies;
+        public double getValue(final int band) {
+            return values[band];
         }
-    }
 
-    /**
-     * Key for the map from Integer[] to set of all permutations of that array.
-     */
-    private static class Key {
-        final Integer[] listToPermute;
+        public int getSeries1Count(final int band) {
+            return series1Counts[band];
+        }
 
-        private Key(Integer[] listToPermute) {
-            this.listToPermute = listToPermute;
+        public int getSeries2Count(final int band) {
+            return series2Counts[band];
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (o == null || getClass() != o.getClass()) return false;
+        /**
+         * @return the rank of every observation in the band: the mean of the 1-based positions the band covers
+         */
+        public float getRank(final int band) {
+            return ranks[band];
+        }
 
-            Key that = (Key) o;
-            return (Arrays.deepEquals(this.listToPermute, that.listToPermute));
+        public int getSeries1Size() {
+            return n1;
         }
 
-        @Override
-        public int hashCode() {
-            int result = 17;
-            for (Integer i : listToPermute) {
-                result = 31 * result + listToPermute[i];
-            }
-            return result;
+        public int getSeries2Size() {
+            return n2;
         }
     }
 
+    /**
+     * Compute the rank shared by the count tied observations at 1-based positions firstRank to firstRank + count - 1
+     *
+     * The positions are summed one at a time in float precision, which is how ranks have always been computed here,
+     * so that the statistics stay identical to the previous implementation for every input size.
+     */
+    private static float bandRank(final int firstRank, final int count) {
+        float rank = firstRank;
+        for ( int j = 1; j < count; j++ )
+            rank += (float)(firstRank + j);
+        if ( count > 1 )
+            rank /= count;
+        return rank;
+    }
+
     // Constructs a normal distribution; this needs to be a standard normal in order to get a Z-score in the exact case
     private static final double NORMAL_MEAN = 0;
     private static final double NORMAL_SD = 1;
     private static final NormalDistribution NORMAL = new NormalDistribution(NORMAL_MEAN, NORMAL_SD);
 
     /**
-     * A map of an Integer[] of the labels to the set of all possible permutations of those labels.
+     * Largest series size for which exact distributions are cached.
      */
-    private static Map<Key, Set<List<Integer>>> PERMUTATIONS = new ConcurrentHashMap<Key, Set<List<Integer>>>();
+    private static final int MAX_CACHED_SERIES_SIZE = 20;
+
+    /**
+     * Exact distributions of twice the rank sum of series 1, indexed by that value, for data without ties, keyed by
+     * n1 * (MAX_CACHED_SERIES_SIZE + 1) + n2.  Without ties they only depend on the sizes of the two series, so the
+     * cache holds at most one entry per pair of sizes up to MAX_CACHED_SERIES_SIZE.  Distributions of tied data also
+     * depend on the sizes of the tie bands and are computed every time.
+     */
+    private static final Map<Integer, double[]> UNTIED_EXACT_DISTRIBUTIONS = new ConcurrentHashMap<>();
 
     /**
      * The minimum length for both data series in order to use a normal distribution
@@ -225,93 +265,114 @@ public class MannWhitneyU {
         TWO_SIDED
     }
 
+    /**
+     * Rank both series together
+     *
+     * Note that both arrays are sorted in place.
+     *
+     * @param series1 group 1 data
+     * @param series2 group 2 data
+     * @return the tie bands of the merged data
+     */
     public RankedData calculateRank(final double[] series1, final double[] series2) {
         Arrays.sort(series1);
         Arrays.sort(series2);
 
-        // Make a merged ranks array
-        final Rank[] ranks = new Rank[series1.length + series2.length];
-        {
-            int i = 0, j = 0, r = 0;
-            while (r < ranks.length) {
-                if (i >= series1.length) {
-                    ranks[r++] = new Rank(series2[j++], r, 2);
-                } else if (j >= series2.length) {
-                    ranks[r++] = new Rank(series1[i++], r, 1);
-                } else if (series1[i] <= series2[j]) {
-                    ranks[r++] = new Rank(series1[i++], r, 1);
-                } else {
-                    ranks[r++] = new Rank(series2[j++], r, 2);
-                }
-            }
-        }
+        final int n = series1.length + series2.length;
+        final double[] values = new double[n];
+        final int[] series1Counts = new int[n];
+        final int[] series2Counts = new int[n];
+        int nBands = 0;
 
-        ArrayList<Integer> numOfTies = new ArrayList<>();
+        int i = 0, j = 0;
+        for ( int r = 0; r < n; r++ ) {
+            final boolean fromSeries1 = j >= series2.length || (i < series1.length && series1[i] <= series2[j]);
+            final double value = fromSeries1 ? series1[i++] : series2[j++];
 
-        // Now sort out any tie bands
-        for (int i = 0; i < ranks.length; ) {
-            float rank = ranks[i].rank;
-            int count = 1;
+            // observations equal to the first value of the current band join it
+            if ( nBands == 0 || value != values[nBands - 1] )
+                values[nBands++] = value;
+            if ( fromSeries1 )
+                series1Counts[nBands - 1]++;
+            else
+                series2Counts[nBands - 1]++;
+        }
 
-            for (int j = i + 1; j < ranks.length && ranks[j].value == ranks[i].value; ++j) {
-                rank += ranks[j].rank;
-                ++count;
-            }
+        return new RankedData(values, series1Counts, series2Counts, nBands);
+    }
 
-            if (count > 1) {
-                rank /= count;
-                for (int j = i; j < i + count; ++j) {
-                    ranks[j].rank = rank;
-                }
-                numOfTies.add(count);
+    /**
+     * Rank two histograms together
+     *
+     * @param series1 group 1 data
+     * @param series2 group 2 data
+     * @return the tie bands of the merged data
+     */
+    public RankedData calculateRank(final SortedHistogram series1, final SortedHistogram series2) {
+        final int nValues1 = series1.getNumberOfValues();
+        final int nValues2 = series2.getNumberOfValues();
+        final double[] values = new double[nValues1 + nValues2];
+        final int[] series1Counts = new int[values.length];
+        final int[] series2Counts = new int[values.length];
+        int nBands = 0;
+
+        int i = 0, j = 0;
+        while ( i < nValues1 || j < nValues2 ) {
+            if ( j == nValues2 || (i < nValues1 && series1.getValue(i) < series2.getValue(j)) ) {
+                values[nBands] = series1.getValue(i);
+                series1Counts[nBands++] = series1.getCount(i++);
+            } else if ( i == nValues1 || series2.getValue(j) < series1.getValue(i) ) {
+                values[nBands] = series2.getValue(j);
+                series2Counts[nBands++] = series2.getCount(j++);
+            } else {
+                values[nBands] = series1.getValue(i);
+                series1Counts[nBands] = series1.getCount(i++);
+                series2Counts[nBands++] = series2.getCount(j++);
             }
-
-            // Skip forward the right number of items
-            i += count;
         }
 
-        return new RankedData(ranks, numOfTies);
+        return new RankedData(values, series1Counts, series2Counts, nBands);
     }
 
     /**
      * Rank both groups together and return a TestStatistic object that includes U1, U2 and number of ties for sigma
      */
     public TestStatistic calculateU1andU2(final double[] series1, final double[] series2) {
-        RankedData ranked = calculateRank(series1, series2);
-        Rank[] ranks = ranked.getRank();
-        ArrayList<Integer> numOfTies = ranked.getNumOfTies();
+        return calculateU1andU2(calculateRank(series1, series2));
+    }
+
+    /**
+     * Calculate U1, U2 and the number of ties for sigma from ranked data
+     */
+    public TestStatistic calculateU1andU2(final RankedData ranked) {
+        final int n = ranked.getSeries1Size() + ranked.getSeries2Size();
 
-        //Calculate number of ties transformed for formula for Sigma to calculate Z-score
-        ArrayList<Integer> transformedTies = new ArrayList<>();
-        for (int count : numOfTies) {
+        // Calculate number of ties transformed for formula for Sigma to calculate Z-score, and R1 and R2.
+        // The rank sums are accumulated one observation at a time in float precision, as they always have been.
+        double numOfTiesForSigma = 0.0;
+        float r1 = 0, r2 = 0;
+        for ( int b = 0; b < ranked.getNumberOfBands(); b++ ) {
+            final int count = ranked.getSeries1Count(b) + ranked.getSeries2Count(b);
             //If every single datapoint is tied then we want to return a p-value of .5 and
             //the formula for sigma that includes the number of ties breaks down. Setting
             //the number of ties to 0 in this case gets the desired result in the normal
             //approximation case.
-            if (count != ranks.length) {
-                transformedTies.add((count * count * count) - count);
-            }
-        }
+            if ( count > 1 && count != n )
+                numOfTiesForSigma += (count * count * count) - count;
 
-        double numOfTiesForSigma = 0.0;
-        for (int count : transformedTies) {
-            numOfTiesForSigma += count;
+            final float rank = ranked.getRank(b);
+            for ( int k = ranked.getSeries1Count(b); k > 0; k-- )
+                r1 += rank;
+            for ( int k = ranked.getSeries2Count(b); k > 0; k-- )
+                r2 += rank;
         }
 
-        // Calculate R1 and R2 and U.
-        float r1 = 0, r2 = 0;
-        for (Rank rank : ranks) {
-            if (rank.series == 1) r1 += rank.rank;
-            else r2 += rank.rank;
-        }
-
-        double n1 = series1.length;
-        double n2 = series2.length;
+        double n1 = ranked.getSeries1Size();
+        double n2 = ranked.getSeries2Size();
         double u1 = r1 - ((n1 * (n1 + 1)) / 2);
         double u2 = r2 - ((n2 * (n2 + 1)) / 2);
 
-        TestStatistic result = new TestStatistic(u1, u2, numOfTiesForSigma);
-        return result;
+        return new TestStatistic(u1, u2, numOfTiesForSigma);
     }
 
     /**
@@ -320,14 +381,7 @@ public class MannWhitneyU {
      * ties for sigma.
      */
     public TestStatistic calculateOneSidedU(final double[] series1, final double[] series2, final TestType whichSeriesDominates) {
-        TestStatistic stat = calculateU1andU2(series1, series2);
-        TestStatistic result;
-        if (whichSeriesDominates == TestType.FIRST_DOMINATES) {
-            result = new TestStatistic(stat.getU1(), stat.getTies());
-        } else {
-            result = new TestStatistic(stat.getU2(), stat.getTies());
-        }
-        return result;
+        return selectU(calculateU1andU2(series1, series2), whichSeriesDominates);
     }
 
     /**
@@ -335,10 +389,19 @@ public class MannWhitneyU {
      * Returns a test statistic object with trueU and number of ties for sigma.
      */
     public TestStatistic calculateTwoSidedU(final double[] series1, final double[] series2) {
-        TestStatistic u1AndU2 = calculateU1andU2(series1, series2);
-        double u = Math.min(u1AndU2.getU1(), u1AndU2.getU2());
-        TestStatistic result = new TestStatistic(u, u1AndU2.getTies());
-        return result;
+        return selectU(calculateU1andU2(series1, series2), TestType.TWO_SIDED);
+    }
+
+    private static TestStatistic selectU(final TestStatistic u1AndU2, final TestType whichSide) {
+        final double u;
+        if (whichSide == TestType.TWO_SIDED) {
+            u = Math.min(u1AndU2.getU1(), u1AndU2.getU2());
+        } else if (whichSide == TestType.FIRST_DOMINATES) {
+            u = u1AndU2.getU1();
+        } else {
+            u = u1AndU2.getU2();
+        }
+        return new TestStatistic(u, u1AndU2.getTies());
     }
 
     /**
@@ -380,37 +443,83 @@ public class MannWhitneyU {
         }
     }
 
+    /**
+     * Finds the median value of a non-empty histogram
+     */
+    public double median(final SortedHistogram data) {
+        long total = 0;
+        for ( int i = 0; i < data.getNumberOfValues(); i++ )
+            total += data.getCount(i);
+        final long mid = total / 2;
+        if (total % 2 == 0) {
+            return (valueAt(data, mid) + valueAt(data, mid - 1)) / 2d;
+        } else {
+            return valueAt(data, mid);
+        }
+    }
+
+    /**
+     * @return the value of the index-th smallest observation in data
+     */
+    private static double valueAt(final SortedHistogram data, final long index) {
+        long seen = 0;
+        for ( int i = 0; i < data.getNumberOfValues(); i++ ) {
+            seen += data.getCount(i);
+            if ( index < seen )
+                return data.getValue(i);
+        }
+        throw new IllegalArgumentException("index " + index + " is past the end of the histogram");
+    }
+
 
     /**
      * Constructs a new rank sum test with the given data.
      *
+     * Note that both arrays are sorted in place.
+     *
      * @param series1   group 1 data
      * @param series2   group 2 data
      * @param whichSide indicator of two sided test, 0 for two sided, 1 for series1 as dominator, 2 for series2 as dominator
      * @return Result including U statistic, Z score, p-value, and difference in medians.
      */
     public Result test(final double[] series1, final double[] series2, final TestType whichSide) {
-        final int n1 = series1.length;
-        final int n2 = series2.length;
-
         //If one of the groups is empty we return NaN
-        if (n1 == 0 || n2 == 0) {
+        if (series1.length == 0 || series2.length == 0) {
             return new Result(Float.NaN, Float.NaN, Float.NaN, Float.NaN);
         }
 
-        double u;
-        double nties;
+        final RankedData ranked = calculateRank(series1, series2);
+        return test(ranked, whichSide, Math.abs(median(series1) - median(series2)));
+    }
 
-        if (whichSide == TestType.TWO_SIDED) {
-            TestStatistic result = calculateTwoSidedU(series1, series2);
-            u = result.getTrueU();
-            nties = result.getTies();
-        } else {
-            TestStatistic result = calculateOneSidedU(series1, series2, whichSide);
-            u = result.getTrueU();
-            nties = result.getTies();
+    /**
+     * Constructs a new rank sum test from two histograms, giving the same result as a test of their
+     * expanded observations.
+     *
+     * @param series1   group 1 data
+     * @param series2   group 2 data
+     * @param whichSide indicator of two sided test, 0 for two sided, 1 for series1 as dominator, 2 for series2 as dominator
+     * @return Result including U statistic, Z score, p-value, and difference in medians.
+     */
+    public Result test(final SortedHistogram series1, final SortedHistogram series2, final TestType whichSide) {
+        final RankedData ranked = calculateRank(series1, series2);
+
+        //If one of the groups is empty we return NaN
+        if (ranked.getSeries1Size() == 0 || ranked.getSeries2Size() == 0) {
+            return new Result(Float.NaN, Float.NaN, Float.NaN, Float.NaN);
         }
 
+        return test(ranked, whichSide, Math.abs(median(series1) - median(series2)));
+    }
+
+    private Result test(final RankedData ranked, final TestType whichSide, final double medianShift) {
+        final int n1 = ranked.getSeries1Size();
+        final int n2 = ranked.getSeries2Size();
+
+        final TestStatistic result = selectU(calculateU1andU2(ranked), whichSide);
+        final double u = result.getTrueU();
+        final double nties = result.getTies();
+
         double z;
         double p;
 
@@ -425,141 +534,100 @@ public class MannWhitneyU {
             if (whichSide != TestType.FIRST_DOMINATES) {
                 logger.warn("An exact two-sided MannWhitneyU test was called. Only the one-sided exact test is implemented, use the approximation instead by setting minimumNormalN to 0.");
             }
-            p = permutationTest(series1, series2, u);
+            p = permutationTest(ranked, u);
             z = NORMAL.inverseCumulativeProbability(p);
         }
 
-        return new Result(u, z, p, Math.abs(median(series1) - median(series2)));
-    }
-
-    private void swap(Integer[] arr, int i, int j) {
-        int temp = arr[i];
-        arr[i] = arr[j];
-        arr[j] = temp;
+        return new Result(u, z, p, medianShift);
     }
 
     /**
-     * Uses a method that generates permutations in lexicographic order. (https://en.wikipedia.org/wiki/Permutation#Generation_in_lexicographic_order)
-     * @param temp Sorted list of elements to be permuted.
-     * @param allPermutations Empty set that will hold all possible permutations.
-     */
-    private void calculatePermutations(Integer[] temp, Set<List<Integer>> allPermutations) {
-        allPermutations.add(new ArrayList<>(Arrays.asList(temp)));
-        while (true) {
-            int k = -1;
-            for (int i = temp.length - 2; i >= 0; i--) {
-                if (temp[i] < temp[i + 1]) {
-                    k = i;
-                    break;
-                }
-            }
-
-            if (k == -1) {
-                break;
-            }
-
-            int l = -1;
-            for (int i = temp.length - 1; i >= k + 1; i--) {
-                if (temp[k] < temp[i]) {
-                    l = i;
-                    break;
-                }
-            }
-
-            swap(temp, k, l);
-
-            int end = temp.length - 1;
-            for (int begin = k + 1; begin < end; begin++) {
-                swap(temp, begin, end);
-                end--;
-            }
-            allPermutations.add(new ArrayList<>(Arrays.asList(temp)));
-        }
-    }
-
-    /**
-     * Checks to see if the permutations have already been computed before creating them from scratch.
-     * @param listToPermute List of tags in numerical order to be permuted
-     * @param numOfPermutations The number of permutations this list will have (n1+n2 choose n1)
-     * @return Set of all possible permutations for the given list.
-     */
-    Set<List<Integer>> getPermutations(final Integer[] listToPermute, int numOfPermutations) {
-        Key key = new Key(listToPermute);
-        Set<List<Integer>> permutations = PERMUTATIONS.get(key);
-        if (permutations == null) {
-            permutations = new HashSet<>(numOfPermutations);
-            calculatePermutations(listToPermute, permutations);
-            PERMUTATIONS.put(key, permutations);
-        }
-        return permutations;
-    }
-
-    /**
-     * Creates histogram of test statistics from a permutation test.
+     * Calculates the p-value of a permutation test of the U statistic of series 1.
      *
      * @param series1 Data from group 1
      * @param series2 Data from group 2
      * @param testStatU Test statistic U from observed data
-     * @return P-value based on histogram with u calculated for every possible permutation of group tag.
+     * @return P-value based on the distribution of u over every possible assignment of the group tags.
      */
     public double permutationTest(final double[] series1, final double[] series2, final double testStatU) {
-        final Histogram<Double> histo = new Histogram<Double>();
-        final int n1 = series1.length;
-        final int n2 = series2.length;
-
-        RankedData rankedGroups = calculateRank(series1, series2);
-        Rank[] ranks = rankedGroups.getRank();
-
-        Integer[] firstPermutation = new Integer[n1 + n2];
-
-        for (int i = 0; i < firstPermutation.length; i++) {
-            if (i < n1) {
-                firstPermutation[i] = 0;
-            } else {
-                firstPermutation[i] = 1;
-            }
-        }
-
-        final int numOfPerms = (int) MathUtils.binomialCoefficient(n1 + n2, n2);
-        Set<List<Integer>> allPermutations = getPermutations(firstPermutation, numOfPerms);
-
-        double[] newSeries1 = new double[n1];
-        double[] newSeries2 = new double[n2];
-
-        //iterate over all permutations
-        for (List<Integer> currPerm : allPermutations) {
-            int series1End = 0;
-            int series2End = 0;
-            for (int i = 0; i < currPerm.size(); i++) {
-                int grouping = currPerm.get(i);
-                if (grouping == 0) {
-                    newSeries1[series1End] = ranks[i].rank;
-                    series1End++;
-                } else {
-                    newSeries2[series2End] = ranks[i].rank;
-                    series2End++;
-                }
-            }
-            assert (series1End == n1);
-            assert (series2End == n2);
+        return permutationTest(calculateRank(series1, series2), testStatU);
+    }
 
-            double newU = MathUtils.sum(newSeries1) - ((n1 * (n1 + 1)) / 2.0);
-            histo.increment(newU);
-        }
+    /**
+     * Calculates the p-value of a permutation test of the U statistic of series 1 from ranked data.
+     *
+     * @param ranked the ranked data of both groups
+     * @param testStatU Test statistic U from observed data
+     * @return P-value based on the distribution of u over every possible assignment of the group tags.
+     */
+    public double permutationTest(final RankedData ranked, final double testStatU) {
+        final int n1 = ranked.getSeries1Size();
+        final double[] distribution = getExactDistribution(ranked);
 
         /**
          * In order to deal with edge cases where the observed value is also the most extreme value, we are taking half
          * of the count in the observed bin plus everything more extreme (in the FIRST_DOMINATES case the smaller bins)
-         * and dividing by the total count of everything in the histogram. Just using getCumulativeDistribution() gives
+         * and dividing by the total count of everything in the histogram. Just using the cumulative distribution gives
          * a p-value of 1 in the most extreme case which doesn't result in a usable z-score.
          */
-        double sumOfAllSmallerBins = histo.get(testStatU).getValue() / 2.0;
-
-        for (final Histogram<Double>.Bin bin : histo.values()) {
-            if (bin.getId() < testStatU) sumOfAllSmallerBins += bin.getValue();
+        final double twiceRankSum = 2 * testStatU + (double)n1 * (n1 + 1);
+        double sumOfAllSmallerBins = 0.0;
+        double total = 0.0;
+        for ( int s = 0; s < distribution.length; s++ ) {
+            if ( s == twiceRankSum ) sumOfAllSmallerBins += distribution[s] / 2.0;
+            else if ( s < twiceRankSum ) sumOfAllSmallerBins += distribution[s];
+            total += distribution[s];
         }
 
-        return sumOfAllSmallerBins / histo.getCount();
+        return sumOfAllSmallerBins / total;
     }
 
+    /**
+     * Get the number of ways to assign the group 1 tag to n1 of the observations for each possible value of twice the
+     * rank sum of group 1, computing it if it isn't cached.
+     *
+     * Tied observations share a rank, so rather than enumerating every permutation of the tags this counts, band by
+     * band, the number of ways to take t of the band's observations into group 1.  Ranks are always multiples of 1/2,
+     * so twice the rank sum is an exact integer index.
+     */
+    private double[] getExactDistribution(final RankedData ranked) {
+        final int n1 = ranked.getSeries1Size();
+        final int nBands = ranked.getNumberOfBands();
+        final int n2 = ranked.getSeries2Size();
+        final int n = n1 + n2;
+        final int[] bandSizes = new int[nBands];
+        for ( int b = 0; b < nBands; b++ )
+            bandSizes[b] = ranked.getSeries1Count(b) + ranked.getSeries2Count(b);
+
+        final boolean cached = nBands == n && n1 <= MAX_CACHED_SERIES_SIZE && n2 <= MAX_CACHED_SERIES_SIZE;
+        final int key = n1 * (MAX_CACHED_SERIES_SIZE + 1) + n2;
+        double[] distribution = cached ? UNTIED_EXACT_DISTRIBUTIONS.get(key) : null;
+        if ( distribution == null ) {
+            final int maxTwiceRankSum = n * (n + 1);
+
+            // ways[k][s]: number of ways to pick k observations from the bands seen so far with twice their rank sum s
+            double[][] ways = new double[n1 + 1][maxTwiceRankSum + 1];
+            ways[0][0] = 1;
+            for ( int b = 0; b < nBands; b++ ) {
+                final int twiceRank = Math.round(2 * ranked.getRank(b));
+                final double[][] next = new double[n1 + 1][maxTwiceRankSum + 1];
+                for ( int k = 0; k <= n1; k++ ) {
+                    for ( int s = 0; s <= maxTwiceRankSum; s++ ) {
+                        if ( ways[k][s] == 0 ) continue;
+                        double choose = 1;
+                        for ( int t = 0; t <= bandSizes[b] && k + t <= n1; t++ ) {
+                            next[k + t][s + t * twiceRank] += ways[k][s] * choose;
+                            choose = choose * (bandSizes[b] - t) / (t + 1);
+                        }
+                    }
+                }
+                ways = next;
+            }
+
+            distribution = ways[n1];
+            if ( cached )
+                UNTIED_EXACT_DISTRIBUTIONS.put(key, distribution);
+        }
+        return distribution;
+    }
 }
@@ -223,6 +223,44 @@ public class MathUtils {
         return big + JacobianLogTable.get(diff);
     }
 
+    /**
+     * Calculates the approximate log10 sum of many pairs of values at once.
+     * <p>
+     * Element {@code i} of the result is exactly what {@link #approximateLog10SumLog10(double, double)} returns for
+     * {@code a[aOffset + i]} and {@code b[bOffset + i]}, but all pairs are processed in a single loop over
+     * contiguous memory rather than with a call per pair.
+     * </p>
+     * @param a the first value of each pair.
+     * @param aOffset position of the first pair in {@code a}.
+     * @param b the second value of each pair.
+     * @param bOffset position of the first pair in {@code b}.
+     * @param result where to store the sums; may be the same array as {@code a} or {@code b}.
+     * @param resultOffset position of the first sum in {@code result}.
+     * @param length number of pairs.
+     * @throws IllegalArgumentException if any array is {@code null} or too short, or {@code length} is negative.
+     */
+    public static void approximateLog10SumLog10(final double[] a, final int aOffset, final double[] b, final int bOffset,
+                                                final double[] result, final int resultOffset, final int length) {
+        if (a == null || b == null || result == null)
+            throw new IllegalArgumentException("the input and result arrays cannot be null");
+        if (length < 0 || aOffset < 0 || bOffset < 0 || resultOffset < 0
+                || aOffset + length > a.length || bOffset + length > b.length || resultOffset + length > result.length)
+            throw new IllegalArgumentException("the pair range is out of bounds");
+
+        for (int i = 0; i < length; i++) {
+            double small = a[aOffset + i];
+            double big = b[bOffset + i];
+            if (small > big) {
+                final double t = big;
+                big = small;
+                small = t;
+            }
+            final double diff = big - small;
+            result[resultOffset + i] = small == Double.NEGATIVE_INFINITY || big == Double.NEGATIVE_INFINITY || diff >= JacobianLogTable.MAX_TOLERANCE
+                    ? big : big + JacobianLogTable.get(diff);
+        }
+    }
+
     public static double sum(final double[] values) {
         double s = 0.0;
         for (double v : values)
@@ -0,0 +1,372 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compact, per-sample summary of where the genome might be active
+ *
+ * The map is produced by a cheap first pass over the reads of a single sample and holds, for each contig,
+ * a sorted list of reference blocks: contiguous runs of loci without any evidence of variation that share a
+ * GQ band, each carrying the same summary (min PLs, GQ, median and min DP) that the GVCF writer would put in a
+ * hom-ref block.  Loci outside of the blocks (candidates for variation, or loci the first pass didn't visit)
+ * must be treated as unknown by clients.
+ *
+ * The map also records the settings of the first pass in a Header, so that clients can check the map was
+ * computed from the same data in the same way as their own run.
+ *
+ * Maps are written as a gzipped binary file, see write() and read().
+ */
+public final class ActivityMap {
+    /** Magic number at the start of every activity map file ("GAMP") */
+    private final static int MAGIC = 0x47414D50;
+    public final static int FILE_VERSION = 1;
+
+    private final Header header;
+    private final Map<String, List<ReferenceBlock>> blocksByContig = new LinkedHashMap<>();
+
+    /**
+     * The settings with which the reference blocks of a map were computed
+     */
+    public final static class Header {
+        private final String sampleName;
+        private final int ploidy;
+        private final List<Integer> GQBands;
+        private final int minBaseQuality, minMappingQuality;
+        private final String reference;
+        private final List<String> reads;
+
+        /**
+         * @param sampleName the name of the sample whose reads were summarized
+         * @param ploidy the ploidy used to compute the reference block PLs
+         * @param GQBands the GQ band boundaries of the reference blocks
+         * @param minBaseQuality the min quality of a mismatching base making a locus a candidate
+         * @param minMappingQuality the min mapping quality of the reads summarized
+         * @param reference the path of the reference
+         * @param reads the paths of the read files summarized
+         */
+        public Header(final String sampleName, final int ploidy, final List<Integer> GQBands,
+                      final int minBaseQuality, final int minMappingQuality,
+                      final String reference, final List<String> reads) {
+            if ( sampleName == null ) throw new IllegalArgumentException("sampleName cannot be null");
+            if ( ploidy < 1 ) throw new IllegalArgumentException("ploidy must be >= 1 but got " + ploidy);
+            if ( GQBands == null ) throw new IllegalArgumentException("GQBands cannot be null");
+            if ( reference == null ) throw new IllegalArgumentException("reference cannot be null");
+            if ( reads == null ) throw new IllegalArgumentException("reads cannot be null");
+            this.sampleName = sampleName;
+            this.ploidy = ploidy;
+            this.GQBands = Collections.unmodifiableList(new ArrayList<>(GQBands));
+            this.minBaseQuality = minBaseQuality;
+            this.minMappingQuality = minMappingQuality;
+            this.reference = reference;
+            this.reads = Collections.unmodifiableList(new ArrayList<>(reads));
+        }
+
+        public String getSampleName() { return sampleName; }
+        public int getPloidy() { return ploidy; }
+        public List<Integer> getGQBands() { return GQBands; }
+        public int getMinBaseQuality() { return minBaseQuality; }
+        public int getMinMappingQuality() { return minMappingQuality; }
+        public String getReference() { return reference; }
+        public List<String> getReads() { return reads; }
+
+        @Override
+        public boolean equals(final Object o) {
+            if ( this == o ) return true;
+            if ( o == null || getClass() != o.getClass() ) return false;
+            final Header header = (Header) o;
+            return ploidy == header.ploidy && minBaseQuality == header.minBaseQuality && minMappingQuality == header.minMappingQuality
+                    && sampleName.equals(header.sampleName) && GQBands.equals(header.GQBands)
+                    && reference.equals(header.reference) && reads.equals(header.reads);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{sampleName, ploidy, GQBands, minBaseQuality, minMappingQuality, reference, reads});
+        }
+
+        @Override
+        public String toString() {
+            return "Header{sample=" + sampleName + " ploidy=" + ploidy + " GQBands=" + GQBands + " minBaseQuality=" + minBaseQuality
+                    + " minMappingQuality=" + minMappingQuality + " reference=" + reference + " reads=" + reads + '}';
+        }
+    }
+
+    /**
+     * A contiguous run of reference-like loci sharing a GQ band
+     */
+    public final static class ReferenceBlock {
+        private final int start, stop;
+        private final int GQ, DP, minDP;
+        private final int[] PLs;
+
+        /**
+         * @param start the first position of this block, 1-based inclusive
+         * @param stop the last position of this block, 1-based inclusive
+         * @param GQ the min GQ of the sites in this block
+         * @param DP the median depth of the sites in this block
+         * @param minDP the min depth of the sites in this block
+         * @param PLs the min PLs of the sites in this block
+         */
+        public ReferenceBlock(final int start, final int stop, final int GQ, final int DP, final int minDP, final int[] PLs) {
+            if ( start < 1 ) throw new IllegalArgumentException("start must be >= 1 but got " + start);
+            if ( stop < start ) throw new IllegalArgumentException("stop " + stop + " must be >= start " + start);
+            if ( PLs == null || PLs.length == 0 ) throw new IllegalArgumentException("PLs cannot be null or empty");
+
+            this.start = start;
+            this.stop = stop;
+            this.GQ = GQ;
+            this.DP = DP;
+            this.minDP = minDP;
+            this.PLs = PLs;
+        }
+
+        public int getStart() { return start; }
+        public int getStop() { return stop; }
+        public int getGQ() { return GQ; }
+        public int getDP() { return DP; }
+        public int getMinDP() { return minDP; }
+        public int[] getPLs() { return PLs; }
+        public int size() { return stop - start + 1; }
+
+        @Override
+        public String toString() {
+            return "ReferenceBlock{" + start + "-" + stop + " GQ=" + GQ + " DP=" + DP + " minDP=" + minDP + " PLs=" + Arrays.toString(PLs) + '}';
+        }
+    }
+
+    /**
+     * Create a new, empty activity map
+     *
+     * @param header the settings with which the map is computed
+     */
+    public ActivityMap(final Header header) {
+        if ( header == null ) throw new IllegalArgumentException("header cannot be null");
+        this.header = header;
+    }
+
+    public Header getHeader() { return header; }
+    public String getSampleName() { return header.getSampleName(); }
+    public int getPloidy() { return header.getPloidy(); }
+
+    /**
+     * @return the names of the contigs with reference blocks in this map, in the order they were added
+     */
+    public Set<String> getContigs() {
+        return Collections.unmodifiableSet(blocksByContig.keySet());
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // construction, only used by ActivityMapBuilder and read()
+    //
+    // --------------------------------------------------------------------------------
+
+    void addBlock(final String contig, final ReferenceBlock block) {
+        List<ReferenceBlock> blocks = blocksByContig.get(contig);
+        if ( blocks == null ) {
+            blocks = new ArrayList<>();
+            blocksByContig.put(contig, blocks);
+        }
+        if ( ! blocks.isEmpty() && blocks.get(blocks.size() - 1).getStop() >= block.getStart() )
+            throw new IllegalArgumentException("Reference block " + block + " isn't after the last block " + blocks.get(blocks.size() - 1) + " on " + contig);
+        blocks.add(block);
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // queries
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Is every position of loc known to be reference-like?
+     *
+     * @param loc a non-null genome loc
+     * @return true if the reference blocks of this map tile loc without gaps
+     */
+    public boolean isReference(final GenomeLoc loc) {
+        if ( loc == null ) throw new IllegalArgumentException("loc cannot be null");
+        final List<ReferenceBlock> blocks = blocksByContig.get(loc.getContig());
+        if ( blocks == null ) return false;
+
+        int nextNeeded = loc.getStart();
+        for ( int i = firstBlockEndingAtOrAfter(blocks, loc.getStart()); i < blocks.size() && nextNeeded <= loc.getStop(); i++ ) {
+            final ReferenceBlock block = blocks.get(i);
+            if ( block.getStart() > nextNeeded )
+                return false;
+            nextNeeded = block.getStop() + 1;
+        }
+        return nextNeeded > loc.getStop();
+    }
+
+    /**
+     * Get the reference blocks overlapping loc, in order
+     *
+     * Blocks are returned as stored, so the first and last can extend beyond loc
+     *
+     * @param loc a non-null genome loc
+     * @return a non-null, possibly empty, list of blocks
+     */
+    public List<ReferenceBlock> getReferenceBlocks(final GenomeLoc loc) {
+        if ( loc == null ) throw new IllegalArgumentException("loc cannot be null");
+        final List<ReferenceBlock> blocks = blocksByContig.get(loc.getContig());
+        if ( blocks == null ) return Collections.emptyList();
+
+        final List<ReferenceBlock> overlapping = new LinkedList<>();
+        for ( int i = firstBlockEndingAtOrAfter(blocks, loc.getStart()); i < blocks.size() && blocks.get(i).getStart() <= loc.getStop(); i++ )
+            overlapping.add(blocks.get(i));
+        return overlapping;
+    }
+
+    /**
+     * Binary search for the index of the first block whose stop is >= pos
+     *
+     * @return an index into blocks, or blocks.size() if all of the blocks end before pos
+     */
+    private static int firstBlockEndingAtOrAfter(final List<ReferenceBlock> blocks, final int pos) {
+        int low = 0, high = blocks.size();
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if ( blocks.get(mid).getStop() < pos )
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // I/O
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Write this map to file
+     *
+     * The format is a gzipped stream of big-endian values: the magic number, the file version, the header,
+     * followed for each contig by its name and its reference blocks.
+     *
+     * @param file the destination file
+     */
+    public void write(final File file) {
+        try ( final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) ) {
+            out.writeInt(MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(header.getSampleName());
+            out.writeInt(header.getPloidy());
+            out.writeInt(header.getGQBands().size());
+            for ( final int band : header.getGQBands() )
+                out.writeInt(band);
+            out.writeInt(header.getMinBaseQuality());
+            out.writeInt(header.getMinMappingQuality());
+            out.writeUTF(header.getReference());
+            out.writeInt(header.getReads().size());
+            for ( final String reads : header.getReads() )
+                out.writeUTF(reads);
+
+            out.writeInt(blocksByContig.size());
+            for ( final Map.Entry<String, List<ReferenceBlock>> contig : blocksByContig.entrySet() ) {
+                out.writeUTF(contig.getKey());
+
+                final List<ReferenceBlock> blocks = contig.getValue();
+                out.writeInt(blocks.size());
+                for ( final ReferenceBlock block : blocks ) {
+                    out.writeInt(block.getStart());
+                    out.writeInt(block.getStop());
+                    out.writeInt(block.getGQ());
+                    out.writeInt(block.getDP());
+                    out.writeInt(block.getMinDP());
+                    out.writeShort(block.getPLs().length);
+                    for ( final int PL : block.getPLs() )
+                        out.writeInt(PL);
+                }
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Failed to write activity map", e);
+        }
+    }
+
+    /**
+     * Read an activity map previously written by write()
+     *
+     * @param file the file to read
+     * @return a non-null ActivityMap
+     */
+    public static ActivityMap read(final File file) {
+        try ( final DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)))) ) {
+            if ( in.readInt() != MAGIC )
+                throw new UserException.MalformedFile(file, "not an activity map");
+            final int version = in.readInt();
+            if ( version != FILE_VERSION )
+                throw new UserException.MalformedFile(file, "activity map version " + version + " isn't supported, expected version " + FILE_VERSION);
+
+            final String sampleName = in.readUTF();
+            final int ploidy = in.readInt();
+            final List<Integer> GQBands = new ArrayList<>();
+            for ( int i = in.readInt(); i > 0; i-- )
+                GQBands.add(in.readInt());
+            final int minBaseQuality = in.readInt();
+            final int minMappingQuality = in.readInt();
+            final String reference = in.readUTF();
+            final List<String> reads = new ArrayList<>();
+            for ( int i = in.readInt(); i > 0; i-- )
+                reads.add(in.readUTF());
+
+            final ActivityMap map = new ActivityMap(new Header(sampleName, ploidy, GQBands, minBaseQuality, minMappingQuality, reference, reads));
+            final int nContigs = in.readInt();
+            for ( int i = 0; i < nContigs; i++ ) {
+                final String contig = in.readUTF();
+
+                final int nBlocks = in.readInt();
+                for ( int j = 0; j < nBlocks; j++ ) {
+                    final int start = in.readInt();
+                    final int stop = in.readInt();
+                    final int GQ = in.readInt();
+                    final int DP = in.readInt();
+                    final int minDP = in.readInt();
+                    final int[] PLs = new int[in.readShort()];
+                    for ( int k = 0; k < PLs.length; k++ )
+                        PLs[k] = in.readInt();
+                    map.addBlock(contig, new ReferenceBlock(start, stop, GQ, DP, minDP, PLs));
+                }
+            }
+            return map;
+        } catch ( IllegalArgumentException e ) {
+            throw new UserException.MalformedFile(file, "inconsistent activity map", e);
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, "Failed to read activity map", e);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.MathUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds an ActivityMap from a stream of per-locus observations, in genomic order
+ *
+ * Reference sites are merged into blocks using the same GQ banding as the GVCF writer: a site extends the
+ * current block if it is contiguous with it and its GQ falls in the same band, otherwise the current block
+ * is finished and a new one started.  Candidate sites always finish the current block, and are left out of
+ * the map.
+ */
+public final class ActivityMapBuilder {
+    /** GQs are capped at this value when tracked, matching the max GQ emitted in a GVCF */
+    private final static int MAX_GQ = 99;
+
+    private final ActivityMap map;
+    private final int[] bandLowerBounds;
+
+    // the block under construction, if pendingContig != null
+    private String pendingContig = null;
+    private int pendingStart, pendingStop, pendingBand, pendingMinGQ;
+    private int[] pendingMinPLs;
+    private final List<Integer> pendingDPs = new ArrayList<>(100);
+
+    private GenomeLoc lastLoc = null;
+
+    /**
+     * Create a new builder
+     *
+     * The GQ bands of header should be a non-empty, strictly increasing list of GQ boundaries [A, B, C], defining
+     * the bands X < A, A <= X < B, B <= X < C and X >= C, exactly as in the GVCF writer
+     *
+     * @param header the settings with which the map is computed
+     */
+    public ActivityMapBuilder(final ActivityMap.Header header) {
+        if ( header == null ) throw new IllegalArgumentException("header cannot be null");
+        final List<Integer> GQPartitions = header.getGQBands();
+        if ( GQPartitions.isEmpty() ) throw new IllegalArgumentException("GQPartitions cannot be empty");
+
+        map = new ActivityMap(header);
+        bandLowerBounds = new int[GQPartitions.size() + 1];
+        int lastThreshold = 0;
+        for ( int i = 0; i < GQPartitions.size(); i++ ) {
+            final Integer value = GQPartitions.get(i);
+            if ( value == null ) throw new IllegalArgumentException("GQPartitions contains a null integer");
+            if ( value <= lastThreshold ) throw new IllegalArgumentException("GQPartitions must be strictly increasing and > 0, but saw " + value + " after " + lastThreshold);
+            bandLowerBounds[i + 1] = value;
+            lastThreshold = value;
+        }
+    }
+
+    /**
+     * Record that loc is a candidate for variation
+     *
+     * @param loc a single-base genome loc after any previously added loc
+     */
+    public void addCandidate(final GenomeLoc loc) {
+        advanceTo(loc);
+        finishPendingBlock();
+    }
+
+    /**
+     * Record the reference confidence summary of a non-candidate locus
+     *
+     * @param loc a single-base genome loc after any previously added loc
+     * @param GQ the GQ of the hom-ref genotype at loc
+     * @param DP the depth at loc
+     * @param PLs the PLs of the hom-ref call at loc, must all have the same length
+     */
+    public void addReferenceSite(final GenomeLoc loc, final int GQ, final int DP, final int[] PLs) {
+        if ( PLs == null ) throw new IllegalArgumentException("PLs cannot be null");
+        advanceTo(loc);
+
+        final int cappedGQ = Math.min(GQ, MAX_GQ);
+        final int band = bandOf(GQ);
+        if ( pendingContig == null || band != pendingBand || PLs.length != pendingMinPLs.length
+                || ! loc.getContig().equals(pendingContig) || loc.getStart() != pendingStop + 1 ) {
+            finishPendingBlock();
+            pendingContig = loc.getContig();
+            pendingStart = loc.getStart();
+            pendingBand = band;
+            pendingMinGQ = cappedGQ;
+            pendingMinPLs = PLs.clone();
+        } else {
+            pendingMinGQ = Math.min(pendingMinGQ, cappedGQ);
+            for ( int i = 0; i < PLs.length; i++ )
+                if ( PLs[i] < pendingMinPLs[i] )
+                    pendingMinPLs[i] = PLs[i];
+        }
+        pendingStop = loc.getStart();
+        pendingDPs.add(Math.max(DP, 0));
+    }
+
+    /**
+     * Finish any pending block and return the map
+     *
+     * @return the non-null ActivityMap holding everything added to this builder
+     */
+    public ActivityMap finish() {
+        finishPendingBlock();
+        return map;
+    }
+
+    private void advanceTo(final GenomeLoc loc) {
+        if ( loc == null ) throw new IllegalArgumentException("loc cannot be null");
+        if ( loc.size() != 1 ) throw new IllegalArgumentException("loc must be a single base but got " + loc);
+        if ( lastLoc != null && lastLoc.onSameContig(loc) && loc.getStart() <= lastLoc.getStart() )
+            throw new IllegalArgumentException("loc " + loc + " isn't after the previously added loc " + lastLoc);
+        lastLoc = loc;
+    }
+
+    private int bandOf(final int GQ) {
+        int band = 0;
+        while ( band + 1 < bandLowerBounds.length && GQ >= bandLowerBounds[band + 1] )
+            band++;
+        return band;
+    }
+
+    private void finishPendingBlock() {
+        if ( pendingContig != null ) {
+            map.addBlock(pendingContig, new ActivityMap.ReferenceBlock(pendingStart, pendingStop, pendingMinGQ,
+                    MathUtils.median(pendingDPs), MathUtils.arrayMin(pendingDPs), pendingMinPLs));
+            pendingContig = null;
+            pendingDPs.clear();
+        }
+    }
+}
@@ -208,17 +208,7 @@ public class ActivityProfile {
      */
     @Requires("state != null")
     public void add(final ActivityProfileState state) {
-        final GenomeLoc loc = state.getLoc();
-
-        if ( regionStartLoc == null ) {
-            regionStartLoc = loc;
-            regionStopLoc = loc;
-            contigLength = parser.getContigInfo(regionStartLoc.getContig()).getSequenceLength();
-        } else {
-            if ( regionStopLoc.getStart() != loc.getStart() - 1 )
-                throw new IllegalArgumentException("Bad add call to ActivityProfile: loc " + loc + " not immediately after last loc " + regionStopLoc );
-            regionStopLoc = loc;
-        }
+        extendProfile(state.getLoc(), state.getLoc());
 
         final Collection<ActivityProfileState> processedStates = processState(state);
         for ( final ActivityProfileState processedState : processedStates ) {
@@ -226,6 +216,45 @@ public class ActivityProfile {
         }
     }
 
+    /**
+     * Add the isActive probabilities of nLoci contiguous loci, starting at firstLoc, to this profile
+     *
+     * Equivalent to calling add() with a plain ActivityProfileState for each locus in turn, but lets
+     * subclasses process the whole block of probabilities at once.  The first locus must be contiguous
+     * with the previously added state, or an IllegalArgumentException will be thrown
+     *
+     * @param firstLoc the location of the first probability, must be of size 1
+     * @param isActiveProbs the probabilities of being active, one per locus.  Only the first nLoci are used
+     * @param nLoci the number of loci to add, must be > 0 and <= isActiveProbs.length
+     */
+    public void addAll(final GenomeLoc firstLoc, final double[] isActiveProbs, final int nLoci) {
+        if ( firstLoc == null ) throw new IllegalArgumentException("firstLoc cannot be null");
+        if ( isActiveProbs == null ) throw new IllegalArgumentException("isActiveProbs cannot be null");
+        if ( nLoci < 1 || nLoci > isActiveProbs.length ) throw new IllegalArgumentException("nLoci must be between 1 and " + isActiveProbs.length + " but got " + nLoci);
+
+        for ( int i = 0; i < nLoci; i++ ) {
+            final int start = firstLoc.getStart() + i;
+            add(new ActivityProfileState(parser.createGenomeLoc(firstLoc.getContig(), firstLoc.getContigIndex(), start, start), isActiveProbs[i]));
+        }
+    }
+
+    /**
+     * Extend the span of this profile to include the loci between firstLoc and lastLoc
+     *
+     * @param firstLoc the first locus being added, must be immediately after the current end of this profile
+     * @param lastLoc the last locus being added, on the same contig as firstLoc
+     */
+    @Requires({"firstLoc != null", "lastLoc != null"})
+    protected void extendProfile(final GenomeLoc firstLoc, final GenomeLoc lastLoc) {
+        if ( regionStartLoc == null ) {
+            regionStartLoc = firstLoc;
+            contigLength = parser.getContigInfo(regionStartLoc.getContig()).getSequenceLength();
+        } else if ( regionStopLoc.getStart() != firstLoc.getStart() - 1 ) {
+            throw new IllegalArgumentException("Bad add call to ActivityProfile: loc " + firstLoc + " not immediately after last loc " + regionStopLoc );
+        }
+        regionStopLoc = lastLoc;
+    }
+
     /**
      * Incorporate a single activity profile state into the current list of states
      *
@@ -52,6 +52,16 @@ public class BandPassActivityProfile extends ActivityProfile {
     private final double sigma;
     private final double[] GaussianKernel;
 
+    /**
+     * Scratch space holding the probabilities of the states touched by the filter in addAll
+     */
+    private double[] filteredProbs = new double[0];
+
+    /**
+     * Reusable single element array used to send plain states from add() through addAll()
+     */
+    private final double[] singleProb = new double[1];
+
     /**
      * Create a new BandPassActivityProfile with default sigma and filter sizes
      *
@@ -167,6 +177,91 @@ public class BandPassActivityProfile extends ActivityProfile {
         return GaussianKernel;
     }
 
+    /**
+     * Add state to this profile, band pass filtering its probability in place
+     *
+     * States carrying extra information (i.e., high quality soft clips) go through processState, while plain
+     * states are handed to addAll so that we don't create a state for every position in the band
+     *
+     * @param state a well-formed ActivityProfileState result to incorporate into this profile
+     */
+    @Override
+    public void add(final ActivityProfileState state) {
+        if ( state.resultState == ActivityProfileState.Type.NONE ) {
+            singleProb[0] = state.isActiveProb;
+            addAll(state.getLoc(), singleProb, 1);
+        } else {
+            super.add(state);
+        }
+    }
+
+    /**
+     * Band pass filter the probabilities of nLoci contiguous loci directly into this profile
+     *
+     * The probabilities of all of the states within the filter's reach are copied into a double array,
+     * the kernel is applied to each non-zero input probability in turn, and the results are copied back
+     * to the states, creating new states only for positions beyond the current end of the profile.  The
+     * additions are performed in exactly the same order as the state-by-state processState approach, so
+     * the results are identical.
+     *
+     * @param firstLoc the location of the first probability, must be of size 1
+     * @param isActiveProbs the probabilities of being active, one per locus.  Only the first nLoci are used
+     * @param nLoci the number of loci to add, must be > 0 and <= isActiveProbs.length
+     */
+    @Override
+    public void addAll(final GenomeLoc firstLoc, final double[] isActiveProbs, final int nLoci) {
+        if ( firstLoc == null ) throw new IllegalArgumentException("firstLoc cannot be null");
+        if ( isActiveProbs == null ) throw new IllegalArgumentException("isActiveProbs cannot be null");
+        if ( nLoci < 1 || nLoci > isActiveProbs.length ) throw new IllegalArgumentException("nLoci must be between 1 and " + isActiveProbs.length + " but got " + nLoci);
+
+        final GenomeLoc lastLoc = nLoci == 1 ? firstLoc : parser.createGenomeLoc(firstLoc.getContig(), firstLoc.getContigIndex(), firstLoc.getStart() + nLoci - 1, firstLoc.getStart() + nLoci - 1);
+        extendProfile(firstLoc, lastLoc);
+
+        // all offsets are relative to the start of this profile.  States before the start are dropped, as
+        // are those falling off the end of the contig
+        final int regionStart = regionStartLoc.getStart();
+        final int firstOffset = firstLoc.getStart() - regionStart;
+        final int maxOffset = contigLength - regionStart;
+        final int bufferStart = Math.max(firstOffset - filterSize, 0);
+        final int bufferEnd = Math.min(firstOffset + nLoci - 1 + filterSize, maxOffset);
+        final int bufferSize = bufferEnd - bufferStart + 1;
+        if ( filteredProbs.length < bufferSize )
+            filteredProbs = new double[bufferSize];
+
+        final int nExistingStates = size();
+        for ( int offset = bufferStart; offset <= bufferEnd; offset++ )
+            filteredProbs[offset - bufferStart] = offset < nExistingStates ? stateList.get(offset).isActiveProb : 0.0;
+
+        // the last offset that must have a state after adding these loci.  Each locus needs its own state,
+        // and active loci need states for every position their probability is spread onto
+        int lastOffsetWithState = nExistingStates - 1;
+        for ( int i = 0; i < nLoci; i++ ) {
+            final double prob = isActiveProbs[i];
+            final int offset = firstOffset + i;
+            if ( prob > 0.0 ) {
+                final int from = Math.max(offset - filterSize, bufferStart);
+                final int to = Math.min(offset + filterSize, bufferEnd);
+                for ( int j = from; j <= to; j++ )
+                    filteredProbs[j - bufferStart] += prob * GaussianKernel[j - offset + filterSize];
+                lastOffsetWithState = Math.max(lastOffsetWithState, to);
+            } else {
+                lastOffsetWithState = Math.max(lastOffsetWithState, offset);
+            }
+        }
+
+        for ( int offset = bufferStart; offset <= lastOffsetWithState; offset++ ) {
+            final double prob = filteredProbs[offset - bufferStart];
+            if ( offset < nExistingStates ) {
+                stateList.get(offset).isActiveProb = prob;
+            } else {
+                final int start = regionStart + offset;
+                final ActivityProfileState state = new ActivityProfileState(parser.createGenomeLoc(regionStartLoc.getContig(), regionStartLoc.getContigIndex(), start, start), 0.0);
+                state.isActiveProb = prob;
+                stateList.add(state);
+            }
+        }
+    }
+
     /**
      * Band pass the probabilities in the ActivityProfile, producing a new profile that's band pass filtered
      * @return a new double[] that's the band-pass filtered version of this profile
@@ -0,0 +1,455 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import org.broadinstitute.gatk.utils.BaseUtils;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.pileup.PileupElement;
+import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
+import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
+
+import java.util.*;
+
+/**
+ * Primitive summaries of the pileups over a window of contiguous loci
+ *
+ * Used by active region walkers that can decide whether a locus is active from a few simple counts,
+ * so that the traversal engine can call isActive once for a whole window of loci rather than once per
+ * locus with a full AlignmentContext.  The summaries are held in parallel arrays indexed by the offset
+ * of the locus from the start of the batch.  A batch is reused for each window, so callers must not
+ * hold on to the arrays across calls to clear().
+ *
+ * A base counts as qualifying if its read has mapping quality >= minMappingQuality, and the base is a
+ * deletion or has base quality >= minBaseQuality, the same rule as ReadBackedPileup.getBaseAndMappingFilteredPileup
+ *
+ * Walkers whose activity calculation looks at every base (such as the HaplotypeCaller's ref-vs-any
+ * likelihoods) can also ask the batch to record each pileup element, as a few primitive values grouped
+ * by sample.  The samples of a locus come in the order of ReadBackedPileup.getSamples(), skipping those
+ * without any element, and the elements of each sample in the order of its pileup, the same orders
+ * AlignmentContextUtils.splitContextBySampleName produces, so that calculations over the recorded
+ * elements can be done in exactly the same order as over the pileups.
+ *
+ * The batched isActive can in turn mark loci whose activity state carries high quality soft clips
+ * (see ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS) with markHighQualitySoftClips().
+ */
+public final class LocusSummaryBatch {
+    public final static int DEFAULT_CAPACITY = 100;
+
+    /** Flag of a recorded element that is a deletion */
+    public final static byte ELEMENT_DELETION = 1;
+    /** Flag of a recorded element that is just before or after a deletion or an insertion */
+    public final static byte ELEMENT_NEXT_TO_INDEL = 2;
+    /** Flag of a recorded element that is next to a soft clip */
+    public final static byte ELEMENT_NEXT_TO_SOFT_CLIP = 4;
+
+    private final static int INITIAL_ELEMENT_CAPACITY = 1024;
+
+    private final int minBaseQuality;
+    private final int minMappingQuality;
+
+    private final int[] depths;
+    private final int[] qualifyingDepths;
+    private final int[] qualifyingMismatches;
+    private final int[] qualifyingDeletions;
+    private final byte[] refBases;
+    private final double[] highQualitySoftClips;
+
+    /**
+     * Element recording, only used if recordElements is true.  Locus i has the sample groups
+     * [locusGroupStarts[i], locusGroupStarts[i+1]), and group g the elements [groupElementStarts[g], groupElementStarts[g+1])
+     */
+    private final boolean recordElements;
+    private final byte softClipBaseQualityThreshold;
+    private final List<String> sampleNames = new ArrayList<>();
+    private final Map<String, Integer> sampleIndices = new HashMap<>();
+    private final int[] locusGroupStarts;
+    private int[] groupSamples;
+    private int[] groupElementStarts;
+    private int nGroups = 0;
+    private byte[] elementBases;
+    private byte[] elementQuals;
+    private byte[] elementFlags;
+    private int[] elementSoftClips;
+    private int nElements = 0;
+
+    private GenomeLoc firstLoc = null;
+    private int size = 0;
+
+    /**
+     * Create a new empty batch
+     *
+     * @param capacity the maximum number of loci in this batch, must be > 0
+     * @param minBaseQuality the minimum base quality of a qualifying base
+     * @param minMappingQuality the minimum mapping quality of the read of a qualifying base
+     */
+    public LocusSummaryBatch(final int capacity, final int minBaseQuality, final int minMappingQuality) {
+        this(capacity, minBaseQuality, minMappingQuality, false, (byte)0);
+    }
+
+    /**
+     * Create a new empty batch that may also record the elements of each pileup
+     *
+     * @param capacity the maximum number of loci in this batch, must be > 0
+     * @param minBaseQuality the minimum base quality of a qualifying base
+     * @param minMappingQuality the minimum mapping quality of the read of a qualifying base
+     * @param recordElements if true, record every pileup element, see getElementBases() and friends
+     * @param softClipBaseQualityThreshold the base quality threshold given to AlignmentUtils.calcNumHighQualitySoftClips
+     *                                     for recorded elements next to a soft clip
+     */
+    public LocusSummaryBatch(final int capacity, final int minBaseQuality, final int minMappingQuality,
+                             final boolean recordElements, final byte softClipBaseQualityThreshold) {
+        if ( capacity < 1 ) throw new IllegalArgumentException("capacity must be > 0 but got " + capacity);
+
+        this.minBaseQuality = minBaseQuality;
+        this.minMappingQuality = minMappingQuality;
+        depths = new int[capacity];
+        qualifyingDepths = new int[capacity];
+        qualifyingMismatches = new int[capacity];
+        qualifyingDeletions = new int[capacity];
+        refBases = new byte[capacity];
+        highQualitySoftClips = new double[capacity];
+        Arrays.fill(highQualitySoftClips, Double.NaN);
+
+        this.recordElements = recordElements;
+        this.softClipBaseQualityThreshold = softClipBaseQualityThreshold;
+        locusGroupStarts = recordElements ? new int[capacity + 1] : null;
+        if ( recordElements ) {
+            groupSamples = new int[capacity + 1];
+            groupElementStarts = new int[capacity + 1];
+            elementBases = new byte[INITIAL_ELEMENT_CAPACITY];
+            elementQuals = new byte[INITIAL_ELEMENT_CAPACITY];
+            elementFlags = new byte[INITIAL_ELEMENT_CAPACITY];
+            elementSoftClips = new int[INITIAL_ELEMENT_CAPACITY];
+        }
+    }
+
+    /**
+     * Can loc be added to this batch?
+     *
+     * @param loc a locus of size 1
+     * @return true if the batch isn't full and is either empty or loc immediately follows its last locus
+     */
+    public boolean canAdd(final GenomeLoc loc) {
+        if ( isEmpty() )
+            return true;
+        return ! isFull() && loc.getContigIndex() == firstLoc.getContigIndex() && loc.getStart() == firstLoc.getStart() + size;
+    }
+
+    /**
+     * Summarize pileup at loc and add it to the end of this batch
+     *
+     * @param loc the locus of the pileup, must satisfy canAdd(loc)
+     * @param refBase the reference base at loc
+     * @param pileup the pileup at loc, must not be null
+     */
+    public void add(final GenomeLoc loc, final byte refBase, final ReadBackedPileup pileup) {
+        if ( loc == null ) throw new IllegalArgumentException("loc cannot be null");
+        if ( pileup == null ) throw new IllegalArgumentException("pileup cannot be null");
+        if ( ! canAdd(loc) ) throw new IllegalArgumentException("Cannot add " + loc + " to batch of " + size + " loci starting at " + firstLoc);
+
+        int depth = 0, qualifyingDepth = 0, mismatches = 0, deletions = 0;
+        for ( final PileupElement p : pileup ) {
+            depth++;
+            if ( p.getMappingQual() < minMappingQuality )
+                continue;
+            if ( p.isDeletion() ) {
+                qualifyingDepth++;
+                deletions++;
+            } else if ( p.getQual() >= minBaseQuality ) {
+                qualifyingDepth++;
+                if ( ! BaseUtils.basesAreEqual(p.getBase(), refBase) )
+                    mismatches++;
+            }
+        }
+
+        if ( recordElements )
+            recordElements(pileup);
+
+        if ( isEmpty() )
+            firstLoc = loc;
+        depths[size] = depth;
+        qualifyingDepths[size] = qualifyingDepth;
+        qualifyingMismatches[size] = mismatches;
+        qualifyingDeletions[size] = deletions;
+        refBases[size] = refBase;
+        size++;
+    }
+
+    /**
+     * Record the elements of pileup, grouped by sample, as the sample groups of the locus being added
+     */
+    private void recordElements(final ReadBackedPileup pileup) {
+        for ( final String sample : pileup.getSamples() ) {
+            final ReadBackedPileup samplePileup = pileup.getPileupForSample(sample);
+            final int nSampleElements = samplePileup.getNumberOfElements();
+            if ( nSampleElements == 0 )
+                continue;
+            if ( sample == null )
+                throw new UserException.ReadMissingReadGroup(samplePileup.iterator().next().getRead());
+
+            if ( nGroups + 1 >= groupElementStarts.length ) {
+                groupSamples = Arrays.copyOf(groupSamples, 2 * groupSamples.length);
+                groupElementStarts = Arrays.copyOf(groupElementStarts, 2 * groupElementStarts.length);
+            }
+            groupSamples[nGroups] = getSampleIndex(sample);
+            groupElementStarts[nGroups] = nElements;
+            nGroups++;
+
+            if ( nElements + nSampleElements > elementBases.length ) {
+                final int newCapacity = Math.max(2 * elementBases.length, nElements + nSampleElements);
+                elementBases = Arrays.copyOf(elementBases, newCapacity);
+                elementQuals = Arrays.copyOf(elementQuals, newCapacity);
+                elementFlags = Arrays.copyOf(elementFlags, newCapacity);
+                elementSoftClips = Arrays.copyOf(elementSoftClips, newCapacity);
+            }
+            for ( final PileupElement p : samplePileup ) {
+                byte flags = 0;
+                if ( p.isDeletion() )
+                    flags |= ELEMENT_DELETION;
+                if ( p.isBeforeDeletionStart() || p.isAfterDeletionEnd() || p.isBeforeInsertion() || p.isAfterInsertion() )
+                    flags |= ELEMENT_NEXT_TO_INDEL;
+                int softClips = 0;
+                if ( p.isNextToSoftClip() ) {
+                    flags |= ELEMENT_NEXT_TO_SOFT_CLIP;
+                    softClips = AlignmentUtils.calcNumHighQualitySoftClips(p.getRead(), softClipBaseQualityThreshold);
+                }
+                elementBases[nElements] = p.getBase();
+                elementQuals[nElements] = p.getQual();
+                elementFlags[nElements] = flags;
+                elementSoftClips[nElements] = softClips;
+                nElements++;
+            }
+        }
+        locusGroupStarts[size + 1] = nGroups;
+        groupElementStarts[nGroups] = nElements;
+    }
+
+    private int getSampleIndex(final String sample) {
+        final Integer index = sampleIndices.get(sample);
+        if ( index != null )
+            return index;
+        sampleIndices.put(sample, sampleNames.size());
+        sampleNames.add(sample);
+        return sampleNames.size() - 1;
+    }
+
+    /**
+     * Remove all loci from this batch
+     */
+    public void clear() {
+        Arrays.fill(highQualitySoftClips, 0, size, Double.NaN);
+        firstLoc = null;
+        size = 0;
+        nGroups = 0;
+        nElements = 0;
+    }
+
+    /**
+     * @return the number of loci in this batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of loci this batch can hold
+     */
+    public int capacity() {
+        return depths.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == depths.length;
+    }
+
+    /**
+     * @return the location of the first locus in this batch, or null if the batch is empty
+     */
+    public GenomeLoc getFirstLoc() {
+        return firstLoc;
+    }
+
+    public int getMinBaseQuality() {
+        return minBaseQuality;
+    }
+
+    public int getMinMappingQuality() {
+        return minMappingQuality;
+    }
+
+    /**
+     * Get the total number of pileup elements at each locus.  Only the first size() elements are valid.  Do not modify
+     * @return a non-null array
+     */
+    public int[] getDepths() {
+        return depths;
+    }
+
+    /**
+     * Get the number of qualifying bases (including deletions) at each locus.  Only the first size() elements are valid.  Do not modify
+     * @return a non-null array
+     */
+    public int[] getQualifyingDepths() {
+        return qualifyingDepths;
+    }
+
+    /**
+     * Get the number of qualifying bases that don't match the reference at each locus.  Only the first size() elements are valid.  Do not modify
+     * @return a non-null array
+     */
+    public int[] getQualifyingMismatches() {
+        return qualifyingMismatches;
+    }
+
+    /**
+     * Get the number of qualifying deletions at each locus.  Only the first size() elements are valid.  Do not modify
+     * @return a non-null array
+     */
+    public int[] getQualifyingDeletions() {
+        return qualifyingDeletions;
+    }
+
+    /**
+     * Get the reference base at each locus.  Only the first size() elements are valid.  Do not modify
+     * @return a non-null array
+     */
+    public byte[] getRefBases() {
+        return refBases;
+    }
+
+    /**
+     * Record that the activity state of a locus carries high quality soft clips
+     *
+     * Meant to be called by the walker's batched isActive, for the loci whose per-locus isActive would return
+     * a state of type ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS
+     *
+     * @param locus the offset of the locus in this batch
+     * @param value the value of the state, i.e., the average number of high quality soft clips
+     */
+    public void markHighQualitySoftClips(final int locus, final double value) {
+        if ( locus < 0 || locus >= size ) throw new IllegalArgumentException("locus must be between 0 and " + (size - 1) + " but got " + locus);
+        highQualitySoftClips[locus] = value;
+    }
+
+    /**
+     * Get the high quality soft clip values set by markHighQualitySoftClips(), NaN for the loci that weren't marked.
+     * Only the first size() elements are valid.  Do not modify
+     * @return a non-null array
+     */
+    public double[] getHighQualitySoftClips() {
+        return highQualitySoftClips;
+    }
+
+    /**
+     * @return true if this batch records the elements of its pileups
+     */
+    public boolean recordsElements() {
+        return recordElements;
+    }
+
+    private void checkRecordsElements() {
+        if ( ! recordElements ) throw new IllegalStateException("This batch doesn't record pileup elements");
+    }
+
+    /**
+     * Get the offsets of the sample groups of each locus: the groups of locus i are [starts[i], starts[i+1]).
+     * Only the first size() + 1 elements are valid.  Do not modify
+     * @return a non-null array
+     */
+    public int[] getLocusGroupStarts() {
+        checkRecordsElements();
+        return locusGroupStarts;
+    }
+
+    /**
+     * Get the sample of each sample group, as an index into getSampleNames().  Do not modify
+     * @return a non-null array
+     */
+    public int[] getGroupSamples() {
+        checkRecordsElements();
+        return groupSamples;
+    }
+
+    /**
+     * Get the offsets of the elements of each sample group: the elements of group g are [starts[g], starts[g+1]).
+     * Do not modify
+     * @return a non-null array
+     */
+    public int[] getGroupElementStarts() {
+        checkRecordsElements();
+        return groupElementStarts;
+    }
+
+    /**
+     * @return the names of the samples seen by this batch so far, indexed by the values of getGroupSamples()
+     */
+    public List<String> getSampleNames() {
+        checkRecordsElements();
+        return Collections.unmodifiableList(sampleNames);
+    }
+
+    /**
+     * Get the base of each recorded element, as returned by PileupElement.getBase().  Do not modify
+     * @return a non-null array
+     */
+    public byte[] getElementBases() {
+        checkRecordsElements();
+        return elementBases;
+    }
+
+    /**
+     * Get the base quality of each recorded element, as returned by PileupElement.getQual().  Do not modify
+     * @return a non-null array
+     */
+    public byte[] getElementQuals() {
+        checkRecordsElements();
+        return elementQuals;
+    }
+
+    /**
+     * Get the ELEMENT_ flags of each recorded element.  Do not modify
+     * @return a non-null array
+     */
+    public byte[] getElementFlags() {
+        checkRecordsElements();
+        return elementFlags;
+    }
+
+    /**
+     * Get the number of high quality soft clipped bases of the read of each recorded element next to a soft clip,
+     * 0 for the other elements.  Do not modify
+     * @return a non-null array
+     */
+    public int[] getElementSoftClips() {
+        checkRecordsElements();
+        return elementSoftClips;
+    }
+}
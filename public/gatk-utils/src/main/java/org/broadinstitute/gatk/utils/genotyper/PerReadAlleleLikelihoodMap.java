@@ -53,6 +53,24 @@ public class PerReadAlleleLikelihoodMap {
 
     protected final Map<GATKSAMRecord, Map<Allele, Double>> likelihoodReadMap = new LinkedHashMap<>();
 
+    /**
+     * Best allele assignments computed from the current contents of this map, keyed by the set of alleles
+     * considered (null for all alleles).  Cleared whenever the map may have been modified.
+     */
+    private final Map<Set<Allele>, ReadAlleleAssignments> readAlleleAssignments = new HashMap<>(2);
+
+    /**
+     * Read-only (read, likelihoods) entry of each read in likelihoodReadMap, in the same order.  They are created once
+     * per read, so that handing out and iterating the read-only view doesn't allocate per read.
+     */
+    private final Map<GATKSAMRecord, Map.Entry<GATKSAMRecord, Map<Allele, Double>>> readOnlyEntries = new LinkedHashMap<>();
+
+    /** Read-only view of the reads in likelihoodReadMap */
+    private final Set<GATKSAMRecord> readOnlyReads = Collections.unmodifiableSet(likelihoodReadMap.keySet());
+
+    /** Read-only view of likelihoodReadMap, whose per-read likelihood maps are read-only too */
+    private final Map<GATKSAMRecord, Map<Allele, Double>> readOnlyLikelihoodReadMap = new ReadOnlyLikelihoodReadMap();
+
     public PerReadAlleleLikelihoodMap() { }
 
     /**
@@ -76,9 +94,11 @@ public class PerReadAlleleLikelihoodMap {
             // LinkedHashMap will ensure iterating through alleles will be in consistent order
             likelihoodMap = new LinkedHashMap<>();
             likelihoodReadMap.put(read,likelihoodMap);
+            readOnlyEntries.put(read, new AbstractMap.SimpleImmutableEntry<>(read, Collections.unmodifiableMap(likelihoodMap)));
         }
 
         likelihoodMap.put(a,likelihood);
+        readAlleleAssignments.clear();
 
 
     }
@@ -98,6 +118,8 @@ public class PerReadAlleleLikelihoodMap {
             return;
         if ( downsamplingFraction >= 1.0 ) {
             likelihoodReadMap.clear();
+            readOnlyEntries.clear();
+            readAlleleAssignments.clear();
             return;
         }
 
@@ -106,8 +128,11 @@ public class PerReadAlleleLikelihoodMap {
 
         // compute the reads to remove and actually remove them
         final List<GATKSAMRecord> readsToRemove = AlleleBiasedDownsamplingUtils.selectAlleleBiasedReads(alleleReadMap, downsamplingFraction);
-        for ( final GATKSAMRecord read : readsToRemove )
+        for ( final GATKSAMRecord read : readsToRemove ) {
             likelihoodReadMap.remove(read);
+            readOnlyEntries.remove(read);
+        }
+        readAlleleAssignments.clear();
     }
 
     /**
@@ -120,10 +145,10 @@ public class PerReadAlleleLikelihoodMap {
         for ( final Allele allele : alleles )
             alleleReadMap.put(allele, new ArrayList<GATKSAMRecord>());
 
-        for ( final Map.Entry<GATKSAMRecord, Map<Allele, Double>> entry : likelihoodReadMap.entrySet() ) {
-            final MostLikelyAllele bestAllele = getMostLikelyAllele(entry.getValue());
-            if ( bestAllele.isInformative() )
-                alleleReadMap.get(bestAllele.getMostLikelyAllele()).add(entry.getKey());
+        final ReadAlleleAssignments assignments = getReadAlleleAssignments();
+        for ( int i = 0; i < assignments.size(); i++ ) {
+            if ( assignments.isInformative(i) )
+                alleleReadMap.get(alleles.get(assignments.getBestAlleleIndex(i))).add(assignments.getRead(i));
         }
 
         return alleleReadMap;
@@ -164,18 +189,70 @@ public class PerReadAlleleLikelihoodMap {
         return likelihoodReadMap.isEmpty();
     }
 
+    /**
+     * Get a read-only view of the underlying read -> (allele -> likelihood) map
+     *
+     * The view follows later changes to this map, which must go through {@link #add}, {@link #remove} and the other
+     * mutators so that cached read allele assignments are dropped.  Code that only needs the most likely allele of
+     * each read should use {@link #getReadAlleleAssignments()} instead.
+     *
+     * @return an unmodifiable read -> (allele -> likelihood) map, in read insertion order
+     */
     public Map<GATKSAMRecord,Map<Allele,Double>> getLikelihoodReadMap() {
-        return likelihoodReadMap;
+        return readOnlyLikelihoodReadMap;
+    }
+
+    /**
+     * Remove a read and its likelihoods from this map
+     *
+     * @param read the read to remove
+     * @return the read's allele -> likelihood map, or null if the read wasn't in this map
+     */
+    public Map<Allele,Double> remove(final GATKSAMRecord read) {
+        final Map<Allele,Double> removed = likelihoodReadMap.remove(read);
+        if ( removed != null ) {
+            readOnlyEntries.remove(read);
+            readAlleleAssignments.clear();
+        }
+        return removed;
     }
 
     public void clear() {
         allelesSet.clear();
         alleles.clear();
         likelihoodReadMap.clear();
+        readOnlyEntries.clear();
+        readAlleleAssignments.clear();
+    }
+
+    /**
+     * @see #getReadAlleleAssignments(Set) considering all alleles
+     */
+    public ReadAlleleAssignments getReadAlleleAssignments() {
+        return getReadAlleleAssignments(null);
+    }
+
+    /**
+     * Get the most likely allele of every read in this map, along with the read properties used by annotations
+     *
+     * The assignments are computed once and cached until this map is modified, so all of the annotations at a
+     * site share the same per-read work.  The results are the same as calling
+     * {@link #getMostLikelyAllele(Map, Set)} on each read's likelihoods in turn.
+     *
+     * @param onlyConsiderTheseAlleles if not null, only these alleles are considered for the most likely allele
+     * @return a non-null ReadAlleleAssignments, with reads in the iteration order of this map
+     */
+    public ReadAlleleAssignments getReadAlleleAssignments(final Set<Allele> onlyConsiderTheseAlleles) {
+        ReadAlleleAssignments assignments = readAlleleAssignments.get(onlyConsiderTheseAlleles);
+        if ( assignments == null ) {
+            assignments = new ReadAlleleAssignments(Collections.unmodifiableList(new ArrayList<>(alleles)), allelesSet, likelihoodReadMap, onlyConsiderTheseAlleles);
+            readAlleleAssignments.put(onlyConsiderTheseAlleles == null ? null : new HashSet<>(onlyConsiderTheseAlleles), assignments);
+        }
+        return assignments;
     }
 
     public Set<GATKSAMRecord> getStoredElements() {
-        return likelihoodReadMap.keySet();
+        return readOnlyReads;
     }
 
 //    public Collection<Map<Allele,Double>> getLikelihoodMapValues() {
@@ -190,7 +267,7 @@ public class PerReadAlleleLikelihoodMap {
         if (!likelihoodReadMap.containsKey(p.getRead()))
             return null;
 
-        return likelihoodReadMap.get(p.getRead());
+        return readOnlyEntries.get(p.getRead()).getValue();
     }
 
 
@@ -340,9 +417,11 @@ public class PerReadAlleleLikelihoodMap {
             final Map.Entry<GATKSAMRecord, Map<Allele, Double>> record = it.next();
             if ( readIsPoorlyModelled(record.getKey(), record.getValue().values(), maxErrorRatePerBase) ) {
                 it.remove();
+                readOnlyEntries.remove(record.getKey());
                 removedReads.add(record.getKey());
             }
         }
+        readAlleleAssignments.clear();
 
         return removedReads;
     }
@@ -413,5 +492,63 @@ public class PerReadAlleleLikelihoodMap {
 
         likelihoodReadMap.clear();
         likelihoodReadMap.putAll(newLikelihoodReadMap);
+        readOnlyEntries.clear();
+        for( final Map.Entry<GATKSAMRecord, Map<Allele, Double>> entry : likelihoodReadMap.entrySet() )
+            readOnlyEntries.put(entry.getKey(), new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), Collections.unmodifiableMap(entry.getValue())));
+        readAlleleAssignments.clear();
+    }
+
+    /**
+     * Unmodifiable view of likelihoodReadMap that hands out the read-only entries and likelihoods of readOnlyEntries
+     */
+    private final class ReadOnlyLikelihoodReadMap extends AbstractMap<GATKSAMRecord, Map<Allele, Double>> {
+        @Override
+        public int size() {
+            return likelihoodReadMap.size();
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return likelihoodReadMap.containsKey(key);
+        }
+
+        @Override
+        public Map<Allele, Double> get(final Object key) {
+            final Map.Entry<GATKSAMRecord, Map<Allele, Double>> entry = readOnlyEntries.get(key);
+            return entry == null ? null : entry.getValue();
+        }
+
+        @Override
+        public Set<GATKSAMRecord> keySet() {
+            return readOnlyReads;
+        }
+
+        private final Set<Map.Entry<GATKSAMRecord, Map<Allele, Double>>> entries = new AbstractSet<Map.Entry<GATKSAMRecord, Map<Allele, Double>>>() {
+            @Override
+            public int size() {
+                return readOnlyEntries.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<GATKSAMRecord, Map<Allele, Double>>> iterator() {
+                final Iterator<Map.Entry<GATKSAMRecord, Map<Allele, Double>>> it = readOnlyEntries.values().iterator();
+                return new Iterator<Map.Entry<GATKSAMRecord, Map<Allele, Double>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<GATKSAMRecord, Map<Allele, Double>> next() {
+                        return it.next();
+                    }
+                };
+            }
+        };
+
+        @Override
+        public Set<Map.Entry<GATKSAMRecord, Map<Allele, Double>>> entrySet() {
+            return entries;
+        }
     }
 }
@@ -0,0 +1,178 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.genotyper;
+
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-read summary of a PerReadAlleleLikelihoodMap shared by all of the annotations at a site
+ *
+ * Most read-based annotations (the rank sum tests, the strand bias tests, the per-allele depths, ...) start by
+ * finding the most likely allele of every read in the likelihood map and then look at a handful of read properties.
+ * This class does the best allele assignment once, in the likelihood map's read order, and keeps the read
+ * properties the annotations use in primitive arrays so that each annotation just walks them.
+ *
+ * Instances are created and cached by {@link PerReadAlleleLikelihoodMap#getReadAlleleAssignments(Set)} and are
+ * immutable; the mapping quality and strand arrays are filled in up front while the hard clipping counts,
+ * which only a few annotations need, are computed on first use.
+ */
+public final class ReadAlleleAssignments {
+    /** Value of {@link #getBestAlleleIndex(int)} for reads that are not informative about any allele */
+    public static final int NON_INFORMATIVE = -1;
+
+    private final List<Allele> alleles;
+    private final GATKSAMRecord[] reads;
+    private final MostLikelyAllele[] mostLikelyAlleles;
+    private final int[] bestAlleleIndex;
+    private final int[] mappingQualities;
+    private final boolean[] reverseStrand;
+    private int[] hardClippedBases = null;
+
+    /**
+     * Assign every read in the map to its most likely allele
+     *
+     * @param alleles the alleles of the likelihood map, in the order used for the best allele indices
+     * @param alleleIndex map from each allele in alleles to its index
+     * @param likelihoodReadMap the read -> (allele -> likelihood) map to summarize
+     * @param onlyConsiderTheseAlleles if not null, only these alleles are candidates for the most likely one
+     */
+    protected ReadAlleleAssignments(final List<Allele> alleles,
+                                    final Map<Allele, Integer> alleleIndex,
+                                    final Map<GATKSAMRecord, Map<Allele, Double>> likelihoodReadMap,
+                                    final Set<Allele> onlyConsiderTheseAlleles) {
+        final int n = likelihoodReadMap.size();
+        this.alleles = alleles;
+        reads = new GATKSAMRecord[n];
+        mostLikelyAlleles = new MostLikelyAllele[n];
+        bestAlleleIndex = new int[n];
+        mappingQualities = new int[n];
+        reverseStrand = new boolean[n];
+
+        int i = 0;
+        for ( final Map.Entry<GATKSAMRecord, Map<Allele, Double>> entry : likelihoodReadMap.entrySet() ) {
+            final GATKSAMRecord read = entry.getKey();
+            final MostLikelyAllele mostLikely = PerReadAlleleLikelihoodMap.getMostLikelyAllele(entry.getValue(), onlyConsiderTheseAlleles);
+            reads[i] = read;
+            mostLikelyAlleles[i] = mostLikely;
+            bestAlleleIndex[i] = mostLikely.isInformative() ? alleleIndex.get(mostLikely.getMostLikelyAllele()) : NON_INFORMATIVE;
+            mappingQualities[i] = read.getMappingQuality();
+            reverseStrand[i] = read.getReadNegativeStrandFlag();
+            i++;
+        }
+    }
+
+    /**
+     * @return the number of reads summarized here
+     */
+    public int size() {
+        return reads.length;
+    }
+
+    /**
+     * @param i the index of the read, in the likelihood map's read order
+     * @return the read
+     */
+    public GATKSAMRecord getRead(final int i) {
+        return reads[i];
+    }
+
+    /**
+     * @param i the index of the read
+     * @return the full most likely allele record for the read, including non-informative ones
+     */
+    public MostLikelyAllele getMostLikelyAllele(final int i) {
+        return mostLikelyAlleles[i];
+    }
+
+    /**
+     * @param i the index of the read
+     * @return true if the read's most likely allele is informative
+     */
+    public boolean isInformative(final int i) {
+        return bestAlleleIndex[i] != NON_INFORMATIVE;
+    }
+
+    /**
+     * @param i the index of the read
+     * @return the index of the read's most likely allele in {@link #getAlleles()}, or NON_INFORMATIVE
+     */
+    public int getBestAlleleIndex(final int i) {
+        return bestAlleleIndex[i];
+    }
+
+    /**
+     * Equivalent to getMostLikelyAllele(i).getAlleleIfInformative()
+     *
+     * @param i the index of the read
+     * @return the read's most likely allele, or NO_CALL if the read isn't informative
+     */
+    public Allele getAlleleIfInformative(final int i) {
+        return bestAlleleIndex[i] == NON_INFORMATIVE ? Allele.NO_CALL : alleles.get(bestAlleleIndex[i]);
+    }
+
+    /**
+     * @return the alleles indexed by {@link #getBestAlleleIndex(int)}
+     */
+    public List<Allele> getAlleles() {
+        return alleles;
+    }
+
+    /**
+     * @param i the index of the read
+     * @return the mapping quality of the read
+     */
+    public int getMappingQuality(final int i) {
+        return mappingQualities[i];
+    }
+
+    /**
+     * @param i the index of the read
+     * @return true if the read is aligned to the reverse strand
+     */
+    public boolean isReverseStrand(final int i) {
+        return reverseStrand[i];
+    }
+
+    /**
+     * @param i the index of the read
+     * @return the number of hard clipped bases of the read
+     */
+    public int getHardClippedBases(final int i) {
+        if ( hardClippedBases == null ) {
+            final int[] counts = new int[reads.length];
+            for ( int j = 0; j < reads.length; j++ )
+                counts[j] = AlignmentUtils.getNumHardClippedBases(reads[j]);
+            hardClippedBases = counts;
+        }
+        return hardClippedBases[i];
+    }
+}
@@ -0,0 +1,81 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free monotonically increasing counter registered with the MetricsRegistry
+ *
+ * Updates are dropped on the floor when the registry is disabled, so a counter can be
+ * left in hot code paths at the cost of a single volatile read.
+ */
+public final class Counter {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(final String name) {
+        if ( name == null ) throw new IllegalArgumentException("Counter name cannot be null");
+        this.name = name;
+    }
+
+    /**
+     * @return the name associated with this counter
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Increment this counter by one
+     */
+    public void increment() {
+        if ( MetricsRegistry.isEnabled() )
+            count.increment();
+    }
+
+    /**
+     * Increment this counter by delta
+     *
+     * @param delta the amount to add, must be >= 0
+     */
+    public void add(final long delta) {
+        if ( delta < 0 ) throw new IllegalArgumentException("Counters can only be incremented, but got delta " + delta);
+        if ( MetricsRegistry.isEnabled() )
+            count.add(delta);
+    }
+
+    /**
+     * @return the current value of this counter
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    void reset() {
+        count.reset();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values with power-of-two bins
+ *
+ * Bin 0 holds the value 0, and bin i > 0 holds values in [2^(i-1), 2^i).  This gives a
+ * fixed footprint of 64 longs no matter how many values are recorded, which is the
+ * resolution we want for things like reads per active region or region sizes.
+ */
+public final class Histogram {
+    public final static int N_BINS = Long.SIZE;
+
+    private final String name;
+    private final AtomicLongArray bins = new AtomicLongArray(N_BINS);
+
+    Histogram(final String name) {
+        if ( name == null ) throw new IllegalArgumentException("Histogram name cannot be null");
+        this.name = name;
+    }
+
+    /**
+     * @return the name associated with this histogram
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record a single observation of value in this histogram
+     *
+     * @param value the value to record, must be >= 0
+     */
+    public void record(final long value) {
+        if ( value < 0 ) throw new IllegalArgumentException("Histogram values must be >= 0 but got " + value);
+        if ( MetricsRegistry.isEnabled() )
+            bins.incrementAndGet(binFor(value));
+    }
+
+    /**
+     * Get the bin index that would hold value
+     *
+     * @param value a value >= 0
+     * @return the index of the bin for value, between 0 and N_BINS - 1
+     */
+    static int binFor(final long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * @param bin the bin index
+     * @return the smallest value (inclusive) that can be stored in bin
+     */
+    public static long binStart(final int bin) {
+        return bin == 0 ? 0 : 1L << (bin - 1);
+    }
+
+    /**
+     * @param bin the bin index
+     * @return the number of observations in bin
+     */
+    public long getCount(final int bin) {
+        return bins.get(bin);
+    }
+
+    /**
+     * @return the total number of observations in this histogram
+     */
+    public long getTotalCount() {
+        long sum = 0;
+        for ( int i = 0; i < N_BINS; i++ )
+            sum += bins.get(i);
+        return sum;
+    }
+
+    void reset() {
+        for ( int i = 0; i < N_BINS; i++ )
+            bins.set(i, 0);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.metrics;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+
+/**
+ * Daemon thread that periodically writes a snapshot of the MetricsRegistry to a file
+ *
+ * Each dump replaces the previous contents of the file, so at any point during the run
+ * the file holds the cumulative metrics up to the last poll.  Calling done() writes a
+ * final snapshot and stops the thread.
+ */
+public final class MetricsDaemon extends Thread {
+    private final static Logger logger = Logger.getLogger(MetricsDaemon.class);
+
+    public final static long DEFAULT_POLL_FREQUENCY_MILLISECONDS = 60 * 1000;
+
+    /**
+     * How frequently should we write out the metrics?
+     */
+    private final long pollFrequencyMilliseconds;
+
+    /**
+     * The file to which we write our metrics
+     */
+    private final File metricsFile;
+
+    /**
+     * Are we to continue periodically writing metrics, or should we shut down?
+     */
+    private volatile boolean done = false;
+
+    /**
+     * Create a new MetricsDaemon writing all registered metrics to metricsFile
+     *
+     * @param metricsFile the file to write to
+     * @param pollFrequencyMilliseconds the time between dumps in milliseconds
+     */
+    public MetricsDaemon(final File metricsFile, final long pollFrequencyMilliseconds) {
+        if ( metricsFile == null ) throw new IllegalArgumentException("metricsFile cannot be null");
+        if ( pollFrequencyMilliseconds <= 0 ) throw new IllegalArgumentException("pollFrequencyMilliseconds must be greater than 0 but got " + pollFrequencyMilliseconds);
+
+        this.metricsFile = metricsFile;
+        this.pollFrequencyMilliseconds = pollFrequencyMilliseconds;
+        setDaemon(true);
+        setName("MetricsDaemon");
+    }
+
+    public MetricsDaemon(final File metricsFile) {
+        this(metricsFile, DEFAULT_POLL_FREQUENCY_MILLISECONDS);
+    }
+
+    /**
+     * Tells this daemon thread to shutdown, and writes out the final state of the metrics
+     */
+    public final void done() {
+        done = true;
+        interrupt();
+        MetricsRegistry.writeReport(metricsFile);
+        logger.info("Wrote traversal metrics to " + metricsFile);
+    }
+
+    /**
+     * Is this daemon thread done?
+     * @return true if done, false otherwise
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Periodically write out the current metrics until done() is called
+     */
+    public void run() {
+        while ( ! done ) {
+            try {
+                Thread.sleep(pollFrequencyMilliseconds);
+            } catch (InterruptedException e) {
+                // we've been asked to stop, and done() will take care of the final dump
+                return;
+            }
+            if ( ! done )
+                MetricsRegistry.writeReport(metricsFile);
+        }
+    }
+}
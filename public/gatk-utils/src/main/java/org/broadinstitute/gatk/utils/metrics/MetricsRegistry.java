@@ -0,0 +1,226 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.metrics;
+
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.report.GATKReport;
+import org.broadinstitute.gatk.utils.report.GATKReportTable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide registry of named counters, timers, and histograms
+ *
+ * Metrics are meant to be obtained once and held in static final fields of the instrumented
+ * class, e.g.
+ *
+ *     private final static Timer MAP_TIMER = MetricsRegistry.timer("TraverseActiveRegions.map");
+ *
+ * Registration is cheap and always happens, but the metrics themselves only record data
+ * after enable() has been called (by the engine when -metricsLog is provided).  When disabled,
+ * every update costs a single volatile read, so instrumentation can remain in hot code paths.
+ *
+ * All of the metric types are lock-free, so they can be updated concurrently from the
+ * NanoScheduler and HierarchicalMicroScheduler threads.
+ */
+public final class MetricsRegistry {
+    public final static String COUNTERS_TABLE_NAME = "Counters";
+    public final static String TIMERS_TABLE_NAME = "Timers";
+    public final static String HISTOGRAMS_TABLE_NAME = "Histograms";
+
+    private static volatile boolean enabled = false;
+
+    private final static ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final static ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final static ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {}
+
+    /**
+     * @return true if metrics are currently being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start recording metrics
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Stop recording metrics.  Values recorded so far are kept.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Reset all registered metrics to their initial empty state
+     */
+    public static void reset() {
+        for ( final Counter counter : counters.values() ) counter.reset();
+        for ( final Timer timer : timers.values() ) timer.reset();
+        for ( final Histogram histogram : histograms.values() ) histogram.reset();
+    }
+
+    /**
+     * Get the counter named name, creating it if necessary
+     *
+     * @param name the name of the counter, must not be null
+     * @return a non-null Counter
+     */
+    public static Counter counter(final String name) {
+        if ( name == null ) throw new IllegalArgumentException("name cannot be null");
+        final Counter existing = counters.get(name);
+        if ( existing != null ) return existing;
+        final Counter created = new Counter(name);
+        final Counter raced = counters.putIfAbsent(name, created);
+        return raced == null ? created : raced;
+    }
+
+    /**
+     * Get the timer named name, creating it if necessary
+     *
+     * @param name the name of the timer, must not be null
+     * @return a non-null Timer
+     */
+    public static Timer timer(final String name) {
+        if ( name == null ) throw new IllegalArgumentException("name cannot be null");
+        final Timer existing = timers.get(name);
+        if ( existing != null ) return existing;
+        final Timer created = new Timer(name);
+        final Timer raced = timers.putIfAbsent(name, created);
+        return raced == null ? created : raced;
+    }
+
+    /**
+     * Get the histogram named name, creating it if necessary
+     *
+     * @param name the name of the histogram, must not be null
+     * @return a non-null Histogram
+     */
+    public static Histogram histogram(final String name) {
+        if ( name == null ) throw new IllegalArgumentException("name cannot be null");
+        final Histogram existing = histograms.get(name);
+        if ( existing != null ) return existing;
+        final Histogram created = new Histogram(name);
+        final Histogram raced = histograms.putIfAbsent(name, created);
+        return raced == null ? created : raced;
+    }
+
+    /**
+     * Create a GATKReport snapshot of all metrics that have recorded at least one event
+     *
+     * The report contains three tables, sorted by metric name: Counters, Timers, and Histograms.
+     * Histograms only include their non-empty bins.
+     *
+     * @return a non-null GATKReport
+     */
+    public static GATKReport toGATKReport() {
+        final GATKReport report = new GATKReport();
+
+        report.addTable(COUNTERS_TABLE_NAME, "Event counters", 2);
+        final GATKReportTable counterTable = report.getTable(COUNTERS_TABLE_NAME);
+        counterTable.addColumn("Name");
+        counterTable.addColumn("Count");
+        for ( final Counter counter : new TreeMap<>(counters).values() ) {
+            final long count = counter.getCount();
+            if ( count == 0 ) continue;
+            counterTable.addRowID(counter.getName(), true);
+            counterTable.set(counter.getName(), "Count", count);
+        }
+
+        report.addTable(TIMERS_TABLE_NAME, "Stage timers", 5);
+        final GATKReportTable timerTable = report.getTable(TIMERS_TABLE_NAME);
+        timerTable.addColumn("Name");
+        timerTable.addColumn("Count");
+        timerTable.addColumn("TotalSeconds", "%.3f");
+        timerTable.addColumn("MeanMicroseconds", "%.2f");
+        timerTable.addColumn("MaxMicroseconds", "%.2f");
+        for ( final Timer timer : new TreeMap<>(timers).values() ) {
+            final long count = timer.getCount();
+            if ( count == 0 ) continue;
+            final long total = timer.getTotalNanos();
+            timerTable.addRowID(timer.getName(), true);
+            timerTable.set(timer.getName(), "Count", count);
+            timerTable.set(timer.getName(), "TotalSeconds", total / 1e9);
+            timerTable.set(timer.getName(), "MeanMicroseconds", total / 1e3 / count);
+            timerTable.set(timer.getName(), "MaxMicroseconds", timer.getMaxNanos() / 1e3);
+        }
+
+        report.addTable(HISTOGRAMS_TABLE_NAME, "Power-of-two binned histograms", 3);
+        final GATKReportTable histogramTable = report.getTable(HISTOGRAMS_TABLE_NAME);
+        histogramTable.addColumn("Name");
+        histogramTable.addColumn("BinStart");
+        histogramTable.addColumn("Count");
+        int row = 0;
+        for ( final Histogram histogram : new TreeMap<>(histograms).values() ) {
+            for ( int bin = 0; bin < Histogram.N_BINS; bin++ ) {
+                final long count = histogram.getCount(bin);
+                if ( count == 0 ) continue;
+                histogramTable.set(row, 0, histogram.getName());
+                histogramTable.set(row, 1, Histogram.binStart(bin));
+                histogramTable.set(row, 2, count);
+                row++;
+            }
+        }
+
+        return report;
+    }
+
+    /**
+     * Write a GATKReport snapshot of all metrics to file, replacing its previous contents
+     *
+     * @param file the destination file, must not be null
+     */
+    public static synchronized void writeReport(final File file) {
+        if ( file == null ) throw new IllegalArgumentException("file cannot be null");
+        try ( final PrintStream out = new PrintStream(file) ) {
+            toGATKReport().print(out);
+        } catch ( FileNotFoundException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /**
+     * @return a snapshot of the current values of all counters, keyed by name
+     */
+    public static Map<String, Long> getCounterValues() {
+        final Map<String, Long> values = new TreeMap<>();
+        for ( final Counter counter : counters.values() )
+            values.put(counter.getName(), counter.getCount());
+        return values;
+    }
+}
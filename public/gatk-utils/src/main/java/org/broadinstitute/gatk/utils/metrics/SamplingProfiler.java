@@ -0,0 +1,372 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.metrics;
+
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.report.GATKReport;
+import org.broadinstitute.gatk.utils.report.GATKReportTable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A low-overhead sampling profiler for the threads executing a traversal
+ *
+ * Threads participating in the traversal (the MicroScheduler threads as well as the NanoScheduler
+ * map threads) announce what they are doing via the static enterPhase() / exitPhase() functions, which
+ * nest so that exitPhase() restores whatever the thread was doing before the matching enterPhase().  The
+ * profiler thread wakes up every sampling interval and, for each announced thread that is currently
+ * running, captures its stack trace and attributes it to the announced phase and genomic location.
+ *
+ * When the traversal is done the profiler writes:
+ *
+ *   - a collapsed-stack file, one line per distinct stack, in the format consumed by flamegraph.pl,
+ *     with the walker phase as the root frame:
+ *
+ *       map;...;HaplotypeCaller.map;LocalAssemblyEngine.runLocalAssembly 42
+ *
+ *   - optionally, a GATKReport table of the genomic intervals with the most samples, i.e., those where
+ *     we spent the most wall-clock time
+ *
+ * When no profiler is running enterPhase() and exitPhase() cost a single volatile read, so calls to
+ * them can stay in the traversal engines.
+ */
+public final class SamplingProfiler extends Thread {
+    private final static Logger logger = Logger.getLogger(SamplingProfiler.class);
+
+    public final static long DEFAULT_SAMPLING_INTERVAL_MILLISECONDS = 20;
+    public final static int DEFAULT_MAX_INTERVALS_TO_REPORT = 100;
+    public final static String SLOWEST_INTERVALS_TABLE_NAME = "SlowestIntervals";
+
+    /**
+     * Maximum number of frames we keep for each sampled stack, counting from the leaf
+     */
+    private final static int MAX_STACK_DEPTH = 256;
+
+    private final static String UNKNOWN_LOCATION = "unknown";
+
+    /**
+     * The running profiler, or null if none is running
+     */
+    private static volatile SamplingProfiler active = null;
+
+    /**
+     * A phase and the location where a thread is executing it, along with what the thread was doing before
+     *
+     * Immutable, so that the profiler thread always sees a phase together with its own location
+     */
+    private final static class Activity {
+        final String phase;
+        final GenomeLoc location;
+        final Activity enclosing;
+
+        private Activity(final String phase, final GenomeLoc location, final Activity enclosing) {
+            this.phase = phase;
+            this.location = location;
+            this.enclosing = enclosing;
+        }
+    }
+
+    /**
+     * What each traversal thread is currently doing
+     */
+    private final static class ThreadState {
+        final Thread thread;
+        volatile Activity activity = null;
+
+        private ThreadState(final Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private final static ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState(Thread.currentThread());
+        }
+    };
+
+    private final Set<ThreadState> trackedThreads = Collections.newSetFromMap(new ConcurrentHashMap<ThreadState, Boolean>());
+
+    // only ever touched by the profiler thread until it's been joined
+    private final Map<String, Long> stackCounts = new HashMap<>();
+    private final Map<String, Long> locationCounts = new HashMap<>();
+    private long nSamples = 0;
+
+    private final long samplingIntervalMilliseconds;
+    private final File stacksFile;
+    private final File intervalsFile;
+    private final int maxIntervalsToReport;
+
+    private volatile boolean done = false;
+
+    /**
+     * Create a new sampling profiler
+     *
+     * @param stacksFile the file where we'll write the collapsed stacks, must not be null
+     * @param intervalsFile the file where we'll write the slowest interval table, or null if not wanted
+     * @param samplingIntervalMilliseconds the time between samples
+     * @param maxIntervalsToReport the number of intervals to include in the slowest interval table
+     */
+    public SamplingProfiler(final File stacksFile, final File intervalsFile, final long samplingIntervalMilliseconds, final int maxIntervalsToReport) {
+        if ( stacksFile == null ) throw new IllegalArgumentException("stacksFile cannot be null");
+        if ( samplingIntervalMilliseconds <= 0 ) throw new IllegalArgumentException("samplingIntervalMilliseconds must be greater than 0 but got " + samplingIntervalMilliseconds);
+        if ( maxIntervalsToReport < 0 ) throw new IllegalArgumentException("maxIntervalsToReport must be >= 0 but got " + maxIntervalsToReport);
+
+        this.stacksFile = stacksFile;
+        this.intervalsFile = intervalsFile;
+        this.samplingIntervalMilliseconds = samplingIntervalMilliseconds;
+        this.maxIntervalsToReport = maxIntervalsToReport;
+        setDaemon(true);
+        setName("SamplingProfiler");
+    }
+
+    public SamplingProfiler(final File stacksFile, final File intervalsFile) {
+        this(stacksFile, intervalsFile, DEFAULT_SAMPLING_INTERVAL_MILLISECONDS, DEFAULT_MAX_INTERVALS_TO_REPORT);
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+    //
+    // Functions called by the traversal threads
+    //
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Tell the profiler that the calling thread is now executing phase at location
+     *
+     * @param phase a short name of the work being done, such as "map" or "isActive".  Must not be null
+     * @param location the genomic location being processed, may be null if unknown
+     */
+    public static void enterPhase(final String phase, final GenomeLoc location) {
+        final SamplingProfiler profiler = active;
+        if ( profiler == null )
+            return;
+
+        if ( phase == null ) throw new IllegalArgumentException("phase cannot be null");
+
+        final ThreadState state = threadState.get();
+        state.activity = new Activity(phase, location, state.activity);
+        profiler.trackedThreads.add(state);
+    }
+
+    /**
+     * Tell the profiler that the calling thread has finished the phase started by the last enterPhase() call
+     *
+     * The thread goes back to the enclosing phase, if there is one, or otherwise stops being sampled
+     */
+    public static void exitPhase() {
+        if ( active == null )
+            return;
+
+        final ThreadState state = threadState.get();
+        final Activity activity = state.activity;
+        if ( activity != null )
+            state.activity = activity.enclosing;
+    }
+
+    /**
+     * @return true if a sampling profiler is currently running
+     */
+    public static boolean isProfiling() {
+        return active != null;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+    //
+    // Profiler thread
+    //
+    // ----------------------------------------------------------------------------------------------------
+
+    @Override
+    public synchronized void start() {
+        if ( active != null )
+            throw new IllegalStateException("Only one sampling profiler can run at a time");
+        active = this;
+        super.start();
+    }
+
+    /**
+     * Stop sampling and write out the collapsed stacks and interval table
+     */
+    public void done() {
+        done = true;
+        interrupt();
+        try {
+            join();
+        } catch ( InterruptedException e ) {
+            throw new RuntimeException(e);
+        } finally {
+            active = null;
+        }
+
+        writeCollapsedStacks();
+        if ( intervalsFile != null )
+            writeSlowestIntervals();
+        logger.info(String.format("Sampling profiler collected %d samples, written to %s", nSamples, stacksFile));
+    }
+
+    @Override
+    public void run() {
+        while ( ! done ) {
+            try {
+                Thread.sleep(samplingIntervalMilliseconds);
+            } catch ( InterruptedException e ) {
+                return;
+            }
+            sampleAllThreads();
+        }
+    }
+
+    /**
+     * Take one sample of every tracked thread that's running traversal code
+     */
+    protected void sampleAllThreads() {
+        final Iterator<ThreadState> it = trackedThreads.iterator();
+        while ( it.hasNext() ) {
+            final ThreadState state = it.next();
+            if ( ! state.thread.isAlive() ) {
+                it.remove();
+                continue;
+            }
+
+            // only sample threads doing actual work, not those waiting for the others
+            final Activity activity = state.activity;
+            if ( activity == null || state.thread.getState() != Thread.State.RUNNABLE )
+                continue;
+
+            final StackTraceElement[] stack = state.thread.getStackTrace();
+            if ( stack.length == 0 )
+                continue;
+
+            addSample(activity.phase, activity.location, stack);
+        }
+    }
+
+    /**
+     * Record a single sample of stack, taken while a thread was executing phase at location
+     *
+     * @param phase the phase of the thread
+     * @param location the location the thread was processing, or null if unknown
+     * @param stack the stack of the thread, with the leaf frame first as returned by getStackTrace()
+     */
+    protected void addSample(final String phase, final GenomeLoc location, final StackTraceElement[] stack) {
+        nSamples++;
+        increment(stackCounts, collapseStack(phase, stack));
+        increment(locationCounts, location == null ? UNKNOWN_LOCATION : location.toString());
+    }
+
+    /**
+     * Convert a stack into the flamegraph collapsed format: root first, semicolon separated frames
+     *
+     * @param phase the phase, which becomes the root frame
+     * @param stack the stack, leaf frame first
+     * @return a non-null string
+     */
+    protected static String collapseStack(final String phase, final StackTraceElement[] stack) {
+        final StringBuilder builder = new StringBuilder(phase);
+        final int depth = Math.min(stack.length, MAX_STACK_DEPTH);
+        for ( int i = depth - 1; i >= 0; i-- ) {
+            final StackTraceElement frame = stack[i];
+            builder.append(';').append(frame.getClassName()).append('.').append(frame.getMethodName());
+        }
+        return builder.toString();
+    }
+
+    private static void increment(final Map<String, Long> counts, final String key) {
+        final Long count = counts.get(key);
+        counts.put(key, count == null ? 1L : count + 1);
+    }
+
+    /**
+     * @return the number of samples taken so far
+     */
+    public long getNumSamples() {
+        return nSamples;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+    //
+    // Output
+    //
+    // ----------------------------------------------------------------------------------------------------
+
+    private void writeCollapsedStacks() {
+        try ( final PrintStream out = new PrintStream(stacksFile) ) {
+            for ( final Map.Entry<String, Long> entry : new TreeMap<>(stackCounts).entrySet() )
+                out.println(entry.getKey() + " " + entry.getValue());
+        } catch ( FileNotFoundException e ) {
+            throw new UserException.CouldNotCreateOutputFile(stacksFile, e);
+        }
+    }
+
+    private void writeSlowestIntervals() {
+        try ( final PrintStream out = new PrintStream(intervalsFile) ) {
+            getSlowestIntervalsReport().print(out);
+        } catch ( FileNotFoundException e ) {
+            throw new UserException.CouldNotCreateOutputFile(intervalsFile, e);
+        }
+    }
+
+    /**
+     * Create a GATKReport with the intervals that collected the most samples, in decreasing order
+     *
+     * @return a non-null GATKReport
+     */
+    protected GATKReport getSlowestIntervalsReport() {
+        final List<Map.Entry<String, Long>> entries = new ArrayList<>(locationCounts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(final Map.Entry<String, Long> o1, final Map.Entry<String, Long> o2) {
+                final int bySamples = Long.compare(o2.getValue(), o1.getValue());
+                return bySamples != 0 ? bySamples : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+
+        final GATKReport report = new GATKReport();
+        report.addTable(SLOWEST_INTERVALS_TABLE_NAME, "Genomic intervals with the most profiler samples", 4);
+        final GATKReportTable table = report.getTable(SLOWEST_INTERVALS_TABLE_NAME);
+        table.addColumn("Interval");
+        table.addColumn("Samples");
+        table.addColumn("EstimatedSeconds", "%.2f");
+        table.addColumn("FractionOfSamples", "%.4f");
+
+        final int nToReport = Math.min(entries.size(), maxIntervalsToReport);
+        for ( int row = 0; row < nToReport; row++ ) {
+            final Map.Entry<String, Long> entry = entries.get(row);
+            table.set(row, 0, entry.getKey());
+            table.set(row, 1, entry.getValue());
+            table.set(row, 2, entry.getValue() * samplingIntervalMilliseconds / 1000.0);
+            table.set(row, 3, entry.getValue() / (double)nSamples);
+        }
+
+        return report;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free accumulating timer registered with the MetricsRegistry
+ *
+ * Unlike SimpleTimer this timer holds no per-call state, so a single instance can be shared by
+ * all of the threads executing a stage.  Typical use is:
+ *
+ *     final long start = TIMER.start();
+ *     ... work ...
+ *     TIMER.stop(start);
+ *
+ * When the registry is disabled start() doesn't even read the clock, and stop() returns immediately.
+ */
+public final class Timer {
+    /**
+     * The token returned by start() when the registry is disabled; System.nanoTime() can return any long, so
+     * start() moves a real reading of this value by a nanosecond rather than have it mistaken for the token
+     */
+    private final static long NOT_STARTED = Long.MIN_VALUE;
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong(0);
+
+    Timer(final String name) {
+        if ( name == null ) throw new IllegalArgumentException("Timer name cannot be null");
+        this.name = name;
+    }
+
+    /**
+     * @return the name associated with this timer
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Begin timing an event
+     *
+     * @return a token that must be passed to stop() when the event is complete
+     */
+    public long start() {
+        if ( ! MetricsRegistry.isEnabled() )
+            return NOT_STARTED;
+        final long now = System.nanoTime();
+        return now == NOT_STARTED ? now + 1 : now;
+    }
+
+    /**
+     * Finish timing an event started by start()
+     *
+     * @param startToken the value returned by the corresponding start() call
+     */
+    public void stop(final long startToken) {
+        if ( startToken != NOT_STARTED )
+            record(System.nanoTime() - startToken);
+    }
+
+    /**
+     * Add a single event that took elapsedNanos to this timer
+     *
+     * @param elapsedNanos the elapsed time of the event, in nanoseconds
+     */
+    public void record(final long elapsedNanos) {
+        if ( ! MetricsRegistry.isEnabled() || elapsedNanos < 0 )
+            return;
+
+        count.increment();
+        totalNanos.add(elapsedNanos);
+        long currentMax = maxNanos.get();
+        while ( elapsedNanos > currentMax && ! maxNanos.compareAndSet(currentMax, elapsedNanos) )
+            currentMax = maxNanos.get();
+    }
+
+    /**
+     * @return the number of events recorded by this timer
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of the elapsed times of all events, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return the elapsed time of the longest event, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils.refdata;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.tribble.AbstractFeatureReader;
+import org.broadinstitute.gatk.utils.collections.Pair;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+
+import java.io.File;
+
+/**
+ * An interface marking a Tribble codec whose inputs can't be indexed and decoded record by record by the engine,
+ * such as a directory-based store, and that opens the feature source of its inputs itself instead.
+ */
+public interface FeatureSourceCodec {
+    /**
+     * Open the feature source of an input bound to this codec
+     *
+     * @param inputFile the input given on the command line
+     * @param tags the tags of the binding of the input, which may select the records of the source
+     * @return the feature source, which must support queries, and the sequence dictionary of the input if known (or null)
+     */
+    public Pair<AbstractFeatureReader, SAMSequenceDictionary> createFeatureSource(final File inputFile, final Tags tags);
+}
@@ -185,6 +185,19 @@ public class SeekableRODIterator implements LocationAwareSeekableRODIterator {
         return null; // underlying iterator has no more records, there is no next location!
     }
 
+    /**
+     * Returns the next record of the underlying stream, i.e. the first record starting after the current position,
+     * without loading it.  Unlike peekNextLocation(), this skips over the positions covered by the records that are
+     * already loaded.
+     * @return the next unloaded record, or null if the underlying iterator has no more records
+     */
+    @Override
+    public GATKFeature peekNextRecord() {
+        while ( it.hasNext() && it.element() == null )
+            it.next(); // null records are skipped by next() and seekForward() too
+        return it.hasNext() ? it.element() : null;
+    }
+
     /** Advances iterator to the next genomic position that has ROD record(s) associated with it,
      * and returns all the records overlapping with that position as a RODList. The location of the whole
      * RODList object will be set to the smallest interval subsuming genomic intervals of all returned records.
@@ -41,6 +41,7 @@ import org.broadinstitute.gatk.utils.SequenceDictionaryUtils;
 import org.broadinstitute.gatk.utils.commandline.ArgumentTypeDescriptor;
 import org.broadinstitute.gatk.utils.commandline.Tags;
 import org.broadinstitute.gatk.utils.ValidationExclusion;
+import org.broadinstitute.gatk.utils.refdata.FeatureSourceCodec;
 import org.broadinstitute.gatk.utils.refdata.utils.RMDTriplet;
 import org.broadinstitute.gatk.utils.refdata.utils.RMDTriplet.RMDStorageType;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
@@ -147,7 +148,10 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
 
         // return a feature reader track
         Pair<AbstractFeatureReader, SAMSequenceDictionary> pair;
-        if (ArgumentTypeDescriptor.isCompressed(inputFile.toString()))
+        final FeatureCodec codec = createCodec(descriptor, name, inputFile);
+        if (codec instanceof FeatureSourceCodec)
+            pair = ((FeatureSourceCodec)codec).createFeatureSource(inputFile, fileDescriptor.getTags());
+        else if (ArgumentTypeDescriptor.isCompressed(inputFile.toString()))
             pair = createTabixIndexedFeatureSource(descriptor, name, inputFile);
         else
             pair = getFeatureSource(descriptor, name, inputFile, fileDescriptor.getStorageType());
@@ -155,7 +159,7 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
 
         validateVariantAgainstSequenceDictionary(name, descriptor.getName(), pair.first, pair.second);
 
-        return new RMDTrack(descriptor.getCodecClass(), name, inputFile, pair.first, pair.second, genomeLocParser, createCodec(descriptor, name, inputFile));
+        return new RMDTrack(descriptor.getCodecClass(), name, inputFile, pair.first, pair.second, genomeLocParser, codec);
     }
 
     /**
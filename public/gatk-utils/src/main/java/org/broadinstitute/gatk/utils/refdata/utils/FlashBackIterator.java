@@ -97,6 +97,15 @@ public class FlashBackIterator implements LocationAwareSeekableRODIterator {
         return (aheadQueue.size() > 0) ? aheadQueue.getFirst().getLocation() : iterator.position();
     }
 
+    /**
+     * peek at the next record of the underlying iterator, like seekForward() the flash back queue isn't considered
+     * @return the next record that the underlying iterator hasn't loaded, or null if there are none
+     */
+    @Override
+    public GATKFeature peekNextRecord() {
+        return iterator.peekNextRecord();
+    }
+
     /**
      * seek forward on the iterator
      * @param interval the interval to seek to
@@ -45,5 +45,12 @@ public interface LocationAwareSeekableRODIterator extends CloseableIterator<RODR
 
     public GenomeLoc position();
 
+    /**
+     * Peeks at the next record that hasn't been loaded yet, i.e. the first record starting after the current
+     * position, without advancing the iterator.
+     * @return the next record of the underlying stream, or null if there are no more records
+     */
+    public GATKFeature peekNextRecord();
+
     public RODRecordList seekForward(GenomeLoc interval);    
 }
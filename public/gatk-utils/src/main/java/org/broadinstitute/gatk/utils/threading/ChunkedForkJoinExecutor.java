@@ -0,0 +1,180 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils.threading;
+
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Evaluates independent work on a range of items in parallel, by splitting the range into contiguous chunks that
+ * run on a fork-join pool shared by all the executors with the same number of threads.
+ *
+ * <p>The chunk boundaries only depend on the number of items and the number of chunks the caller asks for, and
+ * results are handed back in chunk order. Callers that pick the number of chunks without looking at the number of
+ * threads, and fold per-chunk results together in that order, therefore get the same answer whatever the number of
+ * threads.</p>
+ */
+public final class ChunkedForkJoinExecutor {
+
+    /**
+     * Executor that runs every chunk on the calling thread.
+     */
+    public static final ChunkedForkJoinExecutor SERIAL = new ChunkedForkJoinExecutor(1);
+
+    private static final Map<Integer, ForkJoinPool> poolsByThreadCount = new HashMap<>();
+
+    /**
+     * Work done on a range of items.
+     *
+     * @param <T> the chunk result type.
+     */
+    public interface ChunkFunction<T> {
+        /**
+         * @param chunk index of the chunk.
+         * @param from first item index (inclusive).
+         * @param to last item index (exclusive).
+         * @return the result for items {@code from} to {@code to}.
+         */
+        T apply(final int chunk, final int from, final int to);
+    }
+
+    private final int threads;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new executor.
+     *
+     * @param threads maximum number of chunks evaluated at the same time.
+     *
+     * @throws IllegalArgumentException if {@code threads} is less than 1.
+     */
+    public ChunkedForkJoinExecutor(final int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("the number of threads must be at least 1 but got " + threads);
+        this.threads = threads;
+        this.pool = threads == 1 ? null : sharedPool(threads);
+    }
+
+    private static ForkJoinPool sharedPool(final int threads) {
+        synchronized (poolsByThreadCount) {
+            ForkJoinPool result = poolsByThreadCount.get(threads);
+            if (result == null)
+                poolsByThreadCount.put(threads, result = new ForkJoinPool(threads));
+            return result;
+        }
+    }
+
+    /**
+     * Returns the maximum number of chunks evaluated at the same time.
+     *
+     * @return 1 or more.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the number of chunks needed so that none holds more than a given number of items.
+     *
+     * @param size number of items.
+     * @param maxChunkSize maximum number of items in each chunk.
+     *
+     * @throws IllegalArgumentException if {@code size} is negative or {@code maxChunkSize} is less than 1.
+     *
+     * @return 1 or more.
+     */
+    public static int chunkCountForMaxChunkSize(final int size, final int maxChunkSize) {
+        if (size < 0)
+            throw new IllegalArgumentException("the size cannot be negative");
+        if (maxChunkSize < 1)
+            throw new IllegalArgumentException("the chunk size must be at least 1 but got " + maxChunkSize);
+        return Math.max(1, (int) (((long) size + maxChunkSize - 1) / maxChunkSize));
+    }
+
+    /**
+     * Applies a function to consecutive chunks of items.
+     *
+     * <p>Chunk {@code i} covers items {@code size * i / chunkCount} (inclusive) to {@code size * (i + 1) / chunkCount}
+     * (exclusive), so chunk sizes differ by at most one.</p>
+     *
+     * @param size number of items to split.
+     * @param chunkCount number of chunks to split them into.
+     * @param function the work to do on each chunk.
+     * @param <T> the chunk result type.
+     *
+     * @throws IllegalArgumentException if {@code size} is negative, {@code chunkCount} is less than 1 or
+     *  {@code function} is {@code null}.
+     *
+     * @return never {@code null}, the result for each chunk in increasing item index order.
+     */
+    public <T> List<T> map(final int size, final int chunkCount, final ChunkFunction<T> function) {
+        if (size < 0)
+            throw new IllegalArgumentException("the size cannot be negative");
+        if (chunkCount < 1)
+            throw new IllegalArgumentException("the number of chunks must be at least 1 but got " + chunkCount);
+        if (function == null)
+            throw new IllegalArgumentException("the function cannot be null");
+
+        final List<T> results = new ArrayList<>(chunkCount);
+        if (threads == 1 || chunkCount == 1) {
+            for (int i = 0; i < chunkCount; i++)
+                results.add(function.apply(i, chunkFrom(i, size, chunkCount), chunkFrom(i + 1, size, chunkCount)));
+            return results;
+        }
+
+        final List<Callable<T>> tasks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            final int chunk = i;
+            final int from = chunkFrom(i, size, chunkCount);
+            final int to = chunkFrom(i + 1, size, chunkCount);
+            tasks.add(new Callable<T>() {
+                @Override
+                public T call() {
+                    return function.apply(chunk, from, to);
+                }
+            });
+        }
+
+        try {
+            for (final Future<T> result : pool.invokeAll(tasks))
+                results.add(result.get());
+        } catch (final InterruptedException e) {
+            throw new ReviewedGATKException("Interrupted while evaluating chunks", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new ReviewedGATKException("Failed to evaluate a chunk", e.getCause());
+        }
+        return results;
+    }
+
+    private static int chunkFrom(final int chunk, final int size, final int chunkCount) {
+        return (int) ((long) size * chunk / chunkCount);
+    }
+}
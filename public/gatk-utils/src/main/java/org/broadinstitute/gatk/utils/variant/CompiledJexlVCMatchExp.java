@@ -0,0 +1,525 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextUtils;
+import org.apache.commons.jexl2.JexlArithmetic;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.parser.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A JEXL match expression that is compiled once into a tree of typed predicates over a VariantContext
+ *
+ * VariantContextUtils.match interprets the JEXL expression at every site, going through a JexlContext
+ * that looks up every variable by name and works on boxed values.  For the common shape of filtering
+ * and selection expressions -- comparisons of a single INFO field or site property against a literal,
+ * combined with &&, || and ! -- this class instead walks a predicate tree built from the parsed
+ * expression.  Each comparison reads only the one value it references, straight from the
+ * VariantContext, and converts it to a primitive with exactly the same coercions as JexlArithmetic.
+ *
+ * The compiled form is semantically identical to VariantContextUtils.match:
+ *
+ *   - a variable that isn't defined at a site makes the whole expression false, but only if it is
+ *     actually evaluated, as && and || short-circuit left to right
+ *   - an expression that can't be compiled, such as one calling methods on vc or comparing two
+ *     variables, is always evaluated with JEXL
+ *   - a value that the compiled form can't handle exactly, such as a multi-valued attribute or one
+ *     that isn't a parsable number, sends that site to JEXL, so errors are reported just as before
+ */
+public class CompiledJexlVCMatchExp extends VariantContextUtils.JexlVCMatchExp {
+    // results of evaluating a node of the predicate tree
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int UNDEFINED = -1;   // a variable isn't defined, so the match is false
+    private static final int FALLBACK = -2;    // this site has to be evaluated with JEXL
+
+    private static final JexlArithmetic ARITHMETIC = new JexlArithmetic(false);
+
+    /**
+     * The compiled predicate, or null if the expression can only be evaluated with JEXL
+     */
+    private final Predicate predicate;
+
+    /**
+     * Compiles a JEXL match expression
+     *
+     * @param exp the JEXL match expression, as created by VariantContextUtils.initializeMatchExps
+     */
+    public CompiledJexlVCMatchExp(final VariantContextUtils.JexlVCMatchExp exp) {
+        super(exp.name, exp.exp);
+        this.predicate = compile(exp.exp.getExpression());
+    }
+
+    /**
+     * Compiles each of the JEXL match expressions in exps
+     *
+     * @param exps the JEXL match expressions, as created by VariantContextUtils.initializeMatchExps
+     * @return a list of the compiled expressions, in the same order as exps
+     */
+    public static List<CompiledJexlVCMatchExp> compile(final List<VariantContextUtils.JexlVCMatchExp> exps) {
+        final List<CompiledJexlVCMatchExp> compiled = new ArrayList<>(exps.size());
+        for ( final VariantContextUtils.JexlVCMatchExp exp : exps )
+            compiled.add(new CompiledJexlVCMatchExp(exp));
+        return compiled;
+    }
+
+    /**
+     * @return true if this expression is evaluated by its compiled form, false if it is always evaluated with JEXL
+     */
+    public boolean isCompiled() {
+        return predicate != null;
+    }
+
+    /**
+     * Does vc match this expression?
+     *
+     * @param vc the variant context to test
+     * @return the same result as VariantContextUtils.match(vc, this), and throws the same exceptions
+     */
+    public boolean match(final VariantContext vc) {
+        if ( predicate != null ) {
+            final int result = predicate.evaluate(vc);
+            if ( result != FALLBACK )
+                return result == TRUE;
+        }
+        return VariantContextUtils.match(vc, this);
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // compilation of the JEXL syntax tree
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Gives access to the JEXL parser, so we compile exactly the syntax tree that JEXL interprets
+     */
+    private static final class Parser extends JexlEngine {
+        private ASTJexlScript parse(final String expression) {
+            return parse(expression, null, null);
+        }
+    }
+
+    /**
+     * Thrown while compiling a node that the compiled form doesn't support
+     */
+    private static final class UnsupportedExpressionException extends Exception {
+        private UnsupportedExpressionException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static Predicate compile(final String expression) {
+        try {
+            final ASTJexlScript script = new Parser().parse(expression);
+            if ( script.jjtGetNumChildren() != 1 )
+                return null;
+            return compileNode(script.jjtGetChild(0));
+        } catch ( UnsupportedExpressionException e ) {
+            return null;
+        } catch ( RuntimeException e ) {
+            // leave any parsing problems to JEXL itself
+            return null;
+        }
+    }
+
+    private static Predicate compileNode(final JexlNode node) throws UnsupportedExpressionException {
+        if ( node instanceof ASTOrNode )
+            return new Or(compileNode(node.jjtGetChild(0)), compileNode(node.jjtGetChild(1)));
+        if ( node instanceof ASTAndNode )
+            return new And(compileNode(node.jjtGetChild(0)), compileNode(node.jjtGetChild(1)));
+        if ( node instanceof ASTNotNode )
+            return new Not(compileNode(node.jjtGetChild(0)));
+        if ( node instanceof ASTReference || node instanceof ASTReferenceExpression ) {
+            // parenthesized sub-expressions
+            if ( node.jjtGetNumChildren() != 1 )
+                throw new UnsupportedExpressionException();
+            return compileNode(node.jjtGetChild(0));
+        }
+        if ( node instanceof ASTLTNode )
+            return compileComparison(node, Operator.LT);
+        if ( node instanceof ASTLENode )
+            return compileComparison(node, Operator.LE);
+        if ( node instanceof ASTGTNode )
+            return compileComparison(node, Operator.GT);
+        if ( node instanceof ASTGENode )
+            return compileComparison(node, Operator.GE);
+        if ( node instanceof ASTEQNode )
+            return compileComparison(node, Operator.EQ);
+        if ( node instanceof ASTNENode )
+            return compileComparison(node, Operator.NE);
+        throw new UnsupportedExpressionException();
+    }
+
+    private static Predicate compileComparison(final JexlNode node, final Operator operator) throws UnsupportedExpressionException {
+        final JexlNode left = node.jjtGetChild(0);
+        final JexlNode right = node.jjtGetChild(1);
+        final String leftVariable = getVariableName(left);
+        final String rightVariable = getVariableName(right);
+
+        if ( leftVariable != null && rightVariable == null )
+            return compileComparison(leftVariable, operator, getLiteral(right));
+        if ( leftVariable == null && rightVariable != null )
+            return compileComparison(rightVariable, operator.reverse(), getLiteral(left));
+        throw new UnsupportedExpressionException();
+    }
+
+    private static Predicate compileComparison(final String name, final Operator operator, final Literal literal) throws UnsupportedExpressionException {
+        // the same names, looked up in the same order, as htsjdk's VariantJEXLContext
+        switch ( name ) {
+            case "vc":
+            case "ALLELES":
+                throw new UnsupportedExpressionException();
+            case "CHROM":
+                return new ObjectComparison(operator, literal) {
+                    @Override
+                    Object get(final VariantContext vc) { return vc.getChr(); }
+                };
+            case "POS":
+                return new IntComparison(operator, literal) {
+                    @Override
+                    int get(final VariantContext vc) { return vc.getStart(); }
+                };
+            case "TYPE":
+                return new ObjectComparison(operator, literal) {
+                    @Override
+                    Object get(final VariantContext vc) { return vc.getType().toString(); }
+                };
+            case "QUAL":
+                return new DoubleComparison(operator, literal) {
+                    @Override
+                    double get(final VariantContext vc) { return -10 * vc.getLog10PError(); }
+                };
+            case "N_ALLELES":
+                return new IntComparison(operator, literal) {
+                    @Override
+                    int get(final VariantContext vc) { return vc.getNAlleles(); }
+                };
+            case "FILTER":
+                return new ObjectComparison(operator, literal) {
+                    @Override
+                    Object get(final VariantContext vc) { return vc.isFiltered() ? "1" : "0"; }
+                };
+            case "homRefCount":
+                return new IntComparison(operator, literal) {
+                    @Override
+                    int get(final VariantContext vc) { return vc.getHomRefCount(); }
+                };
+            case "hetCount":
+                return new IntComparison(operator, literal) {
+                    @Override
+                    int get(final VariantContext vc) { return vc.getHetCount(); }
+                };
+            case "homVarCount":
+                return new IntComparison(operator, literal) {
+                    @Override
+                    int get(final VariantContext vc) { return vc.getHomVarCount(); }
+                };
+            default:
+                return new ObjectComparison(operator, literal) {
+                    @Override
+                    Object get(final VariantContext vc) {
+                        if ( vc.hasAttribute(name) )
+                            return vc.getAttribute(name);
+                        return vc.getFilters().contains(name) ? "1" : null;
+                    }
+                };
+        }
+    }
+
+    /**
+     * @return the name of the variable node refers to, or null if node isn't a simple variable reference
+     */
+    private static String getVariableName(final JexlNode node) {
+        if ( node instanceof ASTReference && node.jjtGetNumChildren() == 1 && node.jjtGetChild(0) instanceof ASTIdentifier )
+            return node.jjtGetChild(0).image;
+        return null;
+    }
+
+    private static Literal getLiteral(final JexlNode node) throws UnsupportedExpressionException {
+        if ( node instanceof ASTReference && node.jjtGetNumChildren() == 1 && node.jjtGetChild(0) instanceof ASTStringLiteral )
+            return new Literal(((ASTStringLiteral)node.jjtGetChild(0)).getLiteral());
+        if ( node instanceof ASTNumberLiteral )
+            return new Literal(((ASTNumberLiteral)node).getLiteral());
+        if ( node instanceof ASTUnaryMinusNode && node.jjtGetChild(0) instanceof ASTNumberLiteral ) {
+            final Object negated = ARITHMETIC.negate(((ASTNumberLiteral)node.jjtGetChild(0)).getLiteral());
+            if ( negated instanceof Number )
+                return new Literal((Number)negated);
+        }
+        throw new UnsupportedExpressionException();
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // the predicate tree
+    //
+    // --------------------------------------------------------------------------------
+
+    private static abstract class Predicate {
+        /**
+         * @return TRUE, FALSE, UNDEFINED if a variable isn't defined in vc, or FALLBACK if vc must be evaluated with JEXL
+         */
+        abstract int evaluate(final VariantContext vc);
+    }
+
+    private static final class Or extends Predicate {
+        private final Predicate left, right;
+
+        private Or(final Predicate left, final Predicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(final VariantContext vc) {
+            final int result = left.evaluate(vc);
+            return result == FALSE ? right.evaluate(vc) : result;
+        }
+    }
+
+    private static final class And extends Predicate {
+        private final Predicate left, right;
+
+        private And(final Predicate left, final Predicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(final VariantContext vc) {
+            final int result = left.evaluate(vc);
+            return result == TRUE ? right.evaluate(vc) : result;
+        }
+    }
+
+    private static final class Not extends Predicate {
+        private final Predicate operand;
+
+        private Not(final Predicate operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        int evaluate(final VariantContext vc) {
+            final int result = operand.evaluate(vc);
+            return result == TRUE ? FALSE : result == FALSE ? TRUE : result;
+        }
+    }
+
+    private enum Operator {
+        LT, LE, GT, GE, EQ, NE;
+
+        /**
+         * @return the operator to use when the operands are swapped, so that a op b == b op.reverse() a
+         */
+        Operator reverse() {
+            switch ( this ) {
+                case LT: return GT;
+                case LE: return GE;
+                case GT: return LT;
+                case GE: return LE;
+                default: return this;
+            }
+        }
+
+        /**
+         * @param comparison the result of comparing the operands, as by JexlArithmetic.compare
+         */
+        boolean test(final int comparison) {
+            switch ( this ) {
+                case LT: return comparison < 0;
+                case LE: return comparison <= 0;
+                case GT: return comparison > 0;
+                case GE: return comparison >= 0;
+                case EQ: return comparison == 0;
+                default: return comparison != 0;
+            }
+        }
+    }
+
+    /**
+     * A literal operand, with the value JexlArithmetic would use for it in each kind of comparison
+     */
+    private static final class Literal {
+        final boolean isString, isFloatingPoint;
+        final String stringValue;
+        final double doubleValue;
+        final long longValue;
+
+        private Literal(final String value) {
+            isString = true;
+            isFloatingPoint = false;
+            stringValue = value;
+            doubleValue = 0;
+            longValue = 0;
+        }
+
+        private Literal(final Number value) throws UnsupportedExpressionException {
+            isString = false;
+            stringValue = null;
+            if ( value instanceof Float || value instanceof Double ) {
+                isFloatingPoint = true;
+                doubleValue = ARITHMETIC.toDouble(value);
+                longValue = 0;
+            } else if ( value instanceof Integer || value instanceof Long ) {
+                isFloatingPoint = false;
+                doubleValue = ARITHMETIC.toDouble(value);
+                longValue = value.longValue();
+            } else {
+                // BigInteger and BigDecimal literals
+                throw new UnsupportedExpressionException();
+            }
+        }
+    }
+
+    /**
+     * Compares a variable with a literal, following JexlArithmetic.compare
+     */
+    private static abstract class Comparison extends Predicate {
+        final Operator operator;
+        final Literal literal;
+
+        private Comparison(final Operator operator, final Literal literal) {
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        final int result(final int comparison) {
+            return operator.test(comparison) ? TRUE : FALSE;
+        }
+
+        /**
+         * Compares doubles as JexlArithmetic does, where NaN is smaller than everything but NaN
+         */
+        static int compareDoubles(final double left, final double right) {
+            if ( Double.isNaN(left) )
+                return Double.isNaN(right) ? 0 : -1;
+            if ( Double.isNaN(right) )
+                return 1;
+            return left < right ? -1 : left > right ? 1 : 0;
+        }
+    }
+
+    /**
+     * Compares a variable whose value JEXL sees as a Double
+     */
+    private static abstract class DoubleComparison extends Comparison {
+        private DoubleComparison(final Operator operator, final Literal literal) throws UnsupportedExpressionException {
+            super(operator, literal);
+            if ( literal.isString )
+                throw new UnsupportedExpressionException();
+        }
+
+        abstract double get(final VariantContext vc);
+
+        @Override
+        int evaluate(final VariantContext vc) {
+            return result(compareDoubles(get(vc), literal.doubleValue));
+        }
+    }
+
+    /**
+     * Compares a variable whose value JEXL sees as an Integer
+     */
+    private static abstract class IntComparison extends Comparison {
+        private IntComparison(final Operator operator, final Literal literal) throws UnsupportedExpressionException {
+            super(operator, literal);
+            if ( literal.isString )
+                throw new UnsupportedExpressionException();
+        }
+
+        abstract int get(final VariantContext vc);
+
+        @Override
+        int evaluate(final VariantContext vc) {
+            final int value = get(vc);
+            if ( literal.isFloatingPoint )
+                return result(compareDoubles(value, literal.doubleValue));
+            return result(Long.compare(value, literal.longValue));
+        }
+    }
+
+    /**
+     * Compares a variable whose value is only known at each site, typically an INFO field
+     */
+    private static abstract class ObjectComparison extends Comparison {
+        private ObjectComparison(final Operator operator, final Literal literal) {
+            super(operator, literal);
+        }
+
+        /**
+         * @return the value of the variable in vc, or null if it isn't defined
+         */
+        abstract Object get(final VariantContext vc);
+
+        @Override
+        int evaluate(final VariantContext vc) {
+            final Object value = get(vc);
+            if ( value == null )
+                return UNDEFINED;
+
+            if ( value instanceof String ) {
+                final String string = (String)value;
+                if ( literal.isString )
+                    return result(string.compareTo(literal.stringValue));
+                if ( literal.isFloatingPoint ) {
+                    final String trimmed = string.trim();
+                    if ( trimmed.isEmpty() )
+                        return result(compareDoubles(Double.NaN, literal.doubleValue));
+                    try {
+                        return result(compareDoubles(Double.parseDouble(trimmed), literal.doubleValue));
+                    } catch ( NumberFormatException e ) {
+                        return FALLBACK;
+                    }
+                }
+                if ( string.isEmpty() )
+                    return result(Long.compare(0, literal.longValue));
+                try {
+                    return result(Long.compare(Long.parseLong(string), literal.longValue));
+                } catch ( NumberFormatException e ) {
+                    return FALLBACK;
+                }
+            }
+
+            if ( literal.isString )
+                return FALLBACK;
+            if ( value instanceof Double || value instanceof Float )
+                return result(compareDoubles(ARITHMETIC.toDouble(value), literal.doubleValue));
+            if ( value instanceof Integer || value instanceof Long ) {
+                final long longValue = ((Number)value).longValue();
+                if ( literal.isFloatingPoint )
+                    return result(compareDoubles(longValue, literal.doubleValue));
+                return result(Long.compare(longValue, literal.longValue));
+            }
+            return FALLBACK;
+        }
+    }
+}
@@ -841,7 +841,8 @@ public class GATKVariantContextUtils {
         // create the new genotypes
         for ( int k = 0; k < originalGs.size(); k++ ) {
             final Genotype g = originalGs.get(sampleIndices.get(k));
-            final GenotypeBuilder gb = new GenotypeBuilder(g);
+            // all branches below set the PLs, so don't have remapped ones built just to copy them
+            final GenotypeBuilder gb = new GenotypeBuilder(g instanceof RemappedPLGenotype ? ((RemappedPLGenotype) g).getGenotypeWithoutPLs() : g);
 
             // create the new likelihoods array from the used alleles
             double[] newLikelihoods;
@@ -849,6 +850,24 @@ public class GATKVariantContextUtils {
                 // we don't have any likelihoods, so we null out PLs and make G ./.
                 newLikelihoods = null;
                 gb.noPL();
+            } else if ( likelihoodIndexesToUse != null && g instanceof RemappedPLGenotype ) {
+                // pick the few PLs we need straight from the remapped genotype, without building all of them
+                final RemappedPLGenotype remapped = (RemappedPLGenotype) g;
+                if ( remapped.getPLCount() != expectedNumLikelihoods ) {
+                    logger.debug("Wrong number of likelihoods in sample " + g.getSampleName() + " at " + originalVC + " got " + remapped.getPLCount() + " but expected " + expectedNumLikelihoods);
+                    newLikelihoods = null;
+                } else {
+                    newLikelihoods = new double[likelihoodIndexesToUse.size()];
+                    int newIndex = 0;
+                    for ( final int oldIndex : likelihoodIndexesToUse )
+                        newLikelihoods[newIndex++] = remapped.getPL(oldIndex) / -10.0;
+                    newLikelihoods = MathUtils.normalizeFromLog10(newLikelihoods, false, true);
+                }
+
+                if ( newLikelihoods == null || (originalVC.getAttributeAsInt(VCFConstants.DEPTH_KEY, 0) == 0 && likelihoodsAreUninformative(newLikelihoods) ))
+                    gb.noPL();
+                else
+                    gb.PL(newLikelihoods);
             } else {
                 final double[] originalLikelihoods = g.getLikelihoods().getAsVector();
                 if ( likelihoodIndexesToUse == null ) {
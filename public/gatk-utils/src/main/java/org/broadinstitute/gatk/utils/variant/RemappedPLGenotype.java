@@ -0,0 +1,157 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A genotype whose PLs are those of a smaller PL array remapped to a larger set of alleles
+ *
+ * When many alternate alleles accumulate at a site (e.g. merging gVCFs at a hyper-variable site) the PL array of
+ * every sample grows quadratically with the number of alleles, even though most samples only ever had a few distinct
+ * PL values (a reference block has three).  This genotype only keeps the original PLs and a genotype index map,
+ * usually shared by all the samples with the same original alleles, and computes the PL of each genotype on demand.
+ *
+ * The full PL array is only built, and then kept, the first time {@link #getPL()} is called, so any code unaware of
+ * this class sees a regular genotype.  Code that knows about it can use {@link #getPL(int)}, {@link #getBestPLIndex()}
+ * and {@link #getGLSum()} to work on the PLs without ever building them.
+ */
+public final class RemappedPLGenotype extends Genotype {
+    private static final long serialVersionUID = 1L;
+
+    private final Genotype base;
+    private final int[] originalPLs;
+    private final int[] genotypeIndexMap;
+    private int[] PLs = null;
+
+    /**
+     * Create a new genotype with remapped PLs
+     *
+     * @param base the genotype providing everything but the PLs, which it shouldn't have
+     * @param originalPLs the original PLs, not copied
+     * @param genotypeIndexMap the ith element is the index in {@code originalPLs} of the PL of the ith genotype, not
+     *                         copied, so it can be shared by many genotypes
+     */
+    public RemappedPLGenotype(final Genotype base, final int[] originalPLs, final int[] genotypeIndexMap) {
+        super(base == null ? null : base.getSampleName(), base == null ? null : base.getFilters());
+        if ( base == null ) throw new IllegalArgumentException("base genotype cannot be null");
+        if ( base.hasPL() ) throw new IllegalArgumentException("base genotype cannot have PLs");
+        if ( originalPLs == null || originalPLs.length == 0 ) throw new IllegalArgumentException("originalPLs cannot be null or empty");
+        if ( genotypeIndexMap == null ) throw new IllegalArgumentException("genotypeIndexMap cannot be null");
+
+        this.base = base;
+        this.originalPLs = originalPLs;
+        this.genotypeIndexMap = genotypeIndexMap;
+    }
+
+    /**
+     * @return this genotype without PLs, e.g. to start a GenotypeBuilder that will set new ones
+     */
+    public Genotype getGenotypeWithoutPLs() {
+        return base;
+    }
+
+    /**
+     * @return the number of PLs of this genotype
+     */
+    public int getPLCount() {
+        return genotypeIndexMap.length;
+    }
+
+    /**
+     * Get the PL of a single genotype without building the PL array
+     *
+     * @param genotypeIndex the index of the genotype, as in the PL array
+     * @return the PL of that genotype
+     */
+    public int getPL(final int genotypeIndex) {
+        return originalPLs[genotypeIndexMap[genotypeIndex]];
+    }
+
+    /**
+     * Get the index of the most likely genotype, the first one in case of ties
+     *
+     * @return the same as {@code MathUtils.maxElementIndex(getLikelihoods().getAsVector())}
+     */
+    public int getBestPLIndex() {
+        int best = 0;
+        int bestPL = getPL(0);
+        for ( int i = 1; i < genotypeIndexMap.length; i++ ) {
+            final int PL = originalPLs[genotypeIndexMap[i]];
+            if ( PL < bestPL ) {
+                best = i;
+                bestPL = PL;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sum the log10 genotype likelihoods of all genotypes
+     *
+     * @return the same as {@code MathUtils.sum(getLikelihoods().getAsVector())}, added up in the same order
+     */
+    public double getGLSum() {
+        double sum = 0.0;
+        for ( final int originalIndex : genotypeIndexMap )
+            sum += originalPLs[originalIndex] / -10.0;
+        return sum;
+    }
+
+    @Override
+    public int[] getPL() {
+        if ( PLs == null ) {
+            final int[] result = new int[genotypeIndexMap.length];
+            for ( int i = 0; i < result.length; i++ )
+                result[i] = originalPLs[genotypeIndexMap[i]];
+            PLs = result;
+        }
+        return PLs;
+    }
+
+    @Override
+    public boolean hasPL() {
+        return true;
+    }
+
+    @Override
+    public boolean hasLikelihoods() {
+        return true;
+    }
+
+    @Override public List<Allele> getAlleles() { return base.getAlleles(); }
+    @Override public Allele getAllele(final int i) { return base.getAllele(i); }
+    @Override public boolean isPhased() { return base.isPhased(); }
+    @Override public int getDP() { return base.getDP(); }
+    @Override public int[] getAD() { return base.getAD(); }
+    @Override public int getGQ() { return base.getGQ(); }
+    @Override public Map<String, Object> getExtendedAttributes() { return base.getExtendedAttributes(); }
+}
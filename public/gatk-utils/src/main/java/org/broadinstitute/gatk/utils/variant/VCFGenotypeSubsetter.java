@@ -0,0 +1,296 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.tribble.util.ParsingUtils;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+
+import java.util.*;
+
+/**
+ * Restricts VariantContexts read by the VCF codec to a subset of their samples and FORMAT fields without decoding the others
+ *
+ * The VCF codec keeps the genotype block of each record as the raw text of its FORMAT and sample columns,
+ * and decodes all of it the first time any genotype is accessed.  When only a few samples out of a large
+ * callset are needed, almost all of that work is thrown away by VariantContext.subContextFromSamples.
+ * This class instead cuts the columns of the selected samples out of the raw text and decodes only those,
+ * with a VCF codec whose header lists just the selected samples, so the genotypes are parsed exactly as
+ * the original codec would have parsed them.  Everything but the genotypes is copied from the original
+ * VariantContext as is.
+ *
+ * In the same way, the genotypes can be restricted to a set of FORMAT keys, in which case the values of all
+ * other keys are dropped from each sample column before decoding.
+ *
+ * Records whose genotypes have already been decoded, or that don't come from the VCF text codec (BCF
+ * stores genotypes field by field rather than sample by sample), are returned unchanged.
+ */
+public class VCFGenotypeSubsetter {
+    /**
+     * The sample columns to keep, as offsets into the samples of the original header, in increasing order
+     */
+    private final int[] keptColumns;
+    private final int nSamples;
+
+    /**
+     * The FORMAT keys to keep, or null to keep all of them
+     */
+    private final Set<String> keptKeys;
+    private final VCFHeader subsetHeader;
+
+    /**
+     * The codec decoding the selected columns; codecs keep parsing state, so each thread needs its own
+     */
+    private final ThreadLocal<VCFCodec> codec = new ThreadLocal<VCFCodec>() {
+        @Override
+        protected VCFCodec initialValue() {
+            final VCFCodec codec = new VCFCodec();
+            codec.setVCFHeader(subsetHeader, VCFHeaderVersion.VCF4_2);
+            return codec;
+        }
+    };
+
+    /**
+     * Create a subsetter for records read with header
+     *
+     * @param header  the header of the VCF the records are read from
+     * @param samples the samples to keep; samples that aren't in header are ignored
+     */
+    public VCFGenotypeSubsetter(final VCFHeader header, final Collection<String> samples) {
+        this(header, samples, null);
+    }
+
+    /**
+     * Create a subsetter for records read with header that also keeps only some of the FORMAT fields
+     *
+     * @param header     the header of the VCF the records are read from
+     * @param samples    the samples to keep; samples that aren't in header are ignored
+     * @param formatKeys the FORMAT keys to keep, or null to keep all of them; GT has to be included for the
+     *                   genotypes to have alleles
+     */
+    public VCFGenotypeSubsetter(final VCFHeader header, final Collection<String> samples, final Collection<String> formatKeys) {
+        if ( header == null ) throw new IllegalArgumentException("header cannot be null");
+        if ( samples == null ) throw new IllegalArgumentException("samples cannot be null");
+
+        final List<String> headerSamples = header.getGenotypeSamples();
+        final List<String> keptSamples = new ArrayList<>(samples.size());
+        final int[] columns = new int[headerSamples.size()];
+        for ( int i = 0; i < headerSamples.size(); i++ ) {
+            if ( samples.contains(headerSamples.get(i)) ) {
+                columns[keptSamples.size()] = i;
+                keptSamples.add(headerSamples.get(i));
+            }
+        }
+
+        keptColumns = new int[keptSamples.size()];
+        System.arraycopy(columns, 0, keptColumns, 0, keptColumns.length);
+        nSamples = headerSamples.size();
+        keptKeys = formatKeys == null ? null : new HashSet<>(formatKeys);
+        subsetHeader = new VCFHeader(header.getMetaDataInInputOrder(), keptSamples);
+    }
+
+    /**
+     * @return the number of samples kept by this subsetter
+     */
+    public int getNSelectedSamples() {
+        return keptColumns.length;
+    }
+
+    /**
+     * Restrict the genotypes of vc to the selected samples and FORMAT keys
+     *
+     * @param vc a VariantContext read with the header given to this subsetter
+     * @return a VariantContext with the genotypes of only the selected samples, in the order of the header,
+     *         or vc itself if its genotypes can't be subset without decoding them all or if there is nothing to remove
+     */
+    public VariantContext subset(final VariantContext vc) {
+        final GenotypesContext genotypes = vc.getGenotypes();
+        if ( ! (genotypes instanceof LazyGenotypesContext) )
+            return vc;
+
+        // null once the genotypes have been decoded
+        final Object unparsed = ((LazyGenotypesContext)genotypes).getUnparsedGenotypeData();
+        if ( ! (unparsed instanceof String) )
+            return vc;
+
+        final String columns = selectColumns((String)unparsed);
+        if ( columns == null || columns == unparsed )
+            return vc;
+
+        final LazyGenotypesContext.LazyData data = codec.get().createGenotypeMap(columns, vc.getAlleles(), vc.getContig(), vc.getStart());
+        final LazyGenotypesContext subset = new LazyGenotypesContext(new LazyGenotypesContext.LazyParser() {
+            @Override
+            public LazyGenotypesContext.LazyData parse(final Object unparsedColumns) {
+                return data;
+            }
+        }, columns, keptColumns.length);
+
+        return new VariantContextBuilder(vc).genotypes(subset).make();
+    }
+
+    /**
+     * Cut the FORMAT column and the selected sample columns and FORMAT values out of the raw genotype block of a record
+     *
+     * @param unparsed the FORMAT and sample columns of a VCF line, separated by tabs
+     * @return the selected FORMAT keys followed by the selected sample columns, separated by tabs; unparsed itself
+     *         if nothing is to be removed; or null if unparsed doesn't have one column per sample in the header, in
+     *         which case decoding the whole block reports the error
+     */
+    protected String selectColumns(final String unparsed) {
+        final char separator = VCFConstants.FIELD_SEPARATOR_CHAR;
+
+        // start is always the position of the separator before the current column, or the end of unparsed
+        int start = unparsed.indexOf(separator);
+        if ( start < 0 )
+            return null;
+
+        final String format = unparsed.substring(0, start);
+        final int[] keys = selectFormatKeys(format);
+        if ( keys == null && keptColumns.length == nSamples )
+            return unparsed;
+
+        final StringBuilder builder = new StringBuilder(start + 16 * keptColumns.length);
+        if ( keys == null ) {
+            builder.append(format);
+        } else {
+            final List<String> formatKeys = ParsingUtils.split(format, VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+            for ( int i = 0; i < keys.length; i++ ) {
+                if ( i > 0 ) builder.append(VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+                builder.append(formatKeys.get(keys[i]));
+            }
+        }
+
+        int column = 0;
+        for ( final int keep : keptColumns ) {
+            for ( ; column < keep; column++ ) {
+                start = unparsed.indexOf(separator, start + 1);
+                if ( start < 0 )
+                    return null;
+            }
+            if ( start >= unparsed.length() )
+                return null;
+
+            int end = unparsed.indexOf(separator, start + 1);
+            if ( end < 0 )
+                end = unparsed.length();
+            if ( keys == null ) {
+                builder.append(unparsed, start, end);
+            } else {
+                builder.append(separator);
+                appendValues(builder, unparsed, start + 1, end, keys);
+            }
+            start = end;
+            column++;
+        }
+
+        // make sure there are no more and no fewer columns than samples
+        for ( ; column < nSamples; column++ ) {
+            if ( start >= unparsed.length() )
+                return null;
+            start = unparsed.indexOf(separator, start + 1);
+            if ( start < 0 )
+                start = unparsed.length();
+        }
+        if ( start != unparsed.length() )
+            return null;
+
+        return builder.toString();
+    }
+
+    /**
+     * Find the FORMAT keys of a record to keep
+     *
+     * @param format the FORMAT column of the record
+     * @return the indices of the keys to keep in increasing order, or null if all of them are kept
+     */
+    private int[] selectFormatKeys(final String format) {
+        if ( keptKeys == null )
+            return null;
+
+        final List<String> formatKeys = ParsingUtils.split(format, VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+
+        // GT has to come first, so leave the error to the codec if it doesn't
+        if ( formatKeys.indexOf(VCFConstants.GENOTYPE_KEY) > 0 )
+            return null;
+
+        final int[] keys = new int[formatKeys.size()];
+        int nKeys = 0;
+        for ( int i = 0; i < formatKeys.size(); i++ )
+            if ( keptKeys.contains(formatKeys.get(i)) )
+                keys[nKeys++] = i;
+
+        if ( nKeys == formatKeys.size() )
+            return null;
+
+        // a genotype needs at least one field, so keep the first one when none of the others are wanted
+        if ( nKeys == 0 )
+            return new int[]{0};
+
+        return Arrays.copyOf(keys, nKeys);
+    }
+
+    /**
+     * Append the values of the selected FORMAT keys in the sample column unparsed[from, to) to builder
+     *
+     * Values missing at the end of the column stay missing, and a column with none of the selected values left
+     * becomes the missing value, which decodes to the same genotype.
+     */
+    private static void appendValues(final StringBuilder builder, final String unparsed, final int from, final int to, final int[] keys) {
+        final char separator = VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR;
+
+        boolean first = true;
+        int value = 0;
+        int valueStart = from;
+        for ( final int key : keys ) {
+            for ( ; value < key; value++ ) {
+                final int next = unparsed.indexOf(separator, valueStart);
+                if ( next < 0 || next >= to ) {
+                    valueStart = -1;
+                    break;
+                }
+                valueStart = next + 1;
+            }
+            if ( valueStart < 0 )
+                break;
+
+            int valueEnd = unparsed.indexOf(separator, valueStart);
+            if ( valueEnd < 0 || valueEnd > to )
+                valueEnd = to;
+            if ( ! first ) builder.append(separator);
+            builder.append(unparsed, valueStart, valueEnd);
+            first = false;
+        }
+
+        if ( first )
+            builder.append(VCFConstants.MISSING_VALUE_v4);
+    }
+}
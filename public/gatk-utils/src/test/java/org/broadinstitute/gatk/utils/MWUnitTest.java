@@ -31,6 +31,7 @@ import org.testng.annotations.Test;
 import org.testng.Assert;
 
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Created by IntelliJ IDEA.
@@ -139,4 +140,40 @@ public class MWUnitTest extends BaseTest {
         System.out.println("1-side p: " + test.getP());
         Assert.assertEquals(test.getZ(), Z, DELTA_PRECISION, name);
     }
+
+    @Test
+    public void testExactPMatchesEnumeration() {
+        final Random random = new Random(3);
+        for ( int iter = 0; iter < 200; iter++ ) {
+            final double[] series1 = new double[1 + random.nextInt(8)];
+            final double[] series2 = new double[1 + random.nextInt(8)];
+            // every other case has (almost surely) no ties, so its distribution is cached and reused by later cases of the same sizes
+            final int range = iter % 2 == 0 ? Integer.MAX_VALUE : 1 + random.nextInt(6);
+            for ( int i = 0; i < series1.length; i++ ) series1[i] = random.nextInt(range);
+            for ( int i = 0; i < series2.length; i++ ) series2[i] = random.nextInt(range);
+
+            final MannWhitneyU.Result test = rst.test(series1.clone(), series2.clone(), MannWhitneyU.TestType.FIRST_DOMINATES);
+
+            // enumerate every way of assigning the group 1 tag to series1.length of the pooled values
+            final double[] pooled = new double[series1.length + series2.length];
+            System.arraycopy(series1, 0, pooled, 0, series1.length);
+            System.arraycopy(series2, 0, pooled, series1.length, series2.length);
+            double below = 0, total = 0;
+            for ( int mask = 0; mask < (1 << pooled.length); mask++ ) {
+                if ( Integer.bitCount(mask) != series1.length ) continue;
+                final double[] group1 = new double[series1.length];
+                final double[] group2 = new double[series2.length];
+                int n1 = 0, n2 = 0;
+                for ( int i = 0; i < pooled.length; i++ ) {
+                    if ( (mask & (1 << i)) != 0 ) group1[n1++] = pooled[i];
+                    else group2[n2++] = pooled[i];
+                }
+                final double u = rst.calculateU1andU2(group1, group2).getU1();
+                if ( u < test.getU() ) below += 1;
+                else if ( u == test.getU() ) below += 0.5;
+                total++;
+            }
+            Assert.assertEquals(test.getP(), below / total, 1e-12, Arrays.toString(series1) + " " + Arrays.toString(series2));
+        }
+    }
 }
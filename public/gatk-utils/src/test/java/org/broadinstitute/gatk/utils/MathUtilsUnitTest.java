@@ -416,6 +416,33 @@ public class MathUtilsUnitTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testApproximateLog10SumLog10Pairs() {
+        final Random random = new Random(13);
+        final int length = 1000;
+        final double[] values = new double[2 * length + 3];
+        for ( int i = 0; i < values.length; i++ )
+            values[i] = random.nextInt(20) == 0 ? Double.NEGATIVE_INFINITY : -random.nextDouble() * (random.nextBoolean() ? 1.0 : 20.0);
+
+        final double[] result = new double[length + 1];
+        MathUtils.approximateLog10SumLog10(values, 3, values, length + 3, result, 1, length);
+        Assert.assertEquals(result[0], 0.0);
+        for ( int i = 0; i < length; i++ )
+            Assert.assertEquals(result[i + 1], MathUtils.approximateLog10SumLog10(values[3 + i], values[length + 3 + i]), "pair " + i);
+
+        // the result may overwrite one of the inputs
+        final double[] expected = new double[length];
+        for ( int i = 0; i < length; i++ )
+            expected[i] = MathUtils.approximateLog10SumLog10(values[i], values[length + i]);
+        MathUtils.approximateLog10SumLog10(values, 0, values, length, values, 0, length);
+        Assert.assertEquals(Arrays.copyOf(values, length), expected);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testApproximateLog10SumLog10PairsOutOfBounds() {
+        MathUtils.approximateLog10SumLog10(new double[3], 1, new double[3], 0, new double[3], 0, 3);
+    }
+
     @Test
     public void testLog10sumLog10() {
         final double requiredPrecision = 1E-14;
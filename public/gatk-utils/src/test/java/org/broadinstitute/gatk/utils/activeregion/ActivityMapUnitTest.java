@@ -0,0 +1,162 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class ActivityMapUnitTest extends BaseTest {
+    private GenomeLocParser genomeLocParser;
+    private String contig1, contig2;
+
+    @BeforeClass
+    public void init() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 1000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+        contig1 = header.getSequence(0).getSequenceName();
+        contig2 = header.getSequence(1).getSequenceName();
+    }
+
+    private GenomeLoc loc(final String contig, final int start, final int stop) {
+        return genomeLocParser.createGenomeLoc(contig, start, stop);
+    }
+
+    private ActivityMap.Header makeHeader(final List<Integer> GQBands) {
+        return new ActivityMap.Header("sample", 2, GQBands, 10, 20, "/ref.fasta", Arrays.asList("/a.bam", "/b.bam"));
+    }
+
+    /**
+     * contig1: 1-10 in the GQ band [20,30), 11-15 in [30,inf), 16 candidate, 17-20 in [20,30)
+     * contig2: candidates at 5 and 100, with nothing in between
+     */
+    private ActivityMap makeMap() {
+        final ActivityMapBuilder builder = new ActivityMapBuilder(makeHeader(Arrays.asList(10, 20, 30)));
+        for ( int pos = 1; pos <= 10; pos++ )
+            builder.addReferenceSite(loc(contig1, pos, pos), 20 + pos % 5, 10 + pos, new int[]{0, 20 + pos, 200});
+        for ( int pos = 11; pos <= 15; pos++ )
+            builder.addReferenceSite(loc(contig1, pos, pos), 200, 40, new int[]{0, 200, 400});
+        builder.addCandidate(loc(contig1, 16, 16));
+        for ( int pos = 17; pos <= 20; pos++ )
+            builder.addReferenceSite(loc(contig1, pos, pos), 25, 5, new int[]{0, 25, 250});
+        builder.addCandidate(loc(contig2, 5, 5));
+        builder.addCandidate(loc(contig2, 100, 100));
+        return builder.finish();
+    }
+
+    private void assertBlock(final ActivityMap.ReferenceBlock block, final int start, final int stop, final int GQ, final int DP, final int minDP, final int[] PLs) {
+        Assert.assertEquals(block.getStart(), start);
+        Assert.assertEquals(block.getStop(), stop);
+        Assert.assertEquals(block.getGQ(), GQ);
+        Assert.assertEquals(block.getDP(), DP);
+        Assert.assertEquals(block.getMinDP(), minDP);
+        Assert.assertEquals(block.getPLs(), PLs);
+    }
+
+    private void assertExpectedMap(final ActivityMap map) {
+        Assert.assertEquals(map.getSampleName(), "sample");
+        Assert.assertEquals(map.getPloidy(), 2);
+        Assert.assertEquals(map.getHeader(), makeHeader(Arrays.asList(10, 20, 30)));
+        Assert.assertEquals(map.getHeader().getGQBands(), Arrays.asList(10, 20, 30));
+        Assert.assertEquals(map.getHeader().getMinBaseQuality(), 10);
+        Assert.assertEquals(map.getHeader().getMinMappingQuality(), 20);
+        Assert.assertEquals(map.getHeader().getReference(), "/ref.fasta");
+        Assert.assertEquals(map.getHeader().getReads(), Arrays.asList("/a.bam", "/b.bam"));
+
+        final List<ActivityMap.ReferenceBlock> blocks = map.getReferenceBlocks(loc(contig1, 1, 1000));
+        Assert.assertEquals(blocks.size(), 3);
+        assertBlock(blocks.get(0), 1, 10, 20, 16, 11, new int[]{0, 21, 200});
+        assertBlock(blocks.get(1), 11, 15, 99, 40, 40, new int[]{0, 200, 400});
+        assertBlock(blocks.get(2), 17, 20, 25, 5, 5, new int[]{0, 25, 250});
+
+        Assert.assertTrue(map.getReferenceBlocks(loc(contig2, 1, 1000)).isEmpty());
+    }
+
+    @Test
+    public void testBuilder() {
+        assertExpectedMap(makeMap());
+    }
+
+    @Test
+    public void testQueries() {
+        final ActivityMap map = makeMap();
+
+        Assert.assertTrue(map.isReference(loc(contig1, 1, 1)));
+        Assert.assertTrue(map.isReference(loc(contig1, 5, 15)));
+        Assert.assertTrue(map.isReference(loc(contig1, 17, 20)));
+        Assert.assertFalse(map.isReference(loc(contig1, 10, 17)));
+        Assert.assertFalse(map.isReference(loc(contig1, 16, 16)));
+        Assert.assertFalse(map.isReference(loc(contig1, 20, 21)));
+        Assert.assertFalse(map.isReference(loc(contig2, 5, 5)));
+        Assert.assertFalse(map.isReference(loc(contig2, 10, 20)));
+
+        final List<ActivityMap.ReferenceBlock> overlapping = map.getReferenceBlocks(loc(contig1, 10, 11));
+        Assert.assertEquals(overlapping.size(), 2);
+        Assert.assertEquals(overlapping.get(0).getStart(), 1);
+        Assert.assertEquals(overlapping.get(1).getStart(), 11);
+        Assert.assertTrue(map.getReferenceBlocks(loc(contig1, 16, 16)).isEmpty());
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final File file = createTempFile("activity", ".map");
+        makeMap().write(file);
+        assertExpectedMap(ActivityMap.read(file));
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testReadMalformed() throws IOException {
+        final File file = createTempFile("activity", ".map");
+        try ( final FileOutputStream out = new FileOutputStream(file) ) {
+            out.write(new byte[]{1, 2, 3, 4});
+        }
+        ActivityMap.read(file);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutOfOrderSites() {
+        final ActivityMapBuilder builder = new ActivityMapBuilder(makeHeader(Arrays.asList(10, 20)));
+        builder.addCandidate(loc(contig1, 10, 10));
+        builder.addReferenceSite(loc(contig1, 5, 5), 15, 10, new int[]{0, 15, 100});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadPartitions() {
+        new ActivityMapBuilder(makeHeader(Arrays.asList(20, 10)));
+    }
+}
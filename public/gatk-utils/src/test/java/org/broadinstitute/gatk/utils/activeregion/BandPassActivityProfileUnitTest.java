@@ -191,6 +191,67 @@ public class BandPassActivityProfileUnitTest extends BaseTest {
         }
     }
 
+    @DataProvider(name = "BandPassAddAll")
+    public Object[][] makeBandPassAddAll() {
+        final List<Object[]> tests = new LinkedList<Object[]>();
+
+        final int contigLength = genomeLocParser.getContigs().getSequences().get(0).getSequenceLength();
+        for ( final int start : Arrays.asList(1, 10, 1000, contigLength - 20) ) {
+            for ( final int bandPassSize : Arrays.asList(0, 1, 10, BandPassActivityProfile.MAX_FILTER_SIZE) ) {
+                for ( final int batchSize : Arrays.asList(1, 7, 100) ) {
+                    tests.add(new Object[]{ start, bandPassSize, batchSize });
+                }
+            }
+        }
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test( enabled = ! DEBUG, dataProvider = "BandPassAddAll")
+    public void testBandPassAddAll(final int start, final int bandPassSize, final int batchSize) {
+        final String contig = genomeLocParser.getContigs().getSequences().get(0).getSequenceName();
+        final int contigLength = genomeLocParser.getContigs().getSequences().get(0).getSequenceLength();
+        final int nLoci = Math.min(200, contigLength - start + 1);
+        final BandPassActivityProfile stateProfile = new BandPassActivityProfile(genomeLocParser, null, MAX_PROB_PROPAGATION_DISTANCE,
+                ACTIVE_PROB_THRESHOLD, bandPassSize, BandPassActivityProfile.DEFAULT_SIGMA, false);
+        final BandPassActivityProfile batchProfile = new BandPassActivityProfile(genomeLocParser, null, MAX_PROB_PROPAGATION_DISTANCE,
+                ACTIVE_PROB_THRESHOLD, bandPassSize, BandPassActivityProfile.DEFAULT_SIGMA, false);
+
+        final double[] rawProbs = new double[nLoci];
+        for ( int i = 0; i < nLoci; i++ )
+            rawProbs[i] = i % 3 == 0 ? 0.0 : (i % 10) / 10.0;
+
+        for ( int i = 0; i < nLoci; i++ )
+            stateProfile.add(new ActivityProfileState(genomeLocParser.createGenomeLoc(contig, start + i), rawProbs[i]));
+
+        for ( int batchStart = 0; batchStart < nLoci; batchStart += batchSize ) {
+            final int n = Math.min(batchSize, nLoci - batchStart);
+            batchProfile.addAll(genomeLocParser.createGenomeLoc(contig, start + batchStart), Arrays.copyOfRange(rawProbs, batchStart, batchStart + n), n);
+        }
+
+        // spreading each probability over the kernel in turn, dropping anything that falls off the profile or contig
+        final double[] kernel = stateProfile.getKernel();
+        final double[] expectedProbs = new double[Math.min(nLoci + bandPassSize, contigLength - start + 1)];
+        for ( int i = 0; i < nLoci; i++ ) {
+            if ( rawProbs[i] > 0.0 ) {
+                for ( int j = -bandPassSize; j <= bandPassSize; j++ ) {
+                    if ( i + j >= 0 && i + j < expectedProbs.length )
+                        expectedProbs[i + j] += rawProbs[i] * kernel[j + bandPassSize];
+                }
+            }
+        }
+
+        for ( final BandPassActivityProfile profile : Arrays.asList(stateProfile, batchProfile) ) {
+            Assert.assertEquals(profile.getSpan(), genomeLocParser.createGenomeLoc(contig, start, start + nLoci - 1));
+            final double[] probs = profile.getProbabilitiesAsArray();
+            Assert.assertTrue(probs.length <= expectedProbs.length, "Profile extends beyond the band pass or contig");
+            for ( int i = 0; i < probs.length; i++ ) {
+                Assert.assertEquals(probs[i], expectedProbs[i], "State probability not expected at " + i);
+                Assert.assertEquals(profile.getStateList().get(i).getLoc().getStart(), start + i, "State at wrong position");
+            }
+        }
+    }
+
     // ------------------------------------------------------------------------------------
     //
     // Code to test the creation of the kernels
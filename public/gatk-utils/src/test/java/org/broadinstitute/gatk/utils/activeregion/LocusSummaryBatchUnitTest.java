@@ -0,0 +1,189 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
+import org.broadinstitute.gatk.utils.pileup.ReadBackedPileupImpl;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMReadGroupRecord;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+public class LocusSummaryBatchUnitTest extends BaseTest {
+    private SAMFileHeader header;
+    private GenomeLocParser genomeLocParser;
+    private String contig;
+
+    @BeforeClass
+    public void init() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 1000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+        contig = header.getSequence(0).getSequenceName();
+    }
+
+    private ReadBackedPileup makePileup(final GenomeLoc loc, final byte[] bases, final byte[] quals, final int[] mapQs) {
+        final List<GATKSAMRecord> reads = new ArrayList<>(bases.length);
+        for ( int i = 0; i < bases.length; i++ ) {
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + i, loc.getContigIndex(), loc.getStart(), new byte[]{bases[i]}, new byte[]{quals[i]}, "1M");
+            read.setMappingQuality(mapQs[i]);
+            reads.add(read);
+        }
+        return new ReadBackedPileupImpl(loc, reads, new ArrayList<>(Collections.nCopies(bases.length, 0)));
+    }
+
+    @DataProvider(name = "Thresholds")
+    public Object[][] makeThresholds() {
+        final List<Object[]> tests = new LinkedList<>();
+        for ( final int minBaseQuality : new int[]{-1, 0, 20, 30} )
+            for ( final int minMappingQuality : new int[]{-1, 0, 20, 60} )
+                tests.add(new Object[]{minBaseQuality, minMappingQuality});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "Thresholds")
+    public void testSummaries(final int minBaseQuality, final int minMappingQuality) {
+        final byte[] bases = {'A', 'A', 'C', 'G', 'A', 'T'};
+        final byte[] quals = {10, 30, 30, 20, 40, 5};
+        final int[] mapQs = {60, 0, 60, 20, 60, 60};
+        final LocusSummaryBatch batch = new LocusSummaryBatch(10, minBaseQuality, minMappingQuality);
+
+        final GenomeLoc loc = genomeLocParser.createGenomeLoc(contig, 10, 10);
+        final ReadBackedPileup pileup = makePileup(loc, bases, quals, mapQs);
+        batch.add(loc, (byte)'A', pileup);
+
+        int expectedMismatches = 0;
+        for ( int i = 0; i < bases.length; i++ )
+            if ( bases[i] != 'A' && quals[i] >= minBaseQuality && mapQs[i] >= minMappingQuality )
+                expectedMismatches++;
+
+        Assert.assertEquals(batch.size(), 1);
+        Assert.assertEquals(batch.getFirstLoc(), loc);
+        Assert.assertEquals(batch.getDepths()[0], bases.length);
+        Assert.assertEquals(batch.getQualifyingDepths()[0], pileup.getBaseAndMappingFilteredPileup(minBaseQuality, minMappingQuality).depthOfCoverage());
+        Assert.assertEquals(batch.getQualifyingMismatches()[0], expectedMismatches);
+        Assert.assertEquals(batch.getQualifyingDeletions()[0], 0);
+        Assert.assertEquals(batch.getRefBases()[0], (byte)'A');
+    }
+
+    @Test
+    public void testContiguity() {
+        final LocusSummaryBatch batch = new LocusSummaryBatch(3, 0, 0);
+        final ReadBackedPileup empty = new ReadBackedPileupImpl(null, new ArrayList<GATKSAMRecord>(), new ArrayList<Integer>());
+
+        Assert.assertTrue(batch.isEmpty());
+        Assert.assertTrue(batch.canAdd(genomeLocParser.createGenomeLoc(contig, 100, 100)));
+        for ( int pos = 100; pos < 103; pos++ ) {
+            final GenomeLoc loc = genomeLocParser.createGenomeLoc(contig, pos, pos);
+            Assert.assertTrue(batch.canAdd(loc));
+            batch.add(loc, (byte)'A', empty);
+            if ( ! batch.isFull() ) {
+                Assert.assertFalse(batch.canAdd(genomeLocParser.createGenomeLoc(contig, pos + 2, pos + 2)), "Gaps shouldn't be allowed");
+                Assert.assertFalse(batch.canAdd(genomeLocParser.createGenomeLoc(header.getSequence(1).getSequenceName(), pos + 1, pos + 1)), "Contig changes shouldn't be allowed");
+            }
+        }
+
+        Assert.assertTrue(batch.isFull());
+        Assert.assertEquals(batch.size(), 3);
+        Assert.assertFalse(batch.canAdd(genomeLocParser.createGenomeLoc(contig, 103, 103)), "Full batch shouldn't accept more loci");
+
+        batch.clear();
+        Assert.assertTrue(batch.isEmpty());
+        Assert.assertNull(batch.getFirstLoc());
+        Assert.assertTrue(batch.canAdd(genomeLocParser.createGenomeLoc(contig, 500, 500)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonContiguousAddFails() {
+        final LocusSummaryBatch batch = new LocusSummaryBatch(3, 0, 0);
+        final ReadBackedPileup empty = new ReadBackedPileupImpl(null, new ArrayList<GATKSAMRecord>(), new ArrayList<Integer>());
+        batch.add(genomeLocParser.createGenomeLoc(contig, 100, 100), (byte)'A', empty);
+        batch.add(genomeLocParser.createGenomeLoc(contig, 102, 102), (byte)'A', empty);
+    }
+
+    @Test
+    public void testRecordedElements() {
+        final SAMFileHeader rgHeader = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 1000);
+        ArtificialSAMUtils.createEnumeratedReadGroups(rgHeader, Arrays.asList("rgA", "rgB"), Arrays.asList("sampleA", "sampleB"));
+        final LocusSummaryBatch batch = new LocusSummaryBatch(3, 0, 0, true, (byte)28);
+
+        final GenomeLoc first = genomeLocParser.createGenomeLoc(contig, 10, 10);
+        final byte[] bases = {'A', 'C', 'G'};
+        final byte[] quals = {10, 30, 40};
+        final String[] readGroups = {"rgB", "rgA", "rgB"};
+        final List<GATKSAMRecord> reads = new ArrayList<>();
+        for ( int i = 0; i < bases.length; i++ ) {
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(rgHeader, "read" + i, first.getContigIndex(), first.getStart(), new byte[]{bases[i]}, new byte[]{quals[i]}, "1M");
+            read.setReadGroup(new GATKSAMReadGroupRecord(rgHeader.getReadGroup(readGroups[i])));
+            reads.add(read);
+        }
+        final ReadBackedPileup pileup = new ReadBackedPileupImpl(first, reads, new ArrayList<>(Collections.nCopies(bases.length, 0)));
+        final ReadBackedPileup empty = new ReadBackedPileupImpl(null, new ArrayList<GATKSAMRecord>(), new ArrayList<Integer>());
+        batch.add(first, (byte)'A', pileup);
+        batch.add(genomeLocParser.createGenomeLoc(contig, 11, 11), (byte)'A', empty);
+
+        // one group per sample with elements, in the order of the pileup's samples, and none at the empty locus
+        Assert.assertEquals(batch.getLocusGroupStarts()[0], 0);
+        Assert.assertEquals(batch.getLocusGroupStarts()[1], 2);
+        Assert.assertEquals(batch.getLocusGroupStarts()[2], 2);
+        int element = 0;
+        for ( int group = 0; group < 2; group++ ) {
+            final String sample = batch.getSampleNames().get(batch.getGroupSamples()[group]);
+            final ReadBackedPileup samplePileup = pileup.getPileupForSample(sample);
+            Assert.assertEquals(sample, new ArrayList<>(pileup.getSamples()).get(group));
+            Assert.assertEquals(batch.getGroupElementStarts()[group], element);
+            for ( final byte base : samplePileup.getBases() ) {
+                Assert.assertEquals(batch.getElementBases()[element], base);
+                Assert.assertEquals(batch.getElementFlags()[element], 0);
+                element++;
+            }
+        }
+        Assert.assertEquals(batch.getGroupElementStarts()[2], bases.length);
+        Assert.assertTrue(Double.isNaN(batch.getHighQualitySoftClips()[0]));
+
+        batch.markHighQualitySoftClips(1, 10.0);
+        Assert.assertEquals(batch.getHighQualitySoftClips()[1], 10.0);
+        batch.clear();
+        Assert.assertTrue(Double.isNaN(batch.getHighQualitySoftClips()[1]));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testElementsNotRecorded() {
+        new LocusSummaryBatch(3, 0, 0).getElementBases();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.metrics;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.report.GATKReport;
+import org.broadinstitute.gatk.utils.report.GATKReportTable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class MetricsRegistryUnitTest extends BaseTest {
+    @BeforeMethod
+    public void setup() {
+        MetricsRegistry.reset();
+        MetricsRegistry.enable();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        MetricsRegistry.disable();
+        MetricsRegistry.reset();
+    }
+
+    @Test
+    public void testRegistrationReturnsSameInstance() {
+        Assert.assertSame(MetricsRegistry.counter("unit.counter"), MetricsRegistry.counter("unit.counter"));
+        Assert.assertSame(MetricsRegistry.timer("unit.timer"), MetricsRegistry.timer("unit.timer"));
+        Assert.assertSame(MetricsRegistry.histogram("unit.histogram"), MetricsRegistry.histogram("unit.histogram"));
+    }
+
+    @Test
+    public void testCounter() {
+        final Counter counter = MetricsRegistry.counter("unit.counter");
+        counter.increment();
+        counter.add(10);
+        Assert.assertEquals(counter.getCount(), 11);
+
+        MetricsRegistry.disable();
+        counter.increment();
+        Assert.assertEquals(counter.getCount(), 11, "Disabled counter should not record events");
+    }
+
+    @Test
+    public void testTimer() {
+        final Timer timer = MetricsRegistry.timer("unit.timer");
+        timer.record(10);
+        timer.record(30);
+        final long start = timer.start();
+        timer.stop(start);
+
+        Assert.assertEquals(timer.getCount(), 3);
+        Assert.assertTrue(timer.getTotalNanos() >= 40);
+        Assert.assertTrue(timer.getMaxNanos() >= 30);
+
+        MetricsRegistry.disable();
+        final long disabledStart = timer.start();
+        timer.stop(disabledStart);
+        Assert.assertEquals(timer.getCount(), 3, "Disabled timer should not record events");
+    }
+
+    @DataProvider(name = "HistogramBins")
+    public Object[][] makeHistogramBins() {
+        return new Object[][]{
+                {0L, 0},
+                {1L, 1},
+                {2L, 2},
+                {3L, 2},
+                {4L, 3},
+                {1023L, 10},
+                {1024L, 11},
+                {Long.MAX_VALUE, Histogram.N_BINS - 1}
+        };
+    }
+
+    @Test(dataProvider = "HistogramBins")
+    public void testHistogramBins(final long value, final int expectedBin) {
+        Assert.assertEquals(Histogram.binFor(value), expectedBin);
+        Assert.assertTrue(Histogram.binStart(expectedBin) <= value);
+        if ( expectedBin + 1 < Histogram.N_BINS )
+            Assert.assertTrue(Histogram.binStart(expectedBin + 1) > value);
+    }
+
+    @Test
+    public void testHistogram() {
+        final Histogram histogram = MetricsRegistry.histogram("unit.histogram");
+        histogram.record(0);
+        histogram.record(5);
+        histogram.record(6);
+        Assert.assertEquals(histogram.getTotalCount(), 3);
+        Assert.assertEquals(histogram.getCount(0), 1);
+        Assert.assertEquals(histogram.getCount(Histogram.binFor(5)), 2);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        final Counter counter = MetricsRegistry.counter("unit.concurrent");
+        final int nThreads = 4;
+        final int nIncrements = 10000;
+        final Thread[] threads = new Thread[nThreads];
+        for ( int i = 0; i < nThreads; i++ ) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for ( int j = 0; j < nIncrements; j++ )
+                        counter.increment();
+                }
+            });
+            threads[i].start();
+        }
+        for ( final Thread thread : threads )
+            thread.join();
+
+        Assert.assertEquals(counter.getCount(), nThreads * nIncrements);
+    }
+
+    @Test
+    public void testReport() throws IOException {
+        MetricsRegistry.counter("unit.report.counter").add(5);
+        MetricsRegistry.timer("unit.report.timer").record(2000);
+        MetricsRegistry.histogram("unit.report.histogram").record(3);
+
+        final File file = createTempFile("metrics", ".grp");
+        MetricsRegistry.writeReport(file);
+
+        final GATKReport report = new GATKReport(file);
+        final GATKReportTable counters = report.getTable(MetricsRegistry.COUNTERS_TABLE_NAME);
+        Assert.assertEquals(counters.getNumRows(), 1);
+        Assert.assertEquals(counters.get(0, "Name"), "unit.report.counter");
+        Assert.assertEquals(Long.valueOf(counters.get(0, "Count").toString()).longValue(), 5L);
+
+        final GATKReportTable timers = report.getTable(MetricsRegistry.TIMERS_TABLE_NAME);
+        Assert.assertEquals(timers.getNumRows(), 1);
+        Assert.assertEquals(timers.get(0, "Name"), "unit.report.timer");
+
+        final GATKReportTable histograms = report.getTable(MetricsRegistry.HISTOGRAMS_TABLE_NAME);
+        Assert.assertEquals(histograms.getNumRows(), 1);
+        Assert.assertEquals(Long.valueOf(histograms.get(0, "BinStart").toString()).longValue(), 2L);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.metrics;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.report.GATKReport;
+import org.broadinstitute.gatk.utils.report.GATKReportTable;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+public class SamplingProfilerUnitTest extends BaseTest {
+    private final static long NEVER_SAMPLE = 60 * 60 * 1000;
+
+    private GenomeLocParser genomeLocParser;
+    private String contig;
+
+    @BeforeClass
+    public void init() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+        contig = genomeLocParser.getContigs().getSequence(0).getSequenceName();
+    }
+
+    @Test
+    public void testCollapseStack() {
+        final StackTraceElement[] stack = new StackTraceElement[]{
+                new StackTraceElement("a.Leaf", "compute", "Leaf.java", 10),
+                new StackTraceElement("a.Middle", "call", "Middle.java", 20),
+                new StackTraceElement("a.Root", "main", "Root.java", 30)
+        };
+        Assert.assertEquals(SamplingProfiler.collapseStack("map", stack), "map;a.Root.main;a.Middle.call;a.Leaf.compute");
+        Assert.assertEquals(SamplingProfiler.collapseStack("map", new StackTraceElement[0]), "map");
+    }
+
+    @Test
+    public void testSlowestIntervalsReport() {
+        final File stacks = createTempFile("profile", ".stacks");
+        final SamplingProfiler profiler = new SamplingProfiler(stacks, null, 10, 2);
+        final StackTraceElement[] stack = new Thread().getStackTrace();
+        final GenomeLoc slow = genomeLocParser.createGenomeLoc(contig, 100, 200);
+        final GenomeLoc medium = genomeLocParser.createGenomeLoc(contig, 300, 400);
+        final GenomeLoc fast = genomeLocParser.createGenomeLoc(contig, 500, 600);
+
+        for ( int i = 0; i < 5; i++ ) profiler.addSample("map", slow, stack);
+        for ( int i = 0; i < 3; i++ ) profiler.addSample("map", medium, stack);
+        profiler.addSample("map", fast, stack);
+        Assert.assertEquals(profiler.getNumSamples(), 9);
+
+        final GATKReportTable table = profiler.getSlowestIntervalsReport().getTable(SamplingProfiler.SLOWEST_INTERVALS_TABLE_NAME);
+        Assert.assertEquals(table.getNumRows(), 2, "Only maxIntervalsToReport intervals should be reported");
+        Assert.assertEquals(table.get(0, "Interval"), slow.toString());
+        Assert.assertEquals(Long.valueOf(table.get(0, "Samples").toString()).longValue(), 5L);
+        Assert.assertEquals(table.get(1, "Interval"), medium.toString());
+        Assert.assertEquals(Long.valueOf(table.get(1, "Samples").toString()).longValue(), 3L);
+    }
+
+    @Test
+    public void testPhasesAreIgnoredWhenNotProfiling() {
+        Assert.assertFalse(SamplingProfiler.isProfiling());
+        // must be a no-op, even with a bad phase, when no profiler is running
+        SamplingProfiler.enterPhase(null, null);
+        SamplingProfiler.exitPhase();
+    }
+
+    @Test
+    public void testNestedPhases() throws IOException {
+        final File stacks = createTempFile("profile", ".stacks");
+        final File intervals = createTempFile("profile", ".grp");
+        final SamplingProfiler profiler = new SamplingProfiler(stacks, intervals, NEVER_SAMPLE, 10);
+        final GenomeLoc window = genomeLocParser.createGenomeLoc(contig, 1, 1000);
+        final GenomeLoc region = genomeLocParser.createGenomeLoc(contig, 10, 20);
+
+        profiler.start();
+        try {
+            Assert.assertTrue(SamplingProfiler.isProfiling());
+            profiler.sampleAllThreads();
+            Assert.assertEquals(profiler.getNumSamples(), 0, "Threads outside of any phase should not be sampled");
+
+            SamplingProfiler.enterPhase("traverse", window);
+            SamplingProfiler.enterPhase("map", region);
+            profiler.sampleAllThreads();
+            SamplingProfiler.exitPhase();
+            profiler.sampleAllThreads();
+            SamplingProfiler.exitPhase();
+            profiler.sampleAllThreads();
+        } finally {
+            profiler.done();
+        }
+
+        Assert.assertFalse(SamplingProfiler.isProfiling());
+        Assert.assertEquals(profiler.getNumSamples(), 2);
+
+        final List<String> lines = Files.readAllLines(stacks.toPath());
+        Assert.assertEquals(lines.size(), 2);
+        Assert.assertTrue(lines.get(0).startsWith("map;"), lines.get(0));
+        Assert.assertTrue(lines.get(1).startsWith("traverse;"), lines.get(1));
+        for ( final String line : lines ) {
+            Assert.assertTrue(line.contains(SamplingProfilerUnitTest.class.getName() + ".testNestedPhases"), line);
+            Assert.assertTrue(line.endsWith(" 1"), line);
+        }
+
+        final GATKReportTable table = new GATKReport(intervals).getTable(SamplingProfiler.SLOWEST_INTERVALS_TABLE_NAME);
+        Assert.assertEquals(table.getNumRows(), 2);
+    }
+}
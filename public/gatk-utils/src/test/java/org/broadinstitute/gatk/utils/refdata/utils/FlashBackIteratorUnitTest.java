@@ -213,6 +213,11 @@ class FakeSeekableRODIterator implements LocationAwareSeekableRODIterator {
         return location;
     }
 
+    @Override
+    public GATKFeature peekNextRecord() {
+        return hasNext() ? new FakeRODatum("STUPIDNAME", location) : null;
+    }
+
     @Override
     public RODRecordList seekForward(GenomeLoc interval) {
         this.location = interval;
@@ -0,0 +1,125 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils.threading;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link ChunkedForkJoinExecutor}.
+ */
+public class ChunkedForkJoinExecutorUnitTest extends BaseTest {
+
+    @DataProvider(name = "ChunkData")
+    public Object[][] chunkData() {
+        final List<Object[]> result = new ArrayList<>();
+        for (final int threads : Arrays.asList(1, 2, 3, 8))
+            for (final int chunkCount : Arrays.asList(1, 2, 3, 10))
+                for (final int size : Arrays.asList(0, 1, 9, 10, 11, 20, 21, 1000, 3001))
+                    result.add(new Object[]{threads, chunkCount, size});
+        return result.toArray(new Object[result.size()][]);
+    }
+
+    @Test(dataProvider = "ChunkData")
+    public void testMap(final int threads, final int chunkCount, final int size) {
+        final List<int[]> chunks = new ChunkedForkJoinExecutor(threads).map(size, chunkCount, new ChunkedForkJoinExecutor.ChunkFunction<int[]>() {
+            @Override
+            public int[] apply(final int chunk, final int from, final int to) {
+                return new int[]{chunk, from, to};
+            }
+        });
+
+        // chunks come back in order, cover all items without overlapping, and differ in size by at most one
+        Assert.assertEquals(chunks.size(), chunkCount);
+        int next = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            final int[] chunk = chunks.get(i);
+            Assert.assertEquals(chunk[0], i);
+            Assert.assertEquals(chunk[1], next);
+            Assert.assertTrue(chunk[2] - chunk[1] == size / chunkCount || chunk[2] - chunk[1] == size / chunkCount + 1);
+            next = chunk[2];
+        }
+        Assert.assertEquals(next, size);
+    }
+
+    @DataProvider(name = "MaxChunkSizeData")
+    public Object[][] maxChunkSizeData() {
+        return new Object[][]{
+                {0, 10, 1},
+                {1, 10, 1},
+                {10, 10, 1},
+                {11, 10, 2},
+                {20, 10, 2},
+                {21, 10, 3},
+                {21, 1, 21},
+                {Integer.MAX_VALUE, Integer.MAX_VALUE, 1},
+        };
+    }
+
+    @Test(dataProvider = "MaxChunkSizeData")
+    public void testChunkCountForMaxChunkSize(final int size, final int maxChunkSize, final int expected) {
+        Assert.assertEquals(ChunkedForkJoinExecutor.chunkCountForMaxChunkSize(size, maxChunkSize), expected);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testChunkFailure() {
+        new ChunkedForkJoinExecutor(2).map(10, 2, new ChunkedForkJoinExecutor.ChunkFunction<Object>() {
+            @Override
+            public Object apply(final int chunk, final int from, final int to) {
+                if (from > 0)
+                    throw new IllegalStateException("failed chunk");
+                return null;
+            }
+        });
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadThreads() {
+        new ChunkedForkJoinExecutor(0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadChunkCount() {
+        ChunkedForkJoinExecutor.SERIAL.map(10, 0, new ChunkedForkJoinExecutor.ChunkFunction<Object>() {
+            @Override
+            public Object apply(final int chunk, final int from, final int to) {
+                return null;
+            }
+        });
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadMaxChunkSize() {
+        ChunkedForkJoinExecutor.chunkCountForMaxChunkSize(10, 0);
+    }
+}
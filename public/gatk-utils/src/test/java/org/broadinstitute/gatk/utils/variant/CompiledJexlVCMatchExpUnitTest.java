@@ -0,0 +1,126 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.variant.variantcontext.*;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class CompiledJexlVCMatchExpUnitTest extends BaseTest {
+
+    private static CompiledJexlVCMatchExp compile(final String expression) {
+        return new CompiledJexlVCMatchExp(VariantContextUtils.initializeMatchExps(new String[]{"test"}, new String[]{expression}).get(0));
+    }
+
+    @DataProvider(name = "Compilable")
+    public Object[][] makeCompilable() {
+        return new Object[][]{
+                {"QD < 2.0", true},
+                {"QD < 2.0 || FS > 60.0 || MQ < 40.0", true},
+                {"!(DP <= 10) && (AF != '0.5')", true},
+                {"-1 < QUAL && POS >= 100", true},
+                {"TYPE == 'SNP' && FILTER == '0'", true},
+                {"vc.isSNP()", false},
+                {"AC > AN", false},
+                {"QD + 1 < 2.0", false},
+                {"ALLELES == 'A'", false},
+                {"QUAL == 'high'", false},
+                {"QD < 2.0; FS > 60.0", false},
+        };
+    }
+
+    @Test(dataProvider = "Compilable")
+    public void testIsCompiled(final String expression, final boolean expected) {
+        Assert.assertEquals(compile(expression).isCompiled(), expected, expression);
+    }
+
+    /**
+     * Compares the compiled expressions with JEXL over many combinations of expressions and values,
+     * including undefined variables and values the compiled form has to hand back to JEXL
+     */
+    @Test
+    public void testMatchesJexl() {
+        final String[] operators = {"<", "<=", ">", ">=", "==", "!="};
+        final String[] literals = {"2", "2.0", "2.5", "-1", "0.1", "3000000000", "2.0d", "'2.5'", "'b'", "''"};
+        final String[] variables = {"X", "Y", "Missing", "LowQual", "QUAL", "POS", "N_ALLELES", "CHROM", "TYPE", "FILTER", "hetCount"};
+        final Object[] values = {"2.5", "2", "-1", "0.1", " 2.5 ", "", ".", "NaN", "abc", "2.5e0", 2, 2.5, 2.5f, 3000000000L,
+                Arrays.asList("1", "2"), Boolean.TRUE, (short)2, null};
+
+        final List<String> comparisons = new ArrayList<>();
+        for ( final String variable : variables )
+            for ( final String operator : operators )
+                for ( final String literal : literals ) {
+                    comparisons.add(variable + " " + operator + " " + literal);
+                    comparisons.add(literal + " " + operator + " " + variable);
+                }
+
+        final List<String> expressions = new ArrayList<>(comparisons);
+        final Random random = new Random(42);
+        for ( int i = 0; i < 300; i++ ) {
+            final String a = comparisons.get(random.nextInt(comparisons.size()));
+            final String b = comparisons.get(random.nextInt(comparisons.size()));
+            final String c = comparisons.get(random.nextInt(comparisons.size()));
+            expressions.add(a + " || " + b);
+            expressions.add(a + " && !(" + b + " || " + c + ")");
+        }
+
+        final List<VariantContext> vcs = new ArrayList<>();
+        final List<Allele> alleles = Arrays.asList(Allele.create("A", true), Allele.create("C"));
+        for ( final Object x : values ) {
+            final Object y = values[random.nextInt(values.length)];
+            final VariantContextBuilder builder = new VariantContextBuilder("test", "20", 100, 100, alleles).log10PError(-2.5);
+            if ( x != null ) builder.attribute("X", x);
+            if ( y != null ) builder.attribute("Y", y);
+            builder.filters(random.nextBoolean() ? Collections.singleton("LowQual") : Collections.<String>emptySet());
+            vcs.add(builder.make());
+        }
+
+        int nCompiled = 0;
+        for ( final String expression : expressions ) {
+            final CompiledJexlVCMatchExp exp = compile(expression);
+            if ( exp.isCompiled() ) nCompiled++;
+            for ( final VariantContext vc : vcs ) {
+                final String expected = evaluate(exp, vc, false);
+                final String actual = evaluate(exp, vc, true);
+                Assert.assertEquals(actual, expected, "Mismatch for " + expression + " at " + vc.getAttributes() + " " + vc.getFilters());
+            }
+        }
+        Assert.assertTrue(nCompiled > expressions.size() / 2, "Too few expressions were compiled");
+    }
+
+    private static String evaluate(final CompiledJexlVCMatchExp exp, final VariantContext vc, final boolean compiled) {
+        try {
+            return String.valueOf(compiled ? exp.match(vc) : VariantContextUtils.match(vc, exp));
+        } catch ( Exception e ) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.vcf.VCFConstants;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.MathUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RemappedPLGenotypeUnitTest extends BaseTest {
+
+    /**
+     * The diploid genotype index map of nAlleles alleles all mapped to allele mappedTo of the original alleles, except
+     * the reference which stays the reference
+     */
+    private static int[] makeGenotypeIndexMap(final int nAlleles, final int mappedTo) {
+        final int[] map = new int[GenotypeLikelihoods.numLikelihoods(nAlleles, 2)];
+        for ( int i = 0; i < map.length; i++ ) {
+            final GenotypeLikelihoods.GenotypeLikelihoodsAllelePair pair = GenotypeLikelihoods.getAllelePair(i);
+            map[i] = GenotypeLikelihoods.calculatePLindex(pair.alleleIndex1 == 0 ? 0 : mappedTo, pair.alleleIndex2 == 0 ? 0 : mappedTo);
+        }
+        return map;
+    }
+
+    private static Genotype makeGenotype(final String sample) {
+        return new GenotypeBuilder(sample, Arrays.asList(Allele.NO_CALL, Allele.NO_CALL)).DP(10).AD(new int[]{7, 3}).make();
+    }
+
+    @DataProvider(name = "RemappedPLData")
+    public Object[][] makeRemappedPLData() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final int nAlleles : new int[]{2, 3, 7, 20} ) {
+            tests.add(new Object[]{nAlleles, new int[]{0, 30, 300}});
+            tests.add(new Object[]{nAlleles, new int[]{40, 0, 20}});
+            tests.add(new Object[]{nAlleles, new int[]{50, 20, 0}});
+            tests.add(new Object[]{nAlleles, new int[]{0, 0, 0}});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "RemappedPLData")
+    public void testRemappedPLs(final int nAlleles, final int[] originalPLs) {
+        final int[] map = makeGenotypeIndexMap(nAlleles, 1);
+        final RemappedPLGenotype g = new RemappedPLGenotype(makeGenotype("s"), originalPLs, map);
+
+        Assert.assertEquals(g.getPLCount(), map.length);
+        for ( int i = 0; i < map.length; i++ )
+            Assert.assertEquals(g.getPL(i), originalPLs[map[i]]);
+
+        // these are computed without building the PLs ...
+        final int best = g.getBestPLIndex();
+        final double sum = g.getGLSum();
+
+        // ... and must match what's computed from them
+        final int[] PLs = g.getPL();
+        Assert.assertEquals(PLs.length, map.length);
+        Assert.assertSame(g.getPL(), PLs);
+        for ( int i = 0; i < map.length; i++ )
+            Assert.assertEquals(PLs[i], originalPLs[map[i]]);
+        final double[] GLs = g.getLikelihoods().getAsVector();
+        Assert.assertEquals(best, MathUtils.maxElementIndex(GLs));
+        Assert.assertEquals(sum, MathUtils.sum(GLs));
+
+        Assert.assertTrue(g.hasPL());
+        Assert.assertEquals(g.getSampleName(), "s");
+        Assert.assertEquals(g.getDP(), 10);
+        Assert.assertEquals(g.getAD(), new int[]{7, 3});
+        Assert.assertFalse(g.getGenotypeWithoutPLs().hasPL());
+    }
+
+    @Test(dataProvider = "RemappedPLData")
+    public void testSubsetMatchesDensePLs(final int nAlleles, final int[] originalPLs) {
+        if ( nAlleles < 3 )
+            return;
+
+        final List<Allele> alleles = new ArrayList<>(nAlleles);
+        alleles.add(Allele.create("A", true));
+        for ( int i = 1; i < nAlleles; i++ )
+            alleles.add(Allele.create(new String(new char[i]).replace('\0', 'C')));
+        final int[] map = makeGenotypeIndexMap(nAlleles, 1);
+
+        final Genotype remapped = new RemappedPLGenotype(makeGenotype("s"), originalPLs, map);
+        final Genotype dense = new GenotypeBuilder(makeGenotype("s")).PL(remapped.getPL().clone()).make();
+        final Genotype lazy = new RemappedPLGenotype(makeGenotype("s"), originalPLs, map);
+
+        final List<Allele> subset = Arrays.asList(alleles.get(0), alleles.get(nAlleles - 2), alleles.get(nAlleles - 1));
+        final VariantContextBuilder vcb = new VariantContextBuilder("test", "1", 1, 1, alleles).attribute(VCFConstants.DEPTH_KEY, 10);
+        final Genotype fromDense = GATKVariantContextUtils.subsetDiploidAlleles(vcb.genotypes(dense).make(), subset,
+                GATKVariantContextUtils.GenotypeAssignmentMethod.SET_TO_NO_CALL).get(0);
+        final Genotype fromLazy = GATKVariantContextUtils.subsetDiploidAlleles(vcb.genotypes(lazy).make(), subset,
+                GATKVariantContextUtils.GenotypeAssignmentMethod.SET_TO_NO_CALL).get(0);
+
+        Assert.assertEquals(fromLazy.toString(), fromDense.toString());
+        Assert.assertFalse(fromLazy instanceof RemappedPLGenotype);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBaseWithPLs() {
+        new RemappedPLGenotype(new GenotypeBuilder(makeGenotype("s")).PL(new int[]{0, 1, 2}).make(), new int[]{0, 1, 2}, new int[]{0, 1, 2});
+    }
+}
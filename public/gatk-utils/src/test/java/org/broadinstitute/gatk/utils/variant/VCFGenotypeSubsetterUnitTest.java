@@ -0,0 +1,199 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.*;
+
+public class VCFGenotypeSubsetterUnitTest extends BaseTest {
+
+    private static final String HEADER =
+            "##fileformat=VCFv4.2\n" +
+            "##FILTER=<ID=LowGQ,Description=\"Low GQ\">\n" +
+            "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n" +
+            "##FORMAT=<ID=AD,Number=R,Type=Integer,Description=\"Allelic depths\">\n" +
+            "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n" +
+            "##FORMAT=<ID=FT,Number=1,Type=String,Description=\"Genotype filter\">\n" +
+            "##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype quality\">\n" +
+            "##FORMAT=<ID=PL,Number=G,Type=Integer,Description=\"Phred-scaled likelihoods\">\n" +
+            "##FORMAT=<ID=XX,Number=1,Type=String,Description=\"Other\">\n" +
+            "##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">\n" +
+            "##contig=<ID=1,length=1000000>\n" +
+            "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2\tS3\tS4\tS5\n";
+
+    private static final String[] RECORDS = {
+            "1\t100\trs1\tA\tC\t50\tPASS\tAC=3\tGT:AD:DP:GQ:PL\t0/1:5,5:10:99:100,0,100\t1/1:0,8:8:24:240,24,0\t0/0:9,0:9:27:0,27,270\t./.:.:.:.:.\t0|1:3,4:7:50:80,0,50",
+            "1\t200\t.\tAT\tA,ATT\t.\t.\t.\tGT:AD:DP:FT:GQ:PL:XX\t0/1:4,4,0:8:PASS:40:40,0,40,50,60,70\t1/2:0,3,3:6:LowGQ:5:90,30,30,30,0,30\t2/2:0,0,9:9:PASS:27:270,270,270,27,27,0:abc\t0/0:10,0,0:10:PASS:30:0,30,300,30,300,300\t./.",
+            "1\t300\t.\tG\tT\t10\tLowGQ\tAC=1\tGT\t0\t1\t.\t0/1\t1/1/1",
+    };
+
+    private static VCFCodec codec;
+    private static VCFHeader header;
+
+    private static synchronized VariantContext decode(final int record) {
+        if ( codec == null ) {
+            codec = new VCFCodec();
+            final LineIterator lines = codec.makeSourceFromStream(new PositionalBufferedStream(new ByteArrayInputStream(HEADER.getBytes())));
+            header = (VCFHeader)codec.readActualHeader(lines);
+        }
+        return codec.decode(RECORDS[record]);
+    }
+
+    private static List<String> genotypeStrings(final VariantContext vc) {
+        final List<String> strings = new ArrayList<>();
+        for ( final Genotype g : vc.getGenotypesOrderedByName() )
+            strings.add(g.toString());
+        return strings;
+    }
+
+    @DataProvider(name = "Subsets")
+    public Object[][] makeSubsets() {
+        final List<Object[]> tests = new ArrayList<>();
+        final List<List<String>> subsets = Arrays.asList(
+                Arrays.asList("S1"),
+                Arrays.asList("S5"),
+                Arrays.asList("S3", "S2"),
+                Arrays.asList("S1", "S3", "S5"),
+                Arrays.asList("S2", "S3", "S4", "S5"),
+                Arrays.asList("S1", "S2", "S3", "S4", "S5"),
+                Arrays.asList("S4", "NotInHeader"));
+        for ( int record = 0; record < RECORDS.length; record++ )
+            for ( final List<String> subset : subsets )
+                tests.add(new Object[]{record, new TreeSet<>(subset)});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "Subsets")
+    public void testSubset(final int record, final Set<String> samples) {
+        final VariantContext vc = decode(record);
+        final VCFGenotypeSubsetter subsetter = new VCFGenotypeSubsetter(header, samples);
+        final VariantContext selected = subsetter.subset(vc);
+
+        // with nothing to leave out, the record is returned as is
+        if ( samples.containsAll(header.getGenotypeSamples()) )
+            Assert.assertSame(selected, vc);
+        else
+            Assert.assertNotSame(selected, vc);
+        Assert.assertEquals(selected.getNSamples(), subsetter.getNSelectedSamples());
+        Assert.assertEquals(selected.getAlleles(), vc.getAlleles());
+        Assert.assertEquals(selected.getAttributes(), vc.getAttributes());
+        Assert.assertEquals(selected.getFilters(), vc.getFilters());
+
+        // the genotypes must be exactly those that decoding the whole record would have given
+        final VariantContext expected = decode(record).subContextFromSamples(samples, false);
+        Assert.assertEquals(genotypeStrings(selected), genotypeStrings(expected));
+        Assert.assertEquals(genotypeStrings(selected.subContextFromSamples(samples, true)), genotypeStrings(decode(record).subContextFromSamples(samples, true)));
+    }
+
+    @Test
+    public void testDecodedGenotypesAreNotSubset() {
+        final VariantContext vc = decode(0);
+        vc.getGenotypes().size();
+        vc.getGenotype("S1");
+        Assert.assertSame(new VCFGenotypeSubsetter(header, Arrays.asList("S2")).subset(vc), vc);
+    }
+
+    @DataProvider(name = "Columns")
+    public Object[][] makeColumns() {
+        return new Object[][]{
+                {"GT\t0\t1\t2\t3\t4", "GT\t1\t3"},
+                {"GT\t\t1\t\t3\t", "GT\t1\t3"},
+                {"GT\t0\t1\t2\t3", null},
+                {"GT\t0\t1\t2\t3\t4\t5", null},
+                {"GT\t0\t1\t2", null},
+                {"GT", null},
+        };
+    }
+
+    @Test(dataProvider = "Columns")
+    public void testSelectColumns(final String unparsed, final String expected) {
+        decode(0);
+        final VCFGenotypeSubsetter subsetter = new VCFGenotypeSubsetter(header, Arrays.asList("S2", "S4"));
+        Assert.assertEquals(subsetter.selectColumns(unparsed), expected);
+    }
+
+    @DataProvider(name = "FormatKeys")
+    public Object[][] makeFormatKeys() {
+        final List<Object[]> tests = new ArrayList<>();
+        final List<List<String>> keySets = Arrays.asList(
+                Arrays.asList("GT"),
+                Arrays.asList("GQ"),
+                Arrays.asList("PL"),
+                Arrays.asList("GT", "DP"),
+                Arrays.asList("FT", "XX"),
+                Arrays.asList("AD", "GQ", "PL"),
+                Arrays.asList("NotInHeader"),
+                Arrays.asList("GT", "AD", "DP", "FT", "GQ", "PL", "XX"));
+        for ( int record = 0; record < RECORDS.length; record++ ) {
+            for ( final List<String> keys : keySets ) {
+                tests.add(new Object[]{record, Arrays.asList("S1", "S2", "S3", "S4", "S5"), keys});
+                tests.add(new Object[]{record, Arrays.asList("S2", "S4"), keys});
+            }
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "FormatKeys")
+    public void testFormatKeys(final int record, final List<String> samples, final List<String> keys) {
+        final VariantContext vc = decode(record);
+        final VariantContext selected = new VCFGenotypeSubsetter(header, samples, keys).subset(vc);
+        final VariantContext expected = decode(record);
+
+        Assert.assertEquals(selected.getNSamples(), samples.size());
+        for ( final String sample : samples ) {
+            final Genotype g = selected.getGenotype(sample);
+            final Genotype e = expected.getGenotype(sample);
+            for ( final String key : Arrays.asList("GT", "AD", "DP", "FT", "GQ", "PL", "XX") ) {
+                if ( keys.contains(key) ) {
+                    Assert.assertEquals(g.hasAnyAttribute(key), e.hasAnyAttribute(key), sample + " " + key);
+                    if ( e.hasAnyAttribute(key) )
+                        Assert.assertEquals(String.valueOf(g.getAnyAttribute(key)), String.valueOf(e.getAnyAttribute(key)), sample + " " + key);
+                }
+            }
+            if ( keys.contains("GT") )
+                Assert.assertEquals(g.getGenotypeString(true), e.getGenotypeString(true));
+            if ( ! keys.contains("AD") ) Assert.assertFalse(g.hasAD());
+            if ( ! keys.contains("PL") ) Assert.assertFalse(g.hasPL());
+            if ( ! keys.contains("DP") ) Assert.assertFalse(g.hasDP());
+        }
+    }
+
+    @Test
+    public void testAllFormatKeysOfAllSamplesAreNotSubset() {
+        final VariantContext vc = decode(2);
+        Assert.assertSame(new VCFGenotypeSubsetter(header, header.getGenotypeSamples(), Arrays.asList("GT")).subset(vc), vc);
+    }
+}